@@ -0,0 +1,101 @@
+package jp.aegif.nemaki.api.v1.model.response;
+
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Background job and its progress")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class JobResponse {
+
+    @Schema(description = "Job ID", example = "job:4f9c2b7e0d1a4c3b8e6f5a2d1c0b9e8f")
+    @JsonProperty("jobId")
+    private String jobId;
+
+    @Schema(description = "Job type", example = "emptyTrash")
+    @JsonProperty("type")
+    private String type;
+
+    @Schema(description = "Status: queued, running, completed, failed, cancelled or interrupted", example = "running")
+    @JsonProperty("status")
+    private String status;
+
+    @Schema(description = "User who started the job")
+    @JsonProperty("creator")
+    private String creator;
+
+    @Schema(description = "Items to process, when known")
+    @JsonProperty("total")
+    private Long total;
+
+    @Schema(description = "Items processed so far")
+    @JsonProperty("processed")
+    private Long processed;
+
+    @Schema(description = "Items that could not be processed")
+    @JsonProperty("failed")
+    private Long failed;
+
+    @Schema(description = "The first errors, as item ID and reason")
+    @JsonProperty("errors")
+    private List<String> errors;
+
+    @Schema(description = "Outcome or failure message")
+    @JsonProperty("message")
+    private String message;
+
+    @Schema(description = "Whether cancellation has been requested")
+    @JsonProperty("cancelRequested")
+    private Boolean cancelRequested;
+
+    @Schema(description = "Creation timestamp in milliseconds")
+    @JsonProperty("created")
+    private Long created;
+
+    @Schema(description = "Start timestamp in milliseconds")
+    @JsonProperty("started")
+    private Long started;
+
+    @Schema(description = "End timestamp in milliseconds")
+    @JsonProperty("finished")
+    private Long finished;
+
+    @Schema(description = "HATEOAS links")
+    @JsonProperty("_links")
+    private Map<String, LinkInfo> links;
+
+    public JobResponse() {
+    }
+
+    public String getJobId() { return jobId; }
+    public void setJobId(String jobId) { this.jobId = jobId; }
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public String getCreator() { return creator; }
+    public void setCreator(String creator) { this.creator = creator; }
+    public Long getTotal() { return total; }
+    public void setTotal(Long total) { this.total = total; }
+    public Long getProcessed() { return processed; }
+    public void setProcessed(Long processed) { this.processed = processed; }
+    public Long getFailed() { return failed; }
+    public void setFailed(Long failed) { this.failed = failed; }
+    public List<String> getErrors() { return errors; }
+    public void setErrors(List<String> errors) { this.errors = errors; }
+    public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
+    public Boolean getCancelRequested() { return cancelRequested; }
+    public void setCancelRequested(Boolean cancelRequested) { this.cancelRequested = cancelRequested; }
+    public Long getCreated() { return created; }
+    public void setCreated(Long created) { this.created = created; }
+    public Long getStarted() { return started; }
+    public void setStarted(Long started) { this.started = started; }
+    public Long getFinished() { return finished; }
+    public void setFinished(Long finished) { this.finished = finished; }
+    public Map<String, LinkInfo> getLinks() { return links; }
+    public void setLinks(Map<String, LinkInfo> links) { this.links = links; }
+}
@@ -23,8 +23,11 @@ import jakarta.ws.rs.core.UriInfo;
 
 import jp.aegif.nemaki.api.v1.exception.ApiException;
 import jp.aegif.nemaki.api.v1.exception.ProblemDetail;
+import jp.aegif.nemaki.api.v1.model.response.JobResponse;
 import jp.aegif.nemaki.api.v1.model.response.LinkInfo;
 import jp.aegif.nemaki.businesslogic.ContentService;
+import jp.aegif.nemaki.businesslogic.JobService;
+import jp.aegif.nemaki.businesslogic.job.impl.EmptyTrashJobHandler;
 import jp.aegif.nemaki.util.constant.CallContextKey;
 import org.apache.chemistry.opencmis.commons.server.CallContext;
 import jp.aegif.nemaki.model.Archive;
@@ -54,6 +57,9 @@ public class ArchiveResource {
     @Autowired
     private ContentService contentService;
     
+    @Autowired
+    private JobService jobService;
+    
     @Context
     private UriInfo uriInfo;
     
@@ -334,7 +340,8 @@ public class ArchiveResource {
     @DELETE
     @Operation(
             summary = "Empty trash",
-            description = "Permanently deletes all archived items in the repository. This action cannot be undone."
+            description = "Permanently deletes all archived items in the repository. This action cannot be undone. "
+                    + "With async=true the trash is emptied in the background and the job is returned."
     )
     @ApiResponses(value = {
             @ApiResponse(
@@ -344,16 +351,31 @@ public class ArchiveResource {
                             mediaType = MediaType.APPLICATION_JSON,
                             schema = @Schema(implementation = EmptyTrashResponse.class)
                     )
+            ),
+            @ApiResponse(
+                    responseCode = "202",
+                    description = "Emptying the trash was queued as a job",
+                    content = @io.swagger.v3.oas.annotations.media.Content(
+                            mediaType = MediaType.APPLICATION_JSON,
+                            schema = @Schema(implementation = JobResponse.class)
+                    )
             )
     })
     public Response emptyTrash(
             @Parameter(description = "Repository ID", required = true, example = "bedroom")
-            @PathParam("repositoryId") String repositoryId) {
+            @PathParam("repositoryId") String repositoryId,
+            @Parameter(description = "Run in the background and return the job")
+            @QueryParam("async") @DefaultValue("false") boolean async) {
         
         logger.info("API v1: Emptying trash in repository " + repositoryId);
         
         checkAdminAuthorization();
         
+        if (async) {
+            CallContext callContext = (CallContext) httpRequest.getAttribute("CallContext");
+            return JobResource.submit(jobService, repositoryId, EmptyTrashJobHandler.TYPE, callContext, null);
+        }
+        
         try {
             List<Archive> allArchives = contentService.getArchives(repositoryId, null, null, false);
             int deletedCount = 0;
@@ -118,6 +118,8 @@ public class CacheResource {
             
             CacheInvalidationResponse response = new CacheInvalidationResponse();
             response.setObjectId(objectId);
+            // The path index has no modification date to compare, so it is always dropped
+            cache.removeFolderPathCache(objectId);
             
             if (StringUtils.isNotEmpty(beforeDate)) {
                 GregorianCalendar beforeDateCal;
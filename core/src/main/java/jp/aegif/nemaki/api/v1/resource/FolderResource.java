@@ -26,9 +26,12 @@ import jakarta.ws.rs.core.UriInfo;
 import jp.aegif.nemaki.api.v1.exception.ApiException;
 import jp.aegif.nemaki.api.v1.exception.ProblemDetail;
 import jp.aegif.nemaki.api.v1.model.PropertyValue;
+import jp.aegif.nemaki.api.v1.model.response.JobResponse;
 import jp.aegif.nemaki.api.v1.model.response.LinkInfo;
 import jp.aegif.nemaki.api.v1.model.response.ObjectListResponse;
 import jp.aegif.nemaki.api.v1.model.response.ObjectResponse;
+import jp.aegif.nemaki.businesslogic.JobService;
+import jp.aegif.nemaki.businesslogic.job.impl.DeleteTreeJobHandler;
 import jp.aegif.nemaki.cmis.service.NavigationService;
 import jp.aegif.nemaki.cmis.service.ObjectService;
 import jp.aegif.nemaki.cmis.service.RepositoryService;
@@ -92,6 +95,9 @@ public class FolderResource {
     @Autowired
     private RepositoryService repositoryService;
     
+    @Autowired
+    private JobService jobService;
+    
     @Context
     private UriInfo uriInfo;
     
@@ -535,7 +541,8 @@ public class FolderResource {
     @Path("/{folderId}/tree")
     @Operation(
             summary = "Delete folder tree",
-            description = "Deletes the specified folder and all of its child and descendant objects"
+            description = "Deletes the specified folder and all of its child and descendant objects. "
+                    + "With async=true the tree is deleted in the background and the job is returned."
     )
     @ApiResponses(value = {
             @ApiResponse(
@@ -543,6 +550,14 @@ public class FolderResource {
                     description = "Folder tree deleted (may contain failed deletions)",
                     content = @Content(mediaType = MediaType.APPLICATION_JSON)
             ),
+            @ApiResponse(
+                    responseCode = "202",
+                    description = "Deleting the folder tree was queued as a job",
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_JSON,
+                            schema = @Schema(implementation = JobResponse.class)
+                    )
+            ),
             @ApiResponse(
                     responseCode = "404",
                     description = "Folder not found",
@@ -562,7 +577,9 @@ public class FolderResource {
             @Parameter(description = "How to handle unfiling (unfile, deletesinglefiled, delete)")
             @QueryParam("unfileObjects") @DefaultValue("delete") String unfileObjects,
             @Parameter(description = "Continue on failure")
-            @QueryParam("continueOnFailure") @DefaultValue("false") Boolean continueOnFailure) {
+            @QueryParam("continueOnFailure") @DefaultValue("false") Boolean continueOnFailure,
+            @Parameter(description = "Run in the background and return the job")
+            @QueryParam("async") @DefaultValue("false") boolean async) {
         
         logger.info("API v1: Deleting tree for folder " + folderId + " from repository " + repositoryId);
         
@@ -577,6 +594,15 @@ public class FolderResource {
                 unfileOption = UnfileObject.DELETESINGLEFILED;
             }
             
+            if (async) {
+                Map<String, String> parameters = new HashMap<>();
+                parameters.put(DeleteTreeJobHandler.PARAM_FOLDER_ID, folderId);
+                parameters.put(DeleteTreeJobHandler.PARAM_ALL_VERSIONS, String.valueOf(allVersions));
+                parameters.put(DeleteTreeJobHandler.PARAM_UNFILE_OBJECTS, unfileOption.value());
+                parameters.put(DeleteTreeJobHandler.PARAM_CONTINUE_ON_FAILURE, String.valueOf(continueOnFailure));
+                return JobResource.submit(jobService, repositoryId, DeleteTreeJobHandler.TYPE, callContext, parameters);
+            }
+            
             FailedToDeleteData failedToDelete = objectService.deleteTree(
                     callContext, repositoryId, folderId, allVersions,
                     unfileOption, continueOnFailure, null);
@@ -0,0 +1,321 @@
+package jp.aegif.nemaki.api.v1.resource;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+import jp.aegif.nemaki.api.v1.exception.ApiException;
+import jp.aegif.nemaki.api.v1.exception.ProblemDetail;
+import jp.aegif.nemaki.api.v1.model.response.JobResponse;
+import jp.aegif.nemaki.api.v1.model.response.LinkInfo;
+import jp.aegif.nemaki.businesslogic.JobService;
+import jp.aegif.nemaki.businesslogic.job.impl.AttachmentLengthCheckJobHandler;
+import jp.aegif.nemaki.model.Job;
+import jp.aegif.nemaki.util.constant.CallContextKey;
+import org.apache.chemistry.opencmis.commons.server.CallContext;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+@Component
+@Path("/repositories/{repositoryId}/jobs")
+@Tag(name = "jobs", description = "Background jobs for long-running operations")
+@Produces(MediaType.APPLICATION_JSON)
+public class JobResource {
+
+    private static final Logger logger = Logger.getLogger(JobResource.class.getName());
+
+    @Autowired
+    private JobService jobService;
+
+    @Context
+    private HttpServletRequest httpRequest;
+
+    private CallContext getCallContext() {
+        CallContext callContext = (CallContext) httpRequest.getAttribute("CallContext");
+        if (callContext == null) {
+            throw ApiException.unauthorized("Authentication required");
+        }
+        return callContext;
+    }
+
+    private static boolean isAdmin(CallContext callContext) {
+        return Boolean.TRUE.equals(callContext.get(CallContextKey.IS_ADMIN));
+    }
+
+    /**
+     * Jobs can be seen and controlled by administrators and by the user who started them
+     */
+    private Job getAccessibleJob(String repositoryId, String jobId) {
+        CallContext callContext = getCallContext();
+        Job job = jobService.getJob(repositoryId, jobId);
+        if (job == null) {
+            throw ApiException.objectNotFound(jobId, repositoryId);
+        }
+        if (!isAdmin(callContext) && !callContext.getUsername().equals(job.getCreator())) {
+            throw ApiException.permissionDenied("Only administrators and the user who started a job can access it");
+        }
+        return job;
+    }
+
+    @GET
+    @Operation(
+            summary = "List jobs",
+            description = "Lists the background jobs of the repository, newest first. Non-administrators only see their own jobs."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Jobs retrieved successfully",
+                    content = @io.swagger.v3.oas.annotations.media.Content(
+                            mediaType = MediaType.APPLICATION_JSON,
+                            schema = @Schema(implementation = JobResponse.class)
+                    )
+            )
+    })
+    public Response getJobs(
+            @Parameter(description = "Repository ID", required = true, example = "bedroom")
+            @PathParam("repositoryId") String repositoryId) {
+
+        CallContext callContext = getCallContext();
+        try {
+            List<JobResponse> jobs = new ArrayList<>();
+            for (Job job : jobService.getJobs(repositoryId)) {
+                if (isAdmin(callContext) || callContext.getUsername().equals(job.getCreator())) {
+                    jobs.add(toResponse(repositoryId, job));
+                }
+            }
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("jobs", jobs);
+            response.put("numItems", jobs.size());
+            return Response.ok(response).build();
+
+        } catch (ApiException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.severe("Error listing jobs: " + e.getMessage());
+            throw ApiException.internalError("Failed to list jobs: " + e.getMessage(), e);
+        }
+    }
+
+    @GET
+    @Path("/{jobId}")
+    @Operation(
+            summary = "Get job",
+            description = "Returns a background job and its progress"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Job retrieved successfully",
+                    content = @io.swagger.v3.oas.annotations.media.Content(
+                            mediaType = MediaType.APPLICATION_JSON,
+                            schema = @Schema(implementation = JobResponse.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Job not found",
+                    content = @io.swagger.v3.oas.annotations.media.Content(
+                            mediaType = "application/problem+json",
+                            schema = @Schema(implementation = ProblemDetail.class)
+                    )
+            )
+    })
+    public Response getJob(
+            @Parameter(description = "Repository ID", required = true, example = "bedroom")
+            @PathParam("repositoryId") String repositoryId,
+            @Parameter(description = "Job ID", required = true)
+            @PathParam("jobId") String jobId) {
+
+        Job job = getAccessibleJob(repositoryId, jobId);
+        return Response.ok(toResponse(repositoryId, job)).build();
+    }
+
+    @POST
+    @Path("/attachmentLengthCheck")
+    @Operation(
+            summary = "Check attachment lengths",
+            description = "Starts a job that compares the stored content length of every document with the size "
+                    + "of its binary. Mismatches are reported as failed items. With repair=true the actual size is stored."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "202",
+                    description = "Check queued as a job",
+                    content = @io.swagger.v3.oas.annotations.media.Content(
+                            mediaType = MediaType.APPLICATION_JSON,
+                            schema = @Schema(implementation = JobResponse.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "403",
+                    description = "Only administrators can check attachment lengths",
+                    content = @io.swagger.v3.oas.annotations.media.Content(
+                            mediaType = "application/problem+json",
+                            schema = @Schema(implementation = ProblemDetail.class)
+                    )
+            )
+    })
+    public Response checkAttachmentLengths(
+            @Parameter(description = "Repository ID", required = true, example = "bedroom")
+            @PathParam("repositoryId") String repositoryId,
+            @Parameter(description = "Store the actual size where it differs")
+            @QueryParam("repair") @DefaultValue("false") boolean repair) {
+
+        CallContext callContext = getCallContext();
+        if (!isAdmin(callContext)) {
+            throw ApiException.permissionDenied("Only administrators can check attachment lengths");
+        }
+        logger.info("API v1: Attachment length check (repair=" + repair + ") requested by " + callContext.getUsername());
+        return submit(jobService, repositoryId, AttachmentLengthCheckJobHandler.TYPE, callContext,
+                Collections.singletonMap(AttachmentLengthCheckJobHandler.PARAM_REPAIR, String.valueOf(repair)));
+    }
+
+    @POST
+    @Path("/{jobId}/cancel")
+    @Operation(
+            summary = "Cancel job",
+            description = "Requests cancellation of a queued or running job. A running job stops at its next check."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "202",
+                    description = "Cancellation requested",
+                    content = @io.swagger.v3.oas.annotations.media.Content(
+                            mediaType = MediaType.APPLICATION_JSON,
+                            schema = @Schema(implementation = JobResponse.class)
+                    )
+            )
+    })
+    public Response cancelJob(
+            @Parameter(description = "Repository ID", required = true, example = "bedroom")
+            @PathParam("repositoryId") String repositoryId,
+            @Parameter(description = "Job ID", required = true)
+            @PathParam("jobId") String jobId) {
+
+        getAccessibleJob(repositoryId, jobId);
+        try {
+            Job job = jobService.cancel(repositoryId, jobId);
+            logger.info("API v1: Cancellation of job " + jobId + " requested by " + getCallContext().getUsername());
+            return Response.status(Response.Status.ACCEPTED).entity(toResponse(repositoryId, job)).build();
+        } catch (IllegalStateException e) {
+            throw ApiException.conflict(e.getMessage());
+        }
+    }
+
+    @POST
+    @Path("/{jobId}/resume")
+    @Operation(
+            summary = "Resume job",
+            description = "Queues a failed, cancelled or interrupted job again. It continues where it left off."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "202",
+                    description = "Job queued",
+                    content = @io.swagger.v3.oas.annotations.media.Content(
+                            mediaType = MediaType.APPLICATION_JSON,
+                            schema = @Schema(implementation = JobResponse.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "409",
+                    description = "Job is queued, running or completed",
+                    content = @io.swagger.v3.oas.annotations.media.Content(
+                            mediaType = "application/problem+json",
+                            schema = @Schema(implementation = ProblemDetail.class)
+                    )
+            )
+    })
+    public Response resumeJob(
+            @Parameter(description = "Repository ID", required = true, example = "bedroom")
+            @PathParam("repositoryId") String repositoryId,
+            @Parameter(description = "Job ID", required = true)
+            @PathParam("jobId") String jobId) {
+
+        getAccessibleJob(repositoryId, jobId);
+        try {
+            Job job = jobService.resume(repositoryId, jobId);
+            logger.info("API v1: Job " + jobId + " resumed by " + getCallContext().getUsername());
+            return Response.status(Response.Status.ACCEPTED).entity(toResponse(repositoryId, job)).build();
+        } catch (IllegalStateException e) {
+            throw ApiException.conflict(e.getMessage());
+        }
+    }
+
+    /**
+     * Queue a job for a resource that runs its operation in the background
+     *
+     * @return 202 with the job, its location and links
+     */
+    static Response submit(JobService jobService, String repositoryId, String type, CallContext callContext,
+            Map<String, String> parameters) {
+        try {
+            Job job = jobService.submit(repositoryId, type, callContext.getUsername(), parameters);
+            return Response.accepted(toResponse(repositoryId, job))
+                    .location(URI.create(jobPath(repositoryId, job.getId())))
+                    .build();
+        } catch (IllegalStateException e) {
+            throw ApiException.serviceUnavailable(e.getMessage());
+        }
+    }
+
+    static JobResponse toResponse(String repositoryId, Job job) {
+        JobResponse response = new JobResponse();
+        response.setJobId(job.getId());
+        response.setType(job.getType());
+        response.setStatus(job.getStatus());
+        response.setCreator(job.getCreator());
+        response.setTotal(job.getTotal());
+        response.setProcessed(job.getProcessed());
+        response.setFailed(job.getFailed());
+        response.setErrors(job.getErrors().isEmpty() ? null : job.getErrors());
+        response.setMessage(job.getMessage());
+        response.setCancelRequested(job.isCancelRequested());
+        response.setCreated(job.getCreated());
+        response.setStarted(job.getStarted() == 0 ? null : job.getStarted());
+        response.setFinished(job.getFinished() == 0 ? null : job.getFinished());
+
+        Map<String, LinkInfo> links = new HashMap<>();
+        String path = jobPath(repositoryId, job.getId());
+        links.put("self", new LinkInfo(path));
+        if (job.isFinished()) {
+            if (!Job.STATUS_COMPLETED.equals(job.getStatus())) {
+                links.put("resume", new LinkInfo(path + "/resume"));
+            }
+        } else {
+            links.put("cancel", new LinkInfo(path + "/cancel"));
+        }
+        response.setLinks(links);
+        return response;
+    }
+
+    private static String jobPath(String repositoryId, String jobId) {
+        return "/api/v1/cmis/repositories/" + repositoryId + "/jobs/" + jobId;
+    }
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2013 aegif.
+ *
+ * This file is part of NemakiWare.
+ *
+ * NemakiWare is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * NemakiWare is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with NemakiWare.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     linzhixing(https://github.com/linzhixing) - initial API and implementation
+ ******************************************************************************/
+package jp.aegif.nemaki.audit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Hands audit events from request threads to a single background writer.
+ *
+ * Request threads only put the event into a lock-free ring buffer; the writer
+ * drains it in batches and passes each batch to the sink (serialization,
+ * audit log, segment store). When the buffer is full the overflow policy
+ * decides whether the request thread waits for space or the event is dropped.
+ */
+class AuditEventPipeline {
+
+    private static final Log log = LogFactory.getLog(AuditEventPipeline.class);
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    enum OverflowPolicy {
+        DROP,   // Never delay the request; count the event as dropped
+        BLOCK   // Wait up to the block timeout for space, then drop
+    }
+
+    private final AuditRingBuffer<AuditEvent> buffer;
+    private final Consumer<List<AuditEvent>> sink;
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    private volatile boolean running;
+    private volatile boolean idle;
+    private Thread writer;
+
+    AuditEventPipeline(Consumer<List<AuditEvent>> sink, int capacity, int batchSize,
+            OverflowPolicy overflowPolicy, long blockTimeoutMillis) {
+        this.buffer = new AuditRingBuffer<>(capacity);
+        this.sink = sink;
+        this.batchSize = Math.max(1, batchSize);
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, blockTimeoutMillis));
+    }
+
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::runWriter, "AuditEventWriter");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @return false if the event was dropped
+     */
+    boolean publish(AuditEvent event) {
+        if (buffer.offer(event)) {
+            wakeWriter();
+            return true;
+        }
+
+        if (overflowPolicy == OverflowPolicy.BLOCK && running) {
+            long deadline = System.nanoTime() + blockTimeoutNanos;
+            while (System.nanoTime() < deadline) {
+                wakeWriter();
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+                if (buffer.offer(event)) {
+                    wakeWriter();
+                    return true;
+                }
+            }
+        }
+
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    private void wakeWriter() {
+        if (idle) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void runWriter() {
+        List<AuditEvent> batch = new ArrayList<>(batchSize);
+        while (running || buffer.size() > 0) {
+            if (buffer.drainTo(batch, batchSize) == 0) {
+                idle = true;
+                // Re-check after publishing the idle flag so a wakeup is not missed
+                if (buffer.size() == 0 && running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                idle = false;
+                continue;
+            }
+            writeBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void writeBatch(List<AuditEvent> batch) {
+        try {
+            sink.accept(batch);
+            batches.incrementAndGet();
+        } catch (Exception e) {
+            // The sink accounts for individual events; never let the writer die
+            log.error("Failed to write audit event batch of " + batch.size() + " events", e);
+        }
+    }
+
+    /**
+     * Stops the writer once the buffered events have been written.
+     */
+    void shutdown(long timeoutMillis) {
+        Thread w;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            w = writer;
+        }
+        LockSupport.unpark(w);
+        try {
+            w.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (w.isAlive()) {
+            log.warn("Audit event writer did not finish within " + timeoutMillis + "ms, "
+                    + buffer.size() + " events not written");
+        }
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    int getQueueDepth() {
+        return buffer.size();
+    }
+
+    int getCapacity() {
+        return buffer.capacity();
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    long getBatchCount() {
+        return batches.get();
+    }
+
+    void resetCounters() {
+        dropped.set(0);
+        batches.set(0);
+    }
+}
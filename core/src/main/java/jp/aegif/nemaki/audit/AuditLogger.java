@@ -38,9 +38,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jakarta.servlet.http.HttpServletRequest;
+import java.io.IOException;
 import java.net.InetAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -50,6 +54,10 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * Audit logger that intercepts CMIS and REST API operations using Spring AOP.
  * Outputs structured JSON logs suitable for ELK Stack, Splunk, and other
  * log aggregation platforms.
+ *
+ * Events are handed to a background writer (audit.pipeline.*) which
+ * serializes them in batches and also appends them to the local
+ * {@link AuditSegmentStore} (audit.store.*) that backs the audit query API.
  */
 public class AuditLogger {
 
@@ -101,6 +109,18 @@ public class AuditLogger {
 
     private PropertyManager propertyManager;
 
+    // Asynchronous writer and local store (null when disabled)
+    private AuditEventPipeline pipeline;
+    private AuditSegmentStore segmentStore;
+    // Static mirrors for REST API access (updated in init/destroy)
+    private static volatile AuditEventPipeline pipelineStatic;
+    private static volatile AuditSegmentStore segmentStoreStatic;
+
+    private static final int DEFAULT_PIPELINE_BUFFER_SIZE = 8192;
+    private static final int DEFAULT_PIPELINE_BATCH_SIZE = 256;
+    private static final long DEFAULT_PIPELINE_BLOCK_TIMEOUT_MS = 100;
+    private static final long PIPELINE_SHUTDOWN_TIMEOUT_MS = 5000;
+
     // Server metadata initialization methods
 
     private static String initHostname() {
@@ -196,13 +216,114 @@ public class AuditLogger {
      */
     public void init() {
         loadConfiguration();
+        initSegmentStore();
+        initPipeline();
         if (log.isInfoEnabled()) {
             log.info("AuditLogger initialized. Enabled: " + enabled +
                     ", DetailLevel: " + detailLevel +
-                    ", ReadAuditLevel: " + readAuditLevel);
+                    ", ReadAuditLevel: " + readAuditLevel +
+                    ", Pipeline: " + (pipeline != null) +
+                    ", Store: " + (segmentStore != null));
         }
     }
 
+    /**
+     * Writes the events still buffered and closes the segment store.
+     */
+    public void destroy() {
+        if (pipeline != null) {
+            pipeline.shutdown(PIPELINE_SHUTDOWN_TIMEOUT_MS);
+            pipeline = null;
+            pipelineStatic = null;
+        }
+        if (segmentStore != null) {
+            synchronized (segmentStore) {
+                segmentStore.close();
+            }
+            segmentStore = null;
+            segmentStoreStatic = null;
+        }
+    }
+
+    private void initSegmentStore() {
+        if (propertyManager == null || !"true".equalsIgnoreCase(trimmed(propertyManager.readValue(PropertyKey.AUDIT_STORE_ENABLED)))) {
+            return;
+        }
+
+        String dir = trimmed(propertyManager.readValue(PropertyKey.AUDIT_STORE_DIR));
+        Path directory;
+        if (dir != null && !dir.isEmpty()) {
+            directory = Paths.get(dir);
+        } else {
+            String base = System.getProperty("catalina.base", System.getProperty("java.io.tmpdir"));
+            directory = Paths.get(base, "logs", "audit-store");
+        }
+
+        AuditSegmentStore.Partition partition = AuditSegmentStore.Partition.DAY;
+        String partitionStr = trimmed(propertyManager.readValue(PropertyKey.AUDIT_STORE_PARTITION));
+        if (partitionStr != null && !partitionStr.isEmpty()) {
+            try {
+                partition = AuditSegmentStore.Partition.valueOf(partitionStr.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                log.warn("Invalid audit.store.partition: '" + partitionStr + "'. Valid values are: HOUR, DAY. Using default: DAY");
+            }
+        }
+        boolean compress = "true".equalsIgnoreCase(trimmed(propertyManager.readValue(PropertyKey.AUDIT_STORE_COMPRESS)));
+        int retentionDays = readInt(PropertyKey.AUDIT_STORE_RETENTION_DAYS, 0);
+
+        AuditSegmentStore store = new AuditSegmentStore(directory, partition, compress, retentionDays, objectMapper);
+        try {
+            store.open();
+            segmentStore = store;
+            segmentStoreStatic = store;
+        } catch (IOException e) {
+            log.error("Failed to open audit segment store at " + directory + ", audit events are only logged", e);
+        }
+    }
+
+    private void initPipeline() {
+        String enabledStr = propertyManager != null ? trimmed(propertyManager.readValue(PropertyKey.AUDIT_PIPELINE_ENABLED)) : null;
+        // Enabled unless explicitly disabled
+        if ("false".equalsIgnoreCase(enabledStr)) {
+            return;
+        }
+
+        AuditEventPipeline.OverflowPolicy policy = AuditEventPipeline.OverflowPolicy.BLOCK;
+        String policyStr = propertyManager != null ? trimmed(propertyManager.readValue(PropertyKey.AUDIT_PIPELINE_OVERFLOW)) : null;
+        if (policyStr != null && !policyStr.isEmpty()) {
+            try {
+                policy = AuditEventPipeline.OverflowPolicy.valueOf(policyStr.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                log.warn("Invalid audit.pipeline.overflow: '" + policyStr + "'. Valid values are: DROP, BLOCK. Using default: BLOCK");
+            }
+        }
+
+        pipeline = new AuditEventPipeline(this::writeAuditEvents,
+                readInt(PropertyKey.AUDIT_PIPELINE_BUFFER_SIZE, DEFAULT_PIPELINE_BUFFER_SIZE),
+                readInt(PropertyKey.AUDIT_PIPELINE_BATCH_SIZE, DEFAULT_PIPELINE_BATCH_SIZE),
+                policy,
+                readInt(PropertyKey.AUDIT_PIPELINE_BLOCK_TIMEOUT_MS, (int) DEFAULT_PIPELINE_BLOCK_TIMEOUT_MS));
+        pipeline.start();
+        pipelineStatic = pipeline;
+    }
+
+    private int readInt(String key, int defaultValue) {
+        String value = propertyManager != null ? trimmed(propertyManager.readValue(key)) : null;
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value for " + key + ": '" + value + "'. Using default: " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private static String trimmed(String value) {
+        return value == null ? null : value.trim();
+    }
+
     /**
      * Loads configuration from property manager.
      */
@@ -528,7 +649,8 @@ public class AuditLogger {
 
     /**
      * Logs an audit event to the dedicated audit log.
-     * Uses dynamic log level: WARN for failures, INFO for success.
+     * The event is handed to the background writer when the pipeline is
+     * running, otherwise it is written on the calling thread.
      * @param event The audit event to log
      */
     public void logAuditEvent(AuditEvent event) {
@@ -539,28 +661,70 @@ public class AuditLogger {
         // Increment total event count
         auditEventCount.incrementAndGet();
 
+        AuditEventPipeline p = pipeline;
+        if (p != null && p.isRunning()) {
+            // A dropped event is counted by the pipeline (audit.events.dropped), not as failed
+            p.publish(event);
+            return;
+        }
+
+        writeAuditEvent(event);
+        AuditSegmentStore store = segmentStore;
+        if (store != null) {
+            synchronized (store) {
+                store.flush();
+            }
+        }
+    }
+
+    /**
+     * Writes a batch of events; called by the pipeline writer thread.
+     */
+    private void writeAuditEvents(List<AuditEvent> events) {
+        for (AuditEvent event : events) {
+            writeAuditEvent(event);
+        }
+        AuditSegmentStore store = segmentStore;
+        if (store != null) {
+            synchronized (store) {
+                store.flush();
+            }
+        }
+    }
+
+    /**
+     * Serializes an event to the audit log and buffers it for the segment store.
+     * Uses dynamic log level: WARN for failures, INFO for success.
+     */
+    private void writeAuditEvent(AuditEvent event) {
         try {
             // Determine log level before serialization (performance optimization)
             boolean isWarn = logFailuresAsWarn && AuditEvent.Result.FAILURE.name().equals(event.getResult());
             
-            // Check if the appropriate log level is enabled before serializing
-            if (isWarn && !auditLogger.isWarnEnabled()) {
-                auditEventSkipped.incrementAndGet();
-                return;  // Skip serialization if log level is disabled
-            }
-            if (!isWarn && !auditLogger.isInfoEnabled()) {
+            boolean logEnabled = isWarn ? auditLogger.isWarnEnabled() : auditLogger.isInfoEnabled();
+            AuditSegmentStore store = segmentStore;
+
+            // Skip serialization if the log level is disabled and there is no store
+            if (!logEnabled && store == null) {
                 auditEventSkipped.incrementAndGet();
-                return;  // Skip serialization if log level is disabled
+                return;
             }
 
-            // Serialize to JSON (only if we're going to log it)
             String json = objectMapper.writeValueAsString(event);
             
             // Output to appropriate level
-            if (isWarn) {
-                auditLogger.warn(json);
-            } else {
-                auditLogger.info(json);
+            if (logEnabled) {
+                if (isWarn) {
+                    auditLogger.warn(json);
+                } else {
+                    auditLogger.info(json);
+                }
+            }
+
+            if (store != null) {
+                synchronized (store) {
+                    store.add(event, json);
+                }
             }
             
             // Successfully logged
@@ -1001,6 +1165,13 @@ public class AuditLogger {
         metrics.put("audit.events.logged", auditEventLogged.get());
         metrics.put("audit.events.skipped", auditEventSkipped.get());
         metrics.put("audit.events.failed", auditEventFailed.get());
+        AuditEventPipeline p = pipelineStatic;
+        if (p != null) {
+            metrics.put("audit.events.dropped", p.getDroppedCount());
+            metrics.put("audit.pipeline.queue.depth", (long) p.getQueueDepth());
+            metrics.put("audit.pipeline.queue.capacity", (long) p.getCapacity());
+            metrics.put("audit.pipeline.batches", p.getBatchCount());
+        }
         return metrics;
     }
 
@@ -1045,9 +1216,21 @@ public class AuditLogger {
         auditEventLogged.set(0);
         auditEventSkipped.set(0);
         auditEventFailed.set(0);
+        AuditEventPipeline p = pipelineStatic;
+        if (p != null) {
+            p.resetCounters();
+        }
     }
 
 
+    /**
+     * Returns the local audit event store.
+     * @return The store, or null if audit.store.enabled is not set
+     */
+    public static AuditSegmentStore getSegmentStore() {
+        return segmentStoreStatic;
+    }
+
     /**
      * Returns whether audit logging is enabled.
      * @return true if audit logging is enabled
@@ -0,0 +1,627 @@
+/*******************************************************************************
+ * Copyright (c) 2013 aegif.
+ *
+ * This file is part of NemakiWare.
+ *
+ * NemakiWare is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * NemakiWare is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with NemakiWare.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     linzhixing(https://github.com/linzhixing) - initial API and implementation
+ ******************************************************************************/
+package jp.aegif.nemaki.audit;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Append-only local store of audit events, queryable without an external
+ * log platform.
+ *
+ * Events are appended as JSON lines to one segment file per hour or day
+ * (UTC), gzip-compressed per written batch when compression is enabled.
+ * Each segment has an index sidecar (.idx) with its time range and Bloom
+ * filters of the user and object IDs it contains, so queries only scan
+ * segments that can match and read them line by line. Only the time ranges
+ * stay in memory: the filters of a segment are kept while it is written to,
+ * and read from its sidecar when a query needs them.
+ *
+ * Writes come from the audit writer thread only; queries may run
+ * concurrently from request threads.
+ */
+public class AuditSegmentStore {
+
+    private static final Log log = LogFactory.getLog(AuditSegmentStore.class);
+
+    private static final String PREFIX = "audit-";
+    private static final String SUFFIX = ".jsonl";
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    public enum Partition {
+        HOUR("yyyyMMddHH"),
+        DAY("yyyyMMdd");
+
+        private final DateTimeFormatter formatter;
+
+        Partition(String pattern) {
+            this.formatter = DateTimeFormatter.ofPattern(pattern).withZone(ZoneOffset.UTC);
+        }
+    }
+
+    private final Path directory;
+    private final Partition partition;
+    private final boolean compress;
+    private final int retentionDays;
+    private final ObjectMapper objectMapper;
+
+    // segment file name -> index, without its filters unless the segment is being written to
+    private final Map<String, SegmentIndex> indexes = new ConcurrentHashMap<>();
+
+    // Writer thread only
+    private final Map<String, List<String>> pending = new LinkedHashMap<>();
+    private final Set<String> dirtyIndexes = new HashSet<>();
+    private String currentSegment;
+
+    public AuditSegmentStore(Path directory, Partition partition, boolean compress, int retentionDays,
+            ObjectMapper objectMapper) {
+        this.directory = directory;
+        this.partition = partition;
+        this.compress = compress;
+        this.retentionDays = retentionDays;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Creates the directory and loads the indexes of existing segments.
+     * Indexes that are missing or older than their segment are rebuilt.
+     */
+    public void open() throws IOException {
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*")) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (!isSegmentFile(name)) {
+                    continue;
+                }
+                Path indexPath = directory.resolve(name + INDEX_SUFFIX);
+                SegmentIndex index = null;
+                if (Files.exists(indexPath)
+                        && Files.getLastModifiedTime(indexPath).compareTo(Files.getLastModifiedTime(path)) >= 0) {
+                    index = readIndex(name);
+                }
+                if (index == null) {
+                    index = rebuildIndex(path);
+                    writeIndex(name, index);
+                }
+                indexes.put(name, index.withoutFilters());
+            }
+        }
+        log.info("Audit segment store opened: " + directory + ", segments=" + indexes.size());
+    }
+
+    /**
+     * @return the index with its filters as last written, or null if it cannot be read
+     */
+    private SegmentIndex readIndex(String segment) {
+        Path indexPath = directory.resolve(segment + INDEX_SUFFIX);
+        try {
+            SegmentIndex index = objectMapper.readValue(indexPath.toFile(), SegmentIndex.class);
+            return index.hasFilters() ? index : null;
+        } catch (IOException e) {
+            // Also an index written before the filters, with the ID sets
+            log.warn("Broken audit segment index, rebuilding: " + indexPath, e);
+            return null;
+        }
+    }
+
+    /**
+     * The index of a segment with its filters, to add events to
+     */
+    private SegmentIndex writableIndex(String segment) {
+        SegmentIndex index = indexes.get(segment);
+        if (index != null && index.hasFilters()) {
+            return index;
+        }
+        if (index != null) {
+            // Written before a restart, or added to again after it was sealed
+            index = readIndex(segment);
+            if (index == null) {
+                index = rebuildIndex(directory.resolve(segment));
+            }
+        } else {
+            index = new SegmentIndex();
+        }
+        indexes.put(segment, index);
+        return index;
+    }
+
+    private boolean isSegmentFile(String name) {
+        return name.startsWith(PREFIX) && (name.endsWith(SUFFIX) || name.endsWith(SUFFIX + GZIP_SUFFIX));
+    }
+
+    private SegmentIndex rebuildIndex(Path path) {
+        SegmentIndex index = new SegmentIndex();
+        try (BufferedReader reader = openReader(path)) {
+            String line;
+            while ((line = readLine(reader)) != null) {
+                Map<String, Object> event = parse(line);
+                if (event != null) {
+                    index.record(asLong(event.get("timestampMs")), asString(event.get("userId")),
+                            asString(event.get("objectId")));
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to read audit segment: " + path, e);
+        }
+        return index;
+    }
+
+    /**
+     * Buffers an event for the next flush.
+     * @param json the event serialized as a single line
+     */
+    public void add(AuditEvent event, String json) {
+        long time = event.getTimestampMs() != null ? event.getTimestampMs() : System.currentTimeMillis();
+        String segment = segmentName(time);
+        pending.computeIfAbsent(segment, k -> new ArrayList<>()).add(json);
+        writableIndex(segment).record(time, event.getUserId(), event.getObjectId());
+        dirtyIndexes.add(segment);
+    }
+
+    /**
+     * Appends the buffered events to their segments. The index of a segment
+     * is written once the store has moved on to a newer segment.
+     */
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, List<String>> entry : pending.entrySet()) {
+            try {
+                appendLines(directory.resolve(entry.getKey()), entry.getValue());
+            } catch (IOException e) {
+                log.error("Failed to append " + entry.getValue().size() + " events to audit segment: " + entry.getKey(), e);
+            }
+            if (currentSegment == null || entry.getKey().compareTo(currentSegment) > 0) {
+                if (currentSegment != null) {
+                    applyRetention();
+                }
+                currentSegment = entry.getKey();
+            }
+        }
+        pending.clear();
+
+        for (String segment : new ArrayList<>(dirtyIndexes)) {
+            if (!segment.equals(currentSegment)) {
+                sealIndex(segment);
+                dirtyIndexes.remove(segment);
+            }
+        }
+    }
+
+    /**
+     * Writes the index of a segment and drops its filters from memory
+     */
+    private void sealIndex(String segment) {
+        SegmentIndex index = indexes.get(segment);
+        if (index != null && writeIndex(segment, index)) {
+            indexes.replace(segment, index, index.withoutFilters());
+        }
+    }
+
+    private void appendLines(Path path, List<String> lines) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+             OutputStream target = compress ? new GZIPOutputStream(out) : out;
+             Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8))) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+    }
+
+    private boolean writeIndex(String segment, SegmentIndex index) {
+        if (index == null) {
+            return false;
+        }
+        try {
+            objectMapper.writeValue(directory.resolve(segment + INDEX_SUFFIX).toFile(), index);
+            return true;
+        } catch (IOException e) {
+            // Rebuilt from the segment on next open
+            log.warn("Failed to write audit segment index: " + segment, e);
+            return false;
+        }
+    }
+
+    private void applyRetention() {
+        if (retentionDays <= 0) {
+            return;
+        }
+        String oldest = segmentName(System.currentTimeMillis() - retentionDays * DAY_MILLIS);
+        for (String segment : new ArrayList<>(indexes.keySet())) {
+            if (segment.compareTo(oldest) >= 0) {
+                continue;
+            }
+            indexes.remove(segment);
+            dirtyIndexes.remove(segment);
+            try {
+                Files.deleteIfExists(directory.resolve(segment));
+                Files.deleteIfExists(directory.resolve(segment + INDEX_SUFFIX));
+                log.info("Deleted expired audit segment: " + segment);
+            } catch (IOException e) {
+                log.warn("Failed to delete expired audit segment: " + segment, e);
+            }
+        }
+    }
+
+    /**
+     * Writes pending events and all indexes.
+     */
+    public void close() {
+        flush();
+        for (String segment : dirtyIndexes) {
+            sealIndex(segment);
+        }
+        dirtyIndexes.clear();
+    }
+
+    String segmentName(long timeMillis) {
+        return PREFIX + partition.formatter.format(Instant.ofEpochMilli(timeMillis)) + SUFFIX
+                + (compress ? GZIP_SUFFIX : "");
+    }
+
+    /**
+     * Scans the segments that can contain matching events, oldest first,
+     * until the limit is reached.
+     */
+    public QueryResult query(Query query) {
+        QueryResult result = new QueryResult();
+        int limit = query.getLimit();
+
+        for (Map.Entry<String, SegmentIndex> entry : new TreeMap<>(indexes).entrySet()) {
+            if (!mayContain(entry.getKey(), entry.getValue(), query)) {
+                continue;
+            }
+            result.scannedSegments++;
+
+            Path path = directory.resolve(entry.getKey());
+            try (BufferedReader reader = openReader(path)) {
+                String line;
+                while ((line = readLine(reader)) != null) {
+                    // Cheap substring checks before parsing the line
+                    if (query.getUserId() != null && !line.contains(query.getUserId())) {
+                        continue;
+                    }
+                    if (query.getObjectId() != null && !line.contains(query.getObjectId())) {
+                        continue;
+                    }
+                    Map<String, Object> event = parse(line);
+                    if (event == null || !query.matches(event)) {
+                        continue;
+                    }
+                    if (result.events.size() >= limit) {
+                        result.hasMoreItems = true;
+                        return result;
+                    }
+                    result.events.add(event);
+                }
+            } catch (IOException e) {
+                log.warn("Failed to read audit segment: " + path, e);
+            }
+        }
+        return result;
+    }
+
+    private boolean mayContain(String segment, SegmentIndex index, Query query) {
+        if (!index.mayContainTime(query)) {
+            return false;
+        }
+        if (query.getUserId() == null && query.getObjectId() == null) {
+            return true;
+        }
+        if (!index.hasFilters()) {
+            // Read for this query only; a segment without a readable index is scanned
+            index = readIndex(segment);
+            if (index == null) {
+                return true;
+            }
+        }
+        return index.mayContainIds(query);
+    }
+
+    public List<SegmentInfo> getSegments() {
+        List<SegmentInfo> result = new ArrayList<>();
+        for (Map.Entry<String, SegmentIndex> entry : new TreeMap<>(indexes).entrySet()) {
+            SegmentIndex index = entry.getValue();
+            SegmentInfo info = new SegmentInfo();
+            info.name = entry.getKey();
+            info.eventCount = index.getCount();
+            info.minTime = index.getMinTime();
+            info.maxTime = index.getMaxTime();
+            try {
+                info.sizeBytes = Files.size(directory.resolve(entry.getKey()));
+            } catch (IOException e) {
+                info.sizeBytes = -1;
+            }
+            result.add(info);
+        }
+        return result;
+    }
+
+    private BufferedReader openReader(Path path) throws IOException {
+        InputStream in = Files.newInputStream(path);
+        if (path.getFileName().toString().endsWith(GZIP_SUFFIX)) {
+            in = new GZIPInputStream(in);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The segment being appended to may end in a truncated line or gzip member;
+     * treat that as the end of the segment.
+     */
+    private String readLine(BufferedReader reader) {
+        try {
+            return reader.readLine();
+        } catch (IOException e) {
+            log.debug("Stopped reading audit segment at truncated data: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Map<String, Object> parse(String line) {
+        if (line.isEmpty()) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(line, new TypeReference<Map<String, Object>>() {});
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String asString(Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    private static long asLong(Object value) {
+        return (value instanceof Number) ? ((Number) value).longValue() : 0L;
+    }
+
+    /**
+     * Time range of a segment and Bloom filters of its user and object IDs.
+     * The filters have a fixed size, whatever the number of IDs; a false
+     * positive only costs a scan of the segment.
+     */
+    public static class SegmentIndex {
+        static final int FILTER_BITS = 1 << 16;
+        private static final int FILTER_HASHES = 4;
+
+        private long count;
+        private long minTime = Long.MAX_VALUE;
+        private long maxTime = Long.MIN_VALUE;
+        private byte[] users = new byte[FILTER_BITS / 8];
+        private byte[] objects = new byte[FILTER_BITS / 8];
+
+        public SegmentIndex() {}
+
+        synchronized void record(long time, String userId, String objectId) {
+            count++;
+            minTime = Math.min(minTime, time);
+            maxTime = Math.max(maxTime, time);
+            if (userId != null) {
+                addToFilter(users, userId);
+            }
+            if (objectId != null) {
+                addToFilter(objects, objectId);
+            }
+        }
+
+        synchronized boolean mayContainTime(Query query) {
+            if (count == 0) {
+                return false;
+            }
+            if (query.getFrom() != null && maxTime < query.getFrom()) {
+                return false;
+            }
+            return query.getTo() == null || minTime <= query.getTo();
+        }
+
+        synchronized boolean mayContainIds(Query query) {
+            if (query.getUserId() != null && !filterContains(users, query.getUserId())) {
+                return false;
+            }
+            return query.getObjectId() == null || filterContains(objects, query.getObjectId());
+        }
+
+        synchronized boolean hasFilters() {
+            return users != null && objects != null;
+        }
+
+        /**
+         * A copy with the time range only, to keep in memory
+         */
+        synchronized SegmentIndex withoutFilters() {
+            SegmentIndex summary = new SegmentIndex();
+            summary.count = count;
+            summary.minTime = minTime;
+            summary.maxTime = maxTime;
+            summary.users = null;
+            summary.objects = null;
+            return summary;
+        }
+
+        private static void addToFilter(byte[] filter, String value) {
+            int hash = value.hashCode();
+            int h1 = mix(hash);
+            int h2 = mix(hash ^ 0x9e3779b9) | 1;
+            for (int i = 0; i < FILTER_HASHES; i++) {
+                int bit = Math.floorMod(h1 + i * h2, FILTER_BITS);
+                filter[bit >>> 3] |= (byte) (1 << (bit & 7));
+            }
+        }
+
+        private static boolean filterContains(byte[] filter, String value) {
+            int hash = value.hashCode();
+            int h1 = mix(hash);
+            int h2 = mix(hash ^ 0x9e3779b9) | 1;
+            for (int i = 0; i < FILTER_HASHES; i++) {
+                int bit = Math.floorMod(h1 + i * h2, FILTER_BITS);
+                if ((filter[bit >>> 3] & (1 << (bit & 7))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Murmur3 finalizer, so that similar IDs set unrelated bits
+        private static int mix(int h) {
+            h ^= h >>> 16;
+            h *= 0x85ebca6b;
+            h ^= h >>> 13;
+            h *= 0xc2b2ae35;
+            return h ^ (h >>> 16);
+        }
+
+        public synchronized long getCount() { return count; }
+        public synchronized void setCount(long count) { this.count = count; }
+        public synchronized long getMinTime() { return minTime; }
+        public synchronized void setMinTime(long minTime) { this.minTime = minTime; }
+        public synchronized long getMaxTime() { return maxTime; }
+        public synchronized void setMaxTime(long maxTime) { this.maxTime = maxTime; }
+        public synchronized byte[] getUsers() { return users; }
+        public synchronized void setUsers(byte[] users) { this.users = validFilter(users); }
+        public synchronized byte[] getObjects() { return objects; }
+        public synchronized void setObjects(byte[] objects) { this.objects = validFilter(objects); }
+
+        private static byte[] validFilter(byte[] filter) {
+            return filter != null && filter.length == FILTER_BITS / 8 ? filter : null;
+        }
+    }
+
+    /**
+     * Filter for {@link AuditSegmentStore#query(Query)}; null fields match everything
+     */
+    public static class Query {
+        public static final int DEFAULT_LIMIT = 100;
+        public static final int MAX_LIMIT = 1000;
+
+        private String userId;
+        private String objectId;
+        private String operation;
+        private String repositoryId;
+        private String result;
+        private Long from;
+        private Long to;
+        private int limit = DEFAULT_LIMIT;
+
+        public Query() {}
+
+        boolean matches(Map<String, Object> event) {
+            if (userId != null && !userId.equals(event.get("userId"))) {
+                return false;
+            }
+            if (objectId != null && !objectId.equals(event.get("objectId"))) {
+                return false;
+            }
+            if (operation != null && !operation.equals(event.get("operation"))) {
+                return false;
+            }
+            if (repositoryId != null && !repositoryId.equals(event.get("repositoryId"))) {
+                return false;
+            }
+            if (result != null && !result.equals(event.get("result"))) {
+                return false;
+            }
+            long time = asLong(event.get("timestampMs"));
+            if (from != null && time < from) {
+                return false;
+            }
+            return to == null || time <= to;
+        }
+
+        public String getUserId() { return userId; }
+        public void setUserId(String userId) { this.userId = userId; }
+        public String getObjectId() { return objectId; }
+        public void setObjectId(String objectId) { this.objectId = objectId; }
+        public String getOperation() { return operation; }
+        public void setOperation(String operation) { this.operation = operation; }
+        public String getRepositoryId() { return repositoryId; }
+        public void setRepositoryId(String repositoryId) { this.repositoryId = repositoryId; }
+        public String getResult() { return result; }
+        public void setResult(String result) { this.result = result; }
+        public Long getFrom() { return from; }
+        public void setFrom(Long from) { this.from = from; }
+        public Long getTo() { return to; }
+        public void setTo(Long to) { this.to = to; }
+        public int getLimit() { return limit; }
+        public void setLimit(int limit) { this.limit = (limit <= 0) ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT); }
+    }
+
+    public static class QueryResult {
+        private final List<Map<String, Object>> events = new ArrayList<>();
+        private boolean hasMoreItems;
+        private int scannedSegments;
+
+        public List<Map<String, Object>> getEvents() { return Collections.unmodifiableList(events); }
+        public boolean isHasMoreItems() { return hasMoreItems; }
+        public int getScannedSegments() { return scannedSegments; }
+    }
+
+    public static class SegmentInfo {
+        private String name;
+        private long eventCount;
+        private long minTime;
+        private long maxTime;
+        private long sizeBytes;
+
+        public String getName() { return name; }
+        public long getEventCount() { return eventCount; }
+        public long getMinTime() { return minTime; }
+        public long getMaxTime() { return maxTime; }
+        public long getSizeBytes() { return sizeBytes; }
+    }
+}
@@ -0,0 +1,98 @@
+package jp.aegif.nemaki.businesslogic;
+
+/**
+ * Retention and compaction of the change log.
+ *
+ * Change events are written for every create/update/security/delete and are
+ * never removed otherwise, so this service prunes:
+ * - events older than changelog.retention.days
+ * - UPDATED events superseded by a later UPDATED/DELETED event of the same object
+ * - events beyond changelog.retention.max.events.per.object per object
+ * Pruned events are copied to the "{repositoryId}_changelog" database first
+ * when changelog.compaction.archive is enabled.
+ */
+public interface ChangeLogMaintenanceService {
+
+	/**
+	 * Result of a compaction run, updated while the run goes on
+	 */
+	public static class CompactionResult {
+		private volatile String repositoryId;
+		private volatile String status; // "running", "completed", "error"
+		private volatile long scannedCount;
+		private volatile long expiredCount;
+		private volatile long collapsedCount;
+		private volatile long trimmedCount;
+		private volatile long deletedCount;
+		private volatile long startTime;
+		private volatile long endTime;
+		private volatile String errorMessage;
+
+		public CompactionResult() {}
+
+		public String getRepositoryId() { return repositoryId; }
+		public void setRepositoryId(String repositoryId) { this.repositoryId = repositoryId; }
+		public String getStatus() { return status; }
+		public void setStatus(String status) { this.status = status; }
+		public long getScannedCount() { return scannedCount; }
+		public void setScannedCount(long scannedCount) { this.scannedCount = scannedCount; }
+		public long getExpiredCount() { return expiredCount; }
+		public void setExpiredCount(long expiredCount) { this.expiredCount = expiredCount; }
+		public long getCollapsedCount() { return collapsedCount; }
+		public void setCollapsedCount(long collapsedCount) { this.collapsedCount = collapsedCount; }
+		public long getTrimmedCount() { return trimmedCount; }
+		public void setTrimmedCount(long trimmedCount) { this.trimmedCount = trimmedCount; }
+		public long getDeletedCount() { return deletedCount; }
+		public void setDeletedCount(long deletedCount) { this.deletedCount = deletedCount; }
+		public long getStartTime() { return startTime; }
+		public void setStartTime(long startTime) { this.startTime = startTime; }
+		public long getEndTime() { return endTime; }
+		public void setEndTime(long endTime) { this.endTime = endTime; }
+		public String getErrorMessage() { return errorMessage; }
+		public void setErrorMessage(String errorMessage) { this.errorMessage = errorMessage; }
+	}
+
+	/**
+	 * Size of the change log
+	 */
+	public static class ChangeLogMetrics {
+		private String repositoryId;
+		private long eventCount;
+		private long viewQueryMillis; // includes the changesByToken index update
+		private CompactionResult lastCompaction;
+
+		public ChangeLogMetrics() {}
+
+		public String getRepositoryId() { return repositoryId; }
+		public void setRepositoryId(String repositoryId) { this.repositoryId = repositoryId; }
+		public long getEventCount() { return eventCount; }
+		public void setEventCount(long eventCount) { this.eventCount = eventCount; }
+		public long getViewQueryMillis() { return viewQueryMillis; }
+		public void setViewQueryMillis(long viewQueryMillis) { this.viewQueryMillis = viewQueryMillis; }
+		public CompactionResult getLastCompaction() { return lastCompaction; }
+		public void setLastCompaction(CompactionResult lastCompaction) { this.lastCompaction = lastCompaction; }
+	}
+
+	/**
+	 * Apply the retention policy to the change log of a repository.
+	 * Runs synchronously; concurrent runs for the same repository are rejected.
+	 * @param repositoryId
+	 * @return
+	 */
+	CompactionResult compact(String repositoryId);
+
+	/**
+	 * Start {@link #compact(String)} in the background and return at once.
+	 * The returned result is updated as the run goes on and is reported by
+	 * {@link #getMetrics(String)} as the last compaction.
+	 * @param repositoryId
+	 * @return the started run, or the run already in progress
+	 */
+	CompactionResult startCompaction(String repositoryId);
+
+	/**
+	 * @param repositoryId
+	 * @return
+	 */
+	ChangeLogMetrics getMetrics(String repositoryId);
+}
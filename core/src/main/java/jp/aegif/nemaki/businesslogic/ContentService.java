@@ -21,13 +21,18 @@
 package jp.aegif.nemaki.businesslogic;
 
 import java.math.BigInteger;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
 
 import jp.aegif.nemaki.model.Acl;
 import jp.aegif.nemaki.model.Archive;
+import jp.aegif.nemaki.model.BulkWriteResult;
 import jp.aegif.nemaki.model.AttachmentNode;
 import jp.aegif.nemaki.model.Change;
+import jp.aegif.nemaki.model.ChangeFeed;
 import jp.aegif.nemaki.model.Content;
 import jp.aegif.nemaki.model.Document;
 import jp.aegif.nemaki.model.Folder;
@@ -51,6 +56,28 @@ import org.apache.chemistry.opencmis.commons.spi.Holder;
 
 public interface ContentService {
 
+	/**
+	 * Follows a deleteTree call, which reports to it between its batches
+	 */
+	interface DeleteTreeProgress {
+		/**
+		 * The tree has been read
+		 *
+		 * @param total objects in the tree, the folder itself included
+		 */
+		void started(int total);
+
+		/**
+		 * @param count objects a batch deleted
+		 */
+		void deleted(int count);
+
+		/**
+		 * @return true to stop before the next batch; what is not deleted yet stays in place
+		 */
+		boolean isCancelled();
+	}
+
 	// ///////////////////////////////////////
 	// Content
 	// ///////////////////////////////////////
@@ -80,6 +107,15 @@ public interface ContentService {
 	 */
 	Content getContent(String repositoryId, String objectId);
 
+	/**
+	 * Get contents(without type-specified) in one bulk read
+	 * @param repositoryId
+	 * @param objectIds
+	 *
+	 * @return contents in the order of objectIds; not found ones are left out
+	 */
+	List<Content> getContents(String repositoryId, Collection<String> objectIds);
+
 	/**
 	 * Get a fileable content by path
 	 * @param repositoryId TODO
@@ -107,6 +143,15 @@ public interface ContentService {
 	 */
 	List<Content> getChildren(String repositoryId, String folderId);
 
+	/**
+	 * Get children under several folders in one bulk read
+	 * @param repositoryId
+	 * @param folderIds
+	 *
+	 * @return children by folder ID, in the order of folderIds
+	 */
+	Map<String, List<Content>> getChildrenOfParents(String repositoryId, Collection<String> folderIds);
+
 	/**
 	 * Get a document
 	 * @param repositoryId TODO
@@ -394,6 +439,18 @@ public interface ContentService {
 			org.apache.chemistry.opencmis.commons.data.Acl addAces,
 			org.apache.chemistry.opencmis.commons.data.Acl removeAces, ExtensionsData extension);
 
+	/**
+	 * Create relationships with the default ACL, writing them and their change
+	 * events in bulk requests
+	 *
+	 * @param callContext
+	 * @param repositoryId
+	 * @param propertiesList properties of each relationship
+	 * @return the relationships that were created
+	 */
+	List<Relationship> createRelationships(CallContext callContext, String repositoryId,
+			List<Properties> propertiesList);
+
 	/**
 	 * Create a policy
 	 *
@@ -552,6 +609,19 @@ public interface ContentService {
 	List<String> deleteTree(CallContext context, String repositoryId, String folderId,
 			Boolean allVersions, Boolean continueOnFailure, Boolean deletedWithParent);
 
+	/**
+	 * Delete a whole folder tree in bulk. The tree is read once, then its objects are
+	 * archived, recorded in the change log and deleted in parallel batches, leaves first.
+	 *
+	 * @param deletable whether an object may be deleted; null allows all. A refused object
+	 *        and the folders above it are kept and reported
+	 * @param progress told about each batch, and able to stop the deletion; may be null
+	 * @return IDs of the objects that were not deleted
+	 */
+	List<String> deleteTree(CallContext context, String repositoryId, String folderId,
+			Boolean allVersions, Boolean continueOnFailure, Boolean deletedWithParent, Predicate<Content> deletable,
+			DeleteTreeProgress progress);
+
 	// ///////////////////////////////////////
 	// Attachment
 	// ///////////////////////////////////////
@@ -645,6 +715,16 @@ public interface ContentService {
 			Boolean includeProperties, String filter, Boolean includePolicyIds,
 			Boolean includeAcl, BigInteger maxItems, ExtensionsData extension);
 
+	/**
+	 * Read one page of change events after the given change log token
+	 * @param repositoryId
+	 * @param changeLogToken CouchDB update sequence. null means "from the beginning"
+	 * @param maxItems "<= 0" means "infinite"
+	 * @param longPollTimeout milliseconds to wait for a new event when none is pending. 0 returns immediately
+	 * @return
+	 */
+	ChangeFeed getChangeFeed(String repositoryId, String changeLogToken, int maxItems, long longPollTimeout);
+
 	/**
 	 * Get the latest change token in the repository
 	 * @param repositoryId TODO
@@ -739,6 +819,20 @@ public interface ContentService {
 	 */
 	String writeChangeEvent(CallContext callContext, String repositoryId, Content content,
 			Acl acl, ChangeType changeType);
+
+	/**
+	 * Write multiple contents together with their change events using bulk requests.
+	 * New contents(without revision) get their id assigned before writing.
+	 * Change events are written in a second request, only for contents that were actually saved.
+	 *
+	 * @param callContext
+	 * @param repositoryId
+	 * @param contents contents to be created or updated
+	 * @param changeType change type to be recorded. If null, no change event is written.
+	 * @return per-content results in the same order as contents
+	 */
+	List<BulkWriteResult> bulkWrite(CallContext callContext, String repositoryId,
+			List<? extends Content> contents, ChangeType changeType);
 	
 	/**
 	 * Update version without checkIn/Out
@@ -757,10 +851,20 @@ public interface ContentService {
 			ContentStream contentStream, String checkinComment, Document previousDoc, VersionSeries versionSeries);
 
 	/**
-	 * Get the actual attachment size from CouchDB metadata
+	 * Get the actual attachment size by reading the stored binary.
+	 * Reads use the stored length; this is for checking and repairing it.
 	 * @param repositoryId Repository ID
 	 * @param attachmentId Attachment node ID
-	 * @return Actual size in bytes from CouchDB attachment metadata, or null if not available
+	 * @return Actual size in bytes, or null if not available
 	 */
 	Long getAttachmentActualSize(String repositoryId, String attachmentId);
+
+	/**
+	 * Compare the stored length of an attachment with the size of its binary
+	 * @param repositoryId Repository ID
+	 * @param attachmentId Attachment node ID
+	 * @param repair whether to store the actual size when they differ
+	 * @return the actual size if it differs from the stored length, otherwise null
+	 */
+	Long checkAttachmentLength(String repositoryId, String attachmentId, boolean repair);
 }
\ No newline at end of file
@@ -0,0 +1,69 @@
+package jp.aegif.nemaki.businesslogic;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import jp.aegif.nemaki.businesslogic.job.JobHandler;
+import jp.aegif.nemaki.model.Job;
+
+/**
+ * Runs long repository operations in the background so that requests return
+ * at once with a job to follow.
+ *
+ * Every job type has a handler and a bounded worker pool of its own, so a
+ * burst of one kind of job cannot starve the others. Jobs are persisted in the
+ * repository database; a job interrupted by a shutdown is resumed from its
+ * last checkpoint.
+ */
+public interface JobService {
+
+	/**
+	 * Queue a job
+	 *
+	 * @param repositoryId
+	 * @param type type of a registered job handler
+	 * @param creator user who started the job
+	 * @param parameters handler-specific parameters
+	 * @return the queued job
+	 * @throws IllegalArgumentException if there is no handler for the type
+	 * @throws IllegalStateException if the queue of that job type is full
+	 */
+	Job submit(String repositoryId, String type, String creator, Map<String, String> parameters);
+
+	/**
+	 * @return null if there is no such job
+	 */
+	Job getJob(String repositoryId, String jobId);
+
+	/**
+	 * @return jobs of the repository, newest first
+	 */
+	List<Job> getJobs(String repositoryId);
+
+	/**
+	 * Request cancellation. A running job stops at its next check.
+	 *
+	 * @return the job, or null if there is no such job
+	 */
+	Job cancel(String repositoryId, String jobId);
+
+	/**
+	 * Queue a failed, cancelled or interrupted job again, continuing from its checkpoint
+	 *
+	 * @return the job, or null if there is no such job
+	 * @throws IllegalStateException if the job is still queued or running
+	 */
+	Job resume(String repositoryId, String jobId);
+
+	/**
+	 * Worker pool of a job type, for services that schedule their own background work
+	 */
+	ExecutorService getWorkerPool(String type);
+
+	/**
+	 * Add the handler of a job type, for services that run their own work as jobs and
+	 * so cannot be among the configured handlers without depending on each other
+	 */
+	void registerHandler(JobHandler handler);
+}
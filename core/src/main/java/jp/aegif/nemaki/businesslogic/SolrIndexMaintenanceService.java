@@ -48,6 +48,12 @@ public interface SolrIndexMaintenanceService {
         private String errorMessage;
         private List<String> errors;
         private List<String> warnings;  // Warnings (non-fatal issues like verification skipped)
+        private String mode;  // "inplace" or "bluegreen"
+        private String phase;  // Blue/green only: "build", "replay", "swapped"
+        private int totalPartitions;
+        private int completedPartitions;
+        private long replayedCount;  // Change log events applied after the scan started
+        private boolean resumed;  // Continued from checkpoints of an interrupted run
 
         public ReindexStatus() {}
 
@@ -79,6 +85,18 @@ public interface SolrIndexMaintenanceService {
         public void setErrors(List<String> errors) { this.errors = errors; }
         public List<String> getWarnings() { return warnings; }
         public void setWarnings(List<String> warnings) { this.warnings = warnings; }
+        public String getMode() { return mode; }
+        public void setMode(String mode) { this.mode = mode; }
+        public String getPhase() { return phase; }
+        public void setPhase(String phase) { this.phase = phase; }
+        public int getTotalPartitions() { return totalPartitions; }
+        public void setTotalPartitions(int totalPartitions) { this.totalPartitions = totalPartitions; }
+        public int getCompletedPartitions() { return completedPartitions; }
+        public void setCompletedPartitions(int completedPartitions) { this.completedPartitions = completedPartitions; }
+        public long getReplayedCount() { return replayedCount; }
+        public void setReplayedCount(long replayedCount) { this.replayedCount = replayedCount; }
+        public boolean isResumed() { return resumed; }
+        public void setResumed(boolean resumed) { this.resumed = resumed; }
     }
 
     /**
@@ -150,6 +168,19 @@ public interface SolrIndexMaintenanceService {
      */
     boolean startFullReindex(String repositoryId);
 
+    /**
+     * Start a blue/green reindex.
+     * The index is rebuilt into a shadow core while the live core keeps serving
+     * queries, and the cores are swapped when the rebuild has caught up with the
+     * change log. The Solr core is shared, so all repositories are rebuilt; the
+     * status is reported under each of them. An interrupted rebuild resumes
+     * from its checkpoints.
+     *
+     * @param repositoryId the repository ID the request was made for
+     * @return true if reindex started successfully, false if any reindex is already running
+     */
+    boolean startBlueGreenReindex(String repositoryId);
+
     /**
      * Start a folder-based reindex.
      * Reindexes all documents under the specified folder.
@@ -16,6 +16,10 @@ public interface TypeService {
 	NemakiPropertyDefinitionDetail getPropertyDefinitionDetail(String repositoryId, String detailId);
 	List<NemakiPropertyDefinitionDetail> getPropertyDefinitionDetailByCoreNodeId(
 			String repositoryId, String coreNodeId);
+	/**
+	 * Digest of all type and property definitions, changed by every update of them
+	 */
+	String getTypeSystemRevision(String repositoryId);
 	NemakiTypeDefinition createTypeDefinition(
 			String repositoryId, NemakiTypeDefinition typeDefinition);
 	NemakiTypeDefinition updateTypeDefinition(
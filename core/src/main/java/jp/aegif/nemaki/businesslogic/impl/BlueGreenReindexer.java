@@ -0,0 +1,539 @@
+/*******************************************************************************
+ * Copyright (c) 2013 aegif.
+ *
+ * This file is part of NemakiWare.
+ *
+ * NemakiWare is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * NemakiWare is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with NemakiWare.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     aegif - Solr index maintenance service implementation
+ ******************************************************************************/
+package jp.aegif.nemaki.businesslogic.impl;
+
+import jp.aegif.nemaki.businesslogic.SolrIndexMaintenanceService.ReindexStatus;
+import jp.aegif.nemaki.cmis.aspect.query.solr.SolrUtil;
+import jp.aegif.nemaki.dao.ContentDaoService;
+import jp.aegif.nemaki.model.Change;
+import jp.aegif.nemaki.model.ChangeFeed;
+import jp.aegif.nemaki.model.Content;
+import jp.aegif.nemaki.model.ContentPage;
+import jp.aegif.nemaki.model.ReindexCheckpoint;
+
+import org.apache.chemistry.opencmis.commons.enums.ChangeType;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.request.CoreAdminRequest;
+import org.apache.solr.client.solrj.response.CoreAdminResponse;
+import org.apache.solr.common.params.CoreAdminParams.CoreAdminAction;
+import org.apache.solr.common.util.NamedList;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Rebuilds the Solr index into a shadow core while the live core keeps serving
+ * queries, then swaps the two cores.
+ *
+ * The live core is shared by all repositories, so one run covers all of them.
+ * Each repository is scanned in object ID order as 16 disjoint key ranges by a
+ * pool of workers. The change log position is recorded before the scan, and
+ * the changes made during the scan are replayed before and after the swap, so
+ * no update is lost. Progress is checkpointed in each repository database;
+ * an interrupted run continues where it stopped.
+ *
+ * A batch that still fails after retrying stops the run before its position is
+ * checkpointed, so the cores are never swapped over an incomplete index and a
+ * resumed run indexes the batch again.
+ */
+class BlueGreenReindexer {
+
+    private static final Log log = LogFactory.getLog(BlueGreenReindexer.class);
+
+    static final String LIVE_CORE = "nemaki";
+
+    static final String PHASE_BUILD = "build";
+    static final String PHASE_REPLAY = "replay";
+    static final String PHASE_SWAPPED = "swapped";
+
+    /** Start keys of the object ID partitions; "" is the beginning of the key space */
+    static final String[] PARTITION_KEYS = {
+        "", "1", "2", "3", "4", "5", "6", "7", "8", "9", "a", "b", "c", "d", "e", "f"
+    };
+
+    private static final int COMMIT_WITHIN_MS = 60000;
+    private static final int REPLAY_PAGE_SIZE = 500;
+    private static final int INDEX_ATTEMPTS = 3;
+    private static final long INDEX_RETRY_WAIT_MS = 500;
+
+    private final ContentDaoService contentDaoService;
+    private final SolrUtil solrUtil;
+    private final List<String> repositoryIds;
+    private final String shadowCore;
+    private final int workers;
+    private final int pageSize;
+    private final boolean keepPrevious;
+    private final ReindexStatus status;
+    private final BooleanSupplier cancelled;
+    // Set when a worker failed, to stop the others
+    private final AtomicBoolean stopped = new AtomicBoolean();
+
+    private final Map<String, ReindexCheckpoint> checkpoints = new LinkedHashMap<>();
+    private final AtomicLong indexedCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong replayedCount = new AtomicLong();
+    private final AtomicInteger completedPartitions = new AtomicInteger();
+
+    BlueGreenReindexer(ContentDaoService contentDaoService, SolrUtil solrUtil, List<String> repositoryIds,
+            String shadowCore, int workers, int pageSize, boolean keepPrevious,
+            ReindexStatus status, BooleanSupplier cancelled) {
+        this.contentDaoService = contentDaoService;
+        this.solrUtil = solrUtil;
+        this.repositoryIds = repositoryIds;
+        this.shadowCore = shadowCore;
+        this.workers = Math.max(1, workers);
+        this.pageSize = Math.max(1, pageSize);
+        this.keepPrevious = keepPrevious;
+        this.status = status;
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * @return true if any repository has a checkpoint of an unfinished run
+     */
+    static boolean hasCheckpoints(ContentDaoService contentDaoService, List<String> repositoryIds) {
+        for (String repositoryId : repositoryIds) {
+            if (contentDaoService.getReindexCheckpoint(repositoryId) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Run the rebuild to the end. Returns normally when cancelled; throws when a
+     * step failed, leaving the checkpoints for a later resume.
+     */
+    void run(boolean resume) throws Exception {
+        if (!(resume && loadCheckpoints())) {
+            start();
+        }
+        status.setTotalPartitions(repositoryIds.size() * PARTITION_KEYS.length);
+
+        if (!isSwapped()) {
+            build();
+            if (cancelled.getAsBoolean()) {
+                abort();
+                return;
+            }
+
+            status.setPhase(PHASE_REPLAY);
+            for (String repositoryId : repositoryIds) {
+                ReindexCheckpoint checkpoint = checkpoints.get(repositoryId);
+                checkpoint.setPhase(PHASE_REPLAY);
+                save(repositoryId, checkpoint);
+                replay(repositoryId, checkpoint, shadowCore);
+            }
+            commit(shadowCore);
+            if (cancelled.getAsBoolean()) {
+                abort();
+                return;
+            }
+
+            swap();
+            for (String repositoryId : repositoryIds) {
+                ReindexCheckpoint checkpoint = checkpoints.get(repositoryId);
+                checkpoint.setPhase(PHASE_SWAPPED);
+                save(repositoryId, checkpoint);
+            }
+        }
+
+        // Changes made between the last replay and the swap only reached the old core
+        status.setPhase(PHASE_SWAPPED);
+        for (String repositoryId : repositoryIds) {
+            replay(repositoryId, checkpoints.get(repositoryId), null);
+        }
+        commit(null);
+
+        if (!keepPrevious) {
+            unloadCore(shadowCore);
+        }
+        for (String repositoryId : repositoryIds) {
+            contentDaoService.deleteReindexCheckpoint(repositoryId);
+        }
+        log.info("Blue/green reindex completed: indexed " + indexedCount.get() + ", replayed "
+                + replayedCount.get() + ", errors " + errorCount.get());
+    }
+
+    long getIndexedCount() {
+        return indexedCount.get();
+    }
+
+    long getErrorCount() {
+        return errorCount.get();
+    }
+
+    /**
+     * @return false if there is no consistent set of checkpoints to continue from
+     */
+    private boolean loadCheckpoints() throws Exception {
+        String runId = null;
+        for (String repositoryId : repositoryIds) {
+            ReindexCheckpoint checkpoint = contentDaoService.getReindexCheckpoint(repositoryId);
+            if (checkpoint == null || (runId != null && !runId.equals(checkpoint.getRunId()))
+                    || !shadowCore.equals(checkpoint.getShadowCore())) {
+                log.warn("Blue/green reindex checkpoints are incomplete, starting over");
+                checkpoints.clear();
+                return false;
+            }
+            runId = checkpoint.getRunId();
+            checkpoints.put(repositoryId, checkpoint);
+        }
+
+        ReindexCheckpoint first = checkpoints.values().iterator().next();
+        // Before the swap the rebuilt index lives in the shadow core, which must still be there
+        if (!PHASE_SWAPPED.equals(first.getPhase()) && !coreExists(shadowCore)) {
+            log.warn("Shadow core " + shadowCore + " is gone, starting over");
+            checkpoints.clear();
+            return false;
+        }
+
+        long indexed = 0;
+        int remaining = 0;
+        for (ReindexCheckpoint checkpoint : checkpoints.values()) {
+            indexed += checkpoint.getIndexedCount();
+            remaining += checkpoint.getPartitions().size();
+        }
+        indexedCount.set(indexed);
+        completedPartitions.set(repositoryIds.size() * PARTITION_KEYS.length - remaining);
+        status.setResumed(true);
+        status.setPhase(first.getPhase());
+        log.info("Resuming blue/green reindex " + runId + " in phase " + first.getPhase());
+        return true;
+    }
+
+    private void start() throws Exception {
+        String runId = UUID.randomUUID().toString();
+        log.info("Starting blue/green reindex " + runId + " into core " + shadowCore);
+        status.setPhase(PHASE_BUILD);
+        createShadowCore();
+
+        long now = System.currentTimeMillis();
+        for (String repositoryId : repositoryIds) {
+            ReindexCheckpoint stale = contentDaoService.getReindexCheckpoint(repositoryId);
+            ReindexCheckpoint checkpoint = new ReindexCheckpoint();
+            if (stale != null) {
+                checkpoint.setRevision(stale.getRevision());
+            }
+            checkpoint.setRunId(runId);
+            checkpoint.setShadowCore(shadowCore);
+            checkpoint.setPhase(PHASE_BUILD);
+            checkpoint.setStartTime(now);
+            // Taken before the scan: everything changed from here on is replayed
+            checkpoint.setChangeToken(contentDaoService.getLatestChangeLogToken(repositoryId));
+            for (String key : PARTITION_KEYS) {
+                checkpoint.getPartitions().put(key, "");
+            }
+            save(repositoryId, checkpoint);
+            checkpoints.put(repositoryId, checkpoint);
+        }
+    }
+
+    private boolean isSwapped() {
+        return PHASE_SWAPPED.equals(checkpoints.values().iterator().next().getPhase());
+    }
+
+    private void build() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (String repositoryId : repositoryIds) {
+                ReindexCheckpoint checkpoint = checkpoints.get(repositoryId);
+                List<String> remaining;
+                synchronized (checkpoint) {
+                    remaining = new ArrayList<>(checkpoint.getPartitions().keySet());
+                }
+                for (String partition : remaining) {
+                    futures.add(pool.submit(() -> {
+                        scanPartition(repositoryId, checkpoint, partition);
+                        return null;
+                    }));
+                }
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    // Stop the other workers; the checkpoints keep what has been done
+                    stopped.set(true);
+                    throw new RuntimeException("Blue/green reindex failed: " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void scanPartition(String repositoryId, ReindexCheckpoint checkpoint, String partition) {
+        String startKey;
+        synchronized (checkpoint) {
+            startKey = checkpoint.getPartitions().get(partition);
+        }
+        if (startKey == null || startKey.isEmpty()) {
+            startKey = partition.isEmpty() ? null : partition;
+        }
+        String endKey = endKeyOf(partition);
+
+        while (!stopped.get() && !cancelled.getAsBoolean()) {
+            ContentPage page = contentDaoService.getContentsInRange(repositoryId, startKey, endKey, pageSize);
+            int indexed = index(repositoryId, page.getContents(), shadowCore);
+
+            synchronized (checkpoint) {
+                if (page.getNextKey() == null) {
+                    checkpoint.getPartitions().remove(partition);
+                } else {
+                    checkpoint.getPartitions().put(partition, page.getNextKey());
+                }
+                checkpoint.setIndexedCount(checkpoint.getIndexedCount() + indexed);
+                save(repositoryId, checkpoint);
+            }
+            status.setIndexedCount(indexedCount.addAndGet(indexed));
+
+            if (page.getNextKey() == null) {
+                status.setCompletedPartitions(completedPartitions.incrementAndGet());
+                return;
+            }
+            startKey = page.getNextKey();
+        }
+    }
+
+    private static String endKeyOf(String partition) {
+        for (int i = 0; i < PARTITION_KEYS.length - 1; i++) {
+            if (PARTITION_KEYS[i].equals(partition)) {
+                return PARTITION_KEYS[i + 1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Apply the change log from the checkpoint's token to the given core.
+     * Indexing is idempotent, so replaying a change twice is harmless.
+     */
+    private void replay(String repositoryId, ReindexCheckpoint checkpoint, String coreName) throws Exception {
+        String token = checkpoint.getChangeToken();
+        while (true) {
+            ChangeFeed feed = contentDaoService.getChangeFeed(repositoryId, token, REPLAY_PAGE_SIZE, 0);
+
+            // An object changed several times in the page is read and indexed once
+            Set<String> changed = new LinkedHashSet<>();
+            Set<String> deleted = new LinkedHashSet<>();
+            for (Change change : feed.getChanges()) {
+                if (change.getChangeType() == ChangeType.DELETED) {
+                    deleted.add(change.getObjectId());
+                } else {
+                    changed.add(change.getObjectId());
+                }
+            }
+            changed.removeAll(deleted);
+            List<Content> updated = contentDaoService.getContents(repositoryId, changed);
+            Set<String> found = new HashSet<>();
+            for (Content content : updated) {
+                found.add(content.getId());
+            }
+            // Objects deleted since the change are missing from the result
+            for (String objectId : changed) {
+                if (!found.contains(objectId)) {
+                    deleted.add(objectId);
+                }
+            }
+
+            index(repositoryId, updated, coreName);
+            delete(new ArrayList<>(deleted), coreName);
+            replayedCount.addAndGet(feed.getChanges().size());
+            status.setReplayedCount(replayedCount.get());
+
+            token = feed.getLatestToken();
+            checkpoint.setChangeToken(token);
+            save(repositoryId, checkpoint);
+            if (!feed.isHasMoreItems() || feed.getChanges().isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Index a batch, retrying it a few times.
+     *
+     * @throws IllegalStateException if the batch could not be indexed
+     */
+    private int index(String repositoryId, List<Content> contents, String coreName) {
+        if (contents.isEmpty()) {
+            return 0;
+        }
+        String target = coreName == null ? LIVE_CORE : coreName;
+        for (int attempt = 1;; attempt++) {
+            try {
+                return solrUtil.indexDocumentsBatch(repositoryId, contents, COMMIT_WITHIN_MS, coreName);
+            } catch (Exception e) {
+                if (attempt >= INDEX_ATTEMPTS) {
+                    errorCount.addAndGet(contents.size());
+                    status.setErrorCount(errorCount.get());
+                    throw new IllegalStateException("Failed to index " + contents.size() + " documents of repository "
+                            + repositoryId + " into core " + target + ": " + e.getMessage(), e);
+                }
+                log.warn("Failed to index " + contents.size() + " documents of repository " + repositoryId
+                        + " into core " + target + ", retrying: " + e.getMessage());
+            }
+            try {
+                Thread.sleep(INDEX_RETRY_WAIT_MS * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while retrying to index repository " + repositoryId, e);
+            }
+        }
+    }
+
+    private void delete(List<String> objectIds, String coreName) throws Exception {
+        if (objectIds.isEmpty()) {
+            return;
+        }
+        SolrClient client = solrUtil.getSolrClient(coreName);
+        try {
+            client.deleteById(objectIds, COMMIT_WITHIN_MS);
+        } finally {
+            client.close();
+        }
+    }
+
+    private void commit(String coreName) throws Exception {
+        SolrClient client = solrUtil.getSolrClient(coreName);
+        try {
+            client.commit();
+        } finally {
+            client.close();
+        }
+    }
+
+    private void save(String repositoryId, ReindexCheckpoint checkpoint) {
+        synchronized (checkpoint) {
+            if (!contentDaoService.saveReindexCheckpoint(repositoryId, checkpoint)) {
+                // Only the resume point is lost; the run itself can go on
+                log.warn("Failed to save blue/green reindex checkpoint of repository " + repositoryId);
+            }
+        }
+    }
+
+    private void abort() throws Exception {
+        log.info("Blue/green reindex cancelled, discarding core " + shadowCore);
+        unloadCore(shadowCore);
+        for (String repositoryId : repositoryIds) {
+            contentDaoService.deleteReindexCheckpoint(repositoryId);
+        }
+    }
+
+    // ///////////////////////////////////////
+    // Core administration
+    // ///////////////////////////////////////
+    /**
+     * Create an empty shadow core. It uses the sibling instance directory the
+     * live core does not, so after each swap the two directories trade places.
+     */
+    private void createShadowCore() throws Exception {
+        SolrClient admin = solrUtil.getSolrAdminClient();
+        try {
+            if (coreExists(admin, shadowCore)) {
+                log.info("Unloading stale shadow core " + shadowCore);
+                CoreAdminRequest.unloadCore(shadowCore, true, false, admin);
+            }
+
+            String liveDir = (String) CoreAdminRequest.getStatus(LIVE_CORE, admin)
+                    .getCoreStatus(LIVE_CORE).get("instanceDir");
+            if (liveDir == null) {
+                throw new IllegalStateException("Live core " + LIVE_CORE + " is not loaded");
+            }
+            liveDir = liveDir.replaceAll("[/\\\\]+$", "");
+            String parent = liveDir.substring(0, Math.max(liveDir.lastIndexOf('/'), liveDir.lastIndexOf('\\')) + 1);
+            String liveDirName = liveDir.substring(parent.length());
+            String shadowDir = parent + (shadowCore.equals(liveDirName) ? LIVE_CORE : shadowCore);
+
+            CoreAdminRequest.Create create = new CoreAdminRequest.Create();
+            create.setCoreName(shadowCore);
+            create.setInstanceDir(shadowDir);
+            create.setConfigName("solrconfig.xml");
+            create.setSchemaName("schema.xml");
+            create.setDataDir("data");
+            create.process(admin);
+            log.info("Created shadow core " + shadowCore + " in " + shadowDir);
+        } finally {
+            admin.close();
+        }
+    }
+
+    private void swap() throws Exception {
+        SolrClient admin = solrUtil.getSolrAdminClient();
+        try {
+            CoreAdminRequest request = new CoreAdminRequest();
+            request.setAction(CoreAdminAction.SWAP);
+            request.setCoreName(LIVE_CORE);
+            request.setOtherCoreName(shadowCore);
+            request.process(admin);
+            log.info("Swapped cores " + LIVE_CORE + " and " + shadowCore);
+        } finally {
+            admin.close();
+        }
+    }
+
+    private void unloadCore(String coreName) throws Exception {
+        SolrClient admin = solrUtil.getSolrAdminClient();
+        try {
+            if (coreExists(admin, coreName)) {
+                // Keep the instance directory: its conf is reused by the next run
+                CoreAdminRequest.unloadCore(coreName, true, false, admin);
+                log.info("Unloaded core " + coreName);
+            }
+        } finally {
+            admin.close();
+        }
+    }
+
+    private boolean coreExists(String coreName) throws Exception {
+        SolrClient admin = solrUtil.getSolrAdminClient();
+        try {
+            return coreExists(admin, coreName);
+        } finally {
+            admin.close();
+        }
+    }
+
+    private static boolean coreExists(SolrClient admin, String coreName) throws Exception {
+        CoreAdminResponse response = CoreAdminRequest.getStatus(coreName, admin);
+        NamedList<Object> coreStatus = response.getCoreStatus(coreName);
+        return coreStatus != null && coreStatus.get("instanceDir") != null;
+    }
+}
@@ -0,0 +1,98 @@
+package jp.aegif.nemaki.businesslogic.impl;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.scheduling.support.CronExpression;
+
+import jp.aegif.nemaki.businesslogic.ChangeLogMaintenanceService;
+import jp.aegif.nemaki.cmis.factory.info.RepositoryInfoMap;
+import jp.aegif.nemaki.util.PropertyManager;
+import jp.aegif.nemaki.util.constant.PropertyKey;
+
+/**
+ * Runs change log compaction for all repositories on the
+ * changelog.compaction.schedule.cron schedule.
+ */
+public class ChangeLogCompactionScheduler {
+
+	private static final Log log = LogFactory.getLog(ChangeLogCompactionScheduler.class);
+
+	private ChangeLogMaintenanceService changeLogMaintenanceService;
+	private PropertyManager propertyManager;
+	private RepositoryInfoMap repositoryInfoMap;
+
+	private ScheduledExecutorService scheduler;
+	private ScheduledFuture<?> scheduledTask;
+
+	public void init() {
+		if (!propertyManager.readBoolean(PropertyKey.CHANGELOG_COMPACTION_SCHEDULE_ENABLED)) {
+			log.info("Change log compaction scheduling is disabled");
+			return;
+		}
+
+		String cronExpression = propertyManager.readValue(PropertyKey.CHANGELOG_COMPACTION_SCHEDULE_CRON);
+		if (cronExpression == null || !CronExpression.isValidExpression(cronExpression.trim())) {
+			log.error("Invalid change log compaction cron expression: " + cronExpression);
+			return;
+		}
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "ChangeLogCompactionScheduler");
+			t.setDaemon(true);
+			return t;
+		});
+		scheduleNextExecution(cronExpression.trim());
+		log.info("Change log compaction scheduler initialized with cron: " + cronExpression);
+	}
+
+	private void scheduleNextExecution(String cronExpression) {
+		CronExpression cron = CronExpression.parse(cronExpression);
+		java.time.LocalDateTime now = java.time.LocalDateTime.now();
+		java.time.LocalDateTime next = cron.next(now);
+		if (next == null) {
+			log.warn("Could not determine next execution time for cron: " + cronExpression);
+			return;
+		}
+
+		long delayMillis = java.time.Duration.between(now, next).toMillis();
+		scheduledTask = scheduler.schedule(() -> {
+			try {
+				for (String repositoryId : repositoryInfoMap.keys()) {
+					changeLogMaintenanceService.compact(repositoryId);
+				}
+			} catch (Exception e) {
+				log.error("Error during scheduled change log compaction: " + e.getMessage(), e);
+			} finally {
+				scheduleNextExecution(cronExpression);
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+
+		log.debug("Next change log compaction scheduled for: " + next);
+	}
+
+	public void destroy() {
+		if (scheduledTask != null) {
+			scheduledTask.cancel(false);
+		}
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	public void setChangeLogMaintenanceService(ChangeLogMaintenanceService changeLogMaintenanceService) {
+		this.changeLogMaintenanceService = changeLogMaintenanceService;
+	}
+
+	public void setPropertyManager(PropertyManager propertyManager) {
+		this.propertyManager = propertyManager;
+	}
+
+	public void setRepositoryInfoMap(RepositoryInfoMap repositoryInfoMap) {
+		this.repositoryInfoMap = repositoryInfoMap;
+	}
+}
@@ -0,0 +1,226 @@
+package jp.aegif.nemaki.businesslogic.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.chemistry.opencmis.commons.enums.ChangeType;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import jp.aegif.nemaki.businesslogic.ChangeLogMaintenanceService;
+import jp.aegif.nemaki.dao.ContentDaoService;
+import jp.aegif.nemaki.model.Change;
+import jp.aegif.nemaki.model.ChangeFeed;
+import jp.aegif.nemaki.util.PropertyManager;
+import jp.aegif.nemaki.util.constant.PropertyKey;
+
+/**
+ * Walks the change log once in sequence order (one _changes page at a time)
+ * and prunes events according to the retention policy.
+ *
+ * Memory is bounded by the number of objects with change events: for each
+ * object the latest UPDATED event is remembered for collapsing, and when a
+ * per-object cap is configured up to that many kept events as well.
+ */
+public class ChangeLogMaintenanceServiceImpl implements ChangeLogMaintenanceService {
+
+	private static final Log log = LogFactory.getLog(ChangeLogMaintenanceServiceImpl.class);
+
+	/** Events read per _changes request and deleted per _bulk_docs request */
+	private static final int BATCH_SIZE = 1000;
+	private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+	private ContentDaoService contentDaoService;
+	private PropertyManager propertyManager;
+
+	private final Map<String, CompactionResult> lastResults = new ConcurrentHashMap<String, CompactionResult>();
+	private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+	// Background runs started through the REST API, one at a time
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "ChangeLogCompaction");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	@Override
+	public CompactionResult compact(String repositoryId) {
+		CompactionResult result = begin(repositoryId);
+		if (result == null) {
+			return lastResults.get(repositoryId);
+		}
+		run(repositoryId, result);
+		return result;
+	}
+
+	@Override
+	public CompactionResult startCompaction(String repositoryId) {
+		final CompactionResult result = begin(repositoryId);
+		if (result == null) {
+			return lastResults.get(repositoryId);
+		}
+		try {
+			executor.execute(() -> run(repositoryId, result));
+		} catch (RejectedExecutionException e) {
+			result.setStatus("error");
+			result.setErrorMessage("Compaction could not be started: " + e.getMessage());
+			result.setEndTime(System.currentTimeMillis());
+			running.remove(repositoryId);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the new run, or null if one is already running for the repository
+	 */
+	private CompactionResult begin(String repositoryId) {
+		if (!running.add(repositoryId)) {
+			log.warn("Change log compaction already running for repository: " + repositoryId);
+			return null;
+		}
+		CompactionResult result = new CompactionResult();
+		result.setRepositoryId(repositoryId);
+		result.setStatus("running");
+		result.setStartTime(System.currentTimeMillis());
+		lastResults.put(repositoryId, result);
+		return result;
+	}
+
+	private void run(String repositoryId, CompactionResult result) {
+		int retentionDays = readInt(PropertyKey.CHANGELOG_RETENTION_DAYS, 0);
+		int maxEventsPerObject = readInt(PropertyKey.CHANGELOG_RETENTION_MAX_EVENTS_PER_OBJECT, 0);
+		boolean collapseUpdates = !"false".equalsIgnoreCase(propertyManager.readValue(PropertyKey.CHANGELOG_COMPACTION_COLLAPSE_UPDATES));
+		boolean archive = !"false".equalsIgnoreCase(propertyManager.readValue(PropertyKey.CHANGELOG_COMPACTION_ARCHIVE));
+		long expiry = (retentionDays > 0) ? System.currentTimeMillis() - retentionDays * DAY_MILLIS : -1;
+
+		log.info("Start change log compaction: repository=" + repositoryId + ", retentionDays=" + retentionDays
+				+ ", maxEventsPerObject=" + maxEventsPerObject + ", collapseUpdates=" + collapseUpdates + ", archive=" + archive);
+
+		Map<String, Change> latestUpdates = new HashMap<String, Change>();
+		Map<String, Deque<Change>> keptEvents = new HashMap<String, Deque<Change>>();
+		List<Change> prunes = new ArrayList<Change>();
+
+		try {
+			String token = null;
+			ChangeFeed feed;
+			do {
+				feed = contentDaoService.getChangeFeed(repositoryId, token, BATCH_SIZE, 0);
+				token = feed.getLatestToken();
+
+				for (Change change : feed.getChanges()) {
+					result.setScannedCount(result.getScannedCount() + 1);
+					String objectId = change.getObjectId();
+
+					if (expiry > 0 && change.getTime() != null && change.getTime().getTimeInMillis() < expiry) {
+						prunes.add(change);
+						result.setExpiredCount(result.getExpiredCount() + 1);
+						continue;
+					}
+
+					if (collapseUpdates && objectId != null
+							&& (change.getChangeType() == ChangeType.UPDATED || change.getChangeType() == ChangeType.DELETED)) {
+						Change superseded = (change.getChangeType() == ChangeType.UPDATED)
+								? latestUpdates.put(objectId, change) : latestUpdates.remove(objectId);
+						if (superseded != null) {
+							prunes.add(superseded);
+							result.setCollapsedCount(result.getCollapsedCount() + 1);
+							Deque<Change> kept = keptEvents.get(objectId);
+							if (kept != null) {
+								kept.remove(superseded);
+							}
+						}
+					}
+
+					if (maxEventsPerObject > 0 && objectId != null) {
+						Deque<Change> kept = keptEvents.get(objectId);
+						if (kept == null) {
+							kept = new ArrayDeque<Change>();
+							keptEvents.put(objectId, kept);
+						}
+						kept.addLast(change);
+						if (kept.size() > maxEventsPerObject) {
+							Change oldest = kept.removeFirst();
+							if (oldest == latestUpdates.get(objectId)) {
+								latestUpdates.remove(objectId);
+							}
+							prunes.add(oldest);
+							result.setTrimmedCount(result.getTrimmedCount() + 1);
+						}
+					}
+
+					if (change.getChangeType() == ChangeType.DELETED) {
+						// Nothing can supersede events of a deleted object any more
+						keptEvents.remove(objectId);
+					}
+				}
+
+				if (prunes.size() >= BATCH_SIZE) {
+					result.setDeletedCount(result.getDeletedCount() + contentDaoService.pruneChangeEvents(repositoryId, prunes, archive));
+					prunes = new ArrayList<Change>();
+				}
+			} while (feed.isHasMoreItems());
+
+			result.setDeletedCount(result.getDeletedCount() + contentDaoService.pruneChangeEvents(repositoryId, prunes, archive));
+			result.setStatus("completed");
+		} catch (Exception e) {
+			log.error("Change log compaction failed for repository: " + repositoryId, e);
+			result.setStatus("error");
+			result.setErrorMessage(e.getMessage());
+		} finally {
+			result.setEndTime(System.currentTimeMillis());
+			running.remove(repositoryId);
+		}
+
+		log.info("Change log compaction " + result.getStatus() + ": repository=" + repositoryId
+				+ ", scanned=" + result.getScannedCount() + ", expired=" + result.getExpiredCount()
+				+ ", collapsed=" + result.getCollapsedCount() + ", trimmed=" + result.getTrimmedCount()
+				+ ", deleted=" + result.getDeletedCount() + ", time=" + (result.getEndTime() - result.getStartTime()) + "ms");
+	}
+
+	@Override
+	public ChangeLogMetrics getMetrics(String repositoryId) {
+		ChangeLogMetrics metrics = new ChangeLogMetrics();
+		metrics.setRepositoryId(repositoryId);
+
+		long start = System.currentTimeMillis();
+		metrics.setEventCount(contentDaoService.countChangeEvents(repositoryId));
+		metrics.setViewQueryMillis(System.currentTimeMillis() - start);
+		metrics.setLastCompaction(lastResults.get(repositoryId));
+		return metrics;
+	}
+
+	private int readInt(String key, int defaultValue) {
+		String value = propertyManager.readValue(key);
+		if (StringUtils.isBlank(value)) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			log.warn("Invalid value for " + key + ": " + value + ", using " + defaultValue);
+			return defaultValue;
+		}
+	}
+
+	public void destroy() {
+		executor.shutdownNow();
+	}
+
+	public void setContentDaoService(ContentDaoService contentDaoService) {
+		this.contentDaoService = contentDaoService;
+	}
+
+	public void setPropertyManager(PropertyManager propertyManager) {
+		this.propertyManager = propertyManager;
+	}
+}
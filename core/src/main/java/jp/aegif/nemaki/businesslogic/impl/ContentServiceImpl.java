@@ -34,7 +34,9 @@ import jp.aegif.nemaki.model.Acl;
 import jp.aegif.nemaki.model.Archive;
 import jp.aegif.nemaki.model.Aspect;
 import jp.aegif.nemaki.model.AttachmentNode;
+import jp.aegif.nemaki.model.BulkWriteResult;
 import jp.aegif.nemaki.model.Change;
+import jp.aegif.nemaki.model.ChangeFeed;
 import jp.aegif.nemaki.model.Content;
 import jp.aegif.nemaki.model.Document;
 import jp.aegif.nemaki.model.Folder;
@@ -53,6 +55,7 @@ import jp.aegif.nemaki.model.exception.ParentNoLongerExistException;
 import jp.aegif.nemaki.util.DataUtil;
 import jp.aegif.nemaki.util.PropertyManager;
 import jp.aegif.nemaki.util.cache.NemakiCachePool;
+import jp.aegif.nemaki.util.cache.RequestLookupCache;
 import jp.aegif.nemaki.util.cache.model.NemakiCache;
 import jp.aegif.nemaki.util.constant.CmisPermission;
 import jp.aegif.nemaki.util.constant.DomainType;
@@ -109,11 +112,19 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 /**
  * Node Service implementation
@@ -132,6 +143,7 @@ public class ContentServiceImpl implements ContentService {
 	private SolrUtil solrUtil;
 	private NemakiCachePool nemakiCachePool;
 	private TypeManager typeManager;
+	private volatile ForkJoinPool deleteTreePool;
 
 	private static final Logger log = LoggerFactory.getLogger(ContentServiceImpl.class);
 	private final static String PATH_SEPARATOR = "/";
@@ -170,6 +182,15 @@ public class ContentServiceImpl implements ContentService {
 		return getContentInternal(repositoryId, content);
 	}
 
+	@Override
+	public List<Content> getContents(String repositoryId, Collection<String> objectIds) {
+		List<Content> result = new ArrayList<Content>();
+		for (Content content : contentDaoService.getContents(repositoryId, objectIds)) {
+			result.add(getContentInternal(repositoryId, content));
+		}
+		return result;
+	}
+
 	/**
 	 * Get the pieces of content available at that path.
 	 *
@@ -283,6 +304,19 @@ public class ContentServiceImpl implements ContentService {
 		return result;
 	}
 
+	@Override
+	public Map<String, List<Content>> getChildrenOfParents(String repositoryId, Collection<String> folderIds) {
+		Map<String, List<Content>> result = new LinkedHashMap<String, List<Content>>();
+		for (Entry<String, List<Content>> entry : contentDaoService.getChildrenOfParents(repositoryId, folderIds).entrySet()) {
+			List<Content> children = new ArrayList<Content>();
+			for (Content content : entry.getValue()) {
+				children.add(getContentInternal(repositoryId, content));
+			}
+			result.put(entry.getKey(), children);
+		}
+		return result;
+	}
+
 	/**
 	 * content / user or group items are
 	 *
@@ -510,7 +544,8 @@ public class ContentServiceImpl implements ContentService {
 
 	@Override
 	public VersionSeries getVersionSeries(String repositoryId, String versionSeriesId) {
-		return contentDaoService.getVersionSeries(repositoryId, versionSeriesId);
+		return RequestLookupCache.get(RequestLookupCache.VERSION_SERIES, repositoryId, versionSeriesId,
+				() -> contentDaoService.getVersionSeries(repositoryId, versionSeriesId));
 	}
 
 	@Override
@@ -545,6 +580,16 @@ public class ContentServiceImpl implements ContentService {
 
 	@Override
 	public String calculatePath(String repositoryId, Content content) {
+		// Ancestors come from the folder path index; the content's own name is taken
+		// as given, since it may not have been saved yet
+		if (content != null && content.getParentId() != null && !isRoot(repositoryId, content)) {
+			String parentPath = contentDaoService.getFolderPath(repositoryId, content.getParentId());
+			if (parentPath != null) {
+				return parentPath.equals(PATH_SEPARATOR) ? PATH_SEPARATOR + content.getName()
+						: parentPath + PATH_SEPARATOR + content.getName();
+			}
+		}
+
 		List<String> path = calculatePathInternal(new ArrayList<String>(), content, repositoryId);
 		path.remove(0);
 		return PATH_SEPARATOR + StringUtils.join(path, PATH_SEPARATOR);
@@ -627,7 +672,8 @@ public class ContentServiceImpl implements ContentService {
 
 	@Override
 	public UserItem getUserItemById(String repositoryId, String userId) {
-		return contentDaoService.getUserItemById(repositoryId, userId);
+		return RequestLookupCache.get(RequestLookupCache.USER, repositoryId, userId,
+				() -> contentDaoService.getUserItemById(repositoryId, userId));
 	}
 
 	@Override
@@ -657,6 +703,12 @@ public class ContentServiceImpl implements ContentService {
 
 	@Override
 	public Set<String> getGroupIdsContainingUser(String repositoryId, String userId) {
+		// Callers may modify the returned set
+		return new HashSet<String>(RequestLookupCache.get(RequestLookupCache.GROUPS, repositoryId, userId,
+				() -> loadGroupIdsContainingUser(repositoryId, userId)));
+	}
+
+	private Set<String> loadGroupIdsContainingUser(String repositoryId, String userId) {
 		String anonymous = getAnonymous(repositoryId);
 		String anyone = getAnyone(repositoryId);
 
@@ -712,6 +764,19 @@ public class ContentServiceImpl implements ContentService {
 
 	public String writeChangeEvent(CallContext callContext, String repositoryId, Content content, Acl acl,
 			ChangeType changeType) {
+		Change change = buildChangeEvent(callContext, content, acl, changeType);
+
+		// Create change event record (no content modification needed)
+		Change created = contentDaoService.create(repositoryId, change);
+		
+		log.debug("Change event created successfully - ID=" + created.getId() + 
+			", token=" + created.getToken() + ", objectId=" + content.getId());
+
+		return change.getToken();
+
+	}
+
+	private Change buildChangeEvent(CallContext callContext, Content content, Acl acl, ChangeType changeType) {
 		Change change = new Change();
 		change.setAcl(acl);
 		change.setObjectId(content.getId());
@@ -752,15 +817,61 @@ public class ContentServiceImpl implements ContentService {
 
 		setSignature(callContext, change);
 		change.setToken(generateChangeToken(change));
+		return change;
+	}
 
-		// Create change event record (no content modification needed)
-		Change created = contentDaoService.create(repositoryId, change);
-		
-		log.debug("Change event created successfully - ID=" + created.getId() + 
-			", token=" + created.getToken() + ", objectId=" + content.getId());
+	@Override
+	public List<BulkWriteResult> bulkWrite(CallContext callContext, String repositoryId,
+			List<? extends Content> contents, ChangeType changeType) {
+		if (CollectionUtils.isEmpty(contents)) {
+			return new ArrayList<BulkWriteResult>();
+		}
 
-		return change.getToken();
+		for (Content content : contents) {
+			if (StringUtils.isEmpty(content.getRevision()) && content.getId() == null) {
+				content.setId(generateNodeId());
+			}
+		}
+
+		List<BulkWriteResult> results = contentDaoService.bulkWrite(repositoryId, new ArrayList<NodeBase>(contents));
 
+		// Any write may fail, not only by conflict: record change events only for what was actually saved
+		int failed = 0;
+		List<Change> changes = new ArrayList<Change>();
+		for (int i = 0; i < contents.size(); i++) {
+			if (!results.get(i).isOk()) {
+				failed++;
+			} else if (changeType != null) {
+				changes.add(buildChangeEvent(callContext, contents.get(i), null, changeType));
+			}
+		}
+		writeChangeEvents(repositoryId, changes);
+
+		if (failed > 0) {
+			log.warn("bulkWrite: {} of {} nodes failed in repository {}", failed, results.size(), repositoryId);
+		}
+
+		return results;
+	}
+
+	private void writeChangeEvents(String repositoryId, List<Change> changes) {
+		if (CollectionUtils.isEmpty(changes)) {
+			return;
+		}
+		List<BulkWriteResult> results = contentDaoService.bulkWrite(repositoryId, changes);
+		for (BulkWriteResult result : results) {
+			if (!result.isOk()) {
+				log.error("Failed to write change event for objectId={}: {}",
+						((Change) result.getNode()).getObjectId(), result);
+			}
+		}
+	}
+
+	/**
+	 * Same format as CouchDB's default uuid algorithm(32 hex characters)
+	 */
+	private String generateNodeId() {
+		return UUID.randomUUID().toString().replace("-", "");
 	}
 
 	private String generateChangeToken(NodeBase node) {
@@ -1897,6 +2008,44 @@ public class ContentServiceImpl implements ContentService {
 		return relationship;
 	}
 
+	@Override
+	public List<Relationship> createRelationships(CallContext callContext, String repositoryId,
+			List<Properties> propertiesList) {
+		List<Relationship> relationships = new ArrayList<Relationship>();
+		if (CollectionUtils.isEmpty(propertiesList)) {
+			return relationships;
+		}
+
+		for (Properties properties : propertiesList) {
+			Relationship rel = new Relationship();
+			setBaseProperties(callContext, repositoryId, properties, rel, null);
+			rel.setSourceId(DataUtil.getIdProperty(properties, PropertyIds.SOURCE_ID));
+			rel.setTargetId(DataUtil.getIdProperty(properties, PropertyIds.TARGET_ID));
+			setAclOnCreated(callContext, repositoryId, rel, null, null);
+			relationships.add(rel);
+		}
+
+		List<Relationship> created = new ArrayList<Relationship>();
+		for (BulkWriteResult result : bulkWrite(callContext, repositoryId, relationships, ChangeType.CREATED)) {
+			if (!result.isOk()) {
+				log.warn("createRelationships: failed to create relationship: " + result);
+				continue;
+			}
+			Relationship relationship = (Relationship) result.getNode();
+			created.add(relationship);
+
+			// Solr indexing (failure won't affect main operation)
+			try {
+				if (solrUtil != null) {
+					solrUtil.indexDocument(repositoryId, relationship);
+				}
+			} catch (Exception e) {
+				log.warn("createRelationships: Solr indexing failed for relationship " + relationship.getId() + ": " + e.getMessage());
+			}
+		}
+		return created;
+	}
+
 	@Override
 	public Policy createPolicy(CallContext callContext, String repositoryId, Properties properties,
 			List<String> policies, org.apache.chemistry.opencmis.commons.data.Acl addAces,
@@ -2994,43 +3143,410 @@ public class ContentServiceImpl implements ContentService {
 	@Override
 	public List<String> deleteTree(CallContext callContext, String repositoryId, String folderId, Boolean allVersions,
 			Boolean continueOnFailure, Boolean deletedWithParent) {
-		List<String> failureIds = new ArrayList<String>();
+		return deleteTree(callContext, repositoryId, folderId, allVersions, continueOnFailure, deletedWithParent, null,
+				null);
+	}
 
-		// Delete children
-		List<Content> children = getChildren(repositoryId, folderId);
-		if (!CollectionUtils.isEmpty(children)) {
-			for (Content child : children) {
+	@Override
+	public List<String> deleteTree(CallContext callContext, String repositoryId, String folderId, Boolean allVersions,
+			Boolean continueOnFailure, Boolean deletedWithParent, Predicate<Content> deletable,
+			DeleteTreeProgress progress) {
+		Folder root = getFolder(repositoryId, folderId);
+		if (root == null) {
+			return new ArrayList<String>();
+		}
+
+		// Read the whole tree once, one bulk read per level
+		TreeDeletion deletion = new TreeDeletion(callContext, repositoryId, folderId,
+				Boolean.TRUE.equals(deletedWithParent), !Boolean.FALSE.equals(allVersions),
+				Boolean.TRUE.equals(continueOnFailure), deletable, progress);
+		List<Content> leaves = new ArrayList<Content>();
+		List<List<Content>> folderLevels = new ArrayList<List<Content>>();
+		List<Content> level = Collections.<Content>singletonList(root);
+		while (!level.isEmpty()) {
+			folderLevels.add(level);
+			List<String> levelIds = new ArrayList<String>(level.size());
+			for (Content folder : level) {
+				levelIds.add(folder.getId());
+			}
+			List<Content> next = new ArrayList<Content>();
+			for (int i = 0; i < levelIds.size(); i += deletion.batchSize) {
+				List<String> parentIds = levelIds.subList(i, Math.min(i + deletion.batchSize, levelIds.size()));
+				for (Entry<String, List<Content>> entry : getChildrenOfParents(repositoryId, parentIds).entrySet()) {
+					for (Content child : entry.getValue()) {
+						deletion.parentIds.put(child.getId(), entry.getKey());
+						if (child.isFolder()) {
+							next.add(child);
+						} else {
+							leaves.add(child);
+						}
+					}
+				}
+			}
+			level = next;
+		}
+
+		if (progress != null) {
+			int total = leaves.size();
+			for (List<Content> folders : folderLevels) {
+				total += folders.size();
+			}
+			progress.started(total);
+		}
+
+		// Leaves first, then the folders from the deepest level up. A cancelled deletion stops
+		// after the level it is in, so every folder above what is left stays in place
+		deletion.deleteLevel(leaves);
+		for (int i = folderLevels.size() - 1; i >= 0 && !deletion.cancelled; i--) {
+			deletion.deleteLevel(folderLevels.get(i));
+		}
+
+		log.info("deleteTree: {} objects under folder {} deleted, {} failed{}", deletion.deleted.get(), folderId,
+				deletion.failedIds.size(), deletion.cancelled ? ", cancelled" : "");
+		return new ArrayList<String>(deletion.failedIds);
+	}
+
+	private ForkJoinPool getDeleteTreePool() {
+		if (deleteTreePool == null) {
+			synchronized (this) {
+				if (deleteTreePool == null) {
+					deleteTreePool = new ForkJoinPool(readPositiveInt(PropertyKey.DELETION_TREE_PARALLELISM, 4));
+				}
+			}
+		}
+		return deleteTreePool;
+	}
+
+	private int readPositiveInt(String key, int defaultValue) {
+		String value = propertyManager.readValue(key);
+		try {
+			return StringUtils.isBlank(value) ? defaultValue : Math.max(1, Integer.parseInt(value.trim()));
+		} catch (NumberFormatException e) {
+			log.warn("Invalid value for {}: {}", key, value);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * One deleteTree call. A batch is archived, recorded in the change log and deleted with a
+	 * few bulk requests. An object that is not deleted is reported together with every folder
+	 * above it, and those folders are kept so that nothing is left without its parent.
+	 */
+	private class TreeDeletion {
+		private final CallContext callContext;
+		private final String repositoryId;
+		private final String rootId;
+		private final boolean rootDeletedWithParent;
+		private final boolean allVersions;
+		private final boolean continueOnFailure;
+		private final Predicate<Content> deletable;
+		private final DeleteTreeProgress progress;
+		private final int batchSize;
+		private final boolean archive;
+		private final Map<String, String> parentIds = new HashMap<String, String>();
+		private final Set<String> failedIds = Collections.synchronizedSet(new LinkedHashSet<String>());
+		private final AtomicInteger deleted = new AtomicInteger();
+		private volatile boolean aborted;
+		private volatile boolean cancelled;
+
+		private TreeDeletion(CallContext callContext, String repositoryId, String rootId,
+				boolean rootDeletedWithParent, boolean allVersions, boolean continueOnFailure,
+				Predicate<Content> deletable, DeleteTreeProgress progress) {
+			this.callContext = callContext;
+			this.repositoryId = repositoryId;
+			this.rootId = rootId;
+			this.rootDeletedWithParent = rootDeletedWithParent;
+			this.allVersions = allVersions;
+			this.continueOnFailure = continueOnFailure;
+			this.deletable = deletable;
+			this.progress = progress;
+			this.batchSize = readPositiveInt(PropertyKey.DELETION_TREE_BATCH_SIZE, 200);
+			this.archive = propertyManager.readBoolean(PropertyKey.ARCHIVE_CREATE_ENABLED);
+		}
+
+		/**
+		 * Delete the objects of one level in parallel batches and wait for all of them
+		 */
+		private void deleteLevel(List<Content> contents) {
+			List<Content> remaining = new ArrayList<Content>(contents.size());
+			for (Content content : contents) {
+				if (!failedIds.contains(content.getId())) {
+					remaining.add(content);
+				}
+			}
+
+			List<List<Content>> batches = new ArrayList<List<Content>>();
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (int i = 0; i < remaining.size(); i += batchSize) {
+				List<Content> batch = remaining.subList(i, Math.min(i + batchSize, remaining.size()));
+				batches.add(batch);
+				tasks.add(() -> {
+					if (aborted) {
+						fail(batch);
+					} else if (cancelled || (progress != null && progress.isCancelled())) {
+						// Not a failure: the batch is left for a later run
+						cancelled = true;
+					} else {
+						int count = deleteBatch(batch);
+						if (progress != null) {
+							progress.deleted(count);
+						}
+					}
+					return null;
+				});
+			}
+			if (tasks.isEmpty()) {
+				return;
+			}
+
+			List<Future<Void>> futures = getDeleteTreePool().invokeAll(tasks);
+			// Only the batch that threw is failed; the others are done and accounted for
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					futures.get(i).get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					aborted = true;
+					fail(batches.get(i));
+				} catch (ExecutionException e) {
+					log.error("deleteTree: batch failed in repository " + repositoryId, e.getCause());
+					fail(batches.get(i));
+				}
+			}
+		}
+
+		/**
+		 * @return number of tree objects the batch deleted
+		 */
+		private int deleteBatch(List<Content> batch) {
+			int count = 0;
+			// Everything is deleted on behalf of the tree object it belongs to
+			Map<String, String> owners = new LinkedHashMap<String, String>();
+			List<Content> contents = new ArrayList<Content>();
+			List<Archive> archives = new ArrayList<Archive>();
+
+			for (Content content : batch) {
+				String id = content.getId();
 				try {
-					if (child.isFolder()) {
-						deleteTree(callContext, repositoryId, child.getId(), allVersions, continueOnFailure, true);
-					} else if (child.isDocument()) {
-						deleteDocument(callContext, repositoryId, child.getId(), allVersions, true);
+					if (deletable != null && !deletable.test(content)) {
+						fail(id);
+					} else if (content.isDocument() && allVersions) {
+						addDocument((Document) content, owners, contents, archives);
+					} else if (content.isFolder()) {
+						owners.put(id, id);
+						contents.add(content);
+						archives.add(buildArchive(content, !rootId.equals(id) || rootDeletedWithParent));
+					} else if (content.isDocument()) {
+						// Deleting a single version promotes the previous one, document by document
+						deleteDocument(callContext, repositoryId, id, false, true);
+						count++;
 					} else {
-						delete(callContext, repositoryId, child.getId(), true);
+						// Relationships, policies and user or group items keep their own clean up
+						delete(callContext, repositoryId, id, true);
+						count++;
 					}
 				} catch (Exception e) {
-					if (continueOnFailure) {
-						failureIds.add(child.getId());
-						continue;
-					} else {
-						log.error("", e);
+					log.warn("deleteTree: could not delete {}: {}", id, e.getMessage());
+					fail(id);
+				}
+			}
+			if (owners.isEmpty()) {
+				deleted.addAndGet(count);
+				return count;
+			}
+
+			Set<String> failedOwners = new HashSet<String>();
+			if (archive) {
+				// Without its archive an object must not be deleted
+				for (String originalId : contentDaoService.createArchivesBulk(repositoryId, archives)) {
+					failedOwners.add(owners.get(originalId));
+				}
+			}
+
+			List<String> nodeIds = new ArrayList<String>();
+			for (Entry<String, String> entry : owners.entrySet()) {
+				if (!failedOwners.contains(entry.getValue())) {
+					nodeIds.add(entry.getKey());
+				}
+			}
+			List<String> contentIds = new ArrayList<String>();
+			for (Content content : contents) {
+				if (!failedOwners.contains(owners.get(content.getId()))) {
+					contentIds.add(content.getId());
+				}
+			}
+			List<Content> relationships = archiveRelationships(contentIds, owners.keySet(), archives);
+			for (Content relationship : relationships) {
+				nodeIds.add(relationship.getId());
+			}
+
+			Set<String> notDeleted = new HashSet<String>(contentDaoService.deleteNodesBulk(repositoryId, nodeIds));
+			for (String nodeId : notDeleted) {
+				String owner = owners.get(nodeId);
+				if (owner != null) {
+					failedOwners.add(owner);
+				} else {
+					log.warn("deleteTree: relationship {} could not be deleted", nodeId);
+				}
+			}
+			Set<String> deletedNodes = new HashSet<String>(nodeIds);
+			deletedNodes.removeAll(notDeleted);
+
+			// What is still there keeps neither an archive nor a change event
+			List<Archive> unused = new ArrayList<Archive>();
+			for (Archive a : archives) {
+				if (a.getId() != null && !deletedNodes.contains(a.getOriginalId())) {
+					unused.add(a);
+				}
+			}
+			if (!unused.isEmpty()) {
+				contentDaoService.deleteArchivesBulk(repositoryId, unused);
+			}
+
+			List<Change> changes = new ArrayList<Change>();
+			List<String> deletedIds = new ArrayList<String>();
+			Set<String> parents = new HashSet<String>();
+			List<Content> candidates = new ArrayList<Content>(contents);
+			candidates.addAll(relationships);
+			for (Content content : candidates) {
+				if (!deletedNodes.contains(content.getId())) {
+					continue;
+				}
+				changes.add(buildChangeEvent(callContext, content, null, ChangeType.DELETED));
+				deletedIds.add(content.getId());
+				if (content.getParentId() != null) {
+					parents.add(content.getParentId());
+				}
+			}
+			writeChangeEvents(repositoryId, changes);
+			// The child lists of the parents are dropped once per folder instead of edited per child
+			for (String parentId : parents) {
+				nemakiCachePool.get(repositoryId).getTreeCache().remove(parentId);
+			}
+			if (solrUtil != null) {
+				solrUtil.deleteDocuments(repositoryId, deletedIds);
+			}
+
+			for (String owner : failedOwners) {
+				fail(owner);
+			}
+			count += new HashSet<String>(owners.values()).size() - failedOwners.size();
+			deleted.addAndGet(count);
+			return count;
+		}
+
+		/**
+		 * Relationships of the given objects that are deleted with them, archived like
+		 * the objects. A relationship whose archive is not written is left in place.
+		 */
+		private List<Content> archiveRelationships(List<String> contentIds, Set<String> nodeIds,
+				List<Archive> archives) {
+			List<Content> relationships = new ArrayList<Content>();
+			if (contentIds.isEmpty()) {
+				return relationships;
+			}
+			Set<String> relationshipIds = new LinkedHashSet<String>(
+					contentDaoService.getRelationshipIds(repositoryId, contentIds));
+			relationshipIds.removeAll(nodeIds);
+			if (relationshipIds.isEmpty()) {
+				return relationships;
+			}
+
+			List<Archive> relationshipArchives = new ArrayList<Archive>();
+			for (Content relationship : contentDaoService.getContents(repositoryId, relationshipIds)) {
+				if (relationship != null) {
+					relationships.add(relationship);
+					relationshipArchives.add(buildArchive(relationship, true));
+				}
+			}
+			if (archive && !relationshipArchives.isEmpty()) {
+				Set<String> failed = new HashSet<String>(
+						contentDaoService.createArchivesBulk(repositoryId, relationshipArchives));
+				if (!failed.isEmpty()) {
+					log.warn("deleteTree: relationships {} are kept, their archives could not be written", failed);
+					Iterator<Content> it = relationships.iterator();
+					while (it.hasNext()) {
+						if (failed.contains(it.next().getId())) {
+							it.remove();
+						}
 					}
 				}
 			}
+			archives.addAll(relationshipArchives);
+			return relationships;
 		}
 
-		// Delete the folder itself
-		try {
-			delete(callContext, repositoryId, folderId, deletedWithParent);
-		} catch (Exception e) {
-			if (continueOnFailure) {
-				failureIds.add(folderId);
-			} else {
-				log.error("", e);
+		/**
+		 * All the versions of a document with their attachments, renditions and version series
+		 */
+		private void addDocument(Document document, Map<String, String> owners, List<Content> contents,
+				List<Archive> archives) {
+			String id = document.getId();
+			List<Document> versions = document.getVersionSeriesId() == null ? null
+					: contentDaoService.getAllVersions(repositoryId, document.getVersionSeriesId());
+			if (CollectionUtils.isEmpty(versions)) {
+				versions = Collections.singletonList(document);
+			}
+
+			for (Document version : versions) {
+				owners.put(version.getId(), id);
+				contents.add(version);
+				archives.add(buildArchive(version, true));
+				if (version.getAttachmentNodeId() != null) {
+					owners.put(version.getAttachmentNodeId(), id);
+					Archive attachmentArchive = new Archive();
+					attachmentArchive.setDeletedWithParent(true);
+					attachmentArchive.setOriginalId(version.getAttachmentNodeId());
+					attachmentArchive.setType(NodeType.ATTACHMENT.value());
+					setSignature(callContext, attachmentArchive);
+					archives.add(attachmentArchive);
+				}
+				if (CollectionUtils.isNotEmpty(version.getRenditionIds())) {
+					for (String renditionId : version.getRenditionIds()) {
+						owners.put(renditionId, id);
+					}
+				}
+			}
+			if (document.getVersionSeriesId() != null) {
+				owners.put(document.getVersionSeriesId(), id);
 			}
 		}
 
-		return failureIds;
+		/**
+		 * Same archive as createArchive; its lastRevision is read in bulk when it is written
+		 */
+		private Archive buildArchive(Content content, boolean deletedWithParent) {
+			Archive a = new Archive();
+			a.setOriginalId(content.getId());
+			a.setName(content.getName());
+			a.setType(content.getType());
+			a.setDeletedWithParent(deletedWithParent);
+			a.setParentId(content.getParentId());
+			setSignature(callContext, a);
+			if (content.isDocument()) {
+				Document document = (Document) content;
+				a.setAttachmentNodeId(document.getAttachmentNodeId());
+				a.setVersionSeriesId(document.getVersionSeriesId());
+				a.setIsLatestVersion(document.isLatestVersion());
+			}
+			return a;
+		}
+
+		private void fail(List<Content> contents) {
+			for (Content content : contents) {
+				fail(content.getId());
+			}
+		}
+
+		private void fail(String objectId) {
+			if (!continueOnFailure) {
+				aborted = true;
+			}
+			String id = objectId;
+			while (id != null && failedIds.add(id)) {
+				id = parentIds.get(id);
+			}
+		}
 	}
 
 	@Override
@@ -3227,8 +3743,8 @@ public class ContentServiceImpl implements ContentService {
 		ContentStream cs = new ContentStreamImpl("content", BigInteger.valueOf(totalLength), attachment.getMimeType(), sis);
 		contentDaoService.updateAttachment(repositoryId, attachment, cs);
 		// CRITICAL TCK FIX: Update Document with new change token
-		// Note: contentStreamLength is now dynamically retrieved from actual CouchDB size
-		// via CompileServiceImpl, so no need to update AttachmentNode.length metadata
+		// Note: updateAttachment stores the length of the bytes actually written,
+		// so an unknown chunk length (-1) does not end up in the metadata
 		Document freshDocument = contentDaoService.getDocument(repositoryId, objectId.getValue());
 		String newChangeToken = String.valueOf(System.currentTimeMillis());
 		freshDocument.setChangeToken(newChangeToken);
@@ -3292,7 +3808,11 @@ public class ContentServiceImpl implements ContentService {
 	// Merge inherited ACL
 	@Override
 	public Acl calculateAcl(String repositoryId, Content content) {
+		return RequestLookupCache.get(RequestLookupCache.ACL, repositoryId, content.getId(),
+				() -> calculateAclCached(repositoryId, content));
+	}
 
+	private Acl calculateAclCached(String repositoryId, Content content) {
 		NemakiCache<Acl> aclCache = nemakiCachePool.get(repositoryId).getAclCache();
 		Acl acl = aclCache.get(content.getId());
 
@@ -3470,19 +3990,22 @@ public class ContentServiceImpl implements ContentService {
 	public List<Change> getLatestChanges(String repositoryId, CallContext context, Holder<String> changeLogToken,
 			Boolean includeProperties, String filter, Boolean includePolicyIds, Boolean includeAcl, BigInteger maxItems,
 			ExtensionsData extension) {
-		return contentDaoService.getLatestChanges(repositoryId, changeLogToken.getValue(), maxItems.intValue());
+		int max = (maxItems == null) ? 0 : maxItems.intValue();
+		ChangeFeed feed = getChangeFeed(repositoryId, changeLogToken.getValue(), max, 0);
+		changeLogToken.setValue(feed.getLatestToken());
+		return feed.getChanges();
+	}
+
+	@Override
+	public ChangeFeed getChangeFeed(String repositoryId, String changeLogToken, int maxItems, long longPollTimeout) {
+		return contentDaoService.getChangeFeed(repositoryId, changeLogToken, maxItems, longPollTimeout);
 	}
 
 	@Override
 	public String getLatestChangeToken(String repositoryId) {
-		Change latest = contentDaoService.getLatestChange(repositoryId);
-		if (latest == null) {
-			// Per CMIS spec: null is acceptable when there are no changes in the repository
-			return null;
-		} else {
-			// return String.valueOf(latest.getChangeToken());
-			return String.valueOf(latest.getId());
-		}
+		// Change log tokens are CouchDB update sequences (see getChangeFeed).
+		// Per CMIS spec: null is acceptable when it is not available
+		return contentDaoService.getLatestChangeLogToken(repositoryId);
 	}
 
 	// ///////////////////////////////////////
@@ -3565,22 +4088,30 @@ public class ContentServiceImpl implements ContentService {
 				null);
 		dummyContext.put(dummyContext.USERNAME, PrincipalId.SYSTEM_IN_DB);
 
+		// Change events of the whole restored tree are written together in bulk
+		List<Change> changes = new ArrayList<Change>();
+		restoreArchiveInternal(dummyContext, repositoryId, archive, changes);
+		writeChangeEvents(repositoryId, changes);
+	}
+
+	private Content restoreArchiveInternal(CallContext callContext, String repositoryId, Archive archive,
+			List<Change> changes) throws ParentNoLongerExistException {
 		// Switch over the operation depending on the type of archive
 		Content restored = null;
 		if (archive.isFolder()) {
-			restored = restoreFolder(repositoryId, archive);
-			writeChangeEvent(dummyContext, repositoryId, restored, ChangeType.CREATED);
+			restored = restoreFolder(callContext, repositoryId, archive, changes);
 		} else if (archive.isDocument()) {
 			restored = restoreDocument(repositoryId, archive);
-			writeChangeEvent(dummyContext, repositoryId, restored, ChangeType.CREATED);
 		} else if (archive.isAttachment()) {
 			log.error("Attachment can't be restored alone");
 		} else {
 			log.error("Only document or folder is supported for restoration");
 		}
 
-		// Solr indexing for restored content (failure won't affect main operation)
 		if (restored != null) {
+			changes.add(buildChangeEvent(callContext, restored, null, ChangeType.CREATED));
+
+			// Solr indexing for restored content (failure won't affect main operation)
 			try {
 				if (solrUtil != null) {
 					solrUtil.indexDocument(repositoryId, restored);
@@ -3589,6 +4120,7 @@ public class ContentServiceImpl implements ContentService {
 				log.warn("restoreArchive: Solr indexing failed for " + restored.getId() + ": " + e.getMessage());
 			}
 		}
+		return restored;
 	}
 
 	private Document restoreDocument(String repositoryId, Archive archive) {
@@ -3608,7 +4140,8 @@ public class ContentServiceImpl implements ContentService {
 		return getDocument(repositoryId, archive.getOriginalId());
 	}
 
-	private Folder restoreFolder(String repositoryId, Archive archive) throws ParentNoLongerExistException {
+	private Folder restoreFolder(CallContext callContext, String repositoryId, Archive archive,
+			List<Change> changes) throws ParentNoLongerExistException {
 		contentDaoService.restoreContent(repositoryId, archive);
 
 		// Restore direct children
@@ -3618,7 +4151,7 @@ public class ContentServiceImpl implements ContentService {
 				// Restore descendants recursively
 				// NOTE: Restored only when deletedWithParent flag is true
 				if (child.isDeletedWithParent()) {
-					restoreArchive(repositoryId, child.getId());
+					restoreArchiveInternal(callContext, repositoryId, child, changes);
 				}
 			}
 		}
@@ -3647,32 +4180,43 @@ public class ContentServiceImpl implements ContentService {
 			return;
 		}
 
+		// Collect the whole archive tree first, then delete it with bulk requests
+		List<Archive> archives = new ArrayList<Archive>();
+		collectArchivesToDestroy(repositoryId, archive, archives);
+		if (archives.isEmpty()) {
+			return;
+		}
+
+		int deleted = contentDaoService.deleteArchivesBulk(repositoryId, archives);
+		if (deleted < archives.size()) {
+			log.warn("destroyArchive: only " + deleted + " of " + archives.size() + " archives were deleted, archiveId=" + archiveId);
+		}
+	}
+
+	private void collectArchivesToDestroy(String repositoryId, Archive archive, List<Archive> archives) {
 		if (archive.isFolder()) {
-			destroyFolder(repositoryId, archive);
+			collectFolderArchives(repositoryId, archive, archives);
 		} else if (archive.isDocument()) {
-			destroyDocument(repositoryId, archive);
+			collectDocumentArchives(repositoryId, archive, archives);
 		} else if (archive.isAttachment()) {
-			log.error("destroyArchive: attachment cannot be restored alone, archiveId=" + archiveId);
+			log.error("destroyArchive: attachment cannot be restored alone, archiveId=" + archive.getId());
 		} else {
-			log.error("destroyArchive: only document or folder is supported for restoration, archiveId=" + archiveId);
+			log.error("destroyArchive: only document or folder is supported for restoration, archiveId=" + archive.getId());
 		}
 	}
 
-	private void destroyFolder(String repositoryId, Archive archive) {
+	private void collectFolderArchives(String repositoryId, Archive archive, List<Archive> archives) {
 		// Destroy direct children first
 		List<Archive> children = contentDaoService.getChildArchives(repositoryId, archive);
 		if (CollectionUtils.isNotEmpty(children)) {
 			for (Archive child : children) {
-				destroyArchive(repositoryId, child.getId());
+				collectArchivesToDestroy(repositoryId, child, archives);
 			}
 		}
-		String deletedArchiveId = contentDaoService.deleteArchive(repositoryId, archive.getId());
-		if (deletedArchiveId == null) {
-			log.warn("destroyFolder: folder archive deletion returned null, archiveId=" + archive.getId());
-		}
+		archives.add(archive);
 	}
 
-	private void destroyDocument(String repositoryId, Archive archive) {
+	private void collectDocumentArchives(String repositoryId, Archive archive, List<Archive> archives) {
 		try {
 			// Check versionSeriesId before calling getArchivesOfVersionSeries
 			String versionSeriesId = archive.getVersionSeriesId();
@@ -3694,24 +4238,16 @@ public class ContentServiceImpl implements ContentService {
 			}
 
 			for (Archive version : versions) {
-				// Get attachment archive FIRST (before deleting version)
+				// Attachment archive first (best effort cleanup)
 				Archive attachmentArchive = contentDaoService.getAttachmentArchive(repositoryId, version);
-
-				// Delete attachment archive first (continue even if fails - best effort cleanup)
 				if (attachmentArchive != null) {
-					String deletedAttachmentId = contentDaoService.deleteArchive(repositoryId, attachmentArchive.getId());
-					if (deletedAttachmentId == null) {
-						log.warn("destroyDocument: attachment archive deletion returned null, attachmentId=" + attachmentArchive.getId());
-					}
+					archives.add(attachmentArchive);
 				} else {
 					log.warn("destroyDocument: attachment archive not found, versionId=" + version.getId());
 				}
 
-				// Then delete version archive
-				String deletedVersionId = contentDaoService.deleteArchive(repositoryId, version.getId());
-				if (deletedVersionId == null) {
-					log.warn("destroyDocument: version archive deletion returned null, versionId=" + version.getId());
-				}
+				// Then version archive
+				archives.add(version);
 			}
 		} catch (NotFoundException e) {
 			log.warn("destroyDocument: archive not found during destroy, archiveId=" + archive.getId());
@@ -3847,7 +4383,26 @@ public class ContentServiceImpl implements ContentService {
 			log.error("Error retrieving actual attachment size for " + attachmentId + ": " + e.getMessage(), e);
 			return null;
 		}
-	}	
+	}
+
+	@Override
+	public Long checkAttachmentLength(String repositoryId, String attachmentId, boolean repair) {
+		AttachmentNode attachment = contentDaoService.getAttachment(repositoryId, attachmentId);
+		if (attachment == null) {
+			return null;
+		}
+		// An empty or unreadable binary both come back as null, so neither is repaired
+		Long actualSize = contentDaoService.getAttachmentActualSize(repositoryId, attachmentId);
+		if (actualSize == null || attachment.getLength() == actualSize) {
+			return null;
+		}
+		if (repair) {
+			contentDaoService.updateAttachmentLength(repositoryId, attachmentId, actualSize);
+			log.info("Repaired length of attachment {}: {} -> {}", attachmentId, attachment.getLength(), actualSize);
+		}
+		return actualSize;
+	}
+
 	/**
 	 * ATOMIC OPERATIONS: Helper methods for atomic Document+Attachment operations
 	 * These methods ensure _rev consistency during compound CouchDB operations
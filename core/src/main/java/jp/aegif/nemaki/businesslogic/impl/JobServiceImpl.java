@@ -0,0 +1,432 @@
+package jp.aegif.nemaki.businesslogic.impl;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import jp.aegif.nemaki.businesslogic.JobService;
+import jp.aegif.nemaki.businesslogic.job.JobContext;
+import jp.aegif.nemaki.businesslogic.job.JobHandler;
+import jp.aegif.nemaki.cmis.factory.info.RepositoryInfoMap;
+import jp.aegif.nemaki.dao.ContentDaoService;
+import jp.aegif.nemaki.model.Job;
+import jp.aegif.nemaki.util.PropertyManager;
+import jp.aegif.nemaki.util.constant.PropertyKey;
+
+public class JobServiceImpl implements JobService {
+
+	private static final Log log = LogFactory.getLog(JobServiceImpl.class);
+
+	private static final int MAX_LISTED_JOBS = 1000;
+	private static final int MAX_ERRORS = 100;
+	private static final int SAVE_ATTEMPTS = 3;
+	// Progress is written at most this often while a job runs
+	private static final long PROGRESS_SAVE_INTERVAL_MILLIS = 2000;
+
+	private ContentDaoService contentDaoService;
+	private PropertyManager propertyManager;
+	private RepositoryInfoMap repositoryInfoMap;
+	private List<JobHandler> handlers = new ArrayList<JobHandler>();
+
+	private final Map<String, JobHandler> handlersByType = new ConcurrentHashMap<String, JobHandler>();
+	private final Map<String, ThreadPoolExecutor> pools = new ConcurrentHashMap<String, ThreadPoolExecutor>();
+	// job ID -> context of the jobs running on this node
+	private final Map<String, JobContextImpl> running = new ConcurrentHashMap<String, JobContextImpl>();
+	private String node;
+
+	public void init() {
+		for (JobHandler handler : handlers) {
+			handlersByType.put(handler.getType(), handler);
+		}
+		node = readProperty(PropertyKey.JOB_NODE_NAME, null);
+		if (StringUtils.isBlank(node)) {
+			try {
+				node = InetAddress.getLocalHost().getHostName();
+			} catch (Exception e) {
+				node = "localhost";
+			}
+		}
+
+		// Jobs this node had queued or running when it stopped; only queued again on request
+		boolean resume = Boolean.parseBoolean(readProperty(PropertyKey.JOB_RESUME_ON_STARTUP, "false"));
+		for (String repositoryId : repositoryInfoMap.keys()) {
+			try {
+				for (Job job : contentDaoService.getJobs(repositoryId, MAX_LISTED_JOBS)) {
+					if (job.isFinished() || !node.equals(job.getNode())) {
+						continue;
+					}
+					job.setStatus(Job.STATUS_INTERRUPTED);
+					if (!contentDaoService.saveJob(repositoryId, job)) {
+						continue;
+					}
+					log.info("Job " + job.getId() + " (" + job.getType() + ") was interrupted" + (resume ? ", resuming" : ""));
+					if (resume && !job.isCancelRequested()) {
+						resume(repositoryId, job.getId());
+					}
+				}
+			} catch (Exception e) {
+				log.warn("Could not check for interrupted jobs of repository " + repositoryId + ": " + e.getMessage());
+			}
+		}
+	}
+
+	public void destroy() {
+		for (ThreadPoolExecutor pool : pools.values()) {
+			pool.shutdownNow();
+		}
+		// Jobs still running are found interrupted on the next start
+		for (ThreadPoolExecutor pool : pools.values()) {
+			try {
+				pool.awaitTermination(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	@Override
+	public Job submit(String repositoryId, String type, String creator, Map<String, String> parameters) {
+		getHandler(type);
+
+		Job job = new Job();
+		job.setRepositoryId(repositoryId);
+		job.setType(type);
+		job.setStatus(Job.STATUS_QUEUED);
+		job.setCreator(creator);
+		job.setNode(node);
+		if (parameters != null) {
+			job.getParameters().putAll(parameters);
+		}
+		job.setCreated(System.currentTimeMillis());
+		if (!contentDaoService.saveJob(repositoryId, job)) {
+			throw new IllegalStateException("Could not save job of type " + type);
+		}
+		enqueue(job);
+		log.info("Job " + job.getId() + " (" + type + ") queued by " + creator);
+		return job;
+	}
+
+	@Override
+	public Job getJob(String repositoryId, String jobId) {
+		return contentDaoService.getJob(repositoryId, jobId);
+	}
+
+	@Override
+	public List<Job> getJobs(String repositoryId) {
+		List<Job> jobs = contentDaoService.getJobs(repositoryId, MAX_LISTED_JOBS);
+		jobs.sort(Comparator.comparingLong(Job::getCreated).reversed());
+		return jobs;
+	}
+
+	@Override
+	public Job cancel(String repositoryId, String jobId) {
+		JobContextImpl context = running.get(jobId);
+		if (context != null) {
+			context.requestCancel();
+			return contentDaoService.getJob(repositoryId, jobId);
+		}
+
+		// Queued, or running on another node, which notices on its next progress write
+		for (int attempt = 0; attempt < SAVE_ATTEMPTS; attempt++) {
+			Job job = contentDaoService.getJob(repositoryId, jobId);
+			if (job == null || job.isFinished()) {
+				return job;
+			}
+			job.setCancelRequested(true);
+			if (contentDaoService.saveJob(repositoryId, job)) {
+				log.info("Cancellation of job " + jobId + " requested");
+				return job;
+			}
+		}
+		throw new IllegalStateException("Could not request cancellation of job " + jobId);
+	}
+
+	@Override
+	public Job resume(String repositoryId, String jobId) {
+		Job job = contentDaoService.getJob(repositoryId, jobId);
+		if (job == null) {
+			return null;
+		}
+		if (!job.isFinished() || Job.STATUS_COMPLETED.equals(job.getStatus())) {
+			throw new IllegalStateException("Job " + jobId + " is " + job.getStatus());
+		}
+		getHandler(job.getType());
+
+		job.setStatus(Job.STATUS_QUEUED);
+		job.setCancelRequested(false);
+		job.setMessage(null);
+		job.setFinished(0);
+		job.setNode(node);
+		if (!contentDaoService.saveJob(repositoryId, job)) {
+			throw new IllegalStateException("Job " + jobId + " was modified concurrently");
+		}
+		enqueue(job);
+		log.info("Job " + jobId + " (" + job.getType() + ") queued again from checkpoint " + job.getCheckpoint());
+		return job;
+	}
+
+	@Override
+	public ExecutorService getWorkerPool(String type) {
+		return pools.computeIfAbsent(type, this::createPool);
+	}
+
+	@Override
+	public void registerHandler(JobHandler handler) {
+		handlersByType.put(handler.getType(), handler);
+	}
+
+	private ThreadPoolExecutor createPool(String type) {
+		int workers = Integer.parseInt(readProperty(PropertyKey.JOB_WORKERS + "." + type,
+				readProperty(PropertyKey.JOB_WORKERS, "2")));
+		int capacity = Integer.parseInt(readProperty(PropertyKey.JOB_QUEUE_CAPACITY, "100"));
+		AtomicInteger threads = new AtomicInteger();
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(capacity), runnable -> {
+					Thread thread = new Thread(runnable, "nemaki-job-" + type + "-" + threads.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	private JobHandler getHandler(String type) {
+		JobHandler handler = type == null ? null : handlersByType.get(type);
+		if (handler == null) {
+			throw new IllegalArgumentException("No handler for job type " + type);
+		}
+		return handler;
+	}
+
+	private void enqueue(Job job) {
+		String repositoryId = job.getRepositoryId();
+		String jobId = job.getId();
+		try {
+			getWorkerPool(job.getType()).execute(() -> run(repositoryId, jobId));
+		} catch (RejectedExecutionException e) {
+			job.setStatus(Job.STATUS_FAILED);
+			job.setMessage("Too many queued jobs of type " + job.getType());
+			job.setFinished(System.currentTimeMillis());
+			contentDaoService.saveJob(repositoryId, job);
+			throw new IllegalStateException(job.getMessage(), e);
+		}
+	}
+
+	private void run(String repositoryId, String jobId) {
+		Job job = contentDaoService.getJob(repositoryId, jobId);
+		if (job == null || !Job.STATUS_QUEUED.equals(job.getStatus())) {
+			return;
+		}
+
+		JobContextImpl context = new JobContextImpl(job);
+		if (job.isCancelRequested()) {
+			context.finish(Job.STATUS_CANCELLED, null);
+			return;
+		}
+
+		running.put(jobId, context);
+		try {
+			context.start();
+			getHandler(job.getType()).run(context);
+			context.finish(context.isCancelled() ? Job.STATUS_CANCELLED : Job.STATUS_COMPLETED, null);
+		} catch (Exception e) {
+			log.error("Job " + jobId + " (" + job.getType() + ") failed", e);
+			context.finish(Job.STATUS_FAILED, e.getMessage());
+		} finally {
+			running.remove(jobId);
+		}
+	}
+
+	private String readProperty(String key, String defaultValue) {
+		String value = propertyManager.readValue(key);
+		return StringUtils.isBlank(value) ? defaultValue : value.trim();
+	}
+
+	/**
+	 * Progress of a job running on this node. The handler may report from several
+	 * threads; the job is only touched under this context's lock. Cancellation is
+	 * looked up in the database at most every progress save interval.
+	 */
+	private class JobContextImpl implements JobContext {
+		private final Job job;
+		private final Map<String, String> parameters;
+		private volatile boolean cancelled;
+		private volatile long lastCancelCheck;
+		private long lastSaved;
+
+		private JobContextImpl(Job job) {
+			this.job = job;
+			this.parameters = new HashMap<String, String>(job.getParameters());
+		}
+
+		private synchronized void start() {
+			job.setStatus(Job.STATUS_RUNNING);
+			job.setNode(node);
+			if (job.getStarted() == 0) {
+				job.setStarted(System.currentTimeMillis());
+			}
+			save(true);
+			log.info("Job " + job.getId() + " (" + job.getType() + ") started");
+		}
+
+		private synchronized void finish(String status, String message) {
+			job.setStatus(status);
+			if (message != null) {
+				job.setMessage(message);
+			}
+			job.setFinished(System.currentTimeMillis());
+			save(true);
+			log.info("Job " + job.getId() + " (" + job.getType() + ") " + status + ": " + job.getProcessed()
+					+ " processed, " + job.getFailed() + " failed");
+		}
+
+		private synchronized void requestCancel() {
+			cancelled = true;
+			job.setCancelRequested(true);
+			save(true);
+		}
+
+		private void save(boolean force) {
+			long now = System.currentTimeMillis();
+			if (!force && now - lastSaved < PROGRESS_SAVE_INTERVAL_MILLIS) {
+				return;
+			}
+			for (int attempt = 0; attempt < SAVE_ATTEMPTS; attempt++) {
+				if (contentDaoService.saveJob(job.getRepositoryId(), job)) {
+					lastSaved = now;
+					return;
+				}
+				// Someone else wrote the job, most likely to cancel it
+				Job latest = contentDaoService.getJob(job.getRepositoryId(), job.getId());
+				if (latest == null) {
+					return;
+				}
+				job.setRevision(latest.getRevision());
+				if (latest.isCancelRequested()) {
+					job.setCancelRequested(true);
+					cancelled = true;
+				}
+			}
+			log.warn("Could not save progress of job " + job.getId());
+		}
+
+		@Override
+		public String getJobId() {
+			return job.getId();
+		}
+
+		@Override
+		public String getRepositoryId() {
+			return job.getRepositoryId();
+		}
+
+		@Override
+		public String getCreator() {
+			return job.getCreator();
+		}
+
+		@Override
+		public String getParameter(String name) {
+			return parameters.get(name);
+		}
+
+		@Override
+		public synchronized String getCheckpoint() {
+			return job.getCheckpoint();
+		}
+
+		@Override
+		public synchronized void setCheckpoint(String checkpoint) {
+			job.setCheckpoint(checkpoint);
+			save(false);
+		}
+
+		@Override
+		public synchronized void setTotal(long total) {
+			job.setTotal(total);
+			save(false);
+		}
+
+		@Override
+		public synchronized long getProcessed() {
+			return job.getProcessed();
+		}
+
+		@Override
+		public synchronized void addProcessed(long count) {
+			job.setProcessed(job.getProcessed() + count);
+			save(false);
+		}
+
+		@Override
+		public synchronized void addFailed(String itemId, String reason) {
+			job.setFailed(job.getFailed() + 1);
+			if (job.getErrors().size() < MAX_ERRORS) {
+				job.getErrors().add(itemId + ": " + reason);
+			}
+			save(false);
+		}
+
+		@Override
+		public synchronized void addFailed(long count, String reason) {
+			job.setFailed(job.getFailed() + count);
+			if (reason != null && job.getErrors().size() < MAX_ERRORS) {
+				job.getErrors().add(reason);
+			}
+			save(false);
+		}
+
+		@Override
+		public synchronized void setMessage(String message) {
+			job.setMessage(message);
+		}
+
+		@Override
+		public boolean isCancelled() {
+			if (cancelled) {
+				return true;
+			}
+			// A cancellation requested on another node is only in the database
+			long now = System.currentTimeMillis();
+			if (now - lastCancelCheck >= PROGRESS_SAVE_INTERVAL_MILLIS) {
+				lastCancelCheck = now;
+				Job latest = contentDaoService.getJob(job.getRepositoryId(), job.getId());
+				if (latest != null && latest.isCancelRequested()) {
+					cancelled = true;
+				}
+			}
+			return cancelled;
+		}
+	}
+
+	public void setContentDaoService(ContentDaoService contentDaoService) {
+		this.contentDaoService = contentDaoService;
+	}
+
+	public void setPropertyManager(PropertyManager propertyManager) {
+		this.propertyManager = propertyManager;
+	}
+
+	public void setRepositoryInfoMap(RepositoryInfoMap repositoryInfoMap) {
+		this.repositoryInfoMap = repositoryInfoMap;
+	}
+
+	public void setHandlers(List<JobHandler> handlers) {
+		this.handlers = handlers;
+	}
+}
@@ -22,11 +22,18 @@
 package jp.aegif.nemaki.businesslogic.impl;
 
 import jp.aegif.nemaki.businesslogic.ContentService;
+import jp.aegif.nemaki.businesslogic.JobService;
 import jp.aegif.nemaki.businesslogic.SolrIndexMaintenanceService;
+import jp.aegif.nemaki.businesslogic.job.JobContext;
+import jp.aegif.nemaki.businesslogic.job.JobHandler;
 import jp.aegif.nemaki.cmis.aspect.query.solr.SolrUtil;
 import jp.aegif.nemaki.cmis.factory.info.RepositoryInfoMap;
+import jp.aegif.nemaki.dao.ContentDaoService;
 import jp.aegif.nemaki.model.Content;
 import jp.aegif.nemaki.model.Folder;
+import jp.aegif.nemaki.model.Job;
+import jp.aegif.nemaki.util.PropertyManager;
+import jp.aegif.nemaki.util.constant.PropertyKey;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -41,6 +48,7 @@ import org.apache.solr.common.SolrDocumentList;
 import jakarta.annotation.PreDestroy;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -50,10 +58,15 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 
 /**
  * Implementation of SolrIndexMaintenanceService.
  * Provides Solr index maintenance operations including reindexing, health checks, and query execution.
+ *
+ * Reindexes run as "solrReindex" jobs of the job service, so their status and
+ * cancellation are shared by all nodes through the job documents. Without a job
+ * service, as in tests, they run on a local executor.
  */
 public class SolrIndexMaintenanceServiceImpl implements SolrIndexMaintenanceService {
 
@@ -65,14 +78,47 @@ public class SolrIndexMaintenanceServiceImpl implements SolrIndexMaintenanceServ
     /** Commit within milliseconds for batch operations */
     private static final int BATCH_COMMIT_WITHIN_MS = 5000;
 
+    /** Job type of the reindexes */
+    static final String REINDEX_JOB_TYPE = "solrReindex";
+    static final String PARAM_MODE = "mode";
+    static final String PARAM_FOLDER_ID = "folderId";
+    static final String PARAM_RECURSIVE = "recursive";
+    static final String PARAM_RESUME = "resume";
+    static final String MODE_INPLACE = "inplace";
+    static final String MODE_BLUEGREEN = "bluegreen";
+
     private ContentService contentService;
+    private ContentDaoService contentDaoService;
     private SolrUtil solrUtil;
     private RepositoryInfoMap repositoryInfoMap;
+    private PropertyManager propertyManager;
+    private JobService jobService;
 
-    private final Map<String, ReindexStatus> reindexStatuses = new ConcurrentHashMap<>();
-    private final Map<String, AtomicBoolean> cancelFlags = new ConcurrentHashMap<>();
+    // Only one blue/green rebuild at a time on this node, however it was started
+    private final AtomicBoolean blueGreenRunning = new AtomicBoolean();
+    // Used when there is no job service, as in tests
+    private final Map<String, LocalRun> localRuns = new ConcurrentHashMap<>();
     private final ExecutorService executorService = Executors.newFixedThreadPool(2);
 
+    /**
+     * A reindex run without a job service
+     */
+    private static class LocalRun {
+        private final ReindexStatus status;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        private LocalRun(ReindexStatus status) {
+            this.status = status;
+        }
+    }
+
+    /**
+     * The work of a reindex, whichever way it is run. Throws to fail the run.
+     */
+    private interface ReindexTask {
+        void run(ReindexStatus status, BooleanSupplier cancelled) throws Exception;
+    }
+
     public void setContentService(ContentService contentService) {
         this.contentService = contentService;
     }
@@ -85,6 +131,42 @@ public class SolrIndexMaintenanceServiceImpl implements SolrIndexMaintenanceServ
         this.repositoryInfoMap = repositoryInfoMap;
     }
 
+    public void setContentDaoService(ContentDaoService contentDaoService) {
+        this.contentDaoService = contentDaoService;
+    }
+
+    public void setJobService(JobService jobService) {
+        this.jobService = jobService;
+    }
+
+    public void setPropertyManager(PropertyManager propertyManager) {
+        this.propertyManager = propertyManager;
+    }
+
+    /**
+     * Register the reindex job handler, and resume a blue/green reindex
+     * interrupted by a shutdown or crash.
+     */
+    public void init() {
+        if (jobService != null) {
+            // The job service is configured before this service, which depends on it
+            jobService.registerHandler(new ReindexJobHandler());
+        }
+        if (contentDaoService == null || propertyManager == null
+                || !Boolean.parseBoolean(readProperty(PropertyKey.SOLR_REINDEX_BLUEGREEN_RESUME_ON_STARTUP, "true"))) {
+            return;
+        }
+        try {
+            if (BlueGreenReindexer.hasCheckpoints(contentDaoService, new ArrayList<>(repositoryInfoMap.keys()))) {
+                String repositoryId = repositoryInfoMap.keys().iterator().next();
+                log.info("Found blue/green reindex checkpoints, resuming");
+                startBlueGreenReindex(repositoryId, true);
+            }
+        } catch (Exception e) {
+            log.warn("Could not check for an interrupted blue/green reindex: " + e.getMessage());
+        }
+    }
+
     @PreDestroy
     public void shutdown() {
         log.info("Shutting down SolrIndexMaintenanceService executor service");
@@ -101,161 +183,393 @@ public class SolrIndexMaintenanceServiceImpl implements SolrIndexMaintenanceServ
 
     @Override
     public boolean startFullReindex(String repositoryId) {
-        ReindexStatus currentStatus = reindexStatuses.get(repositoryId);
-        if (currentStatus != null && "running".equals(currentStatus.getStatus())) {
-            log.warn("Reindex already running for repository: " + repositoryId);
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put(PARAM_MODE, MODE_INPLACE);
+        return start(repositoryId, parameters);
+    }
+
+    @Override
+    public boolean startBlueGreenReindex(String repositoryId) {
+        return startBlueGreenReindex(repositoryId, false);
+    }
+
+    private boolean startBlueGreenReindex(String repositoryId, boolean resume) {
+        if (contentDaoService == null) {
+            log.error("Blue/green reindex is not available: contentDaoService is not set");
             return false;
         }
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put(PARAM_MODE, MODE_BLUEGREEN);
+        parameters.put(PARAM_RESUME, String.valueOf(resume));
+        return start(repositoryId, parameters);
+    }
+
+    @Override
+    public boolean startFolderReindex(String repositoryId, String folderId, boolean recursive) {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put(PARAM_MODE, MODE_INPLACE);
+        parameters.put(PARAM_FOLDER_ID, folderId);
+        parameters.put(PARAM_RECURSIVE, String.valueOf(recursive));
+        return start(repositoryId, parameters);
+    }
 
+    /**
+     * Queue a reindex unless one is running that it would conflict with: any
+     * reindex of the repository, or a blue/green reindex, which covers all of them.
+     */
+    private synchronized boolean start(String repositoryId, Map<String, String> parameters) {
+        boolean blueGreen = MODE_BLUEGREEN.equals(parameters.get(PARAM_MODE));
+        List<String> repositoryIds = blueGreen ? new ArrayList<>(repositoryInfoMap.keys())
+                : Collections.singletonList(repositoryId);
+
+        if (jobService == null) {
+            for (String id : repositoryIds) {
+                if (isRunning(getReindexStatus(id))) {
+                    log.warn("Reindex already running for repository: " + id);
+                    return false;
+                }
+            }
+            ReindexStatus status = newStatus(repositoryId, parameters);
+            LocalRun run = new LocalRun(status);
+            // The core is shared, so a blue/green run belongs to every repository
+            for (String id : repositoryIds) {
+                localRuns.put(id, run);
+            }
+            executorService.submit(() -> {
+                execute(task(repositoryId, parameters), status, run.cancelled::get);
+                if (isRunning(status)) {
+                    status.setStatus(run.cancelled.get() ? "cancelled" : "completed");
+                }
+            });
+            return true;
+        }
+
+        Job active = findActiveJob(repositoryId, blueGreen);
+        if (active != null) {
+            log.warn("Reindex already running for repository: " + active.getRepositoryId() + ", job " + active.getId());
+            return false;
+        }
+        try {
+            Job job = jobService.submit(repositoryId, REINDEX_JOB_TYPE, "system", parameters);
+            log.info("Reindex of repository " + repositoryId + " queued as job " + job.getId());
+            return true;
+        } catch (IllegalStateException e) {
+            log.warn("Could not queue reindex of repository " + repositoryId + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static ReindexStatus newStatus(String repositoryId, Map<String, String> parameters) {
         ReindexStatus status = new ReindexStatus();
         status.setRepositoryId(repositoryId);
         status.setStatus("running");
+        status.setMode(parameters.containsKey(PARAM_FOLDER_ID) ? null : parameters.get(PARAM_MODE));
         status.setStartTime(System.currentTimeMillis());
         status.setErrors(new ArrayList<>());
         status.setWarnings(new ArrayList<>());
-        reindexStatuses.put(repositoryId, status);
-        cancelFlags.put(repositoryId, new AtomicBoolean(false));
+        return status;
+    }
 
-        executorService.submit(() -> {
-            try {
-                log.info("Starting full reindex for repository: " + repositoryId);
-                
-                // Get root folder
-                Folder rootFolder = contentService.getFolder(repositoryId,
-                    repositoryInfoMap.get(repositoryId).getRootFolderId());
-                
-                if (rootFolder == null) {
-                    status.setStatus("error");
-                    status.setErrorMessage("Root folder not found");
-                    status.setEndTime(System.currentTimeMillis());
-                    return;
-                }
+    private static boolean isRunning(ReindexStatus status) {
+        return "running".equals(status.getStatus());
+    }
 
-                // Count total documents first
-                AtomicLong totalCount = new AtomicLong(0);
-                countDocumentsRecursive(repositoryId, rootFolder.getId(), totalCount);
-                status.setTotalDocuments(totalCount.get());
+    /**
+     * Run a task, recording its failure in the status
+     */
+    private static void execute(ReindexTask task, ReindexStatus status, BooleanSupplier cancelled) {
+        try {
+            task.run(status, cancelled);
+        } catch (Exception e) {
+            log.error("Error during reindex for repository: " + status.getRepositoryId(), e);
+            status.setStatus("error");
+            status.setErrorMessage(e.getMessage());
+        } finally {
+            status.setEndTime(System.currentTimeMillis());
+        }
+    }
 
-                // Clear existing index
-                clearIndex(repositoryId);
+    private ReindexTask task(String repositoryId, Map<String, String> parameters) {
+        if (MODE_BLUEGREEN.equals(parameters.get(PARAM_MODE))) {
+            boolean resume = Boolean.parseBoolean(parameters.get(PARAM_RESUME));
+            return (status, cancelled) -> runBlueGreenReindex(resume, status, cancelled);
+        }
+        String folderId = parameters.get(PARAM_FOLDER_ID);
+        if (folderId != null) {
+            boolean recursive = Boolean.parseBoolean(parameters.get(PARAM_RECURSIVE));
+            return (status, cancelled) -> runFolderReindex(repositoryId, folderId, recursive, status, cancelled);
+        }
+        return (status, cancelled) -> runFullReindex(repositoryId, status, cancelled);
+    }
 
-                // Reindex all documents
-                AtomicLong indexedCount = new AtomicLong(0);
-                AtomicLong errorCount = new AtomicLong(0);
-                AtomicLong silentDropCount = new AtomicLong(0);
-                AtomicLong reindexedSuccessCount = new AtomicLong(0);
-                List<String> errors = new ArrayList<>();
+    /**
+     * @return the queued or running reindex job that a new one would conflict with, or null
+     */
+    private Job findActiveJob(String repositoryId, boolean blueGreen) {
+        for (String id : repositoryInfoMap.keys()) {
+            for (Job job : jobService.getJobs(id)) {
+                if (!REINDEX_JOB_TYPE.equals(job.getType()) || job.isFinished()) {
+                    continue;
+                }
+                if (blueGreen || id.equals(repositoryId) || MODE_BLUEGREEN.equals(job.getParameters().get(PARAM_MODE))) {
+                    return job;
+                }
+            }
+        }
+        return null;
+    }
 
-                reindexFolderRecursive(repositoryId, rootFolder.getId(), true, 
-                    status, indexedCount, errorCount, errors, silentDropCount, reindexedSuccessCount);
+    /**
+     * @return the latest reindex job of the repository, or the latest blue/green one if newer
+     */
+    private Job findLatestJob(String repositoryId) {
+        Job latest = null;
+        for (String id : repositoryInfoMap.keys()) {
+            for (Job job : jobService.getJobs(id)) {
+                if (!REINDEX_JOB_TYPE.equals(job.getType())) {
+                    continue;
+                }
+                if ((id.equals(repositoryId) || MODE_BLUEGREEN.equals(job.getParameters().get(PARAM_MODE)))
+                        && (latest == null || job.getCreated() > latest.getCreated())) {
+                    latest = job;
+                }
+            }
+        }
+        return latest;
+    }
 
-                status.setIndexedCount(indexedCount.get());
-                status.setErrorCount(errorCount.get());
-                status.setSilentDropCount(silentDropCount.get());
-                status.setReindexedCount(reindexedSuccessCount.get());
-                status.setErrors(errors);
-                status.setStatus(cancelFlags.get(repositoryId).get() ? "cancelled" : "completed");
-                status.setEndTime(System.currentTimeMillis());
+    private static ReindexStatus toStatus(String repositoryId, Job job) {
+        ReindexStatus status = newStatus(repositoryId, job.getParameters());
+        if (Job.STATUS_COMPLETED.equals(job.getStatus()) || Job.STATUS_CANCELLED.equals(job.getStatus())) {
+            status.setStatus(job.getStatus());
+        } else if (job.isFinished()) {
+            status.setStatus("error");
+            status.setErrorMessage(job.getMessage());
+        }
+        status.setStartTime(job.getStarted() == 0 ? job.getCreated() : job.getStarted());
+        status.setEndTime(job.getFinished());
+        status.setTotalDocuments(job.getTotal());
+        status.setIndexedCount(job.getProcessed());
+        status.setErrorCount(job.getFailed());
+        status.setErrors(new ArrayList<>(job.getErrors()));
+        status.setCurrentFolder(job.isFinished() ? null : job.getMessage());
+        return status;
+    }
 
-                log.info("Full reindex completed for repository: " + repositoryId + 
-                    ", indexed: " + indexedCount.get() + ", errors: " + errorCount.get());
-                
-                // Run health check after completion to verify index integrity
-                if (!cancelFlags.get(repositoryId).get()) {
-                    // Force commit and wait for Solr to fully process before health check
-                    forceCommitAndWait(repositoryId);
-                    runPostReindexHealthCheck(repositoryId, status, errors);
+    /**
+     * Runs the reindex jobs. Progress goes to the job as the reindex reports it.
+     */
+    private class ReindexJobHandler implements JobHandler {
+
+        @Override
+        public String getType() {
+            return REINDEX_JOB_TYPE;
+        }
+
+        @Override
+        public void run(JobContext context) throws Exception {
+            Map<String, String> parameters = new HashMap<>();
+            for (String name : new String[] { PARAM_MODE, PARAM_FOLDER_ID, PARAM_RECURSIVE, PARAM_RESUME }) {
+                if (context.getParameter(name) != null) {
+                    parameters.put(name, context.getParameter(name));
                 }
+            }
+            // A blue/green job run again continues from the reindex checkpoints
+            if (context.getCheckpoint() != null) {
+                parameters.put(PARAM_RESUME, "true");
+            }
+            context.setCheckpoint("started");
 
-            } catch (Exception e) {
-                log.error("Error during full reindex for repository: " + repositoryId, e);
-                status.setStatus("error");
-                status.setErrorMessage(e.getMessage());
-                status.setEndTime(System.currentTimeMillis());
+            ReindexStatus status = new JobReindexStatus(context);
+            task(context.getRepositoryId(), parameters).run(status, context::isCancelled);
+            for (String error : status.getErrors()) {
+                context.addFailed(0, error);
             }
-        });
+            // The health check findings, kept with the errors as the job has no warnings
+            for (String warning : status.getWarnings()) {
+                context.addFailed(0, "Warning: " + warning);
+            }
+            context.setMessage("Indexed " + status.getIndexedCount() + " documents, " + status.getErrorCount()
+                    + " errors");
+        }
+    }
 
-        return true;
+    /**
+     * Passes the counts the reindex reports on to its job. Workers may report
+     * their running totals out of order, so a count only ever grows.
+     */
+    private static class JobReindexStatus extends ReindexStatus {
+        private final JobContext context;
+
+        private JobReindexStatus(JobContext context) {
+            this.context = context;
+            setErrors(new ArrayList<>());
+            setWarnings(new ArrayList<>());
+        }
+
+        @Override
+        public synchronized void setTotalDocuments(long totalDocuments) {
+            super.setTotalDocuments(totalDocuments);
+            context.setTotal(totalDocuments);
+        }
+
+        @Override
+        public synchronized void setIndexedCount(long indexedCount) {
+            long added = indexedCount - getIndexedCount();
+            if (added > 0) {
+                super.setIndexedCount(indexedCount);
+                context.addProcessed(added);
+            }
+        }
+
+        @Override
+        public synchronized void setErrorCount(long errorCount) {
+            long added = errorCount - getErrorCount();
+            if (added > 0) {
+                super.setErrorCount(errorCount);
+                context.addFailed(added, null);
+            }
+        }
+
+        @Override
+        public void setCurrentFolder(String currentFolder) {
+            super.setCurrentFolder(currentFolder);
+            context.setMessage(currentFolder);
+        }
+
+        @Override
+        public void setPhase(String phase) {
+            super.setPhase(phase);
+            context.setMessage("Phase " + phase);
+        }
     }
 
-    @Override
-    public boolean startFolderReindex(String repositoryId, String folderId, boolean recursive) {
-        ReindexStatus currentStatus = reindexStatuses.get(repositoryId);
-        if (currentStatus != null && "running".equals(currentStatus.getStatus())) {
-            log.warn("Reindex already running for repository: " + repositoryId);
-            return false;
+    private void runFullReindex(String repositoryId, ReindexStatus status, BooleanSupplier cancelled) {
+        log.info("Starting full reindex for repository: " + repositoryId);
+
+        // Get root folder
+        Folder rootFolder = contentService.getFolder(repositoryId,
+            repositoryInfoMap.get(repositoryId).getRootFolderId());
+
+        if (rootFolder == null) {
+            throw new IllegalStateException("Root folder not found");
         }
 
-        ReindexStatus status = new ReindexStatus();
-        status.setRepositoryId(repositoryId);
-        status.setStatus("running");
-        status.setStartTime(System.currentTimeMillis());
-        status.setErrors(new ArrayList<>());
-        status.setWarnings(new ArrayList<>());
-        reindexStatuses.put(repositoryId, status);
-        cancelFlags.put(repositoryId, new AtomicBoolean(false));
-
-        executorService.submit(() -> {
-            try {
-                log.info("Starting folder reindex for repository: " + repositoryId + 
-                    ", folder: " + folderId + ", recursive: " + recursive);
-
-                Folder folder = contentService.getFolder(repositoryId, folderId);
-                if (folder == null) {
-                    status.setStatus("error");
-                    status.setErrorMessage("Folder not found: " + folderId);
-                    status.setEndTime(System.currentTimeMillis());
-                    return;
-                }
+        // Count total documents first
+        AtomicLong totalCount = new AtomicLong(0);
+        countDocumentsRecursive(repositoryId, rootFolder.getId(), totalCount);
+        status.setTotalDocuments(totalCount.get());
 
-                // Count total documents
-                AtomicLong totalCount = new AtomicLong(0);
-                if (recursive) {
-                    countDocumentsRecursive(repositoryId, folderId, totalCount);
-                } else {
-                    List<Content> children = contentService.getChildren(repositoryId, folderId);
-                    totalCount.set(children.size());
-                }
-                status.setTotalDocuments(totalCount.get());
+        // Clear existing index
+        clearIndex(repositoryId);
 
-                // Reindex
-                AtomicLong indexedCount = new AtomicLong(0);
-                AtomicLong errorCount = new AtomicLong(0);
-                AtomicLong silentDropCount = new AtomicLong(0);
-                AtomicLong reindexedSuccessCount = new AtomicLong(0);
-                List<String> errors = new ArrayList<>();
+        // Reindex all documents
+        AtomicLong indexedCount = new AtomicLong(0);
+        AtomicLong errorCount = new AtomicLong(0);
+        AtomicLong silentDropCount = new AtomicLong(0);
+        AtomicLong reindexedSuccessCount = new AtomicLong(0);
+        List<String> errors = new ArrayList<>();
 
-                reindexFolderRecursive(repositoryId, folderId, recursive, 
-                    status, indexedCount, errorCount, errors, silentDropCount, reindexedSuccessCount);
+        reindexFolderRecursive(repositoryId, rootFolder.getId(), true, cancelled,
+            status, indexedCount, errorCount, errors, silentDropCount, reindexedSuccessCount);
 
-                status.setIndexedCount(indexedCount.get());
-                status.setErrorCount(errorCount.get());
-                status.setSilentDropCount(silentDropCount.get());
-                status.setReindexedCount(reindexedSuccessCount.get());
-                status.setErrors(errors);
-                status.setStatus(cancelFlags.get(repositoryId).get() ? "cancelled" : "completed");
-                status.setEndTime(System.currentTimeMillis());
+        status.setIndexedCount(indexedCount.get());
+        status.setErrorCount(errorCount.get());
+        status.setSilentDropCount(silentDropCount.get());
+        status.setReindexedCount(reindexedSuccessCount.get());
+        status.setErrors(errors);
 
-                log.info("Folder reindex completed for repository: " + repositoryId + 
-                    ", folder: " + folderId + ", indexed: " + indexedCount.get() + 
-                    ", errors: " + errorCount.get());
-                
-                // Run health check after completion to verify index integrity
-                if (!cancelFlags.get(repositoryId).get()) {
-                    // Force commit and wait for Solr to fully process before health check
-                    forceCommitAndWait(repositoryId);
-                    runPostReindexHealthCheck(repositoryId, status, errors);
-                }
+        log.info("Full reindex completed for repository: " + repositoryId + 
+            ", indexed: " + indexedCount.get() + ", errors: " + errorCount.get());
+        
+        // Run health check after completion to verify index integrity
+        if (!cancelled.getAsBoolean()) {
+            // Force commit and wait for Solr to fully process before health check
+            forceCommitAndWait(repositoryId);
+            runPostReindexHealthCheck(repositoryId, status, errors);
+        }
+    }
 
-            } catch (Exception e) {
-                log.error("Error during folder reindex for repository: " + repositoryId, e);
-                status.setStatus("error");
-                status.setErrorMessage(e.getMessage());
-                status.setEndTime(System.currentTimeMillis());
+    private void runBlueGreenReindex(boolean resume, ReindexStatus status, BooleanSupplier cancelled)
+            throws Exception {
+        if (!blueGreenRunning.compareAndSet(false, true)) {
+            throw new IllegalStateException("A blue/green reindex is already running on this node");
+        }
+        try {
+            List<String> repositoryIds = new ArrayList<>(repositoryInfoMap.keys());
+            BlueGreenReindexer reindexer = new BlueGreenReindexer(contentDaoService, solrUtil, repositoryIds,
+                readProperty(PropertyKey.SOLR_REINDEX_BLUEGREEN_SHADOW_CORE, "nemaki_shadow"),
+                Integer.parseInt(readProperty(PropertyKey.SOLR_REINDEX_BLUEGREEN_WORKERS, "4")),
+                Integer.parseInt(readProperty(PropertyKey.SOLR_REINDEX_BLUEGREEN_PAGE_SIZE, "500")),
+                Boolean.parseBoolean(readProperty(PropertyKey.SOLR_REINDEX_BLUEGREEN_KEEP_PREVIOUS, "false")),
+                status, cancelled);
+
+            // Throws when a step failed; the checkpoints are kept for a resume
+            reindexer.run(resume);
+            status.setIndexedCount(reindexer.getIndexedCount());
+            status.setErrorCount(reindexer.getErrorCount());
+
+            if (!cancelled.getAsBoolean()) {
+                for (String id : repositoryIds) {
+                    runPostReindexHealthCheck(id, status, status.getErrors());
+                }
             }
-        });
+        } finally {
+            blueGreenRunning.set(false);
+        }
+    }
 
-        return true;
+    private String readProperty(String key, String defaultValue) {
+        String value = propertyManager == null ? null : propertyManager.readValue(key);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    private void runFolderReindex(String repositoryId, String folderId, boolean recursive, ReindexStatus status,
+            BooleanSupplier cancelled) {
+        log.info("Starting folder reindex for repository: " + repositoryId + 
+            ", folder: " + folderId + ", recursive: " + recursive);
+
+        Folder folder = contentService.getFolder(repositoryId, folderId);
+        if (folder == null) {
+            throw new IllegalStateException("Folder not found: " + folderId);
+        }
+
+        // Count total documents
+        AtomicLong totalCount = new AtomicLong(0);
+        if (recursive) {
+            countDocumentsRecursive(repositoryId, folderId, totalCount);
+        } else {
+            List<Content> children = contentService.getChildren(repositoryId, folderId);
+            totalCount.set(children.size());
+        }
+        status.setTotalDocuments(totalCount.get());
+
+        // Reindex
+        AtomicLong indexedCount = new AtomicLong(0);
+        AtomicLong errorCount = new AtomicLong(0);
+        AtomicLong silentDropCount = new AtomicLong(0);
+        AtomicLong reindexedSuccessCount = new AtomicLong(0);
+        List<String> errors = new ArrayList<>();
+
+        reindexFolderRecursive(repositoryId, folderId, recursive, cancelled,
+            status, indexedCount, errorCount, errors, silentDropCount, reindexedSuccessCount);
+
+        status.setIndexedCount(indexedCount.get());
+        status.setErrorCount(errorCount.get());
+        status.setSilentDropCount(silentDropCount.get());
+        status.setReindexedCount(reindexedSuccessCount.get());
+        status.setErrors(errors);
+
+        log.info("Folder reindex completed for repository: " + repositoryId + 
+            ", folder: " + folderId + ", indexed: " + indexedCount.get() + 
+            ", errors: " + errorCount.get());
+        
+        // Run health check after completion to verify index integrity
+        if (!cancelled.getAsBoolean()) {
+            // Force commit and wait for Solr to fully process before health check
+            forceCommitAndWait(repositoryId);
+            runPostReindexHealthCheck(repositoryId, status, errors);
+        }
     }
     
     /**
@@ -325,10 +639,10 @@ public class SolrIndexMaintenanceServiceImpl implements SolrIndexMaintenanceServ
     }
 
     private void reindexFolderRecursive(String repositoryId, String folderId, boolean recursive,
-            ReindexStatus status, AtomicLong indexedCount, AtomicLong errorCount, List<String> errors,
-            AtomicLong silentDropCount, AtomicLong reindexedSuccessCount) {
+            BooleanSupplier cancelled, ReindexStatus status, AtomicLong indexedCount, AtomicLong errorCount,
+            List<String> errors, AtomicLong silentDropCount, AtomicLong reindexedSuccessCount) {
         
-        if (cancelFlags.get(repositoryId).get()) {
+        if (cancelled.getAsBoolean()) {
             return;
         }
 
@@ -345,7 +659,7 @@ public class SolrIndexMaintenanceServiceImpl implements SolrIndexMaintenanceServ
             List<Folder> subFolders = new ArrayList<>();
             
             for (Content child : children) {
-                if (cancelFlags.get(repositoryId).get()) {
+                if (cancelled.getAsBoolean()) {
                     // Flush remaining batch before cancellation
                     if (!batchBuffer.isEmpty()) {
                         flushBatch(repositoryId, batchBuffer, indexedCount, errorCount, errors, status, silentDropCount, reindexedSuccessCount);
@@ -375,10 +689,10 @@ public class SolrIndexMaintenanceServiceImpl implements SolrIndexMaintenanceServ
             
             // Process subfolders recursively
             for (Folder subFolder : subFolders) {
-                if (cancelFlags.get(repositoryId).get()) {
+                if (cancelled.getAsBoolean()) {
                     return;
                 }
-                reindexFolderRecursive(repositoryId, subFolder.getId(), true, 
+                reindexFolderRecursive(repositoryId, subFolder.getId(), true, cancelled,
                     status, indexedCount, errorCount, errors, silentDropCount, reindexedSuccessCount);
             }
         } catch (Exception e) {
@@ -583,24 +897,36 @@ public class SolrIndexMaintenanceServiceImpl implements SolrIndexMaintenanceServ
 
     @Override
     public ReindexStatus getReindexStatus(String repositoryId) {
-        ReindexStatus status = reindexStatuses.get(repositoryId);
-        if (status == null) {
-            status = new ReindexStatus();
-            status.setRepositoryId(repositoryId);
-            status.setStatus("idle");
+        if (jobService != null) {
+            Job job = findLatestJob(repositoryId);
+            if (job != null) {
+                return toStatus(repositoryId, job);
+            }
+        } else if (localRuns.containsKey(repositoryId)) {
+            return localRuns.get(repositoryId).status;
         }
+        ReindexStatus status = new ReindexStatus();
+        status.setRepositoryId(repositoryId);
+        status.setStatus("idle");
         return status;
     }
 
     @Override
     public boolean cancelReindex(String repositoryId) {
-        AtomicBoolean cancelFlag = cancelFlags.get(repositoryId);
-        if (cancelFlag != null) {
-            cancelFlag.set(true);
-            log.info("Reindex cancellation requested for repository: " + repositoryId);
-            return true;
+        if (jobService != null) {
+            Job job = findActiveJob(repositoryId, false);
+            if (job == null || jobService.cancel(job.getRepositoryId(), job.getId()) == null) {
+                return false;
+            }
+        } else {
+            LocalRun run = localRuns.get(repositoryId);
+            if (run == null || !isRunning(run.status)) {
+                return false;
+            }
+            run.cancelled.set(true);
         }
-        return false;
+        log.info("Reindex cancellation requested for repository: " + repositoryId);
+        return true;
     }
 
     @Override
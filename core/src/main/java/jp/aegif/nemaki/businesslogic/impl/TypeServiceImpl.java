@@ -96,6 +96,11 @@ public class TypeServiceImpl implements TypeService{
 		return contentDaoService.getPropertyDefinitionDetailByCoreNodeId(repositoryId, coreNodeId);
 	}
 
+	@Override
+	public String getTypeSystemRevision(String repositoryId) {
+		return contentDaoService.getTypeSystemRevision(repositoryId);
+	}
+
 	@Override
 	public NemakiTypeDefinition createTypeDefinition(
 			String repositoryId, NemakiTypeDefinition typeDefinition) {
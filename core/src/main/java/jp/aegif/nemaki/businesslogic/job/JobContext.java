@@ -0,0 +1,54 @@
+package jp.aegif.nemaki.businesslogic.job;
+
+/**
+ * What a job handler sees of the job it runs. Progress is persisted now and
+ * then, not on every call.
+ */
+public interface JobContext {
+
+	String getJobId();
+
+	String getRepositoryId();
+
+	String getCreator();
+
+	/**
+	 * @return the parameter, or null
+	 */
+	String getParameter(String name);
+
+	/**
+	 * @return where the previous run left off, or null on the first run
+	 */
+	String getCheckpoint();
+
+	void setCheckpoint(String checkpoint);
+
+	void setTotal(long total);
+
+	/**
+	 * @return items processed so far, including by earlier runs of the job
+	 */
+	long getProcessed();
+
+	void addProcessed(long count);
+
+	/**
+	 * Count one item that could not be processed
+	 */
+	void addFailed(String itemId, String reason);
+
+	/**
+	 * Count items that could not be processed, with one reason for all of them
+	 *
+	 * @param reason recorded as an error if not null
+	 */
+	void addFailed(long count, String reason);
+
+	void setMessage(String message);
+
+	/**
+	 * @return true once cancellation has been requested; the handler should return soon
+	 */
+	boolean isCancelled();
+}
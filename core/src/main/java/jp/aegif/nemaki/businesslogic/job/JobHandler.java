@@ -0,0 +1,22 @@
+package jp.aegif.nemaki.businesslogic.job;
+
+/**
+ * Does the work of one type of background job.
+ *
+ * A handler may be run again for a job it already ran partly, after a failure
+ * or a restart, and must then continue from the job's checkpoint or skip what
+ * is already done.
+ */
+public interface JobHandler {
+
+	/**
+	 * @return job type this handler runs, e.g. "emptyTrash"
+	 */
+	String getType();
+
+	/**
+	 * Run the job. Returning normally completes it, or cancels it if cancellation
+	 * was requested; throwing fails it.
+	 */
+	void run(JobContext context) throws Exception;
+}
@@ -0,0 +1,84 @@
+package jp.aegif.nemaki.businesslogic.job.impl;
+
+import java.util.Map;
+
+import jp.aegif.nemaki.businesslogic.ContentService;
+import jp.aegif.nemaki.businesslogic.job.JobContext;
+import jp.aegif.nemaki.businesslogic.job.JobHandler;
+import jp.aegif.nemaki.dao.ContentDaoService;
+
+/**
+ * Compares the stored content length of every document with the size of its
+ * binary, and optionally stores the actual size. Mismatches are reported as
+ * failed items. A resumed run continues after the last checked document.
+ */
+public class AttachmentLengthCheckJobHandler implements JobHandler {
+
+	public static final String TYPE = "checkAttachmentLength";
+	public static final String PARAM_REPAIR = "repair";
+
+	private static final int PAGE_SIZE = 100;
+
+	private ContentService contentService;
+	private ContentDaoService contentDaoService;
+
+	@Override
+	public String getType() {
+		return TYPE;
+	}
+
+	@Override
+	public void run(JobContext context) throws Exception {
+		String repositoryId = context.getRepositoryId();
+		boolean repair = "true".equals(context.getParameter(PARAM_REPAIR));
+
+		String lastId = context.getCheckpoint();
+		long mismatches = 0;
+		long errors = 0;
+		while (true) {
+			Map<String, String> page = contentDaoService.getAttachmentIdsOfDocuments(repositoryId, lastId, PAGE_SIZE);
+			if (page.isEmpty()) {
+				break;
+			}
+			context.setTotal(context.getProcessed() + mismatches + errors + page.size());
+
+			for (Map.Entry<String, String> entry : page.entrySet()) {
+				if (context.isCancelled()) {
+					return;
+				}
+				String documentId = entry.getKey();
+				String attachmentId = entry.getValue();
+				try {
+					Long actual = attachmentId == null ? null
+							: contentService.checkAttachmentLength(repositoryId, attachmentId, repair);
+					if (actual == null) {
+						context.addProcessed(1);
+					} else {
+						mismatches++;
+						context.addFailed(documentId, "Attachment " + attachmentId + " is " + actual + " bytes"
+								+ (repair ? ", length repaired" : ", stored length differs"));
+						if (repair) {
+							contentDaoService.refreshCmisObjectData(repositoryId, documentId);
+						}
+					}
+				} catch (Exception e) {
+					errors++;
+					context.addFailed(documentId, e.getMessage());
+				}
+				lastId = documentId;
+			}
+			context.setCheckpoint(lastId);
+		}
+
+		context.setMessage(mismatches == 0 ? "All attachment lengths match"
+				: mismatches + " attachment lengths " + (repair ? "repaired" : "differ"));
+	}
+
+	public void setContentService(ContentService contentService) {
+		this.contentService = contentService;
+	}
+
+	public void setContentDaoService(ContentDaoService contentDaoService) {
+		this.contentDaoService = contentDaoService;
+	}
+}
@@ -0,0 +1,236 @@
+package jp.aegif.nemaki.businesslogic.job.impl;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.DateFormat;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.data.Properties;
+import org.apache.chemistry.opencmis.commons.definitions.TypeDefinition;
+import org.apache.chemistry.opencmis.commons.enums.PropertyType;
+import org.apache.chemistry.opencmis.commons.enums.RelationshipDirection;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertiesImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyBooleanImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyDateTimeImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyDecimalImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyIdImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyIntegerImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyStringImpl;
+import org.apache.chemistry.opencmis.commons.server.CallContext;
+import org.apache.chemistry.opencmis.commons.spi.Holder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONValue;
+
+import jp.aegif.nemaki.businesslogic.ContentService;
+import jp.aegif.nemaki.businesslogic.job.JobContext;
+import jp.aegif.nemaki.businesslogic.job.JobHandler;
+import jp.aegif.nemaki.cmis.aspect.type.TypeManager;
+import jp.aegif.nemaki.cmis.factory.SystemCallContext;
+import jp.aegif.nemaki.cmis.service.VersioningService;
+import jp.aegif.nemaki.model.Document;
+import jp.aegif.nemaki.model.Relationship;
+import jp.aegif.nemaki.model.VersionSeries;
+
+/**
+ * Checks in a list of documents with the same properties and comment, with the
+ * permissions of the user who started the job. The checkpoint is the number of
+ * documents done; a resumed run skips documents already checked in since.
+ */
+public class BulkCheckInJobHandler implements JobHandler {
+	private static final Log log = LogFactory.getLog(BulkCheckInJobHandler.class);
+
+	public static final String TYPE = "bulkCheckIn";
+	/** JSON array of document IDs */
+	public static final String PARAM_OBJECT_IDS = "objectIds";
+	/** JSON array of property IDs, matching PARAM_PROPERTY_VALUES */
+	public static final String PARAM_PROPERTY_IDS = "propertyIds";
+	/** JSON array of property values */
+	public static final String PARAM_PROPERTY_VALUES = "propertyValues";
+	public static final String PARAM_COMMENT = "comment";
+	public static final String PARAM_FORCE = "force";
+	public static final String PARAM_COPY_RELATIONS = "copyRelations";
+
+	private ContentService contentService;
+	private VersioningService versioningService;
+	private TypeManager typeManager;
+
+	@Override
+	public String getType() {
+		return TYPE;
+	}
+
+	@Override
+	public void run(JobContext context) throws Exception {
+		String repositoryId = context.getRepositoryId();
+		List<String> objectIds = toList(context.getParameter(PARAM_OBJECT_IDS));
+		if (objectIds.isEmpty()) {
+			context.setMessage("No documents to check in");
+			return;
+		}
+		context.setTotal(objectIds.size());
+
+		SystemCallContext callContext = new SystemCallContext(repositoryId);
+		callContext.put(SystemCallContext.USERNAME, context.getCreator());
+		Properties properties = buildProperties(repositoryId, objectIds.get(0),
+				toList(context.getParameter(PARAM_PROPERTY_IDS)), toList(context.getParameter(PARAM_PROPERTY_VALUES)));
+		String comment = context.getParameter(PARAM_COMMENT);
+		boolean force = "true".equals(context.getParameter(PARAM_FORCE));
+		boolean copyRelations = "true".equals(context.getParameter(PARAM_COPY_RELATIONS));
+
+		// The checkpoint is saved now and then, so the documents after it may be done already
+		boolean resumed = context.getCheckpoint() != null;
+		int start = resumed ? Integer.parseInt(context.getCheckpoint()) : 0;
+		for (int i = start; i < objectIds.size(); i++) {
+			if (context.isCancelled()) {
+				return;
+			}
+			String objectId = objectIds.get(i);
+			try {
+				Document doc = contentService.getDocument(repositoryId, objectId);
+				if (resumed && (doc == null || !isCheckInPending(doc))) {
+					context.addProcessed(1);
+				} else if (doc == null) {
+					context.addFailed(objectId, "Document not found");
+				} else {
+					checkIn(callContext, repositoryId, objectId, properties, comment, force, copyRelations);
+					context.addProcessed(1);
+				}
+			} catch (Exception e) {
+				log.warn("BulkCheckIn: could not check in " + objectId + ": " + e.getMessage());
+				context.addFailed(objectId, e.getMessage());
+			}
+			context.setCheckpoint(String.valueOf(i + 1));
+		}
+		context.setMessage("Checked in " + objectIds.size() + " documents");
+	}
+
+	/**
+	 * Properties to check in with, converted by the property types of the type of the
+	 * given document. Values that do not parse are left out.
+	 */
+	public Properties buildProperties(String repositoryId, String objectId, List<String> propertyIds,
+			List<String> propertyValues) {
+		PropertiesImpl properties = new PropertiesImpl();
+		Document firstdoc = contentService.getDocument(repositoryId, objectId);
+		TypeDefinition typeDef = typeManager.getTypeByQueryName(repositoryId, firstdoc.getObjectType());
+
+		for(int i = 0; i < propertyIds.size(); ++i){
+			String propertyName = propertyIds.get(i);
+			String propertyValue = propertyValues.get(i);
+			PropertyType propertyType = typeDef.getPropertyDefinitions().get(propertyName).getPropertyType();
+
+			if(propertyType.equals(PropertyType.STRING) || propertyType.equals(PropertyType.ID) ||propertyType.equals(PropertyType.URI) ||propertyType.equals(PropertyType.HTML)){
+				properties.addProperty(new PropertyStringImpl (propertyName,propertyValue));
+			}
+			else if(propertyType.equals(PropertyType.BOOLEAN)){
+				properties.addProperty(new PropertyBooleanImpl (propertyName,propertyValue.equals("true")));
+			}
+			else if(propertyType.equals(PropertyType.DECIMAL)){
+				properties.addProperty(new PropertyDecimalImpl (propertyName, new BigDecimal(propertyValue)));
+			}
+			else if(propertyType.equals(PropertyType.INTEGER)){
+				properties.addProperty(new PropertyIntegerImpl (propertyName, new BigInteger(propertyValue)));
+			}
+			else if(propertyType.equals(PropertyType.DATETIME)){
+				GregorianCalendar cal = new GregorianCalendar();
+				DateFormat df = new SimpleDateFormat("YYYY-MM-dd'T'hh:mm:ss.sssXXX");
+				ParsePosition pos = new ParsePosition(0);
+				Date dt = df.parse(propertyValue, pos);
+				if(pos.getErrorIndex() != -1){
+					//  parse error -> skip this value
+					continue;
+				}
+				cal.setTime(dt);
+				properties.addProperty(new PropertyDateTimeImpl (propertyName, cal));
+			}
+		}
+		return properties;
+	}
+
+	/**
+	 * Check in one document, checking it out first when forced, and copy its source
+	 * relationships to the new version if asked to
+	 */
+	public void checkIn(CallContext callContext, String repositoryId, String objectId, Properties properties,
+			String comment, boolean force, boolean copyRelations) {
+		Document doc = contentService.getDocument(repositoryId, objectId);
+		VersionSeries vs = contentService.getVersionSeries(repositoryId, doc);
+		Holder<String> docIdHolder = new Holder<String>(objectId);
+		// TCK FIX: Null-safe version series checked out check
+		Boolean isCheckedOut = vs.isVersionSeriesCheckedOut();
+		if (force && (isCheckedOut == null || !isCheckedOut.booleanValue())){
+			versioningService.checkOut(callContext, repositoryId, docIdHolder , new Holder<Boolean>(true), null);
+		}
+		// Check in with the property set and comment
+		if (!doc.isPrivateWorkingCopy()){
+			String pwcId = contentService.getVersionSeries(repositoryId, doc).getVersionSeriesCheckedOutId();
+			docIdHolder = new Holder<String>(pwcId);
+		}
+		versioningService.checkIn(callContext, repositoryId, docIdHolder, true, properties, null, comment, null, null, null, null);
+		Document newDoc = contentService.getDocumentOfLatestVersion(repositoryId, doc.getVersionSeriesId());
+		// get relationships if exists
+		if (copyRelations){
+			List<Relationship> relList = contentService.getRelationsipsOfObject(repositoryId, objectId, RelationshipDirection.SOURCE);
+			// copy relationships in one bulk request per document
+			List<Properties> newPropsList = new ArrayList<Properties>();
+			for(Relationship rel:relList){
+				PropertiesImpl newProps = new PropertiesImpl();
+				newProps.addProperty(new PropertyIdImpl(PropertyIds.OBJECT_TYPE_ID,rel.getObjectType()));
+				newProps.addProperty(new PropertyIdImpl(PropertyIds.TARGET_ID,rel.getTargetId()));
+				newProps.addProperty(new PropertyIdImpl(PropertyIds.SOURCE_ID,newDoc.getId()));
+				newProps.addProperty(new PropertyStringImpl(PropertyIds.NAME,rel.getName()));
+				newPropsList.add(newProps);
+			}
+			List<Relationship> newRels = contentService.createRelationships(callContext, repositoryId, newPropsList);
+			if (newRels.size() < newPropsList.size()) {
+				log.warn("BulkCheckIn: copied " + newRels.size() + " of " + newPropsList.size() + " relationships of " + objectId);
+			}
+		}
+	}
+
+	/**
+	 * A document already checked in has a newer version, unless it was a private
+	 * working copy, which is gone then
+	 */
+	private static boolean isCheckInPending(Document doc) {
+		return Boolean.TRUE.equals(doc.isPrivateWorkingCopy()) || Boolean.TRUE.equals(doc.isLatestVersion());
+	}
+
+	@SuppressWarnings("unchecked")
+	public static String toParameter(List<String> values) {
+		JSONArray array = new JSONArray();
+		array.addAll(values);
+		return array.toJSONString();
+	}
+
+	private static List<String> toList(String parameter) {
+		List<String> values = new ArrayList<String>();
+		Object parsed = parameter == null ? null : JSONValue.parse(parameter);
+		if (parsed instanceof List) {
+			for (Object value : (List<?>) parsed) {
+				values.add(value == null ? null : value.toString());
+			}
+		}
+		return values;
+	}
+
+	public void setContentService(ContentService contentService) {
+		this.contentService = contentService;
+	}
+
+	public void setVersioningService(VersioningService versioningService) {
+		this.versioningService = versioningService;
+	}
+
+	public void setTypeManager(TypeManager typeManager) {
+		this.typeManager = typeManager;
+	}
+}
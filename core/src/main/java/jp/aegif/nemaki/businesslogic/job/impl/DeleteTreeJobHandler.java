@@ -0,0 +1,91 @@
+package jp.aegif.nemaki.businesslogic.job.impl;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.chemistry.opencmis.commons.data.FailedToDeleteData;
+import org.apache.chemistry.opencmis.commons.enums.UnfileObject;
+
+import jp.aegif.nemaki.businesslogic.ContentService;
+import jp.aegif.nemaki.businesslogic.job.JobContext;
+import jp.aegif.nemaki.businesslogic.job.JobHandler;
+import jp.aegif.nemaki.cmis.factory.SystemCallContext;
+import jp.aegif.nemaki.cmis.service.ObjectService;
+
+/**
+ * Deletes a folder tree with the permissions of the user who started the job,
+ * batch by batch: progress is reported and cancellation checked between batches.
+ * A resumed run deletes what is left of the tree.
+ */
+public class DeleteTreeJobHandler implements JobHandler {
+
+	public static final String TYPE = "deleteTree";
+	public static final String PARAM_FOLDER_ID = "folderId";
+	public static final String PARAM_ALL_VERSIONS = "allVersions";
+	public static final String PARAM_UNFILE_OBJECTS = "unfileObjects";
+	public static final String PARAM_CONTINUE_ON_FAILURE = "continueOnFailure";
+
+	private ContentService contentService;
+	private ObjectService objectService;
+
+	@Override
+	public String getType() {
+		return TYPE;
+	}
+
+	@Override
+	public void run(JobContext context) throws Exception {
+		String repositoryId = context.getRepositoryId();
+		String folderId = context.getParameter(PARAM_FOLDER_ID);
+		if (contentService.getFolder(repositoryId, folderId) == null) {
+			context.setMessage("Folder " + folderId + " does not exist anymore");
+			return;
+		}
+
+		SystemCallContext callContext = new SystemCallContext(repositoryId);
+		callContext.put(SystemCallContext.USERNAME, context.getCreator());
+		String unfileObjects = context.getParameter(PARAM_UNFILE_OBJECTS);
+
+		// Objects deleted by earlier runs stay counted
+		final long processedBefore = context.getProcessed();
+		FailedToDeleteData failed = objectService.deleteTree(callContext, repositoryId, folderId,
+				!"false".equals(context.getParameter(PARAM_ALL_VERSIONS)),
+				unfileObjects == null ? UnfileObject.DELETE : UnfileObject.fromValue(unfileObjects),
+				"true".equals(context.getParameter(PARAM_CONTINUE_ON_FAILURE)), new ContentService.DeleteTreeProgress() {
+					@Override
+					public void started(int total) {
+						context.setTotal(processedBefore + total);
+					}
+
+					@Override
+					public void deleted(int count) {
+						context.addProcessed(count);
+					}
+
+					@Override
+					public boolean isCancelled() {
+						return context.isCancelled();
+					}
+				}, null);
+		List<String> failedIds = failed == null || failed.getIds() == null ? Collections.<String>emptyList()
+				: failed.getIds();
+		for (String id : failedIds) {
+			context.addFailed(id, "Not deleted");
+		}
+		if (context.isCancelled()) {
+			context.setMessage("Deletion of folder tree " + folderId + " cancelled");
+		} else if (!failedIds.isEmpty()) {
+			context.setMessage("Folder tree " + folderId + " deleted partially");
+		} else {
+			context.setMessage("Folder tree " + folderId + " deleted");
+		}
+	}
+
+	public void setContentService(ContentService contentService) {
+		this.contentService = contentService;
+	}
+
+	public void setObjectService(ObjectService objectService) {
+		this.objectService = objectService;
+	}
+}
@@ -0,0 +1,54 @@
+package jp.aegif.nemaki.businesslogic.job.impl;
+
+import java.util.List;
+
+import org.apache.commons.collections4.CollectionUtils;
+
+import jp.aegif.nemaki.businesslogic.ContentService;
+import jp.aegif.nemaki.businesslogic.job.JobContext;
+import jp.aegif.nemaki.businesslogic.job.JobHandler;
+import jp.aegif.nemaki.model.Archive;
+
+/**
+ * Permanently destroys every archive of a repository. A resumed run simply
+ * destroys the archives that are left.
+ */
+public class EmptyTrashJobHandler implements JobHandler {
+
+	public static final String TYPE = "emptyTrash";
+
+	private ContentService contentService;
+
+	@Override
+	public String getType() {
+		return TYPE;
+	}
+
+	@Override
+	public void run(JobContext context) throws Exception {
+		String repositoryId = context.getRepositoryId();
+		List<Archive> archives = contentService.getArchives(repositoryId, null, null, false);
+		if (CollectionUtils.isEmpty(archives)) {
+			context.setMessage("Trash is empty");
+			return;
+		}
+		context.setTotal(context.getProcessed() + archives.size());
+
+		for (Archive archive : archives) {
+			if (context.isCancelled()) {
+				return;
+			}
+			try {
+				contentService.destroyArchive(repositoryId, archive.getId());
+				context.addProcessed(1);
+			} catch (Exception e) {
+				context.addFailed(archive.getId(), e.getMessage());
+			}
+		}
+		context.setMessage("Trash emptied");
+	}
+
+	public void setContentService(ContentService contentService) {
+		this.contentService = contentService;
+	}
+}
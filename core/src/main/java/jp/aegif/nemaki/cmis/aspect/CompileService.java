@@ -49,7 +49,7 @@ public interface CompileService {
 	
 	public <T extends Content> ObjectList compileObjectDataListForSearchResult(CallContext callContext,
 			String repositoryId, List<T> contents, String filter,
-			Boolean includeAllowableActions, IncludeRelationships includeRelationships, String renditionFilter, Boolean includeAcl, BigInteger maxItems, BigInteger skipCount, boolean folderOnly, String orderBy, long numFound);
+			Boolean includeAllowableActions, IncludeRelationships includeRelationships, String renditionFilter, Boolean includeAcl, BigInteger maxItems, BigInteger skipCount, boolean folderOnly, long numFound);
 
 	/**
 	 * TCK CRITICAL FIX: Query alias support
@@ -60,10 +60,12 @@ public interface CompileService {
 	 * @param propertyAliases Map of aliases to property names (key=alias, value=propertyId/queryName).
 	 *                        Example: {"folderName" => "cmis:name", "folderId" => "cmis:objectId"}
 	 *                        When null, no alias mapping is applied.
+	 *                        Contents are kept in the order given, which is the order the
+	 *                        search index sorted them in.
 	 */
 	public <T extends Content> ObjectList compileObjectDataListForSearchResult(CallContext callContext,
 			String repositoryId, List<T> contents, String filter, Map<String, String> propertyAliases,
-			Boolean includeAllowableActions, IncludeRelationships includeRelationships, String renditionFilter, Boolean includeAcl, BigInteger maxItems, BigInteger skipCount, boolean folderOnly, String orderBy, long numFound);
+			Boolean includeAllowableActions, IncludeRelationships includeRelationships, String renditionFilter, Boolean includeAcl, BigInteger maxItems, BigInteger skipCount, boolean folderOnly, long numFound);
 
 	public ObjectList compileChangeDataList(CallContext context, String repositoryId,
 			List<Change> changes, Holder<String> changeLogToken, Boolean includeProperties,
@@ -63,4 +63,14 @@ public interface PermissionService {
 
 	Boolean checkPermissionWithGivenList(CallContext callContext, String repositoryId, String key, Acl acl,
 			String baseType, Content content, String userName, Set<String> groups);
+
+	/**
+	 * Permission mapping keys granted on the content, evaluated in one pass over the ACL.
+	 * The result is the same as calling checkPermissionWithGivenList for every key of
+	 * the repository's permission mapping.
+	 * @param groups groups containing the user
+	 * @return an unmodifiable set of permission mapping keys
+	 */
+	Set<String> getPermittedKeys(CallContext callContext, String repositoryId, Acl acl,
+			String baseType, Content content, String userName, Set<String> groups);
 }
@@ -33,7 +33,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
 import org.apache.chemistry.opencmis.commons.PropertyIds;
@@ -133,6 +135,9 @@ public class CompileServiceImpl implements CompileService {
 	private SortUtil sortUtil;
 	private PropertyManager propertyManager;
 
+	private static final int ALLOWABLE_ACTIONS_CACHE_SIZE = 10000;
+	private final Map<AllowableActionsKey, Set<Action>> allowableActionsCache = new ConcurrentHashMap<AllowableActionsKey, Set<Action>>();
+
 	private boolean includeRelationshipsEnabled() {
 		return propertyManager.readBoolean(PropertyKey.CAPABILITY_EXTENDED_INCLUDE_RELATIONSHIPS);
 	}
@@ -155,11 +160,18 @@ public class CompileServiceImpl implements CompileService {
 	private ObjectDataImpl getRawObjectData(CallContext callContext, String repositoryId, Content content,
 			String filter, Boolean includeAllowableActions, IncludeRelationships includeRelationships,
 			String renditionFilter, Boolean includeAcl) {
+		return getRawObjectData(callContext, repositoryId, content, filter, null, includeAllowableActions,
+				includeRelationships, renditionFilter, includeAcl);
+	}
+
+	private ObjectDataImpl getRawObjectData(CallContext callContext, String repositoryId, Content content,
+			String filter, Map<String, String> propertyAliases, Boolean includeAllowableActions,
+			IncludeRelationships includeRelationships, String renditionFilter, Boolean includeAcl) {
 		ObjectDataImpl rawObjectData;
 		ObjectData cachedObjectData = nemakiCachePool.get(repositoryId).getObjectDataCache().get(content.getId());
 		if (cachedObjectData == null) {
 			rawObjectData = compileObjectDataWithFullAttributes(callContext, repositoryId, content, filter,
-					includeAllowableActions, includeRelationships, renditionFilter, includeAcl);
+					propertyAliases, includeAllowableActions, includeRelationships, renditionFilter, includeAcl);
 		} else {
 			rawObjectData = (ObjectDataImpl) cachedObjectData;
 
@@ -171,9 +183,14 @@ public class CompileServiceImpl implements CompileService {
 		return rawObjectData;
 	}
 
+	/**
+	 * Compiles ObjectData. With a property filter only the requested
+	 * properties are computed and the result is not cached, as a later
+	 * request may ask for other properties.
+	 */
 	private ObjectDataImpl compileObjectDataWithFullAttributes(CallContext callContext, String repositoryId,
-			Content content, String filter, Boolean includeAllowableActions, IncludeRelationships includeRelationships,
-			String renditionFilter, Boolean includeAcl) {
+			Content content, String filter, Map<String, String> propertyAliases, Boolean includeAllowableActions,
+			IncludeRelationships includeRelationships, String renditionFilter, Boolean includeAcl) {
 
 		if (log.isDebugEnabled()) {
 			log.debug(MessageFormat.format("compileObjectDataWithFullAttributes START: Repo={0}, Id={1}", repositoryId, content.getId()));
@@ -182,8 +199,11 @@ public class CompileServiceImpl implements CompileService {
 		ObjectDataImpl result = new ObjectDataImpl();
 
 		// Filter (any property filter MUST be done here)
-		// Note: Property filtering could improve performance for large objects with many properties
-		PropertiesImpl properties = compileProperties(callContext, repositoryId, content);
+		Set<String> requested = splitFilter(filter);
+		if (requested != null && propertyAliases != null) {
+			requested.addAll(propertyAliases.values());
+		}
+		PropertiesImpl properties = compileProperties(callContext, repositoryId, content, requested);
 		result.setProperties(properties);
 
 		// Set acl and allowable actions
@@ -198,7 +218,9 @@ public class CompileServiceImpl implements CompileService {
 			result.setRenditions(compileRenditions(callContext, repositoryId, content));
 		}
 
-		nemakiCachePool.get(repositoryId).getObjectDataCache().put(new Element(content.getId(), result));
+		if (requested == null) {
+			nemakiCachePool.get(repositoryId).getObjectDataCache().put(new Element(content.getId(), result));
+		}
 
 		if (log.isDebugEnabled()) {
 			log.debug(MessageFormat.format("compileObjectDataWithFullAttributes END: Repo={0}, Id={1}", repositoryId, content.getId()));
@@ -381,7 +403,7 @@ public class CompileServiceImpl implements CompileService {
 	 * @param propertyAliases Map of aliases to property names (key=alias, value=propertyId/queryName)
 	 *                        When null, no alias mapping is applied.
 	 */
-	private Properties filterProperties(Properties properties, Set<String> filter, Map<String, String> propertyAliases) {
+	Properties filterProperties(Properties properties, Set<String> filter, Map<String, String> propertyAliases) {
 		PropertiesImpl result = new PropertiesImpl();
 
 		// null filter as NO FILTER: do nothing
@@ -621,11 +643,11 @@ public class CompileServiceImpl implements CompileService {
 	public <T extends Content> ObjectList compileObjectDataListForSearchResult(CallContext callContext, String repositoryId,
 			List<T> contents, String filter, Boolean includeAllowableActions, IncludeRelationships includeRelationships,
 			String renditionFilter, Boolean includeAcl, BigInteger maxItems, BigInteger skipCount, boolean folderOnly,
-			String orderBy, long numFound) {
+			long numFound) {
 		// Delegate to new method with null propertyAliases (no alias mapping)
 		return compileObjectDataListForSearchResult(callContext, repositoryId, contents, filter, null,
 				includeAllowableActions, includeRelationships, renditionFilter, includeAcl, maxItems, skipCount,
-				folderOnly, orderBy, numFound);
+				folderOnly, numFound);
 	}
 
 	/**
@@ -636,7 +658,7 @@ public class CompileServiceImpl implements CompileService {
 	public <T extends Content> ObjectList compileObjectDataListForSearchResult(CallContext callContext, String repositoryId,
 			List<T> contents, String filter, Map<String, String> propertyAliases, Boolean includeAllowableActions,
 			IncludeRelationships includeRelationships, String renditionFilter, Boolean includeAcl, BigInteger maxItems,
-			BigInteger skipCount, boolean folderOnly, String orderBy, long numFound) {
+			BigInteger skipCount, boolean folderOnly, long numFound) {
 		if (CollectionUtils.isEmpty(contents)) {
 			// Empty list
 			ObjectListImpl list = new ObjectListImpl();
@@ -653,7 +675,7 @@ public class CompileServiceImpl implements CompileService {
 
 				// Get each ObjectData
 				ObjectDataImpl rawObjectData = getRawObjectData(callContext, repositoryId, content, filter,
-						includeAllowableActions, includeRelationships, renditionFilter, includeAcl);
+						propertyAliases, includeAllowableActions, includeRelationships, renditionFilter, includeAcl);
 				// TCK CRITICAL FIX: Pass propertyAliases to enable query alias support
 				ObjectData filteredObjectData = filterObjectDataInList(callContext, repositoryId, rawObjectData, filter,
 						propertyAliases, includeAllowableActions, includeRelationships, renditionFilter, includeAcl);
@@ -663,8 +685,7 @@ public class CompileServiceImpl implements CompileService {
 				}
 			}
 
-			// Sort
-			sortUtil.sort(repositoryId, objectDataList, orderBy);
+			// No re-sort: Solr has already applied ORDER BY across the whole result
 
 			// Set metadata
 			ObjectListImpl list = new ObjectListImpl();
@@ -698,20 +719,23 @@ public class CompileServiceImpl implements CompileService {
 		ObjectListImpl results = new ObjectListImpl();
 		results.setObjects(new ArrayList<ObjectData>());
 
-		Map<String, Content> cachedContents = new HashMap<String, Content>();
 		if (changes != null && CollectionUtils.isNotEmpty(changes)) {
-			for (Change change : changes) {
-
-				// Retrieve the content(using caches)
-				String objectId = change.getId();
-				Content content = new Content();
-
-				if (cachedContents.containsKey(objectId)) {
-					content = cachedContents.get(objectId);
-				} else {
-					content = contentService.getContent(repositoryId, objectId);
-					cachedContents.put(objectId, content);
+			// Contents are only needed for ACLs; read them for the whole page at once
+			Map<String, Content> contents = new HashMap<String, Content>();
+			if (includeAcl != null && includeAcl.booleanValue()) {
+				Set<String> objectIds = new HashSet<String>();
+				for (Change change : changes) {
+					if (!ChangeType.DELETED.equals(change.getChangeType()) && change.getObjectId() != null) {
+						objectIds.add(change.getObjectId());
+					}
+				}
+				for (Content content : contentService.getContents(repositoryId, objectIds)) {
+					contents.put(content.getId(), content);
 				}
+			}
+
+			for (Change change : changes) {
+				Content content = contents.get(change.getObjectId());
 				// Compile a change object data depending on its type
 				results.getObjects()
 						.add(compileChangeObjectData(repositoryId, change, content, includePolicyIds, includeAcl));
@@ -850,14 +874,13 @@ public class CompileServiceImpl implements CompileService {
 		Map<String, PermissionMapping> permissionMap = repositoryInfoMap.get(repositoryId).getAclCapabilities()
 				.getPermissionMapping();
 		String baseType = content.getType();
+		boolean isRoot = contentService.isRoot(repositoryId, content);
 
-	// Calculate AllowableActions
-	Set<Action> actionSet = new HashSet<Action>();
-	VersionSeries versionSeries = null;
-	if (content.isDocument()) {
-		Document d = (Document) content;
-		versionSeries = contentService.getVersionSeries(repositoryId, d);
-	}
+		VersionSeries versionSeries = null;
+		if (content.isDocument()) {
+			Document d = (Document) content;
+			versionSeries = contentService.getVersionSeries(repositoryId, d);
+		}
 
 		// Get user information from call context  
 		String userName = callContext.getUsername();
@@ -867,6 +890,25 @@ public class CompileServiceImpl implements CompileService {
 		UserItem u = contentService.getUserItemById(repositoryId, userName);
 		boolean isAdmin = (u != null && u.isAdmin());
 
+		// Everything the ACL grants, in one pass; admin passes every permission check
+		Set<String> permittedKeys = isAdmin ? null
+				: permissionService.getPermittedKeys(callContext, repositoryId, acl, baseType, content, userName, groups);
+
+		// Objects of the same type and state with the same grants share their actions
+		AllowableActionsKey cacheKey = null;
+		if (!content.isRelationship()) {
+			cacheKey = new AllowableActionsKey(repositoryId, tdf.getId(), typeManager.getTypesVersion(),
+					getActionState(content, versionSeries, userName, isRoot, isAdmin), permittedKeys);
+			Set<Action> cached = allowableActionsCache.get(cacheKey);
+			if (cached != null) {
+				AllowableActionsImpl allowableActions = new AllowableActionsImpl();
+				allowableActions.setAllowableActions(new HashSet<Action>(cached));
+				return allowableActions;
+			}
+		}
+
+		// Calculate AllowableActions
+		Set<Action> actionSet = new HashSet<Action>();
 		for (Entry<String, PermissionMapping> mappingEntry : permissionMap.entrySet()) {
 			String key = mappingEntry.getValue().getKey();
 			// Note: permissionMap is type-safe Map<String, PermissionMapping>, no class cast check needed
@@ -880,10 +922,10 @@ public class CompileServiceImpl implements CompileService {
 			if (!isAllowableByCapability(repositoryId, key)) {
 				continue;
 			}
-			if (!isAllowableByType(key, content, tdf, repositoryId)) {
+			if (!isAllowableByType(key, content, tdf, isRoot)) {
 				continue;
 			}
-			if (contentService.isRoot(repositoryId, content)) {
+			if (isRoot) {
 				if (Action.CAN_MOVE_OBJECT == convertKeyToAction(key)) {
 					continue;
 				}
@@ -903,25 +945,88 @@ public class CompileServiceImpl implements CompileService {
 			}
 
 			// Check permissions - admin always passes, others need permission check
-			boolean allowable;
-			if (isAdmin) {
-				// Admin has permission for all actions (but still subject to type restrictions above)
-				allowable = true;
-			} else {
-				allowable = permissionService.checkPermissionWithGivenList(callContext, repositoryId, mappingEntry.getKey(), acl,
-						baseType, content, userName, groups);
+			// (but admin is still subject to type restrictions above)
+			if (isAdmin || permittedKeys.contains(mappingEntry.getKey())) {
+				actionSet.add(convertKeyToAction(key));
 			}
+		}
 
-			if (allowable) {
-				actionSet.add(convertKeyToAction(key));
+		if (cacheKey != null) {
+			if (allowableActionsCache.size() >= ALLOWABLE_ACTIONS_CACHE_SIZE) {
+				allowableActionsCache.clear();
 			}
+			allowableActionsCache.put(cacheKey, new HashSet<Action>(actionSet));
 		}
+
 		AllowableActionsImpl allowableActions = new AllowableActionsImpl();
 		allowableActions.setAllowableActions(actionSet);
 
 		return allowableActions;
 	}
 
+	/**
+	 * The parts of an object's state that allowable actions depend on besides its type and ACL
+	 */
+	private String getActionState(Content content, VersionSeries versionSeries, String userName, boolean isRoot,
+			boolean isAdmin) {
+		StringBuilder state = new StringBuilder(content.getType());
+		state.append(isRoot ? "|root" : "|").append(isAdmin ? "|admin" : "|");
+		if (content.isDocument()) {
+			Document document = (Document) content;
+			state.append(Boolean.TRUE.equals(document.isLatestVersion()) ? "|latest" : "|")
+					.append(Boolean.TRUE.equals(document.isPrivateWorkingCopy()) ? "|pwc" : "|");
+			if (versionSeries != null) {
+				boolean checkedOut = isVersionSeriesCheckedOutSafe(versionSeries);
+				state.append(checkedOut ? "|checkedOut" : "|")
+						.append(checkedOut && Objects.equals(userName, versionSeries.getVersionSeriesCheckedOutBy()) ? "|owner" : "|");
+			}
+		}
+		return state.toString();
+	}
+
+	/**
+	 * Cache key of computed allowable actions. The type is identified by its ID and the
+	 * version of the type definitions, so a redefined type never hits entries computed
+	 * for its previous definition.
+	 */
+	private static final class AllowableActionsKey {
+		private final String repositoryId;
+		private final String typeId;
+		private final long typesVersion;
+		private final String state;
+		private final Set<String> permittedKeys;
+		private final int hash;
+
+		private AllowableActionsKey(String repositoryId, String typeId, long typesVersion, String state,
+				Set<String> permittedKeys) {
+			this.repositoryId = repositoryId;
+			this.typeId = typeId;
+			this.typesVersion = typesVersion;
+			this.state = state;
+			this.permittedKeys = permittedKeys;
+			this.hash = Objects.hash(repositoryId, typeId, typesVersion, state, permittedKeys);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof AllowableActionsKey)) {
+				return false;
+			}
+			AllowableActionsKey other = (AllowableActionsKey) obj;
+			return typesVersion == other.typesVersion && repositoryId.equals(other.repositoryId)
+					&& Objects.equals(typeId, other.typeId) && state.equals(other.state)
+					&& Objects.equals(permittedKeys, other.permittedKeys);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
 	private boolean isAllowableActionForVersionableDocument(CallContext callContext, String permissionMappingKey,
 			Document document, VersionSeries versionSeries, DocumentTypeDefinition dtdf) {
 
@@ -1006,7 +1111,7 @@ public class CompileServiceImpl implements CompileService {
 		}
 	}
 
-	private boolean isAllowableByType(String key, Content content, TypeDefinition tdf, String repositoryId) {
+	private boolean isAllowableByType(String key, Content content, TypeDefinition tdf, boolean isRoot) {
 		// DEBUG: Log key and object type for troubleshooting AllowableActions
 		log.debug("DEBUG isAllowableByType: checking key=" + key + " for objectType=" + content.getObjectType() + ", baseType=" + tdf.getBaseTypeId());
 			
@@ -1080,7 +1185,7 @@ public class CompileServiceImpl implements CompileService {
 			}
 
 			return dtdf.isVersionable();
-		} else if (isRootFolderRestrictedAction(key, content, repositoryId)) {
+		} else if (isRootFolderRestrictedAction(key, isRoot)) {
 			// Actions not allowed on root folder
 			return false;
 		} else {
@@ -1158,6 +1263,15 @@ public class CompileServiceImpl implements CompileService {
 	 */
 	@Override
 	public PropertiesImpl compileProperties(CallContext callContext, String repositoryId, Content content) {
+		return compileProperties(callContext, repositoryId, content, null);
+	}
+
+	/**
+	 * Compiles the properties a filter asks for, or all of them if the filter
+	 * is null. Properties filterProperties always keeps are compiled too.
+	 */
+	PropertiesImpl compileProperties(CallContext callContext, String repositoryId, Content content,
+			Set<String> requested) {
 		// CRITICAL: Add null safety checks for Cloudant migration
 		if (content == null) {
 			log.error("Content is null in compileProperties for repository: " + repositoryId);
@@ -1179,7 +1293,7 @@ public class CompileServiceImpl implements CompileService {
 		// Set coercion audit context for structured logging of data loss events
 		CoercionAuditLogger.setContext(repositoryId, content.getId(), content.getObjectType());
 		
-		PropertiesImpl properties = new PropertiesImpl();
+		PropertiesImpl properties = (requested == null) ? new PropertiesImpl() : new SelectedPropertiesImpl(requested);
 		try {
 			String objectType = content.getObjectType();
 			if (objectType == null) {
@@ -1427,6 +1541,9 @@ public class CompileServiceImpl implements CompileService {
 				.getSpecificPropertyDefinitions(tdf.getId());
 		if (!CollectionUtils.isEmpty(specificPropertyDefinitions)) {
 			for (PropertyDefinition<?> propertyDefinition : specificPropertyDefinitions) {
+				if (!isSelected(properties, propertyDefinition)) {
+					continue;
+				}
 				Property property = extractSubTypeProperty(content, propertyDefinition.getId());
 				Object value = (property == null) ? null : property.getValue();
 				addProperty(properties, tdf, propertyDefinition.getId(), value);
@@ -1454,7 +1571,9 @@ public class CompileServiceImpl implements CompileService {
 			Folder folder) {
 
 		addProperty(properties, tdf, PropertyIds.BASE_TYPE_ID, BaseTypeId.CMIS_FOLDER.value());
-		addProperty(properties, tdf, PropertyIds.PATH, contentService.calculatePath(repositoryId, folder));
+		if (isSelected(properties, tdf.getPropertyDefinitions().get(PropertyIds.PATH))) {
+			addProperty(properties, tdf, PropertyIds.PATH, contentService.calculatePath(repositoryId, folder));
+		}
 
 		if (checkAddProperty(properties, tdf, PropertyIds.ALLOWED_CHILD_OBJECT_TYPE_IDS)) {
 			List<String> values = new ArrayList<String>();
@@ -1610,38 +1729,9 @@ public class CompileServiceImpl implements CompileService {
 					log.debug("Attachment raw length from DB: " + attachmentLength);
 				}
 				
-				// CRITICAL TCK FIX: Always retrieve actual size from CouchDB
-				// This ensures cmis:contentStreamLength is always accurate, even after appendContent
-				if (true) {
-					if (log.isDebugEnabled()) {
-						log.debug("Retrieving actual attachment size from CouchDB for " + attachment.getId());
-					}
-
-					// CLOUDANT SDK: Try to get actual attachment size with _rev safety
-					try {
-						Long actualSize = contentService.getAttachmentActualSize(repositoryId, attachment.getId());
-						if (actualSize != null && actualSize > 0) {
-							length = actualSize;
-							if (log.isDebugEnabled()) {
-								log.debug("Retrieved actual attachment size: " + actualSize + " bytes for attachment " + attachment.getId());
-							}
-						} else {
-							// CRITICAL TCK FIX: For TCK compliance, use -1 for unknown size instead of null
-							// This prevents ContentStream properties from being omitted completely
-							length = -1L; // CMIS 1.1 specification: -1 indicates unknown content length
-							if (log.isDebugEnabled()) {
-								log.debug("Could not retrieve actual attachment size, using -1L for unknown size (CMIS 1.1 standard)");
-							}
-						}
-					} catch (Exception e) {
-						log.warn("Exception retrieving actual attachment size: " + e.getMessage());
-						// CRITICAL TCK FIX: Use -1L instead of null for better TCK compliance
-						length = -1L; // CMIS 1.1 standard: -1 for unknown content length
-						if (log.isDebugEnabled()) {
-							log.debug("Exception occurred, using -1L for unknown length (CMIS 1.1 compliant)");
-						}
-					}
-				}
+				// The stored length is kept in step with the binary by every write path,
+				// so no CouchDB lookup is needed. -1 means unknown (CMIS 1.1)
+				length = attachmentLength > 0 ? attachmentLength : -1L;
 				
 				mimeType = attachment.getMimeType();
 				if(attachment.getName() == null || attachment.getName().isEmpty()){
@@ -1839,6 +1929,15 @@ public class CompileServiceImpl implements CompileService {
 					.getSpecificPropertyDefinitions(secondaryId);
 			if (CollectionUtils.isEmpty(secondaryPropertyDefinitions))
 				continue;
+			boolean anySelected = false;
+			for (PropertyDefinition<?> secondaryPropertyDefinition : secondaryPropertyDefinitions) {
+				if (isSelected(props, secondaryPropertyDefinition)) {
+					anySelected = true;
+					break;
+				}
+			}
+			if (!anySelected)
+				continue;
 
 			Aspect aspect = extractAspect(aspects, secondaryId);
 			List<Property> properties = (aspect == null) ? new ArrayList<Property>() : aspect.getProperties();
@@ -1879,6 +1978,50 @@ public class CompileServiceImpl implements CompileService {
 		return null;
 	}
 
+	/**
+	 * Properties restricted to those a filter asks for, plus the ones
+	 * filterProperties always keeps. Other properties are dropped when added.
+	 */
+	private static class SelectedPropertiesImpl extends PropertiesImpl {
+		private static final long serialVersionUID = 1L;
+
+		private static final Set<String> ALWAYS_SELECTED = new HashSet<String>(Arrays.asList(
+				PropertyIds.OBJECT_ID, PropertyIds.OBJECT_TYPE_ID, PropertyIds.BASE_TYPE_ID,
+				PropertyIds.CONTENT_STREAM_LENGTH, PropertyIds.CONTENT_STREAM_MIME_TYPE,
+				PropertyIds.CONTENT_STREAM_FILE_NAME, PropertyIds.CONTENT_STREAM_ID,
+				PropertyIds.VERSION_SERIES_ID, PropertyIds.IS_PRIVATE_WORKING_COPY,
+				PropertyIds.VERSION_SERIES_CHECKED_OUT_ID));
+
+		private final Set<String> requested;
+
+		SelectedPropertiesImpl(Set<String> requested) {
+			this.requested = requested;
+		}
+
+		boolean isRequested(String idOrQueryName) {
+			return idOrQueryName != null && requested.contains(idOrQueryName);
+		}
+
+		boolean isSelected(String id, String queryName) {
+			return ALWAYS_SELECTED.contains(id) || isRequested(id) || isRequested(queryName);
+		}
+
+		@Override
+		public void addProperty(PropertyData<?> property) {
+			if (property != null && !isSelected(property.getId(), property.getQueryName())) {
+				return;
+			}
+			super.addProperty(property);
+		}
+	}
+
+	private boolean isSelected(PropertiesImpl properties, PropertyDefinition<?> pdf) {
+		if (pdf == null || !(properties instanceof SelectedPropertiesImpl)) {
+			return true;
+		}
+		return ((SelectedPropertiesImpl) properties).isSelected(pdf.getId(), pdf.getQueryName());
+	}
+
 	/**
 	 * Verifies that parameters are safe.
 	 */
@@ -2232,6 +2375,8 @@ public class CompileServiceImpl implements CompileService {
 			PropertyDefinition<?> pdf = tdf.getPropertyDefinitions().get(id);
 			if (!checkAddProperty(props, tdf, id))
 				return;
+			if (!isSelected(props, pdf))
+				return;
 
 			// Step 1: Normalize cardinality (single↔multi conversion)
 			Object normalizedValue = normalizeCardinality(value, pdf.getCardinality(), id);
@@ -2756,8 +2901,8 @@ public class CompileServiceImpl implements CompileService {
 	/**
 	 * CMIS Compliance Helper: Check if action is restricted on root folder
 	 */
-	private boolean isRootFolderRestrictedAction(String key, Content content, String repositoryId) {
-		if (contentService.isRoot(repositoryId, content)) {
+	private boolean isRootFolderRestrictedAction(String key, boolean isRoot) {
+		if (isRoot) {
 			return PermissionMapping.CAN_DELETE_OBJECT.equals(key) ||
 				   PermissionMapping.CAN_MOVE_OBJECT.equals(key) ||
 				   PermissionMapping.CAN_GET_FOLDER_PARENT_OBJECT.equals(key) ||
@@ -23,11 +23,14 @@ package jp.aegif.nemaki.cmis.aspect.impl;
 
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -76,6 +79,9 @@ public class PermissionServiceImpl implements PermissionService {
 	private List<String> topLevelAllowableKeys;
 	private List<String> topLevelNotAllowableKeysWithFolder;
 
+	// Compiled permission mapping by repository
+	private final Map<String, PermissionTable> permissionTables = new ConcurrentHashMap<String, PermissionTable>();
+
 
 	public void init(){
 		topLevelAllowableKeys = new ArrayList<String>();
@@ -229,6 +235,127 @@ public class PermissionServiceImpl implements PermissionService {
 		return checkPermissionInternal(callContext,repositoryId,key,acl,baseType,content,userName,groups);
 	}
 	
+	@Override
+	public Set<String> getPermittedKeys(CallContext callContext, String repositoryId, Acl acl,
+			String baseType, Content content, String userName, Set<String> groups) {
+		PermissionTable table = getPermissionTable(repositoryId);
+		boolean root = contentService.isRoot(repositoryId, content);
+
+		UserItem u = contentService.getUserItemById(repositoryId, userName);
+		if (u != null && u.isAdmin()) {
+			return table.toKeys(table.getBaseTypeBits(baseType, root));
+		}
+
+		// PWC doesn't accept any actions from a non-owner user
+		if (content.isDocument() && ((Document) content).isPrivateWorkingCopy()) {
+			VersionSeries vs = contentService.getVersionSeries(repositoryId, (Document) content);
+			if (!userName.equals(vs.getVersionSeriesCheckedOutBy())) {
+				return Collections.emptySet();
+			}
+		}
+
+		// Relationship permissions follow their source and target, key by key
+		if (content.isRelationship()) {
+			Set<String> keys = new HashSet<String>();
+			for (String key : table.keys) {
+				if (checkPermissionInternal(callContext, repositoryId, key, acl, baseType, content, userName, groups)) {
+					keys.add(key);
+				}
+			}
+			return Collections.unmodifiableSet(keys);
+		}
+
+		if (acl == null) {
+			return Collections.emptySet();
+		}
+
+		// Permissions the user holds directly, through a group or as anyone
+		String anyone = repositoryInfoMap.get(repositoryId).getPrincipalIdAnyone();
+		BitSet bits = new BitSet(table.keys.size());
+		for (Ace ace : acl.getAllAces()) {
+			if (ace.getPermissions() == null) {
+				continue;
+			}
+			String principalId = ace.getPrincipalId();
+			if (principalId.equals(anyone) || principalId.equals(userName)
+					|| (groups != null && groups.contains(principalId))) {
+				for (String permission : ace.getPermissions()) {
+					bits.or(table.getPermissionBits(permission));
+				}
+			}
+		}
+		bits.and(table.getBaseTypeBits(baseType, root));
+		return table.toKeys(bits);
+	}
+
+	private PermissionTable getPermissionTable(String repositoryId) {
+		Map<String, PermissionMapping> mapping = repositoryInfoMap.get(repositoryId).getAclCapabilities().getPermissionMapping();
+		PermissionTable table = permissionTables.get(repositoryId);
+		if (table == null || table.mapping != mapping) {
+			table = new PermissionTable(mapping);
+			permissionTables.put(repositoryId, table);
+		}
+		return table;
+	}
+
+	/**
+	 * Permission mapping compiled into bitsets over its keys: one for each
+	 * permission, and one for each base type telling which keys apply to it.
+	 */
+	private final class PermissionTable {
+		private final Map<String, PermissionMapping> mapping;
+		private final List<String> keys;
+		private final Map<String, BitSet> permissionBits = new HashMap<String, BitSet>();
+		private final Map<String, BitSet> baseTypeBits = new ConcurrentHashMap<String, BitSet>();
+		private final BitSet allBits = new BitSet();
+
+		private PermissionTable(Map<String, PermissionMapping> mapping) {
+			this.mapping = mapping;
+			this.keys = new ArrayList<String>(mapping.keySet());
+			for (int i = 0; i < keys.size(); i++) {
+				allBits.set(i);
+				List<String> permissions = mapping.get(keys.get(i)).getPermissions();
+				if (permissions == null) {
+					continue;
+				}
+				for (String permission : permissions) {
+					BitSet bits = permissionBits.get(permission);
+					if (bits == null) {
+						bits = new BitSet(keys.size());
+						permissionBits.put(permission, bits);
+					}
+					bits.set(i);
+				}
+			}
+			permissionBits.put(CmisPermission.ALL, allBits);
+		}
+
+		private BitSet getPermissionBits(String permission) {
+			BitSet bits = permissionBits.get(permission);
+			return bits != null ? bits : new BitSet();
+		}
+
+		private BitSet getBaseTypeBits(String baseType, boolean root) {
+			return baseTypeBits.computeIfAbsent(baseType + (root ? "/root" : ""), k -> {
+				BitSet bits = new BitSet(keys.size());
+				for (int i = 0; i < keys.size(); i++) {
+					if (isAllowableBaseType(keys.get(i), baseType, root)) {
+						bits.set(i);
+					}
+				}
+				return bits;
+			});
+		}
+
+		private Set<String> toKeys(BitSet bits) {
+			Set<String> result = new HashSet<String>();
+			for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+				result.add(keys.get(i));
+			}
+			return Collections.unmodifiableSet(result);
+		}
+	}
+
 	private boolean calcAnyonePermission(String repositoryId, String key, Content content, List<Ace> aces){
 		if (log.isDebugEnabled()) {
 			log.debug(MessageFormat.format("[{0}]CheckAnyonePermission BEGIN:{1}",content.getName(), key));
@@ -368,19 +495,23 @@ public class PermissionServiceImpl implements PermissionService {
 	}
 
 	private Boolean isAllowableBaseType(String key, String baseType, Content content, String repositoryId) {
+		return isAllowableBaseType(key, baseType, contentService.isRoot(repositoryId, content));
+	}
+
+	private boolean isAllowableBaseType(String key, String baseType, boolean root) {
 		// NavigationServices
 		if (PermissionMapping.CAN_GET_DESCENDENTS_FOLDER.equals(key))
 			return BaseTypeId.CMIS_FOLDER.value().equals(baseType);
 		if (PermissionMapping.CAN_GET_CHILDREN_FOLDER.equals(key))
 			return BaseTypeId.CMIS_FOLDER.value().equals(baseType);
 		if (PermissionMapping.CAN_GET_FOLDER_PARENT_OBJECT.equals(key))
-			if(contentService.isRoot(repositoryId, content)){
+			if(root){
 				return false;
 			}else{
 				return BaseTypeId.CMIS_FOLDER.value().equals(baseType);
 			}
 		if (PermissionMapping.CAN_GET_PARENTS_FOLDER.equals(key))
-			if(contentService.isRoot(repositoryId, content)){
+			if(root){
 				return false;
 			}else{
 				return (BaseTypeId.CMIS_DOCUMENT.value().equals(baseType) || BaseTypeId.CMIS_FOLDER.value().equals(baseType)
@@ -417,7 +548,7 @@ public class PermissionServiceImpl implements PermissionService {
 					|| BaseTypeId.CMIS_POLICY.value().equals(baseType) || BaseTypeId.CMIS_ITEM
 					.value().equals(baseType));
 		if (PermissionMapping.CAN_MOVE_OBJECT.equals(key))
-			if(contentService.isRoot(repositoryId, content)){
+			if(root){
 				return false;
 			}else{
 				return (BaseTypeId.CMIS_DOCUMENT.value().equals(baseType)
@@ -430,7 +561,7 @@ public class PermissionServiceImpl implements PermissionService {
 		if (PermissionMapping.CAN_MOVE_SOURCE.equals(key))
 			return BaseTypeId.CMIS_FOLDER.value().equals(baseType);
 		if (PermissionMapping.CAN_DELETE_OBJECT.equals(key))
-	if(contentService.isRoot(repositoryId, content)){
+	if(root){
 		return false;
 	}else{
 		return (BaseTypeId.CMIS_DOCUMENT.value().equals(baseType)
@@ -0,0 +1,111 @@
+package jp.aegif.nemaki.cmis.aspect.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Grouping and aggregate functions applied to the objects a CMIS query matches.
+ * Result rows carry the group values and aggregate values under their aliases.
+ */
+public class AggregateRequest {
+
+	public enum Function {
+		COUNT, SUM, MIN, MAX, AVERAGE, COUNT_DISTINCT
+	}
+
+	/**
+	 * Part of a DATETIME property to group on, as by OData year() and month()
+	 */
+	public enum DatePart {
+		YEAR, MONTH
+	}
+
+	public static class GroupBy {
+		private final String propertyId;
+		private final DatePart datePart;
+		private final String alias;
+
+		/**
+		 * @param datePart null to group on the value itself
+		 */
+		public GroupBy(String propertyId, DatePart datePart, String alias) {
+			this.propertyId = propertyId;
+			this.datePart = datePart;
+			this.alias = alias;
+		}
+
+		public String getPropertyId() {
+			return propertyId;
+		}
+
+		public DatePart getDatePart() {
+			return datePart;
+		}
+
+		public String getAlias() {
+			return alias;
+		}
+	}
+
+	public static class Aggregate {
+		private final Function function;
+		private final String propertyId;
+		private final String alias;
+
+		/**
+		 * @param propertyId null for COUNT
+		 */
+		public Aggregate(Function function, String propertyId, String alias) {
+			this.function = function;
+			this.propertyId = propertyId;
+			this.alias = alias;
+		}
+
+		public Function getFunction() {
+			return function;
+		}
+
+		public String getPropertyId() {
+			return propertyId;
+		}
+
+		public String getAlias() {
+			return alias;
+		}
+	}
+
+	private final List<GroupBy> groupBy = new ArrayList<GroupBy>();
+	private final List<Aggregate> aggregates = new ArrayList<Aggregate>();
+	private int maxGroups = 1000;
+	private int maxScan = 100000;
+
+	public List<GroupBy> getGroupBy() {
+		return groupBy;
+	}
+
+	public List<Aggregate> getAggregates() {
+		return aggregates;
+	}
+
+	public int getMaxGroups() {
+		return maxGroups;
+	}
+
+	/**
+	 * More groups than this is an error rather than a truncated result
+	 */
+	public void setMaxGroups(int maxGroups) {
+		this.maxGroups = maxGroups;
+	}
+
+	public int getMaxScan() {
+		return maxScan;
+	}
+
+	/**
+	 * Matches that may be read when the aggregation cannot be left to the index
+	 */
+	public void setMaxScan(int maxScan) {
+		this.maxScan = maxScan;
+	}
+}
@@ -22,6 +22,8 @@
 package jp.aegif.nemaki.cmis.aspect.query;
 
 import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.chemistry.opencmis.commons.data.ExtensionsData;
 import org.apache.chemistry.opencmis.commons.data.ObjectList;
@@ -33,4 +35,13 @@ public interface QueryProcessor {
 			String statement, Boolean searchAllVersions,
 			Boolean includeAllowableActions, IncludeRelationships includeRelationships,
 			String renditionFilter, BigInteger maxItems, BigInteger skipCount, ExtensionsData extension);
+
+	/**
+	 * Groups the objects a CMIS query matches and computes aggregates over
+	 * them. Only objects the caller may read are taken into account.
+	 *
+	 * @return one row per group, values keyed by their aliases
+	 */
+	List<Map<String, Object>> aggregate(CallContext callContext, String repositoryId,
+			String statement, AggregateRequest request);
 }
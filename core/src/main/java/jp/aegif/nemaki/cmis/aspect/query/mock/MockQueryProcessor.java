@@ -3,6 +3,7 @@ package jp.aegif.nemaki.cmis.aspect.query.mock;
 import jp.aegif.nemaki.businesslogic.ContentService;
 import jp.aegif.nemaki.cmis.aspect.PermissionService;
 import jp.aegif.nemaki.cmis.aspect.CompileService;
+import jp.aegif.nemaki.cmis.aspect.query.AggregateRequest;
 import jp.aegif.nemaki.cmis.aspect.query.QueryProcessor;
 
 import org.apache.chemistry.opencmis.commons.data.ExtensionsData;
@@ -15,6 +16,8 @@ import org.apache.commons.logging.LogFactory;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Mock QueryProcessor for development environment without Solr.
@@ -72,6 +75,13 @@ public class MockQueryProcessor implements QueryProcessor {
         return result;
     }
 
+    @Override
+    public List<Map<String, Object>> aggregate(CallContext callContext, String repositoryId,
+                                               String statement, AggregateRequest request) {
+        log.info("MockQueryProcessor returning no groups (Solr disabled for development)");
+        return new ArrayList<>();
+    }
+
     // Setters for Spring dependency injection
     public void setContentService(ContentService contentService) {
         this.contentService = contentService;
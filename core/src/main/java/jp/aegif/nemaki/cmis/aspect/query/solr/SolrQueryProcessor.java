@@ -23,11 +23,22 @@ package jp.aegif.nemaki.cmis.aspect.query.solr;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.locks.Lock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -36,20 +47,28 @@ import jp.aegif.nemaki.businesslogic.ContentService;
 import jp.aegif.nemaki.cmis.aspect.CompileService;
 import jp.aegif.nemaki.cmis.aspect.ExceptionService;
 import jp.aegif.nemaki.cmis.aspect.PermissionService;
+import jp.aegif.nemaki.cmis.aspect.query.AggregateRequest;
 import jp.aegif.nemaki.cmis.aspect.query.QueryProcessor;
 import jp.aegif.nemaki.cmis.aspect.type.TypeManager;
 import jp.aegif.nemaki.model.Content;
+import jp.aegif.nemaki.util.constant.CallContextKey;
+import jp.aegif.nemaki.util.constant.CmisExtensionToken;
 import jp.aegif.nemaki.util.lock.ThreadLockService;
 
 import org.antlr.runtime.tree.Tree;
 import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.data.CmisExtensionElement;
 import org.apache.chemistry.opencmis.commons.data.ExtensionsData;
 import org.apache.chemistry.opencmis.commons.data.ObjectList;
 import org.apache.chemistry.opencmis.commons.definitions.TypeDefinition;
 import org.apache.chemistry.opencmis.commons.definitions.TypeDefinitionContainer;
 import org.apache.chemistry.opencmis.commons.enums.IncludeRelationships;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.CmisExtensionElementImpl;
 import org.apache.chemistry.opencmis.commons.impl.dataobjects.ObjectListImpl;
 import org.apache.chemistry.opencmis.commons.server.CallContext;
+import org.apache.chemistry.opencmis.server.support.query.CmisSelector;
+import org.apache.chemistry.opencmis.server.support.query.ColumnReference;
+import org.apache.chemistry.opencmis.server.support.query.FunctionReference;
 import org.apache.chemistry.opencmis.server.support.query.QueryObject;
 import org.apache.chemistry.opencmis.server.support.query.QueryObject.SortSpec;
 import org.apache.chemistry.opencmis.server.support.query.QueryUtilStrict;
@@ -66,6 +85,10 @@ import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.util.NamedList;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 public class SolrQueryProcessor implements QueryProcessor {
 
@@ -76,6 +99,20 @@ public class SolrQueryProcessor implements QueryProcessor {
 	private ExceptionService exceptionService;
 	private ThreadLockService threadLockService;
 	private SolrUtil solrUtil;
+	private static final int SCAN_BATCH_SIZE = 1000;
+
+	// Fixed fields JSON facets can compute on
+	private static final Set<String> NUMERIC_FIELDS = Collections.singleton("content_length");
+	private static final Set<String> DATE_FIELDS = new HashSet<String>(Arrays.asList("creation_date", "modified"));
+	private static final Map<AggregateRequest.Function, String> FACET_FUNCTIONS = new EnumMap<AggregateRequest.Function, String>(AggregateRequest.Function.class);
+	static {
+		FACET_FUNCTIONS.put(AggregateRequest.Function.SUM, "sum");
+		FACET_FUNCTIONS.put(AggregateRequest.Function.MIN, "min");
+		FACET_FUNCTIONS.put(AggregateRequest.Function.MAX, "max");
+		FACET_FUNCTIONS.put(AggregateRequest.Function.AVERAGE, "avg");
+		FACET_FUNCTIONS.put(AggregateRequest.Function.COUNT_DISTINCT, "unique");
+	}
+
 	private static final Log logger = LogFactory
 			.getLog(SolrQueryProcessor.class);
 
@@ -175,6 +212,677 @@ public class SolrQueryProcessor implements QueryProcessor {
 			return nullList;
 		}
 		
+		ParsedQuery parsed = parse(repositoryId, statement, cmisTypeManager);
+		if (parsed == null) {
+			ObjectListImpl nullList = new ObjectListImpl();
+			nullList.setHasMoreItems(false);
+			nullList.setNumItems(BigInteger.ZERO);
+			nullList.setObjects(new ArrayList<>());
+			return nullList;
+		}
+		SolrQuery solrQuery = parsed.solrQuery;
+		QueryObject queryObject = parsed.queryObject;
+		
+		setSort(repositoryId, solrQuery, queryObject);
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("Solr query: " + solrQuery.toString());
+			logger.debug("CMIS statement: " + statement);
+			logger.debug("skipCount: " + skipCount + ", maxItems: " + maxItems);
+		}
+		// Cursor paging, when the client asks for it: Solr resumes from the mark instead of
+		// collecting and discarding skipCount rows, so deep pages cost the same as the first.
+		// A mark follows the index as it changes; a skipCount is only an offset, so it is
+		// never mapped to a mark
+		String cursorMark = getCursorMark(extension);
+		boolean clientCursor = cursorMark != null;
+		if (clientCursor) {
+			skipCount = BigInteger.ZERO;
+			solrQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+			solrQuery.set(CommonParams.START, 0);
+		} else {
+			solrQuery.set(CommonParams.START, skipCount == null ? 0 : skipCount.intValue());
+		}
+		if(maxItems == null){
+			solrQuery.set(CommonParams.ROWS, 50);
+		}else{
+			solrQuery.set(CommonParams.ROWS, maxItems.intValue());
+		}
+
+
+		QueryResponse resp = null;
+		try {
+			if (solrClient == null) {
+				logger.error("SolrClient is null - cannot execute query");
+				exceptionService.invalidArgument("Solr client initialization failed");
+				return null;
+			}
+			// Core name is already included in the URL from SolrUtil.getSolrUrl()
+			resp = solrClient.query(solrQuery);
+		} catch (SolrServerException | IOException e) {
+			logger.error("Solr query failed: " + e.getMessage(), e);
+			exceptionService.invalidArgument("Solr query execution failed: " + e.getMessage());
+			return null;
+		}
+		long numFound =0;
+		// Output search results to ObjectList
+		if (resp != null && resp.getResults() != null
+				&& resp.getResults().getNumFound() != 0) {
+			SolrDocumentList docs = resp.getResults();
+			numFound = docs.getNumFound();
+
+			List<String> docIds = new ArrayList<String>();
+			for (SolrDocument doc : docs) {
+				// Type-safe field value extraction
+				String docId = extractStringFieldValue(doc, "object_id");
+				if (docId == null) {
+					logger.warn("Skipping document with null object_id");
+					continue;
+				}
+				docIds.add(docId);
+			}
+
+			// Hydrate the whole page with one bulk read
+			List<Content> contents = contentService.getContents(repositoryId, docIds);
+
+			// When for some reason the content is missed, pass through
+			if (contents.size() < docIds.size()) {
+				Set<String> hydrated = new HashSet<String>();
+				for (Content c : contents) {
+					hydrated.add(c.getId());
+				}
+				for (String docId : docIds) {
+					if (!hydrated.contains(docId)) {
+						logger.warn("[objectId=" + docId
+								+ "]It is missed in DB but still rests in Solr.");
+					}
+				}
+			}
+			
+			
+			List<Lock> locks = threadLockService.readLocks(repositoryId, contents);
+			try{
+				threadLockService.bulkLock(locks);
+
+				// Debug logging for permission filtering
+				if (logger.isDebugEnabled()) {
+					logger.debug("Before permission filtering - includeAllowableActions=" + includeAllowableActions + ", contents.size=" + contents.size() + ", user=" + callContext.getUsername());
+				}
+
+				// Filter out by permissions
+				List<Content> permitted = permissionService.getFiltered(
+						callContext, repositoryId, contents);
+
+				// Debug logging after permission filtering
+				if (logger.isDebugEnabled()) {
+					logger.debug("After permission filtering - permitted.size=" + permitted.size() + ", filtered out=" + (contents.size() - permitted.size()));
+				}
+
+				// Filter return value with SELECT clause
+				// TCK CRITICAL FIX: Query alias support - get full alias map instead of just values
+				Map<String, String> requestedWithAliasKey = queryObject
+						.getRequestedPropertiesByAlias();
+				if (logger.isDebugEnabled()) {
+					logger.debug("TCK Alias: requestedWithAliasKey=" + requestedWithAliasKey);
+				}
+				String filter = null;
+				if (!requestedWithAliasKey.keySet().contains("*")) {
+					// Create filter(queryNames) from query aliases
+					filter = StringUtils.join(requestedWithAliasKey.values(), ",");
+				}
+				if (logger.isDebugEnabled()) {
+					logger.debug("TCK Alias: filter=" + filter);
+				}
+
+
+				// Build ObjectList, keeping the order Solr sorted the page in
+				// TCK CRITICAL FIX: Pass propertyAliases map to enable query alias support
+				// Build ObjectList with original includeAllowableActions parameter for final response
+				if (logger.isDebugEnabled()) {
+					logger.debug("TCK Alias: Calling compileObjectDataListForSearchResult with propertyAliases");
+				}
+				ObjectList result = compileService.compileObjectDataListForSearchResult(
+						callContext, repositoryId, permitted, filter, requestedWithAliasKey,
+						includeAllowableActions, includeRelationships, renditionFilter, false,
+						maxItems, skipCount, false, numFound);
+
+				// The next mark is only reported to a client that paged with a cursor
+				if (clientCursor) {
+					String nextCursorMark = resp.getNextCursorMark();
+					boolean hasMoreItems = docs.size() >= solrQuery.getRows() && !cursorMark.equals(nextCursorMark);
+					setNextCursorMark(result, nextCursorMark, hasMoreItems);
+				}
+				return result;
+				
+			}finally{
+				threadLockService.bulkUnlock(locks);
+			}
+		} else {
+			ObjectListImpl nullList = new ObjectListImpl();
+			nullList.setHasMoreItems(false);
+			nullList.setNumItems(BigInteger.ZERO);
+			if (clientCursor) {
+				setNextCursorMark(nullList, cursorMark, false);
+			}
+			return nullList;
+		}
+	}
+
+	@Override
+	public List<Map<String, Object>> aggregate(CallContext callContext, String repositoryId,
+			String statement, AggregateRequest request) {
+		SolrClient solrClient = solrUtil.getSolrClient();
+		if (solrClient == null) {
+			logger.warn("Solr client unavailable - returning no groups for: " + statement);
+			return new ArrayList<Map<String, Object>>();
+		}
+		ParsedQuery parsed = parse(repositoryId, statement, new CmisTypeManager(repositoryId, typeManager));
+		if (parsed == null) {
+			return new ArrayList<Map<String, Object>>();
+		}
+
+		// Resolve the fields up front so that unknown properties fail early
+		Map<String, String> fields = new LinkedHashMap<String, String>();
+		for (AggregateRequest.GroupBy groupBy : request.getGroupBy()) {
+			String field = getAggregateField(repositoryId, groupBy.getPropertyId(), fields);
+			if (groupBy.getDatePart() != null && !isDateField(field)) {
+				exceptionService.invalidArgument("Not a DATETIME property: " + groupBy.getPropertyId());
+			}
+		}
+		for (AggregateRequest.Aggregate aggregate : request.getAggregates()) {
+			if (aggregate.getFunction() != AggregateRequest.Function.COUNT) {
+				getAggregateField(repositoryId, aggregate.getPropertyId(), fields);
+			}
+		}
+
+		// The index holds no ACLs, so only a caller who may read everything
+		// can have the groups computed by Solr facets
+		boolean admin = Boolean.TRUE.equals(callContext.get(CallContextKey.IS_ADMIN));
+		try {
+			if (admin && isFacetable(request, fields)) {
+				return facetAggregate(solrClient, parsed.solrQuery, request, fields);
+			}
+			return scanAggregate(callContext, repositoryId, solrClient, parsed.solrQuery, request, fields);
+		} catch (SolrServerException | IOException e) {
+			logger.error("Solr aggregation failed: " + e.getMessage(), e);
+			exceptionService.invalidArgument("Solr query execution failed: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private String getAggregateField(String repositoryId, String propertyId, Map<String, String> fields) {
+		String field = solrUtil.getFieldNameInSolr(repositoryId, propertyId);
+		if (field == null) {
+			exceptionService.invalidArgument("Unknown property: " + propertyId);
+		}
+		fields.put(propertyId, field);
+		return field;
+	}
+
+	private boolean isDateField(String field) {
+		return DATE_FIELDS.contains(field) || field.startsWith("dynamicDate.");
+	}
+
+	/**
+	 * Facets give exact answers on single-valued fields only, and month
+	 * buckets of different years can be merged only for additive functions.
+	 */
+	private boolean isFacetable(AggregateRequest request, Map<String, String> fields) {
+		Set<String> months = new HashSet<String>();
+		Set<String> years = new HashSet<String>();
+		for (AggregateRequest.GroupBy groupBy : request.getGroupBy()) {
+			if (!solrUtil.isSingleValuedField(fields.get(groupBy.getPropertyId()))) {
+				return false;
+			}
+			if (groupBy.getDatePart() == AggregateRequest.DatePart.MONTH) {
+				months.add(groupBy.getPropertyId());
+			} else if (groupBy.getDatePart() == AggregateRequest.DatePart.YEAR) {
+				years.add(groupBy.getPropertyId());
+			}
+		}
+		months.removeAll(years);
+		for (AggregateRequest.Aggregate aggregate : request.getAggregates()) {
+			AggregateRequest.Function function = aggregate.getFunction();
+			if (function == AggregateRequest.Function.COUNT) {
+				continue;
+			}
+			String field = fields.get(aggregate.getPropertyId());
+			if (!solrUtil.isSingleValuedField(field)) {
+				return false;
+			}
+			if ((function == AggregateRequest.Function.SUM || function == AggregateRequest.Function.AVERAGE)
+					&& !NUMERIC_FIELDS.contains(field)) {
+				return false;
+			}
+			if ((function == AggregateRequest.Function.MIN || function == AggregateRequest.Function.MAX)
+					&& !NUMERIC_FIELDS.contains(field) && !DATE_FIELDS.contains(field)) {
+				return false;
+			}
+			if (!months.isEmpty() && (function == AggregateRequest.Function.AVERAGE
+					|| function == AggregateRequest.Function.COUNT_DISTINCT)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * One facet level per grouped property: terms for values, a range with a
+	 * month or year gap for date parts.
+	 */
+	private static class FacetLevel {
+		private final String propertyId;
+		private final String field;
+		private final List<AggregateRequest.GroupBy> groupBys = new ArrayList<AggregateRequest.GroupBy>();
+		private final boolean range;
+		private String gap;
+
+		private FacetLevel(String propertyId, String field, boolean range) {
+			this.propertyId = propertyId;
+			this.field = field;
+			this.range = range;
+		}
+	}
+
+	private List<Map<String, Object>> facetAggregate(SolrClient solrClient, SolrQuery baseQuery,
+			AggregateRequest request, Map<String, String> fields) throws SolrServerException, IOException {
+		List<FacetLevel> levels = new ArrayList<FacetLevel>();
+		for (AggregateRequest.GroupBy groupBy : request.getGroupBy()) {
+			boolean range = groupBy.getDatePart() != null;
+			FacetLevel level = null;
+			for (FacetLevel l : levels) {
+				if (l.range == range && l.propertyId.equals(groupBy.getPropertyId())) {
+					level = l;
+				}
+			}
+			if (level == null) {
+				level = new FacetLevel(groupBy.getPropertyId(), fields.get(groupBy.getPropertyId()), range);
+				levels.add(level);
+			}
+			level.groupBys.add(groupBy);
+			if (groupBy.getDatePart() == AggregateRequest.DatePart.MONTH) {
+				level.gap = "MONTH";
+			} else if (range && level.gap == null) {
+				level.gap = "YEAR";
+			}
+		}
+
+		// Range facets need bounds: read them first
+		Map<String, Object> bounds = new LinkedHashMap<String, Object>();
+		for (int i = 0; i < levels.size(); i++) {
+			if (levels.get(i).range) {
+				bounds.put("min" + i, "min(" + levels.get(i).field + ")");
+				bounds.put("max" + i, "max(" + levels.get(i).field + ")");
+			}
+		}
+		NamedList<Object> boundValues = null;
+		if (!bounds.isEmpty()) {
+			boundValues = facet(solrClient, baseQuery, bounds);
+			if (boundValues == null) {
+				return new ArrayList<Map<String, Object>>();
+			}
+		}
+
+		Map<String, Object> facet = new LinkedHashMap<String, Object>();
+		for (int a = 0; a < request.getAggregates().size(); a++) {
+			AggregateRequest.Aggregate aggregate = request.getAggregates().get(a);
+			if (aggregate.getFunction() != AggregateRequest.Function.COUNT) {
+				facet.put("a" + a, FACET_FUNCTIONS.get(aggregate.getFunction())
+						+ "(" + fields.get(aggregate.getPropertyId()) + ")");
+			}
+		}
+		for (int i = levels.size() - 1; i >= 0; i--) {
+			FacetLevel level = levels.get(i);
+			Map<String, Object> f = new LinkedHashMap<String, Object>();
+			f.put("field", level.field);
+			if (level.range) {
+				Object min = boundValues.get("min" + i);
+				Object max = boundValues.get("max" + i);
+				if (!(min instanceof Date) || !(max instanceof Date)) {
+					return new ArrayList<Map<String, Object>>();
+				}
+				f.put("type", "range");
+				f.put("start", ((Date) min).toInstant() + "/" + level.gap);
+				f.put("end", ((Date) max).toInstant() + "/" + level.gap + "+1" + level.gap);
+				f.put("gap", "+1" + level.gap);
+			} else {
+				f.put("type", "terms");
+				f.put("limit", request.getMaxGroups() + 1);
+				f.put("missing", true);
+			}
+			if (!facet.isEmpty()) {
+				f.put("facet", facet);
+			}
+			facet = new LinkedHashMap<String, Object>();
+			facet.put("g" + i, f);
+		}
+
+		NamedList<Object> result = facet(solrClient, baseQuery, facet);
+		Map<List<Object>, Map<String, Object>> rows = new LinkedHashMap<List<Object>, Map<String, Object>>();
+		if (result != null) {
+			collectBuckets(result, 0, levels, new HashMap<String, Object>(), request, rows);
+		}
+		return new ArrayList<Map<String, Object>>(rows.values());
+	}
+
+	@SuppressWarnings("unchecked")
+	private NamedList<Object> facet(SolrClient solrClient, SolrQuery baseQuery, Map<String, Object> facet)
+			throws SolrServerException, IOException {
+		SolrQuery solrQuery = baseQuery.getCopy();
+		solrQuery.setRows(0);
+		solrQuery.set("json.facet", new ObjectMapper().writeValueAsString(facet));
+		QueryResponse resp = solrClient.query(solrQuery);
+		return (NamedList<Object>) resp.getResponse().get("facets");
+	}
+
+	@SuppressWarnings("unchecked")
+	private void collectBuckets(NamedList<Object> bucket, int depth, List<FacetLevel> levels,
+			Map<String, Object> groupValues, AggregateRequest request, Map<List<Object>, Map<String, Object>> rows) {
+		Number count = (Number) bucket.get("count");
+		if (count == null || count.longValue() == 0) {
+			return;
+		}
+		if (depth == levels.size()) {
+			Map<String, Object> values = new HashMap<String, Object>();
+			for (int a = 0; a < request.getAggregates().size(); a++) {
+				AggregateRequest.Aggregate aggregate = request.getAggregates().get(a);
+				values.put(aggregate.getAlias(), aggregate.getFunction() == AggregateRequest.Function.COUNT
+						? Long.valueOf(count.longValue()) : bucket.get("a" + a));
+			}
+			addRow(groupValues, values, request, rows);
+			return;
+		}
+
+		FacetLevel level = levels.get(depth);
+		NamedList<Object> facet = (NamedList<Object>) bucket.get("g" + depth);
+		if (facet == null) {
+			return;
+		}
+		List<NamedList<Object>> buckets = (List<NamedList<Object>>) facet.get("buckets");
+		if (buckets != null) {
+			if (!level.range && buckets.size() > request.getMaxGroups()) {
+				tooManyGroups(request);
+			}
+			for (NamedList<Object> b : buckets) {
+				Map<String, Object> values = new HashMap<String, Object>(groupValues);
+				putGroupValues(level.groupBys, b.get("val"), values);
+				collectBuckets(b, depth + 1, levels, values, request, rows);
+			}
+		}
+		NamedList<Object> missing = (NamedList<Object>) facet.get("missing");
+		if (missing != null) {
+			Map<String, Object> values = new HashMap<String, Object>(groupValues);
+			putGroupValues(level.groupBys, null, values);
+			collectBuckets(missing, depth + 1, levels, values, request, rows);
+		}
+	}
+
+	/**
+	 * Add the aggregates of one group, merging them into a row the group
+	 * already has (month buckets of different years).
+	 */
+	private void addRow(Map<String, Object> groupValues, Map<String, Object> values, AggregateRequest request,
+			Map<List<Object>, Map<String, Object>> rows) {
+		List<Object> key = new ArrayList<Object>();
+		for (AggregateRequest.GroupBy groupBy : request.getGroupBy()) {
+			key.add(groupValues.get(groupBy.getAlias()));
+		}
+		Map<String, Object> row = rows.get(key);
+		if (row == null) {
+			if (rows.size() >= request.getMaxGroups()) {
+				tooManyGroups(request);
+			}
+			row = new LinkedHashMap<String, Object>();
+			for (AggregateRequest.GroupBy groupBy : request.getGroupBy()) {
+				row.put(groupBy.getAlias(), groupValues.get(groupBy.getAlias()));
+			}
+			for (AggregateRequest.Aggregate aggregate : request.getAggregates()) {
+				row.put(aggregate.getAlias(), values.get(aggregate.getAlias()));
+			}
+			rows.put(key, row);
+			return;
+		}
+		for (AggregateRequest.Aggregate aggregate : request.getAggregates()) {
+			Object current = row.get(aggregate.getAlias());
+			Object value = values.get(aggregate.getAlias());
+			switch (aggregate.getFunction()) {
+			case COUNT:
+				row.put(aggregate.getAlias(), ((Number) current).longValue() + ((Number) value).longValue());
+				break;
+			case SUM:
+				row.put(aggregate.getAlias(), current == null ? value : value == null ? current
+						: Double.valueOf(((Number) current).doubleValue() + ((Number) value).doubleValue()));
+				break;
+			case MIN:
+			case MAX:
+				int c = compareValues(value, current);
+				if (current == null || value != null
+						&& (aggregate.getFunction() == AggregateRequest.Function.MIN ? c < 0 : c > 0)) {
+					row.put(aggregate.getAlias(), value);
+				}
+				break;
+			default:
+				// isFacetable() keeps these from being merged
+				break;
+			}
+		}
+	}
+
+	private void putGroupValues(List<AggregateRequest.GroupBy> groupBys, Object value, Map<String, Object> values) {
+		for (AggregateRequest.GroupBy groupBy : groupBys) {
+			if (groupBy.getDatePart() == null || !(value instanceof Date)) {
+				values.put(groupBy.getAlias(), groupBy.getDatePart() == null ? value : null);
+			} else {
+				ZonedDateTime time = ((Date) value).toInstant().atZone(ZoneOffset.UTC);
+				values.put(groupBy.getAlias(), groupBy.getDatePart() == AggregateRequest.DatePart.YEAR
+						? time.getYear() : time.getMonthValue());
+			}
+		}
+	}
+
+	private void tooManyGroups(AggregateRequest request) {
+		exceptionService.invalidArgument("The aggregation yields more than " + request.getMaxGroups()
+				+ " groups; narrow the filter or group on fewer properties");
+	}
+
+	/**
+	 * Aggregate a lean cursor walk over the matches, keeping only the objects
+	 * the caller may read.
+	 */
+	private List<Map<String, Object>> scanAggregate(CallContext callContext, String repositoryId,
+			SolrClient solrClient, SolrQuery baseQuery, AggregateRequest request, Map<String, String> fields)
+			throws SolrServerException, IOException {
+		SolrQuery solrQuery = baseQuery.getCopy();
+		Set<String> fl = new LinkedHashSet<String>();
+		fl.add("object_id");
+		fl.addAll(fields.values());
+		solrQuery.setFields(fl.toArray(new String[fl.size()]));
+		solrQuery.setSort("id", SolrQuery.ORDER.asc);
+		solrQuery.setRows(SCAN_BATCH_SIZE);
+
+		Map<List<Object>, Object[]> groups = new LinkedHashMap<List<Object>, Object[]>();
+		Map<List<Object>, Map<String, Object>> groupValuesByKey = new HashMap<List<Object>, Map<String, Object>>();
+		String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+		while (true) {
+			solrQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+			QueryResponse resp = solrClient.query(solrQuery);
+			SolrDocumentList docs = resp.getResults();
+			if (docs.getNumFound() > request.getMaxScan()) {
+				exceptionService.invalidArgument("The aggregation matches " + docs.getNumFound()
+						+ " objects, more than " + request.getMaxScan() + " can be aggregated for this user");
+			}
+
+			Map<String, SolrDocument> byId = new LinkedHashMap<String, SolrDocument>();
+			for (SolrDocument doc : docs) {
+				String objectId = extractStringFieldValue(doc, "object_id");
+				if (objectId != null) {
+					byId.put(objectId, doc);
+				}
+			}
+			if (!byId.isEmpty()) {
+				List<Content> contents = contentService.getContents(repositoryId, byId.keySet());
+				for (Content content : permissionService.getFiltered(callContext, repositoryId, contents)) {
+					SolrDocument doc = byId.get(content.getId());
+					if (doc != null) {
+						accumulate(doc, request, fields, groups, groupValuesByKey);
+					}
+				}
+			}
+
+			String next = resp.getNextCursorMark();
+			if (docs.size() < SCAN_BATCH_SIZE || next == null || next.equals(cursorMark)) {
+				break;
+			}
+			cursorMark = next;
+		}
+
+		Map<List<Object>, Map<String, Object>> rows = new LinkedHashMap<List<Object>, Map<String, Object>>();
+		for (Map.Entry<List<Object>, Object[]> entry : groups.entrySet()) {
+			Map<String, Object> values = new HashMap<String, Object>();
+			Object[] states = entry.getValue();
+			for (int a = 0; a < request.getAggregates().size(); a++) {
+				AggregateRequest.Aggregate aggregate = request.getAggregates().get(a);
+				Object state = states[a + 1];
+				Object value;
+				switch (aggregate.getFunction()) {
+				case COUNT:
+					value = states[0];
+					break;
+				case AVERAGE:
+					double[] avg = (double[]) state;
+					value = avg[1] == 0 ? null : Double.valueOf(avg[0] / avg[1]);
+					break;
+				case COUNT_DISTINCT:
+					value = Long.valueOf(((Set<?>) state).size());
+					break;
+				default:
+					value = state;
+					break;
+				}
+				values.put(aggregate.getAlias(), value);
+			}
+			addRow(groupValuesByKey.get(entry.getKey()), values, request, rows);
+		}
+		return new ArrayList<Map<String, Object>>(rows.values());
+	}
+
+	private void accumulate(SolrDocument doc, AggregateRequest request, Map<String, String> fields,
+			Map<List<Object>, Object[]> groups, Map<List<Object>, Map<String, Object>> groupValuesByKey) {
+		Map<String, Object> groupValues = new HashMap<String, Object>();
+		for (AggregateRequest.GroupBy groupBy : request.getGroupBy()) {
+			putGroupValues(Collections.singletonList(groupBy),
+					doc.getFirstValue(fields.get(groupBy.getPropertyId())), groupValues);
+		}
+		List<Object> key = new ArrayList<Object>();
+		for (AggregateRequest.GroupBy groupBy : request.getGroupBy()) {
+			key.add(groupValues.get(groupBy.getAlias()));
+		}
+
+		Object[] states = groups.get(key);
+		if (states == null) {
+			if (groups.size() >= request.getMaxGroups()) {
+				tooManyGroups(request);
+			}
+			states = new Object[request.getAggregates().size() + 1];
+			states[0] = Long.valueOf(0);
+			groups.put(key, states);
+			groupValuesByKey.put(key, groupValues);
+		}
+		states[0] = (Long) states[0] + 1;
+
+		for (int a = 0; a < request.getAggregates().size(); a++) {
+			AggregateRequest.Aggregate aggregate = request.getAggregates().get(a);
+			if (aggregate.getFunction() == AggregateRequest.Function.COUNT) {
+				continue;
+			}
+			Object value = toComparable(doc.getFirstValue(fields.get(aggregate.getPropertyId())));
+			if (value == null) {
+				continue;
+			}
+			Object state = states[a + 1];
+			switch (aggregate.getFunction()) {
+			case SUM:
+				if (value instanceof Number) {
+					states[a + 1] = Double.valueOf((state == null ? 0 : ((Number) state).doubleValue())
+							+ ((Number) value).doubleValue());
+				}
+				break;
+			case AVERAGE:
+				if (value instanceof Number) {
+					double[] avg = state == null ? new double[2] : (double[]) state;
+					avg[0] += ((Number) value).doubleValue();
+					avg[1]++;
+					states[a + 1] = avg;
+				}
+				break;
+			case MIN:
+				if (state == null || compareValues(value, state) < 0) {
+					states[a + 1] = value;
+				}
+				break;
+			case MAX:
+				if (state == null || compareValues(value, state) > 0) {
+					states[a + 1] = value;
+				}
+				break;
+			case COUNT_DISTINCT: {
+				@SuppressWarnings("unchecked")
+				Set<Object> distinct = state == null ? new HashSet<Object>() : (Set<Object>) state;
+				distinct.add(value);
+				states[a + 1] = distinct;
+				break;
+			}
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Numeric properties other than the fixed ones are indexed as strings
+	 */
+	private Object toComparable(Object value) {
+		if (value instanceof String) {
+			try {
+				return Long.valueOf((String) value);
+			} catch (NumberFormatException e) {
+				try {
+					return Double.valueOf((String) value);
+				} catch (NumberFormatException e2) {
+					return value;
+				}
+			}
+		}
+		return value;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private int compareValues(Object a, Object b) {
+		if (a instanceof Number && b instanceof Number) {
+			return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+		}
+		if (a instanceof Comparable && b != null && a.getClass() == b.getClass()) {
+			return ((Comparable) a).compareTo(b);
+		}
+		return String.valueOf(a).compareTo(String.valueOf(b));
+	}
+
+	private static class ParsedQuery {
+		private final SolrQuery solrQuery;
+		private final QueryObject queryObject;
+
+		private ParsedQuery(SolrQuery solrQuery, QueryObject queryObject) {
+			this.solrQuery = solrQuery;
+			this.queryObject = queryObject;
+		}
+	}
+
+	/**
+	 * Translate a CMIS statement to the Solr query of its WHERE and FROM clauses.
+	 *
+	 * @return null if the statement cannot match anything
+	 */
+	private ParsedQuery parse(String repositoryId, String statement, CmisTypeManager cmisTypeManager) {
 		// replacing backslashed for TIMESTAMP only
 		Pattern time_p = Pattern.compile("(TIMESTAMP\\s?'[\\-\\d]*T\\d{2})\\\\:(\\d{2})\\\\:([\\.\\d]*Z')", Pattern.CASE_INSENSITIVE);
 		Matcher time_m = time_p.matcher(statement);
@@ -200,12 +908,7 @@ public class SolrQueryProcessor implements QueryProcessor {
 			}
 			logger.error("QueryUtilStrict initialization failed during Jakarta EE operation", e);
 			
-			// Return empty result for Jakarta EE compatibility
-			ObjectListImpl emptyResult = new ObjectListImpl();
-			emptyResult.setHasMoreItems(false);
-			emptyResult.setNumItems(BigInteger.ZERO);
-			emptyResult.setObjects(new ArrayList<>());
-			return emptyResult;
+			return null;
 		}
 		
 		// Get queryObject before processStatement
@@ -362,10 +1065,7 @@ public class SolrQueryProcessor implements QueryProcessor {
 			}
 			logger.error("Exception in getMainFromName() during FROM query", e);
 			// Return empty result instead of crashing
-			ObjectListImpl nullList = new ObjectListImpl();
-			nullList.setHasMoreItems(false);
-			nullList.setNumItems(BigInteger.ZERO);
-			return nullList;
+			return null;
 		}
 
 		// Check if td is null before proceeding
@@ -373,10 +1073,7 @@ public class SolrQueryProcessor implements QueryProcessor {
 			if (logger.isDebugEnabled()) {
 				logger.debug("TypeDefinition is null, cannot proceed with query");
 			}
-			ObjectListImpl nullList = new ObjectListImpl();
-			nullList.setHasMoreItems(false);
-			nullList.setNumItems(BigInteger.ZERO);
-			return nullList;
+			return null;
 		}
 
 		// includedInSupertypeQuery
@@ -420,138 +1117,36 @@ public class SolrQueryProcessor implements QueryProcessor {
 //		fromQueryString += new TermQuery(t).toString();
 		fromQueryString += "("+ solrUtil.getPropertyNameInSolr(repositoryId, PropertyIds.OBJECT_TYPE_ID) +":"+ StringUtils.join(tables," " + solrUtil.getPropertyNameInSolr(repositoryId, PropertyIds.OBJECT_TYPE_ID) + ":") + ")";
 
-		// Execute query
 		SolrQuery solrQuery = new SolrQuery();
 		solrQuery.setQuery(whereQueryString);
 		solrQuery.setFilterQueries(fromQueryString);
-		
-		// RANKING FIX: Add sort by modification date descending to prioritize recent documents
-		// This ensures that newly created documents appear at the top of search results
-		solrQuery.setSort("modified", SolrQuery.ORDER.desc);
-		if (logger.isDebugEnabled()) {
-			logger.debug("Query: Added sort by modified desc to prioritize recent documents");
-		}
-		
-		if (logger.isDebugEnabled()) {
-			logger.debug("Solr query: " + solrQuery.toString());
-			logger.debug("CMIS statement: " + statement);
-			logger.debug("skipCount: " + skipCount + ", maxItems: " + maxItems);
-			logger.debug("whereQueryString: " + whereQueryString);
-			logger.debug("fromQueryString: " + fromQueryString);
-		}
-		if(skipCount == null){
-			solrQuery.set(CommonParams.START, 0);
-		}else{
-			solrQuery.set(CommonParams.START, skipCount.intValue());
-		}
-		if(maxItems == null){
-			solrQuery.set(CommonParams.ROWS, 50);
-		}else{
-			solrQuery.set(CommonParams.ROWS, maxItems.intValue());
-		}
-		
 
-		QueryResponse resp = null;
-		try {
-			if (solrClient == null) {
-				logger.error("SolrClient is null - cannot execute query");
-				exceptionService.invalidArgument("Solr client initialization failed");
-				return null;
-			}
-			// Core name is already included in the URL from SolrUtil.getSolrUrl()
-			resp = solrClient.query(solrQuery);
-		} catch (SolrServerException | IOException e) {
-			logger.error("Solr query failed: " + e.getMessage(), e);
-			exceptionService.invalidArgument("Solr query execution failed: " + e.getMessage());
+		return new ParsedQuery(solrQuery, queryObject);
+	}
+
+	private String getCursorMark(ExtensionsData extension) {
+		if (extension == null || extension.getExtensions() == null) {
 			return null;
 		}
-
-		long numFound =0;
-		// Output search results to ObjectList
-		if (resp != null && resp.getResults() != null
-				&& resp.getResults().getNumFound() != 0) {
-			SolrDocumentList docs = resp.getResults();
-			numFound = docs.getNumFound();
-
-			List<Content> contents = new ArrayList<Content>();
-			for (SolrDocument doc : docs) {
-				// Type-safe field value extraction
-				String docId = extractStringFieldValue(doc, "object_id");
-				if (docId == null) {
-					logger.warn("Skipping document with null object_id");
-					continue;
-				}
-				
-				Content c = contentService.getContent(repositoryId, docId);
-
-				// When for some reason the content is missed, pass through
-				if (c == null) {
-					logger.warn("[objectId=" + docId
-							+ "]It is missed in DB but still rests in Solr.");
-				} else {
-					contents.add(c);
-				}
-
+		for (CmisExtensionElement element : extension.getExtensions()) {
+			if (CmisExtensionToken.QUERY_CURSOR_NAMESPACE.equals(element.getNamespace())
+					&& CmisExtensionToken.QUERY_CURSOR_MARK.equals(element.getName())) {
+				return StringUtils.isEmpty(element.getValue()) ? CursorMarkParams.CURSOR_MARK_START : element.getValue();
 			}
-			
-			
-			List<Lock> locks = threadLockService.readLocks(repositoryId, contents);
-			try{
-				threadLockService.bulkLock(locks);
-
-				// Debug logging for permission filtering
-				if (logger.isDebugEnabled()) {
-					logger.debug("Before permission filtering - includeAllowableActions=" + includeAllowableActions + ", contents.size=" + contents.size() + ", user=" + callContext.getUsername());
-				}
-
-				// Filter out by permissions
-				List<Content> permitted = permissionService.getFiltered(
-						callContext, repositoryId, contents);
-
-				// Debug logging after permission filtering
-				if (logger.isDebugEnabled()) {
-					logger.debug("After permission filtering - permitted.size=" + permitted.size() + ", filtered out=" + (contents.size() - permitted.size()));
-				}
-
-				// Filter return value with SELECT clause
-				// TCK CRITICAL FIX: Query alias support - get full alias map instead of just values
-				Map<String, String> requestedWithAliasKey = queryObject
-						.getRequestedPropertiesByAlias();
-				if (logger.isDebugEnabled()) {
-					logger.debug("TCK Alias: requestedWithAliasKey=" + requestedWithAliasKey);
-				}
-				String filter = null;
-				if (!requestedWithAliasKey.keySet().contains("*")) {
-					// Create filter(queryNames) from query aliases
-					filter = StringUtils.join(requestedWithAliasKey.values(), ",");
-				}
-				if (logger.isDebugEnabled()) {
-					logger.debug("TCK Alias: filter=" + filter);
-				}
-
-
-				// Build ObjectList
-				String orderBy = orderBy(queryObject);
-				// TCK CRITICAL FIX: Pass propertyAliases map to enable query alias support
-				// Build ObjectList with original includeAllowableActions parameter for final response
-				if (logger.isDebugEnabled()) {
-					logger.debug("TCK Alias: Calling compileObjectDataListForSearchResult with propertyAliases");
-				}
-				ObjectList result = compileService.compileObjectDataListForSearchResult(
-						callContext, repositoryId, permitted, filter, requestedWithAliasKey,
-						includeAllowableActions, includeRelationships, renditionFilter, false,
-						maxItems, skipCount, false, orderBy,numFound);
+		}
+		return null;
+	}
 
-				return result;
-				
-			}finally{
-				threadLockService.bulkUnlock(locks);
-			}
-		} else {
-			ObjectListImpl nullList = new ObjectListImpl();
-			nullList.setHasMoreItems(false);
-			nullList.setNumItems(BigInteger.ZERO);
-			return nullList;
+	private void setNextCursorMark(ObjectList list, String nextCursorMark, boolean hasMoreItems) {
+		List<CmisExtensionElement> extensions = new ArrayList<CmisExtensionElement>();
+		if (list.getExtensions() != null) {
+			extensions.addAll(list.getExtensions());
+		}
+		extensions.add(new CmisExtensionElementImpl(CmisExtensionToken.QUERY_CURSOR_NAMESPACE,
+				CmisExtensionToken.QUERY_NEXT_CURSOR_MARK, null, nextCursorMark));
+		list.setExtensions(extensions);
+		if (list instanceof ObjectListImpl) {
+			((ObjectListImpl) list).setHasMoreItems(hasMoreItems);
 		}
 	}
 	
@@ -579,20 +1174,51 @@ public class SolrQueryProcessor implements QueryProcessor {
 		return value.toString();
 	}
 	
-	private String orderBy(QueryObject queryObject){
+	/**
+	 * Translate ORDER BY into Solr sort clauses, so that the order holds across
+	 * pages rather than only within the loaded page. The unique key is always
+	 * the last clause: cursors need a total order, and it keeps skipCount
+	 * paging stable among equal values.
+	 */
+	private void setSort(String repositoryId, SolrQuery solrQuery, QueryObject queryObject) {
 		List<SortSpec> sortSpecs = queryObject.getOrderBys();
-		List<String> _orderBy = new ArrayList<String>();
-		for (SortSpec sortSpec : sortSpecs) {
-			List<String> _sortSpec = new ArrayList<String>();
-			_sortSpec.add(sortSpec.getSelector().getName());
-			if (!sortSpec.isAscending()) {
-				_sortSpec.add("DESC");
+		if (sortSpecs != null && !sortSpecs.isEmpty()) {
+			for (SortSpec sortSpec : sortSpecs) {
+				CmisSelector selector = sortSpec.getSelector();
+				String field = null;
+				if (selector instanceof FunctionReference) {
+					field = "score";
+				} else if (selector instanceof ColumnReference) {
+					ColumnReference column = (ColumnReference) selector;
+					String propertyId = column.getPropertyId() != null ? column.getPropertyId()
+							: column.getPropertyQueryName();
+					field = solrUtil.getSortFieldInSolr(repositoryId, propertyId, sortSpec.isAscending());
+				}
+				if (field == null) {
+					exceptionService.invalidArgument("ORDER BY is not supported on " + selector.getName());
+				}
+				solrQuery.addSort(field, sortSpec.isAscending() ? SolrQuery.ORDER.asc : SolrQuery.ORDER.desc);
+			}
+		} else {
+			String defaultOrderBy = solrUtil.getDefaultOrderBy();
+			if (StringUtils.isNotBlank(defaultOrderBy)) {
+				for (String clause : defaultOrderBy.split(",")) {
+					String[] tokens = clause.trim().split("\\s+");
+					boolean ascending = tokens.length < 2 || !"DESC".equalsIgnoreCase(tokens[1]);
+					String field = solrUtil.getSortFieldInSolr(repositoryId, tokens[0], ascending);
+					if (field == null) {
+						logger.warn("Default ORDER BY ignored for unsortable property: " + tokens[0]);
+						continue;
+					}
+					solrQuery.addSort(field, ascending ? SolrQuery.ORDER.asc : SolrQuery.ORDER.desc);
+				}
+			}
+			if (solrQuery.getSorts().isEmpty()) {
+				// Recent documents first
+				solrQuery.addSort("modified", SolrQuery.ORDER.desc);
 			}
-
-			_orderBy.add(StringUtils.join(_sortSpec, " "));
 		}
-		String orderBy = StringUtils.join(_orderBy, ",");
-		return orderBy;
+		solrQuery.addSort("id", SolrQuery.ORDER.asc);
 	}
 
 	private Tree extractWhereTree(Tree tree){
@@ -153,6 +153,42 @@ public class SolrUtil implements ApplicationContextAware {
 		return null;  // Return null to trigger database fallback
 	}
 
+	/**
+	 * Get a Solr client bound to the given core instead of the live "nemaki" core
+	 *
+	 * @param coreName
+	 *            core name. null means the live core
+	 * @return
+	 */
+	public SolrClient getSolrClient(String coreName) {
+		if (coreName == null) {
+			return getSolrClient();
+		}
+		return buildClient(getSolrBaseUrl() + "/" + coreName);
+	}
+
+	/**
+	 * Get a Solr client bound to the Solr root, for CoreAdmin requests
+	 *
+	 * @return
+	 */
+	public SolrClient getSolrAdminClient() {
+		return buildClient(getSolrBaseUrl());
+	}
+
+	@SuppressWarnings("deprecation")
+	private SolrClient buildClient(String url) {
+		try {
+			return new HttpSolrClient.Builder(url)
+				.withConnectionTimeout(30000)
+				.withSocketTimeout(120000)
+				.build();
+		} catch (Exception e) {
+			log.error("HttpSolrClient creation failed for URL " + url + ": " + e.getMessage(), e);
+			return null;
+		}
+	}
+
 	/**
 	 * CMIS to Solr property name dictionary
 	 *
@@ -177,6 +213,66 @@ public class SolrUtil implements ApplicationContextAware {
 		return val;
 	}
 
+	/**
+	 * CMIS property to Solr sort expression.
+	 * Fixed single-valued fields sort on their docValues directly. Dynamic
+	 * property fields are multi-valued in the schema, so they sort on their
+	 * smallest (ascending) or largest (descending) value.
+	 *
+	 * @return null if the index cannot sort on the property
+	 */
+	public String getSortFieldInSolr(String repositoryId, String propertyId, boolean ascending) {
+		String field = map.get(propertyId);
+		if (field != null) {
+			if (PropertyIds.SECONDARY_OBJECT_TYPE_IDS.equals(propertyId)
+					|| PropertyIds.ALLOWED_CHILD_OBJECT_TYPE_IDS.equals(propertyId)) {
+				return null;
+			}
+			return field;
+		}
+
+		NemakiPropertyDefinitionCore pd = typeService.getPropertyDefinitionCoreByPropertyId(repositoryId, propertyId);
+		if (pd == null) {
+			return null;
+		}
+		String prefix = PropertyType.DATETIME == pd.getPropertyType() ? "dynamicDate.property." : "dynamic.property.";
+		return "field(\"" + prefix + propertyId + "\"," + (ascending ? "min" : "max") + ")";
+	}
+
+	/**
+	 * Unescaped name of the field a CMIS property is indexed in, as used in fl
+	 * and facet requests.
+	 *
+	 * @return null if the property is unknown
+	 */
+	public String getFieldNameInSolr(String repositoryId, String propertyId) {
+		String field = map.get(propertyId);
+		if (field != null) {
+			return field;
+		}
+		NemakiPropertyDefinitionCore pd = typeService.getPropertyDefinitionCoreByPropertyId(repositoryId, propertyId);
+		if (pd == null) {
+			return null;
+		}
+		return (PropertyType.DATETIME == pd.getPropertyType() ? "dynamicDate.property." : "dynamic.property.") + propertyId;
+	}
+
+	/**
+	 * Whether a field holds at most one value per document. Only the fixed
+	 * fields do; dynamic property fields are multi-valued in the schema.
+	 */
+	public boolean isSingleValuedField(String field) {
+		return map.containsValue(field) && !"secondary_object_type_ids".equals(field)
+				&& !"allowed_child_object_type_ids".equals(field);
+	}
+
+	/**
+	 * ORDER BY applied when a query has none, e.g. "cmis:creationDate DESC"
+	 */
+	public String getDefaultOrderBy() {
+		return propertyManager.readValue(PropertyKey.CAPABILITY_EXTENDED_ORDERBY_DEFAULT);
+	}
+
 	public String convertToString(Tree propertyNode) {
 		List<String> _string = new ArrayList<String>();
 		for (int i = 0; i < propertyNode.getChildCount(); i++) {
@@ -256,16 +352,27 @@ public class SolrUtil implements ApplicationContextAware {
 	 * @return number of successfully indexed documents
 	 */
 	public int indexDocumentsBatch(String repositoryId, List<Content> contents, int commitWithinMs) {
+		return indexDocumentsBatch(repositoryId, contents, commitWithinMs, null);
+	}
+
+	/**
+	 * Index multiple documents into the given core in a single batch request
+	 *
+	 * @param coreName core name. null means the live core
+	 * @see #indexDocumentsBatch(String, List, int)
+	 */
+	public int indexDocumentsBatch(String repositoryId, List<Content> contents, int commitWithinMs, String coreName) {
 		if (contents == null || contents.isEmpty()) {
 			return 0;
 		}
 		
-		log.info("Batch indexing " + contents.size() + " documents for repository: " + repositoryId);
+		log.info("Batch indexing " + contents.size() + " documents for repository: " + repositoryId
+				+ (coreName == null ? "" : " into core: " + coreName));
 		
 		SolrClient solrClient = null;
 		int successCount = 0;
 		try {
-			solrClient = getSolrClient();
+			solrClient = getSolrClient(coreName);
 			if (solrClient == null) {
 				log.warn("Solr client is null, skipping batch indexing");
 				return 0;
@@ -683,6 +790,46 @@ public class SolrUtil implements ApplicationContextAware {
 		});
 	}
 
+	/**
+	 * Delete several documents from Solr with one update request
+	 */
+	public void deleteDocuments(String repositoryId, List<String> documentIds) {
+		String _force = propertyManager
+				.readValue(PropertyKey.SOLR_INDEXING_FORCE);
+		boolean force = (Boolean.TRUE.toString().equals(_force)) ? true : false;
+
+		if (!force || documentIds == null || documentIds.isEmpty())
+			return;
+
+		List<String> ids = new ArrayList<String>(documentIds);
+		CompletableFuture.runAsync(() -> {
+			try {
+				SolrClient solrClient = getSolrClient();
+
+				UpdateRequest updateRequest = new UpdateRequest();
+				updateRequest.deleteById(ids);
+				updateRequest.setCommitWithin(1000);
+
+				UpdateResponse response = updateRequest.process(solrClient);
+				if (response.getStatus() != 0) {
+					log.warn("Deletion of " + ids.size() + " documents failed with status: " + response.getStatus() + " in repository: " + repositoryId);
+				}
+
+				solrClient.close();
+			} catch (SolrServerException | IOException e) {
+				log.warn("Solr deletion of " + ids.size() + " documents failed in repository: " + repositoryId + ", error: " + e.getMessage());
+			}
+		});
+	}
+
+	/**
+	 * Solr root URL without the core name, e.g. http://host:port/solr
+	 */
+	public String getSolrBaseUrl() {
+		String url = getSolrUrl();
+		return url.substring(0, url.lastIndexOf('/'));
+	}
+
 	public String getSolrUrl(){
 		String protocol = propertyManager.readValue(PropertyKey.SOLR_PROTOCOL);
 		String host = propertyManager.readValue(PropertyKey.SOLR_HOST);
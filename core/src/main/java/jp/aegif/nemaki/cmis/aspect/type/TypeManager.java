@@ -46,6 +46,13 @@ public interface TypeManager{
 	 */
 	public void refreshTypes();
 
+	/**
+	 * Version of the type definitions, changed whenever they are regenerated.
+	 * A type ID and this version identify a type definition.
+	 * @return
+	 */
+	public long getTypesVersion();
+
 	/**
 	 * Get only TypeDefinition(not TypeDefinitionContainer)
 	 * @param repositoryId TODO
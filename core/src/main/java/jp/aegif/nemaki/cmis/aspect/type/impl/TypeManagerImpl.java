@@ -21,9 +21,13 @@
  ******************************************************************************/
 package jp.aegif.nemaki.cmis.aspect.type.impl;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -39,6 +43,7 @@ import jp.aegif.nemaki.businesslogic.TypeService;
 import jp.aegif.nemaki.cmis.aspect.type.TypeManager;
 import jp.aegif.nemaki.cmis.factory.info.RepositoryInfo;
 import jp.aegif.nemaki.cmis.factory.info.RepositoryInfoMap;
+import jp.aegif.nemaki.init.RepositoryBootstrap;
 import jp.aegif.nemaki.model.Content;
 import jp.aegif.nemaki.model.NemakiPropertyDefinition;
 import jp.aegif.nemaki.model.NemakiPropertyDefinitionCore;
@@ -47,6 +52,7 @@ import jp.aegif.nemaki.model.NemakiTypeDefinition;
 import jp.aegif.nemaki.model.Choice;  // Use NemakiWare Choice instead of OpenCMIS Choice
 import jp.aegif.nemaki.util.DataUtil;
 import jp.aegif.nemaki.util.PropertyManager;
+import jp.aegif.nemaki.util.cache.RequestLookupCache;
 import jp.aegif.nemaki.util.constant.PropertyKey;
 
 import org.apache.chemistry.opencmis.commons.PropertyIds;
@@ -79,6 +85,7 @@ import org.apache.chemistry.opencmis.commons.impl.dataobjects.TypeMutabilityImpl
 import org.apache.chemistry.opencmis.commons.server.CallContext;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.collections4.MapUtils;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
 
 // Deep Copy PropertyDefinition imports
@@ -121,6 +128,9 @@ public class TypeManagerImpl implements TypeManager {
 
 	/**
 	 * Global variables containing type information
+	 *
+	 * The maps below are working copies used while generating types and are
+	 * only touched under initLock. Readers use the published registry.
 	 */
 	// Map of all types
 	//private Map<String, TypeDefinitionContainer> types;
@@ -144,12 +154,20 @@ public class TypeManagerImpl implements TypeManager {
 	// CRITICAL FIX: initialized flag must be static to be shared across all instances for TCK compliance
 	private static volatile boolean initialized = false;
 	private static final Object initLock = new Object();
+
+	// Published snapshot of the working maps, replaced as a whole after each (re)generation
+	private static volatile TypeRegistry registry;
+
+	// Types generated by a previous start; null when disabled
+	private TypeSnapshotStore snapshotStore;
+	// Settings and code the generated types depend on besides the repository content
+	private String typeSettingsDigest;
 	
 	// CRITICAL FIX: Track types being deleted to prevent infinite recursion during cache refresh
-	private final Set<String> typesBeingDeleted = new HashSet<>();
+	private final Set<String> typesBeingDeleted = ConcurrentHashMap.newKeySet();
 	
 	// ENHANCEMENT: Track deletion timestamps for timeout-based cleanup
-	private final Map<String, Long> typesDeletionTimestamps = new HashMap<>();
+	private final Map<String, Long> typesDeletionTimestamps = new ConcurrentHashMap<>();
 	
 	// TIMEOUT: Maximum time a type can remain in "being deleted" state (5 minutes)
 	private static final long DELETION_TIMEOUT_MS = 5 * 60 * 1000L;
@@ -210,18 +228,25 @@ public class TypeManagerImpl implements TypeManager {
 			try {
 				log.info("Starting TypeManagerImpl initialization process");
 				initGlobalTypes();
+				initSnapshotStore();
 				
-				// Clear the maps instead of recreating them (they're already ConcurrentHashMaps)
-				basetypes.clear();
-				subTypeProperties.clear();
-				propertyDefinitionCoresByPropertyId.clear();
-				propertyDefinitionCoresByQueryName.clear();
+				basetypes = new ConcurrentHashMap<>();
+				subTypeProperties = new ConcurrentHashMap<>();
+				propertyDefinitionCoresByPropertyId = new ConcurrentHashMap<>();
+				propertyDefinitionCoresByQueryName = new ConcurrentHashMap<>();
 				
 				if (log.isDebugEnabled()) {
 					log.debug("Before generate() - TYPES keys: " + TYPES.keySet());
 				}
 
-				generate();
+				if (propertyManager != null && propertyManager.readBoolean(PropertyKey.BOOTSTRAP_LAZY)) {
+					// Each repository is generated by currentRegistry(repositoryId) on first use
+					log.info("Lazy bootstrap: type generation deferred to the first request of each repository");
+				} else {
+					long start = System.currentTimeMillis();
+					generate();
+					RepositoryBootstrap.record("types", "*", System.currentTimeMillis() - start);
+				}
 				log.info("generate() completed - marking as initialized");
 				
 				// CRITICAL: Verify TYPES is populated before marking as initialized
@@ -238,6 +263,7 @@ public class TypeManagerImpl implements TypeManager {
 					}
 				}
 				
+				publish();
 				initialized = true;
 				if (log.isDebugEnabled()) {
 					log.debug("INITIALIZATION MARKED COMPLETE");
@@ -252,45 +278,113 @@ public class TypeManagerImpl implements TypeManager {
 	}
 	
 	private void ensureInitialized() {
-		if (log.isDebugEnabled()) {
-			log.debug("ensureInitialized() called - initialized=" + initialized);
+		if (registry != null) {
+			return;
 		}
-		
-		if (!initialized) {
-			if (log.isDebugEnabled()) {
-				log.debug("Not initialized - acquiring lock to initialize");
+		synchronized (initLock) {
+			if (registry == null) {
+				initialized = false;
+				init();
 			}
-			synchronized (initLock) {
-				if (!initialized) {
-					if (log.isDebugEnabled()) {
-						log.debug("Still not initialized in synchronized block - calling init()");
-					}
-					init();
-				} else {
-					if (log.isDebugEnabled()) {
-						log.debug("Already initialized by another thread");
-					}
+		}
+	}
+
+	/**
+	 * Publish the working maps as the new registry. Caller must hold initLock.
+	 *
+	 * Shared type definitions are resolved here for every type, so that readers
+	 * only look them up and never modify a published type definition.
+	 */
+	private void publish() {
+		TypeRegistry r = new TypeRegistry(TYPES, basetypes, subTypeProperties,
+				propertyDefinitionCoresByPropertyId, propertyDefinitionCoresByQueryName);
+		for (Map.Entry<String, Map<String, TypeDefinitionContainer>> repo : r.getAllTypes().entrySet()) {
+			for (TypeDefinitionContainer tdc : repo.getValue().values()) {
+				TypeDefinition tdf = tdc.getTypeDefinition();
+				if (tdf != null) {
+					getSharedTypeDefinition(r, repo.getKey(), tdf.getId(), tdf);
 				}
 			}
-		} else {
-			if (log.isDebugEnabled()) {
-				log.debug("Already initialized - skipping init()");
+		}
+		registry = r;
+
+		if (log.isDebugEnabled()) {
+			for (Map.Entry<String, Map<String, TypeDefinitionContainer>> repo : r.getAllTypes().entrySet()) {
+				log.debug("Published type registry: repository=" + repo.getKey() + ", types=" + repo.getValue().size());
 			}
 		}
-		
-		// CRITICAL FIX: Verify TYPES is properly populated after initialization
-		if (TYPES == null || TYPES.isEmpty()) {
-			log.error("CRITICAL ERROR: TYPES is empty after initialization!");
-			// Force re-initialization
+	}
+
+	/**
+	 * The current registry, generating it first if needed
+	 */
+	private TypeRegistry currentRegistry() {
+		ensureInitialized();
+		return registry;
+	}
+
+	/**
+	 * The current registry, generating the given repository first if it is missing
+	 * (repositories not in repositoryInfoMap at startup).
+	 */
+	private TypeRegistry currentRegistry(String repositoryId) {
+		TypeRegistry r = currentRegistry();
+		if (MapUtils.isEmpty(r.getTypes(repositoryId))) {
 			synchronized (initLock) {
-					initialized = false;
-					init();
+				if (MapUtils.isEmpty(registry.getTypes(repositoryId))) {
+					log.info("Repository not generated in type registry yet, generating it: " + repositoryId);
+					generate(repositoryId);
+					publish();
+				}
 			}
+			r = registry;
 		}
-		
-		if (log.isDebugEnabled()) {
-			log.debug("ensureInitialized() completed - initialized=" + initialized + ", TYPES keys=" + (TYPES != null ? TYPES.keySet() : "null"));
+		return r;
+	}
+
+	private void initSnapshotStore() {
+		if (propertyManager == null || snapshotStore != null) {
+			return;
+		}
+		String enabled = propertyManager.readValue(PropertyKey.BOOTSTRAP_TYPE_SNAPSHOT_ENABLED);
+		if (enabled != null && !Boolean.parseBoolean(enabled.trim())) {
+			return;
+		}
+
+		String dir = propertyManager.readValue(PropertyKey.BOOTSTRAP_TYPE_SNAPSHOT_DIR);
+		Path directory;
+		if (dir != null && !dir.trim().isEmpty()) {
+			directory = Paths.get(dir.trim());
+		} else {
+			String base = System.getProperty("catalina.base", System.getProperty("java.io.tmpdir"));
+			directory = Paths.get(base, "work", "type-snapshots");
+		}
+
+		// Base type and property settings, and the build of this class
+		StringBuilder settings = new StringBuilder();
+		Set<String> keys = propertyManager.getKeys();
+		if (keys != null) {
+			List<String> sorted = new ArrayList<>(keys);
+			sorted.sort(null);
+			for (String key : sorted) {
+				if (key.startsWith("basetype.") || key.startsWith("property.") || key.startsWith("capability.")) {
+					settings.append(key).append('=').append(propertyManager.readValue(key)).append('\n');
+				}
+			}
+		}
+		settings.append("format=").append(TypeSnapshotStore.FORMAT_VERSION).append('\n');
+		try {
+			URL classFile = TypeManagerImpl.class.getResource("TypeManagerImpl.class");
+			if (classFile != null) {
+				settings.append("build=").append(classFile.openConnection().getLastModified());
+			}
+		} catch (IOException e) {
+			log.warn("Could not read the build time of " + TypeManagerImpl.class.getName() + ": " + e.getMessage());
 		}
+
+		typeSettingsDigest = DigestUtils.sha256Hex(settings.toString());
+		snapshotStore = new TypeSnapshotStore(directory);
+		log.info("Type snapshots stored in " + directory);
 	}
 
 	private void initGlobalTypes(){
@@ -367,6 +461,13 @@ public class TypeManagerImpl implements TypeManager {
 	}
 	
 	private void generate(){
+		// Read the revisions and stored snapshots of all repositories at the same
+		// time; building the types below shares the working maps and stays sequential
+		Map<String, PreparedTypes> prepared = new ConcurrentHashMap<>();
+		RepositoryBootstrap.forEach("type-prepare", repositoryInfoMap.keys(),
+				RepositoryBootstrap.getParallelism(propertyManager),
+				repositoryId -> prepared.put(repositoryId, prepare(repositoryId)));
+
 		// CRITICAL FIX: Ensure TYPES map has entries for all repositories before generating types
 		for(String key : repositoryInfoMap.keys()){
 			// Make sure the repository has a types map
@@ -378,7 +479,7 @@ public class TypeManagerImpl implements TypeManager {
 				// CRITICAL FIX: Use ConcurrentHashMap for thread safety
 				TYPES.put(key, new ConcurrentHashMap<String, TypeDefinitionContainer>());
 			}
-			generate(key);
+			generate(key, prepared.get(key));
 		}
 		
 		// Debug: Log final state
@@ -400,6 +501,114 @@ public class TypeManagerImpl implements TypeManager {
 	}
 	
 	private void generate(String repositoryId) {
+		generate(repositoryId, null);
+	}
+
+	/**
+	 * Generate the types of a repository into the working maps, from its stored
+	 * snapshot when the repository has not changed since the snapshot was saved.
+	 * Caller must hold initLock.
+	 *
+	 * @param prepared result of prepare(repositoryId), or null to prepare here
+	 */
+	private void generate(String repositoryId, PreparedTypes prepared) {
+		long start = System.currentTimeMillis();
+		if (prepared == null) {
+			prepared = prepare(repositoryId);
+		}
+
+		TypeSnapshotStore.TypeSnapshot snapshot = prepared.snapshot;
+		if (snapshot == null) {
+			snapshot = buildTypes(repositoryId);
+			if (prepared.revision != null) {
+				snapshotStore.save(repositoryId, prepared.revision, snapshot);
+			}
+		}
+
+		TYPES.put(repositoryId, new ConcurrentHashMap<String, TypeDefinitionContainer>(snapshot.types));
+		basetypes.putAll(snapshot.basetypes);
+		subTypeProperties.putAll(snapshot.subTypeProperties);
+		// The first repository defining a property keeps it, as when generating into shared maps
+		for (Entry<String, PropertyDefinition<?>> e : snapshot.propertyDefinitionCoresByPropertyId.entrySet()) {
+			propertyDefinitionCoresByPropertyId.putIfAbsent(e.getKey(), e.getValue());
+		}
+		for (Entry<String, PropertyDefinition<?>> e : snapshot.propertyDefinitionCoresByQueryName.entrySet()) {
+			propertyDefinitionCoresByQueryName.putIfAbsent(e.getKey(), e.getValue());
+		}
+
+		long millis = System.currentTimeMillis() - start;
+		RepositoryBootstrap.record(prepared.snapshot != null ? "type-snapshot-load" : "type-generation", repositoryId, millis);
+		log.info("Types of repository " + repositoryId + (prepared.snapshot != null ? " loaded from snapshot" : " generated")
+				+ " in " + millis + "ms (" + snapshot.types.size() + " types)");
+	}
+
+	/**
+	 * Revision and stored snapshot of a repository. Only reads; may run in parallel
+	 * for several repositories.
+	 */
+	private PreparedTypes prepare(String repositoryId) {
+		String revision = null;
+		TypeSnapshotStore.TypeSnapshot snapshot = null;
+		if (snapshotStore != null) {
+			try {
+				RepositoryInfo info = repositoryInfoMap.get(repositoryId);
+				revision = DigestUtils.sha256Hex(typeService.getTypeSystemRevision(repositoryId) + "\n"
+						+ (info != null ? info.getNameSpace() : "") + "\n" + typeSettingsDigest);
+				snapshot = snapshotStore.load(repositoryId, revision);
+			} catch (Exception e) {
+				log.warn("Could not read type system revision of repository " + repositoryId + ": " + e.getMessage());
+				revision = null;
+			}
+		}
+		if (snapshot == null) {
+			// Load the definitions into the DAO cache for the generation that follows
+			typeService.getTypeDefinitions(repositoryId);
+			typeService.getPropertyDefinitionCores(repositoryId);
+		}
+		return new PreparedTypes(revision, snapshot);
+	}
+
+	private static final class PreparedTypes {
+		final String revision;
+		final TypeSnapshotStore.TypeSnapshot snapshot;
+
+		PreparedTypes(String revision, TypeSnapshotStore.TypeSnapshot snapshot) {
+			this.revision = revision;
+			this.snapshot = snapshot;
+		}
+	}
+
+	/**
+	 * Generate the types of a repository into empty working maps and return them.
+	 * The working maps of the other repositories are restored afterwards.
+	 */
+	private TypeSnapshotStore.TypeSnapshot buildTypes(String repositoryId) {
+		Map<String, Map<String, TypeDefinitionContainer>> savedTypes = TYPES;
+		Map<String, TypeDefinitionContainer> savedBasetypes = basetypes;
+		Map<String, List<PropertyDefinition<?>>> savedSubTypeProperties = subTypeProperties;
+		Map<String, PropertyDefinition<?>> savedCoresByPropertyId = propertyDefinitionCoresByPropertyId;
+		Map<String, PropertyDefinition<?>> savedCoresByQueryName = propertyDefinitionCoresByQueryName;
+		try {
+			TYPES = new ConcurrentHashMap<>();
+			basetypes = new ConcurrentHashMap<>();
+			subTypeProperties = new ConcurrentHashMap<>();
+			propertyDefinitionCoresByPropertyId = new ConcurrentHashMap<>();
+			propertyDefinitionCoresByQueryName = new ConcurrentHashMap<>();
+
+			buildTypesIntoWorkingMaps(repositoryId);
+
+			return new TypeSnapshotStore.TypeSnapshot(TYPES.get(repositoryId), basetypes, subTypeProperties,
+					propertyDefinitionCoresByPropertyId, propertyDefinitionCoresByQueryName);
+		} finally {
+			TYPES = savedTypes;
+			basetypes = savedBasetypes;
+			subTypeProperties = savedSubTypeProperties;
+			propertyDefinitionCoresByPropertyId = savedCoresByPropertyId;
+			propertyDefinitionCoresByQueryName = savedCoresByQueryName;
+		}
+	}
+
+	private void buildTypesIntoWorkingMaps(String repositoryId) {
 		if (log.isDebugEnabled()) {
 			log.debug("generate(" + repositoryId + ") START");
 		}
@@ -593,47 +802,31 @@ public class TypeManagerImpl implements TypeManager {
 	public void refreshTypes() {
 		synchronized (initLock) {
 			// Cache refresh logging
-			log.info("refreshTypes() called - clearing and rebuilding cache");
-
-			// Reset initialization flag to force re-initialization
-			initialized = false;
-
-			// Clear existing type definitions before rebuilding
-			// This is the ONLY place where we should clear existing types
-			for (Map<String, TypeDefinitionContainer> repoTypes : TYPES.values()) {
-				if (repoTypes != null) {
-					repoTypes.clear();
-				}
-			}
+			log.info("refreshTypes() called - rebuilding type registry");
 
+			// Build into new working maps; readers keep using the published
+			// registry until the new one replaces it
+			TYPES = new ConcurrentHashMap<>();
 			initGlobalTypes();
-
-			// CRITICAL FIX: Clear existing maps but DO NOT create new instances
-			// Static fields must retain their references for consistency
-			basetypes.clear();
-
-			subTypeProperties.clear();
-
-			propertyDefinitionCoresByPropertyId.clear();
-			propertyDefinitionCoresByQueryName.clear();
-
-			// CRITICAL FIX: Clear shared TypeDefinition and PropertyDefinition caches to prevent stale references
-			// This ensures getTypeDefinition() and getTypesDescendants() use the same instances after refresh
-			SHARED_TYPE_DEFINITIONS.clear();
-			SHARED_PROPERTY_DEFINITIONS.clear();
-			log.info("Cleared SHARED_TYPE_DEFINITIONS and SHARED_PROPERTY_DEFINITIONS caches to ensure consistency after refresh");
+			basetypes = new ConcurrentHashMap<>();
+			subTypeProperties = new ConcurrentHashMap<>();
+			propertyDefinitionCoresByPropertyId = new ConcurrentHashMap<>();
+			propertyDefinitionCoresByQueryName = new ConcurrentHashMap<>();
 
 			log.info("Starting cache regeneration...");
 			
 			generate();
+			publish();
 			
 			log.info("Cache regeneration complete");
 			
 			// Log final cache state
-			for (String repositoryId : TYPES.keySet()) {
-				Map<String, TypeDefinitionContainer> types = TYPES.get(repositoryId);
-				log.debug("NEMAKI TYPE DEBUG: Repository " + repositoryId + " now has " + types.size() + " types in cache");
-				log.debug("NEMAKI TYPE DEBUG: Type IDs after refresh: " + types.keySet());
+			if (log.isDebugEnabled()) {
+				for (String repositoryId : TYPES.keySet()) {
+					Map<String, TypeDefinitionContainer> types = TYPES.get(repositoryId);
+					log.debug("NEMAKI TYPE DEBUG: Repository " + repositoryId + " now has " + types.size() + " types in cache");
+					log.debug("NEMAKI TYPE DEBUG: Type IDs after refresh: " + types.keySet());
+				}
 			}
 			
 			initialized = true;
@@ -2761,69 +2954,25 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 	// /////////////////////////////////////////////////
 	@Override
 	public TypeDefinitionContainer getTypeById(String repositoryId, String typeId) {
-		ensureInitialized();
-
-		Map<String, TypeDefinitionContainer> types = TYPES.get(repositoryId);
-
+		Map<String, TypeDefinitionContainer> types = currentRegistry(repositoryId).getTypes(repositoryId);
 		if (types == null) {
-			// CRITICAL FIX: Dynamically initialize missing repository
-			// This handles cases where repositoryInfoMap doesn't include the repository at startup
-			synchronized (initLock) {
-				// Double-check after acquiring lock
-				types = TYPES.get(repositoryId);
-				if (types == null) {
-					log.warn("Repository not found in TYPES cache, initializing dynamically: " + repositoryId);
-					TYPES.put(repositoryId, new ConcurrentHashMap<String, TypeDefinitionContainer>());
-
-					// Force re-initialization for this repository
-					try {
-						if (log.isDebugEnabled()) {
-							log.debug("Forcing TypeManager re-initialization for repository: " + repositoryId);
-						}
-						initialized = false;
-						init();
-
-						// Check again after re-initialization
-						types = TYPES.get(repositoryId);
-						if (types == null) {
-							log.error("Repository still not initialized after dynamic init: " + repositoryId);
-							return null;
-						}
-					} catch (Exception e) {
-						log.error("Exception during dynamic repository initialization for " + repositoryId, e);
-						return null;
-					}
-				}
-			}
+			log.error("Repository still not initialized after dynamic init: " + repositoryId);
+			return null;
 		}
-
 		return types.get(typeId);
 	}
 
 	@Override
 	public TypeDefinition getTypeByQueryName(String repositoryId, String typeQueryName) {
-		ensureInitialized();
-		Map<String, TypeDefinitionContainer> types = TYPES.get(repositoryId);
-		if (types == null) {
-			log.error("CRITICAL: TYPES map is null for repository: " + repositoryId + " in getTypeByQueryName()");
+		if (typeQueryName == null) {
 			return null;
 		}
-
-		for (Entry<String, TypeDefinitionContainer> entry : types.entrySet()) {
-		// CRITICAL FIX (2025-11-19): Add null check for queryName before calling equals()
-		// Previous bug: getQueryName() returns null for some type definitions, causing NullPointerException
-		// This prevented ALL search queries from working (user report: "検索機能が何もヒットしない")
-		String queryName = entry.getValue().getTypeDefinition().getQueryName();
-		if (queryName != null && queryName.equals(typeQueryName))
-			return entry.getValue().getTypeDefinition();
-		}
-		return null;
+		return currentRegistry(repositoryId).getTypeByQueryName(repositoryId, typeQueryName);
 	}
 
 	@Override
 	public Collection<TypeDefinitionContainer> getTypeDefinitionList(String repositoryId) {
-		ensureInitialized();
-		Map<String, TypeDefinitionContainer> types = TYPES.get(repositoryId);
+		Map<String, TypeDefinitionContainer> types = currentRegistry(repositoryId).getTypes(repositoryId);
 		
 		List<TypeDefinitionContainer> typeRoots = new ArrayList<TypeDefinitionContainer>();
 		// iterate types map and return a list collecting the root types:
@@ -2837,12 +2986,7 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 
 	@Override
 	public List<TypeDefinitionContainer> getRootTypes(String repositoryId) {
-		ensureInitialized();
-		List<TypeDefinitionContainer> rootTypes = new ArrayList<TypeDefinitionContainer>();
-		for (String key : basetypes.keySet()) {
-			rootTypes.add(basetypes.get(key));
-		}
-		return rootTypes;
+		return new ArrayList<TypeDefinitionContainer>(currentRegistry(repositoryId).getBasetypes().values());
 	}
 
 	@Override
@@ -2874,14 +3018,22 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 	@Override
 	public PropertyDefinition<?> getPropertyDefinitionCoreForQueryName(
 			String queryName) {
-		ensureInitialized();
-		
 		// FUNDAMENTAL FIX: Direct lookup using dedicated queryName Map
-		return propertyDefinitionCoresByQueryName.get(queryName);
+		return currentRegistry().getPropertyDefinitionCoreByQueryName(queryName);
+	}
+
+	@Override
+	public long getTypesVersion() {
+		return currentRegistry().version;
 	}
 
 	@Override
 	public TypeDefinition getTypeDefinition(String repositoryId, String typeId) {
+		return RequestLookupCache.get(RequestLookupCache.TYPE, repositoryId, typeId,
+				() -> loadTypeDefinition(repositoryId, typeId));
+	}
+
+	private TypeDefinition loadTypeDefinition(String repositoryId, String typeId) {
 		// CRITICAL FIX (2025-12-27): Add null check for typeId to prevent NPE in ConcurrentHashMap.get()
 		// When typeId is null, ConcurrentHashMap.get() throws NPE because it cannot compute hashCode of null
 		if (typeId == null) {
@@ -2889,90 +3041,26 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 			return null;
 		}
 
-		// CRITICAL DEBUG: Entry point logging
-		if (log.isDebugEnabled()) {
-				log.debug("*** THIS INSTANCE: " + this.hashCode() + " ***");
-			}
-		log.debug("OBJECT_IDENTITY: getTypeDefinition called for " + typeId); // (important-comment)
-		log.warn("INHERITANCE DEBUG: getTypeDefinition method called for repositoryId=" + repositoryId + ", typeId=" + typeId);
-		if (log.isDebugEnabled()) {
-				log.debug("*** ClassLoader: " + this.getClass().getClassLoader() + " ***");
-			}
-		if (log.isDebugEnabled()) {
-				log.debug("*** ClassLoader Identity: " + System.identityHashCode(this.getClass().getClassLoader()) + " ***");
-			}
-		if (log.isDebugEnabled()) {
-				log.debug("*** TYPES MAP: " + (TYPES != null ? "EXISTS" : "NULL") + " ***");
-			}
-		if (TYPES != null) {
-			if (log.isDebugEnabled()) {
-				log.debug("*** TYPES KEYS: " + TYPES.keySet() + " ***");
-			}
-			if (log.isDebugEnabled()) {
-				log.debug("*** TYPES map object identity: " + System.identityHashCode(TYPES) + " ***");
-			}
-		}
-		ensureInitialized();
-		
-		// DEBUG: Check TYPES state after ensureInitialized
-		if (log.isDebugEnabled()) {
-				log.debug("*** TYPES: " + (TYPES != null ? "NOT NULL" : "NULL") + " ***");
-			}
-		if (TYPES != null) {
-			if (log.isDebugEnabled()) {
-				log.debug("*** TYPES.keySet(): " + TYPES.keySet() + " ***");
-			}
-			if (log.isDebugEnabled()) {
-				log.debug("*** TYPES.size(): " + TYPES.size() + " ***");
-			}
-			if (TYPES.containsKey(repositoryId)) {
-				Map<String, TypeDefinitionContainer> repoTypes = TYPES.get(repositoryId);
-				if (log.isDebugEnabled()) {
-				log.debug("*** Repository " + repositoryId + " types: " + (repoTypes != null ? repoTypes.size() : "NULL") + " ***");
-			}
-				if (repoTypes != null && repoTypes.size() > 0) {
-					if (log.isDebugEnabled()) {
-				log.debug("*** First few types: " + repoTypes.keySet().stream().limit(3).collect(java.util.stream.Collectors.toList()) + " ***");
-			}
-				}
-			} else {
-			}
-		}
-		
-		// CRITICAL ENHANCEMENT: Cleanup timed-out types before processing
-		cleanupTimedOutTypes();
-		
 		if (log.isDebugEnabled()) {
 			log.debug("getTypeDefinition ENTRY: repositoryId=" + repositoryId + ", typeId=" + typeId);
 		}
-		if (TYPES != null) {
-			if (log.isDebugEnabled()) {
-				log.debug("*** TYPES KEYS AFTER INIT: " + TYPES.keySet() + " ***");
-			}
-		}
-		
-		Map<String, TypeDefinitionContainer> types = TYPES != null ? TYPES.get(repositoryId) : null;
+
+		TypeRegistry r = currentRegistry(repositoryId);
+		Map<String, TypeDefinitionContainer> types = r.getTypes(repositoryId);
 		if (types == null) {
 			log.error("NEMAKI TYPE ERROR: No type cache found for repository: " + repositoryId);
-			log.error("No type cache found for repository: " + repositoryId);
 			return null;
 		}
 		
-		log.debug("NEMAKI TYPE DEBUG: Total types in cache for repository " + repositoryId + ": " + types.size());
-		
-		// List all type IDs in cache for debugging
-		log.debug("NEMAKI TYPE DEBUG: Available type IDs in cache: " + types.keySet());
-		
 		TypeDefinitionContainer tc = types.get(typeId);
 		if (tc == null) {
 			log.error("NEMAKI TYPE ERROR: Type '" + typeId + "' not found in TypeManager cache");
-			log.error("Type '" + typeId + "' not found in TypeManager cache");
 			
 			// Additional debug: Check if this is a timing issue - force refresh and try again
 			log.warn("NEMAKI TYPE DEBUG: Attempting forced cache refresh to find missing type");
-			log.debug("Attempting forced cache refresh to find missing type");
 			
 			// CRITICAL FIX: Check if type is being deleted before refreshing cache
+			cleanupTimedOutTypes();
 			if (typesBeingDeleted.contains(typeId)) {
 				log.debug("NEMAKI TYPE DELETION: Type '" + typeId + "' is being deleted - skipping cache refresh to prevent infinite recursion");
 				throw new CmisObjectNotFoundException("Type '" + typeId + "' is being deleted");
@@ -2980,31 +3068,23 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 			
 			try {
 				refreshTypes();
-				Map<String, TypeDefinitionContainer> refreshedTypes = TYPES.get(repositoryId);
+				TypeRegistry refreshed = registry;
+				Map<String, TypeDefinitionContainer> refreshedTypes = refreshed.getTypes(repositoryId);
 				if (refreshedTypes != null) {
 					log.debug("NEMAKI TYPE DEBUG: After refresh, total types: " + refreshedTypes.size());
-					log.debug("NEMAKI TYPE DEBUG: After refresh, available type IDs: " + refreshedTypes.keySet());
 					
 					TypeDefinitionContainer refreshedTc = refreshedTypes.get(typeId);
 					if (refreshedTc != null) {
 						log.debug("NEMAKI TYPE FIX: Found type '" + typeId + "' after forced refresh!");
 						// CRITICAL CONSISTENCY FIX: Use shared TypeDefinition system for refresh path
 						// This ensures both normal and refresh paths return TypeDefinition objects with identical object identity
-						TypeDefinition rawTypeDefinition = refreshedTc.getTypeDefinition();
-						TypeDefinition sharedTypeDefinition = getSharedTypeDefinition(repositoryId, typeId, rawTypeDefinition);
-						if (log.isDebugEnabled()) {
-							log.debug("TYPE DEFINITION SHARING: Applied getSharedTypeDefinition() to refresh path for type " + typeId);
-						}
-						return sharedTypeDefinition;
+						return getSharedTypeDefinition(refreshed, repositoryId, typeId, refreshedTc.getTypeDefinition());
 					} else {
 						log.error("NEMAKI TYPE ERROR: Type '" + typeId + "' still not found even after forced refresh");
-						log.error("Type '" + typeId + "' still not found even after forced refresh");
 					}
 				}
 			} catch (Exception e) {
 				log.error("NEMAKI TYPE ERROR: Exception during forced refresh", e);
-				log.error("Exception during forced refresh: " + e.getMessage());
-				e.printStackTrace();
 			}
 			
 			return null;
@@ -3162,13 +3242,11 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 			log.warn("INHERITANCE FIX: Forcing cache regeneration for type " + currentTypeId + " due to incorrect inheritance flags");
 			
 			try {
-				// Invalidate cache and force regeneration
+				// Invalidate cache and force regeneration with correct inheritance logic
 				invalidateTypeDefinitionCache(repositoryId);
+				r = registry;
 				
-				// Regenerate types with correct inheritance logic
-				generate(repositoryId);
-				
-				Map<String, TypeDefinitionContainer> refreshedTypes = TYPES.get(repositoryId);
+				Map<String, TypeDefinitionContainer> refreshedTypes = r.getTypes(repositoryId);
 				if (refreshedTypes != null) {
 					TypeDefinitionContainer refreshedTc = refreshedTypes.get(typeDefinition.getId());
 					if (refreshedTc != null) {
@@ -3184,7 +3262,7 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 
 	// CRITICAL CONSISTENCY FIX: Use shared TypeDefinition system for normal path
 	// This ensures both normal and refresh paths return TypeDefinition objects with identical object identity
-	TypeDefinition sharedTypeDefinition = getSharedTypeDefinition(repositoryId, typeDefinition.getId(), typeDefinition);
+	TypeDefinition sharedTypeDefinition = getSharedTypeDefinition(r, repositoryId, typeDefinition.getId(), typeDefinition);
 	if (log.isDebugEnabled()) {
 		log.debug("TYPE DEFINITION SHARING: Applied getSharedTypeDefinition() to normal path for type " + (typeDefinition != null ? typeDefinition.getId() : "null"));
 	}
@@ -3199,8 +3277,7 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 	@Override
 	public List<PropertyDefinition<?>> getSpecificPropertyDefinitions(
 			String typeId) {
-		ensureInitialized();
-		return subTypeProperties.get(typeId);
+		return currentRegistry().getSubTypeProperties(typeId);
 	}
 
 	/**
@@ -3217,63 +3294,9 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 				", includePropertyDefinitions=" + includePropertyDefinitions + ", maxItems=" + maxItems + ", skipCount=" + skipCount);
 		}
 						
-		ensureInitialized();
-		
-		Map<String, TypeDefinitionContainer> types = TYPES.get(repositoryId);
-		
-		if (types == null) {
-			if (log.isDebugEnabled()) {
-				log.debug("No type cache found for repository: " + repositoryId + " - triggering dynamic initialization");
-			}
-			if (log.isDebugEnabled()) {
-				log.debug("*** THIS SHOULD NOT HAPPEN if generate() already ran! ***");
-			}
-			
-			synchronized (initLock) {
-				// Double-check after acquiring lock
-				types = TYPES.get(repositoryId);
-				if (types == null) {
-					log.warn("*** DYNAMIC INIT: Creating missing TYPES entry for repository: " + repositoryId + " ***");
-					// Initialize TYPES map if completely null
-					if (TYPES == null) {
-						// CRITICAL FIX: Use ConcurrentHashMap for thread safety
-						TYPES = new ConcurrentHashMap<String, Map<String,TypeDefinitionContainer>>();
-					}
-					
-					// Create empty type cache for this repository
-					// CRITICAL FIX: Use ConcurrentHashMap for thread safety
-					TYPES.put(repositoryId, new ConcurrentHashMap<String, TypeDefinitionContainer>());
-					
-					// Force generate base types for this specific repository
-					log.warn("*** DYNAMIC INIT: Generating base types for repository: " + repositoryId + " ***");
-					try {
-						generate(repositoryId);
-						log.info("*** DYNAMIC INIT: Successfully generated base types for repository: " + repositoryId + " ***");
-					} catch (Exception e) {
-						log.error("*** DYNAMIC INIT ERROR: Failed to generate base types for repository: " + repositoryId + " - error: " + e.getMessage() + " ***");
-						log.warn("*** DYNAMIC INIT ERROR: Failed to generate base types for: " + repositoryId + " - " + e.getMessage());
-						e.printStackTrace(System.err);
-					}
-					
-					// Re-get the types after generation
-					types = TYPES.get(repositoryId);
-					
-					// Verify the fix worked
-					if (types != null) {
-						log.info("*** DYNAMIC INIT VERIFICATION: Repository " + repositoryId + " now has " + types.size() + " types in cache ***");
-						if (log.isDebugEnabled()) {
-				log.debug("*** DYNAMIC INIT VERIFICATION: " + repositoryId + " now has " + types.size() + " types ***");
-			}
-						log.info("*** DYNAMIC INIT VERIFICATION: Type IDs: " + types.keySet() + " ***");
-					} else {
-					}
-				} else {
-					log.info("*** DYNAMIC INIT SKIP: Repository " + repositoryId + " type cache created by another thread ***");
-				}
-			}
-		} else {
-			log.debug("*** TYPE CACHE OK: Repository " + repositoryId + " has " + types.size() + " types available ***");
-		}
+		TypeRegistry r = currentRegistry(repositoryId);
+		Map<String, TypeDefinitionContainer> types = r.getTypes(repositoryId);
+		Map<String, TypeDefinitionContainer> basetypes = r.getBasetypes();
 		
 		TypeDefinitionListImpl result = new TypeDefinitionListImpl(
 				new ArrayList<TypeDefinition>());
@@ -3323,7 +3346,7 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 						if (log.isDebugEnabled()) {
 							log.debug("BASE TYPE: Calling ensureConsistentPropertyDefinitions for " + key);
 						}
-						typeDef = ensureConsistentPropertyDefinitions(repositoryId, typeDef);
+						typeDef = ensureConsistentPropertyDefinitions(r, repositoryId, typeDef);
 						if (log.isDebugEnabled()) {
 							log.debug("BASE TYPE: ensureConsistentPropertyDefinitions completed for " + key);
 						}
@@ -3403,7 +3426,7 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 					if (log.isDebugEnabled()) {
 						log.debug("Calling ensureConsistentPropertyDefinitions for " + childTypeId);
 					}
-					typeDef = ensureConsistentPropertyDefinitions(repositoryId, typeDef);
+					typeDef = ensureConsistentPropertyDefinitions(r, repositoryId, typeDef);
 			}
 	 
 					// TypeDefinition prepared for response
@@ -3442,8 +3465,8 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 				", typeId=" + typeId + ", depth=" + depth + ", includePropertyDefinitions=" + includePropertyDefinitions);
 		}
 							
-		ensureInitialized();
-		Map<String, TypeDefinitionContainer> types = TYPES.get(repositoryId);
+		TypeRegistry r = currentRegistry(repositoryId);
+		Map<String, TypeDefinitionContainer> types = r.getTypes(repositoryId);
 		
 		List<TypeDefinitionContainer> result = new ArrayList<TypeDefinitionContainer>();
 
@@ -3464,30 +3487,30 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 	
 		if (typeId == null) {
 			log.debug("getTypesDescendants: Processing all base types (typeId is null)");
-			log.debug("getTypesDescendants: Calling flattenTypeDefinitionContainer for CMIS_FOLDER, ipd=" + ipd);
-			flattenTypeDefinitionContainer(types.get(BaseTypeId.CMIS_FOLDER.value()), result,
-					d, ipd, repositoryId);
-			log.debug("getTypesDescendants: Calling flattenTypeDefinitionContainer for CMIS_DOCUMENT, ipd=" + ipd);
-			flattenTypeDefinitionContainer(types.get(BaseTypeId.CMIS_DOCUMENT.value()), result,
-					d, ipd, repositoryId);
-			flattenTypeDefinitionContainer(types.get(BaseTypeId.CMIS_RELATIONSHIP.value()),
-					result, d, ipd, repositoryId);
-			flattenTypeDefinitionContainer(types.get(BaseTypeId.CMIS_POLICY.value()), result,
-					d, ipd, repositoryId);
-			flattenTypeDefinitionContainer(types.get(BaseTypeId.CMIS_ITEM.value()), result, d,
-					ipd, repositoryId);
-			flattenTypeDefinitionContainer(types.get(BaseTypeId.CMIS_SECONDARY.value()),
-					result, d, ipd, repositoryId);
+			for (BaseTypeId baseTypeId : DESCENDANTS_BASE_TYPE_ORDER) {
+				if (d == -1) {
+					addDescendants(r, r.getSubtree(repositoryId, baseTypeId.value()), result, ipd, repositoryId);
+				} else {
+					flattenTypeDefinitionContainer(r, types.get(baseTypeId.value()), result, d, ipd, repositoryId);
+				}
+			}
 		} else {
 			// CRITICAL FIX (2025-12-12): CMIS spec compliance for getTypeDescendants
 			// When typeId is specified, return ONLY its descendants (children, grandchildren, etc.)
 			// Do NOT include the requested type itself in the result list
 			// This fixes TCK BaseTypesTest line 261 failure (type count mismatch between
 			// getTypeDescendants and getTypeChildren)
-			TypeDefinitionContainer tdc = types.get(typeId);
-			if (tdc != null && tdc.getChildren() != null) {
-				for (TypeDefinitionContainer child : tdc.getChildren()) {
-					flattenTypeDefinitionContainer(child, result, d, ipd, repositoryId);
+			if (d == -1) {
+				List<TypeDefinitionContainer> subtree = r.getSubtree(repositoryId, typeId);
+				if (!subtree.isEmpty()) {
+					addDescendants(r, subtree.subList(1, subtree.size()), result, ipd, repositoryId);
+				}
+			} else {
+				TypeDefinitionContainer tdc = types.get(typeId);
+				if (tdc != null && tdc.getChildren() != null) {
+					for (TypeDefinitionContainer child : tdc.getChildren()) {
+						flattenTypeDefinitionContainer(r, child, result, d, ipd, repositoryId);
+					}
 				}
 			}
 		}
@@ -3501,13 +3524,12 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 	}
 
 	/**
-	 * CRITICAL TCK COMPLIANCE FIX: PropertyDefinition Instance Sharing System
-	 * Ensures same PropertyDefinition objects are returned by both getTypeDefinition() and getTypesDescendants()
-	 * This is required for TCK tests that use object identity comparison (==) instead of equals()
+	 * Base types in the order getTypesDescendants returns them
 	 */
-	private static final Map<String, Map<String, PropertyDefinition<?>>> SHARED_PROPERTY_DEFINITIONS = 
-		new ConcurrentHashMap<>();
-	
+	private static final BaseTypeId[] DESCENDANTS_BASE_TYPE_ORDER = { BaseTypeId.CMIS_FOLDER,
+			BaseTypeId.CMIS_DOCUMENT, BaseTypeId.CMIS_RELATIONSHIP, BaseTypeId.CMIS_POLICY, BaseTypeId.CMIS_ITEM,
+			BaseTypeId.CMIS_SECONDARY };
+
 	/**
 	 * CRITICAL TCK COMPLIANCE FIX: TypeDefinition Instance Sharing System
 	 * Ensures same TypeDefinition objects are returned by both getTypeDefinition() and getTypesDescendants()
@@ -3515,18 +3537,17 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 	 * 
 	 * Root Cause: DataUtil.copyTypeDefinition() creates new TypeDefinition instances every time,
 	 * breaking TCK object identity comparison: tree.getItem() == reloadedType
-	 */
-	private static final Map<String, Map<String, TypeDefinition>> SHARED_TYPE_DEFINITIONS = 
-		new ConcurrentHashMap<>();
-	
-	/**
+	 *
+	 * Shared instances are kept per registry, so a new registry starts with a fresh set.
+	 *
 	 * Get or create shared TypeDefinition instance for consistent object identity
+	 * @param r Registry the type definition belongs to
 	 * @param repositoryId Repository identifier
 	 * @param typeId Type identifier  
 	 * @param originalDefinition Original TypeDefinition to use as template
 	 * @return Shared TypeDefinition instance
 	 */
-	private TypeDefinition getSharedTypeDefinition(String repositoryId, String typeId, 
+	private TypeDefinition getSharedTypeDefinition(TypeRegistry r, String repositoryId, String typeId, 
 			TypeDefinition originalDefinition) {
 		
 		if (originalDefinition == null) return null;
@@ -3534,7 +3555,7 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 		String cacheKey = repositoryId + ":" + typeId;
 		
 		// Get or create repository-level cache
-		Map<String, TypeDefinition> repoCache = SHARED_TYPE_DEFINITIONS.computeIfAbsent(
+		Map<String, TypeDefinition> repoCache = r.sharedTypeDefinitions.computeIfAbsent(
 			repositoryId, k -> new ConcurrentHashMap<>());
 		
 		// Return existing shared instance or create new one
@@ -3544,7 +3565,7 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 		} // (important-comment)
 			
 			// Apply PropertyDefinition sharing first, then use as shared TypeDefinition
-			TypeDefinition consistentTypeDefinition = ensureConsistentPropertyDefinitions(repositoryId, originalDefinition);
+			TypeDefinition consistentTypeDefinition = ensureConsistentPropertyDefinitions(r, repositoryId, originalDefinition);
 			log.debug("OBJECT_IDENTITY: After ensureConsistentPropertyDefinitions for " + cacheKey + " (hash: " + System.identityHashCode(consistentTypeDefinition) + ")"); // (important-comment)
 			return consistentTypeDefinition;
 		});
@@ -3564,13 +3585,14 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 	 * Based on vk/61b7-tck-type-t approach that achieved 100% Docker QA success.
 	 * TCK tests compare PropertyDefinitions using == operator, so we must return the same instance.
 	 * 
+	 * @param r Registry the property definition belongs to
 	 * @param repositoryId Repository identifier
 	 * @param typeId Type identifier  
 	 * @param propertyId Property identifier
 	 * @param originalDefinition Original PropertyDefinition to use as template
 	 * @return Shared PropertyDefinition instance
 	 */
-	private PropertyDefinition<?> getSharedPropertyDefinition(String repositoryId, String typeId,
+	private PropertyDefinition<?> getSharedPropertyDefinition(TypeRegistry r, String repositoryId, String typeId,
 			String propertyId, PropertyDefinition<?> originalDefinition) {
 
 		if (originalDefinition == null) return null;
@@ -3610,7 +3632,7 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 		String cacheKey = repositoryId + ":" + typeId + ":" + propertyId + ":" + isInherited;
 
 		// Get or create repository-level cache
-		Map<String, PropertyDefinition<?>> repoCache = SHARED_PROPERTY_DEFINITIONS.computeIfAbsent(
+		Map<String, PropertyDefinition<?>> repoCache = r.sharedPropertyDefinitions.computeIfAbsent(
 			repositoryId, k -> new ConcurrentHashMap<>());
 
 		// Return existing shared instance or create new one
@@ -3647,7 +3669,7 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 	 * @param typeDefinition Original TypeDefinition
 	 * @return TypeDefinition with shared PropertyDefinition instances
 	 */
-	private TypeDefinition ensureConsistentPropertyDefinitions(String repositoryId, TypeDefinition typeDefinition) {
+	private TypeDefinition ensureConsistentPropertyDefinitions(TypeRegistry r, String repositoryId, TypeDefinition typeDefinition) {
 		if (typeDefinition == null) return null;
 		
 		String typeId = typeDefinition.getId();
@@ -3664,16 +3686,18 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 		// Create new property map with shared instances
 		Map<String, PropertyDefinition<?>> sharedProps = new HashMap<>();
 		int sharedCount = 0;
+		boolean replaced = false;
 		
 		for (Map.Entry<String, PropertyDefinition<?>> entry : originalProps.entrySet()) {
 			String propertyId = entry.getKey();
 			PropertyDefinition<?> originalProp = entry.getValue();
 			
 			PropertyDefinition<?> sharedProp = getSharedPropertyDefinition(
-				repositoryId, typeId, propertyId, originalProp);
+				r, repositoryId, typeId, propertyId, originalProp);
 			
 			sharedProps.put(propertyId, sharedProp);
 			sharedCount++;
+			replaced |= (sharedProp != originalProp);
 			
 			// Log CMIS property sharing specifically
 			if (propertyId.startsWith("cmis:")) {
@@ -3683,6 +3707,11 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 		}
 		
 		log.debug("OBJECT_IDENTITY: Applied sharing to " + sharedCount + " properties for type " + typeId); // (important-comment)
+
+		// Already shared when the registry was published; do not write to a published definition
+		if (!replaced) {
+			return typeDefinition;
+		}
 		
 		// RESTORED FIX: Modify original TypeDefinition instance directly to preserve object identity
 		// TCK compliance requires both getTypeDefinition() and getTypesDescendants() to return 
@@ -3714,79 +3743,60 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 	
 	
 
-	private void flattenTypeDefinitionContainer(TypeDefinitionContainer tdc,
+	private void flattenTypeDefinitionContainer(TypeRegistry r, TypeDefinitionContainer tdc,
 			List<TypeDefinitionContainer> result, int depth,
 			boolean includePropertyDefinitions, String repositoryId) {
-		log.debug("flattenTypeDefinitionContainer ENTRY: depth=" + depth + 
-		         ", includePropertyDefinitions=" + includePropertyDefinitions + 
-		         ", repositoryId=" + repositoryId + 
-		         ", typeId=" + (tdc != null && tdc.getTypeDefinition() != null ? tdc.getTypeDefinition().getId() : "null"));
-		         
-		if (depth == 0)
+		if (depth == 0 || tdc == null)
 			return;
-			
-		if (tdc != null && tdc.getTypeDefinition() != null) {
-			log.debug("flattenTypeDefinitionContainer: Processing typeId=" + tdc.getTypeDefinition().getId() + 
-				", includePropertyDefinitions=" + includePropertyDefinitions);
-			
-			if (includePropertyDefinitions) {
-				// CRITICAL FIX: Use the same TypeDefinition path as getTypeDefinition() method
-				// This ensures both methods return consistent PropertyDefinition instances
-				String typeId = tdc.getTypeDefinition().getId();
-				
-				// CRITICAL FIX: Get TypeDefinition through getTypeDefinition() method
-				// This now automatically uses the TypeDefinition sharing system for object identity consistency  
-				TypeDefinition sharedTypeDefinition = this.getTypeDefinition(repositoryId, typeId);
-				
-				if (sharedTypeDefinition != null) {
-					if (log.isDebugEnabled()) {
-						log.debug("FLATTEN TYPE DEFINITION SHARING: Using getTypeDefinition() path for typeId=" + typeId + " in repository=" + repositoryId);
-						log.debug("FLATTEN TYPE DEFINITION SHARING: Original PropertyDefinition count=" + 
-							(tdc.getTypeDefinition().getPropertyDefinitions() != null ? tdc.getTypeDefinition().getPropertyDefinitions().size() : 0));
-						log.debug("FLATTEN TYPE DEFINITION SHARING: Shared PropertyDefinition count=" +
-						(sharedTypeDefinition.getPropertyDefinitions() != null ? sharedTypeDefinition.getPropertyDefinitions().size() : 0));
-					}
-					
-					// Create a new TypeDefinitionContainer with the shared TypeDefinition
-					TypeDefinitionContainer sharedContainer = new TypeDefinitionContainerImpl(sharedTypeDefinition);
-					
-					// Preserve the children hierarchy
-					if (tdc.getChildren() != null) {
-						List<TypeDefinitionContainer> children = new ArrayList<TypeDefinitionContainer>();
-						for (TypeDefinitionContainer child : tdc.getChildren()) {
-							children.add(child);
-						}
-						((TypeDefinitionContainerImpl) sharedContainer).setChildren(children);
-					}
-					
-					result.add(sharedContainer);
-				} else {
-					log.warn("flattenTypeDefinitionContainer: CONSISTENCY WARNING - getTypeDefinition() returned null for typeId=" + typeId);
-					// Fall back to original container
-					result.add(tdc);
-				}
-			} else {
-				log.debug("flattenTypeDefinitionContainer: Property definitions will be removed for typeId=" + tdc.getTypeDefinition().getId());
-				result.add(removePropertyDefinition(tdc));
-			}
-		} else {
-			log.warn("flattenTypeDefinitionContainer: tdc or typeDefinition is null");
-			if (includePropertyDefinitions) {
-				result.add(tdc);
-			} else {
-				result.add(removePropertyDefinition(tdc));
-			}
-		}
+
+		result.add(toDescendantContainer(r, tdc, includePropertyDefinitions, repositoryId));
 
 		List<TypeDefinitionContainer> children = tdc.getChildren();
 		if (CollectionUtils.isNotEmpty(children)) {
 			for (TypeDefinitionContainer child : children) {
-				flattenTypeDefinitionContainer(child, result, depth - 1,
+				flattenTypeDefinitionContainer(r, child, result, depth - 1,
 						includePropertyDefinitions, repositoryId);
 			}
 		}
 	}
 
+	/**
+	 * Same as flattenTypeDefinitionContainer with unlimited depth, using the
+	 * depth-first lists precomputed by the registry
+	 */
+	private void addDescendants(TypeRegistry r, List<TypeDefinitionContainer> subtree,
+			List<TypeDefinitionContainer> result, boolean includePropertyDefinitions, String repositoryId) {
+		for (TypeDefinitionContainer tdc : subtree) {
+			result.add(toDescendantContainer(r, tdc, includePropertyDefinitions, repositoryId));
+		}
+	}
+
+	private TypeDefinitionContainer toDescendantContainer(TypeRegistry r, TypeDefinitionContainer tdc,
+			boolean includePropertyDefinitions, String repositoryId) {
+		if (tdc.getTypeDefinition() == null) {
+			log.warn("flattenTypeDefinitionContainer: typeDefinition is null");
+			return includePropertyDefinitions ? tdc : removePropertyDefinition(tdc);
+		}
+
+		if (!includePropertyDefinitions) {
+			return removePropertyDefinition(tdc);
+		}
+
+		// CRITICAL FIX: Use the same shared TypeDefinition as getTypeDefinition()
+		// This ensures both methods return consistent PropertyDefinition instances
+		String typeId = tdc.getTypeDefinition().getId();
+		TypeDefinition sharedTypeDefinition = getSharedTypeDefinition(r, repositoryId, typeId, tdc.getTypeDefinition());
+
+		// Create a new TypeDefinitionContainer with the shared TypeDefinition
+		TypeDefinitionContainerImpl sharedContainer = new TypeDefinitionContainerImpl(sharedTypeDefinition);
+
+		// Preserve the children hierarchy
+		if (tdc.getChildren() != null) {
+			sharedContainer.setChildren(new ArrayList<TypeDefinitionContainer>(tdc.getChildren()));
+		}
+		return sharedContainer;
+	}
+
 	private TypeDefinitionContainer removePropertyDefinition(
 			TypeDefinitionContainer tdc) {
 		if (tdc == null) {
@@ -3881,12 +3891,8 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 		}
 		log.info("=== addTypeDefinition called for type: " + typeDefinition.getId() + " ===");
 
+		ensureInitialized();
 		synchronized (initLock) {
-			// Ensure cache is initialized
-			if (!initialized) {
-				initGlobalTypes();
-			}
-
 			Map<String, TypeDefinitionContainer> types = TYPES.get(repositoryId);
 			if (types == null) {
 				log.warn("No type cache for repository: " + repositoryId);
@@ -3945,13 +3951,19 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 			AbstractTypeDefinition builtType = buildTypeDefinitionFromDB(repositoryId, nemakiType);
 
 			if (builtType != null) {
-				// Remove old version if exists
-				if (types.containsKey(typeDefinition.getId())) {
-					types.remove(typeDefinition.getId());
-				}
+				// Containers of the working maps are shared with the published registry
+				types = copyTypeContainers(repositoryId);
+
+				// Replace old version if exists, keeping its subtypes
+				TypeDefinitionContainer old = detachType(types, typeDefinition.getId());
 
 				// Add the new type
 				addTypeInternal(types, builtType);
+				if (old != null && old.getChildren() != null) {
+					((TypeDefinitionContainerImpl) types.get(builtType.getId())).setChildren(old.getChildren());
+				}
+				copyToPropertyDefinitionCore(builtType.getPropertyDefinitions());
+				publish();
 
 				if (log.isDebugEnabled()) {
 					log.debug("Added/Updated type in cache: " + typeDefinition.getId() +
@@ -4029,10 +4041,10 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 			// STEP 3: Call TypeService to handle property definition cleanup and database deletion
 			typeService.deleteTypeDefinition(repositoryId, typeId);
 			
-			// STEP 4: Invalidate type definition cache to ensure consistency (with lazy regeneration)
-			invalidateTypeDefinitionCache(repositoryId);
+			// STEP 4: Remove the type from the registry; it has no subtypes (checked above)
+			removeTypeDefinitionFromCache(repositoryId, typeId);
 			
-			log.info("deleteTypeDefinition: Successfully deleted and invalidated cache for typeId=" + typeId);
+			log.info("deleteTypeDefinition: Successfully deleted and removed from cache typeId=" + typeId);
 		} catch (CmisConstraintException | CmisInvalidArgumentException e) {
 			// Re-throw constraint and validation exceptions without wrapping
 			throw e;
@@ -4137,59 +4149,130 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 		synchronized (initLock) {
 			log.info("invalidateTypeDefinitionCache: Invalidating and regenerating cache for repository=" + repositoryId);
 
-			// Remove the specific repository's type cache
-			if (TYPES != null && TYPES.containsKey(repositoryId)) {
-				Map<String, TypeDefinitionContainer> repositoryTypes = TYPES.get(repositoryId);
-				int typesCount = repositoryTypes != null ? repositoryTypes.size() : 0;
-
-				log.info("invalidateTypeDefinitionCache: Removing " + typesCount + " cached types for repository=" + repositoryId);
-				TYPES.remove(repositoryId);
-			}
-
-			// Clear related caches to maintain consistency
-			if (basetypes != null) {
-				log.debug("invalidateTypeDefinitionCache: Clearing base types cache");
-				basetypes.clear();
-			}
-
-			// Clear property definition caches for this repository
-			if (subTypeProperties != null) {
-				subTypeProperties.entrySet().removeIf(entry -> entry.getKey().startsWith(repositoryId + ":"));
-				log.debug("invalidateTypeDefinitionCache: Cleared subtype properties for repository=" + repositoryId);
-			}
-
-			if (propertyDefinitionCoresByPropertyId != null && propertyDefinitionCoresByQueryName != null) {
-				propertyDefinitionCoresByPropertyId.clear();
-				propertyDefinitionCoresByQueryName.clear();
-				log.debug("invalidateTypeDefinitionCache: Cleared property definition caches");
-			}
+			// Regenerate into new working maps; the published registry stays
+			// untouched until publish()
+			TYPES.put(repositoryId, new ConcurrentHashMap<String, TypeDefinitionContainer>());
+			basetypes = new ConcurrentHashMap<>();
+			Map<String, List<PropertyDefinition<?>>> remainingSubTypeProperties = new ConcurrentHashMap<>(subTypeProperties);
+			remainingSubTypeProperties.entrySet().removeIf(entry -> entry.getKey().startsWith(repositoryId + ":"));
+			subTypeProperties = remainingSubTypeProperties;
+			propertyDefinitionCoresByPropertyId = new ConcurrentHashMap<>();
+			propertyDefinitionCoresByQueryName = new ConcurrentHashMap<>();
 
 			// CRITICAL FIX (2025-12-11): Immediately regenerate types for this repository
 			// This ensures that types created by PatchService are loaded into TypeManager cache
 			try {
-				log.info("invalidateTypeDefinitionCache: Regenerating types for repository=" + repositoryId);
 				generate(repositoryId);
 
-				// Log the newly loaded types for verification
 				Map<String, TypeDefinitionContainer> newTypes = TYPES.get(repositoryId);
 				int newTypesCount = newTypes != null ? newTypes.size() : 0;
 				log.info("invalidateTypeDefinitionCache: Regenerated " + newTypesCount + " types for repository=" + repositoryId);
-
-				// Log secondary types specifically for debugging
-				if (newTypes != null) {
-					long secondaryCount = newTypes.keySet().stream()
-						.filter(id -> !id.startsWith("cmis:"))
-						.count();
-					log.info("invalidateTypeDefinitionCache: Found " + secondaryCount + " custom/secondary types");
-				}
 			} catch (Exception e) {
 				log.error("invalidateTypeDefinitionCache: Failed to regenerate types for repository=" + repositoryId, e);
 			}
 
-			log.info("invalidateTypeDefinitionCache: Cache invalidation and regeneration complete for repository=" + repositoryId);
+			publish();
 		}
 	}
 
+	/**
+	 * Remove a single type from the registry without regenerating the repository.
+	 * Property definition cores only used by the removed type are dropped as well.
+	 */
+	private void removeTypeDefinitionFromCache(String repositoryId, String typeId) {
+		ensureInitialized();
+		synchronized (initLock) {
+			if (TYPES.get(repositoryId) == null) {
+				return;
+			}
+			Map<String, TypeDefinitionContainer> types = copyTypeContainers(repositoryId);
+			TypeDefinitionContainer removed = detachType(types, typeId);
+			if (removed == null) {
+				log.debug("removeTypeDefinitionFromCache: Type not in cache: " + typeId);
+				return;
+			}
+
+			Map<String, PropertyDefinition<?>> props = removed.getTypeDefinition().getPropertyDefinitions();
+			if (props != null) {
+				for (PropertyDefinition<?> prop : props.values()) {
+					if (prop == null || prop.getId() == null || prop.getId().startsWith("cmis:")
+							|| Boolean.TRUE.equals(prop.isInherited()) || isPropertyInUse(prop.getId())) {
+						continue;
+					}
+					propertyDefinitionCoresByPropertyId.remove(prop.getId());
+					if (prop.getQueryName() != null) {
+						propertyDefinitionCoresByQueryName.remove(prop.getQueryName());
+					}
+				}
+			}
+
+			publish();
+		}
+	}
+
+	private boolean isPropertyInUse(String propertyId) {
+		for (Map<String, TypeDefinitionContainer> repoTypes : TYPES.values()) {
+			for (TypeDefinitionContainer tdc : repoTypes.values()) {
+				Map<String, PropertyDefinition<?>> props = tdc.getTypeDefinition().getPropertyDefinitions();
+				if (props != null && props.containsKey(propertyId)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Replace the working containers of a repository with copies, so that
+	 * changing the type hierarchy does not affect the published registry.
+	 * Type definitions themselves are shared. Caller must hold initLock.
+	 */
+	private Map<String, TypeDefinitionContainer> copyTypeContainers(String repositoryId) {
+		Map<String, TypeDefinitionContainer> original = TYPES.get(repositoryId);
+		Map<String, TypeDefinitionContainer> copy = new ConcurrentHashMap<String, TypeDefinitionContainer>();
+		for (Entry<String, TypeDefinitionContainer> entry : original.entrySet()) {
+			copy.put(entry.getKey(), new TypeDefinitionContainerImpl(entry.getValue().getTypeDefinition()));
+		}
+		for (Entry<String, TypeDefinitionContainer> entry : original.entrySet()) {
+			List<TypeDefinitionContainer> children = entry.getValue().getChildren();
+			if (children == null) {
+				continue;
+			}
+			List<TypeDefinitionContainer> copiedChildren = new ArrayList<TypeDefinitionContainer>();
+			for (TypeDefinitionContainer child : children) {
+				TypeDefinitionContainer copiedChild = copy.get(child.getTypeDefinition().getId());
+				copiedChildren.add(copiedChild != null ? copiedChild : child);
+			}
+			((TypeDefinitionContainerImpl) copy.get(entry.getKey())).setChildren(copiedChildren);
+		}
+
+		for (Entry<String, TypeDefinitionContainer> entry : basetypes.entrySet()) {
+			if (original.get(entry.getKey()) == entry.getValue()) {
+				entry.setValue(copy.get(entry.getKey()));
+			}
+		}
+		TYPES.put(repositoryId, copy);
+		return copy;
+	}
+
+	/**
+	 * Remove a type from the map and from its parent's children
+	 *
+	 * @return the removed container, or null if the type is not in the map
+	 */
+	private TypeDefinitionContainer detachType(Map<String, TypeDefinitionContainer> types, String typeId) {
+		TypeDefinitionContainer removed = types.remove(typeId);
+		if (removed == null) {
+			return null;
+		}
+		String parentTypeId = removed.getTypeDefinition().getParentTypeId();
+		TypeDefinitionContainer parent = (parentTypeId == null) ? null : types.get(parentTypeId);
+		if (parent != null && parent.getChildren() != null) {
+			parent.getChildren().removeIf(child -> typeId.equals(child.getTypeDefinition().getId()));
+		}
+		return removed;
+	}
+
 	// //////////////////////////////////////////////////////////////////////////////
 	// Utility
 	// //////////////////////////////////////////////////////////////////////////////
@@ -4439,8 +4522,7 @@ private boolean isStandardCmisProperty(String propertyId, boolean isBaseTypeDefi
 			// The getTypeDefinitionList() method only returns root types (parentTypeId == null)
 			// But secondary types like nemaki:commentable have parentTypeId = "cmis:secondary"
 			// so they are not included in getTypeDefinitionList()
-			ensureInitialized();
-			Map<String, TypeDefinitionContainer> types = TYPES.get(repositoryId);
+			Map<String, TypeDefinitionContainer> types = currentRegistry(repositoryId).getTypes(repositoryId);
 			if (types == null || types.isEmpty()) {
 				log.warn("findSecondaryTypeByPropertyQueryName: No types found for repository " + repositoryId);
 				return null;
@@ -0,0 +1,140 @@
+package jp.aegif.nemaki.cmis.aspect.type.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.chemistry.opencmis.commons.definitions.PropertyDefinition;
+import org.apache.chemistry.opencmis.commons.definitions.TypeDefinition;
+import org.apache.chemistry.opencmis.commons.definitions.TypeDefinitionContainer;
+
+/**
+ * Snapshot of the type definitions of all repositories.
+ *
+ * TypeManagerImpl builds the maps off to the side and publishes a new
+ * snapshot with a single volatile write, so readers always see either the
+ * old or the new registry and never a half-built one. The maps of a
+ * snapshot are never modified after construction.
+ */
+final class TypeRegistry {
+
+	private static final AtomicLong VERSIONS = new AtomicLong();
+
+	// Increases with every snapshot built
+	final long version = VERSIONS.incrementAndGet();
+
+	// repositoryId -> typeId -> container
+	private final Map<String, Map<String, TypeDefinitionContainer>> types;
+	private final Map<String, TypeDefinitionContainer> basetypes;
+	private final Map<String, List<PropertyDefinition<?>>> subTypeProperties;
+	private final Map<String, PropertyDefinition<?>> propertyDefinitionCoresByPropertyId;
+	private final Map<String, PropertyDefinition<?>> propertyDefinitionCoresByQueryName;
+
+	// repositoryId -> queryName -> type
+	private final Map<String, Map<String, TypeDefinition>> typesByQueryName;
+	// repositoryId -> typeId -> the type and all its descendants in depth-first order
+	private final Map<String, Map<String, List<TypeDefinitionContainer>>> subtrees;
+
+	// Instances handed out for identity comparison; they belong to this snapshot
+	// and are dropped together with it
+	final Map<String, Map<String, TypeDefinition>> sharedTypeDefinitions = new ConcurrentHashMap<>();
+	final Map<String, Map<String, PropertyDefinition<?>>> sharedPropertyDefinitions = new ConcurrentHashMap<>();
+
+	TypeRegistry(Map<String, Map<String, TypeDefinitionContainer>> types,
+			Map<String, TypeDefinitionContainer> basetypes,
+			Map<String, List<PropertyDefinition<?>>> subTypeProperties,
+			Map<String, PropertyDefinition<?>> propertyDefinitionCoresByPropertyId,
+			Map<String, PropertyDefinition<?>> propertyDefinitionCoresByQueryName) {
+		Map<String, Map<String, TypeDefinitionContainer>> typesCopy = new HashMap<>();
+		Map<String, Map<String, TypeDefinition>> byQueryName = new HashMap<>();
+		Map<String, Map<String, List<TypeDefinitionContainer>>> subtreesCopy = new HashMap<>();
+
+		for (Map.Entry<String, Map<String, TypeDefinitionContainer>> repo : types.entrySet()) {
+			if (repo.getValue() == null) {
+				continue;
+			}
+			Map<String, TypeDefinitionContainer> repoTypes = new LinkedHashMap<>(repo.getValue());
+			Map<String, TypeDefinition> repoByQueryName = new HashMap<>();
+			Map<String, List<TypeDefinitionContainer>> repoSubtrees = new HashMap<>();
+			for (TypeDefinitionContainer tdc : repoTypes.values()) {
+				TypeDefinition tdf = tdc.getTypeDefinition();
+				if (tdf == null) {
+					continue;
+				}
+				if (tdf.getQueryName() != null) {
+					repoByQueryName.putIfAbsent(tdf.getQueryName(), tdf);
+				}
+				List<TypeDefinitionContainer> subtree = new ArrayList<>();
+				collectSubtree(tdc, subtree);
+				repoSubtrees.put(tdf.getId(), Collections.unmodifiableList(subtree));
+			}
+			typesCopy.put(repo.getKey(), Collections.unmodifiableMap(repoTypes));
+			byQueryName.put(repo.getKey(), Collections.unmodifiableMap(repoByQueryName));
+			subtreesCopy.put(repo.getKey(), Collections.unmodifiableMap(repoSubtrees));
+		}
+
+		this.types = Collections.unmodifiableMap(typesCopy);
+		this.typesByQueryName = Collections.unmodifiableMap(byQueryName);
+		this.subtrees = Collections.unmodifiableMap(subtreesCopy);
+		this.basetypes = Collections.unmodifiableMap(new LinkedHashMap<>(basetypes));
+		this.subTypeProperties = Collections.unmodifiableMap(new HashMap<>(subTypeProperties));
+		this.propertyDefinitionCoresByPropertyId = Collections.unmodifiableMap(new HashMap<>(propertyDefinitionCoresByPropertyId));
+		this.propertyDefinitionCoresByQueryName = Collections.unmodifiableMap(new HashMap<>(propertyDefinitionCoresByQueryName));
+	}
+
+	private static void collectSubtree(TypeDefinitionContainer tdc, List<TypeDefinitionContainer> result) {
+		result.add(tdc);
+		if (tdc.getChildren() != null) {
+			for (TypeDefinitionContainer child : tdc.getChildren()) {
+				collectSubtree(child, result);
+			}
+		}
+	}
+
+	/**
+	 * @return null if the repository has not been generated
+	 */
+	Map<String, TypeDefinitionContainer> getTypes(String repositoryId) {
+		return types.get(repositoryId);
+	}
+
+	Map<String, Map<String, TypeDefinitionContainer>> getAllTypes() {
+		return types;
+	}
+
+	Map<String, TypeDefinitionContainer> getBasetypes() {
+		return basetypes;
+	}
+
+	List<PropertyDefinition<?>> getSubTypeProperties(String typeId) {
+		return subTypeProperties.get(typeId);
+	}
+
+	PropertyDefinition<?> getPropertyDefinitionCoreByQueryName(String queryName) {
+		return propertyDefinitionCoresByQueryName.get(queryName);
+	}
+
+	PropertyDefinition<?> getPropertyDefinitionCoreByPropertyId(String propertyId) {
+		return propertyDefinitionCoresByPropertyId.get(propertyId);
+	}
+
+	TypeDefinition getTypeByQueryName(String repositoryId, String queryName) {
+		Map<String, TypeDefinition> repo = typesByQueryName.get(repositoryId);
+		return repo == null ? null : repo.get(queryName);
+	}
+
+	/**
+	 * @return the type followed by all its descendants in depth-first order,
+	 *         or an empty list if the type is unknown
+	 */
+	List<TypeDefinitionContainer> getSubtree(String repositoryId, String typeId) {
+		Map<String, List<TypeDefinitionContainer>> repo = subtrees.get(repositoryId);
+		List<TypeDefinitionContainer> subtree = repo == null ? null : repo.get(typeId);
+		return subtree == null ? Collections.<TypeDefinitionContainer>emptyList() : subtree;
+	}
+}
@@ -0,0 +1,124 @@
+package jp.aegif.nemaki.cmis.aspect.type.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.chemistry.opencmis.commons.definitions.PropertyDefinition;
+import org.apache.chemistry.opencmis.commons.definitions.TypeDefinitionContainer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Stores the type system generated for a repository on local disk, so that
+ * the next start can load it instead of generating it again.
+ *
+ * A snapshot is only returned for the revision it was saved with; the
+ * revision covers the type and property definitions in the repository, the
+ * type settings and the format of the snapshot itself.
+ */
+final class TypeSnapshotStore {
+
+	private static final Log log = LogFactory.getLog(TypeSnapshotStore.class);
+
+	// Increment when the snapshot content changes incompatibly
+	static final int FORMAT_VERSION = 1;
+
+	private static final ObjectInputFilter FILTER = ObjectInputFilter.Config
+			.createFilter("java.**;org.apache.chemistry.opencmis.**;jp.aegif.nemaki.**;!*");
+
+	private final Path directory;
+
+	TypeSnapshotStore(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * The part of the type maps generated for one repository
+	 */
+	static final class TypeSnapshot implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		final Map<String, TypeDefinitionContainer> types;
+		final Map<String, TypeDefinitionContainer> basetypes;
+		final Map<String, List<PropertyDefinition<?>>> subTypeProperties;
+		final Map<String, PropertyDefinition<?>> propertyDefinitionCoresByPropertyId;
+		final Map<String, PropertyDefinition<?>> propertyDefinitionCoresByQueryName;
+
+		TypeSnapshot(Map<String, TypeDefinitionContainer> types, Map<String, TypeDefinitionContainer> basetypes,
+				Map<String, List<PropertyDefinition<?>>> subTypeProperties,
+				Map<String, PropertyDefinition<?>> propertyDefinitionCoresByPropertyId,
+				Map<String, PropertyDefinition<?>> propertyDefinitionCoresByQueryName) {
+			this.types = new HashMap<>(types);
+			this.basetypes = new HashMap<>(basetypes);
+			this.subTypeProperties = new HashMap<>(subTypeProperties);
+			this.propertyDefinitionCoresByPropertyId = new HashMap<>(propertyDefinitionCoresByPropertyId);
+			this.propertyDefinitionCoresByQueryName = new HashMap<>(propertyDefinitionCoresByQueryName);
+		}
+	}
+
+	/**
+	 * @return the snapshot saved for this revision, or null if there is none
+	 */
+	TypeSnapshot load(String repositoryId, String revision) {
+		Path file = file(repositoryId);
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(file));
+				ObjectInputStream ois = new ObjectInputStream(in)) {
+			ois.setObjectInputFilter(FILTER);
+			if (ois.readInt() != FORMAT_VERSION || !revision.equals(ois.readUTF())) {
+				if (log.isDebugEnabled()) {
+					log.debug("Type snapshot of repository " + repositoryId + " is outdated");
+				}
+				return null;
+			}
+			return (TypeSnapshot) ois.readObject();
+		} catch (Exception e) {
+			log.warn("Ignoring unreadable type snapshot " + file + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Replace the snapshot of the repository. Failures are logged only; the
+	 * next start generates the types again.
+	 */
+	void save(String repositoryId, String revision, TypeSnapshot snapshot) {
+		Path file = file(repositoryId);
+		try {
+			Files.createDirectories(directory);
+			Path tmp = Files.createTempFile(directory, repositoryId, ".tmp");
+			try {
+				try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp));
+						ObjectOutputStream oos = new ObjectOutputStream(out)) {
+					oos.writeInt(FORMAT_VERSION);
+					oos.writeUTF(revision);
+					oos.writeObject(snapshot);
+				}
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+		} catch (IOException e) {
+			log.warn("Could not save type snapshot " + file + ": " + e.getMessage());
+		}
+	}
+
+	private Path file(String repositoryId) {
+		return directory.resolve(repositoryId + ".types");
+	}
+}
@@ -82,6 +82,7 @@ import jp.aegif.nemaki.cmis.service.RelationshipService;
 import jp.aegif.nemaki.cmis.service.RepositoryService;
 import jp.aegif.nemaki.cmis.service.VersioningService;
 import jp.aegif.nemaki.model.Document;
+import jp.aegif.nemaki.util.cache.RequestLookupCache;
 
 /**
  * Nemaki CMIS service.
@@ -421,22 +422,24 @@ public class CmisService extends AbstractCmisService implements CallContextAware
 	public ObjectInFolderList getChildren(String repositoryId, String folderId, String filter, String orderBy,
 			Boolean includeAllowableActions, IncludeRelationships includeRelationships, String renditionFilter,
 			Boolean includePathSegment, BigInteger maxItems, BigInteger skipCount, ExtensionsData extension) {
-		Holder<ObjectData> parentObjectData = new Holder<ObjectData>(null);
+		try (RequestLookupCache lookups = RequestLookupCache.open()) {
+			Holder<ObjectData> parentObjectData = new Holder<ObjectData>(null);
 
-		ObjectInFolderList children = navigationService.getChildren(getCallContext(), repositoryId, folderId, filter,
-				orderBy, includeAllowableActions, includeRelationships, renditionFilter, includePathSegment, maxItems, skipCount, parentObjectData,
-				extension);
+			ObjectInFolderList children = navigationService.getChildren(getCallContext(), repositoryId, folderId, filter,
+					orderBy, includeAllowableActions, includeRelationships, renditionFilter, includePathSegment, maxItems, skipCount, parentObjectData,
+					extension);
 
-		if (parentObjectData != null && parentObjectData.getValue() != null) {
-			setObjectInfo(repositoryId, parentObjectData.getValue());
-		}
-		if (children != null) {
-			for (ObjectInFolderData o : children.getObjects()) {
-				setObjectInfo(repositoryId, o.getObject());
+			if (parentObjectData != null && parentObjectData.getValue() != null) {
+				setObjectInfo(repositoryId, parentObjectData.getValue());
+			}
+			if (children != null) {
+				for (ObjectInFolderData o : children.getObjects()) {
+					setObjectInfo(repositoryId, o.getObject());
+				}
 			}
-		}
 
-		return children;
+			return children;
+		}
 	}
 
 	/**
@@ -447,18 +450,20 @@ public class CmisService extends AbstractCmisService implements CallContextAware
 	public List<ObjectInFolderContainer> getDescendants(String repositoryId, String folderId, BigInteger depth,
 			String filter, Boolean includeAllowableActions, IncludeRelationships includeRelationships,
 			String renditionFilter, Boolean includePathSegment, ExtensionsData extension) {
-		Holder<ObjectData> anscestorObjectData = new Holder<ObjectData>(null);
+		try (RequestLookupCache lookups = RequestLookupCache.open()) {
+			Holder<ObjectData> anscestorObjectData = new Holder<ObjectData>(null);
 
-		List<ObjectInFolderContainer> result = navigationService.getDescendants(getCallContext(), repositoryId,
-				folderId, depth, filter, includeAllowableActions, includeRelationships, renditionFilter,
-				includePathSegment, false, anscestorObjectData, extension);
+			List<ObjectInFolderContainer> result = navigationService.getDescendants(getCallContext(), repositoryId,
+					folderId, depth, filter, includeAllowableActions, includeRelationships, renditionFilter,
+					includePathSegment, false, anscestorObjectData, extension);
 
-		if (anscestorObjectData != null && anscestorObjectData.getValue() != null) {
-			setObjectInfo(repositoryId, anscestorObjectData.getValue());
-		}
-		setObjectInfoInTree(repositoryId, result);
+			if (anscestorObjectData != null && anscestorObjectData.getValue() != null) {
+				setObjectInfo(repositoryId, anscestorObjectData.getValue());
+			}
+			setObjectInfoInTree(repositoryId, result);
 
-		return result;
+			return result;
+		}
 	}
 
 	/**
@@ -469,18 +474,20 @@ public class CmisService extends AbstractCmisService implements CallContextAware
 	public List<ObjectInFolderContainer> getFolderTree(String repositoryId, String folderId, BigInteger depth,
 			String filter, Boolean includeAllowableActions, IncludeRelationships includeRelationships,
 			String renditionFilter, Boolean includePathSegment, ExtensionsData extension) {
-		Holder<ObjectData> anscestorObjectData = new Holder<ObjectData>(null);
+		try (RequestLookupCache lookups = RequestLookupCache.open()) {
+			Holder<ObjectData> anscestorObjectData = new Holder<ObjectData>(null);
 
-		List<ObjectInFolderContainer> result = navigationService.getDescendants(getCallContext(), repositoryId,
-				folderId, depth, filter, includeAllowableActions, includeRelationships, renditionFilter,
-				includePathSegment, true, anscestorObjectData, extension);
+			List<ObjectInFolderContainer> result = navigationService.getDescendants(getCallContext(), repositoryId,
+					folderId, depth, filter, includeAllowableActions, includeRelationships, renditionFilter,
+					includePathSegment, true, anscestorObjectData, extension);
 
-		if (anscestorObjectData != null && anscestorObjectData.getValue() != null) {
-			setObjectInfo(repositoryId, anscestorObjectData.getValue());
-		}
-		setObjectInfoInTree(repositoryId, result);
+			if (anscestorObjectData != null && anscestorObjectData.getValue() != null) {
+				setObjectInfo(repositoryId, anscestorObjectData.getValue());
+			}
+			setObjectInfoInTree(repositoryId, result);
 
-		return result;
+			return result;
+		}
 	}
 
 	/**
@@ -506,10 +513,12 @@ public class CmisService extends AbstractCmisService implements CallContextAware
 	public List<ObjectParentData> getObjectParents(String repositoryId, String objectId, String filter,
 			Boolean includeAllowableActions, IncludeRelationships includeRelationships, String renditionFilter,
 			Boolean includeRelativePathSegment, ExtensionsData extension) {
-		List<ObjectParentData> parents = navigationService.getObjectParents(getCallContext(), repositoryId, objectId,
-				filter, includeAllowableActions, includeRelationships, renditionFilter, includeRelativePathSegment,
-				extension);
-		return parents;
+		try (RequestLookupCache lookups = RequestLookupCache.open()) {
+			List<ObjectParentData> parents = navigationService.getObjectParents(getCallContext(), repositoryId, objectId,
+					filter, includeAllowableActions, includeRelationships, renditionFilter, includeRelativePathSegment,
+					extension);
+			return parents;
+		}
 	}
 
 	/**
@@ -520,10 +529,10 @@ public class CmisService extends AbstractCmisService implements CallContextAware
 	public ObjectList getCheckedOutDocs(String repositoryId, String folderId, String filter, String orderBy,
 			Boolean includeAllowableActions, IncludeRelationships includeRelationships, String renditionFilter,
 			BigInteger maxItems, BigInteger skipCount, ExtensionsData extension) {
-
-		return navigationService.getCheckedOutDocs(getCallContext(), repositoryId, folderId, filter, orderBy,
-				includeAllowableActions, includeRelationships, renditionFilter, maxItems, skipCount, extension);
-
+		try (RequestLookupCache lookups = RequestLookupCache.open()) {
+			return navigationService.getCheckedOutDocs(getCallContext(), repositoryId, folderId, filter, orderBy,
+					includeAllowableActions, includeRelationships, renditionFilter, maxItems, skipCount, extension);
+		}
 	}
 
 	// ---- Object Service Implementation ---
@@ -667,11 +676,13 @@ public class CmisService extends AbstractCmisService implements CallContextAware
 	public ObjectData getObject(String repositoryId, String objectId, String filter, Boolean includeAllowableActions,
 			IncludeRelationships includeRelationships, String renditionFilter, Boolean includePolicyIds,
 			Boolean includeAcl, ExtensionsData extension) {
-		ObjectData objectData = objectService.getObject(getCallContext(), repositoryId, objectId, filter,
-				includeAllowableActions, includeRelationships, renditionFilter, includePolicyIds, includeAcl,
-				extension);
-		setObjectInfo(repositoryId, objectData);
-		return objectData;
+		try (RequestLookupCache lookups = RequestLookupCache.open()) {
+			ObjectData objectData = objectService.getObject(getCallContext(), repositoryId, objectId, filter,
+					includeAllowableActions, includeRelationships, renditionFilter, includePolicyIds, includeAcl,
+					extension);
+			setObjectInfo(repositoryId, objectData);
+			return objectData;
+		}
 	}
 
 	/**
@@ -681,11 +692,13 @@ public class CmisService extends AbstractCmisService implements CallContextAware
 	public ObjectData getObjectByPath(String repositoryId, String path, String filter, Boolean includeAllowableActions,
 			IncludeRelationships includeRelationships, String renditionFilter, Boolean includePolicyIds,
 			Boolean includeAcl, ExtensionsData extension) {
-		ObjectData objectData = objectService.getObjectByPath(getCallContext(), repositoryId, path, filter,
-				includeAllowableActions, includeRelationships, renditionFilter, includePolicyIds, includeAcl,
-				extension);
-		setObjectInfo(repositoryId, objectData);
-		return objectData;
+		try (RequestLookupCache lookups = RequestLookupCache.open()) {
+			ObjectData objectData = objectService.getObjectByPath(getCallContext(), repositoryId, path, filter,
+					includeAllowableActions, includeRelationships, renditionFilter, includePolicyIds, includeAcl,
+					extension);
+			setObjectInfo(repositoryId, objectData);
+			return objectData;
+		}
 	}
 
 	/**
@@ -767,15 +780,16 @@ public class CmisService extends AbstractCmisService implements CallContextAware
 	@Override
 	public List<ObjectData> getAllVersions(String repositoryId, String objectId, String versionSeriesId, String filter,
 			Boolean includeAllowableActions, ExtensionsData extension) {
-
-		List<ObjectData> result = versioningService.getAllVersions(getCallContext(), repositoryId, objectId,
-				versionSeriesId, filter, includeAllowableActions, extension);
-		if (CollectionUtils.isNotEmpty(result)) {
-			for (ObjectData o : result) {
-				setObjectInfo(repositoryId, o);
+		try (RequestLookupCache lookups = RequestLookupCache.open()) {
+			List<ObjectData> result = versioningService.getAllVersions(getCallContext(), repositoryId, objectId,
+					versionSeriesId, filter, includeAllowableActions, extension);
+			if (CollectionUtils.isNotEmpty(result)) {
+				for (ObjectData o : result) {
+					setObjectInfo(repositoryId, o);
+				}
 			}
+			return result;
 		}
-		return result;
 	}
 
 	/**
@@ -957,17 +971,20 @@ public class CmisService extends AbstractCmisService implements CallContextAware
 	public ObjectList query(String repositoryId, String statement, Boolean searchAllVersions,
 			Boolean includeAllowableActions, IncludeRelationships includeRelationships, String renditionFilter,
 			BigInteger maxItems, BigInteger skipCount, ExtensionsData extension) {
-		return discoveryService.query(getCallContext(), repositoryId, statement, searchAllVersions,
-				includeAllowableActions, includeRelationships, renditionFilter, maxItems, skipCount, extension);
+		try (RequestLookupCache lookups = RequestLookupCache.open()) {
+			return discoveryService.query(getCallContext(), repositoryId, statement, searchAllVersions,
+					includeAllowableActions, includeRelationships, renditionFilter, maxItems, skipCount, extension);
+		}
 	}
 
 	@Override
 	public ObjectList getContentChanges(String repositoryId, Holder<String> changeLogToken, Boolean includeProperties,
 			String filter, Boolean includePolicyIds, Boolean includeAcl, BigInteger maxItems,
 			ExtensionsData extension) {
-
-		return discoveryService.getContentChanges(getCallContext(), repositoryId, changeLogToken, includeProperties,
-				filter, includePolicyIds, includeAcl, maxItems, extension);
+		try (RequestLookupCache lookups = RequestLookupCache.open()) {
+			return discoveryService.getContentChanges(getCallContext(), repositoryId, changeLogToken, includeProperties,
+					filter, includePolicyIds, includeAcl, maxItems, extension);
+		}
 	}
 
 	// --- Relationship Service Implementation ---
@@ -975,9 +992,11 @@ public class CmisService extends AbstractCmisService implements CallContextAware
 	public ObjectList getObjectRelationships(String repositoryId, String objectId, Boolean includeSubRelationshipTypes,
 			RelationshipDirection relationshipDirection, String typeId, String filter, Boolean includeAllowableActions,
 			BigInteger maxItems, BigInteger skipCount, ExtensionsData extension) {
-		return relationshipService.getObjectRelationships(getCallContext(), repositoryId, objectId,
-				includeSubRelationshipTypes, relationshipDirection, typeId, filter, includeAllowableActions, maxItems,
-				skipCount, extension);
+		try (RequestLookupCache lookups = RequestLookupCache.open()) {
+			return relationshipService.getObjectRelationships(getCallContext(), repositoryId, objectId,
+					includeSubRelationshipTypes, relationshipDirection, typeId, filter, includeAllowableActions, maxItems,
+					skipCount, extension);
+		}
 	}
 
 	// --- Policy Service Implementation ---
@@ -30,7 +30,6 @@ import org.apache.commons.logging.LogFactory;
 import jp.aegif.nemaki.businesslogic.ContentService;
 import jp.aegif.nemaki.businesslogic.PrincipalService;
 import jp.aegif.nemaki.cmis.factory.auth.AuthenticationService;
-import jp.aegif.nemaki.cmis.factory.auth.Token;
 import jp.aegif.nemaki.cmis.factory.auth.TokenService;
 import jp.aegif.nemaki.cmis.factory.info.RepositoryInfoMap;
 import jp.aegif.nemaki.dao.ContentDaoService;
@@ -54,6 +53,7 @@ public class AuthenticationServiceImpl implements AuthenticationService {
 	private TokenService tokenService;
 	private PropertyManager propertyManager;
 	private RepositoryInfoMap repositoryInfoMap;
+	private volatile VerifiedCredentialCache credentialCache;
 
 	public boolean login(CallContext callContext) {
 		if (log.isDebugEnabled()) {
@@ -175,35 +175,15 @@ public class AuthenticationServiceImpl implements AuthenticationService {
 	}
 
 	private boolean authenticateUserByToken(String app, String repositoryId, String userName, String token) {
-		Token registeredToken = tokenService.getToken(app, repositoryId, userName);
-		if (registeredToken == null) {
-			log.warn("[TOKEN VALIDATION] No token found for user: " + userName + ", repository: " + repositoryId + ", app: " + app);
+		// Validated by the token service itself, so that signed tokens issued on other nodes are accepted too
+		String tokenUser = tokenService.validateToken(app, repositoryId, token);
+		if (tokenUser == null) {
+			log.warn("[TOKEN VALIDATION] No valid token for user: " + userName + ", repository: " + repositoryId + ", app: " + app);
 			return false;
-		} else {
-			long expiration = registeredToken.getExpiration();
-			long currentTime = System.currentTimeMillis();
-
-			// TOKEN DEBUG: Log token validation details
-			log.info("=== TOKEN VALIDATION DEBUG ===");
-			log.info("User: " + userName + ", Repository: " + repositoryId + ", App: " + app);
-			log.info("Current time: " + currentTime + " (" + new java.util.Date(currentTime) + ")");
-			log.info("Expiration time: " + expiration + " (" + new java.util.Date(expiration) + ")");
-			log.info("Time until expiration: " + ((expiration - currentTime) / 1000) + " seconds");
-			log.info("Token provided: " + (token != null ? token.substring(0, Math.min(8, token.length())) + "..." : "null"));
-			log.info("Token registered: " + (registeredToken.getToken() != null ? registeredToken.getToken().substring(0, Math.min(8, registeredToken.getToken().length())) + "..." : "null"));
-
-			if (currentTime > expiration) {
-				log.warn("[TOKEN VALIDATION] Token EXPIRED for user: " + userName + " (expired " + ((currentTime - expiration) / 1000) + " seconds ago)");
-				log.info("===========================");
-				return false;
-			} else {
-				String _registeredToken = registeredToken.getToken();
-				boolean isValid = StringUtils.isNotEmpty(_registeredToken) && _registeredToken.equals(token);
-				log.info("[TOKEN VALIDATION] Token valid: " + isValid);
-				log.info("===========================");
-				return isValid;
-			}
 		}
+		boolean isValid = tokenUser.equals(userName);
+		log.debug("[TOKEN VALIDATION] Token valid: " + isValid);
+		return isValid;
 	}
 
 	private boolean authenticateAdminByToken(String repositoryId, String userName) {
@@ -220,6 +200,12 @@ public class AuthenticationServiceImpl implements AuthenticationService {
 
 		// パスワード認証とセキュリティアップグレード
 		if (u != null && StringUtils.isNotBlank(u.getPassowrd())) {
+			// Skip the BCrypt match for a pair verified against the current hash moments ago
+			VerifiedCredentialCache cache = getCredentialCache();
+			if (cache.isVerified(repositoryId, userId, password, u.getPassowrd())) {
+				return u;
+			}
+
 			if (log.isDebugEnabled()) {
 				log.debug("Password field is not blank, attempting match with upgrade");
 			}
@@ -256,6 +242,7 @@ public class AuthenticationServiceImpl implements AuthenticationService {
 					}
 				}
 				
+				cache.put(repositoryId, userId, password, u.getPassowrd());
 				log.debug(String.format( "[%s][%s]Get authenticated user successfully ! , Is admin?  : %s", repositoryId, userId , u.isAdmin()));
 				return u;
 			} else {
@@ -281,6 +268,35 @@ public class AuthenticationServiceImpl implements AuthenticationService {
 		return null;
 	}
 
+	private VerifiedCredentialCache getCredentialCache() {
+		VerifiedCredentialCache cache = credentialCache;
+		if (cache == null) {
+			synchronized (this) {
+				cache = credentialCache;
+				if (cache == null) {
+					long ttl = readLong(PropertyKey.AUTH_BASIC_CACHE_TTL, 60);
+					long maxEntries = readLong(PropertyKey.AUTH_BASIC_CACHE_MAX_ENTRIES, 10000);
+					cache = new VerifiedCredentialCache(ttl * 1000, (int) maxEntries);
+					credentialCache = cache;
+				}
+			}
+		}
+		return cache;
+	}
+
+	private long readLong(String key, long defaultValue) {
+		String value = propertyManager == null ? null : propertyManager.readValue(key);
+		if (StringUtils.isBlank(value)) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			log.warn("Invalid value for " + key + ": " + value + ", using " + defaultValue);
+			return defaultValue;
+		}
+	}
+
 	public void setContentService(ContentService contentService) {
 		this.contentService = contentService;
 	}
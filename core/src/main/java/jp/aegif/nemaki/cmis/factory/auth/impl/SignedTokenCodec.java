@@ -0,0 +1,143 @@
+package jp.aegif.nemaki.cmis.factory.auth.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Encodes auth token claims into a self-contained token and verifies it again.
+ *
+ * A token reads "nemaki1.&lt;claims&gt;.&lt;signature&gt;": the claims are URL-safe
+ * Base64 JSON and the signature an HMAC-SHA256 over everything before it. Any
+ * node holding the same secret accepts the token without looking it up.
+ */
+public class SignedTokenCodec {
+
+	private static final Log log = LogFactory.getLog(SignedTokenCodec.class);
+
+	private static final String PREFIX = "nemaki1.";
+	private static final String ALGORITHM = "HmacSHA256";
+
+	private static final String CLAIM_USER = "sub";
+	private static final String CLAIM_REPOSITORY = "repo";
+	private static final String CLAIM_APP = "app";
+	private static final String CLAIM_ISSUED_AT = "iat";
+	private static final String CLAIM_EXPIRATION = "exp";
+
+	public static class Claims {
+		private final String userName;
+		private final String repositoryId;
+		private final String app;
+		private final long issuedAt;
+		private final long expiration;
+
+		public Claims(String userName, String repositoryId, String app, long issuedAt, long expiration) {
+			this.userName = userName;
+			this.repositoryId = repositoryId;
+			this.app = app;
+			this.issuedAt = issuedAt;
+			this.expiration = expiration;
+		}
+
+		public String getUserName() {
+			return userName;
+		}
+
+		public String getRepositoryId() {
+			return repositoryId;
+		}
+
+		public String getApp() {
+			return app;
+		}
+
+		public long getIssuedAt() {
+			return issuedAt;
+		}
+
+		public long getExpiration() {
+			return expiration;
+		}
+	}
+
+	private final SecretKeySpec secret;
+
+	public SignedTokenCodec(byte[] secret) {
+		this.secret = new SecretKeySpec(secret, ALGORITHM);
+	}
+
+	@SuppressWarnings("unchecked")
+	public String encode(Claims claims) {
+		JSONObject json = new JSONObject();
+		json.put(CLAIM_USER, claims.getUserName());
+		json.put(CLAIM_REPOSITORY, claims.getRepositoryId());
+		json.put(CLAIM_APP, claims.getApp());
+		json.put(CLAIM_ISSUED_AT, claims.getIssuedAt());
+		json.put(CLAIM_EXPIRATION, claims.getExpiration());
+
+		String signed = PREFIX + base64(json.toJSONString().getBytes(StandardCharsets.UTF_8));
+		return signed + "." + base64(sign(signed));
+	}
+
+	/**
+	 * @return the claims of a token signed with this codec's secret, or null.
+	 * Expiry is not checked here.
+	 */
+	public Claims decode(String token) {
+		if (token == null || !token.startsWith(PREFIX)) {
+			return null;
+		}
+		int dot = token.lastIndexOf('.');
+		if (dot < PREFIX.length()) {
+			return null;
+		}
+
+		String signed = token.substring(0, dot);
+		try {
+			byte[] signature = Base64.getUrlDecoder().decode(token.substring(dot + 1));
+			if (!MessageDigest.isEqual(signature, sign(signed))) {
+				return null;
+			}
+			byte[] payload = Base64.getUrlDecoder().decode(signed.substring(PREFIX.length()));
+			Object parsed = new JSONParser().parse(new String(payload, StandardCharsets.UTF_8));
+			if (!(parsed instanceof JSONObject)) {
+				return null;
+			}
+			JSONObject json = (JSONObject) parsed;
+			return new Claims((String) json.get(CLAIM_USER), (String) json.get(CLAIM_REPOSITORY),
+					(String) json.get(CLAIM_APP), toLong(json.get(CLAIM_ISSUED_AT)),
+					toLong(json.get(CLAIM_EXPIRATION)));
+		} catch (IllegalArgumentException | ClassCastException | ParseException e) {
+			log.debug("Malformed signed token: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private byte[] sign(String value) {
+		try {
+			Mac mac = Mac.getInstance(ALGORITHM);
+			mac.init(secret);
+			return mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Cannot sign auth token", e);
+		}
+	}
+
+	private static String base64(byte[] bytes) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+	}
+
+	private static long toLong(Object value) {
+		return value instanceof Number ? ((Number) value).longValue() : 0L;
+	}
+}
@@ -5,125 +5,128 @@ import jp.aegif.nemaki.businesslogic.PrincipalService;
 import jp.aegif.nemaki.cmis.factory.auth.Token;
 import jp.aegif.nemaki.cmis.factory.auth.TokenService;
 import jp.aegif.nemaki.cmis.factory.info.RepositoryInfoMap;
+import jp.aegif.nemaki.dao.ContentDaoService;
+import jp.aegif.nemaki.model.TokenRevocationList;
 import jp.aegif.nemaki.model.User;
 import jp.aegif.nemaki.util.PropertyManager;
 import jp.aegif.nemaki.util.constant.PropertyKey;
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Issues and validates auth tokens.
+ *
+ * With auth.token.type=signed (the default) a token carries its own claims and
+ * an HMAC signature, so any node sharing auth.token.secret validates it without
+ * a lookup. Logouts are recorded in a revocation list in the repository
+ * database, which every node reloads every auth.token.revocation.refresh
+ * seconds. With auth.token.type=memory tokens are random strings held in this
+ * JVM only, as before.
+ */
 public class TokenServiceImpl implements TokenService{
-	
+
 	private static final Log log = LogFactory
              .getLog(TokenServiceImpl.class);
+
+	private static final String TYPE_MEMORY = "memory";
+	private static final int REVOCATION_SAVE_ATTEMPTS = 3;
+	private static final long DEFAULT_REVOCATION_REFRESH_SECONDS = 30;
+
 	private PropertyManager propertyManager;
 	private ContentService contentService;
+	private ContentDaoService contentDaoService;
 	private PrincipalService principalService;
 	private RepositoryInfoMap repositoryInfoMap;
-	
+
 	private TokenMap tokenMap = new TokenMap();
 	private Map<String, List<String>> admins = new HashMap<String, List<String>>();
-	
+
+	private SignedTokenCodec codec;
+	private long revocationRefreshMillis;
+	private final Map<String, Revocations> revocations = new ConcurrentHashMap<String, Revocations>();
+
+	private static String key(String... parts) {
+		return StringUtils.join(parts, '\u0000');
+	}
+
+	/**
+	 * Tokens held in memory, one per app, repository and user
+	 */
 	private class TokenMap {
-		private Map<String, Map<String, Map<String, Token>>> map = new HashMap<String, Map<String,Map<String,Token>>>();
-		
+		// app, repository, user -> token
+		private final Map<String, Token> byUser = new ConcurrentHashMap<String, Token>();
+		// app, repository, token string -> token
+		private final Map<String, Token> byToken = new ConcurrentHashMap<String, Token>();
+
 		private Token get(String app, String repositoryId, String userName){
-			Map<String, Map<String, Token>> appMap = map.get(app);
-			if(appMap == null){
-				log.warn(String.format("No such app(%s) registered for AuthToken", app));
-				return null;
-			}else{
-				 Map<String, Token> repoMap = appMap.get(repositoryId);
-				 if(repoMap == null){
-					 log.warn(String.format("No such repositoryId(%s) registered for AuthToken", repositoryId));
-					 log.warn("app: " + app + " user: " + userName);
-					 log.warn("appMap: "+appMap.toString());
-					 return null;
-				 }else{
-					 return repoMap.get(userName);
-				 }
-			}
+			return byUser.get(key(app, repositoryId, userName));
 		}
-		
-		private Token set(String app, String repositoryId, String userName){
-			Map<String, Map<String, Token>> appMap = map.get(app);
-			if(appMap == null){
-				map.put(app, new HashMap<String, Map<String, Token>>());
-				appMap = map.get(app);
-			}
-			
-			Map<String, Token> repoMap = appMap.get(repositoryId);
-			if(repoMap == null){
-				appMap.put(repositoryId, new HashMap<String, Token>());
-				repoMap = appMap.get(repositoryId);
-			}
-			
+
+		private synchronized Token set(String app, String repositoryId, String userName){
 			String token = UUID.randomUUID().toString();
+			long expiration = System.currentTimeMillis() + getExpirationMillis();
 
-			String expirationConfig = propertyManager.readValue(PropertyKey.AUTH_TOKEN_EXPIRATION);
-			long expirationMillis = Long.valueOf(expirationConfig);
-			long currentTime = System.currentTimeMillis();
-			long expiration = currentTime + expirationMillis;
-
-			// TOKEN DEBUG: Log token creation details
-			log.info("=== TOKEN CREATION DEBUG ===");
-			log.info("User: " + userName + ", Repository: " + repositoryId + ", App: " + app);
-			log.info("Config value (auth.token.expiration): " + expirationConfig + " ms");
-			log.info("Current time: " + currentTime + " (" + new java.util.Date(currentTime) + ")");
-			log.info("Expiration time: " + expiration + " (" + new java.util.Date(expiration) + ")");
-			log.info("Token will expire in: " + (expirationMillis / 1000) + " seconds (" + (expirationMillis / 60000) + " minutes)");
-			log.info("Token: " + token);
-			log.info("===========================");
-
-			repoMap.put(userName, new Token(userName, token, expiration));
-
-			return repoMap.get(userName);
-		}
-		
-		private void remove(String app, String repositoryId, String userName){
-			Map<String, Map<String, Token>> appMap = map.get(app);
-			if(appMap == null){
-				return;
+			Token issued = new Token(userName, token, expiration);
+			Token previous = byUser.put(key(app, repositoryId, userName), issued);
+			if(previous != null){
+				byToken.remove(key(app, repositoryId, previous.getToken()));
 			}
-			Map<String, Token> repoMap = appMap.get(repositoryId);
-			if(repoMap == null){
+			byToken.put(key(app, repositoryId, token), issued);
+			log.info("Token issued for user: " + userName + ", repository: " + repositoryId + ", app: " + app
+					+ ", expires: " + new java.util.Date(expiration));
+
+			return issued;
+		}
+
+		private synchronized void remove(String app, String repositoryId, String userName){
+			Token previous = byUser.remove(key(app, repositoryId, userName));
+			if(previous == null){
 				return;
 			}
-			repoMap.remove(userName);
+			byToken.remove(key(app, repositoryId, previous.getToken()));
 			log.info("Token removed for user: " + userName + ", repository: " + repositoryId + ", app: " + app);
 		}
-		
+
 		private String validate(String app, String repositoryId, String tokenString){
-			Map<String, Map<String, Token>> appMap = map.get(app);
-			if(appMap == null){
+			Token token = byToken.get(key(app, repositoryId, tokenString));
+			if(token == null){
 				return null;
 			}
-			Map<String, Token> repoMap = appMap.get(repositoryId);
-			if(repoMap == null){
+			if(token.getExpiration() > System.currentTimeMillis()){
+				return token.getUserName();
+			} else {
+				log.info("Token expired for user: " + token.getUserName());
 				return null;
 			}
-			long currentTime = System.currentTimeMillis();
-			for(Map.Entry<String, Token> entry : repoMap.entrySet()){
-				Token token = entry.getValue();
-				if(token != null && tokenString.equals(token.getToken())){
-					if(token.getExpiration() > currentTime){
-						return entry.getKey();
-					} else {
-						log.info("Token expired for user: " + entry.getKey());
-						return null;
-					}
-				}
-			}
-			return null;
 		}
 	}
-	
+
+	/**
+	 * Revocation list of a repository as last read from the database
+	 */
+	private static class Revocations {
+		private final TokenRevocationList list;
+		private final long loadedAt;
+		private final AtomicBoolean reloading = new AtomicBoolean();
+
+		private Revocations(TokenRevocationList list, long loadedAt) {
+			this.list = list;
+			this.loadedAt = loadedAt;
+		}
+	}
+
 	public void init() {
 		for(String key : repositoryInfoMap.keys()){
 			//extract admin ids
@@ -137,41 +140,183 @@ public class TokenServiceImpl implements TokenService{
 
 			this.admins.put(key, userIds);
 		}
+
+		String type = propertyManager.readValue(PropertyKey.AUTH_TOKEN_TYPE);
+		if(TYPE_MEMORY.equalsIgnoreCase(StringUtils.trimToEmpty(type))){
+			log.info("Auth tokens are held in memory");
+			return;
+		}
+
+		String secret = propertyManager.readValue(PropertyKey.AUTH_TOKEN_SECRET);
+		byte[] key;
+		if(StringUtils.isBlank(secret)){
+			key = new byte[32];
+			new SecureRandom().nextBytes(key);
+			log.warn("auth.token.secret is not set: signed auth tokens are only valid on this node until it restarts");
+		}else{
+			key = secret.trim().getBytes(StandardCharsets.UTF_8);
+		}
+		codec = new SignedTokenCodec(key);
+
+		revocationRefreshMillis = readLong(PropertyKey.AUTH_TOKEN_REVOCATION_REFRESH, DEFAULT_REVOCATION_REFRESH_SECONDS) * 1000;
+		log.info("Auth tokens are signed");
+	}
+
+	private boolean isSigned() {
+		return codec != null;
+	}
+
+	private long getExpirationMillis() {
+		return Long.valueOf(propertyManager.readValue(PropertyKey.AUTH_TOKEN_EXPIRATION));
+	}
+
+	private long readLong(String key, long defaultValue) {
+		String value = propertyManager.readValue(key);
+		if (StringUtils.isBlank(value)) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			log.warn("Invalid value for " + key + ": " + value + ", using " + defaultValue);
+			return defaultValue;
+		}
 	}
 
 	@Override
 	public Token getToken(String app, String repositoryId, String userId) {
-		return tokenMap.get(app, repositoryId, userId);
+		Token token = tokenMap.get(app, repositoryId, userId);
+		if(isSigned() && token != null && validateToken(app, repositoryId, token.getToken()) == null){
+			// Expired, or revoked on another node
+			return null;
+		}
+		return token;
 	}
 
 	@Override
 	public Token setToken(String app, String repositoryId, String userId) {
-		return tokenMap.set(app,repositoryId,  userId);
+		if(!isSigned()){
+			return tokenMap.set(app,repositoryId,  userId);
+		}
+
+		long issuedAt = System.currentTimeMillis();
+		long expiration = issuedAt + getExpirationMillis();
+		String token = codec.encode(new SignedTokenCodec.Claims(userId, repositoryId, app, issuedAt, expiration));
+		Token issued = new Token(userId, token, expiration);
+		// Remembered only to answer getToken on this node; validation does not need it
+		tokenMap.byUser.put(key(app, repositoryId, userId), issued);
+		log.info("Signed token issued for user: " + userId + ", repository: " + repositoryId + ", app: " + app
+				+ ", expires: " + new java.util.Date(expiration));
+		return issued;
 	}
-	
+
 	@Override
 	public void removeToken(String app, String repositoryId, String userId) {
-		tokenMap.remove(app, repositoryId, userId);
+		if(!isSigned()){
+			tokenMap.remove(app, repositoryId, userId);
+			return;
+		}
+
+		tokenMap.byUser.remove(key(app, repositoryId, userId));
+		long now = System.currentTimeMillis();
+		for(int attempt = 0; attempt < REVOCATION_SAVE_ATTEMPTS; attempt++){
+			TokenRevocationList list;
+			try{
+				list = contentDaoService.getTokenRevocationList(repositoryId);
+			}catch(Exception e){
+				log.warn("Failed to read token revocations of repository " + repositoryId, e);
+				continue;
+			}
+			if(list == null){
+				list = new TokenRevocationList();
+			}
+			list.revoke(app, userId, now);
+			// Tokens issued before this have expired anyway
+			list.prune(now - getExpirationMillis());
+			if(contentDaoService.saveTokenRevocationList(repositoryId, list)){
+				revocations.put(repositoryId, new Revocations(list, now));
+				log.info("Tokens revoked for user: " + userId + ", repository: " + repositoryId + ", app: " + app);
+				return;
+			}
+		}
+		log.error("Failed to record token revocation for user: " + userId + ", repository: " + repositoryId);
 	}
-	
+
 	@Override
 	public String validateToken(String app, String repositoryId, String tokenString) {
-		return tokenMap.validate(app, repositoryId, tokenString);
+		if(!isSigned()){
+			return tokenMap.validate(app, repositoryId, tokenString);
+		}
+
+		SignedTokenCodec.Claims claims = codec.decode(tokenString);
+		if(claims == null || !StringUtils.equals(repositoryId, claims.getRepositoryId())
+				|| !StringUtils.equals(app, claims.getApp())){
+			return null;
+		}
+		if(claims.getExpiration() <= System.currentTimeMillis()){
+			log.info("Token expired for user: " + claims.getUserName());
+			return null;
+		}
+		TokenRevocationList revoked = getRevocations(repositoryId);
+		if(revoked == null){
+			// Never read successfully: a revoked token cannot be told apart
+			log.warn("Token rejected for user: " + claims.getUserName() + ", token revocations of repository "
+					+ repositoryId + " cannot be read");
+			return null;
+		}
+		if(revoked.isRevoked(app, claims.getUserName(), claims.getIssuedAt())){
+			log.info("Token revoked for user: " + claims.getUserName());
+			return null;
+		}
+		return claims.getUserName();
+	}
+
+	/**
+	 * The revocation list of a repository, reloaded by one caller at a time once it is
+	 * older than the refresh interval; the others go on with the previous one meanwhile.
+	 * A failed reload keeps the previous list.
+	 *
+	 * @return null if the list has never been read successfully
+	 */
+	private TokenRevocationList getRevocations(String repositoryId) {
+		long now = System.currentTimeMillis();
+		Revocations current = revocations.get(repositoryId);
+		if(current != null && (now - current.loadedAt < revocationRefreshMillis || !current.reloading.compareAndSet(false, true))){
+			return current.list;
+		}
+
+		try{
+			TokenRevocationList list = contentDaoService.getTokenRevocationList(repositoryId);
+			Revocations loaded = new Revocations(list == null ? new TokenRevocationList() : list, now);
+			revocations.put(repositoryId, loaded);
+			return loaded.list;
+		}catch(Exception e){
+			log.warn("Failed to reload token revocations of repository " + repositoryId, e);
+			if(current == null){
+				return null;
+			}
+			current.reloading.set(false);
+			return current.list;
+		}
 	}
-	
+
 	@Override
 	public boolean isAdmin(String repositoryId, String userId){
 		return admins.get(repositoryId).contains(userId);
 	}
-	
+
 	public void setPropertyManager(PropertyManager propertyManager) {
 		this.propertyManager = propertyManager;
 	}
-	
+
 	public void setContentService(ContentService contentService) {
 		this.contentService = contentService;
 	}
 
+	public void setContentDaoService(ContentDaoService contentDaoService) {
+		this.contentDaoService = contentDaoService;
+	}
+
 	public void setPrincipalService(PrincipalService principalService) {
 		this.principalService = principalService;
 	}
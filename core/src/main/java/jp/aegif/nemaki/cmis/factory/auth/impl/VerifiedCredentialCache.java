@@ -0,0 +1,138 @@
+package jp.aegif.nemaki.cmis.factory.auth.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Remembers for a short while which user/password pairs have passed a password
+ * match, so that Basic auth clients do not pay for a BCrypt match on every request.
+ *
+ * Entries are keyed by an HMAC of repository, user and password under a secret
+ * that only lives in this process; no password is held. Each entry also records
+ * the stored password hash it was verified against, and only counts while the
+ * user's current hash is still the same: a changed password, or a user whose
+ * password was cleared or who was removed, is never answered from the cache.
+ */
+public class VerifiedCredentialCache {
+
+	private static final Log log = LogFactory.getLog(VerifiedCredentialCache.class);
+
+	private static final String ALGORITHM = "HmacSHA256";
+
+	// Totals since startup
+	private static final AtomicLong hitCount = new AtomicLong();
+	private static final AtomicLong missCount = new AtomicLong();
+
+	private static final class Entry {
+		private final String storedHash;
+		private final long expiresAt;
+
+		private Entry(String storedHash, long expiresAt) {
+			this.storedHash = storedHash;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private final long ttlMillis;
+	private final int maxEntries;
+	private final SecretKeySpec secret;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * @param ttlMillis how long a verification is trusted; 0 or less disables the cache
+	 * @param maxEntries entries held at most; the cache starts over when full
+	 */
+	public VerifiedCredentialCache(long ttlMillis, int maxEntries) {
+		this.ttlMillis = ttlMillis;
+		this.maxEntries = maxEntries;
+		byte[] key = new byte[32];
+		new SecureRandom().nextBytes(key);
+		this.secret = new SecretKeySpec(key, ALGORITHM);
+	}
+
+	public boolean isEnabled() {
+		return ttlMillis > 0 && maxEntries > 0;
+	}
+
+	/**
+	 * @param storedHash the user's current password hash
+	 * @return true if the password was verified against that same hash within the TTL
+	 */
+	public boolean isVerified(String repositoryId, String userId, String password, String storedHash) {
+		if (!isEnabled() || password == null || storedHash == null) {
+			return false;
+		}
+		String key = key(repositoryId, userId, password);
+		Entry entry = key == null ? null : entries.get(key);
+		if (entry == null) {
+			missCount.incrementAndGet();
+			return false;
+		}
+		if (entry.expiresAt < System.currentTimeMillis() || !entry.storedHash.equals(storedHash)) {
+			entries.remove(key, entry);
+			missCount.incrementAndGet();
+			return false;
+		}
+		hitCount.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Record a successful password match against storedHash
+	 */
+	public void put(String repositoryId, String userId, String password, String storedHash) {
+		if (!isEnabled() || password == null || storedHash == null) {
+			return;
+		}
+		String key = key(repositoryId, userId, password);
+		if (key == null) {
+			return;
+		}
+		if (entries.size() >= maxEntries) {
+			entries.clear();
+		}
+		entries.put(key, new Entry(storedHash, System.currentTimeMillis() + ttlMillis));
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public static Map<String, Long> getMetrics() {
+		Map<String, Long> metrics = new LinkedHashMap<String, Long>();
+		metrics.put("auth.basic.cache.hits", hitCount.get());
+		metrics.put("auth.basic.cache.misses", missCount.get());
+		return metrics;
+	}
+
+	private String key(String repositoryId, String userId, String password) {
+		try {
+			Mac mac = Mac.getInstance(ALGORITHM);
+			mac.init(secret);
+			mac.update(String.valueOf(repositoryId).getBytes(StandardCharsets.UTF_8));
+			mac.update((byte) 0);
+			mac.update(String.valueOf(userId).getBytes(StandardCharsets.UTF_8));
+			mac.update((byte) 0);
+			return Base64.getEncoder().encodeToString(mac.doFinal(password.getBytes(StandardCharsets.UTF_8)));
+		} catch (GeneralSecurityException e) {
+			log.warn("Credential cache is unavailable: " + e.getMessage());
+			return null;
+		}
+	}
+}
@@ -22,6 +22,8 @@
 package jp.aegif.nemaki.cmis.service;
 
 import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.chemistry.opencmis.commons.data.ExtensionsData;
 import org.apache.chemistry.opencmis.commons.data.ObjectList;
@@ -29,6 +31,7 @@ import org.apache.chemistry.opencmis.commons.enums.IncludeRelationships;
 import org.apache.chemistry.opencmis.commons.server.CallContext;
 import org.apache.chemistry.opencmis.commons.spi.Holder;
 
+import jp.aegif.nemaki.cmis.aspect.query.AggregateRequest;
 import jp.aegif.nemaki.util.spring.aspect.log.LogParam;
 
 /**
@@ -46,6 +49,13 @@ public interface DiscoveryService {
 			@LogParam("renditionFilter")String renditionFilter, @LogParam("maxItems")BigInteger maxItems,
 			@LogParam("skipCount")BigInteger skipCount, @LogParam("extension")ExtensionsData extension);
 
+	/**
+	 * Groups the objects a CMIS query statement matches and computes aggregates
+	 * over the ones the caller may read.
+	 */
+	List<Map<String, Object>> aggregate(@LogParam("callContext")CallContext callContext, @LogParam("repositoryId")String repositoryId,
+			@LogParam("statement")String statement, @LogParam("request")AggregateRequest request);
+
 	/**
 	 * Get the list of object that have changed since a given point in the past.
 	 * 
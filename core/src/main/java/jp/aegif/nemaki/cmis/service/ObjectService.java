@@ -39,6 +39,7 @@ import org.apache.chemistry.opencmis.commons.enums.VersioningState;
 import org.apache.chemistry.opencmis.commons.server.CallContext;
 import org.apache.chemistry.opencmis.commons.spi.Holder;
 
+import jp.aegif.nemaki.businesslogic.ContentService;
 import jp.aegif.nemaki.util.spring.aspect.log.LogParam;
 
 public interface ObjectService {
@@ -92,6 +93,15 @@ public interface ObjectService {
 			@LogParam("unfileObjects") UnfileObject unfileObjects, @LogParam("continueOnFailure") Boolean continueOnFailure,
 			@LogParam("extensione") ExtensionsData extension);
 
+	/**
+	 * deleteTree reporting its progress between batches; it stops before the next
+	 * batch once the progress is cancelled
+	 */
+	public abstract FailedToDeleteData deleteTree(@LogParam("callContext") CallContext callContext,
+			@LogParam("repositoryId") String repositoryId, @LogParam("folderId") String folderId, @LogParam("allVersions") Boolean allVersions,
+			@LogParam("unfileObjects") UnfileObject unfileObjects, @LogParam("continueOnFailure") Boolean continueOnFailure,
+			ContentService.DeleteTreeProgress progress, @LogParam("extensione") ExtensionsData extension);
+
 	/**
 	 * Deletes object. Attachments of the object get deleted too.
 	 * @param repositoryId
@@ -24,12 +24,16 @@ package jp.aegif.nemaki.cmis.service.impl;
 import jp.aegif.nemaki.businesslogic.ContentService;
 import jp.aegif.nemaki.cmis.aspect.CompileService;
 import jp.aegif.nemaki.cmis.aspect.ExceptionService;
+import jp.aegif.nemaki.cmis.aspect.query.AggregateRequest;
 import jp.aegif.nemaki.cmis.aspect.query.QueryProcessor;
 import jp.aegif.nemaki.cmis.service.DiscoveryService;
 import jp.aegif.nemaki.model.Change;
+import jp.aegif.nemaki.model.ChangeFeed;
 import org.apache.chemistry.opencmis.commons.data.ExtensionsData;
 import org.apache.chemistry.opencmis.commons.data.ObjectList;
 import org.apache.chemistry.opencmis.commons.enums.IncludeRelationships;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisInvalidArgumentException;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.ObjectListImpl;
 import org.apache.chemistry.opencmis.commons.server.CallContext;
 import org.apache.chemistry.opencmis.commons.spi.Holder;
 import org.apache.commons.collections4.CollectionUtils;
@@ -39,6 +43,7 @@ import org.apache.commons.logging.LogFactory;
 
 import java.math.BigInteger;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Discovery Service implementation for CouchDB.
@@ -88,6 +93,12 @@ public class DiscoveryServiceImpl implements DiscoveryService {
 		return result;
 	}
 
+	public List<Map<String, Object>> aggregate(CallContext context, String repositoryId,
+			String statement, AggregateRequest request) {
+		exceptionService.invalidArgumentRequiredString("statement", statement);
+		return queryProcessor.aggregate(context, repositoryId, statement, request);
+	}
+
 	/**
 	 * Return ChangeLog just for Documents & Folder type, and Not for their
 	 * attachments TODO includeAcl,includePolicyIds is not valid
@@ -101,17 +112,32 @@ public class DiscoveryServiceImpl implements DiscoveryService {
 			log.debug("getContentChanges called for repository: " + repositoryId);
 		}
 		
-		org.apache.chemistry.opencmis.commons.impl.dataobjects.ObjectListImpl result = 
-			new org.apache.chemistry.opencmis.commons.impl.dataobjects.ObjectListImpl();
-		result.setObjects(new java.util.ArrayList<org.apache.chemistry.opencmis.commons.data.ObjectData>());
-		result.setHasMoreItems(false);
-		result.setNumItems(BigInteger.ZERO);
-		
-		if (changeLogToken != null) {
-			changeLogToken.setValue("0");
+		exceptionService.invalidArgumentRequired("changeLogToken", changeLogToken);
+
+		// //////////////////
+		// Body of the method
+		// //////////////////
+		int max = (maxItems == null) ? 0 : maxItems.intValue();
+		ChangeFeed feed;
+		try {
+			feed = contentService.getChangeFeed(repositoryId, changeLogToken.getValue(), max, 0);
+		} catch (IllegalArgumentException e) {
+			throw new CmisInvalidArgumentException(e.getMessage(), e);
 		}
-		
-		return result;
+		changeLogToken.setValue(feed.getLatestToken());
+
+		ObjectList list = compileService.compileChangeDataList(callContext, repositoryId, feed.getChanges(),
+				changeLogToken, includeProperties, filter, includePolicyIds, includeAcl);
+		// Sequence tokens tell exactly whether events are pending
+		if (list instanceof ObjectListImpl) {
+			((ObjectListImpl) list).setHasMoreItems(feed.isHasMoreItems());
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug("getContentChanges returned " + feed.getChanges().size() + " events, next token: "
+					+ feed.getLatestToken() + ", hasMoreItems: " + feed.isHasMoreItems());
+		}
+		return list;
 	}
 
 	public void setQueryProcessor(QueryProcessor queryProcessor) {
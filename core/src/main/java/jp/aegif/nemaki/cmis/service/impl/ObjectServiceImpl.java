@@ -63,6 +63,7 @@ import org.apache.chemistry.opencmis.commons.enums.UnfileObject;
 import org.apache.chemistry.opencmis.commons.enums.VersioningState;
 import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
 import org.apache.chemistry.opencmis.commons.exceptions.CmisInvalidArgumentException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisPermissionDeniedException;
 import org.apache.chemistry.opencmis.commons.impl.dataobjects.BulkUpdateObjectIdAndChangeTokenImpl;
 import org.apache.chemistry.opencmis.commons.impl.dataobjects.ContentStreamImpl;
 import org.apache.chemistry.opencmis.commons.impl.dataobjects.FailedToDeleteDataImpl;
@@ -78,16 +79,11 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.text.MessageFormat;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 
 public class ObjectServiceImpl implements ObjectService {
@@ -328,28 +324,16 @@ public class ObjectServiceImpl implements ObjectService {
 				log.debug("Exception during InputStream verification: " + debugEx.getMessage());
 			}
 		}
-		// CRITICAL TCK FIX: Always use actual size from CouchDB _attachments metadata
-		// This ensures we get the correct size even after appendContent operations
-		// which may update binary content without updating AttachmentNode.length field
+		// The stored length is written from the bytes actually uploaded,
+		// including after appendContent; -1 is the CMIS standard for unknown size
 		BigInteger length;
-
-		if (log.isDebugEnabled()) {
-			log.debug("Getting actual content size from CouchDB attachment metadata for: " + document.getAttachmentNodeId());
-		}
-
-		Long actualSizeFromDB = contentService.getAttachmentActualSize(repositoryId, document.getAttachmentNodeId());
-		if (actualSizeFromDB != null && actualSizeFromDB > 0) {
-			length = BigInteger.valueOf(actualSizeFromDB);
+		long attachmentLength = attachment.getLength();
+		if (attachmentLength > 0) {
+			length = BigInteger.valueOf(attachmentLength);
 		} else {
-			// Fallback: Use AttachmentNode.length if CouchDB metadata unavailable
-			long attachmentLength = attachment.getLength();
-			if (attachmentLength > 0) {
-				length = BigInteger.valueOf(attachmentLength);
-			} else {
-				length = BigInteger.valueOf(-1);
-				if (log.isDebugEnabled()) {
-					log.debug("Using CMIS standard -1 (unknown size) for: " + name);
-				}
+			length = BigInteger.valueOf(-1);
+			if (log.isDebugEnabled()) {
+				log.debug("Using CMIS standard -1 (unknown size) for: " + name);
 			}
 		}
 	if (log.isDebugEnabled()) {
@@ -1222,114 +1206,14 @@ public class ObjectServiceImpl implements ObjectService {
 	@Override
 	public FailedToDeleteData deleteTree(CallContext callContext, String repositoryId, String folderId,
 			Boolean allVersions, UnfileObject unfileObjects, Boolean continueOnFailure, ExtensionsData extension) {
-		// //////////////////
-		// Inner classes
-		// //////////////////
-		class DeleteTask implements Callable<Boolean> {
-			private CallContext callContext;
-			private String repositoryId;
-			private Content content;
-			private Boolean allVersions;
-
-			public DeleteTask() {
-			}
-
-			public DeleteTask(CallContext callContext, String repositoryId, Content content, Boolean allVersions) {
-				this.callContext = callContext;
-				this.repositoryId = repositoryId;
-				this.content = content;
-				this.allVersions = allVersions;
-			}
-
-			@Override
-			public Boolean call() throws Exception {
-				try {
-					objectServiceInternal.deleteObjectInternal(callContext, repositoryId, content, allVersions, true);
-					return false;
-				} catch (Exception e) {
-					return true;
-				}
-			}
-		}
-
-		class WrappedExecutorService {
-			private ExecutorService service;
-			private Folder folder;
-
-			private WrappedExecutorService() {
-			};
-
-			public WrappedExecutorService(ExecutorService service, Folder folder) {
-				this.service = service;
-				this.folder = folder;
-			}
-
-			public ExecutorService getService() {
-				return service;
-			}
-
-			public Folder getFolder() {
-				return folder;
-			}
-		}
-
-		class DeleteService {
-			private Map<String, Future<Boolean>> failureIds;
-			private WrappedExecutorService parentService;
-			private CallContext callContext;
-			private String repositoryId;
-			private Content content;
-			private Boolean allVersions;
-
-			public DeleteService() {
-			}
-
-			public DeleteService(Map<String, Future<Boolean>> failureIds, WrappedExecutorService parentService,
-					CallContext callContext, String repositoryId, Content content, Boolean allVersions) {
-				super();
-				this.failureIds = failureIds;
-				this.parentService = parentService;
-				this.callContext = callContext;
-				this.repositoryId = repositoryId;
-				this.content = content;
-				this.allVersions = allVersions;
-			}
-
-			public void execute() {
-				if (content.isDocument()) {
-					Future<Boolean> result = parentService.getService()
-							.submit(new DeleteTask(callContext, repositoryId, content, allVersions));
-					failureIds.put(content.getId(), result);
-				} else if (content.isFolder()) {
-					WrappedExecutorService childrenService = new WrappedExecutorService(
-							Executors.newFixedThreadPool(threadMax), (Folder) content);
-
-					List<Content> children = contentService.getChildren(repositoryId, content.getId());
-					if (CollectionUtils.isNotEmpty(children)) {
-						for (Content child : children) {
-							DeleteService deleteService = new DeleteService(this.failureIds, childrenService,
-									callContext, repositoryId, child, allVersions);
-							deleteService.execute();
-						}
-					}
-
-					// wait til newService ends
-					childrenService.getService().shutdown();
-					try {
-						childrenService.getService().awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-					} catch (InterruptedException e) {
-						log.error(e, e);
-					}
-
-					// Lastly, delete self
-					Future<Boolean> result = parentService.getService()
-							.submit(new DeleteTask(callContext, repositoryId, content, allVersions));
-					failureIds.put(content.getId(), result);
-				}
-
-			}
-		}
+		return deleteTree(callContext, repositoryId, folderId, allVersions, unfileObjects, continueOnFailure, null,
+				extension);
+	}
 
+	@Override
+	public FailedToDeleteData deleteTree(CallContext callContext, String repositoryId, String folderId,
+			Boolean allVersions, UnfileObject unfileObjects, Boolean continueOnFailure,
+			ContentService.DeleteTreeProgress progress, ExtensionsData extension) {
 		// //////////////////
 		// General Exception
 		// //////////////////
@@ -1347,38 +1231,20 @@ public class ObjectServiceImpl implements ObjectService {
 		// //////////////////
 		// Body of the method
 		// //////////////////
-		// Delete descendants
-		Map<String, Future<Boolean>> failureIds = new HashMap<String, Future<Boolean>>();
-
-		DeleteService deleteService = new DeleteService(failureIds,
-				new WrappedExecutorService(Executors.newFixedThreadPool(threadMax), folder), callContext, repositoryId,
-				folder, allVersions);
-		deleteService.execute();
-
-		// Delete folder from Solr index
-		if (folder != null) {
-			solrUtil.deleteDocument(repositoryId, folder.getId());
-		}
+		// Objects the user may not delete are kept and reported, with the folders above them
+		List<String> failedIds = contentService.deleteTree(callContext, repositoryId, folderId, allVersions,
+				continueOnFailure, false, content -> {
+					try {
+						exceptionService.permissionDenied(callContext, repositoryId,
+								PermissionMapping.CAN_DELETE_OBJECT, content);
+						return true;
+					} catch (CmisPermissionDeniedException e) {
+						return false;
+					}
+				}, progress);
 
-		// Check FailedToDeleteData
-		// FIXME Consider orphans that was failed to be deleted
 		FailedToDeleteDataImpl fdd = new FailedToDeleteDataImpl();
-		List<String> ids = new ArrayList<String>();
-		for (Entry<String, Future<Boolean>> entry : failureIds.entrySet()) {
-			Boolean failed;
-			try {
-				failed = entry.getValue().get();
-				if (failed) {
-					ids.add(entry.getKey());
-				}
-			} catch (InterruptedException e) {
-				log.warn("Delete operation interrupted for object: " + entry.getKey(), e);
-				Thread.currentThread().interrupt();
-			} catch (ExecutionException e) {
-				log.warn("Delete operation failed for object: " + entry.getKey(), e);
-			}
-		}
-		fdd.setIds(ids);
+		fdd.setIds(failedIds);
 		return fdd;
 	}
 
@@ -0,0 +1,216 @@
+package jp.aegif.nemaki.cmis.servlet;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.apache.chemistry.opencmis.commons.data.ExtensionsData;
+import org.apache.chemistry.opencmis.commons.data.ObjectData;
+import org.apache.chemistry.opencmis.commons.data.ObjectInFolderData;
+import org.apache.chemistry.opencmis.commons.data.ObjectInFolderList;
+import org.apache.chemistry.opencmis.commons.data.ObjectList;
+import org.apache.chemistry.opencmis.commons.enums.DateTimeFormat;
+import org.apache.chemistry.opencmis.commons.impl.JSONConstants;
+import org.apache.chemistry.opencmis.commons.impl.JSONConverter;
+import org.apache.chemistry.opencmis.commons.impl.JSONConverter.PropertyMode;
+import org.apache.chemistry.opencmis.commons.impl.json.JSONObject;
+import org.apache.chemistry.opencmis.commons.impl.json.JSONValue;
+
+/**
+ * Streams Browser Binding list responses (children, query, checkedout, ...)
+ * object by object instead of building the whole JSONObject tree and its
+ * String representation first.
+ *
+ * The output is the same CMIS 1.1 JSON that
+ * {@link JSONConverter#convert(ObjectList, org.apache.chemistry.opencmis.commons.impl.TypeCache, PropertyMode, boolean, DateTimeFormat)}
+ * and
+ * {@link JSONConverter#convert(ObjectInFolderList, org.apache.chemistry.opencmis.commons.impl.TypeCache, boolean, DateTimeFormat)}
+ * produce: only the envelope is written by hand, each entry is still converted
+ * by JSONConverter and discarded as soon as it has been written.
+ */
+public class BrowserBindingJsonWriter {
+	private final Writer writer;
+	private final boolean succinct;
+	private final DateTimeFormat dateTimeFormat;
+
+	private long firstFlushNanos = -1;
+
+	public BrowserBindingJsonWriter(Writer writer, boolean succinct, DateTimeFormat dateTimeFormat){
+		this.writer = writer;
+		this.succinct = succinct;
+		this.dateTimeFormat = dateTimeFormat;
+	}
+
+	public static boolean isStreamable(Object result){
+		return result instanceof ObjectList || result instanceof ObjectInFolderList;
+	}
+
+	/**
+	 * Stream a list result as the body of the response.
+	 *
+	 * A failure before anything has been sent resets the response and is
+	 * rethrown, so the caller can still send a proper error status. Once the
+	 * response is committed its status can no longer change: the body is then
+	 * left unfinished (no closing bracket, no gzip trailer) and an IOException
+	 * is thrown, so that the container aborts the connection and the client
+	 * sees a failed transfer instead of a short body that looks complete.
+	 *
+	 * @return the writer that was used, for its timings
+	 */
+	public static BrowserBindingJsonWriter stream(HttpServletResponse response, Object result, boolean gzip) throws IOException {
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+
+		OutputStream out = response.getOutputStream();
+		if (gzip) {
+			response.setHeader("Content-Encoding", "gzip");
+			response.addHeader("Vary", "Accept-Encoding");
+			// syncFlush so that the first flushed entry actually reaches the client
+			out = new GZIPOutputStream(out, 8192, true);
+		}
+
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 8192);
+		BrowserBindingJsonWriter jsonWriter = new BrowserBindingJsonWriter(writer, false, DateTimeFormat.SIMPLE);
+		try {
+			jsonWriter.write(result);
+		} catch (IOException | RuntimeException e) {
+			if (!response.isCommitted()) {
+				// Nothing has reached the client yet: drop the partial body and headers
+				response.reset();
+				throw e;
+			}
+			// Do not close the writer: that would complete the body as if it were whole
+			throw new IOException("Streaming response failed after it was committed", e);
+		}
+		writer.close();
+		return jsonWriter;
+	}
+
+	public void write(Object result) throws IOException {
+		if (result instanceof ObjectInFolderList) {
+			write((ObjectInFolderList) result);
+		} else if (result instanceof ObjectList) {
+			write((ObjectList) result, PropertyMode.OBJECT);
+		} else {
+			throw new IllegalArgumentException("Not a streamable result: " + (result == null ? null : result.getClass().getName()));
+		}
+	}
+
+	public void write(ObjectInFolderList list) throws IOException {
+		writer.write('{');
+		boolean first = true;
+
+		if (list.getObjects() != null) {
+			writeKey(JSONConstants.JSON_OBJECTINFOLDERLIST_OBJECTS);
+			writer.write('[');
+			boolean firstItem = true;
+			for (ObjectInFolderData objectInFolder : list.getObjects()) {
+				if (!firstItem) {
+					writer.write(',');
+				}
+				writeValue(JSONConverter.convert(objectInFolder, null, succinct, dateTimeFormat));
+				if (firstItem) {
+					flushFirst();
+				}
+				firstItem = false;
+			}
+			writer.write(']');
+			first = false;
+		}
+
+		writeTail(list.hasMoreItems(), list.getNumItems(), list, first,
+				JSONConstants.JSON_OBJECTINFOLDERLIST_HAS_MORE_ITEMS, JSONConstants.JSON_OBJECTINFOLDERLIST_NUM_ITEMS);
+		writer.write('}');
+		writer.flush();
+	}
+
+	public void write(ObjectList list, PropertyMode propertyMode) throws IOException {
+		writer.write('{');
+		boolean first = true;
+
+		List<ObjectData> objects = list.getObjects();
+		if (objects != null) {
+			writeKey(propertyMode == PropertyMode.QUERY ? JSONConstants.JSON_QUERYRESULTLIST_RESULTS
+					: JSONConstants.JSON_OBJECTLIST_OBJECTS);
+			writer.write('[');
+			boolean firstItem = true;
+			for (ObjectData object : objects) {
+				if (!firstItem) {
+					writer.write(',');
+				}
+				writeValue(JSONConverter.convert(object, null, propertyMode, succinct, dateTimeFormat));
+				if (firstItem) {
+					flushFirst();
+				}
+				firstItem = false;
+			}
+			writer.write(']');
+			first = false;
+		}
+
+		if (propertyMode == PropertyMode.QUERY) {
+			writeTail(list.hasMoreItems(), list.getNumItems(), list, first,
+					JSONConstants.JSON_QUERYRESULTLIST_HAS_MORE_ITEMS, JSONConstants.JSON_QUERYRESULTLIST_NUM_ITEMS);
+		} else {
+			writeTail(list.hasMoreItems(), list.getNumItems(), list, first,
+					JSONConstants.JSON_OBJECTLIST_HAS_MORE_ITEMS, JSONConstants.JSON_OBJECTLIST_NUM_ITEMS);
+		}
+		writer.write('}');
+		writer.flush();
+	}
+
+	/**
+	 * System.nanoTime() of the first flush (i.e. when the first entry was
+	 * handed to the container), or -1 when nothing has been flushed yet.
+	 */
+	public long getFirstFlushNanos() {
+		return firstFlushNanos;
+	}
+
+	private void writeTail(Boolean hasMoreItems, BigInteger numItems, ExtensionsData extensions, boolean first,
+			String hasMoreItemsKey, String numItemsKey) throws IOException {
+		// Reuse JSONConverter for the small trailing part so that extensions are
+		// rendered exactly as in the non-streaming path.
+		JSONObject tail = new JSONObject();
+		if (hasMoreItems != null) {
+			tail.put(hasMoreItemsKey, hasMoreItems);
+		}
+		if (numItems != null) {
+			tail.put(numItemsKey, numItems);
+		}
+		JSONConverter.convertExtension(extensions, tail);
+
+		for (Map.Entry<String, Object> entry : tail.entrySet()) {
+			if (!first) {
+				writer.write(',');
+			}
+			writeKey(entry.getKey());
+			writeValue(entry.getValue());
+			first = false;
+		}
+	}
+
+	private void writeKey(String key) throws IOException {
+		writer.write('"');
+		writer.write(JSONValue.escape(key));
+		writer.write("\":");
+	}
+
+	private void writeValue(Object value) throws IOException {
+		JSONValue.writeJSONString(value, writer);
+	}
+
+	private void flushFirst() throws IOException {
+		writer.flush();
+		firstFlushNanos = System.nanoTime();
+	}
+}
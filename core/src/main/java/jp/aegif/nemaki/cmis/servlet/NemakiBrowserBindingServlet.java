@@ -1001,11 +1001,16 @@ public class NemakiBrowserBindingServlet extends CmisBrowserBindingServlet {
             }
 
             // Convert result to JSON and write response
-            writeJsonResponse(response, result);
+            writeJsonResponse(request, response, result);
 
             log.info("NEMAKI CMIS: Successfully handled " + cmisselector + " operation");
             
         } catch (Exception e) {
+            if (response.isCommitted()) {
+                // Part of the body is already sent: let the container abort the connection
+                log.error("Error in CMIS service operation after the response was committed", e);
+                throw e;
+            }
             log.error("Error in CMIS service operation", e);
             writeErrorResponse(response, e);
         }
@@ -1400,6 +1405,63 @@ public class NemakiBrowserBindingServlet extends CmisBrowserBindingServlet {
         return null;
     }
     
+    /**
+     * Write JSON response using Browser Binding JSON format.
+     * List results (children, query, checkedout, ...) are streamed entry by entry
+     * when cmis.browser.json.streaming is enabled, optionally gzip compressed.
+     */
+    private void writeJsonResponse(HttpServletRequest request, HttpServletResponse response, Object result) throws Exception {
+        if (request != null && BrowserBindingJsonWriter.isStreamable(result) && isJsonStreamingEnabled()) {
+            writeStreamingJsonResponse(request, response, result);
+            return;
+        }
+        writeJsonResponse(response, result);
+    }
+
+    private void writeStreamingJsonResponse(HttpServletRequest request, HttpServletResponse response, Object result) throws Exception {
+        long start = System.nanoTime();
+
+        boolean gzip = acceptsGzip(request) && isJsonGzipEnabled();
+        BrowserBindingJsonWriter jsonWriter = BrowserBindingJsonWriter.stream(response, result, gzip);
+
+        if (log.isDebugEnabled()) {
+            long firstFlush = jsonWriter.getFirstFlushNanos();
+            log.debug("Streamed " + result.getClass().getSimpleName()
+                + " (gzip=" + gzip + "): first entry after "
+                + (firstFlush < 0 ? "-" : ((firstFlush - start) / 1000000) + "ms")
+                + ", total " + ((System.nanoTime() - start) / 1000000) + "ms");
+        }
+    }
+
+    private boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+    }
+
+    private boolean isJsonStreamingEnabled() {
+        jp.aegif.nemaki.util.PropertyManager propertyManager = getPropertyManager();
+        return propertyManager == null
+            || !"false".equalsIgnoreCase(propertyManager.readValue(jp.aegif.nemaki.util.constant.PropertyKey.CMIS_BROWSER_JSON_STREAMING));
+    }
+
+    private boolean isJsonGzipEnabled() {
+        jp.aegif.nemaki.util.PropertyManager propertyManager = getPropertyManager();
+        return propertyManager != null
+            && propertyManager.readBoolean(jp.aegif.nemaki.util.constant.PropertyKey.CMIS_BROWSER_JSON_GZIP);
+    }
+
+    private jp.aegif.nemaki.util.PropertyManager getPropertyManager() {
+        try {
+            org.springframework.context.ApplicationContext applicationContext =
+                jp.aegif.nemaki.util.spring.SpringContext.getApplicationContext();
+            return applicationContext == null ? null
+                : applicationContext.getBean("propertyManager", jp.aegif.nemaki.util.PropertyManager.class);
+        } catch (Exception e) {
+            log.debug("PropertyManager not available: " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Write JSON response using Browser Binding JSON format
      */
@@ -21,25 +21,35 @@
  ******************************************************************************/
 package jp.aegif.nemaki.dao;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import jp.aegif.nemaki.model.Archive;
 import jp.aegif.nemaki.model.AttachmentNode;
+import jp.aegif.nemaki.model.BulkWriteResult;
 import jp.aegif.nemaki.model.Change;
+import jp.aegif.nemaki.model.ChangeFeed;
 import jp.aegif.nemaki.model.Configuration;
 import jp.aegif.nemaki.model.Content;
+import jp.aegif.nemaki.model.ContentPage;
+import jp.aegif.nemaki.model.DirectorySyncState;
 import jp.aegif.nemaki.model.Document;
 import jp.aegif.nemaki.model.Folder;
 import jp.aegif.nemaki.model.GroupItem;
+import jp.aegif.nemaki.model.Job;
 import jp.aegif.nemaki.model.Item;
 import jp.aegif.nemaki.model.NemakiPropertyDefinitionCore;
 import jp.aegif.nemaki.model.NemakiPropertyDefinitionDetail;
 import jp.aegif.nemaki.model.NemakiTypeDefinition;
 import jp.aegif.nemaki.model.NodeBase;
 import jp.aegif.nemaki.model.PatchHistory;
+import jp.aegif.nemaki.model.ReindexCheckpoint;
 import jp.aegif.nemaki.model.Policy;
 import jp.aegif.nemaki.model.Relationship;
 import jp.aegif.nemaki.model.Rendition;
+import jp.aegif.nemaki.model.TokenRevocationList;
 import jp.aegif.nemaki.model.UserItem;
 import jp.aegif.nemaki.model.VersionSeries;
 
@@ -141,6 +151,14 @@ public interface ContentDaoService {
 	 */
 	List<NemakiPropertyDefinitionDetail> getPropertyDefinitionDetailByCoreNodeId(String repositoryId, String coreNodeId);
 
+	/**
+	 * Get a digest of the revisions of all type definitions, property definition
+	 * cores and details. It changes whenever one of them is created, updated or deleted.
+	 * @param repositoryId
+	 * @return
+	 */
+	String getTypeSystemRevision(String repositoryId);
+
 	/**
 	 * Create a user-defined property definition core
 	 * @param repositoryId TODO
@@ -187,6 +205,27 @@ public interface ContentDaoService {
 	 */
 	Content getContent(String repositoryId, String objectId);
 
+	/**
+	 * Get contents in one round trip (_all_docs?keys) instead of one GET per object.
+	 * @param repositoryId
+	 * @param objectIds
+	 *
+	 * @return contents in the order of objectIds; not found ones are left out
+	 */
+	List<Content> getContents(String repositoryId, Collection<String> objectIds);
+
+	/**
+	 * Scan the contents of the repository in object ID order (_all_docs key range).
+	 * Disjoint ranges can be scanned in parallel.
+	 * @param repositoryId
+	 * @param startKey first object ID to include. null means from the beginning
+	 * @param endKey first object ID to exclude. null means to the end
+	 * @param maxItems maximum number of database documents to read
+	 *
+	 * @return contents of the page and the key to continue from
+	 */
+	ContentPage getContentsInRange(String repositoryId, String startKey, String endKey, int maxItems);
+
 	/**
 	 * Get content by object ID, bypassing cache to get fresh database state
 	 * This method is specifically for revision-critical operations
@@ -327,6 +366,24 @@ public interface ContentDaoService {
 	 */
 	Folder getFolderByPath(String repositoryId, String path);
 
+	/**
+	 * Get ID, parent ID and name of every folder, without the rest of the folder documents
+	 * @param repositoryId
+	 * @param limit
+	 *
+	 * @return folders with only ID, parent ID and name set, or null if the repository has more than limit folders
+	 */
+	List<Folder> getFolderSkeleton(String repositoryId, int limit);
+
+	/**
+	 * Get the path of a folder
+	 * @param repositoryId
+	 * @param folderId
+	 *
+	 * @return if the folder is not found, return null
+	 */
+	String getFolderPath(String repositoryId, String folderId);
+
 	/**
 	 * Get all the contents in a folder (as contents, that is, as indices)
 	 * Documents are limited to the latest versions
@@ -337,6 +394,16 @@ public interface ContentDaoService {
 	 */
 	List<Content> getChildren(String repositoryId, String parentId);
 
+	/**
+	 * Get the children of several folders with one read
+	 * Documents are limited to the latest versions
+	 * @param repositoryId
+	 * @param parentIds
+	 *
+	 * @return children by parent ID, in the order of parentIds. A parent without children maps to an empty list
+	 */
+	Map<String, List<Content>> getChildrenOfParents(String repositoryId, Collection<String> parentIds);
+
 	/**
 	 * Get a child content by name
 	 * @param repositoryId TODO
@@ -382,6 +449,16 @@ public interface ContentDaoService {
 	 */
 	List<Relationship> getRelationshipsByTarget(String repositoryId, String targetId);
 
+	/**
+	 * Get the IDs of the relationships whose source or target is one of the objects,
+	 * with one keyed read per direction
+	 * @param repositoryId
+	 * @param objectIds
+	 *
+	 * @return relationship IDs without duplicates
+	 */
+	Set<String> getRelationshipIds(String repositoryId, Collection<String> objectIds);
+
 	/**
 	 * Get a policy
 	 * @param repositoryId TODO
@@ -586,6 +663,29 @@ public interface ContentDaoService {
 	 */
 	int deleteBulk(String repositoryId, List<String> objectIds);
 
+	/**
+	 * Delete nodes of any kind at their current revisions.
+	 * The revisions are read with one bulk read, so nothing is read per node.
+	 * Nodes that do not exist anymore count as deleted.
+	 *
+	 * @param repositoryId repository identifier
+	 * @param objectIds IDs of contents, attachments, renditions, version series etc.
+	 * @return IDs of the nodes that could not be deleted
+	 */
+	List<String> deleteNodesBulk(String repositoryId, Collection<String> objectIds);
+
+	/**
+	 * Create or update multiple nodes in bulk.
+	 * Uses CouchDB/Cloudant _bulk_docs API; large lists are split into chunks automatically.
+	 * Nodes without revision are created, nodes with revision are updated.
+	 * Change events can be passed in the same list so that they are written in the same batch.
+	 *
+	 * @param repositoryId repository identifier
+	 * @param nodes nodes to write (Content, VersionSeries, Change, etc. Archive and attachment are not supported)
+	 * @return per-node results in the same order as nodes. Conflicts are reported, not thrown.
+	 */
+	List<BulkWriteResult> bulkWrite(String repositoryId, List<? extends NodeBase> nodes);
+
 	// ///////////////////////////////////////
 	// Attachment
 	// ///////////////////////////////////////
@@ -643,6 +743,14 @@ public interface ContentDaoService {
 	 */
 	void updateAttachment(String repositoryId, AttachmentNode attachment, ContentStream contentStream);
 
+	/**
+	 * Overwrite the stored content length of an attachment, leaving its binary untouched
+	 * @param repositoryId
+	 * @param attachmentId
+	 * @param length
+	 */
+	void updateAttachmentLength(String repositoryId, String attachmentId, long length);
+
 	// ///////////////////////////////////////
 	// Change event
 	// ///////////////////////////////////////
@@ -675,6 +783,29 @@ public interface ContentDaoService {
 	 */
 	List<Change> getLatestChanges(String repositoryId, String startToken, int maxItems);
 
+	/**
+	 * Read change events from CouchDB's _changes feed.
+	 * Tokens are CouchDB update sequences, so pages never overlap or skip events
+	 * and only one page is held in memory.
+	 * @param repositoryId
+	 * @param startToken update sequence to read after. null or empty means "from the beginning"
+	 * @param maxItems "<= 0" means "infinite"
+	 * @param longPollTimeout milliseconds to wait for a new event when none is pending. 0 returns immediately
+	 *
+	 * @return change events in ascending order with the token to continue from
+	 * @throws IllegalArgumentException when startToken is not a valid update sequence
+	 */
+	ChangeFeed getChangeFeed(String repositoryId, String startToken, int maxItems, long longPollTimeout);
+
+	/**
+	 * Get the current update sequence of the repository, usable as start token of
+	 * {@link #getChangeFeed(String, String, int, long)} to read only future events
+	 * @param repositoryId
+	 *
+	 * @return null if not available
+	 */
+	String getLatestChangeLogToken(String repositoryId);
+
 	/**
 	 *
 	 * @param repositoryId
@@ -683,6 +814,122 @@ public interface ContentDaoService {
 	 */
 	List<Change> getObjectChanges(String repositoryId, String objectId);
 
+	/**
+	 * Delete change events from the repository (change log compaction/retention)
+	 * at the revisions they were read with
+	 * @param repositoryId
+	 * @param changes change events to delete
+	 * @param archive when true, the events are copied to the change log archive database
+	 *            ({@link jp.aegif.nemaki.util.constant.SystemConst#CHANGELOG_ARCHIVE_SUFFIX}) before deletion
+	 *            and only the ones copied successfully are deleted
+	 *
+	 * @return number of change events deleted
+	 */
+	int pruneChangeEvents(String repositoryId, List<Change> changes, boolean archive);
+
+	/**
+	 * Count change events in the repository
+	 * @param repositoryId
+	 *
+	 * @return -1 if not available
+	 */
+	long countChangeEvents(String repositoryId);
+
+	// ///////////////////////////////////////
+	// Reindex checkpoint
+	// ///////////////////////////////////////
+	/**
+	 * @param repositoryId
+	 *
+	 * @return null if no blue/green reindex is in progress
+	 */
+	ReindexCheckpoint getReindexCheckpoint(String repositoryId);
+
+	/**
+	 * Create or update the reindex checkpoint. The revision of the given
+	 * checkpoint is updated on success.
+	 * @param repositoryId
+	 * @param checkpoint
+	 *
+	 * @return false if the write failed (e.g. conflict)
+	 */
+	boolean saveReindexCheckpoint(String repositoryId, ReindexCheckpoint checkpoint);
+
+	/**
+	 * @param repositoryId
+	 */
+	void deleteReindexCheckpoint(String repositoryId);
+
+	// ///////////////////////////////////////
+	// Directory sync state
+	// ///////////////////////////////////////
+	/**
+	 * @param repositoryId
+	 *
+	 * @return null if the repository has not been synced with a directory yet
+	 */
+	DirectorySyncState getDirectorySyncState(String repositoryId);
+
+	/**
+	 * Create or update the directory sync state. The revision of the given
+	 * state is updated on success.
+	 * @param repositoryId
+	 * @param state
+	 *
+	 * @return false if the write failed (e.g. conflict)
+	 */
+	boolean saveDirectorySyncState(String repositoryId, DirectorySyncState state);
+
+	// ///////////////////////////////////////
+	// Auth token revocations
+	// ///////////////////////////////////////
+	/**
+	 * @param repositoryId
+	 *
+	 * @return null if no token has been revoked in the repository yet
+	 * @throws RuntimeException if the list cannot be read
+	 */
+	TokenRevocationList getTokenRevocationList(String repositoryId);
+
+	/**
+	 * Create or update the token revocation list. The revision of the given
+	 * list is updated on success.
+	 * @param repositoryId
+	 * @param list
+	 *
+	 * @return false if the write failed (e.g. conflict)
+	 */
+	boolean saveTokenRevocationList(String repositoryId, TokenRevocationList list);
+
+	// ///////////////////////////////////////
+	// Background jobs
+	// ///////////////////////////////////////
+	/**
+	 * @param repositoryId
+	 * @param jobId
+	 *
+	 * @return null if there is no such job
+	 */
+	Job getJob(String repositoryId, String jobId);
+
+	/**
+	 * @param repositoryId
+	 * @param maxItems
+	 *
+	 * @return jobs of the repository in ID order
+	 */
+	List<Job> getJobs(String repositoryId, int maxItems);
+
+	/**
+	 * Create or update a job. A job without ID is given a new one. The ID and
+	 * revision of the given job are updated on success.
+	 * @param repositoryId
+	 * @param job
+	 *
+	 * @return false if the write failed (e.g. conflict)
+	 */
+	boolean saveJob(String repositoryId, Job job);
+
 	/**
 	 * Create a change event
 	 * @param repositoryId TODO
@@ -760,6 +1007,16 @@ public interface ContentDaoService {
 	 */
 	Archive createArchive(String repositoryId, Archive archive, Boolean deleteWithParent);
 
+	/**
+	 * Create archives in bulk (_bulk_docs on the archive database)
+	 * An archive without lastRevision gets the current revision of its original node.
+	 * Each archive written gets the ID and revision it was written with.
+	 * @param repositoryId
+	 * @param archives
+	 * @return original IDs of the archives that could not be written
+	 */
+	List<String> createArchivesBulk(String repositoryId, List<Archive> archives);
+
 	/**
 	 * Create an archive of an attachment
 	 * @param repositoryId TODO
@@ -777,6 +1034,15 @@ public interface ContentDaoService {
 	 */
 	String deleteArchive(String repositoryId, String archiveId);
 
+	/**
+	 * Delete multiple archives in bulk (_bulk_docs on the archive database) at
+	 * the revisions they were read with
+	 * @param repositoryId
+	 * @param archives
+	 * @return number of successfully deleted archives
+	 */
+	int deleteArchivesBulk(String repositoryId, List<Archive> archives);
+
 	void deleteDocumentArchive(String repositoryId, String archiveId);
 
 	void refreshCmisObjectData(String repositoryId, String objectId);
@@ -798,10 +1064,21 @@ public interface ContentDaoService {
 	void restoreDocumentWithArchive(String repositoryId, Archive archive);
 
 	/**
-	 * Get the actual attachment size from CouchDB _attachments metadata
+	 * Get the actual attachment size by reading the stored binary.
+	 * This downloads the whole attachment: use the stored length for normal reads.
 	 * @param repositoryId Repository ID
 	 * @param attachmentId Attachment node ID
-	 * @return Actual size in bytes from CouchDB attachment metadata, or null if not available
+	 * @return Actual size in bytes, or null if not available
 	 */
 	Long getAttachmentActualSize(String repositoryId, String attachmentId);
+
+	/**
+	 * Page through documents by ID, returning only their attachment IDs
+	 * @param repositoryId
+	 * @param startAfter document ID to continue after, or null to start from the first document
+	 * @param limit
+	 *
+	 * @return attachment IDs keyed by document ID, in document ID order
+	 */
+	Map<String, String> getAttachmentIdsOfDocuments(String repositoryId, String startAfter, int limit);
 }
@@ -24,12 +24,18 @@ package jp.aegif.nemaki.dao.impl.cached;
 import java.text.MessageFormat;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Deque;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.chemistry.opencmis.commons.data.ContentStream;
@@ -41,24 +47,32 @@ import org.springframework.util.CollectionUtils;
 import jp.aegif.nemaki.dao.ContentDaoService;
 import jp.aegif.nemaki.model.Archive;
 import jp.aegif.nemaki.model.AttachmentNode;
+import jp.aegif.nemaki.model.BulkWriteResult;
 import jp.aegif.nemaki.model.Change;
+import jp.aegif.nemaki.model.ChangeFeed;
 import jp.aegif.nemaki.model.Configuration;
 import jp.aegif.nemaki.model.Content;
+import jp.aegif.nemaki.model.ContentPage;
+import jp.aegif.nemaki.model.DirectorySyncState;
 import jp.aegif.nemaki.model.Document;
 import jp.aegif.nemaki.model.Folder;
 import jp.aegif.nemaki.model.GroupItem;
+import jp.aegif.nemaki.model.Job;
 import jp.aegif.nemaki.model.Item;
 import jp.aegif.nemaki.model.NemakiPropertyDefinitionCore;
 import jp.aegif.nemaki.model.NemakiPropertyDefinitionDetail;
 import jp.aegif.nemaki.model.NemakiTypeDefinition;
 import jp.aegif.nemaki.model.NodeBase;
 import jp.aegif.nemaki.model.PatchHistory;
+import jp.aegif.nemaki.model.ReindexCheckpoint;
 import jp.aegif.nemaki.model.Policy;
 import jp.aegif.nemaki.model.Relationship;
 import jp.aegif.nemaki.model.Rendition;
+import jp.aegif.nemaki.model.TokenRevocationList;
 import jp.aegif.nemaki.model.UserItem;
 import jp.aegif.nemaki.model.VersionSeries;
 import jp.aegif.nemaki.util.cache.NemakiCachePool;
+import jp.aegif.nemaki.util.cache.model.FolderPathIndex;
 import jp.aegif.nemaki.util.cache.model.NemakiCache;
 import jp.aegif.nemaki.util.cache.model.Tree;
 import net.sf.ehcache.Element;
@@ -268,6 +282,11 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		return nonCachedContentDaoService.getPropertyDefinitionDetailByCoreNodeId(repositoryId, coreNodeId);
 	}
 
+	@Override
+	public String getTypeSystemRevision(String repositoryId) {
+		return nonCachedContentDaoService.getTypeSystemRevision(repositoryId);
+	}
+
 	@Override
 	public NemakiPropertyDefinitionCore createPropertyDefinitionCore(String repositoryId,
 			NemakiPropertyDefinitionCore propertyDefinitionCore) {
@@ -362,6 +381,54 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		}
 	}
 
+	/**
+	 * Serve cache hits and fetch all misses with one bulk get
+	 */
+	@Override
+	public List<Content> getContents(String repositoryId, Collection<String> objectIds) {
+		List<Content> result = new ArrayList<Content>();
+		if (objectIds == null || objectIds.isEmpty()) {
+			return result;
+		}
+
+		NemakiCache<Content> contentCache = nemakiCachePool.get(repositoryId).getContentCache();
+		Map<String, Content> found = new LinkedHashMap<String, Content>();
+		List<String> misses = new ArrayList<String>();
+		for (String objectId : objectIds) {
+			if (objectId == null || found.containsKey(objectId)) {
+				continue;
+			}
+			Content v = contentCache.get(objectId);
+			found.put(objectId, v);
+			if (v == null) {
+				misses.add(objectId);
+			}
+		}
+
+		if (!misses.isEmpty()) {
+			if (log.isDebugEnabled()) {
+				log.debug("CACHE MISS: " + misses.size() + " of " + found.size() + " contents, fetching in bulk");
+			}
+			for (Content content : nonCachedContentDaoService.getContents(repositoryId, misses)) {
+				found.put(content.getId(), content);
+				contentCache.put(new Element(content.getId(), content));
+			}
+		}
+
+		for (Content content : found.values()) {
+			if (content != null) {
+				result.add(content);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public ContentPage getContentsInRange(String repositoryId, String startKey, String endKey, int maxItems) {
+		// Scans touch every object once; do not let them evict the working set
+		return nonCachedContentDaoService.getContentsInRange(repositoryId, startKey, endKey, maxItems);
+	}
+
 	@Override
 	public Content getContentFresh(String repositoryId, String objectId) {
 		// Bypass cache and get fresh content directly from database
@@ -599,27 +666,122 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		return nonCachedContentDaoService.getFolderByPath(repositoryId, path);
 	}
 
+	@Override
+	public List<Folder> getFolderSkeleton(String repositoryId, int limit) {
+		return nonCachedContentDaoService.getFolderSkeleton(repositoryId, limit);
+	}
+
+	@Override
+	public String getFolderPath(String repositoryId, String folderId) {
+		return getFolderPathIndex(repositoryId).getPath(folderId, id -> getFolder(repositoryId, id));
+	}
+
+	/**
+	 * The path index of a repository, filled from the folderNames view when first used.
+	 * The first caller reads the view; the others go on with what the index holds.
+	 */
+	private FolderPathIndex getFolderPathIndex(String repositoryId) {
+		FolderPathIndex index = nemakiCachePool.get(repositoryId).getFolderPathIndex();
+		if (!index.isLoadStarted()) {
+			try {
+				int loaded = index.load(() -> nonCachedContentDaoService.getFolderSkeleton(repositoryId,
+						index.getMaxSize()));
+				if (loaded >= 0) {
+					log.info("Folder path index of repository " + repositoryId + " loaded with " + loaded
+							+ " folders");
+				}
+			} catch (Exception e) {
+				log.warn("Folder path index of repository " + repositoryId + " could not be loaded: " + e.getMessage());
+			}
+		}
+		return index;
+	}
+
 	@Override
 	public List<Content> getChildren(String repositoryId, String parentId) {
 		if(nemakiCachePool.get(repositoryId).getTreeCache().isCacheEnabled()){
-			List<Content> result = new ArrayList<Content>();
 			Tree tree = getOrCreateTreeCache(repositoryId, parentId);
-			Set<String> children = tree.getChildren();
-			for(String childId : children){
-				Content content = getContent(repositoryId, childId);
-				if(content != null){
-					result.add(content);
-				}
-			}
-			return result;
+			return getContents(repositoryId, tree.getChildren());
 		}else{
 			return nonCachedContentDaoService.getChildren(repositoryId, parentId);
 		}
 	}
 
+	@Override
+	public Map<String, List<Content>> getChildrenOfParents(String repositoryId, Collection<String> parentIds) {
+		if (!nemakiCachePool.get(repositoryId).getTreeCache().isCacheEnabled()) {
+			return nonCachedContentDaoService.getChildrenOfParents(repositoryId, parentIds);
+		}
+		Map<String, List<Content>> result = new LinkedHashMap<String, List<Content>>();
+		if (parentIds == null || parentIds.isEmpty()) {
+			return result;
+		}
+
+		// Child IDs from the tree cache; the folders it misses are read together
+		NemakiCache<Tree> treeCache = nemakiCachePool.get(repositoryId).getTreeCache();
+		Map<String, Tree> trees = new LinkedHashMap<String, Tree>();
+		List<String> misses = new ArrayList<String>();
+		for (String parentId : parentIds) {
+			Tree tree = treeCache.get(parentId);
+			trees.put(parentId, tree);
+			if (tree == null) {
+				misses.add(parentId);
+			}
+		}
+		if (!misses.isEmpty()) {
+			Map<String, List<Content>> read = nonCachedContentDaoService.getChildrenOfParents(repositoryId, misses);
+			for (Map.Entry<String, List<Content>> entry : read.entrySet()) {
+				Tree tree = new Tree(entry.getKey());
+				tree.setChildren(entry.getValue());
+				treeCache.put(tree.getParent(), tree);
+				trees.put(entry.getKey(), tree);
+			}
+		}
+
+		// Hydrate all the children with one bulk read
+		Set<String> childIds = new LinkedHashSet<String>();
+		for (Tree tree : trees.values()) {
+			if (tree != null) {
+				childIds.addAll(tree.getChildren());
+			}
+		}
+		Map<String, Content> contents = new HashMap<String, Content>();
+		for (Content content : getContents(repositoryId, childIds)) {
+			contents.put(content.getId(), content);
+		}
+		for (Map.Entry<String, Tree> entry : trees.entrySet()) {
+			List<Content> children = new ArrayList<Content>();
+			if (entry.getValue() != null) {
+				for (String childId : entry.getValue().getChildren()) {
+					Content child = contents.get(childId);
+					if (child != null) {
+						children.add(child);
+					}
+				}
+			}
+			result.put(entry.getKey(), children);
+		}
+		return result;
+	}
+
 	@Override
 	public Content getChildByName(String repositoryId, String parentId, String name) {
-		return nonCachedContentDaoService.getChildByName(repositoryId, parentId, name);
+		FolderPathIndex index = getFolderPathIndex(repositoryId);
+		String folderId = index.getChildId(parentId, name);
+		if (folderId != null) {
+			// The index may lag a concurrent rename or move by a moment
+			Folder folder = getFolder(repositoryId, folderId);
+			if (folder != null && name.equals(folder.getName()) && parentId.equals(folder.getParentId())) {
+				return folder;
+			}
+			index.remove(folderId);
+		}
+
+		Content child = nonCachedContentDaoService.getChildByName(repositoryId, parentId, name);
+		if (child instanceof Folder) {
+			index.put((Folder) child);
+		}
+		return child;
 	}
 
 	@Override
@@ -651,6 +813,11 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		return nonCachedContentDaoService.getRelationshipsByTarget(repositoryId, targetId);
 	}
 
+	@Override
+	public Set<String> getRelationshipIds(String repositoryId, Collection<String> objectIds) {
+		return nonCachedContentDaoService.getRelationshipIds(repositoryId, objectIds);
+	}
+
 	@Override
 	public Policy getPolicy(String repositoryId, String objectId) {
 		return nonCachedContentDaoService.getPolicy(repositoryId, objectId);
@@ -658,7 +825,17 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 
 	@Override
 	public List<Policy> getAppliedPolicies(String repositoryId, String objectId) {
-		return nonCachedContentDaoService.getAppliedPolicies(repositoryId, objectId);
+		List<Policy> policies = nonCachedContentDaoService.getAppliedPolicies(repositoryId, objectId);
+		// The view query already returns the documents, keep them for later getContent calls
+		if (policies != null && !policies.isEmpty()) {
+			NemakiCache<Content> contentCache = nemakiCachePool.get(repositoryId).getContentCache();
+			for (Policy policy : policies) {
+				if (policy.getId() != null) {
+					contentCache.put(new Element(policy.getId(), policy));
+				}
+			}
+		}
+		return policies;
 	}
 
 	@Override
@@ -849,9 +1026,7 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 			List<Content> list = nonCachedContentDaoService.getChildren(repositoryId, parentId);
 			tree = new Tree(parentId);
 			if(org.apache.commons.collections4.CollectionUtils.isNotEmpty(list)){
-				for(Content child : list){
-					tree.add(child.getId());
-				}
+				tree.setChildren(list);
 			}
 			treeCache.put(tree.getParent(), tree);
 		}
@@ -896,7 +1071,7 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 							log.debug("DEBUG: Processing version with ID: " + (version != null ? version.getId() : "null"));
 							// CRITICAL FIX: Check if version ID is null before comparison
 							if(version.getId() != null && version.getId().equals(doc.getId())){
-								tree.add(doc.getId());
+								tree.add(doc.getId(), doc.getName());
 								log.debug("DEBUG: Added doc ID to tree: " + doc.getId());
 							}else if(version.getId() != null){
 								tree.remove(version.getId());
@@ -911,7 +1086,18 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 				}
 			}
 		}else if(content instanceof Folder || content instanceof Item){
-			tree.add(content.getId());
+			tree.add(content.getId(), content.getName());
+		}
+	}
+
+	private void renameInTreeCache(String repositoryId, Content content){
+		NemakiCache<Tree> cache = nemakiCachePool.get(repositoryId).getTreeCache();
+		if(!cache.isCacheEnabled() || content.getParentId() == null){
+			return;
+		}
+		Tree tree = cache.get(content.getParentId());
+		if(tree != null){
+			tree.rename(content.getId(), content.getName());
 		}
 	}
 
@@ -985,6 +1171,7 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		Folder created = nonCachedContentDaoService.create(repositoryId, folder);
 		nemakiCachePool.get(repositoryId).getContentCache().put(new Element(created.getId(), created));
 		addToTreeCache(repositoryId, created);
+		getFolderPathIndex(repositoryId).put(created);
 
 		return created;
 	}
@@ -1056,6 +1243,7 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		Document updated = nonCachedContentDaoService.update(repositoryId, document);
 		nemakiCachePool.get(repositoryId).getContentCache().put(new Element(updated.getId(), updated));
 		nemakiCachePool.get(repositoryId).getObjectDataCache().remove(updated.getId());
+		renameInTreeCache(repositoryId, updated);
 
 		return updated;
 	}
@@ -1084,6 +1272,8 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		Folder updated = nonCachedContentDaoService.update(repositoryId, folder);
 		nemakiCachePool.get(repositoryId).getContentCache().put(new Element(updated.getId(), updated));
 		nemakiCachePool.get(repositoryId).getObjectDataCache().remove(updated.getId());
+		getFolderPathIndex(repositoryId).put(updated);
+		renameInTreeCache(repositoryId, updated);
 
 		return updated;
 	}
@@ -1136,6 +1326,7 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		Item updated = nonCachedContentDaoService.update(repositoryId, item);
 		nemakiCachePool.get(repositoryId).getContentCache().put(updated.getId(), updated);
 		nemakiCachePool.get(repositoryId).getObjectDataCache().remove(updated.getId());
+		renameInTreeCache(repositoryId, updated);
 		return updated;
 	}
 
@@ -1393,6 +1584,7 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 				nemakiCachePool.get(repositoryId).getObjectDataCache().remove(objectId);
 				nemakiCachePool.get(repositoryId).getAclCache().remove(objectId);
 				if(tree != null)tree.remove(objectId);
+				if(nb.isFolder())getFolderPathIndex(repositoryId).remove(objectId);
 			}
 		}else{
 			//DOCUMENT case - remove from cache first
@@ -1459,6 +1651,7 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 				nemakiCachePool.get(repositoryId).getObjectDataCache().remove(objectId);
 				nemakiCachePool.get(repositoryId).getAclCache().remove(objectId);
 				if(tree != null)tree.remove(objectId);
+				if(nb.isFolder())getFolderPathIndex(repositoryId).remove(objectId);
 			}
 		}else{
 			//DOCUMENT case - remove from cache first
@@ -1498,6 +1691,9 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 					nemakiCachePool.get(repositoryId).getContentCache().remove(objectId);
 					nemakiCachePool.get(repositoryId).getObjectDataCache().remove(objectId);
 					nemakiCachePool.get(repositoryId).getAclCache().remove(objectId);
+					if (nb.isFolder()) {
+						getFolderPathIndex(repositoryId).remove(objectId);
+					}
 
 					if (nb.isDocument()) {
 						Document doc = (Document) getDocument(repositoryId, objectId);
@@ -1516,6 +1712,89 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		return nonCachedContentDaoService.deleteBulk(repositoryId, objectIds);
 	}
 
+	@Override
+	public List<String> deleteNodesBulk(String repositoryId, Collection<String> objectIds) {
+		if (objectIds == null || objectIds.isEmpty()) {
+			return new ArrayList<String>();
+		}
+
+		// Evict by ID without reading the nodes: whatever an ID was, it must not be cached anymore.
+		// A deleted folder loses its own child list; the callers clear the lists of surviving parents.
+		FolderPathIndex pathIndex = getFolderPathIndex(repositoryId);
+		for (String objectId : objectIds) {
+			nemakiCachePool.get(repositoryId).getContentCache().remove(objectId);
+			nemakiCachePool.get(repositoryId).getObjectDataCache().remove(objectId);
+			nemakiCachePool.get(repositoryId).getAclCache().remove(objectId);
+			nemakiCachePool.get(repositoryId).getAttachmentCache().remove(objectId);
+			nemakiCachePool.get(repositoryId).getVersionSeriesCache().remove(objectId);
+			nemakiCachePool.get(repositoryId).getTreeCache().remove(objectId);
+			pathIndex.remove(objectId);
+		}
+
+		return nonCachedContentDaoService.deleteNodesBulk(repositoryId, objectIds);
+	}
+
+	@Override
+	public List<BulkWriteResult> bulkWrite(String repositoryId, List<? extends NodeBase> nodes) {
+		if (nodes == null || nodes.isEmpty()) {
+			return new ArrayList<BulkWriteResult>();
+		}
+
+		// Remember which nodes are new before the DAO layer assigns id/revision
+		Set<NodeBase> newNodes = Collections.newSetFromMap(new IdentityHashMap<NodeBase, Boolean>());
+		for (NodeBase node : nodes) {
+			if (node.getRevision() == null || node.getRevision().isEmpty()) {
+				newNodes.add(node);
+			}
+		}
+
+		List<BulkWriteResult> results = nonCachedContentDaoService.bulkWrite(repositoryId, nodes);
+
+		boolean changeWritten = false;
+		for (BulkWriteResult result : results) {
+			if (!result.isOk()) {
+				continue;
+			}
+			NodeBase node = result.getNode();
+			if (node instanceof Change) {
+				changeWritten = true;
+			} else if (node instanceof Content) {
+				Content content = (Content) node;
+				nemakiCachePool.get(repositoryId).getContentCache().put(new Element(content.getId(), content));
+				nemakiCachePool.get(repositoryId).getObjectDataCache().remove(content.getId());
+				if (content instanceof UserItem) {
+					UserItem userItem = (UserItem) content;
+					nemakiCachePool.get(repositoryId).getUserItemCache().put(userItem.getUserId(), userItem);
+				} else if (content instanceof GroupItem) {
+					GroupItem groupItem = (GroupItem) content;
+					nemakiCachePool.get(repositoryId).getGroupItemCache().put(groupItem.getGroupId(), groupItem);
+				}
+				// Relationships and policies have no parent and are not part of the tree
+				if (content.getParentId() == null) {
+					// nothing to do
+				} else if (newNodes.contains(node)) {
+					addToTreeCache(repositoryId, content);
+				} else {
+					renameInTreeCache(repositoryId, content);
+				}
+				if (content instanceof Folder) {
+					getFolderPathIndex(repositoryId).put((Folder) content);
+				}
+			} else if (node instanceof VersionSeries) {
+				nemakiCachePool.get(repositoryId).getVersionSeriesCache().put(new Element(node.getId(), node));
+			}
+		}
+
+		if (changeWritten) {
+			Change latest = nonCachedContentDaoService.getLatestChange(repositoryId);
+			nemakiCachePool.get(repositoryId).getLatestChangeTokenCache().removeAll();
+			nemakiCachePool.get(repositoryId).getLatestChangeTokenCache()
+					.put(new Element(TOKEN_CACHE_LATEST_CHANGE_TOKEN, latest));
+		}
+
+		return results;
+	}
+
 	// ///////////////////////////////////////
 	// Attachment
 	// ///////////////////////////////////////
@@ -1577,6 +1856,12 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		nonCachedContentDaoService.updateAttachment(repositoryId, attachment, contentStream);
 	}
 
+	@Override
+	public void updateAttachmentLength(String repositoryId, String attachmentId, long length) {
+		nemakiCachePool.get(repositoryId).getAttachmentCache().remove(attachmentId);
+		nonCachedContentDaoService.updateAttachmentLength(repositoryId, attachmentId, length);
+	}
+
 	// //////////////////////////////////////////////////////////////////////////////
 	// Change events
 	// //////////////////////////////////////////////////////////////////////////////
@@ -1611,6 +1896,81 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		return nonCachedContentDaoService.getLatestChanges(repositoryId, startToken, maxItems);
 	}
 
+	@Override
+	public ChangeFeed getChangeFeed(String repositoryId, String startToken, int maxItems, long longPollTimeout) {
+		return nonCachedContentDaoService.getChangeFeed(repositoryId, startToken, maxItems, longPollTimeout);
+	}
+
+	@Override
+	public String getLatestChangeLogToken(String repositoryId) {
+		return nonCachedContentDaoService.getLatestChangeLogToken(repositoryId);
+	}
+
+	@Override
+	public int pruneChangeEvents(String repositoryId, List<Change> changes, boolean archive) {
+		int deleted = nonCachedContentDaoService.pruneChangeEvents(repositoryId, changes, archive);
+		if (deleted > 0) {
+			// The cached latest change may have been pruned
+			nemakiCachePool.get(repositoryId).getLatestChangeTokenCache().removeAll();
+		}
+		return deleted;
+	}
+
+	@Override
+	public long countChangeEvents(String repositoryId) {
+		return nonCachedContentDaoService.countChangeEvents(repositoryId);
+	}
+
+	@Override
+	public ReindexCheckpoint getReindexCheckpoint(String repositoryId) {
+		return nonCachedContentDaoService.getReindexCheckpoint(repositoryId);
+	}
+
+	@Override
+	public boolean saveReindexCheckpoint(String repositoryId, ReindexCheckpoint checkpoint) {
+		return nonCachedContentDaoService.saveReindexCheckpoint(repositoryId, checkpoint);
+	}
+
+	@Override
+	public void deleteReindexCheckpoint(String repositoryId) {
+		nonCachedContentDaoService.deleteReindexCheckpoint(repositoryId);
+	}
+
+	@Override
+	public DirectorySyncState getDirectorySyncState(String repositoryId) {
+		return nonCachedContentDaoService.getDirectorySyncState(repositoryId);
+	}
+
+	@Override
+	public boolean saveDirectorySyncState(String repositoryId, DirectorySyncState state) {
+		return nonCachedContentDaoService.saveDirectorySyncState(repositoryId, state);
+	}
+
+	@Override
+	public TokenRevocationList getTokenRevocationList(String repositoryId) {
+		return nonCachedContentDaoService.getTokenRevocationList(repositoryId);
+	}
+
+	@Override
+	public boolean saveTokenRevocationList(String repositoryId, TokenRevocationList list) {
+		return nonCachedContentDaoService.saveTokenRevocationList(repositoryId, list);
+	}
+
+	@Override
+	public Job getJob(String repositoryId, String jobId) {
+		return nonCachedContentDaoService.getJob(repositoryId, jobId);
+	}
+
+	@Override
+	public List<Job> getJobs(String repositoryId, int maxItems) {
+		return nonCachedContentDaoService.getJobs(repositoryId, maxItems);
+	}
+
+	@Override
+	public boolean saveJob(String repositoryId, Job job) {
+		return nonCachedContentDaoService.saveJob(repositoryId, job);
+	}
+
 	@Override
 	public List<Change> getObjectChanges(String repositoryId, String objectId) {
 		return nonCachedContentDaoService.getObjectChanges(repositoryId, objectId);
@@ -1659,6 +2019,11 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		return nonCachedContentDaoService.createArchive(repositoryId, archive, deletedWithParent);
 	}
 
+	@Override
+	public List<String> createArchivesBulk(String repositoryId, List<Archive> archives) {
+		return nonCachedContentDaoService.createArchivesBulk(repositoryId, archives);
+	}
+
 	@Override
 	public Archive createAttachmentArchive(String repositoryId, Archive archive) {
 		return nonCachedContentDaoService.createAttachmentArchive(repositoryId, archive);
@@ -1669,6 +2034,11 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		return nonCachedContentDaoService.deleteArchive(repositoryId, archiveId);
 	}
 
+	@Override
+	public int deleteArchivesBulk(String repositoryId, List<Archive> archives) {
+		return nonCachedContentDaoService.deleteArchivesBulk(repositoryId, archives);
+	}
+
 	@Override
 	public void deleteDocumentArchive(String repositoryId, String archiveId) {
 		nonCachedContentDaoService.deleteDocumentArchive(repositoryId, archiveId);
@@ -1724,4 +2094,9 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		return nonCachedContentDaoService.getAttachmentActualSize(repositoryId, attachmentId);
 	}
 
+	@Override
+	public Map<String, String> getAttachmentIdsOfDocuments(String repositoryId, String startAfter, int limit) {
+		return nonCachedContentDaoService.getAttachmentIdsOfDocuments(repositoryId, startAfter, limit);
+	}
+
 }
@@ -22,20 +22,39 @@
 package jp.aegif.nemaki.dao.impl.couch;
 
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 
 import org.apache.chemistry.opencmis.commons.data.ContentStream;
 import org.apache.chemistry.opencmis.commons.definitions.TypeDefinition;
 import org.apache.chemistry.opencmis.commons.definitions.TypeDefinitionContainer;
 import org.apache.chemistry.opencmis.commons.enums.BaseTypeId;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import com.ibm.cloud.cloudant.v1.model.AllDocsResult;
+import com.ibm.cloud.cloudant.v1.model.ChangesResult;
+import com.ibm.cloud.cloudant.v1.model.ChangesResultItem;
+import com.ibm.cloud.cloudant.v1.model.DatabaseInformation;
+import com.ibm.cloud.cloudant.v1.model.DocsResultRow;
+import com.ibm.cloud.cloudant.v1.model.DocumentResult;
 import com.ibm.cloud.cloudant.v1.model.ViewResult;
 import com.ibm.cloud.cloudant.v1.model.ViewResultRow;
 import org.springframework.stereotype.Component;
@@ -45,6 +64,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.ibm.cloud.sdk.core.service.exception.BadRequestException;
 import com.ibm.cloud.sdk.core.service.exception.NotFoundException;
 import com.ibm.cloud.sdk.core.service.exception.ServiceResponseException;
 
@@ -57,21 +77,28 @@ import jp.aegif.nemaki.model.couch.CouchContent;
 import jp.aegif.nemaki.model.couch.CouchDocument;
 import jp.aegif.nemaki.model.couch.CouchFolder;
 import jp.aegif.nemaki.model.AttachmentNode;
+import jp.aegif.nemaki.model.BulkWriteResult;
 import jp.aegif.nemaki.model.Change;
+import jp.aegif.nemaki.model.ChangeFeed;
 import jp.aegif.nemaki.model.Configuration;
 import jp.aegif.nemaki.model.Content;
+import jp.aegif.nemaki.model.ContentPage;
+import jp.aegif.nemaki.model.DirectorySyncState;
 import jp.aegif.nemaki.model.Document;
 import jp.aegif.nemaki.model.Folder;
 import jp.aegif.nemaki.model.GroupItem;
+import jp.aegif.nemaki.model.Job;
 import jp.aegif.nemaki.model.Item;
 import jp.aegif.nemaki.model.NemakiPropertyDefinitionCore;
 import jp.aegif.nemaki.model.NemakiPropertyDefinitionDetail;
 import jp.aegif.nemaki.model.NemakiTypeDefinition;
 import jp.aegif.nemaki.model.NodeBase;
 import jp.aegif.nemaki.model.PatchHistory;
+import jp.aegif.nemaki.model.ReindexCheckpoint;
 import jp.aegif.nemaki.model.Policy;
 import jp.aegif.nemaki.model.Relationship;
 import jp.aegif.nemaki.model.Rendition;
+import jp.aegif.nemaki.model.TokenRevocationList;
 import jp.aegif.nemaki.model.UserItem;
 import jp.aegif.nemaki.model.VersionSeries;
 import jp.aegif.nemaki.model.couch.CouchArchive;
@@ -94,6 +121,8 @@ import jp.aegif.nemaki.model.couch.CouchTypeDefinition;
 import jp.aegif.nemaki.model.couch.CouchUserItem;
 import jp.aegif.nemaki.model.couch.CouchVersionSeries;
 import jp.aegif.nemaki.cmis.aspect.type.TypeManager;
+import jp.aegif.nemaki.util.constant.NodeType;
+import jp.aegif.nemaki.util.constant.SystemConst;
 import jp.aegif.nemaki.util.spring.SpringContext;
 
 /**
@@ -112,6 +141,18 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 
 	private static final String DESIGN_DOCUMENT = "_design/_repo";
 	private static final String ATTACHMENT_NAME = "content";
+	private static final String REINDEX_CHECKPOINT_ID = "reindexCheckpoint";
+	private static final String REINDEX_CHECKPOINT_TYPE = "reindexCheckpoint";
+	private static final String DIRECTORY_SYNC_STATE_ID = "directorySyncState";
+	private static final String DIRECTORY_SYNC_STATE_TYPE = "directorySyncState";
+	private static final String DIRECTORY_SYNC_CHUNK_TYPE = "directorySyncStateChunk";
+	private static final int DIRECTORY_SYNC_CHUNK_SIZE = 1000;
+	private static final String TOKEN_REVOCATION_LIST_ID = "tokenRevocationList";
+	private static final String TOKEN_REVOCATION_LIST_TYPE = "tokenRevocationList";
+	private static final String JOB_TYPE = "job";
+	private static final String JOB_ID_PREFIX = "job:";
+	// First ID after all the job IDs
+	private static final String JOB_ID_END = "job;";
 
 	public ContentDaoServiceImpl() {
 
@@ -697,6 +738,37 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		}
 	}
 
+	@Override
+	public String getTypeSystemRevision(String repositoryId) {
+		CloudantClientWrapper client = connectorPool.getClient(repositoryId);
+		List<String> revisions = new ArrayList<String>();
+		for (String view : new String[] { "typeDefinitions", "propertyDefinitionCores", "propertyDefinitionDetails" }) {
+			// The views emit the whole document, so the revision is in the value
+			Map<String, Object> queryParams = new HashMap<String, Object>();
+			queryParams.put("include_docs", false);
+			ViewResult result = client.queryView("_repo", view, queryParams);
+			if (result == null || result.getRows() == null) {
+				continue;
+			}
+			for (ViewResultRow row : result.getRows()) {
+				Object rev = row.getValue() instanceof Map ? ((Map<?, ?>) row.getValue()).get("_rev") : null;
+				revisions.add(row.getId() + ":" + rev);
+			}
+		}
+		Collections.sort(revisions);
+
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (String revision : revisions) {
+				digest.update(revision.getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) '\n');
+			}
+			return Hex.encodeHexString(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
 	@Override
 	public NemakiPropertyDefinitionCore createPropertyDefinitionCore(String repositoryId,
 			NemakiPropertyDefinitionCore propertyDefinitionCore) {
@@ -775,246 +847,329 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 			
 			log.info("Document retrieved successfully: " + objectId);
 			
-			// CRITICAL FIX: Use Cloudant SDK Document.get() method for direct field access
-			// CouchDB document contains type/objectType fields but ObjectMapper conversion loses them
-			log.info("CLOUDANT FIX: Using Document.get() for direct field access");
-			
-			// Create document map by directly accessing fields from Cloudant Document
-			Map<String, Object> actualDocMap = new HashMap<>();
-			
-			// Copy standard document fields
-			actualDocMap.put("_id", doc.getId());
-			actualDocMap.put("_rev", doc.getRev());
-			
-			// Use Document.get() to access custom fields that ObjectMapper loses
-			String type = (String) doc.get("type");
-			String objectType = (String) doc.get("objectType");
-			String name = (String) doc.get("name");
-			String creator = (String) doc.get("creator");
-			String modifier = (String) doc.get("modifier");
-			// CRITICAL TCK FIX (2025-11-03): Keep date fields as original type (numeric or string)
-			// Do NOT convert to String - let CouchNodeBase.parseDateTime() handle the conversion
-			// CouchDB stores timestamps as numbers, but Cloudant SDK may return as strings
-			Object created = doc.get("created");
-			Object modified = doc.get("modified");
-			String changeToken = (String) doc.get("changeToken");
-
-			// CRITICAL TCK FIX (2025-11-03): Convert Gson LazilyParsedNumber to Long for Jackson compatibility
-			// LazilyParsedNumber is a Gson internal class that Jackson cannot deserialize properly
-			if (created != null && created.getClass().getName().contains("LazilyParsedNumber")) {
-				created = ((Number) created).longValue();
-			}
-			if (modified != null && modified.getClass().getName().contains("LazilyParsedNumber")) {
-				modified = ((Number) modified).longValue();
-			}
-
-			log.info("CLOUDANT FIX: Direct field access results:");
-			log.info("  - type: " + type);
-			log.info("  - objectType: " + objectType);
-			log.info("  - name: " + name);
-			
-			// Add all accessible fields to the map
-			if (type != null) actualDocMap.put("type", type);
-			if (objectType != null) actualDocMap.put("objectType", objectType);
-			if (name != null) actualDocMap.put("name", name);
-			if (creator != null) actualDocMap.put("creator", creator);
-			if (modifier != null) actualDocMap.put("modifier", modifier);
-			if (created != null) actualDocMap.put("created", created);
-			if (modified != null) actualDocMap.put("modified", modified);
-			if (changeToken != null) actualDocMap.put("changeToken", changeToken);
-			
-			// Also try to get additional fields using getProperties() as fallback
-			try {
-				Map<String, Object> properties = doc.getProperties();
-				if (properties != null && !properties.isEmpty()) {
-					log.info("CLOUDANT FIX: Adding " + properties.size() + " properties from getProperties()");
-					// Only add properties that aren't already in actualDocMap
-					for (Map.Entry<String, Object> entry : properties.entrySet()) {
-						if (!actualDocMap.containsKey(entry.getKey())) {
-							actualDocMap.put(entry.getKey(), entry.getValue());
-						}
-					}
+			return convertToContent(doc, createConfiguredObjectMapper());
+		} catch (Exception e) {
+			log.error("ERROR in getContent for " + objectId + " in repository " + repositoryId + ": " + e.getMessage(), e);
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	@Override
+	public List<Content> getContents(String repositoryId, Collection<String> objectIds) {
+		List<Content> result = new ArrayList<Content>();
+		if (objectIds == null || objectIds.isEmpty()) {
+			return result;
+		}
+
+		Map<String, com.ibm.cloud.cloudant.v1.model.Document> docs;
+		try {
+			docs = connectorPool.getClient(repositoryId).getDocuments(objectIds);
+		} catch (Exception e) {
+			log.warn("Bulk get failed in repository " + repositoryId + ", falling back to single gets: " + e.getMessage());
+			for (String objectId : new LinkedHashSet<String>(objectIds)) {
+				Content content = getContent(repositoryId, objectId);
+				if (content != null) {
+					result.add(content);
 				}
+			}
+			return result;
+		}
+
+		ObjectMapper mapper = createConfiguredObjectMapper();
+		for (com.ibm.cloud.cloudant.v1.model.Document doc : docs.values()) {
+			try {
+				result.add(convertToContent(doc, mapper));
 			} catch (Exception e) {
-				log.warn("CLOUDANT FIX: Error accessing getProperties(): " + e.getMessage());
-				
-				// Add other common CouchDB fields using different variable names
-				Object aclObj = doc.get("acl");
-				Object parentIdObj = doc.get("parentId");
-				Object aspectsObj = doc.get("aspects");
-				
-				if (aclObj != null) actualDocMap.put("acl", aclObj);
-				if (parentIdObj != null) actualDocMap.put("parentId", parentIdObj);
-				if (aspectsObj != null) actualDocMap.put("aspects", aspectsObj);
-			}
-
-			// CRITICAL FIX (2025-12-18): Always explicitly retrieve aspects and secondaryIds
-			// These fields are essential for Solr indexing of secondary type properties
-			// The getProperties() method may not include these complex nested fields
-			// NOTE (2025-12-27): Must always overwrite, because getProperties() may return null values
-			{
-				Object aspectsObj = doc.get("aspects");
-				if (aspectsObj != null) {
-					actualDocMap.put("aspects", aspectsObj);
-					log.info("CLOUDANT FIX: Explicitly set aspects field in actualDocMap");
-				} else {
-					log.info("CLOUDANT FIX: aspects field is null in CouchDB document");
-				}
+				log.error("ERROR in getContents for " + doc.getId() + " in repository " + repositoryId + ": " + e.getMessage(), e);
 			}
-			{
-				Object secondaryIdsObj = doc.get("secondaryIds");
-				if (secondaryIdsObj != null) {
-					actualDocMap.put("secondaryIds", secondaryIdsObj);
-					log.info("CLOUDANT FIX: Explicitly set secondaryIds field in actualDocMap");
-				} else {
-					log.info("CLOUDANT FIX: secondaryIds field is null in CouchDB document");
-				}
+		}
+		return result;
+	}
+
+	@Override
+	public ContentPage getContentsInRange(String repositoryId, String startKey, String endKey, int maxItems) {
+		// Read one extra row: its ID is where the next page starts
+		AllDocsResult docs = connectorPool.getClient(repositoryId).getAllDocsInRange(startKey, endKey, maxItems + 1);
+
+		List<Content> contents = new ArrayList<Content>();
+		String nextKey = null;
+		ObjectMapper mapper = createConfiguredObjectMapper();
+		List<DocsResultRow> rows = docs.getRows();
+		for (int i = 0; i < rows.size(); i++) {
+			DocsResultRow row = rows.get(i);
+			if (i == maxItems) {
+				nextKey = row.getId();
+				break;
 			}
-			// CRITICAL FIX (2025-12-27): Always explicitly retrieve description field
-			// The description field was missing from getProperties() causing null values after update
-			// even though the data was correctly saved to CouchDB
-			// NOTE: Must check for null value too, because getProperties() may return {description: null}
-			{
-				Object descriptionObj = doc.get("description");
-				if (descriptionObj != null) {
-					actualDocMap.put("description", descriptionObj);
-					log.info("CLOUDANT FIX: Explicitly set description field in actualDocMap: " + descriptionObj);
-				} else {
-					log.info("CLOUDANT FIX: description field is null in CouchDB document");
-				}
+			com.ibm.cloud.cloudant.v1.model.Document doc = row.getDoc();
+			if (doc == null || row.getId().startsWith("_design/") || !isContentType((String) doc.get("type"))) {
+				continue;
 			}
-			// Log the aspects/secondaryIds status for debugging
-			log.info("CLOUDANT DEBUG: actualDocMap contains aspects=" + actualDocMap.containsKey("aspects")
-					+ ", secondaryIds=" + actualDocMap.containsKey("secondaryIds"));
-			if (actualDocMap.containsKey("aspects")) {
-				Object aspectsVal = actualDocMap.get("aspects");
-				log.info("CLOUDANT DEBUG: aspects value type=" + (aspectsVal != null ? aspectsVal.getClass().getName() : "null")
-						+ ", value=" + aspectsVal);
+			try {
+				contents.add(convertToContent(doc, mapper));
+			} catch (Exception e) {
+				log.error("ERROR in getContentsInRange for " + row.getId() + " in repository " + repositoryId + ": " + e.getMessage(), e);
 			}
+		}
+		return new ContentPage(contents, nextKey);
+	}
+
+	private boolean isContentType(String type) {
+		if (type == null) {
+			return false;
+		}
+		switch (type) {
+		case "cmis:document":
+		case "cmis:folder":
+		case "cmis:relationship":
+		case "cmis:policy":
+		case "cmis:item":
+		case "document":
+		case "folder":
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Convert a CouchDB document of any content type to its Content model
+	 */
+	private Content convertToContent(com.ibm.cloud.cloudant.v1.model.Document doc, ObjectMapper mapper) {
+		// CRITICAL FIX: Use Cloudant SDK Document.get() method for direct field access
+		// CouchDB document contains type/objectType fields but ObjectMapper conversion loses them
+		log.debug("CLOUDANT FIX: Using Document.get() for direct field access");
+		
+		// Create document map by directly accessing fields from Cloudant Document
+		Map<String, Object> actualDocMap = new HashMap<>();
+		
+		// Copy standard document fields
+		actualDocMap.put("_id", doc.getId());
+		actualDocMap.put("_rev", doc.getRev());
+		
+		// Use Document.get() to access custom fields that ObjectMapper loses
+		String type = (String) doc.get("type");
+		String objectType = (String) doc.get("objectType");
+		String name = (String) doc.get("name");
+		String creator = (String) doc.get("creator");
+		String modifier = (String) doc.get("modifier");
+		// CRITICAL TCK FIX (2025-11-03): Keep date fields as original type (numeric or string)
+		// Do NOT convert to String - let CouchNodeBase.parseDateTime() handle the conversion
+		// CouchDB stores timestamps as numbers, but Cloudant SDK may return as strings
+		Object created = doc.get("created");
+		Object modified = doc.get("modified");
+		String changeToken = (String) doc.get("changeToken");
+
+		// CRITICAL TCK FIX (2025-11-03): Convert Gson LazilyParsedNumber to Long for Jackson compatibility
+		// LazilyParsedNumber is a Gson internal class that Jackson cannot deserialize properly
+		if (created != null && created.getClass().getName().contains("LazilyParsedNumber")) {
+			created = ((Number) created).longValue();
+		}
+		if (modified != null && modified.getClass().getName().contains("LazilyParsedNumber")) {
+			modified = ((Number) modified).longValue();
+		}
 
-			log.info("Type fields - type: " + type + ", objectType: " + objectType);
+		log.debug("CLOUDANT FIX: Direct field access results:");
+		log.debug("  - type: " + type);
+		log.debug("  - objectType: " + objectType);
+		log.debug("  - name: " + name);
+		
+		// Add all accessible fields to the map
+		if (type != null) actualDocMap.put("type", type);
+		if (objectType != null) actualDocMap.put("objectType", objectType);
+		if (name != null) actualDocMap.put("name", name);
+		if (creator != null) actualDocMap.put("creator", creator);
+		if (modifier != null) actualDocMap.put("modifier", modifier);
+		if (created != null) actualDocMap.put("created", created);
+		if (modified != null) actualDocMap.put("modified", modified);
+		if (changeToken != null) actualDocMap.put("changeToken", changeToken);
+		
+		// Also try to get additional fields using getProperties() as fallback
+		try {
+			Map<String, Object> properties = doc.getProperties();
+			if (properties != null && !properties.isEmpty()) {
+				log.debug("CLOUDANT FIX: Adding " + properties.size() + " properties from getProperties()");
+				// Only add properties that aren't already in actualDocMap
+				for (Map.Entry<String, Object> entry : properties.entrySet()) {
+					if (!actualDocMap.containsKey(entry.getKey())) {
+						actualDocMap.put(entry.getKey(), entry.getValue());
+					}
+				}
+			}
+		} catch (Exception e) {
+			log.warn("CLOUDANT FIX: Error accessing getProperties(): " + e.getMessage());
 			
-			// Use objectType if type is null, otherwise use type
-			String actualType = (type != null) ? type : objectType;
-			log.info("ActualType determined: " + actualType);
+			// Add other common CouchDB fields using different variable names
+			Object aclObj = doc.get("acl");
+			Object parentIdObj = doc.get("parentId");
+			Object aspectsObj = doc.get("aspects");
 			
-			// Ensure both type and objectType fields are set for consistency BEFORE mapper conversion
-			if (type == null && objectType != null) {
-				actualDocMap.put("type", objectType);
+			if (aclObj != null) actualDocMap.put("acl", aclObj);
+			if (parentIdObj != null) actualDocMap.put("parentId", parentIdObj);
+			if (aspectsObj != null) actualDocMap.put("aspects", aspectsObj);
+		}
+
+		// CRITICAL FIX (2025-12-18): Always explicitly retrieve aspects and secondaryIds
+		// These fields are essential for Solr indexing of secondary type properties
+		// The getProperties() method may not include these complex nested fields
+		// NOTE (2025-12-27): Must always overwrite, because getProperties() may return null values
+		{
+			Object aspectsObj = doc.get("aspects");
+			if (aspectsObj != null) {
+				actualDocMap.put("aspects", aspectsObj);
+				log.debug("CLOUDANT FIX: Explicitly set aspects field in actualDocMap");
+			} else {
+				log.debug("CLOUDANT FIX: aspects field is null in CouchDB document");
 			}
-			if (objectType == null && type != null) {
-				actualDocMap.put("objectType", type);
+		}
+		{
+			Object secondaryIdsObj = doc.get("secondaryIds");
+			if (secondaryIdsObj != null) {
+				actualDocMap.put("secondaryIds", secondaryIdsObj);
+				log.debug("CLOUDANT FIX: Explicitly set secondaryIds field in actualDocMap");
+			} else {
+				log.debug("CLOUDANT FIX: secondaryIds field is null in CouchDB document");
 			}
-			
-			// CRITICAL FIX: Ensure objectType is set in the map before conversion
-			// This ensures CouchContent and its subclasses pick up the objectType field
-			if (!actualDocMap.containsKey("objectType") || actualDocMap.get("objectType") == null) {
-				actualDocMap.put("objectType", actualType);
+		}
+		// CRITICAL FIX (2025-12-27): Always explicitly retrieve description field
+		// The description field was missing from getProperties() causing null values after update
+		// even though the data was correctly saved to CouchDB
+		// NOTE: Must check for null value too, because getProperties() may return {description: null}
+		{
+			Object descriptionObj = doc.get("description");
+			if (descriptionObj != null) {
+				actualDocMap.put("description", descriptionObj);
+				log.debug("CLOUDANT FIX: Explicitly set description field in actualDocMap: " + descriptionObj);
+			} else {
+				log.debug("CLOUDANT FIX: description field is null in CouchDB document");
 			}
-			
-			// Create ObjectMapper for type conversion
-			ObjectMapper mapper = createConfiguredObjectMapper();
+		}
+		// Log the aspects/secondaryIds status for debugging
+		log.debug("CLOUDANT DEBUG: actualDocMap contains aspects=" + actualDocMap.containsKey("aspects")
+				+ ", secondaryIds=" + actualDocMap.containsKey("secondaryIds"));
+		if (log.isDebugEnabled() && actualDocMap.containsKey("aspects")) {
+			Object aspectsVal = actualDocMap.get("aspects");
+			log.debug("CLOUDANT DEBUG: aspects value type=" + (aspectsVal != null ? aspectsVal.getClass().getName() : "null")
+					+ ", value=" + aspectsVal);
+		}
 
-			if ("folder".equals(actualType) || "cmis:folder".equals(actualType)) {
-				log.info("Converting to CouchFolder for type: " + actualType);
-				CouchFolder folder = mapper.convertValue(actualDocMap, CouchFolder.class);
+		log.debug("Type fields - type: " + type + ", objectType: " + objectType);
+		
+		// Use objectType if type is null, otherwise use type
+		String actualType = (type != null) ? type : objectType;
+		log.debug("ActualType determined: " + actualType);
+		
+		// Ensure both type and objectType fields are set for consistency BEFORE mapper conversion
+		if (type == null && objectType != null) {
+			actualDocMap.put("type", objectType);
+		}
+		if (objectType == null && type != null) {
+			actualDocMap.put("objectType", type);
+		}
+		
+		// CRITICAL FIX: Ensure objectType is set in the map before conversion
+		// This ensures CouchContent and its subclasses pick up the objectType field
+		if (!actualDocMap.containsKey("objectType") || actualDocMap.get("objectType") == null) {
+			actualDocMap.put("objectType", actualType);
+		}
+		
 
-				log.info("CouchFolder created, calling convert()");
-				Content content = folder.convert();
-				log.info("Content converted. Type: " + content.getClass().getSimpleName() + ", ObjectType: " + content.getObjectType());
-				// CRITICAL FIX (2025-12-19): Use objectType field (subtype) not actualType (base type)
-				// actualType is the "type" field (e.g., "cmis:folder") for routing purposes
-				// objectType is the actual CMIS object type (e.g., "nemaki:folder")
-				// Only set if convert() didn't already set the objectType
-				if (content.getObjectType() == null) {
-					content.setObjectType(objectType != null ? objectType : actualType);
-				}
-				log.info("Final Content - ObjectType: " + content.getObjectType() + ", isFolder: " + content.isFolder());
-				return content;
-			} else if ("document".equals(actualType) || "cmis:document".equals(actualType)) {
-				log.info("Converting to CouchDocument for type: " + actualType);
-				CouchDocument document = mapper.convertValue(actualDocMap, CouchDocument.class);
-				Content content = document.convert();
-				// CRITICAL FIX (2025-12-19): Use objectType field (subtype) not actualType (base type)
-				// actualType is the "type" field (e.g., "cmis:document") for routing purposes
-				// objectType is the actual CMIS object type (e.g., "nemaki:document")
-				// Only set if convert() didn't already set the objectType
-				if (content.getObjectType() == null) {
-					content.setObjectType(objectType != null ? objectType : actualType);
-				}
-				log.info("Final Document Content - ObjectType: " + content.getObjectType());
+		if ("folder".equals(actualType) || "cmis:folder".equals(actualType)) {
+			log.debug("Converting to CouchFolder for type: " + actualType);
+			CouchFolder folder = mapper.convertValue(actualDocMap, CouchFolder.class);
+
+			log.debug("CouchFolder created, calling convert()");
+			Content content = folder.convert();
+			log.debug("Content converted. Type: " + content.getClass().getSimpleName() + ", ObjectType: " + content.getObjectType());
+			// CRITICAL FIX (2025-12-19): Use objectType field (subtype) not actualType (base type)
+			// actualType is the "type" field (e.g., "cmis:folder") for routing purposes
+			// objectType is the actual CMIS object type (e.g., "nemaki:folder")
+			// Only set if convert() didn't already set the objectType
+			if (content.getObjectType() == null) {
+				content.setObjectType(objectType != null ? objectType : actualType);
+			}
+			log.debug("Final Content - ObjectType: " + content.getObjectType() + ", isFolder: " + content.isFolder());
+			return content;
+		} else if ("document".equals(actualType) || "cmis:document".equals(actualType)) {
+			log.debug("Converting to CouchDocument for type: " + actualType);
+			CouchDocument document = mapper.convertValue(actualDocMap, CouchDocument.class);
+			Content content = document.convert();
+			// CRITICAL FIX (2025-12-19): Use objectType field (subtype) not actualType (base type)
+			// actualType is the "type" field (e.g., "cmis:document") for routing purposes
+			// objectType is the actual CMIS object type (e.g., "nemaki:document")
+			// Only set if convert() didn't already set the objectType
+			if (content.getObjectType() == null) {
+				content.setObjectType(objectType != null ? objectType : actualType);
+			}
+			log.debug("Final Document Content - ObjectType: " + content.getObjectType());
+			return content;
+		} else if ("cmis:item".equals(actualType)) {
+			// CRITICAL FIX (2025-11-19): Handle cmis:item by checking objectType
+			// Users and groups are cmis:item base type but need specific conversion
+			log.debug("Converting cmis:item - checking objectType");
+			String objectTypeValue = (String) actualDocMap.get("objectType");
+
+			if ("nemaki:user".equals(objectTypeValue)) {
+				log.debug("Converting to CouchUserItem for objectType: " + objectTypeValue);
+				CouchUserItem cui = mapper.convertValue(actualDocMap, CouchUserItem.class);
+				Content content = cui.convert();  // Returns UserItem (extends Item)
+				content.setObjectType(objectTypeValue);
+				log.debug("Final UserItem - ObjectType: " + content.getObjectType());
 				return content;
-			} else if ("cmis:item".equals(actualType)) {
-				// CRITICAL FIX (2025-11-19): Handle cmis:item by checking objectType
-				// Users and groups are cmis:item base type but need specific conversion
-				log.info("Converting cmis:item - checking objectType");
-				String objectTypeValue = (String) actualDocMap.get("objectType");
-
-				if ("nemaki:user".equals(objectTypeValue)) {
-					log.info("Converting to CouchUserItem for objectType: " + objectTypeValue);
-					CouchUserItem cui = mapper.convertValue(actualDocMap, CouchUserItem.class);
-					Content content = cui.convert();  // Returns UserItem (extends Item)
-					content.setObjectType(objectTypeValue);
-					log.info("Final UserItem - ObjectType: " + content.getObjectType());
-					return content;
-				} else if ("nemaki:group".equals(objectTypeValue)) {
-					log.info("Converting to CouchGroupItem for objectType: " + objectTypeValue);
-					CouchGroupItem cgi = mapper.convertValue(actualDocMap, CouchGroupItem.class);
-					Content content = cgi.convert();  // Returns GroupItem (extends Item)
-					content.setObjectType(objectTypeValue);
-					log.info("Final GroupItem - ObjectType: " + content.getObjectType());
-					return content;
-				} else {
-					log.info("Converting to generic CouchItem for objectType: " + objectTypeValue);
-					// Generic item (fallback)
-					CouchItem ci = mapper.convertValue(actualDocMap, CouchItem.class);
-					Content content = ci.convert();
-					// CRITICAL FIX (2025-12-19): Use objectType field (subtype) not actualType (base type)
-					if (content.getObjectType() == null) {
-						content.setObjectType(objectType != null ? objectType : actualType);
-					}
-					log.info("Final Item - ObjectType: " + content.getObjectType());
-					return content;
-				}
-			} else if ("relationship".equals(actualType) || "cmis:relationship".equals(actualType)) {
-				// CRITICAL FIX (2025-12-23): Handle relationship types for CMIS query support
-				// Without this, relationships are converted to generic CouchContent and lose
-				// sourceId/targetId fields, causing ClassCastException in CompileService
-				log.info("Converting to CouchRelationship for type: " + actualType);
-				CouchRelationship cr = mapper.convertValue(actualDocMap, CouchRelationship.class);
-				Content content = cr.convert();
-				if (content.getObjectType() == null) {
-					content.setObjectType(objectType != null ? objectType : actualType);
-				}
-				log.info("Final Relationship Content - ObjectType: " + content.getObjectType());
+			} else if ("nemaki:group".equals(objectTypeValue)) {
+				log.debug("Converting to CouchGroupItem for objectType: " + objectTypeValue);
+				CouchGroupItem cgi = mapper.convertValue(actualDocMap, CouchGroupItem.class);
+				Content content = cgi.convert();  // Returns GroupItem (extends Item)
+				content.setObjectType(objectTypeValue);
+				log.debug("Final GroupItem - ObjectType: " + content.getObjectType());
 				return content;
-			} else if ("policy".equals(actualType) || "cmis:policy".equals(actualType)) {
-				// Handle policy types
-				log.info("Converting to CouchPolicy for type: " + actualType);
-				CouchPolicy cp = mapper.convertValue(actualDocMap, CouchPolicy.class);
-				Content content = cp.convert();
+			} else {
+				log.debug("Converting to generic CouchItem for objectType: " + objectTypeValue);
+				// Generic item (fallback)
+				CouchItem ci = mapper.convertValue(actualDocMap, CouchItem.class);
+				Content content = ci.convert();
+				// CRITICAL FIX (2025-12-19): Use objectType field (subtype) not actualType (base type)
 				if (content.getObjectType() == null) {
 					content.setObjectType(objectType != null ? objectType : actualType);
 				}
-				log.info("Final Policy Content - ObjectType: " + content.getObjectType());
+				log.debug("Final Item - ObjectType: " + content.getObjectType());
 				return content;
-			} else {
-				log.info("Converting to generic CouchContent for type: " + actualType);
-				// Generic content - try to convert to CouchContent
-				CouchContent content = mapper.convertValue(actualDocMap, CouchContent.class);
-				Content convertedContent = content.convert();
-				// CRITICAL FIX (2025-12-19): Use objectType field (subtype) not actualType (base type)
-				// Only set if convert() didn't already set the objectType
-				if (convertedContent.getObjectType() == null && actualType != null) {
-					convertedContent.setObjectType(objectType != null ? objectType : actualType);
-				}
-				log.info("Final Generic Content - ObjectType: " + convertedContent.getObjectType());
-				return convertedContent;
 			}
-		} catch (Exception e) {
-			log.error("ERROR in getContent for " + objectId + " in repository " + repositoryId + ": " + e.getMessage(), e);
-			e.printStackTrace();
-			return null;
+		} else if ("relationship".equals(actualType) || "cmis:relationship".equals(actualType)) {
+			// CRITICAL FIX (2025-12-23): Handle relationship types for CMIS query support
+			// Without this, relationships are converted to generic CouchContent and lose
+			// sourceId/targetId fields, causing ClassCastException in CompileService
+			log.debug("Converting to CouchRelationship for type: " + actualType);
+			CouchRelationship cr = mapper.convertValue(actualDocMap, CouchRelationship.class);
+			Content content = cr.convert();
+			if (content.getObjectType() == null) {
+				content.setObjectType(objectType != null ? objectType : actualType);
+			}
+			log.debug("Final Relationship Content - ObjectType: " + content.getObjectType());
+			return content;
+		} else if ("policy".equals(actualType) || "cmis:policy".equals(actualType)) {
+			// Handle policy types
+			log.debug("Converting to CouchPolicy for type: " + actualType);
+			CouchPolicy cp = mapper.convertValue(actualDocMap, CouchPolicy.class);
+			Content content = cp.convert();
+			if (content.getObjectType() == null) {
+				content.setObjectType(objectType != null ? objectType : actualType);
+			}
+			log.debug("Final Policy Content - ObjectType: " + content.getObjectType());
+			return content;
+		} else {
+			log.debug("Converting to generic CouchContent for type: " + actualType);
+			// Generic content - try to convert to CouchContent
+			CouchContent content = mapper.convertValue(actualDocMap, CouchContent.class);
+			Content convertedContent = content.convert();
+			// CRITICAL FIX (2025-12-19): Use objectType field (subtype) not actualType (base type)
+			// Only set if convert() didn't already set the objectType
+			if (convertedContent.getObjectType() == null && actualType != null) {
+				convertedContent.setObjectType(objectType != null ? objectType : actualType);
+			}
+			log.debug("Final Generic Content - ObjectType: " + convertedContent.getObjectType());
+			return convertedContent;
 		}
 	}
 
@@ -1387,6 +1542,53 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		}
 	}
 
+	@Override
+	public List<Folder> getFolderSkeleton(String repositoryId, int limit) {
+		Map<String, Object> queryParams = new HashMap<String, Object>();
+		queryParams.put("include_docs", false);
+		queryParams.put("limit", limit + 1);
+		ViewResult result = connectorPool.getClient(repositoryId).queryView("_repo", "folderNames", queryParams);
+		if (result == null || result.getRows() == null) {
+			log.warn("folderNames view is not available in repository: " + repositoryId);
+			return null;
+		}
+		if (result.getRows().size() > limit) {
+			return null;
+		}
+
+		List<Folder> folders = new ArrayList<Folder>(result.getRows().size());
+		for (ViewResultRow row : result.getRows()) {
+			if (!(row.getValue() instanceof List)) {
+				continue;
+			}
+			List<?> value = (List<?>) row.getValue();
+			Folder folder = new Folder();
+			folder.setId(row.getId());
+			folder.setParentId(value.size() > 0 && value.get(0) != null ? value.get(0).toString() : null);
+			folder.setName(value.size() > 1 && value.get(1) != null ? value.get(1).toString() : null);
+			folders.add(folder);
+		}
+		return folders;
+	}
+
+	@Override
+	public String getFolderPath(String repositoryId, String folderId) {
+		Folder folder = getFolder(repositoryId, folderId);
+		if (folder == null) {
+			return null;
+		}
+		// Names of the folder and its ancestors, except the topmost one: the root,
+		// or the last reachable ancestor of an orphan
+		LinkedList<String> names = new LinkedList<String>();
+		Set<String> visited = new HashSet<String>();
+		while (folder != null && visited.add(folder.getId())) {
+			names.addFirst(folder.getName());
+			folder = folder.getParentId() == null ? null : getFolder(repositoryId, folder.getParentId());
+		}
+		names.removeFirst();
+		return "/" + StringUtils.join(names, "/");
+	}
+
 	@Override
 	public List<Content> getChildren(String repositoryId, String parentId) {
 		try {
@@ -1449,6 +1651,40 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		}
 	}
 
+	@Override
+	public Map<String, List<Content>> getChildrenOfParents(String repositoryId, Collection<String> parentIds) {
+		Map<String, List<Content>> result = new LinkedHashMap<String, List<Content>>();
+		if (parentIds == null || parentIds.isEmpty()) {
+			return result;
+		}
+		for (String parentId : parentIds) {
+			result.put(parentId, new ArrayList<Content>());
+		}
+
+		// One view read with all the keys instead of a read per folder
+		Map<String, Object> queryParams = new HashMap<String, Object>();
+		queryParams.put("keys", new ArrayList<Object>(result.keySet()));
+		queryParams.put("include_docs", true);
+		ViewResult view = connectorPool.getClient(repositoryId).queryView("_repo", "children", queryParams);
+		if (view == null || view.getRows() == null) {
+			return result;
+		}
+
+		ObjectMapper mapper = createConfiguredObjectMapper();
+		for (ViewResultRow row : view.getRows()) {
+			List<Content> children = result.get(String.valueOf(row.getKey()));
+			if (children == null || row.getDoc() == null) {
+				continue;
+			}
+			try {
+				children.add(convertToContent(row.getDoc(), mapper));
+			} catch (Exception e) {
+				log.error("ERROR in getChildrenOfParents for " + row.getId() + " in repository " + repositoryId + ": " + e.getMessage(), e);
+			}
+		}
+		return result;
+	}
+
 	@Override
 	public Content getChildByName(String repositoryId, String parentId, String name) {
 		try {
@@ -1624,6 +1860,28 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		}
 	}
 
+	@Override
+	public Set<String> getRelationshipIds(String repositoryId, Collection<String> objectIds) {
+		Set<String> result = new LinkedHashSet<String>();
+		if (objectIds == null || objectIds.isEmpty()) {
+			return result;
+		}
+
+		CloudantClientWrapper client = connectorPool.getClient(repositoryId);
+		for (String view : new String[] { "relationshipsBySource", "relationshipsByTarget" }) {
+			Map<String, Object> queryParams = new HashMap<String, Object>();
+			queryParams.put("keys", new ArrayList<Object>(objectIds));
+			ViewResult rows = client.queryView("_repo", view, queryParams);
+			if (rows == null || rows.getRows() == null) {
+				continue;
+			}
+			for (ViewResultRow row : rows.getRows()) {
+				result.add(row.getId());
+			}
+		}
+		return result;
+	}
+
 	@Override
 	public Policy getPolicy(String repositoryId, String objectId) {
 		try {
@@ -2597,6 +2855,100 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		}
 	}
 
+	@Override
+	public List<String> deleteNodesBulk(String repositoryId, Collection<String> objectIds) {
+		List<String> failed = new ArrayList<String>();
+		if (objectIds == null || objectIds.isEmpty()) {
+			return failed;
+		}
+
+		CloudantClientWrapper client = connectorPool.getClient(repositoryId);
+		Map<String, String> revisions = new LinkedHashMap<String, String>();
+		for (com.ibm.cloud.cloudant.v1.model.Document doc : client.getDocuments(objectIds).values()) {
+			revisions.put(doc.getId(), doc.getRev());
+		}
+
+		List<String> ids = new ArrayList<String>(revisions.keySet());
+		List<DocumentResult> results = client.deleteRevisions(revisions);
+		for (int i = 0; i < results.size(); i++) {
+			if (results.get(i).getError() != null) {
+				failed.add(ids.get(i));
+			}
+		}
+		if (!failed.isEmpty()) {
+			log.warn("deleteNodesBulk: " + failed.size() + " of " + ids.size() + " nodes could not be deleted in repository " + repositoryId);
+		}
+		return failed;
+	}
+
+	@Override
+	public List<BulkWriteResult> bulkWrite(String repositoryId, List<? extends NodeBase> nodes) {
+		List<BulkWriteResult> results = new ArrayList<BulkWriteResult>();
+		if (nodes == null || nodes.isEmpty()) {
+			return results;
+		}
+
+		List<CouchNodeBase> couchNodes = new ArrayList<CouchNodeBase>(nodes.size());
+		for (NodeBase node : nodes) {
+			couchNodes.add(toCouchNode(node));
+		}
+
+		List<DocumentResult> documentResults = connectorPool.getClient(repositoryId).bulkWrite(couchNodes);
+
+		int conflicts = 0;
+		for (int i = 0; i < nodes.size(); i++) {
+			NodeBase node = nodes.get(i);
+			DocumentResult dr = documentResults.get(i);
+			if (dr.getError() == null) {
+				// Keep the caller's object in sync, as create()/update() do via convert()
+				node.setId(dr.getId());
+				node.setRevision(dr.getRev());
+			} else if (BulkWriteResult.ERROR_CONFLICT.equals(dr.getError())) {
+				conflicts++;
+			}
+			String id = dr.getId() != null ? dr.getId() : node.getId();
+			results.add(new BulkWriteResult(node, id, dr.getRev(), dr.getError(), dr.getReason()));
+		}
+
+		if (conflicts > 0) {
+			log.warn("bulkWrite: " + conflicts + " of " + nodes.size() + " nodes conflicted in repository " + repositoryId);
+		}
+		return results;
+	}
+
+	/**
+	 * Wrap a model object in its CouchDB model class, same as the individual create/update methods
+	 */
+	private CouchNodeBase toCouchNode(NodeBase node) {
+		if (node instanceof Document) {
+			return new CouchDocument((Document) node);
+		} else if (node instanceof Folder) {
+			return new CouchFolder((Folder) node);
+		} else if (node instanceof Relationship) {
+			return new CouchRelationship((Relationship) node);
+		} else if (node instanceof Policy) {
+			return new CouchPolicy((Policy) node);
+		} else if (node instanceof UserItem) {
+			return new CouchUserItem((UserItem) node);
+		} else if (node instanceof GroupItem) {
+			return new CouchGroupItem((GroupItem) node);
+		} else if (node instanceof Item) {
+			return new CouchItem((Item) node);
+		} else if (node instanceof VersionSeries) {
+			return new CouchVersionSeries((VersionSeries) node);
+		} else if (node instanceof Change) {
+			return new CouchChange((Change) node);
+		} else if (node instanceof PatchHistory) {
+			return new CouchPatchHistory((PatchHistory) node);
+		} else if (node instanceof Configuration) {
+			return new CouchConfiguration((Configuration) node);
+		} else if (node instanceof Archive || node instanceof AttachmentNode) {
+			throw new IllegalArgumentException("bulkWrite does not support " + node.getClass().getSimpleName());
+		} else {
+			return new CouchNodeBase(node);
+		}
+	}
+
 	/**
 	 * Verify that an object has been successfully deleted from CouchDB
 	 * @param repositoryId repository identifier
@@ -3077,7 +3429,8 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 					// Retry logic for attachment creation as well
 					retryCount = 0;
 					String finalRevision = null;
-					
+					CountingInputStream countingStream = null;
+
 					while (retryCount < maxRetries) {
 						try {
 							String revisionToUse = documentRevision;
@@ -3099,15 +3452,16 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 								log.debug("STAGE 2 ATTEMPT " + (retryCount + 1) + ": Creating attachment with revision " + revisionToUse);
 							}
 							
+							countingStream = new CountingInputStream(contentStream.getStream());
 							finalRevision = client.createAttachment(
-								documentId, 
-								revisionToUse, 
-								attachmentName, 
-								contentStream.getStream(), 
+								documentId,
+								revisionToUse,
+								attachmentName,
+								countingStream,
 								contentType
 							);
-							
-							log.debug("STAGE 2 SUCCESS: Added binary attachment: " + documentId + 
+
+							log.debug("STAGE 2 SUCCESS: Added binary attachment: " + documentId +
 								" (revision: " + revisionToUse + " -> " + finalRevision + ")");
 							break;
 							
@@ -3148,7 +3502,12 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 							}
 						}
 					}
-					
+
+					// The declared length may be unknown (-1) or wrong: store what was written
+					if (finalRevision != null && countingStream.getByteCount() != can.getLength()) {
+						writeAttachmentLength(client, documentId, countingStream.getByteCount());
+					}
+
 				} catch (Exception attachmentError) {
 					log.warn("STAGE 2 WARNING: Failed to add binary content for: " + documentId + ". Continuing with metadata-only attachment.", attachmentError);
 					// Don't throw exception - metadata document is successfully created
@@ -3252,10 +3611,21 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 				log.warn("Could not retrieve current revision for attachment: " + attachment.getId());
 			}
 
+			// Read the new content up front so that the metadata carries the length
+			// of the bytes actually written, not the length the client declared
+			byte[] allBytes = null;
+			if (contentStream != null && contentStream.getStream() != null) {
+				allBytes = IOUtils.toByteArray(contentStream.getStream());
+				if (log.isDebugEnabled()) {
+					log.debug("UPDATE ATTACHMENT: " + attachment.getId() + " declared length " + contentStream.getLength()
+							+ ", read " + allBytes.length + " bytes");
+				}
+			}
+
 			// Set content stream properties if available
 			if (contentStream != null) {
 				can.setMimeType(contentStream.getMimeType());
-				can.setLength(contentStream.getLength());
+				can.setLength(allBytes != null ? allBytes.length : contentStream.getLength());
 				can.setName(contentStream.getFileName());
 			}
 
@@ -3263,61 +3633,24 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 			client.update(can);
 			// Get the updated document to obtain the new revision
 			com.ibm.cloud.cloudant.v1.model.Document updatedDoc = client.get(attachment.getId());
-			String stage1RevisionAfterUpdate = updatedDoc != null ? updatedDoc.getRev() : null;
-			log.debug("Updated attachment metadata for: " + attachment.getId() + " (new revision: " + stage1RevisionAfterUpdate + ")");
-			
-			// STAGE 2: If there's binary content, update it as a CouchDB attachment
-			if (contentStream != null && contentStream.getStream() != null) {
-				try {
-					// CRITICAL FIX: Use the revision from STAGE 1 completion, not a fresh GET
-					String revisionToUse = stage1RevisionAfterUpdate;
-					if (revisionToUse == null) {
-						// Fallback: get fresh revision only if STAGE 1 revision is somehow lost
-						com.ibm.cloud.cloudant.v1.model.Document doc = client.get(attachment.getId());
-						revisionToUse = doc != null ? doc.getRev() : null;
-								}
-
-					// Update attachment with binary content
-					String attachmentName = "content"; // Standard attachment name for content
-					String contentType = contentStream.getMimeType() != null ?
-						contentStream.getMimeType() : "application/octet-stream";
-					if (log.isDebugEnabled()) {
-					log.debug("UPDATE ATTACHMENT STAGE 2: Attachment ID: " + attachment.getId());
-				}
-					if (log.isDebugEnabled()) {
-					log.debug("UPDATE ATTACHMENT STAGE 2: Content length from metadata: " + contentStream.getLength());
-				}
-
-					// DEBUG: Read the InputStream and count actual bytes
-					InputStream originalStream = contentStream.getStream();
-					java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-					byte[] buffer = new byte[8192];
-					int bytesRead;
-					int totalBytesRead = 0;
-					while ((bytesRead = originalStream.read(buffer)) != -1) {
-						baos.write(buffer, 0, bytesRead);
-						totalBytesRead += bytesRead;
-					}
-					byte[] allBytes = baos.toByteArray();
-					if (log.isDebugEnabled()) {
-					log.debug("UPDATE ATTACHMENT STAGE 2: Content preview: " + new String(allBytes, 0, Math.min(100, allBytes.length)));
-				}
-
-					// Create new InputStream from the bytes we read
-					java.io.ByteArrayInputStream bais = new java.io.ByteArrayInputStream(allBytes);
-
-					String newRevision = client.createAttachment(
-						attachment.getId(),
-						revisionToUse,
-						attachmentName,
-						bais,
-						contentType
-					);
-								log.debug("Updated binary content as attachment for: " + attachment.getId() + " (revision: " + newRevision + ")");
-
-				} catch (Exception attachmentError) {
-					log.warn("Failed to update binary content as attachment for: " + attachment.getId() + ". Metadata updated only.", attachmentError);
-				}
+			String revisionToUse = updatedDoc != null ? updatedDoc.getRev() : null;
+			log.debug("Updated attachment metadata for: " + attachment.getId() + " (new revision: " + revisionToUse + ")");
+
+			// STAGE 2: If there's binary content, update it as a CouchDB attachment.
+			// A failure here is not swallowed: the metadata would describe content that was never stored
+			if (allBytes != null) {
+				String attachmentName = "content"; // Standard attachment name for content
+				String contentType = contentStream.getMimeType() != null ?
+					contentStream.getMimeType() : "application/octet-stream";
+
+				String newRevision = client.createAttachment(
+					attachment.getId(),
+					revisionToUse,
+					attachmentName,
+					new java.io.ByteArrayInputStream(allBytes),
+					contentType
+				);
+				log.debug("Updated binary content as attachment for: " + attachment.getId() + " (revision: " + newRevision + ")");
 			}
 			
 		} catch (Exception e) {
@@ -3326,6 +3659,49 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		}
 	}
 
+	@Override
+	public void updateAttachmentLength(String repositoryId, String attachmentId, long length) {
+		try {
+			writeAttachmentLength(connectorPool.getClient(repositoryId), attachmentId, length);
+		} catch (Exception e) {
+			log.error("Error updating length of attachment: " + attachmentId + " in repository: " + repositoryId, e);
+			throw new RuntimeException("Failed to update attachment length", e);
+		}
+	}
+
+	/**
+	 * Rewrite the length field of an attachment document.
+	 * The _attachments stubs are sent back as they are so the binary is kept.
+	 */
+	private void writeAttachmentLength(CloudantClientWrapper client, String attachmentId, long length) {
+		com.ibm.cloud.cloudant.v1.model.Document doc = client.get(attachmentId);
+		if (doc == null || doc.getProperties() == null) {
+			throw new IllegalArgumentException("Attachment not found: " + attachmentId);
+		}
+
+		Map<String, Object> completeMap = new HashMap<>(doc.getProperties());
+		completeMap.put("_id", doc.getId());
+		completeMap.put("_rev", doc.getRev());
+		Map<String, com.ibm.cloud.cloudant.v1.model.Attachment> sdkAttachments = doc.getAttachments();
+		if (sdkAttachments != null && !sdkAttachments.isEmpty()) {
+			Map<String, Object> attachmentsMap = new HashMap<>();
+			for (Map.Entry<String, com.ibm.cloud.cloudant.v1.model.Attachment> entry : sdkAttachments.entrySet()) {
+				com.ibm.cloud.cloudant.v1.model.Attachment att = entry.getValue();
+				Map<String, Object> attMap = new HashMap<>();
+				attMap.put("content_type", att.contentType());
+				attMap.put("digest", att.digest());
+				attMap.put("revpos", att.revpos());
+				attMap.put("stub", true);
+				attachmentsMap.put(entry.getKey(), attMap);
+			}
+			completeMap.put("_attachments", attachmentsMap);
+		}
+		completeMap.put("length", length);
+
+		client.update(completeMap);
+		log.debug("Stored length " + length + " for attachment: " + attachmentId);
+	}
+
 	// ///////////////////////////////////////
 	// Change event
 	// ///////////////////////////////////////
@@ -3385,10 +3761,10 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 			List<Change> changes = new ArrayList<Change>();
 			
 			if (result.getRows() != null) {
+				ObjectMapper mapper = createConfiguredObjectMapper();
 				for (ViewResultRow row : result.getRows()) {
 					if (row.getDoc() != null) {
 						try {
-							ObjectMapper mapper = createConfiguredObjectMapper();
 							CouchChange cc = mapper.convertValue(row.getDoc(), CouchChange.class);
 							if (cc != null) {
 								changes.add(cc.convert());
@@ -3407,6 +3783,62 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		}
 	}
 
+	@Override
+	public ChangeFeed getChangeFeed(String repositoryId, String startToken, int maxItems, long longPollTimeout) {
+		String since = StringUtils.isEmpty(startToken) ? "0" : startToken;
+		Map<String, Object> selector = new HashMap<String, Object>();
+		selector.put("type", NodeType.CHANGE.value());
+
+		// Read one more event than asked for: pending also counts documents that are
+		// not change events, so only an extra matching result tells that more follow
+		ChangesResult result;
+		try {
+			result = connectorPool.getClient(repositoryId).getChanges(selector, since,
+					maxItems > 0 ? maxItems + 1 : 0, longPollTimeout);
+		} catch (BadRequestException e) {
+			throw new IllegalArgumentException("Invalid change log token: " + startToken, e);
+		}
+
+		List<ChangesResultItem> items = result.getResults();
+		boolean hasMoreItems = maxItems > 0 && items != null && items.size() > maxItems;
+		if (hasMoreItems) {
+			items = items.subList(0, maxItems);
+		}
+
+		List<Change> changes = new ArrayList<Change>();
+		if (items != null) {
+			for (ChangesResultItem item : items) {
+				// Change events removed by retention still show up as tombstones
+				if (Boolean.TRUE.equals(item.isDeleted()) || item.getDoc() == null) {
+					continue;
+				}
+				Map<String, Object> properties = new HashMap<String, Object>(item.getDoc().getProperties());
+				properties.put("_id", item.getDoc().getId());
+				properties.put("_rev", item.getDoc().getRev());
+				try {
+					changes.add(new CouchChange(properties).convert());
+				} catch (Exception e) {
+					log.warn("Failed to convert change document: " + item.getId() + " " + e.getMessage());
+				}
+			}
+		}
+
+		// When the page is cut, continue right after its last event rather than from last_seq
+		String latestToken;
+		if (hasMoreItems) {
+			latestToken = items.get(items.size() - 1).getSeq();
+		} else {
+			latestToken = (result.getLastSeq() == null) ? since : result.getLastSeq();
+		}
+		return new ChangeFeed(changes, latestToken, hasMoreItems);
+	}
+
+	@Override
+	public String getLatestChangeLogToken(String repositoryId) {
+		DatabaseInformation info = connectorPool.getClient(repositoryId).getDatabaseInfo();
+		return (info == null) ? null : info.getUpdateSeq();
+	}
+
 	@Override
 	public List<Change> getObjectChanges(String repositoryId, String objectId) {
 		try {
@@ -3427,6 +3859,432 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 	}
 
 
+	@Override
+	public int pruneChangeEvents(String repositoryId, List<Change> changes, boolean archive) {
+		if (changes == null || changes.isEmpty()) {
+			return 0;
+		}
+
+		// The events come from the feed with their revisions, so no document is read again
+		Map<String, String> revisions = new LinkedHashMap<String, String>();
+		if (archive) {
+			List<CouchChange> copies = new ArrayList<CouchChange>(changes.size());
+			for (Change change : changes) {
+				CouchChange copy = new CouchChange(change);
+				// Keep the id so that archiving the same event twice is a harmless conflict
+				copy.setRevision(null);
+				copies.add(copy);
+			}
+			CloudantClientWrapper archiveClient = connectorPool.getOrCreate(repositoryId + SystemConst.CHANGELOG_ARCHIVE_SUFFIX);
+			List<DocumentResult> results = archiveClient.bulkWrite(copies);
+			for (int i = 0; i < results.size(); i++) {
+				DocumentResult result = results.get(i);
+				if (result.getError() == null || BulkWriteResult.ERROR_CONFLICT.equals(result.getError())) {
+					revisions.put(changes.get(i).getId(), changes.get(i).getRevision());
+				}
+			}
+		} else {
+			for (Change change : changes) {
+				revisions.put(change.getId(), change.getRevision());
+			}
+		}
+
+		int deleted = 0;
+		for (DocumentResult result : connectorPool.getClient(repositoryId).deleteRevisions(revisions)) {
+			if (result.getError() == null) {
+				deleted++;
+			} else if (log.isDebugEnabled()) {
+				// A conflict means the event was pruned or changed meanwhile
+				log.debug("pruneChangeEvents: could not delete " + result.getId() + ": " + result.getError());
+			}
+		}
+		return deleted;
+	}
+
+	@Override
+	public long countChangeEvents(String repositoryId) {
+		Map<String, Object> queryParams = new HashMap<String, Object>();
+		queryParams.put("limit", 0);
+		ViewResult result = connectorPool.getClient(repositoryId).queryView("_repo", "changesByToken", queryParams);
+		if (result == null || result.getTotalRows() == null) {
+			return -1;
+		}
+		return result.getTotalRows();
+	}
+
+	// ///////////////////////////////////////
+	// Reindex checkpoint
+	// ///////////////////////////////////////
+	@Override
+	public ReindexCheckpoint getReindexCheckpoint(String repositoryId) {
+		com.ibm.cloud.cloudant.v1.model.Document doc = connectorPool.getClient(repositoryId).get(REINDEX_CHECKPOINT_ID);
+		if (doc == null) {
+			return null;
+		}
+
+		ReindexCheckpoint checkpoint = new ReindexCheckpoint();
+		checkpoint.setId(doc.getId());
+		checkpoint.setRevision(doc.getRev());
+		checkpoint.setRunId((String) doc.get("runId"));
+		checkpoint.setShadowCore((String) doc.get("shadowCore"));
+		checkpoint.setPhase((String) doc.get("phase"));
+		checkpoint.setChangeToken((String) doc.get("changeToken"));
+		Object startTime = doc.get("startTime");
+		if (startTime instanceof Number) {
+			checkpoint.setStartTime(((Number) startTime).longValue());
+		}
+		Object indexedCount = doc.get("indexedCount");
+		if (indexedCount instanceof Number) {
+			checkpoint.setIndexedCount(((Number) indexedCount).longValue());
+		}
+		Object partitions = doc.get("partitions");
+		if (partitions instanceof Map) {
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) partitions).entrySet()) {
+				checkpoint.getPartitions().put(String.valueOf(entry.getKey()),
+						entry.getValue() == null ? "" : String.valueOf(entry.getValue()));
+			}
+		}
+		return checkpoint;
+	}
+
+	@Override
+	public boolean saveReindexCheckpoint(String repositoryId, ReindexCheckpoint checkpoint) {
+		Map<String, Object> map = new HashMap<String, Object>();
+		map.put("type", REINDEX_CHECKPOINT_TYPE);
+		if (checkpoint.getRevision() != null) {
+			map.put("_rev", checkpoint.getRevision());
+		}
+		map.put("runId", checkpoint.getRunId());
+		map.put("shadowCore", checkpoint.getShadowCore());
+		map.put("phase", checkpoint.getPhase());
+		map.put("startTime", checkpoint.getStartTime());
+		map.put("changeToken", checkpoint.getChangeToken());
+		map.put("indexedCount", checkpoint.getIndexedCount());
+		map.put("partitions", new HashMap<String, String>(checkpoint.getPartitions()));
+
+		DocumentResult result = connectorPool.getClient(repositoryId).create(REINDEX_CHECKPOINT_ID, map);
+		if (result == null || result.getRev() == null) {
+			return false;
+		}
+		checkpoint.setId(REINDEX_CHECKPOINT_ID);
+		checkpoint.setRevision(result.getRev());
+		return true;
+	}
+
+	@Override
+	public void deleteReindexCheckpoint(String repositoryId) {
+		CloudantClientWrapper client = connectorPool.getClient(repositoryId);
+		com.ibm.cloud.cloudant.v1.model.Document doc = client.get(REINDEX_CHECKPOINT_ID);
+		if (doc != null) {
+			client.delete(REINDEX_CHECKPOINT_ID, doc.getRev());
+		}
+	}
+
+	// ///////////////////////////////////////
+	// Directory sync state
+	// ///////////////////////////////////////
+	@Override
+	public DirectorySyncState getDirectorySyncState(String repositoryId) {
+		CloudantClientWrapper client = connectorPool.getClient(repositoryId);
+		com.ibm.cloud.cloudant.v1.model.Document doc = client.get(DIRECTORY_SYNC_STATE_ID);
+		if (doc == null) {
+			return null;
+		}
+
+		DirectorySyncState state = new DirectorySyncState();
+		state.setId(doc.getId());
+		state.setRevision(doc.getRev());
+		state.setUserMarker((String) doc.get("userMarker"));
+		state.setGroupMarker((String) doc.get("groupMarker"));
+		state.setConfigFingerprint((String) doc.get("configFingerprint"));
+		Object lastFullReconcile = doc.get("lastFullReconcile");
+		if (lastFullReconcile instanceof Number) {
+			state.setLastFullReconcile(((Number) lastFullReconcile).longValue());
+		}
+		// Hashes kept in the state document itself by earlier versions
+		copyStringMap(doc.get("userHashes"), state.getUserHashes());
+		copyStringMap(doc.get("groupHashes"), state.getGroupHashes());
+
+		List<String> userChunkIds = getDirectorySyncChunkIds("user", doc.get("userChunks"));
+		List<String> groupChunkIds = getDirectorySyncChunkIds("group", doc.get("groupChunks"));
+		List<String> chunkIds = new ArrayList<String>(userChunkIds);
+		chunkIds.addAll(groupChunkIds);
+		Map<String, com.ibm.cloud.cloudant.v1.model.Document> chunks = client.getDocuments(chunkIds);
+		for (String chunkId : chunkIds) {
+			Map<String, String> hashes = new HashMap<String, String>();
+			com.ibm.cloud.cloudant.v1.model.Document chunk = chunks.get(chunkId);
+			if (chunk != null) {
+				copyStringMap(chunk.get("hashes"), hashes);
+				state.getChunkRevisions().put(chunkId, chunk.getRev());
+			}
+			// A missing chunk reads as empty: its entries are synced again
+			state.getStoredChunks().put(chunkId, hashes);
+			(userChunkIds.contains(chunkId) ? state.getUserHashes() : state.getGroupHashes()).putAll(hashes);
+		}
+		return state;
+	}
+
+	@Override
+	public boolean saveDirectorySyncState(String repositoryId, DirectorySyncState state) {
+		CloudantClientWrapper client = connectorPool.getClient(repositoryId);
+
+		// Write the chunks that changed first: the markers must not get ahead of the hashes
+		Map<String, Map<String, String>> chunks = new LinkedHashMap<String, Map<String, String>>();
+		int userChunks = splitDirectorySyncHashes("user", state.getUserHashes(), chunks);
+		int groupChunks = splitDirectorySyncHashes("group", state.getGroupHashes(), chunks);
+		List<Map<String, Object>> writes = new ArrayList<Map<String, Object>>();
+		for (Map.Entry<String, Map<String, String>> chunk : chunks.entrySet()) {
+			Map<String, String> stored = state.getStoredChunks().get(chunk.getKey());
+			if (chunk.getValue().equals(stored) || (stored == null && chunk.getValue().isEmpty())) {
+				continue;
+			}
+			Map<String, Object> map = new HashMap<String, Object>();
+			map.put("_id", chunk.getKey());
+			map.put("_rev", state.getChunkRevisions().get(chunk.getKey()));
+			map.put("type", DIRECTORY_SYNC_CHUNK_TYPE);
+			map.put("hashes", chunk.getValue());
+			writes.add(map);
+		}
+		// Chunks left over from a larger chunk count
+		for (Map.Entry<String, String> revision : state.getChunkRevisions().entrySet()) {
+			if (!chunks.containsKey(revision.getKey())) {
+				Map<String, Object> map = new HashMap<String, Object>();
+				map.put("_id", revision.getKey());
+				map.put("_rev", revision.getValue());
+				map.put("_deleted", true);
+				writes.add(map);
+			}
+		}
+
+		boolean failed = false;
+		if (!writes.isEmpty()) {
+			List<DocumentResult> results;
+			try {
+				results = client.bulkWrite(writes);
+			} catch (Exception e) {
+				log.warn("Failed to write directory sync state chunks of repository " + repositoryId + ": " + e.getMessage());
+				return false;
+			}
+			for (DocumentResult result : results) {
+				if (result.getError() != null) {
+					log.warn("Failed to write directory sync state chunk " + result.getId() + ": " + result.getError());
+					failed = true;
+				} else if (chunks.containsKey(result.getId())) {
+					state.getChunkRevisions().put(result.getId(), result.getRev());
+					state.getStoredChunks().put(result.getId(), chunks.get(result.getId()));
+				} else {
+					state.getChunkRevisions().remove(result.getId());
+					state.getStoredChunks().remove(result.getId());
+				}
+			}
+		}
+		if (failed) {
+			return false;
+		}
+
+		Map<String, Object> map = new HashMap<String, Object>();
+		map.put("type", DIRECTORY_SYNC_STATE_TYPE);
+		if (state.getRevision() != null) {
+			map.put("_rev", state.getRevision());
+		}
+		map.put("userMarker", state.getUserMarker());
+		map.put("groupMarker", state.getGroupMarker());
+		map.put("lastFullReconcile", state.getLastFullReconcile());
+		map.put("configFingerprint", state.getConfigFingerprint());
+		map.put("userChunks", userChunks);
+		map.put("groupChunks", groupChunks);
+
+		DocumentResult result = client.create(DIRECTORY_SYNC_STATE_ID, map);
+		if (result == null || result.getRev() == null) {
+			return false;
+		}
+		state.setId(DIRECTORY_SYNC_STATE_ID);
+		state.setRevision(result.getRev());
+		return true;
+	}
+
+	private static List<String> getDirectorySyncChunkIds(String kind, Object count) {
+		List<String> ids = new ArrayList<String>();
+		int chunks = count instanceof Number ? ((Number) count).intValue() : 0;
+		for (int i = 0; i < chunks; i++) {
+			ids.add(DIRECTORY_SYNC_STATE_ID + "." + kind + "." + i);
+		}
+		return ids;
+	}
+
+	/**
+	 * Split the hashes into chunks of about DIRECTORY_SYNC_CHUNK_SIZE entries by
+	 * principal ID. The chunk count is a power of two, so an entry only moves to
+	 * another chunk when the count changes.
+	 *
+	 * @return the number of chunks
+	 */
+	private static int splitDirectorySyncHashes(String kind, Map<String, String> hashes,
+			Map<String, Map<String, String>> chunks) {
+		int count = 1;
+		while ((long) count * DIRECTORY_SYNC_CHUNK_SIZE < hashes.size()) {
+			count <<= 1;
+		}
+		List<String> ids = getDirectorySyncChunkIds(kind, count);
+		for (String id : ids) {
+			chunks.put(id, new HashMap<String, String>());
+		}
+		for (Map.Entry<String, String> entry : hashes.entrySet()) {
+			chunks.get(ids.get(entry.getKey().hashCode() & (count - 1))).put(entry.getKey(), entry.getValue());
+		}
+		return count;
+	}
+
+	// ///////////////////////////////////////
+	// Auth token revocations
+	// ///////////////////////////////////////
+	@Override
+	public TokenRevocationList getTokenRevocationList(String repositoryId) {
+		// A failed read throws: read as "nothing revoked" it would accept revoked tokens
+		com.ibm.cloud.cloudant.v1.model.Document doc = connectorPool.getClient(repositoryId).getStrict(TOKEN_REVOCATION_LIST_ID);
+		if (doc == null) {
+			return null;
+		}
+
+		TokenRevocationList list = new TokenRevocationList();
+		list.setId(doc.getId());
+		list.setRevision(doc.getRev());
+		Object revokedBefore = doc.get("revokedBefore");
+		if (revokedBefore instanceof Map) {
+			for (Map.Entry<?, ?> app : ((Map<?, ?>) revokedBefore).entrySet()) {
+				if (!(app.getValue() instanceof Map)) {
+					continue;
+				}
+				for (Map.Entry<?, ?> user : ((Map<?, ?>) app.getValue()).entrySet()) {
+					if (user.getValue() instanceof Number) {
+						list.revoke(String.valueOf(app.getKey()), String.valueOf(user.getKey()),
+								((Number) user.getValue()).longValue());
+					}
+				}
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public boolean saveTokenRevocationList(String repositoryId, TokenRevocationList list) {
+		Map<String, Object> map = new HashMap<String, Object>();
+		map.put("type", TOKEN_REVOCATION_LIST_TYPE);
+		if (list.getRevision() != null) {
+			map.put("_rev", list.getRevision());
+		}
+		map.put("revokedBefore", new HashMap<String, Map<String, Long>>(list.getRevokedBefore()));
+
+		DocumentResult result = connectorPool.getClient(repositoryId).create(TOKEN_REVOCATION_LIST_ID, map);
+		if (result == null || result.getRev() == null) {
+			return false;
+		}
+		list.setId(TOKEN_REVOCATION_LIST_ID);
+		list.setRevision(result.getRev());
+		return true;
+	}
+
+	// ///////////////////////////////////////
+	// Background jobs
+	// ///////////////////////////////////////
+	@Override
+	public Job getJob(String repositoryId, String jobId) {
+		if (jobId == null || !jobId.startsWith(JOB_ID_PREFIX)) {
+			return null;
+		}
+		com.ibm.cloud.cloudant.v1.model.Document doc = connectorPool.getClient(repositoryId).get(jobId);
+		return doc == null ? null : convertToJob(doc);
+	}
+
+	@Override
+	public List<Job> getJobs(String repositoryId, int maxItems) {
+		// Job IDs share a prefix, so they form one range of _all_docs
+		AllDocsResult docs = connectorPool.getClient(repositoryId).getAllDocsInRange(JOB_ID_PREFIX, JOB_ID_END, maxItems);
+		List<Job> jobs = new ArrayList<Job>();
+		for (DocsResultRow row : docs.getRows()) {
+			if (row.getDoc() != null && JOB_TYPE.equals(row.getDoc().get("type"))) {
+				jobs.add(convertToJob(row.getDoc()));
+			}
+		}
+		return jobs;
+	}
+
+	@Override
+	public boolean saveJob(String repositoryId, Job job) {
+		String id = job.getId() != null ? job.getId() : JOB_ID_PREFIX + UUID.randomUUID().toString().replace("-", "");
+
+		Map<String, Object> map = new HashMap<String, Object>();
+		map.put("type", JOB_TYPE);
+		if (job.getRevision() != null) {
+			map.put("_rev", job.getRevision());
+		}
+		map.put("repositoryId", job.getRepositoryId());
+		map.put("jobType", job.getType());
+		map.put("status", job.getStatus());
+		map.put("creator", job.getCreator());
+		map.put("node", job.getNode());
+		map.put("parameters", new HashMap<String, String>(job.getParameters()));
+		map.put("checkpoint", job.getCheckpoint());
+		map.put("total", job.getTotal());
+		map.put("processed", job.getProcessed());
+		map.put("failed", job.getFailed());
+		map.put("errors", new ArrayList<String>(job.getErrors()));
+		map.put("message", job.getMessage());
+		map.put("cancelRequested", job.isCancelRequested());
+		map.put("created", job.getCreated());
+		map.put("started", job.getStarted());
+		map.put("finished", job.getFinished());
+
+		DocumentResult result = connectorPool.getClient(repositoryId).create(id, map);
+		if (result == null || result.getRev() == null) {
+			return false;
+		}
+		job.setId(id);
+		job.setRevision(result.getRev());
+		return true;
+	}
+
+	private Job convertToJob(com.ibm.cloud.cloudant.v1.model.Document doc) {
+		Job job = new Job();
+		job.setId(doc.getId());
+		job.setRevision(doc.getRev());
+		job.setRepositoryId((String) doc.get("repositoryId"));
+		job.setType((String) doc.get("jobType"));
+		job.setStatus((String) doc.get("status"));
+		job.setCreator((String) doc.get("creator"));
+		job.setNode((String) doc.get("node"));
+		copyStringMap(doc.get("parameters"), job.getParameters());
+		job.setCheckpoint((String) doc.get("checkpoint"));
+		job.setTotal(toLong(doc.get("total")));
+		job.setProcessed(toLong(doc.get("processed")));
+		job.setFailed(toLong(doc.get("failed")));
+		if (doc.get("errors") instanceof List) {
+			for (Object error : (List<?>) doc.get("errors")) {
+				job.getErrors().add(String.valueOf(error));
+			}
+		}
+		job.setMessage((String) doc.get("message"));
+		job.setCancelRequested(Boolean.TRUE.equals(doc.get("cancelRequested")));
+		job.setCreated(toLong(doc.get("created")));
+		job.setStarted(toLong(doc.get("started")));
+		job.setFinished(toLong(doc.get("finished")));
+		return job;
+	}
+
+	private long toLong(Object value) {
+		return value instanceof Number ? ((Number) value).longValue() : 0L;
+	}
+
+	private void copyStringMap(Object source, Map<String, String> target) {
+		if (source instanceof Map) {
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) source).entrySet()) {
+				if (entry.getValue() != null) {
+					target.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+				}
+			}
+		}
+	}
+
 	@Override
 	public Change create(String repositoryId, Change change) {
 		CouchChange cc = new CouchChange(change);
@@ -3613,6 +4471,51 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		return ca.convert();
 	}
 
+	@Override
+	public List<String> createArchivesBulk(String repositoryId, List<Archive> archives) {
+		List<String> failed = new ArrayList<String>();
+		if (archives == null || archives.isEmpty()) {
+			return failed;
+		}
+
+		// Same lastRevision as createArchive, read in bulk where the caller does not know it
+		List<String> unknownRevisions = new ArrayList<String>();
+		for (Archive archive : archives) {
+			if (archive.getLastRevision() == null) {
+				unknownRevisions.add(archive.getOriginalId());
+			}
+		}
+		Map<String, com.ibm.cloud.cloudant.v1.model.Document> originals = connectorPool.getClient(repositoryId)
+				.getDocuments(unknownRevisions);
+
+		List<CouchArchive> couchArchives = new ArrayList<CouchArchive>(archives.size());
+		for (Archive archive : archives) {
+			CouchArchive ca = new CouchArchive(archive);
+			com.ibm.cloud.cloudant.v1.model.Document original = originals.get(archive.getOriginalId());
+			if (ca.getLastRevision() == null && original != null) {
+				ca.setLastRevision(original.getRev());
+			}
+			couchArchives.add(ca);
+		}
+
+		String archiveId = repositoryInfoMap.getArchiveId(repositoryId);
+		List<DocumentResult> results = connectorPool.get(archiveId).bulkWrite(couchArchives);
+		for (int i = 0; i < results.size(); i++) {
+			DocumentResult result = results.get(i);
+			if (result.getError() != null) {
+				failed.add(archives.get(i).getOriginalId());
+			} else {
+				// So that the caller can take the archive back
+				archives.get(i).setId(result.getId());
+				archives.get(i).setRevision(result.getRev());
+			}
+		}
+		if (!failed.isEmpty()) {
+			log.warn("createArchivesBulk: " + failed.size() + " of " + archives.size() + " archives could not be written in repository " + repositoryId);
+		}
+		return failed;
+	}
+
 	@Override
 	public Archive createAttachmentArchive(String repositoryId, Archive archive) {
 		String archiveId = repositoryInfoMap.getArchiveId(repositoryId);
@@ -3664,6 +4567,29 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		}
 	}
 
+	@Override
+	public int deleteArchivesBulk(String repositoryId, List<Archive> archives) {
+		if (archives == null || archives.isEmpty()) {
+			return 0;
+		}
+		// The revisions are known from the read, so no document is fetched again
+		Map<String, String> revisions = new LinkedHashMap<String, String>();
+		for (Archive archive : archives) {
+			revisions.put(archive.getId(), archive.getRevision());
+		}
+
+		String archiveDb = repositoryInfoMap.getArchiveId(repositoryId);
+		int deleted = 0;
+		for (DocumentResult result : connectorPool.get(archiveDb).deleteRevisions(revisions)) {
+			if (result.getError() == null) {
+				deleted++;
+			} else {
+				log.warn("deleteArchivesBulk: could not delete archive " + result.getId() + ": " + result.getError());
+			}
+		}
+		return deleted;
+	}
+
 	@Override
 	public void deleteDocumentArchive(String repositoryId, String archiveId) {
 		try {
@@ -3874,6 +4800,31 @@ public class ContentDaoServiceImpl implements ContentDaoService {
 		return obj.toString();
 	}
 
+	@Override
+	public Map<String, String> getAttachmentIdsOfDocuments(String repositoryId, String startAfter, int limit) {
+		Map<String, Object> queryParams = new HashMap<String, Object>();
+		queryParams.put("include_docs", false);
+		// The start key itself is returned again and skipped below
+		queryParams.put("limit", startAfter == null ? limit : limit + 1);
+		if (startAfter != null) {
+			queryParams.put("startkey", startAfter);
+		}
+		ViewResult result = connectorPool.getClient(repositoryId).queryView("_repo", "documents", queryParams);
+
+		Map<String, String> attachmentIds = new LinkedHashMap<String, String>();
+		if (result == null || result.getRows() == null) {
+			return attachmentIds;
+		}
+		for (ViewResultRow row : result.getRows()) {
+			if (row.getId().equals(startAfter) || attachmentIds.size() >= limit) {
+				continue;
+			}
+			Object attachmentId = row.getValue() instanceof Map ? ((Map<?, ?>) row.getValue()).get("attachmentNodeId") : null;
+			attachmentIds.put(row.getId(), attachmentId == null ? null : attachmentId.toString());
+		}
+		return attachmentIds;
+	}
+
 	@Override
 	public Long getAttachmentActualSize(String repositoryId, String attachmentId) {
 		if (attachmentId == null || attachmentId.trim().isEmpty()) {
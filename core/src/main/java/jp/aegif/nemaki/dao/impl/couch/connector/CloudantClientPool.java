@@ -8,9 +8,9 @@ import java.net.MalformedURLException;
 import java.net.Socket;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.logging.Log;
@@ -25,6 +25,7 @@ import com.ibm.cloud.cloudant.v1.model.PutDatabaseOptions;
 import com.ibm.cloud.cloudant.v1.model.DatabaseInformation;
 import com.ibm.cloud.sdk.core.security.BasicAuthenticator;
 import com.ibm.cloud.sdk.core.service.exception.NotFoundException;
+import com.ibm.cloud.sdk.core.service.exception.ServiceResponseException;
 
 
 import jp.aegif.nemaki.cmis.factory.info.RepositoryInfoMap;
@@ -47,7 +48,7 @@ public class CloudantClientPool {
 	private String authUserName;
 	private String authPassword;
 
-	private Map<String, CloudantClientWrapper> pool = new HashMap<String, CloudantClientWrapper>();
+	private Map<String, CloudantClientWrapper> pool = new ConcurrentHashMap<String, CloudantClientWrapper>();
 	private boolean initialized = false;
 	private final Object initLock = new Object();
 	
@@ -316,6 +317,37 @@ public class CloudantClientPool {
 		return getClient(archiveId);
 	}
 
+	/**
+	 * Get Cloudant client wrapper for an auxiliary database which is not a
+	 * repository (e.g. the change log archive), creating the database on first use.
+	 */
+	public synchronized CloudantClientWrapper getOrCreate(String databaseName) {
+		if (!initialized) {
+			initialize();
+		}
+
+		CloudantClientWrapper wrapper = pool.get(databaseName);
+		if (wrapper != null) {
+			return wrapper;
+		}
+
+		Cloudant cloudantClient = pool.get(SystemConst.NEMAKI_CONF_DB).getClient();
+		try {
+			PutDatabaseOptions options = new PutDatabaseOptions.Builder().db(databaseName).build();
+			cloudantClient.putDatabase(options).execute();
+			log.info("Created database: " + databaseName);
+		} catch (ServiceResponseException e) {
+			// 412: already exists
+			if (e.getStatusCode() != 412) {
+				throw new RuntimeException("Failed to create database: " + databaseName, e);
+			}
+		}
+
+		wrapper = new CloudantClientWrapper(cloudantClient, databaseName, couchdbObjectMapper);
+		pool.put(databaseName, wrapper);
+		return wrapper;
+	}
+
 	/**
 	 * Test connection to CouchDB
 	 */
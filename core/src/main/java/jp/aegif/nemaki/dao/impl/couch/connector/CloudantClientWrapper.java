@@ -1,7 +1,10 @@
 package jp.aegif.nemaki.dao.impl.couch.connector;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -29,6 +32,9 @@ public class CloudantClientWrapper {
 
 	private static final Logger log = LoggerFactory.getLogger(CloudantClientWrapper.class);
 
+	// CLOUDANT BEST PRACTICE: Start with 1000 documents per _bulk_docs request
+	public static final int BULK_BATCH_SIZE = 1000;
+
 	/**
 	 * Constructor with Spring dependency injection for unified ObjectMapper
 	 * 
@@ -217,6 +223,46 @@ public class CloudantClientWrapper {
 		}
 	}
 	
+	/**
+	 * Delete documents at known revisions using the _bulk_docs endpoint, one request per
+	 * BULK_BATCH_SIZE documents. Unlike deleteDocumentsBatch, no document is read first.
+	 *
+	 * @param revisions current revision by document ID
+	 * @return per-document results in the iteration order of revisions. Conflicts are reported, not thrown.
+	 */
+	public List<DocumentResult> deleteRevisions(Map<String, String> revisions) {
+		List<DocumentResult> results = new ArrayList<>();
+		if (revisions == null || revisions.isEmpty()) {
+			return results;
+		}
+
+		List<Document> deletions = new ArrayList<>(revisions.size());
+		for (Map.Entry<String, String> entry : revisions.entrySet()) {
+			Document deletion = new Document();
+			deletion.setId(entry.getKey());
+			deletion.setRev(entry.getValue());
+			deletion.put("_deleted", true);
+			deletions.add(deletion);
+		}
+
+		for (int i = 0; i < deletions.size(); i += BULK_BATCH_SIZE) {
+			List<Document> batch = deletions.subList(i, Math.min(i + BULK_BATCH_SIZE, deletions.size()));
+			PostBulkDocsOptions options = new PostBulkDocsOptions.Builder()
+				.db(databaseName)
+				.bulkDocs(new BulkDocs.Builder()
+					.docs(batch)
+					.build())
+				.build();
+			List<DocumentResult> batchResults = client.postBulkDocs(options).execute().getResult();
+			if (batchResults == null || batchResults.size() != batch.size()) {
+				throw new RuntimeException("Bulk delete returned " + (batchResults == null ? 0 : batchResults.size())
+						+ " results for " + batch.size() + " documents");
+			}
+			results.addAll(batchResults);
+		}
+		return results;
+	}
+
 	/**
 	 * FALLBACK: Individual delete method for backward compatibility
 	 * Only use this when bulk operations are not suitable
@@ -266,6 +312,118 @@ public class CloudantClientWrapper {
 		log.info("BATCH DELETE: Completed - Success: " + successCount + ", Errors: " + errorCount);
 	}
 
+	/**
+	 * Create or update multiple documents using the _bulk_docs endpoint.
+	 * Documents without _rev are created, documents with _rev are updated.
+	 * The input is split into chunks of BULK_BATCH_SIZE documents; each chunk is one HTTP request.
+	 *
+	 * CouchDB reports success or failure (e.g. conflict) per document instead of failing the request,
+	 * so the returned list has exactly one DocumentResult per input document, in input order.
+	 * On success the new _id/_rev are written back to CouchNodeBase instances (Ektorp-style state).
+	 *
+	 * @param documents Couch model objects (CouchNodeBase subclasses)
+	 * @return per-document results in the same order as documents
+	 */
+	public List<DocumentResult> bulkWrite(List<?> documents) {
+		List<DocumentResult> results = new ArrayList<>();
+		if (documents == null || documents.isEmpty()) {
+			return results;
+		}
+
+		for (int i = 0; i < documents.size(); i += BULK_BATCH_SIZE) {
+			int endIndex = Math.min(i + BULK_BATCH_SIZE, documents.size());
+			List<?> batch = documents.subList(i, endIndex);
+			log.debug("BULK WRITE: Processing batch " + (i / BULK_BATCH_SIZE + 1) + " with " + batch.size() + " documents");
+			results.addAll(performBulkWrite(batch));
+		}
+
+		if (log.isDebugEnabled()) {
+			int errors = 0;
+			for (DocumentResult result : results) {
+				if (result.getError() != null) {
+					errors++;
+				}
+			}
+			log.debug("BULK WRITE: Completed " + documents.size() + " documents in database " + databaseName + ", errors: " + errors);
+		}
+		return results;
+	}
+
+	private List<DocumentResult> performBulkWrite(List<?> batch) {
+		ObjectMapper mapper = getObjectMapper();
+		List<Map<String, Object>> docs = new ArrayList<>(batch.size());
+		for (Object document : batch) {
+			docs.add(toBulkDocumentMap(document));
+		}
+
+		List<DocumentResult> results;
+		try {
+			Map<String, Object> body = new HashMap<>();
+			body.put("docs", docs);
+			byte[] json = mapper.writeValueAsBytes(body);
+
+			PostBulkDocsOptions options = new PostBulkDocsOptions.Builder()
+				.db(databaseName)
+				.body(new java.io.ByteArrayInputStream(json))
+				.build();
+			results = client.postBulkDocs(options).execute().getResult();
+		} catch (Exception e) {
+			log.error("BULK WRITE: _bulk_docs request failed for database " + databaseName, e);
+			throw new RuntimeException("Bulk write failed: " + e.getMessage(), e);
+		}
+
+		if (results == null || results.size() != batch.size()) {
+			throw new RuntimeException("Bulk write returned " + (results == null ? 0 : results.size())
+					+ " results for " + batch.size() + " documents");
+		}
+
+		for (int i = 0; i < batch.size(); i++) {
+			DocumentResult result = results.get(i);
+			Object document = batch.get(i);
+			if (result.getError() == null && document instanceof CouchNodeBase) {
+				CouchNodeBase nodeBase = (CouchNodeBase) document;
+				nodeBase.setId(result.getId());
+				nodeBase.setRevision(result.getRev());
+			} else if (result.getError() != null) {
+				log.warn("BULK WRITE: Failed to write document " + result.getId() + ": " + result.getError() + " - " + result.getReason());
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Serialize a Couch model object the same way create()/update() do.
+	 */
+	private Map<String, Object> toBulkDocumentMap(Object document) {
+		if (document instanceof jp.aegif.nemaki.model.couch.CouchPropertyDefinitionCore) {
+			throw new IllegalArgumentException("CouchPropertyDefinitionCore is not supported by bulk write");
+		}
+
+		Map<String, Object> documentMap;
+		if (document instanceof jp.aegif.nemaki.model.couch.CouchChange) {
+			jp.aegif.nemaki.model.couch.CouchChange change = (jp.aegif.nemaki.model.couch.CouchChange) document;
+			documentMap = convertChangeToMap(change);
+			documentMap.put("_id", change.getId());
+			documentMap.put("_rev", change.getRevision());
+		} else {
+			@SuppressWarnings("unchecked")
+			Map<String, Object> tempMap = getObjectMapper().convertValue(document, Map.class);
+			documentMap = tempMap;
+			// CouchTypeDefinition.properties is List<String>, see create()
+			if (!(document instanceof jp.aegif.nemaki.model.couch.CouchTypeDefinition)) {
+				documentMap = convertPropertiesArrayToMap(documentMap);
+			}
+		}
+
+		if (documentMap.get("_id") == null) {
+			documentMap.remove("_id");
+		}
+		if (documentMap.get("_rev") == null) {
+			documentMap.remove("_rev");
+		}
+		return normalizeDataTypes(documentMap);
+	}
+
 	/**
 	 * Get the unified ObjectMapper instance
 	 * This method provides access to the Spring-configured ObjectMapper
@@ -501,6 +659,72 @@ public class CloudantClientWrapper {
 		}
 	}
 
+	/**
+	 * Get a document by ID. Unlike {@link #get(String)}, a failed read throws
+	 * instead of reading as a missing document.
+	 *
+	 * @return null only if the document does not exist or is deleted
+	 */
+	public com.ibm.cloud.cloudant.v1.model.Document getStrict(String id) {
+		try {
+			GetDocumentOptions options = new GetDocumentOptions.Builder()
+				.db(databaseName)
+				.docId(id)
+				.build();
+
+			com.ibm.cloud.cloudant.v1.model.Document result = client.getDocument(options).execute().getResult();
+			if (result != null && result.getProperties() != null
+					&& Boolean.TRUE.equals(result.getProperties().get("_deleted"))) {
+				return null;
+			}
+			return result;
+
+		} catch (NotFoundException e) {
+			log.debug("Document not found with ID: " + id);
+			return null;
+		} catch (Exception e) {
+			throw new RuntimeException("Failed to read document ID '" + id + "' from database '" + databaseName + "': " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Get documents by ID with _all_docs?keys, one request per BULK_BATCH_SIZE ids.
+	 * Missing and deleted documents are left out of the result.
+	 *
+	 * @param ids document IDs
+	 * @return documents keyed by ID, in the order of ids
+	 */
+	public Map<String, com.ibm.cloud.cloudant.v1.model.Document> getDocuments(Collection<String> ids) {
+		Map<String, com.ibm.cloud.cloudant.v1.model.Document> result = new LinkedHashMap<>();
+		if (ids == null || ids.isEmpty()) {
+			return result;
+		}
+
+		List<String> keys = new ArrayList<>(new LinkedHashSet<>(ids));
+		for (int i = 0; i < keys.size(); i += BULK_BATCH_SIZE) {
+			List<String> batch = keys.subList(i, Math.min(i + BULK_BATCH_SIZE, keys.size()));
+			PostAllDocsOptions options = new PostAllDocsOptions.Builder()
+				.db(databaseName)
+				.keys(batch)
+				.includeDocs(true)
+				.build();
+
+			AllDocsResult allDocs = client.postAllDocs(options).execute().getResult();
+			if (allDocs == null || allDocs.getRows() == null) {
+				continue;
+			}
+			for (DocsResultRow row : allDocs.getRows()) {
+				// Rows of missing documents carry an error, deleted ones a null doc
+				if (row.getError() == null && row.getDoc() != null) {
+					result.put(row.getKey(), row.getDoc());
+				}
+			}
+		}
+
+		log.debug("Retrieved " + result.size() + " of " + keys.size() + " documents from database: " + databaseName);
+		return result;
+	}
+
 	/**
 	 * Get a document with attachments metadata
 	 * CRITICAL: Includes _attachments field for retrieving attachment metadata
@@ -668,6 +892,9 @@ public class CloudantClientWrapper {
 
 			// Add query parameters if provided
 			if (queryParams != null) {
+				if (queryParams.get("include_docs") instanceof Boolean) {
+					builder.includeDocs((Boolean) queryParams.get("include_docs"));
+				}
 				if (queryParams.containsKey("limit")) {
 					Object limitValue = queryParams.get("limit");
 					if (limitValue instanceof Integer) {
@@ -814,6 +1041,27 @@ public class CloudantClientWrapper {
 		}
 	}
 
+	/**
+	 * Get documents whose ID is in [startKey, endKey) in ID order
+	 *
+	 * @param startKey first ID to include. null means from the beginning
+	 * @param endKey first ID to exclude. null means to the end
+	 * @param limit maximum number of rows
+	 */
+	public AllDocsResult getAllDocsInRange(String startKey, String endKey, long limit) {
+		PostAllDocsOptions.Builder builder = new PostAllDocsOptions.Builder()
+			.db(databaseName)
+			.includeDocs(true)
+			.limit(limit);
+		if (startKey != null) {
+			builder.startKey(startKey);
+		}
+		if (endKey != null) {
+			builder.endKey(endKey).inclusiveEnd(false);
+		}
+		return client.postAllDocs(builder.build()).execute().getResult();
+	}
+
 	/**
 	 * Check if document exists
 	 */
@@ -855,6 +1103,40 @@ public class CloudantClientWrapper {
 		}
 	}
 
+	/**
+	 * Read the _changes feed with documents, filtered by a Mango selector.
+	 *
+	 * @param selector Mango selector applied on the server side (null: all documents)
+	 * @param since update sequence to start after; null or "0" reads from the beginning
+	 * @param limit maximum number of results (0 or less: no limit)
+	 * @param longPollTimeoutMillis when greater than 0 and nothing is pending, CouchDB holds
+	 *            the request open (feed=longpoll) until a change arrives or the timeout elapses.
+	 *            Must be shorter than the HTTP socket timeout of the client.
+	 * @return the feed page; last_seq is the token to continue from
+	 */
+	public ChangesResult getChanges(Map<String, Object> selector, String since, long limit, long longPollTimeoutMillis) {
+		PostChangesOptions.Builder builder = new PostChangesOptions.Builder()
+			.db(databaseName)
+			.includeDocs(true)
+			.since(since == null ? "0" : since);
+		if (selector != null) {
+			builder.filter("_selector").selector(selector);
+		}
+		if (limit > 0) {
+			builder.limit(limit);
+		}
+		if (longPollTimeoutMillis > 0) {
+			builder.feed("longpoll").timeout(longPollTimeoutMillis);
+		}
+
+		ChangesResult result = client.postChanges(builder.build()).execute().getResult();
+		if (log.isDebugEnabled()) {
+			log.debug("Read " + (result.getResults() == null ? 0 : result.getResults().size()) + " changes from " + databaseName
+					+ " since " + since + ", last_seq=" + result.getLastSeq() + ", pending=" + result.getPending());
+		}
+		return result;
+	}
+
 	/**
 	 * Bridge method to replace Ektorp's ViewQuery - query view and deserialize to specific class
 	 */
@@ -1036,40 +1318,7 @@ public class CloudantClientWrapper {
 			
 			// Handle CouchChange objects manually due to ObjectMapper issues
 			if (document instanceof jp.aegif.nemaki.model.couch.CouchChange) {
-				jp.aegif.nemaki.model.couch.CouchChange change = (jp.aegif.nemaki.model.couch.CouchChange) document;
-				
-				documentMap = new java.util.HashMap<>();
-				// Required fields for change documents
-				documentMap.put("type", change.getType());
-				documentMap.put("created", change.getCreated() != null ? change.getCreated().getTimeInMillis() : null);
-				documentMap.put("creator", change.getCreator());
-				documentMap.put("modified", change.getModified() != null ? change.getModified().getTimeInMillis() : null);
-				documentMap.put("modifier", change.getModifier());
-				
-				// Change-specific fields
-				documentMap.put("objectId", change.getObjectId());
-				documentMap.put("token", change.getToken());
-				documentMap.put("changeType", change.getChangeType() != null ? change.getChangeType().toString() : null);
-				documentMap.put("time", change.getTime() != null ? change.getTime().getTimeInMillis() : null);
-				documentMap.put("name", change.getName());
-				documentMap.put("baseType", change.getBaseType());
-				documentMap.put("objectType", change.getObjectType());
-				documentMap.put("versionSeriesId", change.getVersionSeriesId());
-				documentMap.put("versionLabel", change.getVersionLabel());
-				documentMap.put("policyIds", change.getPolicyIds());
-				documentMap.put("acl", change.getAcl());
-				documentMap.put("paretnId", change.getParetnId());
-				
-				// Additional properties (empty map for now)
-				documentMap.put("additionalProperties", new java.util.HashMap<>());
-				
-				// Content type flags
-				documentMap.put("content", change.isContent());
-				documentMap.put("document", change.isDocument());
-				documentMap.put("folder", change.isFolder());
-				documentMap.put("attachment", change.isAttachment());
-				documentMap.put("relationship", change.isRelationship());
-				documentMap.put("policy", change.isPolicy());
+				documentMap = convertChangeToMap((jp.aegif.nemaki.model.couch.CouchChange) document);
 			} else if (document instanceof jp.aegif.nemaki.model.couch.CouchPropertyDefinitionCore) {
 				// CRITICAL FIX: Handle CouchPropertyDefinitionCore explicitly to ensure propertyId is saved
 				jp.aegif.nemaki.model.couch.CouchPropertyDefinitionCore core = (jp.aegif.nemaki.model.couch.CouchPropertyDefinitionCore) document;
@@ -1189,6 +1438,45 @@ public class CloudantClientWrapper {
 		}
 	}
 
+	/**
+	 * Handle CouchChange objects manually due to ObjectMapper issues
+	 */
+	private Map<String, Object> convertChangeToMap(jp.aegif.nemaki.model.couch.CouchChange change) {
+		Map<String, Object> documentMap = new java.util.HashMap<>();
+		// Required fields for change documents
+		documentMap.put("type", change.getType());
+		documentMap.put("created", change.getCreated() != null ? change.getCreated().getTimeInMillis() : null);
+		documentMap.put("creator", change.getCreator());
+		documentMap.put("modified", change.getModified() != null ? change.getModified().getTimeInMillis() : null);
+		documentMap.put("modifier", change.getModifier());
+		
+		// Change-specific fields
+		documentMap.put("objectId", change.getObjectId());
+		documentMap.put("token", change.getToken());
+		documentMap.put("changeType", change.getChangeType() != null ? change.getChangeType().toString() : null);
+		documentMap.put("time", change.getTime() != null ? change.getTime().getTimeInMillis() : null);
+		documentMap.put("name", change.getName());
+		documentMap.put("baseType", change.getBaseType());
+		documentMap.put("objectType", change.getObjectType());
+		documentMap.put("versionSeriesId", change.getVersionSeriesId());
+		documentMap.put("versionLabel", change.getVersionLabel());
+		documentMap.put("policyIds", change.getPolicyIds());
+		documentMap.put("acl", change.getAcl());
+		documentMap.put("paretnId", change.getParetnId());
+		
+		// Additional properties (empty map for now)
+		documentMap.put("additionalProperties", new java.util.HashMap<>());
+		
+		// Content type flags
+		documentMap.put("content", change.isContent());
+		documentMap.put("document", change.isDocument());
+		documentMap.put("folder", change.isFolder());
+		documentMap.put("attachment", change.isAttachment());
+		documentMap.put("relationship", change.isRelationship());
+		documentMap.put("policy", change.isPolicy());
+		return documentMap;
+	}
+
 	/**
 	 * Update document (compatible with Ektorp update method)
 	 * This method implements Ektorp-style object state management - trusts object revision completely
@@ -21,6 +21,7 @@
  ******************************************************************************/
 package jp.aegif.nemaki.init;
 
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.logging.Log;
@@ -67,6 +68,9 @@ public class DatabasePreInitializer implements ApplicationListener<ContextRefres
     // AtomicBoolean to ensure database initialization happens only once even if ContextRefreshedEvent fires multiple times
     private final AtomicBoolean initialized = new AtomicBoolean(false);
 
+    // How long to wait for CouchDB to come up before checking the databases
+    private static final long COUCHDB_WAIT_MS = 10000;
+
     // Configuration properties for database initialization with default values
     private String couchdbUrl = "http://couchdb:5984";
     private String couchdbUsername = "admin";
@@ -107,12 +111,12 @@ public class DatabasePreInitializer implements ApplicationListener<ContextRefres
         log.info("=== DATABASE PRE-INITIALIZATION (Phase 1) STARTED ===");
         log.info("Triggered by ContextRefreshedEvent - Basic infrastructure is now ready");
 
+        long start = System.currentTimeMillis();
         try {
             // Phase 1: Pure database-layer operations
             // These operations should ONLY use HTTP clients, NOT CMIS services
             // Database operations must complete before CMIS services initialize
-            // Wait a moment for CouchDB to be ready
-            Thread.sleep(2000);
+            waitForCouchDb();
             
             if (log.isDebugEnabled()) {
                 log.debug("Initializing CouchDB databases at: " + couchdbUrl);
@@ -161,6 +165,37 @@ public class DatabasePreInitializer implements ApplicationListener<ContextRefres
             log.error("Phase 1 database pre-initialization failed", e);
             // Don't fail the entire startup - let Phase 2 handle missing data gracefully
             log.warn("Continuing startup - Phase 2 may need to handle missing database setup");
+        } finally {
+            RepositoryBootstrap.record("database-init", "*", System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Wait until CouchDB answers /_up, at most COUCHDB_WAIT_MS. A running
+     * CouchDB is used right away instead of after a fixed delay.
+     */
+    private void waitForCouchDb() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + COUCHDB_WAIT_MS;
+        while (true) {
+            try {
+                java.net.HttpURLConnection conn = (java.net.HttpURLConnection) new java.net.URL(couchdbUrl + "/_up").openConnection();
+                conn.setConnectTimeout(1000);
+                conn.setReadTimeout(1000);
+                int responseCode = conn.getResponseCode();
+                conn.disconnect();
+                if (responseCode == 200) {
+                    return;
+                }
+            } catch (java.io.IOException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("CouchDB not reachable yet: " + e.getMessage());
+                }
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                log.warn("CouchDB did not report ready within " + COUCHDB_WAIT_MS + "ms, continuing");
+                return;
+            }
+            Thread.sleep(200);
         }
     }
     
@@ -179,105 +214,24 @@ public class DatabasePreInitializer implements ApplicationListener<ContextRefres
     private boolean isDatabasesAlreadyInitialized() {
         try {
             String[] requiredDatabases = {"bedroom", "bedroom_closet", "canopy", "canopy_closet", "nemaki_conf"};
-            // Databases that require design documents (closet databases don't need them)
-            String[] databasesWithDesignDocs = {"bedroom", "canopy", "nemaki_conf"};
             
             if (log.isDebugEnabled()) {
                 log.debug("CHECKING: Database initialization status");
             }
             log.info("CHECKING: Database initialization status");
             
-            for (String dbName : requiredDatabases) {
-                // Check if database exists
-                java.net.URL checkUrl = new java.net.URL(couchdbUrl + "/" + dbName);
-                java.net.HttpURLConnection checkConn = (java.net.HttpURLConnection) checkUrl.openConnection();
-                
-                String auth = couchdbUsername + ":" + couchdbPassword;
-                String encodedAuth = java.util.Base64.getEncoder().encodeToString(auth.getBytes());
-                checkConn.setRequestProperty("Authorization", "Basic " + encodedAuth);
-                checkConn.setRequestMethod("HEAD");
-                
-                int responseCode = checkConn.getResponseCode();
-                checkConn.disconnect();
-                
-                if (responseCode != 200) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("CHECKING: Database " + dbName + " not found (HTTP " + responseCode + ")");
-                    }
-                    log.info("CHECKING: Database " + dbName + " not found, full initialization needed");
-                    return false;
-                }
-                
-                // Only check design documents for databases that require them (not closet databases)
-                boolean needsDesignDoc = false;
-                for (String designDbName : databasesWithDesignDocs) {
-                    if (designDbName.equals(dbName)) {
-                        needsDesignDoc = true;
-                        break;
-                    }
-                }
-                
-                if (needsDesignDoc) {
-                    java.net.URL designUrl = new java.net.URL(couchdbUrl + "/" + dbName + "/_design/_repo");
-                    java.net.HttpURLConnection designConn = (java.net.HttpURLConnection) designUrl.openConnection();
-                    designConn.setRequestProperty("Authorization", "Basic " + encodedAuth);
-                    designConn.setRequestMethod("GET");  // Changed from HEAD to GET to read content
-
-                    int designResponseCode = designConn.getResponseCode();
-
-                    if (designResponseCode != 200) {
-                        designConn.disconnect();
-                        if (log.isDebugEnabled()) {
-                            log.debug("CHECKING: Database " + dbName + " missing design documents, initialization needed");
-                        }
-                        log.info("CHECKING: Database " + dbName + " missing design documents, full initialization needed");
-                        return false;
-                    }
-
-                    // CRITICAL FIX: Verify design document has all required views (43 for bedroom/canopy)
-                    // Patch_StandardCmisViews only creates 5 views, which is incomplete!
-                    java.io.BufferedReader designReader = new java.io.BufferedReader(
-                        new java.io.InputStreamReader(designConn.getInputStream()));
-                    String designResponseStr = designReader.lines().reduce("", (a, b) -> a + b);
-                    designReader.close();
-                    designConn.disconnect();
-
-                    com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-                    com.fasterxml.jackson.databind.JsonNode designDoc = mapper.readTree(designResponseStr);
-
-                    if (designDoc.has("views")) {
-                        int viewCount = designDoc.get("views").size();
-                        // bedroom and canopy require 38 views from dump file
-                        // Patch_StandardCmisViews only creates 5 views (incomplete)
-                        int requiredViews = ("bedroom".equals(dbName) || "canopy".equals(dbName)) ? 38 : 0;
-
-                        if (viewCount < requiredViews) {
-                            if (log.isDebugEnabled()) {
-                                log.debug("CHECKING: Database " + dbName + " has incomplete views (" +
-                                    viewCount + "/" + requiredViews + "), initialization needed");
-                            }
-                            log.info("CHECKING: Database " + dbName + " has incomplete views (" +
-                                viewCount + "/" + requiredViews + "), full initialization needed");
+            // The databases are independent, so they are checked at the same time
+            boolean allInitialized = RepositoryBootstrap.allMatch("database-check", Arrays.asList(requiredDatabases),
+                    requiredDatabases.length, dbName -> {
+                        try {
+                            return isDatabaseInitialized(dbName);
+                        } catch (Exception e) {
+                            log.warn("Error checking database " + dbName + ": " + e.getMessage());
                             return false;
                         }
-
-                        if (log.isDebugEnabled()) {
-                            log.debug("CHECKING: Database " + dbName + " has complete views (" + viewCount + ")");
-                        }
-                        log.info("CHECKING: Database " + dbName + " has complete views (" + viewCount + ")");
-                    } else {
-                        if (log.isDebugEnabled()) {
-                            log.debug("CHECKING: Database " + dbName + " design document has no views, initialization needed");
-                        }
-                        log.info("CHECKING: Database " + dbName + " design document has no views, full initialization needed");
-                        return false;
-                    }
-                } else {
-                    if (log.isDebugEnabled()) {
-                        log.debug("CHECKING: Database " + dbName + " (closet) - design documents not required");
-                    }
-                    log.info("CHECKING: Database " + dbName + " (closet) - design documents not required");
-                }
+                    });
+            if (!allInitialized) {
+                return false;
             }
             
             // CRITICAL IDEMPOTENT CHECK: Validate .system folder is properly configured
@@ -304,6 +258,106 @@ public class DatabasePreInitializer implements ApplicationListener<ContextRefres
         }
     }
     
+    /**
+     * Check that a database exists and, for repositories, that its design document has all views
+     */
+    private boolean isDatabaseInitialized(String dbName) throws Exception {
+        // Databases that require design documents (closet databases don't need them)
+        String[] databasesWithDesignDocs = {"bedroom", "canopy", "nemaki_conf"};
+        String auth = couchdbUsername + ":" + couchdbPassword;
+        String encodedAuth = java.util.Base64.getEncoder().encodeToString(auth.getBytes());
+
+        // Check if database exists
+        java.net.URL checkUrl = new java.net.URL(couchdbUrl + "/" + dbName);
+        java.net.HttpURLConnection checkConn = (java.net.HttpURLConnection) checkUrl.openConnection();
+        
+        checkConn.setRequestProperty("Authorization", "Basic " + encodedAuth);
+        checkConn.setRequestMethod("HEAD");
+        
+        int responseCode = checkConn.getResponseCode();
+        checkConn.disconnect();
+        
+        if (responseCode != 200) {
+            if (log.isDebugEnabled()) {
+                log.debug("CHECKING: Database " + dbName + " not found (HTTP " + responseCode + ")");
+            }
+            log.info("CHECKING: Database " + dbName + " not found, full initialization needed");
+            return false;
+        }
+        
+        // Only check design documents for databases that require them (not closet databases)
+        boolean needsDesignDoc = false;
+        for (String designDbName : databasesWithDesignDocs) {
+            if (designDbName.equals(dbName)) {
+                needsDesignDoc = true;
+                break;
+            }
+        }
+        
+        if (needsDesignDoc) {
+            java.net.URL designUrl = new java.net.URL(couchdbUrl + "/" + dbName + "/_design/_repo");
+            java.net.HttpURLConnection designConn = (java.net.HttpURLConnection) designUrl.openConnection();
+            designConn.setRequestProperty("Authorization", "Basic " + encodedAuth);
+            designConn.setRequestMethod("GET");  // Changed from HEAD to GET to read content
+
+            int designResponseCode = designConn.getResponseCode();
+
+            if (designResponseCode != 200) {
+                designConn.disconnect();
+                if (log.isDebugEnabled()) {
+                    log.debug("CHECKING: Database " + dbName + " missing design documents, initialization needed");
+                }
+                log.info("CHECKING: Database " + dbName + " missing design documents, full initialization needed");
+                return false;
+            }
+
+            // CRITICAL FIX: Verify design document has all required views (43 for bedroom/canopy)
+            // Patch_StandardCmisViews only creates 5 views, which is incomplete!
+            java.io.BufferedReader designReader = new java.io.BufferedReader(
+                new java.io.InputStreamReader(designConn.getInputStream()));
+            String designResponseStr = designReader.lines().reduce("", (a, b) -> a + b);
+            designReader.close();
+            designConn.disconnect();
+
+            com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
+            com.fasterxml.jackson.databind.JsonNode designDoc = mapper.readTree(designResponseStr);
+
+            if (designDoc.has("views")) {
+                int viewCount = designDoc.get("views").size();
+                // bedroom and canopy require 38 views from dump file
+                // Patch_StandardCmisViews only creates 5 views (incomplete)
+                int requiredViews = ("bedroom".equals(dbName) || "canopy".equals(dbName)) ? 38 : 0;
+
+                if (viewCount < requiredViews) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("CHECKING: Database " + dbName + " has incomplete views (" +
+                            viewCount + "/" + requiredViews + "), initialization needed");
+                    }
+                    log.info("CHECKING: Database " + dbName + " has incomplete views (" +
+                        viewCount + "/" + requiredViews + "), full initialization needed");
+                    return false;
+                }
+
+                if (log.isDebugEnabled()) {
+                    log.debug("CHECKING: Database " + dbName + " has complete views (" + viewCount + ")");
+                }
+                log.info("CHECKING: Database " + dbName + " has complete views (" + viewCount + ")");
+            } else {
+                if (log.isDebugEnabled()) {
+                    log.debug("CHECKING: Database " + dbName + " design document has no views, initialization needed");
+                }
+                log.info("CHECKING: Database " + dbName + " design document has no views, full initialization needed");
+                return false;
+            }
+        } else {
+            if (log.isDebugEnabled()) {
+                log.debug("CHECKING: Database " + dbName + " (closet) - design documents not required");
+            }
+            log.info("CHECKING: Database " + dbName + " (closet) - design documents not required");
+        }
+        return true;
+    }
+    
     private void createDatabaseIfNotExists(String dbName) {
         try {
             // Check if database exists
@@ -557,6 +611,17 @@ public class DatabasePreInitializer implements ApplicationListener<ContextRefres
                     log.debug("Validating .system folder for repository: " + repositoryId);
                 }
 
+                // Count .system folders using the childByName view; the view only
+                // returns the children named .system, so no full scan is needed
+                Integer viewCount = countSystemFoldersByView(repositoryId, rootFolderId, encodedAuth);
+                if (viewCount != null) {
+                    if (viewCount != 1) {
+                        log.info("Found " + viewCount + " .system folders - initialization needed");
+                        return false;
+                    }
+                    continue;
+                }
+
                 // Count .system folders using direct document queries to detect duplicates
                 
                 java.net.URL allDocsUrl = new java.net.URL(couchdbUrl + "/" + repositoryId + "/_all_docs?include_docs=true");
@@ -626,4 +691,46 @@ public class DatabasePreInitializer implements ApplicationListener<ContextRefres
             return false; // Trigger full initialization if validation fails
         }
     }
+
+    /**
+     * @return the number of .system folders directly below the root folder,
+     *         or null if the view cannot be queried
+     */
+    private Integer countSystemFoldersByView(String repositoryId, String rootFolderId, String encodedAuth) {
+        try {
+            com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
+            com.fasterxml.jackson.databind.node.ObjectNode key = mapper.createObjectNode();
+            key.put("parentId", rootFolderId);
+            key.put("name", ".system");
+            String query = "key=" + java.net.URLEncoder.encode(mapper.writeValueAsString(key), "UTF-8");
+
+            java.net.URL viewUrl = new java.net.URL(couchdbUrl + "/" + repositoryId + "/_design/_repo/_view/childByName?" + query);
+            java.net.HttpURLConnection viewConn = (java.net.HttpURLConnection) viewUrl.openConnection();
+            viewConn.setRequestProperty("Authorization", "Basic " + encodedAuth);
+            viewConn.setRequestMethod("GET");
+            if (viewConn.getResponseCode() != 200) {
+                viewConn.disconnect();
+                return null;
+            }
+            com.fasterxml.jackson.databind.JsonNode result;
+            try (java.io.InputStream in = viewConn.getInputStream()) {
+                result = mapper.readTree(in);
+            } finally {
+                viewConn.disconnect();
+            }
+
+            int count = 0;
+            for (com.fasterxml.jackson.databind.JsonNode row : result.path("rows")) {
+                if ("cmis:folder".equals(row.path("value").path("type").asText())) {
+                    count++;
+                }
+            }
+            return count;
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.debug("childByName view not available for " + repositoryId + ": " + e.getMessage());
+            }
+            return null;
+        }
+    }
 }
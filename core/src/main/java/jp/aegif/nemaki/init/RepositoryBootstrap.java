@@ -0,0 +1,179 @@
+package jp.aegif.nemaki.init;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import jp.aegif.nemaki.util.PropertyManager;
+import jp.aegif.nemaki.util.constant.PropertyKey;
+
+/**
+ * Runs startup work per repository in parallel and records how long each
+ * phase took, so that the startup timing report shows where a node spends
+ * its start.
+ *
+ * A failure of one repository is logged and does not stop the others.
+ */
+public final class RepositoryBootstrap {
+
+	private static final Log log = LogFactory.getLog(RepositoryBootstrap.class);
+
+	private static final int DEFAULT_PARALLELISM = 4;
+
+	// phase -> repositoryId (or "*" for the whole phase) -> millis, in recording order
+	private static final Map<String, Map<String, Long>> timings = new ConcurrentHashMap<>();
+	private static final List<String> phases = new ArrayList<>();
+
+	private RepositoryBootstrap() {
+	}
+
+	/**
+	 * @return the configured number of repositories bootstrapped at the same time
+	 */
+	public static int getParallelism(PropertyManager propertyManager) {
+		if (propertyManager != null) {
+			String value = propertyManager.readValue(PropertyKey.BOOTSTRAP_PARALLELISM);
+			if (value != null && !value.trim().isEmpty()) {
+				try {
+					return Math.max(1, Integer.parseInt(value.trim()));
+				} catch (NumberFormatException e) {
+					log.warn("Invalid " + PropertyKey.BOOTSTRAP_PARALLELISM + ": " + value);
+				}
+			}
+		}
+		return DEFAULT_PARALLELISM;
+	}
+
+	/**
+	 * Run the task for every repository and wait for all of them
+	 */
+	public static void forEach(String phase, Collection<String> repositoryIds, int parallelism, Consumer<String> task) {
+		allMatch(phase, repositoryIds, parallelism, repositoryId -> {
+			task.accept(repositoryId);
+			return true;
+		});
+	}
+
+	/**
+	 * Run the check for every repository and wait for all of them
+	 *
+	 * @return true if the check returned true for every repository; a check that
+	 *         throws counts as false
+	 */
+	public static boolean allMatch(String phase, Collection<String> repositoryIds, int parallelism,
+			Predicate<String> check) {
+		long start = System.currentTimeMillis();
+		if (repositoryIds == null || repositoryIds.isEmpty()) {
+			return true;
+		}
+
+		int threads = Math.max(1, Math.min(parallelism, repositoryIds.size()));
+		AtomicInteger count = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "bootstrap-" + phase + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		boolean result = true;
+		try {
+			List<Future<Boolean>> futures = new ArrayList<>();
+			for (String repositoryId : repositoryIds) {
+				futures.add(executor.submit(() -> {
+					long repositoryStart = System.currentTimeMillis();
+					try {
+						return check.test(repositoryId);
+					} catch (Exception e) {
+						log.error("[phase=" + phase + ", repositoryId=" + repositoryId + "] failed", e);
+						return false;
+					} finally {
+						record(phase, repositoryId, System.currentTimeMillis() - repositoryStart);
+					}
+				}));
+			}
+			for (Future<Boolean> future : futures) {
+				try {
+					result &= future.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				} catch (Exception e) {
+					log.error("[phase=" + phase + "] failed", e);
+					result = false;
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+			record(phase, "*", System.currentTimeMillis() - start);
+		}
+		return result;
+	}
+
+	/**
+	 * Record the duration of a phase for a repository, or for the whole phase with "*"
+	 */
+	public static void record(String phase, String repositoryId, long millis) {
+		synchronized (phases) {
+			if (!phases.contains(phase)) {
+				phases.add(phase);
+			}
+		}
+		timings.computeIfAbsent(phase, k -> new ConcurrentHashMap<>()).merge(repositoryId, millis, Long::sum);
+	}
+
+	/**
+	 * @return one line per phase, with the total and the time of each repository
+	 */
+	public static String report() {
+		StringBuilder sb = new StringBuilder("Startup timing report");
+		List<String> ordered;
+		synchronized (phases) {
+			ordered = new ArrayList<>(phases);
+		}
+		for (String phase : ordered) {
+			Map<String, Long> phaseTimings = timings.get(phase);
+			Long total = phaseTimings.get("*");
+			sb.append("\n  ").append(phase).append(": ");
+			sb.append(total != null ? total + "ms" : "-");
+			List<String> repositories = new ArrayList<>(phaseTimings.keySet());
+			repositories.remove("*");
+			repositories.sort(null);
+			if (!repositories.isEmpty()) {
+				sb.append(" (");
+				for (int i = 0; i < repositories.size(); i++) {
+					if (i > 0) {
+						sb.append(", ");
+					}
+					sb.append(repositories.get(i)).append("=").append(phaseTimings.get(repositories.get(i))).append("ms");
+				}
+				sb.append(")");
+			}
+		}
+		return sb.toString();
+	}
+
+	public static void logReport() {
+		log.info(report());
+	}
+
+	/**
+	 * Forget the recorded timings
+	 */
+	public static void reset() {
+		synchronized (phases) {
+			phases.clear();
+			timings.clear();
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package jp.aegif.nemaki.model;
+
+/**
+ * Per-document outcome of a bulk write (_bulk_docs).
+ * CouchDB does not fail a bulk request as a whole, so each node has to be
+ * checked individually (typically for "conflict" or "forbidden").
+ */
+public class BulkWriteResult {
+	public static final String ERROR_CONFLICT = "conflict";
+
+	private String id;
+	private String revision;
+	private boolean ok;
+	private String error;
+	private String reason;
+	private NodeBase node;
+
+	public BulkWriteResult(){
+
+	}
+
+	public BulkWriteResult(NodeBase node, String id, String revision, String error, String reason){
+		this.node = node;
+		this.id = id;
+		this.revision = revision;
+		this.error = error;
+		this.reason = reason;
+		this.ok = (error == null);
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getRevision() {
+		return revision;
+	}
+
+	public void setRevision(String revision) {
+		this.revision = revision;
+	}
+
+	public boolean isOk() {
+		return ok;
+	}
+
+	public void setOk(boolean ok) {
+		this.ok = ok;
+	}
+
+	public boolean isConflict() {
+		return ERROR_CONFLICT.equals(error);
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public void setError(String error) {
+		this.error = error;
+	}
+
+	public String getReason() {
+		return reason;
+	}
+
+	public void setReason(String reason) {
+		this.reason = reason;
+	}
+
+	/**
+	 * The node that was written. On success its id and revision have been updated.
+	 */
+	public NodeBase getNode() {
+		return node;
+	}
+
+	public void setNode(NodeBase node) {
+		this.node = node;
+	}
+
+	@Override
+	public String toString() {
+		return ok ? "ok[" + id + "@" + revision + "]" : "failed[" + id + ": " + error + " - " + reason + "]";
+	}
+}
@@ -0,0 +1,54 @@
+package jp.aegif.nemaki.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of the change log read from CouchDB's _changes feed.
+ * The token is a CouchDB update sequence: it is opaque, monotonic and
+ * exclusive, i.e. reading again from {@link #getLatestToken()} returns
+ * only the events written after this page.
+ */
+public class ChangeFeed {
+	private List<Change> changes = new ArrayList<Change>();
+	private String latestToken;
+	private boolean hasMoreItems;
+
+	public ChangeFeed(){
+
+	}
+
+	public ChangeFeed(List<Change> changes, String latestToken, boolean hasMoreItems){
+		this.changes = changes;
+		this.latestToken = latestToken;
+		this.hasMoreItems = hasMoreItems;
+	}
+
+	public List<Change> getChanges() {
+		return changes;
+	}
+
+	public void setChanges(List<Change> changes) {
+		this.changes = changes;
+	}
+
+	/**
+	 * The sequence to pass as the next start token.
+	 * Equals the start token when nothing has been read.
+	 */
+	public String getLatestToken() {
+		return latestToken;
+	}
+
+	public void setLatestToken(String latestToken) {
+		this.latestToken = latestToken;
+	}
+
+	public boolean isHasMoreItems() {
+		return hasMoreItems;
+	}
+
+	public void setHasMoreItems(boolean hasMoreItems) {
+		this.hasMoreItems = hasMoreItems;
+	}
+}
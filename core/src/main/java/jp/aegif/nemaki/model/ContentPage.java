@@ -0,0 +1,42 @@
+package jp.aegif.nemaki.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of a scan over the contents of a repository in object ID order.
+ */
+public class ContentPage {
+	private List<Content> contents = new ArrayList<Content>();
+	private String nextKey;
+
+	public ContentPage(){
+
+	}
+
+	public ContentPage(List<Content> contents, String nextKey){
+		this.contents = contents;
+		this.nextKey = nextKey;
+	}
+
+	public List<Content> getContents() {
+		return contents;
+	}
+
+	public void setContents(List<Content> contents) {
+		this.contents = contents;
+	}
+
+	/**
+	 * The start key of the next page, or null when the range is exhausted.
+	 * Non-content documents are skipped but still advance the key, so a page
+	 * may be empty and still have a next key.
+	 */
+	public String getNextKey() {
+		return nextKey;
+	}
+
+	public void setNextKey(String nextKey) {
+		this.nextKey = nextKey;
+	}
+}
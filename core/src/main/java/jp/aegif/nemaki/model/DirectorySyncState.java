@@ -0,0 +1,123 @@
+package jp.aegif.nemaki.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Where the last directory sync of a repository left off, persisted in the
+ * repository database so that the next run only reads what changed.
+ *
+ * The entry hashes are stored apart from the markers, split into chunk
+ * documents by principal ID, so that a sync only rewrites the chunks holding
+ * entries that changed.
+ */
+public class DirectorySyncState {
+	private String id;
+	private String revision;
+	// Highest change marker (modifyTimestamp, uSNChanged, ...) seen so far
+	private String userMarker;
+	private String groupMarker;
+	private long lastFullReconcile;
+	private String configFingerprint;
+	// principal ID -> hash of the directory entry as it was last synced
+	private Map<String, String> userHashes = new HashMap<String, String>();
+	private Map<String, String> groupHashes = new HashMap<String, String>();
+	// chunk document ID -> revision and hashes as last read or written
+	private Map<String, String> chunkRevisions = new HashMap<String, String>();
+	private Map<String, Map<String, String>> storedChunks = new HashMap<String, Map<String, String>>();
+
+	public DirectorySyncState(){
+
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getRevision() {
+		return revision;
+	}
+
+	public void setRevision(String revision) {
+		this.revision = revision;
+	}
+
+	public String getUserMarker() {
+		return userMarker;
+	}
+
+	public void setUserMarker(String userMarker) {
+		this.userMarker = userMarker;
+	}
+
+	public String getGroupMarker() {
+		return groupMarker;
+	}
+
+	public void setGroupMarker(String groupMarker) {
+		this.groupMarker = groupMarker;
+	}
+
+	/**
+	 * Start time of the last full reconcile, in milliseconds
+	 */
+	public long getLastFullReconcile() {
+		return lastFullReconcile;
+	}
+
+	public void setLastFullReconcile(long lastFullReconcile) {
+		this.lastFullReconcile = lastFullReconcile;
+	}
+
+	/**
+	 * Identifies the search and mapping settings the markers and hashes were
+	 * taken with; a different one invalidates them
+	 */
+	public String getConfigFingerprint() {
+		return configFingerprint;
+	}
+
+	public void setConfigFingerprint(String configFingerprint) {
+		this.configFingerprint = configFingerprint;
+	}
+
+	public Map<String, String> getUserHashes() {
+		return userHashes;
+	}
+
+	public void setUserHashes(Map<String, String> userHashes) {
+		this.userHashes = userHashes;
+	}
+
+	public Map<String, String> getGroupHashes() {
+		return groupHashes;
+	}
+
+	public void setGroupHashes(Map<String, String> groupHashes) {
+		this.groupHashes = groupHashes;
+	}
+
+	public Map<String, String> getChunkRevisions() {
+		return chunkRevisions;
+	}
+
+	public void setChunkRevisions(Map<String, String> chunkRevisions) {
+		this.chunkRevisions = chunkRevisions;
+	}
+
+	/**
+	 * Content of each hash chunk as it is in the database; a chunk that is
+	 * still equal to it is not written again
+	 */
+	public Map<String, Map<String, String>> getStoredChunks() {
+		return storedChunks;
+	}
+
+	public void setStoredChunks(Map<String, Map<String, String>> storedChunks) {
+		this.storedChunks = storedChunks;
+	}
+}
@@ -0,0 +1,195 @@
+package jp.aegif.nemaki.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A long-running repository operation run in the background, persisted in the
+ * repository database so that its progress can be followed from any node and
+ * an interrupted run can be resumed.
+ */
+public class Job {
+	public static final String STATUS_QUEUED = "queued";
+	public static final String STATUS_RUNNING = "running";
+	public static final String STATUS_COMPLETED = "completed";
+	public static final String STATUS_FAILED = "failed";
+	public static final String STATUS_CANCELLED = "cancelled";
+	// Was queued or running on a node that stopped
+	public static final String STATUS_INTERRUPTED = "interrupted";
+
+	private String id;
+	private String revision;
+	private String repositoryId;
+	private String type;
+	private String status;
+	private String creator;
+	// Node the job was last queued or run on
+	private String node;
+	private Map<String, String> parameters = new HashMap<String, String>();
+	// Where a resumed run continues, as understood by the job's handler
+	private String checkpoint;
+	private long total;
+	private long processed;
+	private long failed;
+	private List<String> errors = new ArrayList<String>();
+	private String message;
+	private boolean cancelRequested;
+	private long created;
+	private long started;
+	private long finished;
+
+	public Job(){
+
+	}
+
+	public boolean isFinished() {
+		return STATUS_COMPLETED.equals(status) || STATUS_FAILED.equals(status)
+				|| STATUS_CANCELLED.equals(status) || STATUS_INTERRUPTED.equals(status);
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getRevision() {
+		return revision;
+	}
+
+	public void setRevision(String revision) {
+		this.revision = revision;
+	}
+
+	public String getRepositoryId() {
+		return repositoryId;
+	}
+
+	public void setRepositoryId(String repositoryId) {
+		this.repositoryId = repositoryId;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	public String getCreator() {
+		return creator;
+	}
+
+	public void setCreator(String creator) {
+		this.creator = creator;
+	}
+
+	public String getNode() {
+		return node;
+	}
+
+	public void setNode(String node) {
+		this.node = node;
+	}
+
+	public Map<String, String> getParameters() {
+		return parameters;
+	}
+
+	public void setParameters(Map<String, String> parameters) {
+		this.parameters = parameters;
+	}
+
+	public String getCheckpoint() {
+		return checkpoint;
+	}
+
+	public void setCheckpoint(String checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+
+	public long getTotal() {
+		return total;
+	}
+
+	public void setTotal(long total) {
+		this.total = total;
+	}
+
+	public long getProcessed() {
+		return processed;
+	}
+
+	public void setProcessed(long processed) {
+		this.processed = processed;
+	}
+
+	public long getFailed() {
+		return failed;
+	}
+
+	public void setFailed(long failed) {
+		this.failed = failed;
+	}
+
+	public List<String> getErrors() {
+		return errors;
+	}
+
+	public void setErrors(List<String> errors) {
+		this.errors = errors;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public void setMessage(String message) {
+		this.message = message;
+	}
+
+	public boolean isCancelRequested() {
+		return cancelRequested;
+	}
+
+	public void setCancelRequested(boolean cancelRequested) {
+		this.cancelRequested = cancelRequested;
+	}
+
+	public long getCreated() {
+		return created;
+	}
+
+	public void setCreated(long created) {
+		this.created = created;
+	}
+
+	public long getStarted() {
+		return started;
+	}
+
+	public void setStarted(long started) {
+		this.started = started;
+	}
+
+	public long getFinished() {
+		return finished;
+	}
+
+	public void setFinished(long finished) {
+		this.finished = finished;
+	}
+}
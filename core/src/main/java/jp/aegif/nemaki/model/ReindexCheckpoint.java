@@ -0,0 +1,103 @@
+package jp.aegif.nemaki.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Progress of a blue/green reindex of one repository, persisted in the
+ * repository database so that an interrupted run can resume.
+ */
+public class ReindexCheckpoint {
+	private String id;
+	private String revision;
+	private String runId;
+	private String shadowCore;
+	private String phase;
+	private long startTime;
+	private String changeToken;
+	private long indexedCount;
+	// partition start key -> object ID to continue from ("" = partition start); finished partitions are removed
+	private Map<String, String> partitions = new LinkedHashMap<String, String>();
+
+	public ReindexCheckpoint(){
+
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getRevision() {
+		return revision;
+	}
+
+	public void setRevision(String revision) {
+		this.revision = revision;
+	}
+
+	/**
+	 * Identifies the run the checkpoints of all repositories belong to
+	 */
+	public String getRunId() {
+		return runId;
+	}
+
+	public void setRunId(String runId) {
+		this.runId = runId;
+	}
+
+	public String getShadowCore() {
+		return shadowCore;
+	}
+
+	public void setShadowCore(String shadowCore) {
+		this.shadowCore = shadowCore;
+	}
+
+	public String getPhase() {
+		return phase;
+	}
+
+	public void setPhase(String phase) {
+		this.phase = phase;
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public void setStartTime(long startTime) {
+		this.startTime = startTime;
+	}
+
+	/**
+	 * Change log token up to which changes are reflected in the shadow core
+	 */
+	public String getChangeToken() {
+		return changeToken;
+	}
+
+	public void setChangeToken(String changeToken) {
+		this.changeToken = changeToken;
+	}
+
+	public long getIndexedCount() {
+		return indexedCount;
+	}
+
+	public void setIndexedCount(long indexedCount) {
+		this.indexedCount = indexedCount;
+	}
+
+	public Map<String, String> getPartitions() {
+		return partitions;
+	}
+
+	public void setPartitions(Map<String, String> partitions) {
+		this.partitions = partitions;
+	}
+}
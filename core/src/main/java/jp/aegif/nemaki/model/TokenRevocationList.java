@@ -0,0 +1,78 @@
+package jp.aegif.nemaki.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Signed auth tokens revoked before their expiry, persisted in the repository
+ * database so that every node rejects them.
+ *
+ * A logout revokes all tokens of a user issued up to that moment, so one
+ * timestamp per app and user is enough to describe it.
+ */
+public class TokenRevocationList {
+	private String id;
+	private String revision;
+	// app -> user ID -> tokens issued before this time (in milliseconds) are revoked
+	private Map<String, Map<String, Long>> revokedBefore = new HashMap<String, Map<String, Long>>();
+
+	public TokenRevocationList(){
+
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getRevision() {
+		return revision;
+	}
+
+	public void setRevision(String revision) {
+		this.revision = revision;
+	}
+
+	public Map<String, Map<String, Long>> getRevokedBefore() {
+		return revokedBefore;
+	}
+
+	public void setRevokedBefore(Map<String, Map<String, Long>> revokedBefore) {
+		this.revokedBefore = revokedBefore;
+	}
+
+	/**
+	 * @return true if a token issued at that time has been revoked
+	 */
+	public boolean isRevoked(String app, String userId, long issuedAt) {
+		Map<String, Long> users = revokedBefore.get(app);
+		Long before = users == null ? null : users.get(userId);
+		// Strictly before, so a token issued right after a logout in the same millisecond stays valid
+		return before != null && issuedAt < before;
+	}
+
+	public void revoke(String app, String userId, long before) {
+		Map<String, Long> users = revokedBefore.get(app);
+		if (users == null) {
+			users = new HashMap<String, Long>();
+			revokedBefore.put(app, users);
+		}
+		Long current = users.get(userId);
+		if (current == null || current < before) {
+			users.put(userId, before);
+		}
+	}
+
+	/**
+	 * Drop revocations older than the given time; tokens issued before it have expired anyway
+	 */
+	public void prune(long oldest) {
+		for (Map<String, Long> users : revokedBefore.values()) {
+			users.values().removeIf(before -> before < oldest);
+		}
+		revokedBefore.values().removeIf(Map::isEmpty);
+	}
+}
@@ -197,8 +197,9 @@ public class CouchAttachmentNode extends CouchNodeBase{
 		AttachmentNode a = new AttachmentNode(super.convert());
 		
 		a.setName(getName());
-		// CRITICAL FIX: Use actual length from CouchDB _attachments instead of stored field
-		a.setLength(getActualLength());
+		// The stored length is written from the bytes actually uploaded; older
+		// documents without it fall back to the CouchDB _attachments stub
+		a.setLength(length > 0 ? length : getActualLength());
 		// CRITICAL FIX: Use actual MIME type from CouchDB _attachments instead of stored field
 		a.setMimeType(getActualMimeType());
 		
@@ -1,5 +1,6 @@
 package jp.aegif.nemaki.odata;
 
+import org.apache.chemistry.opencmis.commons.data.CmisExtensionElement;
 import org.apache.chemistry.opencmis.commons.data.ObjectData;
 import org.apache.chemistry.opencmis.commons.data.ObjectInFolderData;
 import org.apache.chemistry.opencmis.commons.data.ObjectInFolderList;
@@ -8,7 +9,12 @@ import org.apache.chemistry.opencmis.commons.data.ObjectParentData;
 import org.apache.chemistry.opencmis.commons.data.Properties;
 import org.apache.chemistry.opencmis.commons.data.PropertyData;
 import org.apache.chemistry.opencmis.commons.enums.IncludeRelationships;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisInvalidArgumentException;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.CmisExtensionElementImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.ExtensionDataImpl;
 import org.apache.chemistry.opencmis.commons.server.CallContext;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.olingo.commons.api.data.ContextURL;
 import org.apache.olingo.commons.api.data.Entity;
 import org.apache.olingo.commons.api.data.EntityCollection;
@@ -32,7 +38,11 @@ import org.apache.olingo.server.api.serializer.SerializerException;
 import org.apache.olingo.server.api.serializer.SerializerResult;
 import org.apache.olingo.server.api.uri.UriInfo;
 import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceCount;
 import org.apache.olingo.server.api.uri.UriResourceEntitySet;
+import org.apache.olingo.server.api.uri.UriResourceNavigation;
+import org.apache.olingo.server.api.uri.queryoption.ApplyItem;
+import org.apache.olingo.server.api.uri.queryoption.ApplyOption;
 import org.apache.olingo.server.api.uri.queryoption.CountOption;
 import org.apache.olingo.server.api.uri.queryoption.FilterOption;
 import org.apache.olingo.server.api.uri.queryoption.OrderByOption;
@@ -44,29 +54,52 @@ import org.apache.olingo.server.api.uri.queryoption.SelectOption;
 import org.apache.olingo.server.api.uri.queryoption.SelectItem;
 import org.apache.olingo.server.api.uri.queryoption.SkipOption;
 import org.apache.olingo.server.api.uri.queryoption.TopOption;
+import org.apache.olingo.server.api.uri.queryoption.apply.Aggregate;
+import org.apache.olingo.server.api.uri.queryoption.apply.AggregateExpression;
+import org.apache.olingo.server.api.uri.queryoption.apply.Compute;
+import org.apache.olingo.server.api.uri.queryoption.apply.ComputeExpression;
+import org.apache.olingo.server.api.uri.queryoption.apply.Filter;
+import org.apache.olingo.server.api.uri.queryoption.apply.GroupBy;
+import org.apache.olingo.server.api.uri.queryoption.apply.GroupByItem;
 import org.apache.olingo.server.api.uri.queryoption.expression.Expression;
 import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitException;
 import org.apache.olingo.server.api.uri.queryoption.expression.Member;
+import org.apache.olingo.server.api.uri.queryoption.expression.Method;
 import org.apache.olingo.server.api.uri.queryoption.expression.MethodKind;
 import org.apache.olingo.server.api.uri.queryoption.expression.BinaryOperatorKind;
 import org.apache.olingo.server.api.uri.queryoption.expression.UnaryOperatorKind;
 
+import jp.aegif.nemaki.cmis.aspect.query.AggregateRequest;
 import jp.aegif.nemaki.cmis.service.DiscoveryService;
+import jp.aegif.nemaki.model.Content;
 import jp.aegif.nemaki.cmis.service.NavigationService;
 import jp.aegif.nemaki.cmis.service.ObjectService;
 import jp.aegif.nemaki.cmis.service.RepositoryService;
+import jp.aegif.nemaki.util.constant.CmisExtensionToken;
 
+import java.io.ByteArrayInputStream;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
 import java.net.URI;
+import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * OData Entity Collection Processor for CMIS objects.
@@ -76,6 +109,15 @@ import java.util.Set;
  */
 public class CmisEntityCollectionProcessor implements EntityCollectionProcessor {
     
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int DEFAULT_MAX_PAGE_SIZE = 1000;
+    static final int DEFAULT_APPLY_MAX_GROUPS = 1000;
+    static final int DEFAULT_APPLY_MAX_SCAN = 100000;
+    
+    private static final Log log = LogFactory.getLog(CmisEntityCollectionProcessor.class);
+    
+    private static final Pattern MAX_PAGE_SIZE_PREFERENCE = Pattern.compile("odata\\.maxpagesize\\s*=\\s*\"?(\\d+)\"?");
+    
     private OData odata;
     private ServiceMetadata serviceMetadata;
     
@@ -85,6 +127,11 @@ public class CmisEntityCollectionProcessor implements EntityCollectionProcessor
     private final DiscoveryService discoveryService;
     private final String repositoryId;
     private final CallContext callContext;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+    private final ODataExpandResolver expandResolver;
+    private int applyMaxGroups = DEFAULT_APPLY_MAX_GROUPS;
+    private int applyMaxScan = DEFAULT_APPLY_MAX_SCAN;
     
     public CmisEntityCollectionProcessor(
             RepositoryService repositoryService,
@@ -93,12 +140,58 @@ public class CmisEntityCollectionProcessor implements EntityCollectionProcessor
             DiscoveryService discoveryService,
             String repositoryId,
             CallContext callContext) {
+        this(repositoryService, objectService, navigationService, discoveryService, repositoryId, callContext,
+                DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGE_SIZE);
+    }
+    
+    /**
+     * @param defaultPageSize page size when the client states no preference
+     * @param maxPageSize upper bound of a page, whatever $top or odata.maxpagesize ask for
+     */
+    public CmisEntityCollectionProcessor(
+            RepositoryService repositoryService,
+            ObjectService objectService,
+            NavigationService navigationService,
+            DiscoveryService discoveryService,
+            String repositoryId,
+            CallContext callContext,
+            int defaultPageSize,
+            int maxPageSize) {
+        this(repositoryService, objectService, navigationService, discoveryService, repositoryId, callContext,
+                defaultPageSize, maxPageSize, null);
+    }
+    
+    /**
+     * @param expandResolver resolves $expand for a whole page; without it each entity is expanded on its own
+     */
+    public CmisEntityCollectionProcessor(
+            RepositoryService repositoryService,
+            ObjectService objectService,
+            NavigationService navigationService,
+            DiscoveryService discoveryService,
+            String repositoryId,
+            CallContext callContext,
+            int defaultPageSize,
+            int maxPageSize,
+            ODataExpandResolver expandResolver) {
         this.repositoryService = repositoryService;
         this.objectService = objectService;
         this.navigationService = navigationService;
         this.discoveryService = discoveryService;
         this.repositoryId = repositoryId;
         this.callContext = callContext;
+        this.maxPageSize = Math.max(1, maxPageSize);
+        this.defaultPageSize = Math.max(1, Math.min(defaultPageSize, this.maxPageSize));
+        this.expandResolver = expandResolver;
+    }
+    
+    /**
+     * @param maxGroups groups a $apply may yield
+     * @param maxScan matches that may be read for a $apply the index cannot answer on its own
+     */
+    void setApplyLimits(int maxGroups, int maxScan) {
+        this.applyMaxGroups = maxGroups;
+        this.applyMaxScan = maxScan;
     }
     
     @Override
@@ -116,10 +209,19 @@ public class CmisEntityCollectionProcessor implements EntityCollectionProcessor
         UriResourceEntitySet uriResourceEntitySet = (UriResourceEntitySet) resourcePaths.get(0);
         EdmEntitySet edmEntitySet = uriResourceEntitySet.getEntitySet();
         
+        // Folders('id')/children is read from the children view instead of a query
+        String childrenOf = null;
+        if (resourcePaths.size() > 1) {
+            childrenOf = getChildrenNavigationFolderId(uriResourceEntitySet, resourcePaths.get(1));
+            edmEntitySet = serviceMetadata.getEdm().getEntityContainer().getEntitySet(CmisEdmProvider.ES_OBJECTS_NAME);
+        }
+        
         // Get pagination options
         int top = getTopOption(uriInfo);
         int skip = getSkipOption(uriInfo);
         boolean count = getCountOption(uriInfo);
+        String skipToken = uriInfo.getSkipTokenOption() != null ? uriInfo.getSkipTokenOption().getValue() : null;
+        int pageSize = getPageSize(request, response);
         
         // Get filter option
         FilterOption filterOption = uriInfo.getFilterOption();
@@ -156,9 +258,31 @@ public class CmisEntityCollectionProcessor implements EntityCollectionProcessor
             searchTerm = searchOption.getText();
         }
         
+        ApplyOption applyOption = uriInfo.getApplyOption();
+        if (applyOption != null) {
+            if (childrenOf != null) {
+                throw notImplemented("$apply is not supported on children");
+            }
+            readAggregation(request, response, edmEntitySet, applyOption, filterClause, searchTerm);
+            return;
+        }
+        
         // Fetch the data from CMIS
         String baseUri = request.getRawBaseUri();
-        EntityCollection entityCollection = getData(edmEntitySet, top, skip, filterClause, orderByClause, selectedProperties, expandProperties, searchTerm, baseUri);
+        PageRequest page = new PageRequest(top, skip, skipToken, pageSize, buildNextLinkBase(request));
+        EntityCollection entityCollection;
+        if (childrenOf != null) {
+            if (filterClause != null || searchTerm != null) {
+                throw new ODataApplicationException(
+                        "$filter and $search are not supported on children",
+                        HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(),
+                        Locale.ENGLISH
+                );
+            }
+            entityCollection = getChildrenData(childrenOf, page, orderByClause, selectedProperties, expandProperties, baseUri);
+        } else {
+            entityCollection = getData(edmEntitySet, page, filterClause, orderByClause, selectedProperties, expandProperties, searchTerm, baseUri);
+        }
         
         // Serialize the response
         ODataSerializer serializer = odata.createSerializer(responseFormat);
@@ -181,46 +305,277 @@ public class CmisEntityCollectionProcessor implements EntityCollectionProcessor
         response.setHeader(HttpHeader.CONTENT_TYPE, responseFormat.toContentTypeString());
     }
     
+    /**
+     * Answer $apply with the groups and aggregates computed by the query
+     * processor. Supported: filter and compute(year()/month()) followed by
+     * groupby with an optional aggregate, or aggregate alone.
+     */
+    private void readAggregation(ODataRequest request, ODataResponse response, EdmEntitySet edmEntitySet,
+            ApplyOption applyOption, String filterClause, String searchTerm) throws ODataApplicationException {
+        String entitySetName = edmEntitySet.getName();
+        if (!CmisEdmProvider.ES_DOCUMENTS_NAME.equals(entitySetName)
+                && !CmisEdmProvider.ES_FOLDERS_NAME.equals(entitySetName)) {
+            throw notImplemented("$apply is supported on " + CmisEdmProvider.ES_DOCUMENTS_NAME
+                    + " and " + CmisEdmProvider.ES_FOLDERS_NAME + " only");
+        }
+
+        AggregateRequest aggregateRequest = new AggregateRequest();
+        aggregateRequest.setMaxGroups(applyMaxGroups);
+        aggregateRequest.setMaxScan(applyMaxScan);
+        List<String> filters = new ArrayList<>();
+        if (filterClause != null) {
+            filters.add("(" + filterClause + ")");
+        }
+        Map<String, AggregateRequest.GroupBy> computed = new HashMap<>();
+        List<String> columns = new ArrayList<>();
+        boolean grouped = false;
+        for (ApplyItem item : applyOption.getApplyItems()) {
+            if (grouped) {
+                throw notImplemented("$apply supports no transformation after groupby or aggregate");
+            }
+            switch (item.getKind()) {
+                case FILTER:
+                    filters.add("(" + convertFilterToWhereClause(((Filter) item).getFilterOption()) + ")");
+                    break;
+                case COMPUTE:
+                    for (ComputeExpression expression : ((Compute) item).getExpressions()) {
+                        computed.put(expression.getAlias(), toDatePart(expression));
+                    }
+                    break;
+                case GROUP_BY:
+                    GroupBy groupBy = (GroupBy) item;
+                    for (GroupByItem groupByItem : groupBy.getGroupByItems()) {
+                        String name = getPathName(groupByItem.getPath());
+                        AggregateRequest.GroupBy g = computed.get(name);
+                        if (g == null) {
+                            g = new AggregateRequest.GroupBy(toCmisProperty(name), null, name);
+                        }
+                        aggregateRequest.getGroupBy().add(g);
+                        columns.add(name);
+                    }
+                    if (groupBy.getApplyOption() != null) {
+                        for (ApplyItem inner : groupBy.getApplyOption().getApplyItems()) {
+                            if (inner.getKind() != ApplyItem.Kind.AGGREGATE) {
+                                throw notImplemented("groupby supports only aggregate as its transformation");
+                            }
+                            addAggregates((Aggregate) inner, aggregateRequest, columns);
+                        }
+                    }
+                    grouped = true;
+                    break;
+                case AGGREGATE:
+                    addAggregates((Aggregate) item, aggregateRequest, columns);
+                    grouped = true;
+                    break;
+                default:
+                    throw notImplemented("Unsupported $apply transformation: " + item.getKind());
+            }
+        }
+        if (!grouped) {
+            throw notImplemented("$apply needs groupby or aggregate");
+        }
+
+        String cmisQuery = buildCmisQuery(entitySetName,
+                filters.isEmpty() ? null : String.join(" AND ", filters), null, null, searchTerm);
+        List<Map<String, Object>> rows;
+        try {
+            rows = discoveryService.aggregate(callContext, repositoryId, cmisQuery, aggregateRequest);
+        } catch (CmisInvalidArgumentException e) {
+            throw new ODataApplicationException(e.getMessage(), HttpStatusCode.BAD_REQUEST.getStatusCode(),
+                    Locale.ENGLISH, e);
+        }
+
+        // Written directly: the rows have dynamic properties only
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("@odata.context", request.getRawBaseUri() + "/$metadata#" + entitySetName
+                + "(" + String.join(",", columns) + ")");
+        List<Map<String, Object>> value = new ArrayList<>();
+        for (Map<String, Object> row : rows) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> column : row.entrySet()) {
+                Object v = column.getValue();
+                entry.put(column.getKey(), v instanceof Date ? ((Date) v).toInstant().toString() : v);
+            }
+            value.add(entry);
+        }
+        body.put("value", value);
+        try {
+            response.setContent(new ByteArrayInputStream(new ObjectMapper().writeValueAsBytes(body)));
+        } catch (JsonProcessingException e) {
+            throw new ODataApplicationException("Error writing aggregation: " + e.getMessage(),
+                    HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH, e);
+        }
+        response.setStatusCode(HttpStatusCode.OK.getStatusCode());
+        response.setHeader(HttpHeader.CONTENT_TYPE, ContentType.JSON.toContentTypeString());
+    }
+
+    private void addAggregates(Aggregate aggregate, AggregateRequest aggregateRequest, List<String> columns)
+            throws ODataApplicationException {
+        for (AggregateExpression expression : aggregate.getExpressions()) {
+            String alias = expression.getAlias();
+            if (alias == null) {
+                throw new ODataApplicationException("aggregate needs an alias",
+                        HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+            }
+            List<UriResource> path = expression.getPath();
+            if (path != null && !path.isEmpty() && path.get(path.size() - 1) instanceof UriResourceCount) {
+                aggregateRequest.getAggregates().add(
+                        new AggregateRequest.Aggregate(AggregateRequest.Function.COUNT, null, alias));
+            } else {
+                String name;
+                if (expression.getExpression() instanceof Member) {
+                    name = getPathName(((Member) expression.getExpression()).getResourcePath().getUriResourceParts());
+                } else if (path != null && !path.isEmpty()) {
+                    name = getPathName(path);
+                } else {
+                    throw notImplemented("aggregate supports properties and $count only");
+                }
+                if (expression.getStandardMethod() == null) {
+                    throw notImplemented("aggregate supports sum, min, max, average and countdistinct only");
+                }
+                aggregateRequest.getAggregates().add(new AggregateRequest.Aggregate(
+                        AggregateRequest.Function.valueOf(expression.getStandardMethod().name()),
+                        toCmisProperty(name), alias));
+            }
+            columns.add(alias);
+        }
+    }
+
+    private AggregateRequest.GroupBy toDatePart(ComputeExpression expression) throws ODataApplicationException {
+        if (expression.getExpression() instanceof Method) {
+            Method method = (Method) expression.getExpression();
+            AggregateRequest.DatePart part = method.getMethod() == MethodKind.YEAR ? AggregateRequest.DatePart.YEAR
+                    : method.getMethod() == MethodKind.MONTH ? AggregateRequest.DatePart.MONTH : null;
+            if (part != null && method.getParameters().size() == 1 && method.getParameters().get(0) instanceof Member) {
+                Member member = (Member) method.getParameters().get(0);
+                String name = getPathName(member.getResourcePath().getUriResourceParts());
+                return new AggregateRequest.GroupBy(toCmisProperty(name), part, expression.getAlias());
+            }
+        }
+        throw notImplemented("compute supports year() and month() of a property only");
+    }
+
+    private String getPathName(List<UriResource> path) throws ODataApplicationException {
+        if (path == null || path.size() != 1) {
+            throw notImplemented("$apply supports properties of the entity set only");
+        }
+        return path.get(0).getSegmentValue();
+    }
+
+    private String toCmisProperty(String odataProperty) {
+        String cmisProperty = mapODataPropertyToCmis(odataProperty);
+        return cmisProperty != null ? cmisProperty : odataProperty;
+    }
+
+    private ODataApplicationException notImplemented(String message) {
+        return new ODataApplicationException(message, HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+    }
+
+    /**
+     * Paging state of one collection request.
+     */
+    private static final class PageRequest {
+        final int top;
+        final int skip;
+        final String skipToken;
+        final int pageSize;
+        final String nextLinkBase;
+
+        PageRequest(int top, int skip, String skipToken, int pageSize, String nextLinkBase) {
+            this.top = top;
+            this.skip = skip;
+            this.skipToken = skipToken;
+            this.pageSize = pageSize;
+            this.nextLinkBase = nextLinkBase;
+        }
+
+        /**
+         * @param remaining items of $top still owed, -1 without $top
+         */
+        int rows(int remaining) {
+            return remaining < 0 ? pageSize : Math.min(remaining, pageSize);
+        }
+
+        /**
+         * Set @odata.nextLink unless this page was the last one or used up $top.
+         */
+        void setNext(EntityCollection entityCollection, boolean hasMoreItems, char kind, String position,
+                int remaining, int rows, int fingerprint) {
+            if (!hasMoreItems || position == null || (remaining >= 0 && remaining <= rows)) {
+                return;
+            }
+            ODataSkipToken next = new ODataSkipToken(kind, position, remaining < 0 ? -1 : remaining - rows, fingerprint);
+            entityCollection.setNext(URI.create(nextLinkBase + next.encode()));
+        }
+    }
+    
     /**
      * Get data from CMIS based on the entity set name.
+     * 
+     * Pages are walked with a Solr cursor, which costs the same at any depth;
+     * only a request that starts with $skip pages by offset.
      */
-    private EntityCollection getData(EdmEntitySet edmEntitySet, int maxItems, int skipCount, 
+    private EntityCollection getData(EdmEntitySet edmEntitySet, PageRequest page,
             String filterClause, String orderByClause, Set<String> selectedProperties, Set<String> expandProperties, String searchTerm, String baseUri) throws ODataApplicationException {
         EntityCollection entityCollection = new EntityCollection();
         String entitySetName = edmEntitySet.getName();
         
+        String cmisQuery = buildCmisQuery(entitySetName, filterClause, orderByClause, selectedProperties, searchTerm);
+        if (cmisQuery == null) {
+            return entityCollection;
+        }
+        
+        int fingerprint = (entitySetName + "\n" + cmisQuery).hashCode();
+        ODataSkipToken token = page.skipToken == null ? null : ODataSkipToken.decode(page.skipToken, fingerprint);
+        int remaining = token != null ? token.getRemaining() : page.top;
+        int rows = page.rows(remaining);
+        boolean cursor = token != null ? token.getKind() == ODataSkipToken.CURSOR : page.skip == 0;
+        int offset = cursor ? 0 : (token != null ? token.getOffset() : page.skip);
+        
+        ExtensionDataImpl extension = null;
+        if (cursor) {
+            String cursorMark = token != null ? token.getPosition() : "*";
+            extension = new ExtensionDataImpl();
+            extension.setExtensions(Collections.<CmisExtensionElement>singletonList(new CmisExtensionElementImpl(
+                    CmisExtensionToken.QUERY_CURSOR_NAMESPACE, CmisExtensionToken.QUERY_CURSOR_MARK, null, cursorMark)));
+        }
+        
         try {
-            String cmisQuery = buildCmisQuery(entitySetName, filterClause, orderByClause, selectedProperties, searchTerm);
+            ObjectList objectList = discoveryService.query(
+                    callContext,
+                    repositoryId,
+                    cmisQuery,
+                    Boolean.FALSE,  // searchAllVersions
+                    Boolean.FALSE,  // includeAllowableActions: entities do not expose them
+                    IncludeRelationships.NONE,
+                    null,           // renditionFilter
+                    BigInteger.valueOf(rows),
+                    BigInteger.valueOf(offset),
+                    extension
+            );
             
-            if (cmisQuery != null) {
-                ObjectList objectList = discoveryService.query(
-                        callContext,
-                        repositoryId,
-                        cmisQuery,
-                        Boolean.FALSE,  // searchAllVersions
-                        Boolean.TRUE,   // includeAllowableActions
-                        IncludeRelationships.NONE,
-                        null,           // renditionFilter
-                        BigInteger.valueOf(maxItems),
-                        BigInteger.valueOf(skipCount),
-                        null            // extension
-                );
+            if (objectList != null && objectList.getObjects() != null) {
+                for (ObjectData objectData : objectList.getObjects()) {
+                    Entity entity = convertToEntity(objectData, selectedProperties, baseUri, entitySetName);
+                    entityCollection.getEntities().add(entity);
+                }
                 
-                if (objectList != null && objectList.getObjects() != null) {
-                    for (ObjectData objectData : objectList.getObjects()) {
-                        Entity entity = convertToEntity(objectData, selectedProperties, baseUri, entitySetName);
-                        
-                        // Handle $expand for navigation properties
-                        if (expandProperties != null && !expandProperties.isEmpty()) {
-                            expandNavigationProperties(entity, objectData, expandProperties);
-                        }
-                        
-                        entityCollection.getEntities().add(entity);
-                    }
-                    
-                    if (objectList.getNumItems() != null) {
-                        entityCollection.setCount(objectList.getNumItems().intValue());
-                    }
+                // Handle $expand for navigation properties
+                expandNavigationProperties(entityCollection.getEntities(), objectList.getObjects(), expandProperties);
+                
+                if (objectList.getNumItems() != null) {
+                    entityCollection.setCount(objectList.getNumItems().intValue());
+                }
+                
+                boolean hasMoreItems = Boolean.TRUE.equals(objectList.hasMoreItems());
+                String nextCursorMark = cursor ? getNextCursorMark(objectList) : null;
+                if (nextCursorMark != null) {
+                    page.setNext(entityCollection, hasMoreItems, ODataSkipToken.CURSOR,
+                            nextCursorMark, remaining, rows, fingerprint);
+                } else {
+                    // Also when the query processor does not support cursors
+                    page.setNext(entityCollection, hasMoreItems, ODataSkipToken.OFFSET,
+                            String.valueOf(offset + rows), remaining, rows, fingerprint);
                 }
             }
         } catch (Exception e) {
@@ -235,6 +590,163 @@ public class CmisEntityCollectionProcessor implements EntityCollectionProcessor
         return entityCollection;
     }
     
+    /**
+     * Get a page of folder children (Folders('id')/children) from the children view.
+     */
+    private EntityCollection getChildrenData(String folderId, PageRequest page, String orderByClause,
+            Set<String> selectedProperties, Set<String> expandProperties, String baseUri) throws ODataApplicationException {
+        EntityCollection entityCollection = new EntityCollection();
+        
+        int fingerprint = ("children\n" + folderId + "\n" + orderByClause).hashCode();
+        ODataSkipToken token = page.skipToken == null ? null : ODataSkipToken.decode(page.skipToken, fingerprint);
+        if (token != null && token.getKind() != ODataSkipToken.OFFSET) {
+            throw new ODataApplicationException(
+                    "Invalid $skiptoken for this request",
+                    HttpStatusCode.BAD_REQUEST.getStatusCode(),
+                    Locale.ENGLISH
+            );
+        }
+        int remaining = token != null ? token.getRemaining() : page.top;
+        int rows = page.rows(remaining);
+        int offset = token != null ? token.getOffset() : page.skip;
+        
+        try {
+            ObjectInFolderList children = navigationService.getChildren(
+                    callContext,
+                    repositoryId,
+                    folderId,
+                    "*",  // filter
+                    orderByClause,
+                    Boolean.FALSE,  // includeAllowableActions
+                    IncludeRelationships.NONE,
+                    null,  // renditionFilter
+                    Boolean.FALSE,  // includePathSegment
+                    BigInteger.valueOf(rows),
+                    BigInteger.valueOf(offset),
+                    null,  // parentObjectData
+                    null   // extension
+            );
+            
+            if (children != null && children.getObjects() != null) {
+                List<ObjectData> objects = new ArrayList<>();
+                for (ObjectInFolderData childData : children.getObjects()) {
+                    if (childData.getObject() == null) {
+                        continue;
+                    }
+                    Entity entity = convertToEntity(childData.getObject(), selectedProperties, baseUri, CmisEdmProvider.ES_OBJECTS_NAME);
+                    entityCollection.getEntities().add(entity);
+                    objects.add(childData.getObject());
+                }
+                expandNavigationProperties(entityCollection.getEntities(), objects, expandProperties);
+                
+                if (children.getNumItems() != null) {
+                    entityCollection.setCount(children.getNumItems().intValue());
+                }
+                
+                page.setNext(entityCollection, Boolean.TRUE.equals(children.hasMoreItems()), ODataSkipToken.OFFSET,
+                        String.valueOf(offset + rows), remaining, rows, fingerprint);
+            }
+        } catch (Exception e) {
+            throw new ODataApplicationException(
+                    "Error fetching children: " + e.getMessage(),
+                    HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(),
+                    Locale.ENGLISH,
+                    e
+            );
+        }
+        
+        return entityCollection;
+    }
+    
+    /**
+     * Resolve Folders('id')/children to the folder ID.
+     */
+    private String getChildrenNavigationFolderId(UriResourceEntitySet folderSet, UriResource navigation)
+            throws ODataApplicationException {
+        if (navigation instanceof UriResourceNavigation
+                && "children".equals(((UriResourceNavigation) navigation).getProperty().getName())
+                && CmisEdmProvider.ES_FOLDERS_NAME.equals(folderSet.getEntitySet().getName())
+                && !folderSet.getKeyPredicates().isEmpty()) {
+            String folderId = folderSet.getKeyPredicates().get(0).getText();
+            if (folderId != null && folderId.startsWith("'") && folderId.endsWith("'")) {
+                folderId = folderId.substring(1, folderId.length() - 1).replace("''", "'");
+            }
+            return folderId;
+        }
+        throw new ODataApplicationException(
+                "Navigation is only supported for Folders('id')/children",
+                HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(),
+                Locale.ENGLISH
+        );
+    }
+    
+    private String getNextCursorMark(ObjectList objectList) {
+        if (objectList.getExtensions() == null) {
+            return null;
+        }
+        for (CmisExtensionElement element : objectList.getExtensions()) {
+            if (CmisExtensionToken.QUERY_CURSOR_NAMESPACE.equals(element.getNamespace())
+                    && CmisExtensionToken.QUERY_NEXT_CURSOR_MARK.equals(element.getName())) {
+                return element.getValue();
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Page size for this request: the client's odata.maxpagesize preference if
+     * given, otherwise the default, never more than the server maximum.
+     */
+    private int getPageSize(ODataRequest request, ODataResponse response) {
+        String prefer = request.getHeader("Prefer");
+        if (prefer != null) {
+            Matcher matcher = MAX_PAGE_SIZE_PREFERENCE.matcher(prefer);
+            if (matcher.find()) {
+                try {
+                    int preferred = Math.min(Integer.parseInt(matcher.group(1)), maxPageSize);
+                    if (preferred > 0) {
+                        response.setHeader("Preference-Applied", "odata.maxpagesize=" + preferred);
+                        return preferred;
+                    }
+                } catch (NumberFormatException e) {
+                    // Ignore an unusable preference
+                }
+            }
+        }
+        return defaultPageSize;
+    }
+    
+    /**
+     * The request URL with $top, $skip and $skiptoken removed, ready for a new
+     * $skiptoken: the token carries the position and what is left of $top.
+     */
+    private String buildNextLinkBase(ODataRequest request) {
+        StringBuilder link = new StringBuilder(request.getRawBaseUri());
+        if (request.getRawODataPath() != null) {
+            link.append(request.getRawODataPath());
+        }
+        link.append('?');
+        String query = request.getRawQueryPath();
+        if (query != null) {
+            for (String option : query.split("&")) {
+                if (option.isEmpty()) {
+                    continue;
+                }
+                String name = option.split("=", 2)[0];
+                try {
+                    name = URLDecoder.decode(name, StandardCharsets.UTF_8.name());
+                } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+                    // Keep the raw name
+                }
+                if ("$top".equals(name) || "$skip".equals(name) || "$skiptoken".equals(name)) {
+                    continue;
+                }
+                link.append(option).append('&');
+            }
+        }
+        return link.append("$skiptoken=").toString();
+    }
+    
     /**
      * Build CMIS query based on entity set name with optional filter, orderby, select, and search clauses.
      */
@@ -925,7 +1437,7 @@ public class CmisEntityCollectionProcessor implements EntityCollectionProcessor
         if (topOption != null) {
             return topOption.getValue();
         }
-        return 100; // Default max items
+        return -1; // No limit; the page size applies
     }
     
     /**
@@ -967,6 +1479,133 @@ public class CmisEntityCollectionProcessor implements EntityCollectionProcessor
         return expandProperties;
     }
     
+    /**
+     * Expand navigation properties for a page of entities.
+     * 
+     * The targets of all entities are gathered and resolved together, so a page
+     * costs a few set-based reads rather than a few calls per entity. Without
+     * an expand resolver, each entity is expanded on its own.
+     */
+    private void expandNavigationProperties(List<Entity> entities, List<ObjectData> objects, Set<String> expandProperties) {
+        if (expandProperties == null || expandProperties.isEmpty() || entities.isEmpty()) {
+            return;
+        }
+        if (expandResolver == null) {
+            for (int i = 0; i < entities.size(); i++) {
+                expandNavigationProperties(entities.get(i), objects.get(i), expandProperties);
+            }
+            return;
+        }
+        
+        boolean expandParent = expandProperties.contains("parent") || expandProperties.contains("parents");
+        boolean expandChildren = expandProperties.contains("children");
+        boolean expandSource = expandProperties.contains("source");
+        boolean expandTarget = expandProperties.contains("target");
+        
+        try {
+            // Gather the navigation targets of the whole page
+            List<String> objectIds = new ArrayList<>();
+            List<String> folderIds = new ArrayList<>();
+            Set<String> relatedIds = new HashSet<>();
+            for (ObjectData objectData : objects) {
+                String objectId = getPropertyValue(objectData, "cmis:objectId");
+                String baseTypeId = getPropertyValue(objectData, "cmis:baseTypeId");
+                objectIds.add(objectId);
+                if (objectId == null) {
+                    continue;
+                }
+                if (expandChildren && "cmis:folder".equals(baseTypeId)) {
+                    folderIds.add(objectId);
+                }
+                if ("cmis:relationship".equals(baseTypeId)) {
+                    addIfNotNull(relatedIds, expandSource ? getPropertyValue(objectData, "cmis:sourceId") : null);
+                    addIfNotNull(relatedIds, expandTarget ? getPropertyValue(objectData, "cmis:targetId") : null);
+                }
+            }
+            
+            Map<String, String> parentIds = new HashMap<>();
+            if (expandParent) {
+                for (Content content : expandResolver.getContents(objectIds).values()) {
+                    if (content.getParentId() != null) {
+                        parentIds.put(content.getId(), content.getParentId());
+                        relatedIds.add(content.getParentId());
+                    }
+                }
+            }
+            
+            // Resolve them with set-based reads
+            Map<String, ObjectData> related = expandResolver.getObjects(relatedIds);
+            Map<String, Integer> childCounts = new HashMap<>();
+            Map<String, List<ObjectData>> children = expandResolver.getChildren(folderIds, childCounts);
+            
+            for (int i = 0; i < entities.size(); i++) {
+                Entity entity = entities.get(i);
+                ObjectData objectData = objects.get(i);
+                String objectId = objectIds.get(i);
+                if (objectId == null) {
+                    continue;
+                }
+                
+                ObjectData parent = related.get(parentIds.get(objectId));
+                if (parent != null && expandProperties.contains("parent")) {
+                    addInlineEntity(entity, "parent", parent);
+                }
+                if (parent != null && expandProperties.contains("parents")) {
+                    addInlineEntitySet(entity, "parents", Collections.singletonList(parent), null);
+                }
+                if (children.containsKey(objectId)) {
+                    addInlineEntitySet(entity, "children", children.get(objectId), childCounts.get(objectId));
+                }
+                if (expandSource) {
+                    ObjectData source = related.get(getPropertyValue(objectData, "cmis:sourceId"));
+                    if (source != null) {
+                        addInlineEntity(entity, "source", source);
+                    }
+                }
+                if (expandTarget) {
+                    ObjectData target = related.get(getPropertyValue(objectData, "cmis:targetId"));
+                    if (target != null) {
+                        addInlineEntity(entity, "target", target);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // Navigation property expansion is optional
+            log.warn("$expand failed: " + e.getMessage(), e);
+        } finally {
+            expandResolver.finish(entities.size());
+        }
+    }
+    
+    private static void addIfNotNull(Set<String> ids, String id) {
+        if (id != null) {
+            ids.add(id);
+        }
+    }
+    
+    private void addInlineEntity(Entity entity, String title, ObjectData objectData) {
+        Link link = new Link();
+        link.setTitle(title);
+        link.setType("application/json");
+        link.setInlineEntity(convertToEntity(objectData, null));
+        entity.getNavigationLinks().add(link);
+    }
+    
+    private void addInlineEntitySet(Entity entity, String title, List<ObjectData> objects, Integer count) {
+        EntityCollection collection = new EntityCollection();
+        for (ObjectData objectData : objects) {
+            collection.getEntities().add(convertToEntity(objectData, null));
+        }
+        if (count != null) {
+            collection.setCount(count);
+        }
+        Link link = new Link();
+        link.setTitle(title);
+        link.setType("application/json");
+        link.setInlineEntitySet(collection);
+        entity.getNavigationLinks().add(link);
+    }
+    
     /**
      * Expand navigation properties for an entity based on $expand option.
      * Supports:
@@ -0,0 +1,198 @@
+package jp.aegif.nemaki.odata;
+
+import jp.aegif.nemaki.businesslogic.ContentService;
+import jp.aegif.nemaki.cmis.aspect.CompileService;
+import jp.aegif.nemaki.cmis.aspect.PermissionService;
+import jp.aegif.nemaki.model.Content;
+import org.apache.chemistry.opencmis.commons.data.ObjectData;
+import org.apache.chemistry.opencmis.commons.enums.IncludeRelationships;
+import org.apache.chemistry.opencmis.commons.server.CallContext;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resolves $expand for a whole page of entities with set-based reads.
+ *
+ * The navigation targets of every entity on the page are gathered first and
+ * then read, permission-filtered and compiled together: one bulk read for
+ * parents and relationship ends, one view read for the children of all
+ * folders. A per-request budget caps how many items are inlined.
+ * One instance serves one request.
+ */
+public final class ODataExpandResolver {
+
+    private static final Log log = LogFactory.getLog(ODataExpandResolver.class);
+
+    static final int DEFAULT_MAX_ITEMS = 1000;
+    static final int DEFAULT_MAX_CHILDREN = 100;
+
+    // Fan-out since startup
+    private static final AtomicLong requestCount = new AtomicLong();
+    private static final AtomicLong entityCount = new AtomicLong();
+    private static final AtomicLong inlinedCount = new AtomicLong();
+    private static final AtomicLong readCount = new AtomicLong();
+    private static final AtomicLong truncatedCount = new AtomicLong();
+
+    private final ContentService contentService;
+    private final PermissionService permissionService;
+    private final CompileService compileService;
+    private final CallContext callContext;
+    private final String repositoryId;
+    private final int maxChildren;
+
+    private int budget;
+    private int inlined;
+    private int reads;
+    private boolean truncated;
+
+    /**
+     * @param maxItems items that may be inlined for the whole request
+     * @param maxChildren children that may be inlined for one folder
+     */
+    ODataExpandResolver(ContentService contentService, PermissionService permissionService,
+            CompileService compileService, CallContext callContext, String repositoryId,
+            int maxItems, int maxChildren) {
+        this.contentService = contentService;
+        this.permissionService = permissionService;
+        this.compileService = compileService;
+        this.callContext = callContext;
+        this.repositoryId = repositoryId;
+        this.budget = Math.max(0, maxItems);
+        this.maxChildren = Math.max(0, maxChildren);
+    }
+
+    /**
+     * Contents of entities already on the page, for their parent IDs.
+     * They are neither filtered nor counted against the budget.
+     */
+    Map<String, Content> getContents(Collection<String> objectIds) {
+        Map<String, Content> result = new HashMap<>();
+        if (objectIds.isEmpty()) {
+            return result;
+        }
+        reads++;
+        for (Content content : contentService.getContents(repositoryId, objectIds)) {
+            result.put(content.getId(), content);
+        }
+        return result;
+    }
+
+    /**
+     * Permitted objects by ID. An object referenced by several entities is
+     * compiled, and counted, once.
+     */
+    Map<String, ObjectData> getObjects(Collection<String> objectIds) {
+        Map<String, ObjectData> result = new HashMap<>();
+        if (objectIds.isEmpty()) {
+            return result;
+        }
+        reads++;
+        List<Content> contents = contentService.getContents(repositoryId, new LinkedHashSet<>(objectIds));
+        for (Content content : permissionService.getFiltered(callContext, repositoryId, contents)) {
+            ObjectData objectData = compile(content);
+            if (objectData == null) {
+                break;
+            }
+            result.put(content.getId(), objectData);
+        }
+        return result;
+    }
+
+    /**
+     * Permitted children by folder ID, at most maxChildren for each folder.
+     *
+     * @param counts receives the number of permitted children of each folder
+     */
+    Map<String, List<ObjectData>> getChildren(Collection<String> folderIds, Map<String, Integer> counts) {
+        Map<String, List<ObjectData>> result = new LinkedHashMap<>();
+        if (folderIds.isEmpty()) {
+            return result;
+        }
+        reads++;
+        Map<String, List<Content>> children = contentService.getChildrenOfParents(repositoryId, folderIds);
+
+        // One permission pass over the children of all the folders
+        List<Content> all = new ArrayList<>();
+        for (List<Content> list : children.values()) {
+            all.addAll(list);
+        }
+        Map<String, List<Content>> permitted = new LinkedHashMap<>();
+        for (String folderId : children.keySet()) {
+            permitted.put(folderId, new ArrayList<Content>());
+        }
+        for (Content child : permissionService.getFiltered(callContext, repositoryId, all)) {
+            List<Content> list = permitted.get(child.getParentId());
+            if (list != null) {
+                list.add(child);
+            }
+        }
+
+        for (Map.Entry<String, List<Content>> entry : permitted.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().size());
+            List<ObjectData> list = new ArrayList<>();
+            for (Content child : entry.getValue()) {
+                if (list.size() >= maxChildren) {
+                    truncated = true;
+                    break;
+                }
+                ObjectData objectData = compile(child);
+                if (objectData == null) {
+                    break;
+                }
+                list.add(objectData);
+            }
+            result.put(entry.getKey(), list);
+        }
+        return result;
+    }
+
+    /**
+     * Record the fan-out of this request.
+     */
+    void finish(int entities) {
+        requestCount.incrementAndGet();
+        entityCount.addAndGet(entities);
+        inlinedCount.addAndGet(inlined);
+        readCount.addAndGet(reads);
+        if (truncated) {
+            truncatedCount.incrementAndGet();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("$expand: " + entities + " entities, " + inlined + " items inlined in " + reads
+                    + " reads" + (truncated ? " (truncated)" : ""));
+        }
+    }
+
+    public static Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("odata.expand.requests", requestCount.get());
+        metrics.put("odata.expand.entities", entityCount.get());
+        metrics.put("odata.expand.inlined", inlinedCount.get());
+        metrics.put("odata.expand.reads", readCount.get());
+        metrics.put("odata.expand.truncated", truncatedCount.get());
+        return metrics;
+    }
+
+    /**
+     * @return null once the budget is spent
+     */
+    private ObjectData compile(Content content) {
+        if (budget <= 0) {
+            truncated = true;
+            return null;
+        }
+        budget--;
+        inlined++;
+        return compileService.compileObjectData(callContext, repositoryId, content, "*",
+                Boolean.FALSE, IncludeRelationships.NONE, null, Boolean.FALSE);
+    }
+}
@@ -16,12 +16,17 @@ import org.apache.olingo.server.core.ODataHandlerImpl;
 import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.context.support.WebApplicationContextUtils;
 
+import jp.aegif.nemaki.businesslogic.ContentService;
+import jp.aegif.nemaki.cmis.aspect.CompileService;
+import jp.aegif.nemaki.cmis.aspect.PermissionService;
 import jp.aegif.nemaki.cmis.service.AclService;
 import jp.aegif.nemaki.cmis.service.DiscoveryService;
 import jp.aegif.nemaki.cmis.service.NavigationService;
 import jp.aegif.nemaki.cmis.service.ObjectService;
 import jp.aegif.nemaki.cmis.service.RepositoryService;
 import jp.aegif.nemaki.cmis.service.VersioningService;
+import jp.aegif.nemaki.util.PropertyManager;
+import jp.aegif.nemaki.util.constant.PropertyKey;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -63,6 +68,15 @@ public class ODataServlet extends HttpServlet {
     private DiscoveryService discoveryService;
     private VersioningService versioningService;
     private AclService aclService;
+    private int pageSize = CmisEntityCollectionProcessor.DEFAULT_PAGE_SIZE;
+    private int maxPageSize = CmisEntityCollectionProcessor.DEFAULT_MAX_PAGE_SIZE;
+    private ContentService contentService;
+    private PermissionService permissionService;
+    private CompileService compileService;
+    private int expandMaxItems = ODataExpandResolver.DEFAULT_MAX_ITEMS;
+    private int expandMaxChildren = ODataExpandResolver.DEFAULT_MAX_CHILDREN;
+    private int applyMaxGroups = CmisEntityCollectionProcessor.DEFAULT_APPLY_MAX_GROUPS;
+    private int applyMaxScan = CmisEntityCollectionProcessor.DEFAULT_APPLY_MAX_SCAN;
     
     @Override
     public void init() throws ServletException {
@@ -77,6 +91,18 @@ public class ODataServlet extends HttpServlet {
             discoveryService = context.getBean(DiscoveryService.class);
             versioningService = context.getBean(VersioningService.class);
             aclService = context.getBean(AclService.class);
+            // By name: the proxies and their targets share these types
+            contentService = context.getBean("ContentService", ContentService.class);
+            permissionService = context.getBean("PermissionService", PermissionService.class);
+            compileService = context.getBean("CompileService", CompileService.class);
+            
+            PropertyManager propertyManager = context.getBean(PropertyManager.class);
+            pageSize = readInt(propertyManager, PropertyKey.ODATA_PAGE_SIZE, pageSize);
+            maxPageSize = readInt(propertyManager, PropertyKey.ODATA_PAGE_SIZE_MAX, maxPageSize);
+            expandMaxItems = readInt(propertyManager, PropertyKey.ODATA_EXPAND_MAX_ITEMS, expandMaxItems);
+            expandMaxChildren = readInt(propertyManager, PropertyKey.ODATA_EXPAND_MAX_CHILDREN, expandMaxChildren);
+            applyMaxGroups = readInt(propertyManager, PropertyKey.ODATA_APPLY_MAX_GROUPS, applyMaxGroups);
+            applyMaxScan = readInt(propertyManager, PropertyKey.ODATA_APPLY_MAX_SCAN, applyMaxScan);
         }
     }
     
@@ -116,14 +142,20 @@ public class ODataServlet extends HttpServlet {
             ODataHandlerImpl handler = new ODataHandlerImpl(odata, serviceMetadata, null);
             
             // Register processors
-            handler.register(new CmisEntityCollectionProcessor(
+            CmisEntityCollectionProcessor collectionProcessor = new CmisEntityCollectionProcessor(
                     repositoryService,
                     objectService,
                     navigationService,
                     discoveryService,
                     repositoryId,
-                    callContext
-            ));
+                    callContext,
+                    pageSize,
+                    maxPageSize,
+                    contentService == null ? null : new ODataExpandResolver(contentService, permissionService,
+                            compileService, callContext, repositoryId, expandMaxItems, expandMaxChildren)
+            );
+            collectionProcessor.setApplyLimits(applyMaxGroups, applyMaxScan);
+            handler.register(collectionProcessor);
             
             handler.register(new CmisEntityProcessor(
                     repositoryService,
@@ -168,6 +200,18 @@ public class ODataServlet extends HttpServlet {
         }
     }
     
+    private int readInt(PropertyManager propertyManager, String key, int defaultValue) {
+        String value = propertyManager.readValue(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+    
     /**
      * Create an OData request from a Jakarta servlet request.
      */
@@ -0,0 +1,86 @@
+package jp.aegif.nemaki.odata;
+
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+
+/**
+ * Opaque $skiptoken for server-driven paging of entity collections.
+ *
+ * A token remembers where the next page starts - a Solr cursorMark for queries,
+ * or an offset for folder children and queries started with $skip - together
+ * with how many items of $top are still owed. It is bound to the request it
+ * was issued for, so it cannot be replayed against a different query.
+ */
+final class ODataSkipToken {
+
+    /** Continue a Solr cursor walk */
+    static final char CURSOR = 'c';
+    /** Continue at an offset */
+    static final char OFFSET = 'o';
+
+    private static final String SEPARATOR = "\n";
+
+    private final char kind;
+    private final String position;
+    private final int remaining;
+    private final int fingerprint;
+
+    /**
+     * @param remaining items of $top still to be returned, -1 without $top
+     * @param fingerprint identifies the request (entity set, filter, order)
+     */
+    ODataSkipToken(char kind, String position, int remaining, int fingerprint) {
+        this.kind = kind;
+        this.position = position;
+        this.remaining = remaining;
+        this.fingerprint = fingerprint;
+    }
+
+    String encode() {
+        String raw = kind + SEPARATOR + Integer.toHexString(fingerprint) + SEPARATOR + remaining + SEPARATOR + position;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws ODataApplicationException 400 if the token is malformed or was issued for another request
+     */
+    static ODataSkipToken decode(String token, int fingerprint) throws ODataApplicationException {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(SEPARATOR, 4);
+            if (parts.length == 4 && parts[0].length() == 1
+                    && (parts[0].charAt(0) == CURSOR || parts[0].charAt(0) == OFFSET)
+                    && Integer.parseUnsignedInt(parts[1], 16) == fingerprint
+                    && (parts[0].charAt(0) != OFFSET || Integer.parseInt(parts[3]) >= 0)) {
+                return new ODataSkipToken(parts[0].charAt(0), parts[3], Integer.parseInt(parts[2]), fingerprint);
+            }
+        } catch (IllegalArgumentException e) {
+            // Fall through to the error below
+        }
+        throw new ODataApplicationException(
+                "Invalid $skiptoken for this request",
+                HttpStatusCode.BAD_REQUEST.getStatusCode(),
+                Locale.ENGLISH
+        );
+    }
+
+    char getKind() {
+        return kind;
+    }
+
+    String getPosition() {
+        return position;
+    }
+
+    int getOffset() {
+        return Integer.parseInt(position);
+    }
+
+    int getRemaining() {
+        return remaining;
+    }
+}
@@ -5,6 +5,7 @@ import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import jp.aegif.nemaki.businesslogic.PrincipalService;
+import jp.aegif.nemaki.init.RepositoryBootstrap;
 
 public abstract class AbstractNemakiPatch {
 	private static final Log log = LogFactory.getLog(AbstractNemakiPatch.class);
@@ -20,12 +21,14 @@ public abstract class AbstractNemakiPatch {
 		log.info("=== AbstractNemakiPatch.apply() called for patch: " + getName() + " ===");
 		applySystemPatch();
 
-		for(String repositoryId : patchUtil.getRepositoryInfoMap().keys()){
+		// Repositories are patched at the same time; each has its own patch history
+		int parallelism = RepositoryBootstrap.getParallelism(patchUtil.getPropertyManager());
+		RepositoryBootstrap.forEach("patch-" + getName(), patchUtil.getRepositoryInfoMap().keys(), parallelism, repositoryId -> {
 			log.info("Processing repository: " + repositoryId + " for patch: " + getName());
 			boolean isApplied = patchUtil.isApplied(repositoryId, getName());
 			if(isApplied){
 				log.info("[patch=" + getName() + ", repositoryId=" + repositoryId + "] already applied, skipped");
-				continue;
+				return;
 			}else{
 				try{
 					log.info("Calling applyPerRepositoryPatch for repository: " + repositoryId + ", patch: " + getName());
@@ -37,7 +40,7 @@ public abstract class AbstractNemakiPatch {
 					log.error("[patch=" + getName() + ", repositoryId=" + repositoryId + "] failed", e);
 				}
 			}
-		}
+		});
 		log.info("=== AbstractNemakiPatch.apply() completed for patch: " + getName() + " ===");
 	}
 	protected abstract void applySystemPatch();
@@ -1,11 +1,15 @@
 package jp.aegif.nemaki.patch;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.chemistry.opencmis.commons.PropertyIds;
 import org.apache.chemistry.opencmis.commons.enums.Cardinality;
 import org.apache.chemistry.opencmis.commons.enums.PropertyType;
 import org.apache.chemistry.opencmis.commons.enums.Updatability;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.context.ApplicationListener;
@@ -22,6 +26,7 @@ import jp.aegif.nemaki.cmis.factory.SystemCallContext;
 import jp.aegif.nemaki.cmis.factory.info.RepositoryInfoMap;
 import jp.aegif.nemaki.dao.impl.couch.connector.CloudantClientPool;
 import jp.aegif.nemaki.dao.impl.couch.connector.CloudantClientWrapper;
+import jp.aegif.nemaki.init.RepositoryBootstrap;
 import jp.aegif.nemaki.model.Content;
 import jp.aegif.nemaki.model.Folder;
 import jp.aegif.nemaki.model.NemakiPropertyDefinition;
@@ -47,6 +52,10 @@ public class PatchService implements ApplicationListener<ContextRefreshedEvent>
 	private static final Log log = LogFactory.getLog(PatchService.class);
 	private static final AtomicBoolean initialized = new AtomicBoolean(false);
 
+	// Patch history name of the system property details, suffixed with a digest of the property IDs
+	private static final String SYSTEM_PROPERTY_DETAILS_HISTORY = "system-property-definition-details";
+	private static final String TCK_SECONDARY_TYPE_ID = "tck:testSecondaryType";
+
 	private RepositoryInfoMap repositoryInfoMap;
 
 	private CloudantClientPool connectorPool;
@@ -98,6 +107,8 @@ public class PatchService implements ApplicationListener<ContextRefreshedEvent>
 	}
 
 	private List<AbstractNemakiPatch> patchList;
+
+	private PatchUtil patchUtil;
 	
 	public PatchService() {
 		// The patch application is triggered via ApplicationListener<ContextRefreshedEvent>
@@ -124,22 +135,26 @@ public class PatchService implements ApplicationListener<ContextRefreshedEvent>
 			log.debug("Event source: " + event.getSource().getClass().getName());
 		}
 
+		long start = System.currentTimeMillis();
 		try {
 			log.info("Starting CMIS patch application (Phase 3)");
 
 			// Note: All database initialization (Phase 1) is handled by DatabasePreInitializer
 			// This method focuses on CMIS-aware operations that require fully initialized services
 
+			// Repositories whose type or property definitions were changed below
+			Set<String> changedRepositories = ConcurrentHashMap.newKeySet();
+
 			// CRITICAL FIX: Create PropertyDefinitionDetail records for system CMIS properties
 			// This addresses the root cause of PropertyDefinitionCore contamination
-			initializeSystemPropertyDefinitionDetails();
+			initializeSystemPropertyDefinitionDetails(changedRepositories);
 
 			// TCK REQUIREMENT: Create custom secondary type for TCK tests
-			createTCKSecondaryType();
+			createTCKSecondaryType(changedRepositories);
 
 			// PRIORITY 4: TypeManager cache forced update for TCK compliance
 			// This ensures that PropertyDefinitionDetail changes are immediately reflected in type cache
-			invalidateTypeManagerCaches();
+			invalidateTypeManagerCaches(changedRepositories);
 
 			// INITIAL CONTENT: Create Sites and Technical Documents folders
 			// DISABLED: Folder creation moved to Patch_InitialContentSetup with proper ACL configuration
@@ -167,6 +182,27 @@ public class PatchService implements ApplicationListener<ContextRefreshedEvent>
 		} catch (Exception e) {
 			log.error("Failed to apply CMIS patches on startup", e);
 			// Continue with application startup even if patches fail
+		} finally {
+			RepositoryBootstrap.record("patches", "*", System.currentTimeMillis() - start);
+			RepositoryBootstrap.logReport();
+		}
+	}
+
+	private int getParallelism() {
+		return RepositoryBootstrap.getParallelism(propertyManager);
+	}
+
+	/**
+	 * Whether a startup step has been recorded as applied to the repository.
+	 * Without a PatchUtil every step runs on every start, as before.
+	 */
+	private boolean isApplied(String repositoryId, String name) {
+		return patchUtil != null && patchUtil.isApplied(repositoryId, name);
+	}
+
+	private void markApplied(String repositoryId, String name) {
+		if (patchUtil != null) {
+			patchUtil.createPathHistory(repositoryId, name);
 		}
 	}
 	
@@ -175,7 +211,7 @@ public class PatchService implements ApplicationListener<ContextRefreshedEvent>
 	 * Root cause: RepositoryServiceImpl.createType excludes systemIds from PropertyDefinitionDetail creation
 	 * This causes TypeManagerImpl to have zero PropertyDefinitionDetail records, leading to contamination
 	 */
-	private void initializeSystemPropertyDefinitionDetails() {
+	private void initializeSystemPropertyDefinitionDetails(Set<String> changedRepositories) {
 		log.info("=== CRITICAL FIX: Initializing PropertyDefinitionDetail for system CMIS properties ===");
 		
 		if (typeService == null) {
@@ -197,16 +233,27 @@ public class PatchService implements ApplicationListener<ContextRefreshedEvent>
 			// Get system property IDs from TypeManager
 			List<String> systemPropertyIds = typeManager.getSystemPropertyIds();
 			log.info("Found " + systemPropertyIds.size() + " system properties to initialize");
+
+			// The details are created once per set of system properties; creating them
+			// again on every start only adds duplicate documents
+			String historyName = SYSTEM_PROPERTY_DETAILS_HISTORY + "-"
+					+ DigestUtils.sha256Hex(String.join(",", systemPropertyIds)).substring(0, 12);
 			
-			// Iterate through all repositories
-			for (String repositoryId : repositoryInfoMap.keys()) {
+			// Repositories are independent, so they are initialized at the same time
+			RepositoryBootstrap.forEach("system-property-details", repositoryInfoMap.keys(), getParallelism(), repositoryId -> {
+				if (isApplied(repositoryId, historyName)) {
+					log.info("System properties already initialized for repository: " + repositoryId);
+					return;
+				}
 				log.info("Initializing system properties for repository: " + repositoryId);
 				
 				// Create PropertyDefinitionDetail for each system property
 				for (String propertyId : systemPropertyIds) {
 					createSystemPropertyDefinitionDetail(repositoryId, propertyId);
 				}
-			}
+				changedRepositories.add(repositoryId);
+				markApplied(repositoryId, historyName);
+			});
 			
 			log.info("✅ System PropertyDefinitionDetail initialization completed successfully");
 		} catch (Exception e) {
@@ -220,7 +267,7 @@ public class PatchService implements ApplicationListener<ContextRefreshedEvent>
 	 * This ensures that PropertyDefinitionDetail changes are immediately reflected in type definitions
 	 * and resolves Browser Binding JSON serialization issues with property definitions
 	 */
-	private void invalidateTypeManagerCaches() {
+	private void invalidateTypeManagerCaches(Collection<String> repositoryIds) {
 		log.info("=== PRIORITY 4: TypeManager cache forced update for TCK compliance ===");
 		
 		if (typeManager == null) {
@@ -233,9 +280,14 @@ public class PatchService implements ApplicationListener<ContextRefreshedEvent>
 			return;
 		}
 		
+		if (repositoryIds.isEmpty()) {
+			log.info("No type or property definitions changed - TypeManager caches kept");
+			return;
+		}
+		
 		try {
-			// Force invalidate TypeManager cache for all repositories
-			for (String repositoryId : repositoryInfoMap.keys()) {
+			// Force invalidate TypeManager cache for the changed repositories
+			for (String repositoryId : repositoryIds) {
 				log.info("Invalidating TypeManager cache for repository: " + repositoryId);
 				
 				// Force TypeManager to reload type definitions from database
@@ -471,6 +523,13 @@ public class PatchService implements ApplicationListener<ContextRefreshedEvent>
 		}
 		this.propertyManager = propertyManager;
 	}
+
+	public void setPatchUtil(PatchUtil patchUtil) {
+		if (log.isDebugEnabled()) {
+			log.debug("PatchService.setPatchUtil() called");
+		}
+		this.patchUtil = patchUtil;
+	}
 	
 	// Setters for configuration properties
 	public void setCouchdbUrl(String couchdbUrl) {
@@ -516,7 +575,7 @@ public class PatchService implements ApplicationListener<ContextRefreshedEvent>
 	 * By default, TCK uses "cmis:secondary" which is a base type and cannot be attached to documents.
 	 * This method creates "tck:testSecondaryType" which extends cmis:secondary and can be attached.
 	 */
-	private void createTCKSecondaryType() {
+	private void createTCKSecondaryType(Set<String> changedRepositories) {
 		log.info("=== TCK REQUIREMENT: Creating custom secondary type for TCK tests ===");
 
 		if (typeService == null) {
@@ -530,16 +589,15 @@ public class PatchService implements ApplicationListener<ContextRefreshedEvent>
 		}
 
 		try {
-			// Iterate through all repositories
-			for (String repositoryId : repositoryInfoMap.keys()) {
+			RepositoryBootstrap.forEach("tck-secondary-type", repositoryInfoMap.keys(), getParallelism(), repositoryId -> {
 				log.info("Creating TCK secondary type for repository: " + repositoryId);
 
 				// Check if type already exists
 				try {
-					Object existingType = typeService.getTypeDefinition(repositoryId, "tck:testSecondaryType");
+					Object existingType = typeService.getTypeDefinition(repositoryId, TCK_SECONDARY_TYPE_ID);
 					if (existingType != null) {
 						log.info("TCK secondary type already exists in repository: " + repositoryId);
-						continue;
+						return;
 					}
 				} catch (Exception e) {
 					// Type doesn't exist, create it
@@ -550,11 +608,11 @@ public class PatchService implements ApplicationListener<ContextRefreshedEvent>
 				jp.aegif.nemaki.model.NemakiTypeDefinition typeDef = new jp.aegif.nemaki.model.NemakiTypeDefinition();
 				// CRITICAL FIX: Use setTypeId(), not setId() - setId() sets NodeBase.id (CouchDB internal ID)
 				// but setTypeId() sets the CMIS type identifier which is used for CouchDB document _id
-				typeDef.setTypeId("tck:testSecondaryType");
+				typeDef.setTypeId(TCK_SECONDARY_TYPE_ID);
 				typeDef.setLocalName("testSecondaryType");
 				typeDef.setLocalNameSpace("http://tck.opencmis.apache.org");
 				typeDef.setDisplayName("TCK Test Secondary Type");
-				typeDef.setQueryName("tck:testSecondaryType");
+				typeDef.setQueryName(TCK_SECONDARY_TYPE_ID);
 				typeDef.setDescription("Secondary type for TCK compliance tests");
 				typeDef.setBaseId(org.apache.chemistry.opencmis.commons.enums.BaseTypeId.CMIS_SECONDARY);
 				typeDef.setParentId("cmis:secondary");
@@ -569,12 +627,11 @@ public class PatchService implements ApplicationListener<ContextRefreshedEvent>
 
 				// Create the type
 				typeService.createTypeDefinition(repositoryId, typeDef);
+				changedRepositories.add(repositoryId);
 				log.info("✅ TCK secondary type created successfully in repository: " + repositoryId);
-			}
-
-			// Invalidate type manager caches to ensure new type is immediately available
-			invalidateTypeManagerCaches();
+			});
 
+			// Type manager caches of the changed repositories are invalidated by the caller
 			log.info("✅ TCK custom secondary type creation completed successfully");
 		} catch (Exception e) {
 			log.error("❌ Failed to create TCK secondary type", e);
@@ -759,16 +816,16 @@ public class PatchService implements ApplicationListener<ContextRefreshedEvent>
 		}
 
 		try {
-			for (String repositoryId : repositoryInfoMap.keys()) {
+			RepositoryBootstrap.forEach("solr-root-folders", repositoryInfoMap.keys(), getParallelism(), repositoryId -> {
 				if (repositoryId.endsWith("_closet")) {
 					log.debug("Skipping closet repository: " + repositoryId);
-					continue;
+					return;
 				}
 
 				String rootFolderId = repositoryInfoMap.get(repositoryId).getRootFolderId();
 				if (rootFolderId == null) {
 					log.warn("Root folder ID not available for repository: " + repositoryId);
-					continue;
+					return;
 				}
 
 				try {
@@ -777,7 +834,7 @@ public class PatchService implements ApplicationListener<ContextRefreshedEvent>
 					Content rootContent = contentService.getContent(repositoryId, rootFolderId);
 					if (rootContent == null) {
 						log.warn("Root folder not found in repository: " + repositoryId);
-						continue;
+						return;
 					}
 
 					// CRITICAL FIX: Ensure objectType is set correctly
@@ -804,7 +861,7 @@ public class PatchService implements ApplicationListener<ContextRefreshedEvent>
 						log.debug("Root folder indexing error details", solrEx);
 					}
 				}
-			}
+			});
 
 			log.info("✅ Root folder Solr indexing completed");
 		} catch (Exception e) {
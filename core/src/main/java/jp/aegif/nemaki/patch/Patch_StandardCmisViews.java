@@ -80,6 +80,9 @@ public class Patch_StandardCmisViews extends AbstractNemakiPatch {
 
             addViewIfMissing(views, "folders", "function(doc) { if (doc.type == 'cmis:folder')  emit(doc._id, doc) }", null, repositoryId);
 
+            // Folder hierarchy without the folder documents, for the path index
+            addViewIfMissing(views, "folderNames", "function(doc) { if (doc.type == 'cmis:folder')  emit(doc._id, [doc.parentId, doc.name]) }", null, repositoryId);
+
             addViewIfMissing(views, "propertyDefinitionDetailsByCoreNodeId", "function(doc) { if (doc.type == 'propertyDefinitionDetail')  emit(doc.coreNodeId, doc) }", null, repositoryId);
 
             addViewIfMissing(views, "contentsById", "function(doc) { if (['cmis:document', 'cmis:folder', 'cmis:relationship', 'cmis:policy', 'cmis:item','cmis:secondary'].indexOf(doc.type) >= 0)  emit(doc._id, doc) }", null, repositoryId);
@@ -26,11 +26,16 @@ import jakarta.ws.rs.GET;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 
 import jp.aegif.nemaki.audit.AuditLogger;
+import jp.aegif.nemaki.audit.AuditSegmentStore;
+import jp.aegif.nemaki.cmis.factory.auth.impl.VerifiedCredentialCache;
+import jp.aegif.nemaki.odata.ODataExpandResolver;
+import jp.aegif.nemaki.util.cache.RequestLookupCache;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
@@ -44,6 +49,8 @@ import java.util.Map;
  * - GET /rest/all/audit/metrics - Returns audit event statistics (JSON)
  * - GET /rest/all/audit/metrics/prometheus - Returns metrics in Prometheus format
  * - POST /rest/all/audit/metrics/reset - Resets all metrics counters (admin only)
+ * - GET /rest/all/audit/metrics/events - Queries the local audit event store (admin only)
+ * - GET /rest/all/audit/metrics/segments - Lists the segments of the local audit event store (admin only)
  */
 @Path("/all/audit/metrics")
 public class AuditMetricsResource extends ResourceBase {
@@ -222,12 +229,32 @@ public class AuditMetricsResource extends ResourceBase {
                       .append(metrics.getOrDefault("audit.events.failed", 0L))
                       .append("\n\n");
 
+            // Pipeline (only when the background writer is running)
+            if (metrics.containsKey("audit.pipeline.queue.depth")) {
+                prometheus.append("# HELP nemakiware_audit_events_dropped Number of audit events dropped because the pipeline buffer was full\n");
+                prometheus.append("# TYPE nemakiware_audit_events_dropped counter\n");
+                prometheus.append("nemakiware_audit_events_dropped ")
+                          .append(metrics.get("audit.events.dropped"))
+                          .append("\n\n");
+
+                prometheus.append("# HELP nemakiware_audit_pipeline_queue_depth Number of audit events waiting for the writer\n");
+                prometheus.append("# TYPE nemakiware_audit_pipeline_queue_depth gauge\n");
+                prometheus.append("nemakiware_audit_pipeline_queue_depth ")
+                          .append(metrics.get("audit.pipeline.queue.depth"))
+                          .append("\n\n");
+            }
+
             // Audit enabled status (gauge)
             prometheus.append("# HELP nemakiware_audit_enabled Whether audit logging is enabled (1=enabled, 0=disabled)\n");
             prometheus.append("# TYPE nemakiware_audit_enabled gauge\n");
             prometheus.append("nemakiware_audit_enabled ")
                       .append(AuditLogger.isEnabled() ? 1 : 0)
-                      .append("\n");
+                      .append("\n\n");
+
+            // OData $expand fan-out, Basic auth credential cache, per-request lookup memoisation
+            appendCounters(prometheus, ODataExpandResolver.getMetrics());
+            appendCounters(prometheus, VerifiedCredentialCache.getMetrics());
+            appendCounters(prometheus, RequestLookupCache.getMetrics());
 
             return Response.ok(prometheus.toString())
                     .type("text/plain; version=0.0.4; charset=utf-8")
@@ -243,4 +270,147 @@ public class AuditMetricsResource extends ResourceBase {
                 .build();
         }
     }
+
+    /**
+     * Append cache and fan-out counters, named after their metric keys
+     */
+    private static void appendCounters(StringBuilder prometheus, Map<String, Long> counters) {
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            String name = "nemakiware_" + counter.getKey().replace('.', '_') + "_total";
+            prometheus.append("# TYPE ").append(name).append(" counter\n");
+            prometheus.append(name).append(" ").append(counter.getValue()).append("\n");
+        }
+    }
+
+    /**
+     * Queries the local audit event store, oldest events first.
+     * Only segments whose index can contain matching events are read.
+     * This endpoint is restricted to admin users only.
+     *
+     * @param userId Only events of this user (optional)
+     * @param objectId Only events on this object (optional)
+     * @param operation Only events of this operation (optional)
+     * @param repositoryId Only events in this repository (optional)
+     * @param result SUCCESS or FAILURE (optional)
+     * @param from Earliest event time in epoch milliseconds (optional)
+     * @param to Latest event time in epoch milliseconds (optional)
+     * @param limit Maximum number of events (default: 100, max: 1000)
+     * @param httpRequest The HTTP request
+     * @return JSON object containing the matching events
+     */
+    @GET
+    @Path("/events")
+    @Produces(MediaType.APPLICATION_JSON)
+    @SuppressWarnings("unchecked")
+    public Response queryEvents(@QueryParam("userId") String userId,
+                                @QueryParam("objectId") String objectId,
+                                @QueryParam("operation") String operation,
+                                @QueryParam("repositoryId") String repositoryId,
+                                @QueryParam("result") String result,
+                                @QueryParam("from") Long from,
+                                @QueryParam("to") Long to,
+                                @QueryParam("limit") Integer limit,
+                                @Context HttpServletRequest httpRequest) {
+        JSONArray errMsg = new JSONArray();
+
+        if (!checkAdmin(errMsg, httpRequest)) {
+            JSONObject error = new JSONObject();
+            error.put("status", "error");
+            error.put("message", "Only administrators can query audit events");
+            error.put("errors", errMsg);
+            return Response.status(403).entity(error.toJSONString()).build();
+        }
+
+        AuditSegmentStore store = AuditLogger.getSegmentStore();
+        if (store == null) {
+            JSONObject error = new JSONObject();
+            error.put("status", "error");
+            error.put("message", "Audit event store is not enabled (audit.store.enabled)");
+            return Response.status(404).entity(error.toJSONString()).build();
+        }
+
+        try {
+            AuditSegmentStore.Query query = new AuditSegmentStore.Query();
+            query.setUserId(userId);
+            query.setObjectId(objectId);
+            query.setOperation(operation);
+            query.setRepositoryId(repositoryId);
+            query.setResult(result);
+            query.setFrom(from);
+            query.setTo(to);
+            query.setLimit(limit == null ? 0 : limit);
+
+            AuditSegmentStore.QueryResult queryResult = store.query(query);
+
+            JSONArray events = new JSONArray();
+            for (Map<String, Object> event : queryResult.getEvents()) {
+                JSONObject json = new JSONObject();
+                json.putAll(event);
+                events.add(json);
+            }
+
+            JSONObject response = new JSONObject();
+            response.put("status", "ok");
+            response.put("events", events);
+            response.put("count", events.size());
+            response.put("hasMoreItems", queryResult.isHasMoreItems());
+            response.put("scannedSegments", queryResult.getScannedSegments());
+            return Response.ok(response.toJSONString()).build();
+
+        } catch (Exception e) {
+            java.util.logging.Logger.getLogger(AuditMetricsResource.class.getName())
+                .severe("Failed to query audit events: " + e.getMessage());
+            JSONObject error = new JSONObject();
+            error.put("status", "error");
+            error.put("message", "Failed to query audit events");
+            return Response.status(500).entity(error.toJSONString()).build();
+        }
+    }
+
+    /**
+     * Lists the segments of the local audit event store.
+     * This endpoint is restricted to admin users only.
+     *
+     * @param httpRequest The HTTP request
+     * @return JSON object containing segment names, time ranges and sizes
+     */
+    @GET
+    @Path("/segments")
+    @Produces(MediaType.APPLICATION_JSON)
+    @SuppressWarnings("unchecked")
+    public Response getSegments(@Context HttpServletRequest httpRequest) {
+        JSONArray errMsg = new JSONArray();
+
+        if (!checkAdmin(errMsg, httpRequest)) {
+            JSONObject error = new JSONObject();
+            error.put("status", "error");
+            error.put("message", "Only administrators can view audit segments");
+            error.put("errors", errMsg);
+            return Response.status(403).entity(error.toJSONString()).build();
+        }
+
+        AuditSegmentStore store = AuditLogger.getSegmentStore();
+        if (store == null) {
+            JSONObject error = new JSONObject();
+            error.put("status", "error");
+            error.put("message", "Audit event store is not enabled (audit.store.enabled)");
+            return Response.status(404).entity(error.toJSONString()).build();
+        }
+
+        JSONArray segments = new JSONArray();
+        for (AuditSegmentStore.SegmentInfo info : store.getSegments()) {
+            JSONObject segment = new JSONObject();
+            segment.put("name", info.getName());
+            segment.put("eventCount", info.getEventCount());
+            segment.put("minTime", info.getMinTime());
+            segment.put("maxTime", info.getMaxTime());
+            segment.put("sizeBytes", info.getSizeBytes());
+            segments.add(segment);
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("status", "ok");
+        json.put("segments", segments);
+        return Response.ok(json.toJSONString()).build();
+    }
 }
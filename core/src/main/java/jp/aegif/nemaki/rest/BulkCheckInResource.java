@@ -87,6 +87,7 @@ import jp.aegif.nemaki.model.Document;
 import jp.aegif.nemaki.model.Folder;
 import jp.aegif.nemaki.model.GroupItem;
 import jp.aegif.nemaki.model.Item;
+import jp.aegif.nemaki.model.Job;
 import jp.aegif.nemaki.model.NemakiPropertyDefinition;
 import jp.aegif.nemaki.model.NemakiPropertyDefinitionCore;
 import jp.aegif.nemaki.model.Policy;
@@ -97,7 +98,9 @@ import jp.aegif.nemaki.model.VersionSeries;
 import jp.aegif.nemaki.model.exception.ParentNoLongerExistException;
 import jp.aegif.nemaki.util.DataUtil;
 import jp.aegif.nemaki.businesslogic.ContentService;
+import jp.aegif.nemaki.businesslogic.JobService;
 import jp.aegif.nemaki.businesslogic.TypeService;
+import jp.aegif.nemaki.businesslogic.job.impl.BulkCheckInJobHandler;
 import jp.aegif.nemaki.cmis.service.VersioningService;
 import jp.aegif.nemaki.dao.ContentDaoService;
 import jp.aegif.nemaki.cmis.aspect.CompileService;
@@ -114,6 +117,8 @@ public class BulkCheckInResource extends ResourceBase {
 	private TypeService typeService;
 	private TypeManager typeManager;
 	private CompileService compileService;
+	private BulkCheckInJobHandler bulkCheckInJobHandler;
+	private JobService jobService;
 
 	public void setContentService(ContentService contentService) {
 		this.contentService = contentService;
@@ -135,6 +140,14 @@ public class BulkCheckInResource extends ResourceBase {
 		this.typeManager = typeManager;
 	}
 
+	public void setBulkCheckInJobHandler(BulkCheckInJobHandler bulkCheckInJobHandler) {
+		this.bulkCheckInJobHandler = bulkCheckInJobHandler;
+	}
+
+	public void setJobService(JobService jobService) {
+		this.jobService = jobService;
+	}
+
 	
 	@SuppressWarnings("unchecked")
 	@POST
@@ -173,82 +186,32 @@ public class BulkCheckInResource extends ResourceBase {
 			return makeResult(false, result, errMsg).toJSONString();
 		}
 
-		// Declare properties variable
-		PropertiesImpl properties = new PropertiesImpl();
-
-		Document firstdoc = contentService.getDocument(repositoryId, objectIds.get(0));
-		String typeId = firstdoc.getObjectType();
-		TypeDefinition typeDef = typeManager.getTypeByQueryName(repositoryId, typeId);
-
 		CallContext callContext = (CallContext) httpRequest.getAttribute("CallContext");
 
-		for(int i = 0; i < propertyIds.size(); ++i){
-			String propertyName = propertyIds.get(i);
-			String propertyValue = propertyValues.get(i);
-			PropertyType propertyType = typeDef.getPropertyDefinitions().get(propertyName).getPropertyType();
-
-			if(propertyType.equals(PropertyType.STRING) || propertyType.equals(PropertyType.ID) ||propertyType.equals(PropertyType.URI) ||propertyType.equals(PropertyType.HTML)){
-				properties.addProperty(new PropertyStringImpl (propertyName,propertyValue));
-			}
-			else if(propertyType.equals(PropertyType.BOOLEAN)){
-				properties.addProperty(new PropertyBooleanImpl (propertyName,propertyValue.equals("true")));
-			}
-			else if(propertyType.equals(PropertyType.DECIMAL)){
-				properties.addProperty(new PropertyDecimalImpl (propertyName, new BigDecimal(propertyValue)));
-			}
-			else if(propertyType.equals(PropertyType.INTEGER)){
-				properties.addProperty(new PropertyIntegerImpl (propertyName, new BigInteger(propertyValue)));
-			}
-			else if(propertyType.equals(PropertyType.DATETIME)){
-				GregorianCalendar cal = new GregorianCalendar();
-				// Use thread-safe formatting through DateUtil
-				DateFormat df = new SimpleDateFormat("YYYY-MM-dd'T'hh:mm:ss.sssXXX");
-				ParsePosition pos = new ParsePosition(0);
-				Date dt = df.parse(propertyValue, pos);
-				if(pos.getErrorIndex() != -1){
-					//  parse error -> skip this value
-					continue;
-				}
-				cal.setTime(dt);
-				properties.addProperty(new PropertyDateTimeImpl (propertyName, cal));
-			}
-			else{
-				continue;
+		// Large selections run as a job; the client follows it by its ID
+		if (form.containsKey("async") && "true".equals(form.getFirst("async"))) {
+			Map<String, String> parameters = new HashMap<String, String>();
+			parameters.put(BulkCheckInJobHandler.PARAM_OBJECT_IDS, BulkCheckInJobHandler.toParameter(objectIds));
+			parameters.put(BulkCheckInJobHandler.PARAM_PROPERTY_IDS, BulkCheckInJobHandler.toParameter(propertyIds));
+			parameters.put(BulkCheckInJobHandler.PARAM_PROPERTY_VALUES, BulkCheckInJobHandler.toParameter(propertyValues));
+			parameters.put(BulkCheckInJobHandler.PARAM_COMMENT, comment);
+			parameters.put(BulkCheckInJobHandler.PARAM_FORCE, String.valueOf(force));
+			parameters.put(BulkCheckInJobHandler.PARAM_COPY_RELATIONS, String.valueOf(copyRelations));
+			try {
+				Job job = jobService.submit(repositoryId, BulkCheckInJobHandler.TYPE, callContext.getUsername(), parameters);
+				result.put("jobId", job.getId());
+				result.put("status", job.getStatus());
+				return makeResult(true, result, errMsg).toJSONString();
+			} catch (IllegalStateException e) {
+				errMsg.add(e.getMessage());
+				return makeResult(false, result, errMsg).toJSONString();
 			}
 		}
 
-		for(int i = 0; i < objectIds.size() ;++i){
-			String objectId = objectIds.get(i);
-			Document doc = contentService.getDocument(repositoryId, objectId);
-			VersionSeries vs = contentService.getVersionSeries(repositoryId, doc);
-			Holder<String> docIdHolder = new Holder<String>(objectId);
-			typeId = doc.getObjectType();
-			// TCK FIX: Null-safe version series checked out check
-			Boolean isCheckedOut = vs.isVersionSeriesCheckedOut();
-			if (force && (isCheckedOut == null || !isCheckedOut.booleanValue())){
-				versioningService.checkOut(callContext, repositoryId, docIdHolder , new Holder<Boolean>(true), null);
-			}
-			// Check in with the property set and comment
-			if (!doc.isPrivateWorkingCopy()){
-				String pwcId = vs.getVersionSeriesCheckedOutId();
-				docIdHolder = new Holder<String>(pwcId);
-			}
-			versioningService.checkIn(callContext, repositoryId, docIdHolder, true, properties, null, comment, null, null, null, null);
-			Document newDoc = contentService.getDocumentOfLatestVersion(repositoryId, doc.getVersionSeriesId());
-			// get relationships if exists
-			if (copyRelations){
-				List<Relationship> relList = contentService.getRelationsipsOfObject(repositoryId, objectId, RelationshipDirection.SOURCE);
-				// copy relationships
-				for(Relationship rel:relList){
-					PropertiesImpl newProps = new PropertiesImpl();
-					newProps.addProperty(new PropertyIdImpl(PropertyIds.OBJECT_TYPE_ID,rel.getObjectType()));
-					newProps.addProperty(new PropertyIdImpl(PropertyIds.TARGET_ID,rel.getTargetId()));
-					newProps.addProperty(new PropertyIdImpl(PropertyIds.SOURCE_ID,newDoc.getId()));
-					newProps.addProperty(new PropertyStringImpl(PropertyIds.NAME,rel.getName()));
-					Relationship newRel = contentService.createRelationship(callContext, repositoryId, newProps, null, null, null, null);
-					newRel.setModifier("bulkCheckInService");
-				}
-			}
+		Properties properties = bulkCheckInJobHandler.buildProperties(repositoryId, objectIds.get(0), propertyIds,
+				propertyValues);
+		for(String objectId : objectIds){
+			bulkCheckInJobHandler.checkIn(callContext, repositoryId, objectId, properties, comment, force, copyRelations);
 		}
 		// todo set return messages
 		return result.toJSONString();
@@ -9,13 +9,16 @@ import jp.aegif.nemaki.util.lock.ThreadLockService;
 import org.apache.commons.lang3.StringUtils;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
 import org.springframework.web.context.support.WebApplicationContextUtils;
 
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
@@ -51,34 +54,13 @@ public class CacheResource extends ResourceBase{
 		JSONObject result = new JSONObject();
 		JSONArray errMsg = new JSONArray();
 
-		Lock lock = threadLockService.getWriteLock(repositoryId, objectId);
 		try {
-			CacheService cache = nemakiCachePool.get(repositoryId);
-			lock.lock();
-			if (StringUtils.isNotEmpty(strBeforeDate)) {
-				GregorianCalendar beforeDate = DataUtil.convertToCalender(strBeforeDate);
-				Content c = cache.getContentCache().get(objectId);
-				if (c == null) {
-					logger.info("Target cache not found.");
-					result.put("deleted", false);
-				} else {
-					if (beforeDate.compareTo(c.getModified()) > 0) {
-						cache.removeCmisAndContentCache(objectId);
-						result.put("deleted", true);
-						logger.info("Remove cmis object and content cache because updated by other.");
-					}else{
-						result.put("deleted", false);
-					}
-				}
-			}else{
-				cache.removeCmisAndContentCache(objectId);
-				result.put("deleted", true);
-			}
+			GregorianCalendar beforeDate = StringUtils.isNotEmpty(strBeforeDate)
+					? DataUtil.convertToCalender(strBeforeDate) : null;
+			result.put("deleted", removeContentCache(repositoryId, objectId, beforeDate));
 		} catch (ParseException e) {
 			logger.error(e.getMessage());
 			addErrMsg(errMsg, ITEM_ERROR, ErrorCode.ERR_READ);
-		} finally {
-			lock.unlock();
 		}
 
 		result = makeResult(status, result, errMsg);
@@ -127,6 +109,123 @@ public class CacheResource extends ResourceBase{
 
 
 
+	/**
+	 * Invalidate the caches of many objects with one request, as the Solr
+	 * tracker does once per indexing batch. The body is
+	 * <pre>
+	 * {"objects": [{"id": "...", "date": "..."}, ...], "trees": ["parentId", ...]}
+	 * </pre>
+	 * where each object is removed only when its cache was modified before
+	 * "date" (if given), like {@code DELETE /{id}}, and each tree cache is
+	 * removed like {@code DELETE /tree/{id}}.
+	 *
+	 * @param repositoryId
+	 * @param requestBody
+	 * @param httpRequest
+	 * @return IDs whose content cache and tree cache were removed
+	 */
+	@POST
+	@Path("/invalidate")
+	@Produces(MediaType.APPLICATION_JSON)
+	@Consumes(MediaType.APPLICATION_JSON)
+	public String invalidate(@PathParam("repositoryId") String repositoryId, String requestBody,
+			@Context HttpServletRequest httpRequest) {
+		boolean status = true;
+		JSONObject result = new JSONObject();
+		JSONArray errMsg = new JSONArray();
+
+		JSONObject request;
+		try {
+			request = (JSONObject) new JSONParser().parse(requestBody);
+		} catch (Exception e) {
+			logger.error("Invalid cache invalidation request: {}", e.getMessage());
+			addErrMsg(errMsg, "requestBody", ErrorCode.ERR_READ);
+			return makeResult(false, result, errMsg).toJSONString();
+		}
+
+		JSONArray deleted = new JSONArray();
+		JSONArray objects = (JSONArray) request.get("objects");
+		if (objects != null) {
+			for (Object o : objects) {
+				JSONObject entry = (JSONObject) o;
+				String objectId = (String) entry.get("id");
+				if (StringUtils.isEmpty(objectId)) {
+					continue;
+				}
+				try {
+					String strBeforeDate = (String) entry.get("date");
+					GregorianCalendar beforeDate = StringUtils.isNotEmpty(strBeforeDate)
+							? DataUtil.convertToCalender(strBeforeDate) : null;
+					if (removeContentCache(repositoryId, objectId, beforeDate)) {
+						deleted.add(objectId);
+					}
+				} catch (ParseException e) {
+					logger.error("[objectId={}]{}", objectId, e.getMessage());
+					addErrMsg(errMsg, objectId, ErrorCode.ERR_READ);
+				}
+			}
+		}
+		result.put("deleted", deleted);
+
+		JSONArray treeDeleted = new JSONArray();
+		JSONArray trees = (JSONArray) request.get("trees");
+		if (trees != null && nemakiCachePool.get(repositoryId).getTreeCache().isCacheEnabled()) {
+			for (Object o : trees) {
+				String parentId = (String) o;
+				if (StringUtils.isEmpty(parentId)) {
+					continue;
+				}
+				Lock lock = threadLockService.getWriteLock(repositoryId, parentId);
+				lock.lock();
+				try {
+					nemakiCachePool.get(repositoryId).removeCmisAndTreeCache(parentId);
+					treeDeleted.add(parentId);
+				} catch (Exception e) {
+					logger.error("[objectId={}]{}", parentId, e.getMessage());
+					addErrMsg(errMsg, parentId, ErrorCode.ERR_READ);
+				} finally {
+					lock.unlock();
+				}
+			}
+		}
+		result.put("treeDeleted", treeDeleted);
+
+		result = makeResult(status, result, errMsg);
+		return result.toJSONString();
+	}
+
+	/**
+	 * Remove the content cache of an object if it was modified before the
+	 * date, or unconditionally when no date is given. The folder path index
+	 * entry of the object and those below it are removed in any case: the
+	 * index outlives the content cache, so its age cannot be told.
+	 */
+	private boolean removeContentCache(String repositoryId, String objectId, GregorianCalendar beforeDate) {
+		Lock lock = threadLockService.getWriteLock(repositoryId, objectId);
+		lock.lock();
+		try {
+			CacheService cache = nemakiCachePool.get(repositoryId);
+			cache.removeFolderPathCache(objectId);
+			if (beforeDate == null) {
+				cache.removeCmisAndContentCache(objectId);
+				return true;
+			}
+			Content c = cache.getContentCache().get(objectId);
+			if (c == null) {
+				logger.info("Target cache not found.");
+				return false;
+			}
+			if (beforeDate.compareTo(c.getModified()) > 0) {
+				cache.removeCmisAndContentCache(objectId);
+				logger.info("Remove cmis object and content cache because updated by other.");
+				return true;
+			}
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
 	public void setNemakiCachePool(NemakiCachePool nemakiCachePool) {
 		this.nemakiCachePool = nemakiCachePool;
 	}
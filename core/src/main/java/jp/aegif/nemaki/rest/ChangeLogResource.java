@@ -0,0 +1,203 @@
+package jp.aegif.nemaki.rest;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import jp.aegif.nemaki.businesslogic.ChangeLogMaintenanceService;
+import jp.aegif.nemaki.businesslogic.ChangeLogMaintenanceService.ChangeLogMetrics;
+import jp.aegif.nemaki.businesslogic.ChangeLogMaintenanceService.CompactionResult;
+import jp.aegif.nemaki.businesslogic.ContentService;
+import jp.aegif.nemaki.common.ErrorCode;
+import jp.aegif.nemaki.model.Change;
+import jp.aegif.nemaki.model.ChangeFeed;
+import jp.aegif.nemaki.util.spring.SpringContext;
+
+/**
+ * Change log feed for consumers that need to follow changes closely
+ * (index tracker, cache invalidation, webhooks).
+ *
+ * GET /rest/repo/{repositoryId}/changes?since=&limit=&timeout=
+ * returns the events after "since" and the token to continue from.
+ * With timeout (milliseconds) the request is held open until an event
+ * arrives, so a consumer calling it in a loop sees events within
+ * the round trip instead of on its next poll.
+ *
+ * GET /rest/repo/{repositoryId}/changes/metrics reports the size of the log
+ * and the progress of the last compaction,
+ * POST /rest/repo/{repositoryId}/changes/compact starts applying the retention
+ * policy in the background.
+ */
+@Path("/repo/{repositoryId}/changes")
+public class ChangeLogResource extends ResourceBase {
+
+	private static final Log log = LogFactory.getLog(ChangeLogResource.class);
+
+	static final int DEFAULT_LIMIT = 100;
+	// Must stay below the CouchDB client socket timeout
+	static final long MAX_TIMEOUT = 30000;
+
+	private ContentService contentService;
+	private ChangeLogMaintenanceService changeLogMaintenanceService;
+
+	public void setContentService(ContentService contentService) {
+		this.contentService = contentService;
+	}
+
+	public void setChangeLogMaintenanceService(ChangeLogMaintenanceService changeLogMaintenanceService) {
+		this.changeLogMaintenanceService = changeLogMaintenanceService;
+	}
+
+	private ContentService getContentService() {
+		if (contentService != null) {
+			return contentService;
+		}
+		// Jersey may create its own instances instead of using Spring beans
+		return SpringContext.getApplicationContext().getBean("ContentService", ContentService.class);
+	}
+
+	private ChangeLogMaintenanceService getChangeLogMaintenanceService() {
+		if (changeLogMaintenanceService != null) {
+			return changeLogMaintenanceService;
+		}
+		return SpringContext.getApplicationContext().getBean("ChangeLogMaintenanceService", ChangeLogMaintenanceService.class);
+	}
+
+	@SuppressWarnings("unchecked")
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	public String changes(@PathParam("repositoryId") String repositoryId,
+			@QueryParam("since") String since,
+			@QueryParam("limit") Integer limit,
+			@QueryParam("timeout") Long timeout,
+			@Context HttpServletRequest httpRequest) {
+		boolean status = true;
+		JSONObject result = new JSONObject();
+		JSONArray errMsg = new JSONArray();
+
+		if (!checkAdmin(errMsg, httpRequest)) {
+			return makeResult(false, result, errMsg).toJSONString();
+		}
+
+		int max = (limit == null || limit <= 0) ? DEFAULT_LIMIT : limit;
+		long wait = (timeout == null || timeout < 0) ? 0 : Math.min(timeout, MAX_TIMEOUT);
+
+		try {
+			ChangeFeed feed = getContentService().getChangeFeed(repositoryId, since, max, wait);
+			JSONArray list = new JSONArray();
+			for (Change change : feed.getChanges()) {
+				list.add(buildChangeJson(change));
+			}
+			result.put("changes", list);
+			result.put("latestChangeLogToken", feed.getLatestToken());
+			result.put("hasMoreItems", feed.isHasMoreItems());
+		} catch (IllegalArgumentException e) {
+			status = false;
+			addErrMsg(errMsg, "since", ErrorCode.ERR_PARSEURL);
+		} catch (Exception e) {
+			log.error("Failed to read change log of repository: " + repositoryId, e);
+			status = false;
+			addErrMsg(errMsg, ITEM_ERROR, ErrorCode.ERR_READ);
+		}
+
+		result = makeResult(status, result, errMsg);
+		return result.toJSONString();
+	}
+
+	@SuppressWarnings("unchecked")
+	@GET
+	@Path("/metrics")
+	@Produces(MediaType.APPLICATION_JSON)
+	public String metrics(@PathParam("repositoryId") String repositoryId,
+			@Context HttpServletRequest httpRequest) {
+		boolean status = true;
+		JSONObject result = new JSONObject();
+		JSONArray errMsg = new JSONArray();
+
+		if (!checkAdmin(errMsg, httpRequest)) {
+			return makeResult(false, result, errMsg).toJSONString();
+		}
+
+		try {
+			ChangeLogMetrics metrics = getChangeLogMaintenanceService().getMetrics(repositoryId);
+			result.put("eventCount", metrics.getEventCount());
+			result.put("viewQueryMillis", metrics.getViewQueryMillis());
+			if (metrics.getLastCompaction() != null) {
+				result.put("lastCompaction", buildCompactionJson(metrics.getLastCompaction()));
+			}
+		} catch (Exception e) {
+			log.error("Failed to read change log metrics of repository: " + repositoryId, e);
+			status = false;
+			addErrMsg(errMsg, ITEM_ERROR, ErrorCode.ERR_READ);
+		}
+
+		result = makeResult(status, result, errMsg);
+		return result.toJSONString();
+	}
+
+	@SuppressWarnings("unchecked")
+	@POST
+	@Path("/compact")
+	@Produces(MediaType.APPLICATION_JSON)
+	public String compact(@PathParam("repositoryId") String repositoryId,
+			@Context HttpServletRequest httpRequest) {
+		JSONObject result = new JSONObject();
+		JSONArray errMsg = new JSONArray();
+
+		if (!checkAdmin(errMsg, httpRequest)) {
+			return makeResult(false, result, errMsg).toJSONString();
+		}
+
+		CompactionResult compaction = getChangeLogMaintenanceService().startCompaction(repositoryId);
+		boolean status = compaction != null && !"error".equals(compaction.getStatus());
+		if (compaction != null) {
+			result.put("compaction", buildCompactionJson(compaction));
+		}
+		if (!status) {
+			addErrMsg(errMsg, ITEM_ERROR, ErrorCode.ERR_UPDATE);
+		}
+
+		result = makeResult(status, result, errMsg);
+		return result.toJSONString();
+	}
+
+	@SuppressWarnings("unchecked")
+	private JSONObject buildCompactionJson(CompactionResult compaction) {
+		JSONObject json = new JSONObject();
+		json.put("status", compaction.getStatus());
+		json.put("scanned", compaction.getScannedCount());
+		json.put("expired", compaction.getExpiredCount());
+		json.put("collapsed", compaction.getCollapsedCount());
+		json.put("trimmed", compaction.getTrimmedCount());
+		json.put("deleted", compaction.getDeletedCount());
+		json.put("startTime", compaction.getStartTime());
+		json.put("endTime", compaction.getEndTime());
+		json.put("errorMessage", compaction.getErrorMessage());
+		return json;
+	}
+
+	@SuppressWarnings("unchecked")
+	private JSONObject buildChangeJson(Change change) {
+		JSONObject json = new JSONObject();
+		json.put("id", change.getId());
+		json.put("objectId", change.getObjectId());
+		json.put("changeType", change.getChangeType() == null ? null : change.getChangeType().value());
+		json.put("time", change.getTime() == null ? null : change.getTime().getTimeInMillis());
+		json.put("name", change.getName());
+		json.put("baseType", change.getBaseType());
+		json.put("objectType", change.getObjectType());
+		json.put("parentId", change.getParentId());
+		return json;
+	}
+}
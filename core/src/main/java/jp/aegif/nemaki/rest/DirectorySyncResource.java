@@ -64,6 +64,7 @@ public class DirectorySyncResource extends ResourceBase {
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
     public String triggerSync(@PathParam("repositoryId") String repositoryId,
                               @QueryParam("dryRun") Boolean dryRun,
+                              @QueryParam("full") Boolean full,
                               @Context HttpServletRequest httpRequest) {
         
         boolean status = true;
@@ -78,9 +79,10 @@ public class DirectorySyncResource extends ResourceBase {
 
         try {
             boolean isDryRun = dryRun != null && dryRun;
-            log.info("Directory sync triggered for repository: " + repositoryId + " (dryRun=" + isDryRun + ")");
+            boolean isFull = full != null && full;
+            log.info("Directory sync triggered for repository: " + repositoryId + " (dryRun=" + isDryRun + ", full=" + isFull + ")");
             
-            DirectorySyncResult syncResult = getDirectorySyncService().syncGroups(repositoryId, isDryRun);
+            DirectorySyncResult syncResult = getDirectorySyncService().syncGroups(repositoryId, isDryRun, isFull);
             result.put("syncResult", convertSyncResultToJson(syncResult));
             
         } catch (Exception e) {
@@ -239,6 +241,7 @@ public class DirectorySyncResource extends ResourceBase {
         json.put("repositoryId", syncResult.getRepositoryId());
         json.put("status", syncResult.getStatus() != null ? syncResult.getStatus().name() : null);
         json.put("dryRun", syncResult.isDryRun());
+        json.put("mode", syncResult.getMode() != null ? syncResult.getMode().name() : null);
         json.put("startTime", syncResult.getStartTime() != null ? syncResult.getStartTime().getTimeInMillis() : null);
         json.put("endTime", syncResult.getEndTime() != null ? syncResult.getEndTime().getTimeInMillis() : null);
         json.put("groupsCreated", syncResult.getGroupsCreated());
@@ -310,6 +310,38 @@ public class SolrResource extends ResourceBase {
 		return "0".equals(status.getTextContent());
 	}
 
+	@POST
+	@Path("/reindex/bluegreen")
+	@Produces(MediaType.APPLICATION_JSON)
+	@SuppressWarnings("unchecked")
+	public String reindexBlueGreen(@PathParam("repositoryId") String repositoryId,
+			@Context HttpServletRequest request) {
+		boolean status = true;
+		JSONObject result = new JSONObject();
+		JSONArray errMsg = new JSONArray();
+
+		if (!checkAdmin(errMsg, request)) {
+			return makeResult(status, result, errMsg).toString();
+		}
+
+		SolrIndexMaintenanceService service = getMaintenanceService();
+		if (service == null) {
+			errMsg.add("Solr index maintenance service is not available");
+			return makeResult(false, result, errMsg).toString();
+		}
+
+		// The index is shared, so this rebuilds all repositories
+		boolean started = service.startBlueGreenReindex(repositoryId);
+		if (!started) {
+			errMsg.add("Reindex already in progress");
+			return makeResult(false, result, errMsg).toString();
+		}
+
+		result.put("message", "Blue/green reindex started");
+		result.put("repositoryId", repositoryId);
+		return makeResult(status, result, errMsg).toString();
+	}
+
 	@POST
 	@Path("/reindex/folder/{folderId}")
 	@Produces(MediaType.APPLICATION_JSON)
@@ -376,6 +408,14 @@ public class SolrResource extends ResourceBase {
 		result.put("endTime", reindexStatus.getEndTime());
 		result.put("currentFolder", reindexStatus.getCurrentFolder());
 		result.put("errorMessage", reindexStatus.getErrorMessage());
+		result.put("mode", reindexStatus.getMode());
+		if ("bluegreen".equals(reindexStatus.getMode())) {
+			result.put("phase", reindexStatus.getPhase());
+			result.put("totalPartitions", reindexStatus.getTotalPartitions());
+			result.put("completedPartitions", reindexStatus.getCompletedPartitions());
+			result.put("replayedCount", reindexStatus.getReplayedCount());
+			result.put("resumed", reindexStatus.isResumed());
+		}
 
 		// Always include errors array for consistent API response
 		// This ensures UI doesn't need to handle undefined errors field
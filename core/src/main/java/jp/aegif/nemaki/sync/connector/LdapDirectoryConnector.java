@@ -22,6 +22,7 @@
 package jp.aegif.nemaki.sync.connector;
 
 import java.io.IOException;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
@@ -271,14 +272,25 @@ public class LdapDirectoryConnector {
     }
 
     public List<LdapGroup> searchGroups() throws NamingException {
-        return searchGroupsWithRetry(maxRetries);
+        return searchGroups(null);
     }
 
-    private List<LdapGroup> searchGroupsWithRetry(int maxRetryAttempts) throws NamingException {
+    /**
+     * Search groups whose change marker attribute is at or after the given value.
+     * The boundary is inclusive, so entries changed at the marker itself are
+     * returned again on the next run; callers skip them when nothing changed.
+     *
+     * @param changedSince null for all groups
+     */
+    public List<LdapGroup> searchGroups(String changedSince) throws NamingException {
+        return searchGroupsWithRetry(maxRetries, changedSince);
+    }
+
+    private List<LdapGroup> searchGroupsWithRetry(int maxRetryAttempts, String changedSince) throws NamingException {
         NamingException lastException = null;
         for (int attempt = 0; attempt <= maxRetryAttempts; attempt++) {
             try {
-                return doSearchGroups();
+                return doSearchGroups(changedSince);
             } catch (NamingException e) {
                 lastException = e;
                 int retriesLeft = maxRetryAttempts - attempt;
@@ -299,7 +311,7 @@ public class LdapDirectoryConnector {
         throw lastException != null ? lastException : new NamingException("Search failed after all retries");
     }
 
-    private List<LdapGroup> doSearchGroups() throws NamingException {
+    private List<LdapGroup> doSearchGroups(String changedSince) throws NamingException {
         List<LdapGroup> groups = new ArrayList<>();
 
         String searchBase = config.getGroupSearchBase();
@@ -317,6 +329,7 @@ public class LdapDirectoryConnector {
         if (!isValidLdapFilter(filter)) {
             throw new NamingException("Invalid LDAP filter: " + filter);
         }
+        filter = withChangedSince(filter, changedSince);
 
         log.info("Searching groups in: " + searchBase + " with filter: " + filter);
 
@@ -325,7 +338,8 @@ public class LdapDirectoryConnector {
         controls.setReturningAttributes(new String[]{
             config.getGroupIdAttribute(),
             config.getGroupNameAttribute(),
-            config.getGroupMemberAttribute()
+            config.getGroupMemberAttribute(),
+            getChangeMarkerAttribute()
         });
 
         byte[] cookie = null;
@@ -382,6 +396,7 @@ public class LdapDirectoryConnector {
         }
 
         LdapGroup group = new LdapGroup(result.getNameInNamespace(), groupId, groupName);
+        group.setChangeMarker(getAttributeValue(attrs, getChangeMarkerAttribute()));
 
         Attribute memberAttr = attrs.get(config.getGroupMemberAttribute());
         if (memberAttr != null) {
@@ -551,14 +566,24 @@ public class LdapDirectoryConnector {
     }
 
     public List<LdapUser> searchUsers() throws NamingException {
-        return searchUsersWithRetry(maxRetries);
+        return searchUsers(null);
     }
 
-    private List<LdapUser> searchUsersWithRetry(int maxRetryAttempts) throws NamingException {
+    /**
+     * Search users whose change marker attribute is at or after the given value.
+     *
+     * @param changedSince null for all users
+     * @see #searchGroups(String)
+     */
+    public List<LdapUser> searchUsers(String changedSince) throws NamingException {
+        return searchUsersWithRetry(maxRetries, changedSince);
+    }
+
+    private List<LdapUser> searchUsersWithRetry(int maxRetryAttempts, String changedSince) throws NamingException {
         NamingException lastException = null;
         for (int attempt = 0; attempt <= maxRetryAttempts; attempt++) {
             try {
-                return doSearchUsers();
+                return doSearchUsers(changedSince);
             } catch (NamingException e) {
                 lastException = e;
                 int retriesLeft = maxRetryAttempts - attempt;
@@ -579,7 +604,7 @@ public class LdapDirectoryConnector {
         throw lastException != null ? lastException : new NamingException("Search failed after all retries");
     }
 
-    private List<LdapUser> doSearchUsers() throws NamingException {
+    private List<LdapUser> doSearchUsers(String changedSince) throws NamingException {
         List<LdapUser> users = new ArrayList<>();
 
         String searchBase = config.getUserSearchBase();
@@ -597,6 +622,7 @@ public class LdapDirectoryConnector {
         if (!isValidLdapFilter(filter)) {
             throw new NamingException("Invalid LDAP filter: " + filter);
         }
+        filter = withChangedSince(filter, changedSince);
 
         log.info("Searching users in: " + searchBase + " with filter: " + filter);
 
@@ -608,7 +634,8 @@ public class LdapDirectoryConnector {
             "sn",
             "givenName",
             "mail",
-            "displayName"
+            "displayName",
+            getChangeMarkerAttribute()
         });
 
         byte[] cookie = null;
@@ -650,6 +677,46 @@ public class LdapDirectoryConnector {
         return users;
     }
 
+    private String getChangeMarkerAttribute() {
+        String attribute = config.getChangeMarkerAttribute();
+        return attribute == null || attribute.isEmpty() ? DirectorySyncConfig.DEFAULT_CHANGE_MARKER_ATTRIBUTE : attribute;
+    }
+
+    private String withChangedSince(String filter, String changedSince) {
+        if (changedSince == null || changedSince.isEmpty()) {
+            return filter;
+        }
+        return "(&" + filter + "(" + getChangeMarkerAttribute() + ">=" + sanitizeLdapFilter(changedSince) + "))";
+    }
+
+    /**
+     * The later of two change markers. Counters such as uSNChanged are compared
+     * numerically, generalized time values (modifyTimestamp) as strings.
+     *
+     * @return the other marker if one is null
+     */
+    public static String laterMarker(String a, String b) {
+        if (a == null || a.isEmpty()) {
+            return b;
+        }
+        if (b == null || b.isEmpty()) {
+            return a;
+        }
+        if (isDigits(a) && isDigits(b)) {
+            return new BigInteger(a).compareTo(new BigInteger(b)) >= 0 ? a : b;
+        }
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    private static boolean isDigits(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void closeQuietly(NamingEnumeration<?> enumeration) {
         if (enumeration != null) {
             try {
@@ -670,6 +737,7 @@ public class LdapDirectoryConnector {
         }
 
         LdapUser user = new LdapUser(result.getNameInNamespace(), userId, userId);
+        user.setChangeMarker(getAttributeValue(attrs, getChangeMarkerAttribute()));
 
         String cn = getAttributeValue(attrs, "cn");
         if (cn != null) {
@@ -65,6 +65,9 @@ public class DirectorySyncConfig {
     public static final String DEFAULT_GROUP_NAME_ATTRIBUTE = "cn";
     public static final String DEFAULT_GROUP_MEMBER_ATTRIBUTE = "member";
     public static final String DEFAULT_USER_ID_ATTRIBUTE = "uid";
+    public static final String DEFAULT_CHANGE_MARKER_ATTRIBUTE = "modifyTimestamp";
+    public static final int DEFAULT_FULL_RECONCILE_INTERVAL_HOURS = 24;
+    public static final int DEFAULT_RECONCILE_THREADS = 4;
 
     private String repositoryId;
     private boolean enabled;
@@ -110,6 +113,16 @@ public class DirectorySyncConfig {
      */
     private String initialPassword;
 
+    /**
+     * Read only entries changed since the previous run, by the change marker
+     * attribute. Deletions in the directory are picked up by the periodic
+     * full reconcile.
+     */
+    private boolean incrementalSync;
+    private String changeMarkerAttribute = DEFAULT_CHANGE_MARKER_ATTRIBUTE;
+    private int fullReconcileIntervalHours = DEFAULT_FULL_RECONCILE_INTERVAL_HOURS;
+    private int reconcileThreads = DEFAULT_RECONCILE_THREADS;
+
     private String cronExpression;
     private boolean scheduleEnabled;
 
@@ -327,6 +340,38 @@ public class DirectorySyncConfig {
         this.initialPassword = initialPassword;
     }
 
+    public boolean isIncrementalSync() {
+        return incrementalSync;
+    }
+
+    public void setIncrementalSync(boolean incrementalSync) {
+        this.incrementalSync = incrementalSync;
+    }
+
+    public String getChangeMarkerAttribute() {
+        return changeMarkerAttribute;
+    }
+
+    public void setChangeMarkerAttribute(String changeMarkerAttribute) {
+        this.changeMarkerAttribute = changeMarkerAttribute;
+    }
+
+    public int getFullReconcileIntervalHours() {
+        return fullReconcileIntervalHours;
+    }
+
+    public void setFullReconcileIntervalHours(int fullReconcileIntervalHours) {
+        this.fullReconcileIntervalHours = fullReconcileIntervalHours;
+    }
+
+    public int getReconcileThreads() {
+        return reconcileThreads;
+    }
+
+    public void setReconcileThreads(int reconcileThreads) {
+        this.reconcileThreads = reconcileThreads;
+    }
+
     public String getCronExpression() {
         return cronExpression;
     }
@@ -35,12 +35,17 @@ public class DirectorySyncResult {
         SUCCESS, PARTIAL, FAILED, IN_PROGRESS
     }
 
+    public enum SyncMode {
+        FULL, INCREMENTAL
+    }
+
     private String syncId;
     private String repositoryId;
     private GregorianCalendar startTime;
     private GregorianCalendar endTime;
     private SyncStatus status;
     private boolean dryRun;
+    private SyncMode mode;
 
     private int groupsCreated;
     private int groupsUpdated;
@@ -159,6 +164,14 @@ public class DirectorySyncResult {
         this.dryRun = dryRun;
     }
 
+    public SyncMode getMode() {
+        return mode;
+    }
+
+    public void setMode(SyncMode mode) {
+        this.mode = mode;
+    }
+
     public int getGroupsCreated() {
         return groupsCreated;
     }
@@ -35,6 +35,7 @@ public class LdapGroup {
     private List<String> memberUserIds = new ArrayList<>();
     private List<String> memberGroupIds = new ArrayList<>();
     private Map<String, Object> attributes = new HashMap<>();
+    private String changeMarker;
 
     public LdapGroup() {}
 
@@ -92,6 +93,17 @@ public class LdapGroup {
         this.memberGroupIds = memberGroupIds;
     }
 
+    /**
+     * Value of the change marker attribute (modifyTimestamp, uSNChanged, ...)
+     */
+    public String getChangeMarker() {
+        return changeMarker;
+    }
+
+    public void setChangeMarker(String changeMarker) {
+        this.changeMarker = changeMarker;
+    }
+
     public Map<String, Object> getAttributes() {
         return attributes;
     }
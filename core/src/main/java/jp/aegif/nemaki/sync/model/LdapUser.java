@@ -33,6 +33,7 @@ public class LdapUser {
     private String firstName;
     private String lastName;
     private Map<String, Object> attributes;
+    private String changeMarker;
 
     public LdapUser() {
         this.attributes = new HashMap<>();
@@ -93,6 +94,17 @@ public class LdapUser {
         this.lastName = lastName;
     }
 
+    /**
+     * Value of the change marker attribute (modifyTimestamp, uSNChanged, ...)
+     */
+    public String getChangeMarker() {
+        return changeMarker;
+    }
+
+    public void setChangeMarker(String changeMarker) {
+        this.changeMarker = changeMarker;
+    }
+
     public Map<String, Object> getAttributes() {
         return attributes;
     }
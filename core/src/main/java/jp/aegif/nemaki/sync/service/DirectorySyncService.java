@@ -28,6 +28,12 @@ public interface DirectorySyncService {
 
     DirectorySyncResult syncGroups(String repositoryId, boolean dryRun);
 
+    /**
+     * @param fullReconcile compare every directory entry with the repository even when
+     *        incremental sync is enabled, which also removes entries deleted in the directory
+     */
+    DirectorySyncResult syncGroups(String repositoryId, boolean dryRun, boolean fullReconcile);
+
     DirectorySyncResult previewSync(String repositoryId);
 
     DirectorySyncConfig getConfig(String repositoryId);
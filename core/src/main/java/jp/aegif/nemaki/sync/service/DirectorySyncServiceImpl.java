@@ -21,8 +21,13 @@
  ******************************************************************************/
 package jp.aegif.nemaki.sync.service;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -30,12 +35,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import javax.naming.NamingException;
 
+import org.apache.chemistry.opencmis.commons.enums.ChangeType;
 import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertiesImpl;
 import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyIdImpl;
 import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyStringImpl;
@@ -46,13 +58,17 @@ import org.mindrot.jbcrypt.BCrypt;
 import jp.aegif.nemaki.businesslogic.ContentService;
 import jp.aegif.nemaki.cmis.factory.SystemCallContext;
 import jp.aegif.nemaki.common.NemakiObjectType;
+import jp.aegif.nemaki.dao.ContentDaoService;
+import jp.aegif.nemaki.model.BulkWriteResult;
 import jp.aegif.nemaki.model.Content;
+import jp.aegif.nemaki.model.DirectorySyncState;
 import jp.aegif.nemaki.model.Folder;
 import jp.aegif.nemaki.model.GroupItem;
 import jp.aegif.nemaki.model.UserItem;
 import jp.aegif.nemaki.sync.connector.LdapDirectoryConnector;
 import jp.aegif.nemaki.sync.model.DirectorySyncConfig;
 import jp.aegif.nemaki.sync.model.DirectorySyncResult;
+import jp.aegif.nemaki.sync.model.DirectorySyncResult.SyncMode;
 import jp.aegif.nemaki.sync.model.DirectorySyncResult.SyncStatus;
 import jp.aegif.nemaki.sync.model.LdapGroup;
 import jp.aegif.nemaki.sync.model.LdapUser;
@@ -65,6 +81,7 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
     private static final Log log = LogFactory.getLog(DirectorySyncServiceImpl.class);
 
     private ContentService contentService;
+    private ContentDaoService contentDaoService;
     private PropertyManager propertyManager;
     
     private final Map<String, DirectorySyncResult> lastSyncResults = new ConcurrentHashMap<>();
@@ -74,6 +91,7 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
     private static final long SYNC_LOCK_TIMEOUT_SECONDS = 300; // 5 minutes
     private static final String PASSWORD_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789!@#$%^&*";
     private static final int GENERATED_PASSWORD_LENGTH = 32;
+    private static final int BULK_WRITE_BATCH_SIZE = 500;
 
     private ReentrantLock getRepositoryLock(String repositoryId) {
         return repositoryLocks.computeIfAbsent(repositoryId, k -> new ReentrantLock());
@@ -81,6 +99,11 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
 
     @Override
     public DirectorySyncResult syncGroups(String repositoryId, boolean dryRun) {
+        return syncGroups(repositoryId, dryRun, false);
+    }
+
+    @Override
+    public DirectorySyncResult syncGroups(String repositoryId, boolean dryRun, boolean fullReconcile) {
         ReentrantLock lock = getRepositoryLock(repositoryId);
         boolean lockAcquired = false;
         try {
@@ -113,19 +136,56 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
                     return result;
                 }
 
-                log.info("AUDIT: Starting directory sync for repository: " + repositoryId + " (dryRun=" + dryRun + ")");
+                long startTime = System.currentTimeMillis();
+                String fingerprint = getConfigFingerprint(config);
+                DirectorySyncState state = config.isIncrementalSync() ? contentDaoService.getDirectorySyncState(repositoryId) : null;
+                boolean full = fullReconcile || isFullReconcileDue(config, state, fingerprint, startTime);
+                result.setMode(full ? SyncMode.FULL : SyncMode.INCREMENTAL);
+
+                log.info("AUDIT: Starting directory sync for repository: " + repositoryId + " (dryRun=" + dryRun +
+                        ", mode=" + result.getMode() + ")");
+
+                // Hashes of the entries as they were last synced; a full reconcile rebuilds them
+                Map<String, String> userHashes = new HashMap<>();
+                Map<String, String> groupHashes = new HashMap<>();
+                if (!full) {
+                    userHashes.putAll(state.getUserHashes());
+                    groupHashes.putAll(state.getGroupHashes());
+                }
 
                 LdapDirectoryConnector connector = new LdapDirectoryConnector(config);
                 
                 try {
                     connector.connect();
                     
-                    List<LdapUser> ldapUsers = connector.searchUsers();
-                    performUserSync(repositoryId, ldapUsers, config, result, dryRun);
+                    List<LdapUser> ldapUsers = connector.searchUsers(full ? null : state.getUserMarker());
+                    boolean usersSynced = performUserSync(repositoryId, ldapUsers, config, result, dryRun, full, userHashes);
                     
-                    List<LdapGroup> ldapGroups = connector.searchGroups();
-                    performGroupSync(repositoryId, ldapGroups, config, result, dryRun);
+                    List<LdapGroup> ldapGroups = connector.searchGroups(full ? null : state.getGroupMarker());
+                    boolean groupsSynced = performGroupSync(repositoryId, ldapGroups, config, result, dryRun, full, groupHashes);
                     
+                    if (!dryRun && config.isIncrementalSync()) {
+                        DirectorySyncState nextState = state != null ? state : new DirectorySyncState();
+                        // A failed write keeps the marker, so the entry is read again next time
+                        if (usersSynced) {
+                            nextState.setUserMarker(getLatestMarker(full ? null : nextState.getUserMarker(),
+                                    ldapUsers.stream().map(LdapUser::getChangeMarker).collect(Collectors.toList())));
+                        }
+                        if (groupsSynced) {
+                            nextState.setGroupMarker(getLatestMarker(full ? null : nextState.getGroupMarker(),
+                                    ldapGroups.stream().map(LdapGroup::getChangeMarker).collect(Collectors.toList())));
+                        }
+                        if (full) {
+                            nextState.setLastFullReconcile(startTime);
+                        }
+                        nextState.setConfigFingerprint(fingerprint);
+                        nextState.setUserHashes(userHashes);
+                        nextState.setGroupHashes(groupHashes);
+                        if (!contentDaoService.saveDirectorySyncState(repositoryId, nextState)) {
+                            result.addWarning(null, "Failed to save the directory sync state; the next run reads all entries again");
+                        }
+                    }
+
                     if (result.getErrors().isEmpty()) {
                         result.complete(SyncStatus.SUCCESS);
                     } else {
@@ -136,14 +196,16 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
                     connector.disconnect();
                 }
 
-                log.info("Directory sync completed:" +
+                log.info("Directory sync completed (" + result.getMode() + "):" +
                         "users added=" + result.getUsersAdded() + 
                         ", users updated=" + result.getUsersUpdated() +
                         ", users removed=" + result.getUsersRemoved() +
+                        ", users skipped=" + result.getUsersSkipped() +
                         ", groups created=" + result.getGroupsCreated() + 
                         ", groups updated=" + result.getGroupsUpdated() + 
                         ", groups deleted=" + result.getGroupsDeleted() +
-                        ", groups skipped=" + result.getGroupsSkipped());
+                        ", groups skipped=" + result.getGroupsSkipped() +
+                        " in " + (System.currentTimeMillis() - startTime) + "ms");
 
             } catch (NamingException e) {
                 log.error("LDAP error during sync: " + e.getMessage(), e);
@@ -170,6 +232,73 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
         }
     }
 
+    private boolean isFullReconcileDue(DirectorySyncConfig config, DirectorySyncState state, String fingerprint, long now) {
+        if (!config.isIncrementalSync() || state == null) {
+            return true;
+        }
+        if (!fingerprint.equals(state.getConfigFingerprint())) {
+            log.info("Directory sync settings changed since the last run, running a full reconcile");
+            return true;
+        }
+        int interval = config.getFullReconcileIntervalHours();
+        return interval > 0 && now - state.getLastFullReconcile() >= TimeUnit.HOURS.toMillis(interval);
+    }
+
+    private String getLatestMarker(String marker, List<String> changeMarkers) {
+        for (String changeMarker : changeMarkers) {
+            marker = LdapDirectoryConnector.laterMarker(marker, changeMarker);
+        }
+        return marker;
+    }
+
+    /**
+     * Settings that decide which entries are read and how they are mapped.
+     * Markers and hashes taken with other settings cannot be reused.
+     */
+    private String getConfigFingerprint(DirectorySyncConfig config) {
+        return hash(config.getLdapUrl(), config.getLdapBaseDn(),
+                config.getUserSearchBase(), config.getUserSearchFilter(), config.getUserIdAttribute(),
+                config.getGroupSearchBase(), config.getGroupSearchFilter(), config.getGroupIdAttribute(),
+                config.getGroupNameAttribute(), config.getGroupMemberAttribute(), config.getChangeMarkerAttribute(),
+                config.getUserPrefix(), config.getGroupPrefix(), String.valueOf(config.isSyncNestedGroups()),
+                String.valueOf(config.isCreateMissingUsers()), String.valueOf(config.isUpdateExistingUsers()));
+    }
+
+    private String hashUser(LdapUser user) {
+        return hash(user.getDn(), user.getUserId(), user.getDisplayName(), user.getEmail());
+    }
+
+    private String hashGroup(LdapGroup group) {
+        List<String> values = new ArrayList<>();
+        values.add(group.getDn());
+        values.add(group.getGroupId());
+        values.add(group.getGroupName());
+        values.add("users");
+        values.addAll(sorted(group.getMemberUserIds()));
+        values.add("groups");
+        values.addAll(sorted(group.getMemberGroupIds()));
+        return hash(values.toArray(new String[0]));
+    }
+
+    private List<String> sorted(List<String> values) {
+        List<String> result = values != null ? new ArrayList<>(values) : new ArrayList<>();
+        Collections.sort(result);
+        return result;
+    }
+
+    private String hash(String... values) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String value : values) {
+                digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
     private List<String> validateConfig(DirectorySyncConfig config) {
         List<String> errors = new ArrayList<>();
         
@@ -189,8 +318,15 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
         return errors;
     }
 
-    private void performUserSync(String repositoryId, List<LdapUser> ldapUsers,
-            DirectorySyncConfig config, DirectorySyncResult result, boolean dryRun) {
+    /**
+     * @param full compare every entry with the repository and delete orphans;
+     *        otherwise only entries whose hash differs from the last sync are looked at
+     * @param hashes hashes of the synced entries, updated for what was written
+     * @return false if any user failed to be written
+     */
+    private boolean performUserSync(String repositoryId, List<LdapUser> ldapUsers,
+            DirectorySyncConfig config, DirectorySyncResult result, boolean dryRun,
+            boolean full, Map<String, String> hashes) {
         
         log.info("Syncing " + ldapUsers.size() + " users from LDAP");
 
@@ -201,37 +337,71 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
                 .map(u -> userPrefix + u.getUserId())
                 .collect(Collectors.toSet());
 
-        Map<String, LdapUser> ldapUserMap = new HashMap<>();
-        for (LdapUser user : ldapUsers) {
-            ldapUserMap.put(userPrefix + user.getUserId(), user);
+        // A full reconcile reads all users at once instead of one by one
+        Map<String, UserItem> existingUserMap = new HashMap<>();
+        List<UserItem> existingUsers = null;
+        if (full) {
+            existingUsers = contentService.getUserItems(repositoryId);
+            if (existingUsers == null) {
+                existingUsers = new ArrayList<>();
+            }
+            for (UserItem existingUser : existingUsers) {
+                if (existingUser.getUserId() != null) {
+                    existingUserMap.put(existingUser.getUserId(), existingUser);
+                }
+            }
         }
 
+        List<UserItem> creates = new ArrayList<>();
+        List<UserItem> updates = new ArrayList<>();
+        Map<String, String> pendingHashes = new HashMap<>();
+        String usersFolderId = null;
+        boolean synced = true;
+
         for (LdapUser ldapUser : ldapUsers) {
             String nemakiUserId = userPrefix + ldapUser.getUserId();
+            String hash = hashUser(ldapUser);
             
+            if (!full && hash.equals(hashes.get(nemakiUserId))) {
+                result.incrementUsersSkipped();
+                log.debug("User unchanged since the last sync: " + nemakiUserId);
+                continue;
+            }
+
             try {
-                UserItem existingUser = contentService.getUserItemById(repositoryId, nemakiUserId);
+                UserItem existingUser = full ? existingUserMap.get(nemakiUserId)
+                        : contentService.getUserItemById(repositoryId, nemakiUserId);
                 
                 if (existingUser == null) {
                     if (config.isCreateMissingUsers()) {
-                        if (!dryRun) {
-                            createUser(repositoryId, ldapUser, userPrefix, config);
-                            log.info("AUDIT: User created via directory sync: " + nemakiUserId);
+                        if (dryRun) {
+                            result.incrementUsersAdded();
+                        } else {
+                            if (usersFolderId == null) {
+                                Folder usersFolder = getOrCreateUsersFolder(repositoryId);
+                                if (usersFolder == null) {
+                                    throw new RuntimeException("Failed to get or create users folder");
+                                }
+                                usersFolderId = usersFolder.getId();
+                            }
+                            creates.add(createUser(ldapUser, userPrefix, usersFolderId));
+                            pendingHashes.put(nemakiUserId, hash);
                         }
-                        result.incrementUsersAdded();
-                        log.debug("User created: " + nemakiUserId);
                     } else {
+                        hashes.put(nemakiUserId, hash);
                         result.incrementUsersSkipped();
                         log.debug("User skipped (createMissingUsers=false): " + nemakiUserId);
                     }
                 } else {
                     if (config.isUpdateExistingUsers() && hasUserChanges(existingUser, ldapUser)) {
-                        if (!dryRun) {
-                            updateUser(repositoryId, existingUser, ldapUser);
+                        if (dryRun) {
+                            result.incrementUsersUpdated();
+                        } else {
+                            updates.add(updateUser(existingUser, ldapUser));
+                            pendingHashes.put(nemakiUserId, hash);
                         }
-                        result.incrementUsersUpdated();
-                        log.debug("User updated: " + nemakiUserId);
                     } else {
+                        hashes.put(nemakiUserId, hash);
                         result.incrementUsersSkipped();
                         log.debug("User unchanged or update disabled: " + nemakiUserId);
                     }
@@ -239,14 +409,36 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
             } catch (Exception e) {
                 log.error("Error syncing user " + nemakiUserId + ": " + e.getMessage());
                 result.addWarning(nemakiUserId, "User sync failed: " + e.getMessage());
+                synced = false;
             }
         }
 
-        if (config.isDeleteOrphanUsers() && !userPrefix.isEmpty()) {
-            List<UserItem> existingUsers = contentService.getUserItems(repositoryId);
-            if (existingUsers == null) {
-                existingUsers = new ArrayList<>();
+        final String initialPassword = config.getInitialPassword();
+        Map<String, String> failures = new HashMap<>();
+        failures.putAll(write(repositoryId, creates, ChangeType.CREATED, UserItem::getUserId,
+                u -> u.setPassowrd(hashInitialPassword(u.getUserId(), initialPassword)), config, full));
+        failures.putAll(write(repositoryId, updates, ChangeType.UPDATED, UserItem::getUserId, null, config, full));
+        for (UserItem created : creates) {
+            if (!failures.containsKey(created.getUserId())) {
+                result.incrementUsersAdded();
+                log.info("AUDIT: User created via directory sync: " + created.getUserId());
+            }
+        }
+        for (UserItem updated : updates) {
+            if (!failures.containsKey(updated.getUserId())) {
+                result.incrementUsersUpdated();
+                log.debug("User updated: " + updated.getUserId());
             }
+        }
+        for (Map.Entry<String, String> failure : failures.entrySet()) {
+            log.error("Error syncing user " + failure.getKey() + ": " + failure.getValue());
+            result.addWarning(failure.getKey(), "User sync failed: " + failure.getValue());
+            pendingHashes.remove(failure.getKey());
+        }
+        hashes.putAll(pendingHashes);
+        synced = synced && failures.isEmpty();
+
+        if (full && config.isDeleteOrphanUsers() && !userPrefix.isEmpty()) {
             for (UserItem existingUser : existingUsers) {
                 String userId = existingUser.getUserId();
                 if (userId != null && userId.startsWith(userPrefix) && !ldapUserIds.contains(userId)) {
@@ -256,6 +448,7 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
                             contentService.delete(new SystemCallContext(repositoryId), repositoryId, existingUser.getId(), false);
                             log.info("AUDIT: User deleted via directory sync (orphan): " + userId);
                         }
+                        hashes.remove(userId);
                         result.incrementUsersRemoved();
                         log.debug("User deleted (orphan): " + userId);
                     } catch (Exception e) {
@@ -265,6 +458,72 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
                 }
             }
         }
+        return synced;
+    }
+
+    /**
+     * Write items in batches with bulk writes. During a full reconcile the
+     * batches, including their preparation, run on several threads.
+     *
+     * @param prepare applied to each item right before it is written, on the writing thread
+     * @return failure reason by principal ID
+     */
+    private <T extends Content> Map<String, String> write(String repositoryId, List<T> items, ChangeType changeType,
+            Function<T, String> idOf, Consumer<T> prepare, DirectorySyncConfig config, boolean full) {
+        Map<String, String> failures = new ConcurrentHashMap<>();
+        if (items.isEmpty()) {
+            return failures;
+        }
+
+        List<Runnable> batches = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += BULK_WRITE_BATCH_SIZE) {
+            final List<T> batch = items.subList(from, Math.min(from + BULK_WRITE_BATCH_SIZE, items.size()));
+            batches.add(() -> {
+                try {
+                    if (prepare != null) {
+                        batch.forEach(prepare);
+                    }
+                    List<BulkWriteResult> results = contentService.bulkWrite(
+                            new SystemCallContext(repositoryId), repositoryId, batch, changeType);
+                    for (int i = 0; i < batch.size(); i++) {
+                        BulkWriteResult written = results.get(i);
+                        if (!written.isOk()) {
+                            failures.put(idOf.apply(batch.get(i)),
+                                    written.getReason() != null ? written.getReason() : String.valueOf(written.getError()));
+                        }
+                    }
+                } catch (Exception e) {
+                    for (T item : batch) {
+                        failures.put(idOf.apply(item), String.valueOf(e.getMessage()));
+                    }
+                }
+            });
+        }
+
+        int threads = full ? Math.min(Math.max(1, config.getReconcileThreads()), batches.size()) : 1;
+        if (threads == 1) {
+            batches.forEach(Runnable::run);
+            return failures;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Runnable batch : batches) {
+                futures.add(executor.submit(batch));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while writing directory entries", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return failures;
     }
 
     private void removeUserFromAllGroups(String repositoryId, String userId) {
@@ -304,7 +563,7 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
         return false;
     }
 
-    private void updateUser(String repositoryId, UserItem existingUser, LdapUser ldapUser) {
+    private UserItem updateUser(UserItem existingUser, LdapUser ldapUser) {
         String displayName = ldapUser.getDisplayName();
         if (displayName == null || displayName.isEmpty()) {
             displayName = ldapUser.getUserId();
@@ -313,35 +572,15 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
         existingUser.setName(displayName);
         existingUser.setModifier("system");
         existingUser.setModified(new GregorianCalendar());
-        
-        contentService.update(new SystemCallContext(repositoryId), repositoryId, existingUser);
+        return existingUser;
     }
 
-    private void createUser(String repositoryId, LdapUser ldapUser, String userPrefix, DirectorySyncConfig config) {
-        Folder usersFolder = getOrCreateUsersFolder(repositoryId);
-        if (usersFolder == null) {
-            throw new RuntimeException("Failed to get or create users folder");
-        }
-
-        // Check for configured initial password
-        String initialPassword = config.getInitialPassword();
-        String passwordHash;
+    /**
+     * Build a new user. Its password is set by {@link #hashInitialPassword}
+     * when it is written, as hashing is the expensive part of creating users.
+     */
+    private UserItem createUser(LdapUser ldapUser, String userPrefix, String usersFolderId) {
         String nemakiUserId = userPrefix + ldapUser.getUserId();
-        
-        if (initialPassword != null && !initialPassword.isEmpty()) {
-            // Use configured initial password
-            passwordHash = BCrypt.hashpw(initialPassword, BCrypt.gensalt());
-            log.info("Created user '" + nemakiUserId + "' with configured initial password. " +
-                    "User should change password on first login.");
-        } else {
-            // Generate random password - user will not be able to log in without password reset
-            String randomPassword = generateSecurePassword();
-            passwordHash = BCrypt.hashpw(randomPassword, BCrypt.gensalt());
-            log.warn("Created user '" + nemakiUserId + "' with random password. " +
-                    "User will NOT be able to log in until password is reset by admin. " +
-                    "Consider setting 'directory.sync.user.initial.password' property or " +
-                    "configuring LDAP authentication pass-through.");
-        }
 
         String displayName = ldapUser.getDisplayName();
         if (displayName == null || displayName.isEmpty()) {
@@ -353,21 +592,32 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
             NemakiObjectType.nemakiUser,
             nemakiUserId,
             displayName,
-            passwordHash,
+            null,
             false,
-            usersFolder.getId()
+            usersFolderId
         );
 
         newUser.setCreator("system");
         newUser.setModifier("system");
         newUser.setCreated(new GregorianCalendar());
         newUser.setModified(new GregorianCalendar());
+        return newUser;
+    }
 
-        contentService.createUserItem(
-            new SystemCallContext(repositoryId),
-            repositoryId,
-            newUser
-        );
+    private String hashInitialPassword(String nemakiUserId, String initialPassword) {
+        if (initialPassword != null && !initialPassword.isEmpty()) {
+            // Use configured initial password
+            log.info("Created user '" + nemakiUserId + "' with configured initial password. " +
+                    "User should change password on first login.");
+            return BCrypt.hashpw(initialPassword, BCrypt.gensalt());
+        } else {
+            // Generate random password - user will not be able to log in without password reset
+            log.warn("Created user '" + nemakiUserId + "' with random password. " +
+                    "User will NOT be able to log in until password is reset by admin. " +
+                    "Consider setting 'directory.sync.user.initial.password' property or " +
+                    "configuring LDAP authentication pass-through.");
+            return BCrypt.hashpw(generateSecurePassword(), BCrypt.gensalt());
+        }
     }
 
 
@@ -450,20 +700,27 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
         return usersFolder;
     }
 
-    private void performGroupSync(String repositoryId, List<LdapGroup> ldapGroups, 
-            DirectorySyncConfig config, DirectorySyncResult result, boolean dryRun) {
+    /**
+     * @see #performUserSync
+     * @return false if any group failed to be written
+     */
+    private boolean performGroupSync(String repositoryId, List<LdapGroup> ldapGroups, 
+            DirectorySyncConfig config, DirectorySyncResult result, boolean dryRun,
+            boolean full, Map<String, String> hashes) {
         
         String configPrefix = config.getGroupPrefix();
         final String groupPrefix = (configPrefix == null) ? DirectorySyncConfig.DEFAULT_GROUP_PREFIX : configPrefix;
 
-        List<GroupItem> existingGroups = contentService.getGroupItems(repositoryId);
-        if (existingGroups == null) {
-            existingGroups = new ArrayList<>();
+        Map<String, GroupItem> syncedGroupMap = new HashMap<>();
+        if (full) {
+            List<GroupItem> existingGroups = contentService.getGroupItems(repositoryId);
+            if (existingGroups == null) {
+                existingGroups = new ArrayList<>();
+            }
+            syncedGroupMap = existingGroups.stream()
+                    .filter(g -> g.getGroupId() != null && g.getGroupId().startsWith(groupPrefix))
+                    .collect(Collectors.toMap(GroupItem::getGroupId, g -> g));
         }
-        
-        Map<String, GroupItem> syncedGroupMap = existingGroups.stream()
-                .filter(g -> g.getGroupId() != null && g.getGroupId().startsWith(groupPrefix))
-                .collect(Collectors.toMap(GroupItem::getGroupId, g -> g));
 
         Map<String, LdapGroup> ldapGroupMap = new HashMap<>();
         for (LdapGroup lg : ldapGroups) {
@@ -471,37 +728,84 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
             ldapGroupMap.put(nemakiGroupId, lg);
         }
 
+        List<GroupItem> creates = new ArrayList<>();
+        List<GroupItem> updates = new ArrayList<>();
+        Map<String, String> pendingHashes = new HashMap<>();
+        String groupsFolderId = null;
+        boolean synced = true;
+
         for (LdapGroup ldapGroup : ldapGroups) {
             String nemakiGroupId = groupPrefix + ldapGroup.getGroupId();
+            String hash = hashGroup(ldapGroup);
+
+            if (!full && hash.equals(hashes.get(nemakiGroupId))) {
+                result.incrementGroupsSkipped();
+                log.debug("Group unchanged since the last sync: " + nemakiGroupId);
+                continue;
+            }
             
             try {
-                if (syncedGroupMap.containsKey(nemakiGroupId)) {
-                    GroupItem existingGroup = syncedGroupMap.get(nemakiGroupId);
+                GroupItem existingGroup = full ? syncedGroupMap.get(nemakiGroupId)
+                        : contentService.getGroupItemById(repositoryId, nemakiGroupId);
+                if (existingGroup != null) {
                     if (hasGroupChanges(existingGroup, ldapGroup, groupPrefix, config)) {
-                        if (!dryRun) {
-                            updateGroup(repositoryId, existingGroup, ldapGroup, groupPrefix, config);
+                        if (dryRun) {
+                            result.incrementGroupsUpdated();
+                        } else {
+                            updates.add(updateGroup(existingGroup, ldapGroup, groupPrefix, config));
+                            pendingHashes.put(nemakiGroupId, hash);
                         }
-                        result.incrementGroupsUpdated();
-                        log.debug("Group updated: " + nemakiGroupId);
                     } else {
+                        hashes.put(nemakiGroupId, hash);
                         result.incrementGroupsSkipped();
                         log.debug("Group unchanged: " + nemakiGroupId);
                     }
                 } else {
-                    if (!dryRun) {
-                        createGroup(repositoryId, ldapGroup, groupPrefix, config);
-                        log.info("AUDIT: Group created via directory sync: " + nemakiGroupId);
+                    if (dryRun) {
+                        result.incrementGroupsCreated();
+                    } else {
+                        if (groupsFolderId == null) {
+                            Folder groupsFolder = getOrCreateGroupsFolder(repositoryId);
+                            if (groupsFolder == null) {
+                                throw new RuntimeException("Failed to get or create groups folder");
+                            }
+                            groupsFolderId = groupsFolder.getId();
+                        }
+                        creates.add(createGroup(ldapGroup, groupPrefix, config, groupsFolderId));
+                        pendingHashes.put(nemakiGroupId, hash);
                     }
-                    result.incrementGroupsCreated();
-                    log.debug("Group created: " + nemakiGroupId);
                 }
             } catch (Exception e) {
                 log.error("Error syncing group " + nemakiGroupId + ": " + e.getMessage());
                 result.addError(nemakiGroupId, e.getMessage());
+                synced = false;
             }
         }
 
-        if (config.isDeleteOrphanGroups()) {
+        Map<String, String> failures = new HashMap<>();
+        failures.putAll(write(repositoryId, creates, ChangeType.CREATED, GroupItem::getGroupId, null, config, full));
+        failures.putAll(write(repositoryId, updates, ChangeType.UPDATED, GroupItem::getGroupId, null, config, full));
+        for (GroupItem created : creates) {
+            if (!failures.containsKey(created.getGroupId())) {
+                result.incrementGroupsCreated();
+                log.info("AUDIT: Group created via directory sync: " + created.getGroupId());
+            }
+        }
+        for (GroupItem updated : updates) {
+            if (!failures.containsKey(updated.getGroupId())) {
+                result.incrementGroupsUpdated();
+                log.debug("Group updated: " + updated.getGroupId());
+            }
+        }
+        for (Map.Entry<String, String> failure : failures.entrySet()) {
+            log.error("Error syncing group " + failure.getKey() + ": " + failure.getValue());
+            result.addError(failure.getKey(), failure.getValue());
+            pendingHashes.remove(failure.getKey());
+        }
+        hashes.putAll(pendingHashes);
+        synced = synced && failures.isEmpty();
+
+        if (full && config.isDeleteOrphanGroups()) {
             for (GroupItem existingGroup : syncedGroupMap.values()) {
                 if (!ldapGroupMap.containsKey(existingGroup.getGroupId())) {
                     try {
@@ -509,6 +813,7 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
                             contentService.delete(new SystemCallContext(repositoryId), repositoryId, existingGroup.getId(), false);
                             log.info("AUDIT: Group deleted via directory sync (orphan): " + existingGroup.getGroupId());
                         }
+                        hashes.remove(existingGroup.getGroupId());
                         result.incrementGroupsDeleted();
                         log.debug("Group deleted (orphan): " + existingGroup.getGroupId());
                     } catch (Exception e) {
@@ -518,6 +823,7 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
                 }
             }
         }
+        return synced;
     }
 
     private boolean hasGroupChanges(GroupItem existingGroup, LdapGroup ldapGroup, String groupPrefix, DirectorySyncConfig config) {
@@ -565,7 +871,7 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
         return false;
     }
 
-    private void createGroup(String repositoryId, LdapGroup ldapGroup, String groupPrefix, DirectorySyncConfig config) {
+    private GroupItem createGroup(LdapGroup ldapGroup, String groupPrefix, DirectorySyncConfig config, String groupsFolderId) {
         String nemakiGroupId = groupPrefix + ldapGroup.getGroupId();
         
         String userPrefix = config.getUserPrefix() != null ? config.getUserPrefix() : "";
@@ -583,11 +889,6 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
             }
         }
 
-        Folder groupsFolder = getOrCreateGroupsFolder(repositoryId);
-        if (groupsFolder == null) {
-            throw new RuntimeException("Failed to get or create groups folder");
-        }
-
         GroupItem newGroup = new GroupItem(
             null,
             NemakiObjectType.nemakiGroup,
@@ -596,20 +897,15 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
             users,
             subGroups
         );
-        newGroup.setParentId(groupsFolder.getId());
+        newGroup.setParentId(groupsFolderId);
         newGroup.setCreator("system");
         newGroup.setModifier("system");
         newGroup.setCreated(new GregorianCalendar());
         newGroup.setModified(new GregorianCalendar());
-
-        contentService.createGroupItem(
-            new SystemCallContext(repositoryId),
-            repositoryId,
-            newGroup
-        );
+        return newGroup;
     }
 
-    private void updateGroup(String repositoryId, GroupItem existingGroup, LdapGroup ldapGroup, String groupPrefix, DirectorySyncConfig config) {
+    private GroupItem updateGroup(GroupItem existingGroup, LdapGroup ldapGroup, String groupPrefix, DirectorySyncConfig config) {
         String userPrefix = config.getUserPrefix() != null ? config.getUserPrefix() : "";
         List<String> users = new ArrayList<>();
         if (ldapGroup.getMemberUserIds() != null) {
@@ -630,8 +926,7 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
         existingGroup.setGroups(subGroups);
         existingGroup.setModifier("system");
         existingGroup.setModified(new GregorianCalendar());
-        
-        contentService.update(new SystemCallContext(repositoryId), repositoryId, existingGroup);
+        return existingGroup;
     }
 
     private Folder getOrCreateGroupsFolder(String repositoryId) {
@@ -728,6 +1023,28 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
         // Initial password for newly created users (optional)
         config.setInitialPassword(propertyManager.readValue(PropertyKey.DIRECTORY_SYNC_USER_INITIAL_PASSWORD));
 
+        config.setIncrementalSync(propertyManager.readBoolean(PropertyKey.DIRECTORY_SYNC_INCREMENTAL));
+        String changeMarkerAttribute = propertyManager.readValue(PropertyKey.DIRECTORY_SYNC_CHANGE_MARKER_ATTRIBUTE);
+        if (changeMarkerAttribute != null && !changeMarkerAttribute.isEmpty()) {
+            config.setChangeMarkerAttribute(changeMarkerAttribute);
+        }
+        String reconcileInterval = propertyManager.readValue(PropertyKey.DIRECTORY_SYNC_FULL_RECONCILE_INTERVAL);
+        if (reconcileInterval != null && !reconcileInterval.isEmpty()) {
+            try {
+                config.setFullReconcileIntervalHours(Integer.parseInt(reconcileInterval));
+            } catch (NumberFormatException e) {
+                log.warn("Invalid full reconcile interval value: " + reconcileInterval + ", using default");
+            }
+        }
+        String reconcileThreads = propertyManager.readValue(PropertyKey.DIRECTORY_SYNC_RECONCILE_THREADS);
+        if (reconcileThreads != null && !reconcileThreads.isEmpty()) {
+            try {
+                config.setReconcileThreads(Integer.parseInt(reconcileThreads));
+            } catch (NumberFormatException e) {
+                log.warn("Invalid reconcile threads value: " + reconcileThreads + ", using default");
+            }
+        }
+
         config.setScheduleEnabled(propertyManager.readBoolean(PropertyKey.DIRECTORY_SYNC_SCHEDULE_ENABLED));
         config.setCronExpression(propertyManager.readValue(PropertyKey.DIRECTORY_SYNC_SCHEDULE_CRON));
         
@@ -773,6 +1090,10 @@ public class DirectorySyncServiceImpl implements DirectorySyncService {
     public void setPropertyManager(PropertyManager propertyManager) {
         this.propertyManager = propertyManager;
     }
+
+    public void setContentDaoService(ContentDaoService contentDaoService) {
+        this.contentDaoService = contentDaoService;
+    }
     
     private String generateSecurePassword() {
         StringBuilder password = new StringBuilder(GENERATED_PASSWORD_LENGTH);
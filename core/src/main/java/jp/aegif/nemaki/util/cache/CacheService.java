@@ -18,6 +18,7 @@ import jp.aegif.nemaki.model.UserItem;
 import jp.aegif.nemaki.model.VersionSeries;
 import jp.aegif.nemaki.util.SpringPropertyManager;
 import jp.aegif.nemaki.util.YamlManager;
+import jp.aegif.nemaki.util.cache.model.FolderPathIndex;
 import jp.aegif.nemaki.util.cache.model.NemakiCache;
 import jp.aegif.nemaki.util.cache.model.Tree;
 import jp.aegif.nemaki.util.constant.PropertyKey;
@@ -45,8 +46,11 @@ public class CacheService {
 	private final String ACL_CACHE = "aclCache";
 	private final String JOINED_GROUP_CACHE = "joinedGroupCache";
 	private final String PROPERTY_DEFINITION_CACHE = "propertyDefinitionCache";
+	// Repositories with more folders than this resolve paths through a partial index
+	private static final int FOLDER_PATH_INDEX_MAX_SIZE = 200000;
 
 	private final String repositoryId;
+	private final FolderPathIndex folderPathIndex = new FolderPathIndex(FOLDER_PATH_INDEX_MAX_SIZE);
 
 	public CacheService(String repositoryId, SpringPropertyManager propertyManager) {
 		this.repositoryId = repositoryId;
@@ -207,6 +211,20 @@ public class CacheService {
 		removeCmisCache(objectId);
 	}
 	
+	/**
+	 * Folder path index, filled by the content DAO when first used
+	 */
+	public FolderPathIndex getFolderPathIndex() {
+		return folderPathIndex;
+	}
+
+	/**
+	 * Forget the path of a folder changed elsewhere, and of the folders below it
+	 */
+	public void removeFolderPathCache(String objectId) {
+		folderPathIndex.removeTree(objectId);
+	}
+
 	public void removeCmisAndTreeCache(String objectId) {
 		getTreeCache().remove(objectId);
 		getAclCache().remove(objectId);
@@ -0,0 +1,110 @@
+package jp.aegif.nemaki.util.cache;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Memoises lookups that one CMIS request repeats many times - the calling user,
+ * their groups, type definitions, calculated ACLs and version series.
+ *
+ * The cache is bound to the request thread between {@link #open()} and
+ * {@link #close()} and is only opened around read-only operations, so nothing it
+ * holds can go stale during its lifetime. Outside of it every lookup goes to
+ * the loader as before.
+ */
+public final class RequestLookupCache implements AutoCloseable {
+
+	private static final Log log = LogFactory.getLog(RequestLookupCache.class);
+
+	public static final String USER = "user";
+	public static final String GROUPS = "groups";
+	public static final String TYPE = "type";
+	public static final String ACL = "acl";
+	public static final String VERSION_SERIES = "versionSeries";
+
+	private static final ThreadLocal<RequestLookupCache> current = new ThreadLocal<>();
+
+	// Totals since startup
+	private static final AtomicLong requestCount = new AtomicLong();
+	private static final AtomicLong hitCount = new AtomicLong();
+	private static final AtomicLong missCount = new AtomicLong();
+
+	private final Map<String, Object> values = new HashMap<>();
+	private int depth;
+	private int hits;
+	private int misses;
+
+	private RequestLookupCache() {
+
+	}
+
+	/**
+	 * Start memoising on this thread. Nested opens join the outermost cache,
+	 * which lives until the matching outermost close.
+	 */
+	public static RequestLookupCache open() {
+		RequestLookupCache cache = current.get();
+		if (cache == null) {
+			cache = new RequestLookupCache();
+			current.set(cache);
+		}
+		cache.depth++;
+		return cache;
+	}
+
+	@Override
+	public void close() {
+		if (--depth > 0) {
+			return;
+		}
+		current.remove();
+		requestCount.incrementAndGet();
+		hitCount.addAndGet(hits);
+		missCount.addAndGet(misses);
+		if (log.isDebugEnabled()) {
+			log.debug("Request lookups: " + misses + " loaded, " + hits + " served from the request cache");
+		}
+	}
+
+	/**
+	 * The value memoised for the request, or the loader's value when no request
+	 * cache is open. Null values are not memoised.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T get(String kind, String repositoryId, String key, Supplier<T> loader) {
+		RequestLookupCache cache = current.get();
+		if (cache == null || key == null) {
+			return loader.get();
+		}
+		String cacheKey = kind + '\u0000' + repositoryId + '\u0000' + key;
+		Object value = cache.values.get(cacheKey);
+		if (value != null) {
+			cache.hits++;
+			return (T) value;
+		}
+		cache.misses++;
+		T loaded = loader.get();
+		if (loaded != null) {
+			cache.values.put(cacheKey, loaded);
+		}
+		return loaded;
+	}
+
+	public static boolean isOpen() {
+		return current.get() != null;
+	}
+
+	public static Map<String, Long> getMetrics() {
+		Map<String, Long> metrics = new LinkedHashMap<>();
+		metrics.put("request.lookups.requests", requestCount.get());
+		metrics.put("request.lookups.loaded", missCount.get());
+		metrics.put("request.lookups.saved", hitCount.get());
+		return metrics;
+	}
+}
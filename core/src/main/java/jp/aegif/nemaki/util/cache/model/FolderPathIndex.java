@@ -0,0 +1,221 @@
+package jp.aegif.nemaki.util.cache.model;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.StringUtils;
+
+import jp.aegif.nemaki.model.Folder;
+
+/**
+ * Folder hierarchy of a repository, held as folder ID -> (parent ID, name) and
+ * (parent ID, name) -> folder ID so that paths resolve in memory in both directions.
+ *
+ * An entry only knows its own parent and name. Renaming or moving a folder is one
+ * entry update and never touches its descendants, whose paths are assembled from
+ * the entries current at the time they are read. Reads are lock-free; writes
+ * serialise on the index.
+ *
+ * The index is not told about changes made on other nodes; the cache invalidation
+ * requests they send remove the folders concerned with {@link #removeTree(String)}.
+ */
+public class FolderPathIndex {
+
+	private static final String PATH_SEPARATOR = "/";
+
+	private static final class Entry {
+		private final String parentId;
+		private final String name;
+
+		private Entry(String parentId, String name) {
+			this.parentId = parentId;
+			this.name = name;
+		}
+	}
+
+	private final int maxSize;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	private final Map<String, Map<String, String>> children = new ConcurrentHashMap<String, Map<String, String>>();
+
+	private volatile boolean loadStarted;
+	/** IDs put or removed while a load is reading, which the load must not overwrite */
+	private Set<String> writtenDuringLoad;
+
+	/**
+	 * @param maxSize folders held at most; the index starts over when it would grow beyond
+	 */
+	public FolderPathIndex(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public boolean isLoadStarted() {
+		return loadStarted;
+	}
+
+	/**
+	 * Fill the index with the folders the reader returns, the first time only. The
+	 * reader runs without holding the index, so lookups go on meanwhile and fill it
+	 * from their loader; folders put or removed while it runs keep what was written then.
+	 *
+	 * @return folders added, or -1 if a load has already started or the reader returned null
+	 */
+	public int load(Supplier<List<Folder>> reader) {
+		synchronized (this) {
+			if (loadStarted) {
+				return -1;
+			}
+			loadStarted = true;
+			writtenDuringLoad = new HashSet<String>();
+		}
+
+		try {
+			List<Folder> folders = reader.get();
+			return folders == null ? -1 : fill(folders);
+		} finally {
+			synchronized (this) {
+				writtenDuringLoad = null;
+			}
+		}
+	}
+
+	private synchronized int fill(List<Folder> folders) {
+		int added = 0;
+		for (Folder folder : folders) {
+			if (folder != null && folder.getId() != null && !entries.containsKey(folder.getId())
+					&& !writtenDuringLoad.contains(folder.getId())) {
+				put(folder);
+				added++;
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * Add a folder, or record its new name or parent
+	 */
+	public synchronized void put(Folder folder) {
+		if (folder == null || folder.getId() == null) {
+			return;
+		}
+		if (writtenDuringLoad != null) {
+			writtenDuringLoad.add(folder.getId());
+		}
+		Entry previous = entries.get(folder.getId());
+		if (previous != null) {
+			unlink(folder.getId(), previous);
+		} else if (entries.size() >= maxSize) {
+			clear();
+		}
+
+		Entry entry = new Entry(folder.getParentId(), folder.getName());
+		entries.put(folder.getId(), entry);
+		if (entry.parentId != null && entry.name != null) {
+			children.computeIfAbsent(entry.parentId, k -> new ConcurrentHashMap<String, String>())
+					.put(entry.name, folder.getId());
+		}
+	}
+
+	public synchronized void remove(String folderId) {
+		if (writtenDuringLoad != null) {
+			writtenDuringLoad.add(folderId);
+		}
+		Entry previous = entries.remove(folderId);
+		if (previous != null) {
+			unlink(folderId, previous);
+		}
+	}
+
+	/**
+	 * Remove a folder and all the folders the index holds below it
+	 */
+	public synchronized void removeTree(String folderId) {
+		Set<String> visited = new HashSet<String>();
+		Deque<String> pending = new ArrayDeque<String>();
+		pending.push(folderId);
+		while (!pending.isEmpty()) {
+			String id = pending.pop();
+			if (!visited.add(id)) {
+				continue;
+			}
+			Map<String, String> names = children.get(id);
+			if (names != null) {
+				pending.addAll(names.values());
+			}
+			remove(id);
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		children.clear();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return ID of the child folder of that name, or null if the index does not know it
+	 */
+	public String getChildId(String parentId, String name) {
+		Map<String, String> names = children.get(parentId);
+		return names == null ? null : names.get(name);
+	}
+
+	/**
+	 * Path of a folder, like ContentService.calculatePath. Folders missing from the
+	 * index are read with the loader and added.
+	 *
+	 * @return null if the folder itself is not found
+	 */
+	public String getPath(String folderId, Function<String, Folder> loader) {
+		// Names of the folder and its ancestors, except the topmost one: the root,
+		// or the last reachable ancestor of an orphan
+		LinkedList<String> names = new LinkedList<String>();
+		Set<String> visited = new HashSet<String>();
+		String id = folderId;
+		while (id != null && visited.add(id)) {
+			Entry entry = entries.get(id);
+			if (entry == null) {
+				Folder folder = loader.apply(id);
+				if (folder == null) {
+					break;
+				}
+				put(folder);
+				entry = new Entry(folder.getParentId(), folder.getName());
+			}
+			names.addFirst(entry.name);
+			id = entry.parentId;
+		}
+		if (names.isEmpty()) {
+			return null;
+		}
+		names.removeFirst();
+		return PATH_SEPARATOR + StringUtils.join(names, PATH_SEPARATOR);
+	}
+
+	private void unlink(String folderId, Entry entry) {
+		if (entry.parentId == null || entry.name == null) {
+			return;
+		}
+		Map<String, String> names = children.get(entry.parentId);
+		if (names != null) {
+			names.remove(entry.name, folderId);
+			if (names.isEmpty()) {
+				children.remove(entry.parentId);
+			}
+		}
+	}
+}
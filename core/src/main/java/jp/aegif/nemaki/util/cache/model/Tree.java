@@ -1,27 +1,104 @@
 package jp.aegif.nemaki.util.cache.model;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 
+import jp.aegif.nemaki.model.Content;
+
+/**
+ * Child IDs of a folder, ordered by name.
+ *
+ * The children are held in two parallel arrays which are replaced, never
+ * modified, on every change. Readers take a snapshot without locking and can
+ * iterate it while other threads add and remove children; writers serialise
+ * on the tree. Folders without children share one empty snapshot.
+ */
 public class Tree {
-	private String parent;
-	private Set<String> children;
-	
+
+	private static final class Snapshot {
+		private final String[] names;
+		private final String[] ids;
+
+		private Snapshot(String[] names, String[] ids) {
+			this.names = names;
+			this.ids = ids;
+		}
+	}
+
+	private static final Snapshot EMPTY = new Snapshot(new String[0], new String[0]);
+
+	private volatile String parent;
+	private volatile Snapshot snapshot = EMPTY;
+
 	public Tree(String parent){
 		this.parent = parent;
-		this.children = new HashSet<>();
 	}
-	
-	public void add(String objectId){
-		children.add(objectId);
+
+	/**
+	 * Add a child, or move it to the position of its new name
+	 */
+	public synchronized void add(String objectId, String name){
+		Snapshot current = snapshot;
+		int existing = indexOf(current, objectId);
+		if (existing >= 0 && equals(current.names[existing], name)) {
+			return;
+		}
+
+		int size = current.ids.length - (existing >= 0 ? 1 : 0);
+		String[] names = new String[size + 1];
+		String[] ids = new String[size + 1];
+		int j = 0;
+		boolean inserted = false;
+		for (int i = 0; i < current.ids.length; i++) {
+			if (i == existing) {
+				continue;
+			}
+			if (!inserted && compare(name, objectId, current.names[i], current.ids[i]) < 0) {
+				names[j] = name;
+				ids[j++] = objectId;
+				inserted = true;
+			}
+			names[j] = current.names[i];
+			ids[j++] = current.ids[i];
+		}
+		if (!inserted) {
+			names[j] = name;
+			ids[j] = objectId;
+		}
+		snapshot = new Snapshot(names, ids);
 	}
-	
-	public void remove(String objectId){
-		children.remove(objectId);
+
+	/**
+	 * Move a child to the position of its new name, if it is a child
+	 */
+	public synchronized void rename(String objectId, String name){
+		if (indexOf(snapshot, objectId) >= 0) {
+			add(objectId, name);
+		}
 	}
-	
+
+	public synchronized void remove(String objectId){
+		Snapshot current = snapshot;
+		int existing = indexOf(current, objectId);
+		if (existing < 0) {
+			return;
+		}
+		if (current.ids.length == 1) {
+			snapshot = EMPTY;
+			return;
+		}
+
+		String[] names = new String[current.ids.length - 1];
+		String[] ids = new String[current.ids.length - 1];
+		System.arraycopy(current.names, 0, names, 0, existing);
+		System.arraycopy(current.ids, 0, ids, 0, existing);
+		System.arraycopy(current.names, existing + 1, names, existing, names.length - existing);
+		System.arraycopy(current.ids, existing + 1, ids, existing, ids.length - existing);
+		snapshot = new Snapshot(names, ids);
+	}
+
 	public String getParent() {
 		return parent;
 	}
@@ -30,11 +107,58 @@ public class Tree {
 		this.parent = parent;
 	}
 
-	public Set<String> getChildren() {
-		return children;
+	/**
+	 * @return an unmodifiable snapshot of the child IDs, ordered by name
+	 */
+	public List<String> getChildren() {
+		return Collections.unmodifiableList(Arrays.asList(snapshot.ids));
+	}
+
+	/**
+	 * Replace all the children
+	 */
+	public synchronized void setChildren(Collection<? extends Content> children) {
+		Content[] sorted = children.toArray(new Content[children.size()]);
+		Arrays.sort(sorted, (a, b) -> compare(a.getName(), a.getId(), b.getName(), b.getId()));
+
+		String[] names = new String[sorted.length];
+		String[] ids = new String[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			names[i] = sorted[i].getName();
+			ids[i] = sorted[i].getId();
+		}
+		snapshot = sorted.length == 0 ? EMPTY : new Snapshot(names, ids);
+	}
+
+	public int size() {
+		return snapshot.ids.length;
+	}
+
+	private static int indexOf(Snapshot snapshot, String objectId) {
+		for (int i = 0; i < snapshot.ids.length; i++) {
+			if (snapshot.ids[i].equals(objectId)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	// Unnamed children sort last; equal names keep a stable order by ID
+	private static int compare(String name0, String id0, String name1, String id1) {
+		if (name0 == null || name1 == null) {
+			if (name0 != name1) {
+				return name0 == null ? 1 : -1;
+			}
+		} else {
+			int result = name0.compareTo(name1);
+			if (result != 0) {
+				return result;
+			}
+		}
+		return id0.compareTo(id1);
 	}
 
-	public void setChildren(Set<String> children) {
-		this.children = children;
+	private static boolean equals(String a, String b) {
+		return a == null ? b == null : a.equals(b);
 	}
 }
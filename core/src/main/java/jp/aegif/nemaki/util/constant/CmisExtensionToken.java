@@ -5,4 +5,9 @@ import jp.aegif.nemaki.util.DataUtil;
 public interface CmisExtensionToken {
 	final String ACL_INHERITANCE_NAMESPACE = DataUtil.NAMESPACE + "/feature/aclInheritance/";
 	final String ACL_INHERITANCE_INHERITED = "inherited";
+
+	// Solr cursorMark paging of query(): "*" starts a walk, the response carries the next mark
+	final String QUERY_CURSOR_NAMESPACE = DataUtil.NAMESPACE + "/feature/queryCursor/";
+	final String QUERY_CURSOR_MARK = "cursorMark";
+	final String QUERY_NEXT_CURSOR_MARK = "nextCursorMark";
 }
@@ -20,6 +20,15 @@ public interface PropertyKey {
 	 * Example: cmis.server.default.repository=bedroom
 	 */
 	final String CMIS_SERVER_DEFAULT_REPOSITORY = "cmis.server.default.repository";
+	/**
+	 * Stream Browser Binding list responses entry by entry (default: true).
+	 */
+	final String CMIS_BROWSER_JSON_STREAMING = "cmis.browser.json.streaming";
+	/**
+	 * Gzip streamed Browser Binding responses when the client accepts it (default: false).
+	 * Leave disabled when compression is already done by Tomcat or a reverse proxy.
+	 */
+	final String CMIS_BROWSER_JSON_GZIP = "cmis.browser.json.gzip";
 
 	//Solr
 	final String SOLR_PROTOCOL = "solr.protocol";
@@ -28,6 +37,23 @@ public interface PropertyKey {
 	final String SOLR_CONTEXT = "solr.context";
 	final String SOLR_INDEXING_FORCE= "solr.indexing.force";
 	final String SOLR_NEMAKI_USERID= "solr.nemaki.userid";
+	final String SOLR_REINDEX_BLUEGREEN_SHADOW_CORE = "solr.reindex.bluegreen.shadow.core";  // Default: nemaki_shadow
+	final String SOLR_REINDEX_BLUEGREEN_WORKERS = "solr.reindex.bluegreen.workers";  // Default: 4
+	final String SOLR_REINDEX_BLUEGREEN_PAGE_SIZE = "solr.reindex.bluegreen.page.size";  // Default: 500
+	final String SOLR_REINDEX_BLUEGREEN_KEEP_PREVIOUS = "solr.reindex.bluegreen.keep.previous";  // Default: false
+	final String SOLR_REINDEX_BLUEGREEN_RESUME_ON_STARTUP = "solr.reindex.bluegreen.resume.on.startup";  // Default: true
+
+	//Background jobs
+	final String JOB_WORKERS = "job.workers";  // Default: 2, per type: job.workers.<type>
+	final String JOB_QUEUE_CAPACITY = "job.queue.capacity";  // Default: 100
+	final String JOB_RESUME_ON_STARTUP = "job.resume.on.startup";  // Default: false
+	final String JOB_NODE_NAME = "job.node.name";  // Default: host name
+
+	//Startup
+	final String BOOTSTRAP_PARALLELISM = "bootstrap.parallelism";  // Default: 4
+	final String BOOTSTRAP_LAZY = "bootstrap.lazy";  // Default: false
+	final String BOOTSTRAP_TYPE_SNAPSHOT_ENABLED = "bootstrap.type.snapshot.enabled";  // Default: true
+	final String BOOTSTRAP_TYPE_SNAPSHOT_DIR = "bootstrap.type.snapshot.dir";  // Default: ${catalina.base}/work/type-snapshots
 
 
 	//Config file path
@@ -55,6 +81,14 @@ public interface PropertyKey {
 	final String REST_SOLR_ENABLED = "rest.solr.enabled";
 	final String REST_AUTHTOKEN_ENABLED = "rest.authtoken.enabled";
 
+	//OData
+	final String ODATA_PAGE_SIZE = "odata.page.size";  // Default: 100
+	final String ODATA_PAGE_SIZE_MAX = "odata.page.size.max";  // Default: 1000
+	final String ODATA_EXPAND_MAX_ITEMS = "odata.expand.max.items";  // Default: 1000
+	final String ODATA_EXPAND_MAX_CHILDREN = "odata.expand.max.children";  // Default: 100
+	final String ODATA_APPLY_MAX_GROUPS = "odata.apply.max.groups";  // Default: 1000
+	final String ODATA_APPLY_MAX_SCAN = "odata.apply.max.scan";  // Default: 100000
+
 	//Capabilities
 	final String CAPABILITY_GET_DESCENDENTS = "capability.getDescendants";
 	final String CAPABILITY_GET_FOLDER_TREE = "capability.getFolderTree";
@@ -289,6 +323,13 @@ public interface PropertyKey {
 
 	//Auth token
 	final String AUTH_TOKEN_EXPIRATION = "auth.token.expiration";
+	final String AUTH_TOKEN_TYPE = "auth.token.type";
+	final String AUTH_TOKEN_SECRET = "auth.token.secret";
+	final String AUTH_TOKEN_REVOCATION_REFRESH = "auth.token.revocation.refresh";
+
+	//Basic auth
+	final String AUTH_BASIC_CACHE_TTL = "auth.basic.cache.ttl";
+	final String AUTH_BASIC_CACHE_MAX_ENTRIES = "auth.basic.cache.maxEntries";
 
 	//External authentication
 	final String EXTERNAL_AUTHENTICATION_PROXY_HEADER = "external.authenticaion.proxyHeader";
@@ -302,6 +343,16 @@ public interface PropertyKey {
 
 	//Deletion
 	final String DELETION_VERIFY_ENABLED = "deletion.verify.enabled";
+	final String DELETION_TREE_PARALLELISM = "deletion.tree.parallelism";  // Default: 4
+	final String DELETION_TREE_BATCH_SIZE = "deletion.tree.batch.size";  // Default: 200
+
+	//Change log retention
+	final String CHANGELOG_RETENTION_DAYS = "changelog.retention.days";
+	final String CHANGELOG_RETENTION_MAX_EVENTS_PER_OBJECT = "changelog.retention.max.events.per.object";
+	final String CHANGELOG_COMPACTION_COLLAPSE_UPDATES = "changelog.compaction.collapse.updates";
+	final String CHANGELOG_COMPACTION_ARCHIVE = "changelog.compaction.archive";
+	final String CHANGELOG_COMPACTION_SCHEDULE_ENABLED = "changelog.compaction.schedule.enabled";
+	final String CHANGELOG_COMPACTION_SCHEDULE_CRON = "changelog.compaction.schedule.cron";
 
 	//Directory Sync
 	final String DIRECTORY_SYNC_ENABLED = "directory.sync.enabled";
@@ -332,6 +383,10 @@ public interface PropertyKey {
 	final String DIRECTORY_SYNC_SCHEDULE_CRON = "directory.sync.schedule.cron";
 	final String DIRECTORY_SYNC_SCHEDULE_NODE_IP = "directory.sync.schedule.node.ip";
 	final String DIRECTORY_SYNC_USER_INITIAL_PASSWORD = "directory.sync.user.initial.password";
+	final String DIRECTORY_SYNC_INCREMENTAL = "directory.sync.incremental";
+	final String DIRECTORY_SYNC_CHANGE_MARKER_ATTRIBUTE = "directory.sync.change.marker.attribute";
+	final String DIRECTORY_SYNC_FULL_RECONCILE_INTERVAL = "directory.sync.full.reconcile.interval.hours";
+	final String DIRECTORY_SYNC_RECONCILE_THREADS = "directory.sync.reconcile.threads";
 
 	//Audit logging
 	final String AUDIT_ENABLED = "audit.enabled";
@@ -345,4 +400,16 @@ public interface PropertyKey {
 	// Audit logging - configurable limits
 	final String AUDIT_REQUEST_PATH_MAX_LENGTH = "audit.request.path.max.length";  // Default: 2000
 	final String AUDIT_ASYNC_QUEUE_SIZE = "audit.async.queue.size";  // Default: 512 (logback config)
+
+	// Audit logging - background writer and local event store
+	final String AUDIT_PIPELINE_ENABLED = "audit.pipeline.enabled";  // Default: true
+	final String AUDIT_PIPELINE_BUFFER_SIZE = "audit.pipeline.buffer.size";  // Default: 8192
+	final String AUDIT_PIPELINE_BATCH_SIZE = "audit.pipeline.batch.size";  // Default: 256
+	final String AUDIT_PIPELINE_OVERFLOW = "audit.pipeline.overflow";  // DROP, BLOCK (default)
+	final String AUDIT_PIPELINE_BLOCK_TIMEOUT_MS = "audit.pipeline.block.timeout.ms";  // Default: 100
+	final String AUDIT_STORE_ENABLED = "audit.store.enabled";  // Default: false
+	final String AUDIT_STORE_DIR = "audit.store.dir";  // Default: ${catalina.base}/logs/audit-store
+	final String AUDIT_STORE_PARTITION = "audit.store.partition";  // HOUR, DAY (default)
+	final String AUDIT_STORE_COMPRESS = "audit.store.compress";  // Default: false
+	final String AUDIT_STORE_RETENTION_DAYS = "audit.store.retention.days";  // Default: 0 (keep all)
 }
@@ -2,6 +2,8 @@ package jp.aegif.nemaki.util.constant;
 
 public interface SystemConst {
 	public static final String NEMAKI_CONF_DB = "nemaki_conf";
+	/** Pruned change events are archived to "{repositoryId}_changelog" */
+	public static final String CHANGELOG_ARCHIVE_SUFFIX = "_changelog";
 
 	public static final String DATETIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
 }
@@ -0,0 +1,172 @@
+package jp.aegif.nemaki.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jp.aegif.nemaki.util.PropertyManager;
+import jp.aegif.nemaki.util.constant.PropertyKey;
+
+public class AuditEventPipelineTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final List<AuditEvent> written = new ArrayList<>();
+	private final CountDownLatch writing = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+	private AuditEventPipeline pipeline;
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		if (pipeline != null) {
+			pipeline.shutdown(5000);
+		}
+	}
+
+	@Test
+	public void testRingBufferRejectsWhenFull() {
+		AuditRingBuffer<Integer> buffer = new AuditRingBuffer<>(3);
+		// Capacity is rounded up to a power of two
+		assertEquals(4, buffer.capacity());
+		for (int i = 0; i < 4; i++) {
+			assertTrue(buffer.offer(i));
+		}
+		assertFalse(buffer.offer(4));
+		assertEquals(4, buffer.size());
+
+		assertEquals(Integer.valueOf(0), buffer.poll());
+		assertTrue(buffer.offer(4));
+		assertFalse(buffer.offer(5));
+	}
+
+	@Test
+	public void testDropPolicyDropsWhileWriterIsBusy() throws Exception {
+		pipeline = blockedPipeline(AuditEventPipeline.OverflowPolicy.DROP, 0);
+
+		assertTrue(pipeline.publish(event("queued-1")));
+		assertTrue(pipeline.publish(event("queued-2")));
+		assertFalse(pipeline.publish(event("dropped-1")));
+		assertFalse(pipeline.publish(event("dropped-2")));
+		assertEquals(2, pipeline.getDroppedCount());
+
+		release.countDown();
+		pipeline.shutdown(5000);
+		assertEquals(3, written.size());
+		assertEquals("queued-2", written.get(2).getUserId());
+		assertEquals(2, pipeline.getDroppedCount());
+	}
+
+	@Test
+	public void testBlockPolicyWaitsForSpace() throws Exception {
+		pipeline = blockedPipeline(AuditEventPipeline.OverflowPolicy.BLOCK, 10000);
+		assertTrue(pipeline.publish(event("queued-1")));
+		assertTrue(pipeline.publish(event("queued-2")));
+
+		final AtomicBoolean published = new AtomicBoolean();
+		Thread producer = new Thread(() -> published.set(pipeline.publish(event("waited"))));
+		producer.start();
+		Thread.sleep(100);
+		// Still waiting for the writer to make room
+		assertTrue(producer.isAlive());
+
+		release.countDown();
+		producer.join(10000);
+		assertTrue(published.get());
+		pipeline.shutdown(5000);
+		assertEquals(0, pipeline.getDroppedCount());
+		assertEquals(4, written.size());
+		assertEquals("waited", written.get(3).getUserId());
+	}
+
+	@Test
+	public void testBlockPolicyDropsAfterTimeout() throws Exception {
+		pipeline = blockedPipeline(AuditEventPipeline.OverflowPolicy.BLOCK, 50);
+		assertTrue(pipeline.publish(event("queued-1")));
+		assertTrue(pipeline.publish(event("queued-2")));
+
+		long start = System.nanoTime();
+		assertFalse(pipeline.publish(event("dropped")));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+		assertEquals(1, pipeline.getDroppedCount());
+	}
+
+	@Test
+	public void testLoggerCountsDroppedEventOnce() throws Exception {
+		PropertyManager propertyManager = mock(PropertyManager.class);
+		when(propertyManager.readValue(PropertyKey.AUDIT_STORE_ENABLED)).thenReturn("true");
+		when(propertyManager.readValue(PropertyKey.AUDIT_STORE_DIR)).thenReturn(folder.newFolder("store").getPath());
+		when(propertyManager.readValue(PropertyKey.AUDIT_PIPELINE_OVERFLOW)).thenReturn("DROP");
+		when(propertyManager.readValue(PropertyKey.AUDIT_PIPELINE_BUFFER_SIZE)).thenReturn("2");
+		AuditLogger auditLogger = new AuditLogger();
+		auditLogger.setPropertyManager(propertyManager);
+		auditLogger.init();
+		AuditLogger.resetMetrics();
+		try {
+			AuditSegmentStore store = AuditLogger.getSegmentStore();
+			// The writer takes the segment store's lock for each event, so holding it stalls the writer
+			synchronized (store) {
+				auditLogger.logAuditEvent(event("taken"));
+				long deadline = System.currentTimeMillis() + 10000;
+				while (AuditLogger.getMetrics().get("audit.pipeline.queue.depth") > 0
+						&& System.currentTimeMillis() < deadline) {
+					Thread.sleep(5);
+				}
+				auditLogger.logAuditEvent(event("queued-1"));
+				auditLogger.logAuditEvent(event("queued-2"));
+				auditLogger.logAuditEvent(event("dropped"));
+			}
+
+			Map<String, Long> metrics = AuditLogger.getMetrics();
+			assertEquals(Long.valueOf(4), metrics.get("audit.events.total"));
+			assertEquals(Long.valueOf(1), metrics.get("audit.events.dropped"));
+			assertEquals(Long.valueOf(0), metrics.get("audit.events.failed"));
+		} finally {
+			auditLogger.destroy();
+		}
+		assertEquals(3, AuditLogger.getAuditEventLogged());
+		AuditLogger.resetMetrics();
+	}
+
+	/**
+	 * A pipeline of capacity 2 whose writer is stuck on its first event until
+	 * release is counted down, so the buffer fills up deterministically.
+	 */
+	private AuditEventPipeline blockedPipeline(AuditEventPipeline.OverflowPolicy policy, long blockTimeoutMillis)
+			throws Exception {
+		AuditEventPipeline blocked = new AuditEventPipeline(batch -> {
+			writing.countDown();
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			synchronized (written) {
+				written.addAll(batch);
+			}
+		}, 2, 1, policy, blockTimeoutMillis);
+		blocked.start();
+		assertTrue(blocked.publish(event("taken")));
+		assertTrue(writing.await(10, TimeUnit.SECONDS));
+		return blocked;
+	}
+
+	private static AuditEvent event(String userId) {
+		return AuditEventBuilder.forOperation(AuditOperation.UPDATE_DOCUMENT).userId(userId).success().build();
+	}
+}
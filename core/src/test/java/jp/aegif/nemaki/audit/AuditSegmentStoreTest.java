@@ -0,0 +1,220 @@
+package jp.aegif.nemaki.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class AuditSegmentStoreTest {
+
+	// 2026-10-19T10:00:00Z
+	private static final long T0 = 1792404000000L;
+	private static final long DAY = 24L * 60 * 60 * 1000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private Path dir;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = folder.newFolder("audit-store").toPath();
+	}
+
+	@Test
+	public void testQueryByUserAndObjectAcrossSegments() throws Exception {
+		AuditSegmentStore store = open(false);
+		add(store, T0, "alice", "obj-1", AuditOperation.CREATE_DOCUMENT);
+		add(store, T0 + 1000, "bob", "obj-2", AuditOperation.UPDATE_DOCUMENT);
+		add(store, T0 + DAY, "alice", "obj-2", AuditOperation.DELETE_DOCUMENT);
+		store.flush();
+
+		AuditSegmentStore.Query query = new AuditSegmentStore.Query();
+		query.setUserId("alice");
+		AuditSegmentStore.QueryResult result = store.query(query);
+		assertEquals(2, result.getEvents().size());
+		assertEquals("obj-1", result.getEvents().get(0).get("objectId"));
+		assertEquals("obj-2", result.getEvents().get(1).get("objectId"));
+
+		query = new AuditSegmentStore.Query();
+		query.setObjectId("obj-1");
+		result = store.query(query);
+		assertEquals(1, result.getEvents().size());
+		// The second day's segment has no obj-1 in its index
+		assertEquals(1, result.getScannedSegments());
+
+		query = new AuditSegmentStore.Query();
+		query.setFrom(T0 + DAY);
+		result = store.query(query);
+		assertEquals(1, result.getEvents().size());
+		assertEquals("DELETE_DOCUMENT", result.getEvents().get(0).get("operation"));
+	}
+
+	@Test
+	public void testLimit() throws Exception {
+		AuditSegmentStore store = open(false);
+		for (int i = 0; i < 5; i++) {
+			add(store, T0 + i, "alice", "obj-" + i, AuditOperation.UPDATE_DOCUMENT);
+		}
+		store.flush();
+
+		AuditSegmentStore.Query query = new AuditSegmentStore.Query();
+		query.setLimit(3);
+		AuditSegmentStore.QueryResult result = store.query(query);
+		assertEquals(3, result.getEvents().size());
+		assertTrue(result.isHasMoreItems());
+	}
+
+	@Test
+	public void testCompressedSegmentsAppendedInBatches() throws Exception {
+		AuditSegmentStore store = open(true);
+		add(store, T0, "alice", "obj-1", AuditOperation.CREATE_DOCUMENT);
+		store.flush();
+		add(store, T0 + 1, "alice", "obj-2", AuditOperation.CREATE_DOCUMENT);
+		store.flush();
+
+		AuditSegmentStore.QueryResult result = store.query(new AuditSegmentStore.Query());
+		assertEquals(2, result.getEvents().size());
+		assertTrue(store.getSegments().get(0).getName().endsWith(".gz"));
+	}
+
+	@Test
+	public void testIndexRebuiltOnReopen() throws Exception {
+		AuditSegmentStore store = open(false);
+		add(store, T0, "alice", "obj-1", AuditOperation.CREATE_DOCUMENT);
+		store.flush();
+		// No close(): the index of the current segment was never written
+
+		AuditSegmentStore reopened = open(false);
+		assertEquals(1, reopened.getSegments().size());
+		assertEquals(1, reopened.getSegments().get(0).getEventCount());
+
+		AuditSegmentStore.Query query = new AuditSegmentStore.Query();
+		query.setUserId("bob");
+		assertEquals(0, reopened.query(query).getScannedSegments());
+	}
+
+	@Test
+	public void testSealedSegmentFiltersAreReadFromItsIndex() throws Exception {
+		AuditSegmentStore store = open(false);
+		add(store, T0, "alice", "obj-1", AuditOperation.CREATE_DOCUMENT);
+		store.flush();
+		add(store, T0 + DAY, "bob", "obj-2", AuditOperation.CREATE_DOCUMENT);
+		store.flush();
+
+		// The first day's segment was sealed: its filters were dropped from memory
+		AuditSegmentStore.Query query = new AuditSegmentStore.Query();
+		query.setUserId("alice");
+		AuditSegmentStore.QueryResult result = store.query(query);
+		assertEquals(1, result.getEvents().size());
+		assertEquals(1, result.getScannedSegments());
+		query.setUserId("carol");
+		assertEquals(0, store.query(query).getScannedSegments());
+	}
+
+	@Test
+	public void testAppendAfterReopenKeepsEarlierIds() throws Exception {
+		AuditSegmentStore store = open(false);
+		add(store, T0, "alice", "obj-1", AuditOperation.CREATE_DOCUMENT);
+		store.close();
+
+		AuditSegmentStore reopened = open(false);
+		add(reopened, T0 + 1000, "bob", "obj-2", AuditOperation.UPDATE_DOCUMENT);
+		reopened.close();
+
+		AuditSegmentStore.Query query = new AuditSegmentStore.Query();
+		query.setObjectId("obj-1");
+		assertEquals(1, open(false).query(query).getEvents().size());
+		query.setObjectId("obj-2");
+		assertEquals(1, open(false).query(query).getEvents().size());
+	}
+
+	@Test
+	public void testIndexWithIdSetsIsRebuilt() throws Exception {
+		AuditSegmentStore store = open(false);
+		add(store, T0, "alice", "obj-1", AuditOperation.CREATE_DOCUMENT);
+		store.close();
+		String segment = store.getSegments().get(0).getName();
+		Files.write(dir.resolve(segment + ".idx"), ("{\"count\":1,\"minTime\":" + T0 + ",\"maxTime\":" + T0
+				+ ",\"users\":[\"alice\"],\"objects\":[\"obj-1\"]}").getBytes(StandardCharsets.UTF_8));
+
+		AuditSegmentStore.Query query = new AuditSegmentStore.Query();
+		query.setUserId("alice");
+		assertEquals(1, open(false).query(query).getEvents().size());
+	}
+
+	@Test
+	public void testRingBuffer() {
+		AuditRingBuffer<Integer> buffer = new AuditRingBuffer<>(3);
+		assertEquals(4, buffer.capacity());
+		for (int i = 0; i < 4; i++) {
+			assertTrue(buffer.offer(i));
+		}
+		assertFalse(buffer.offer(4));
+
+		List<Integer> drained = new ArrayList<>();
+		assertEquals(2, buffer.drainTo(drained, 2));
+		assertTrue(buffer.offer(4));
+		assertEquals(3, buffer.drainTo(drained, 10));
+		assertEquals(5, drained.size());
+		for (int i = 0; i < 5; i++) {
+			assertEquals(Integer.valueOf(i), drained.get(i));
+		}
+		assertNull(buffer.poll());
+	}
+
+	@Test
+	public void testPipelineWritesAllEvents() throws Exception {
+		List<AuditEvent> written = new ArrayList<>();
+		AuditEventPipeline pipeline = new AuditEventPipeline(batch -> {
+			synchronized (written) {
+				written.addAll(batch);
+			}
+		}, 16, 4, AuditEventPipeline.OverflowPolicy.BLOCK, 1000);
+		pipeline.start();
+
+		Thread[] producers = new Thread[4];
+		for (int t = 0; t < producers.length; t++) {
+			producers[t] = new Thread(() -> {
+				for (int i = 0; i < 250; i++) {
+					pipeline.publish(AuditEventBuilder.forOperation(AuditOperation.UPDATE_DOCUMENT).userId("alice").success().build());
+				}
+			});
+			producers[t].start();
+		}
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		pipeline.shutdown(5000);
+
+		assertEquals(0, pipeline.getDroppedCount());
+		assertEquals(1000, written.size());
+	}
+
+	private AuditSegmentStore open(boolean compress) throws Exception {
+		AuditSegmentStore store = new AuditSegmentStore(dir, AuditSegmentStore.Partition.DAY, compress, 0, mapper);
+		store.open();
+		return store;
+	}
+
+	private void add(AuditSegmentStore store, long time, String userId, String objectId, AuditOperation operation)
+			throws Exception {
+		AuditEvent event = AuditEventBuilder.forOperation(operation).userId(userId).objectId(objectId).success().build();
+		event.setTimestampMs(time);
+		store.add(event, mapper.writeValueAsString(event));
+	}
+}
@@ -0,0 +1,364 @@
+package jp.aegif.nemaki.businesslogic.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.chemistry.opencmis.commons.enums.ChangeType;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Before;
+import org.junit.Test;
+
+import jp.aegif.nemaki.businesslogic.SolrIndexMaintenanceService.ReindexStatus;
+import jp.aegif.nemaki.cmis.aspect.query.solr.SolrUtil;
+import jp.aegif.nemaki.dao.ContentDaoService;
+import jp.aegif.nemaki.model.Change;
+import jp.aegif.nemaki.model.ChangeFeed;
+import jp.aegif.nemaki.model.Content;
+import jp.aegif.nemaki.model.ContentPage;
+import jp.aegif.nemaki.model.ReindexCheckpoint;
+
+public class BlueGreenReindexerTest {
+
+	private static final String REPOSITORY_ID = "bedroom";
+	private static final String SHADOW = "nemaki_shadow";
+	private static final String LIVE = "live";
+
+	private ContentDaoService contentDaoService;
+	private SolrUtil solrUtil;
+	private ReindexStatus status;
+
+	/** Object ID to content, read in key order like _all_docs */
+	private final TreeMap<String, Content> database = new TreeMap<>();
+	private final Map<String, ReindexCheckpoint> checkpoints = new HashMap<>();
+	/** Change feed pages by the token they start from */
+	private final Map<String, ChangeFeed> feeds = new HashMap<>();
+	private final Set<String> cores = new HashSet<>();
+	/** Indexed object IDs per core */
+	private final Map<String, List<String>> indexed = new HashMap<>();
+	/** Solr index and core admin calls in the order they were made */
+	private final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+	/** How many more times indexing a batch holding the object ID fails */
+	private final Map<String, Integer> failures = new HashMap<>();
+
+	@Before
+	public void setUp() throws Exception {
+		for (String id : Arrays.asList("0a", "0b", "1a", "3c", "7f", "a1", "a5", "a9", "f0", "ff")) {
+			database.put(id, content(id));
+		}
+		cores.add(BlueGreenReindexer.LIVE_CORE);
+
+		contentDaoService = mock(ContentDaoService.class);
+		when(contentDaoService.getReindexCheckpoint(REPOSITORY_ID)).thenAnswer(invocation -> checkpoints.get(REPOSITORY_ID));
+		when(contentDaoService.saveReindexCheckpoint(eq(REPOSITORY_ID), any())).thenAnswer(invocation -> {
+			checkpoints.put(REPOSITORY_ID, invocation.getArgument(1));
+			return true;
+		});
+		doAnswer(invocation -> checkpoints.remove(REPOSITORY_ID)).when(contentDaoService).deleteReindexCheckpoint(REPOSITORY_ID);
+		when(contentDaoService.getLatestChangeLogToken(REPOSITORY_ID)).thenReturn("10");
+		when(contentDaoService.getContentsInRange(eq(REPOSITORY_ID), any(), any(), anyInt())).thenAnswer(invocation -> {
+			String startKey = invocation.getArgument(1);
+			String endKey = invocation.getArgument(2);
+			int maxItems = invocation.getArgument(3);
+			List<String> ids = new ArrayList<>((startKey == null ? database : database.tailMap(startKey, true)).keySet());
+			List<Content> page = new ArrayList<>();
+			for (String id : ids) {
+				if (endKey != null && id.compareTo(endKey) >= 0) {
+					return new ContentPage(page, null);
+				}
+				if (page.size() == maxItems) {
+					return new ContentPage(page, id);
+				}
+				page.add(database.get(id));
+			}
+			return new ContentPage(page, null);
+		});
+		when(contentDaoService.getChangeFeed(eq(REPOSITORY_ID), anyString(), anyInt(), anyLong())).thenAnswer(invocation -> {
+			String token = invocation.getArgument(1);
+			ChangeFeed feed = feeds.get(token);
+			return feed != null ? feed : new ChangeFeed(Collections.<Change> emptyList(), token, false);
+		});
+		when(contentDaoService.getContents(eq(REPOSITORY_ID), any())).thenAnswer(invocation -> {
+			Collection<String> ids = invocation.getArgument(1);
+			List<Content> result = new ArrayList<>();
+			for (String id : ids) {
+				if (database.containsKey(id)) {
+					result.add(database.get(id));
+				}
+			}
+			return result;
+		});
+
+		solrUtil = mock(SolrUtil.class);
+		when(solrUtil.indexDocumentsBatch(eq(REPOSITORY_ID), any(), anyInt(), any())).thenAnswer(invocation -> {
+			List<Content> contents = invocation.getArgument(1);
+			String core = core(invocation.getArgument(3));
+			synchronized (failures) {
+				for (Content content : contents) {
+					Integer remaining = failures.get(content.getId());
+					if (remaining != null && remaining > 0) {
+						failures.put(content.getId(), remaining - 1);
+						throw new IllegalStateException("Solr is down");
+					}
+				}
+			}
+			record(core, contents);
+			synchronized (indexed) {
+				for (Content content : contents) {
+					indexed.computeIfAbsent(core, k -> new ArrayList<>()).add(content.getId());
+				}
+			}
+			return contents.size();
+		});
+		SolrClient shadowClient = solrClient(SHADOW);
+		SolrClient liveClient = solrClient(LIVE);
+		when(solrUtil.getSolrClient(any())).thenAnswer(invocation -> SHADOW.equals(invocation.getArgument(0)) ? shadowClient : liveClient);
+		SolrClient admin = adminClient();
+		when(solrUtil.getSolrAdminClient()).thenReturn(admin);
+
+		status = new ReindexStatus();
+	}
+
+	@Test
+	public void testBuildScansEveryPartitionOnce() throws Exception {
+		reindexer(4, 2).run(false);
+
+		List<String> shadowIds = new ArrayList<>(indexed.get(SHADOW));
+		Collections.sort(shadowIds);
+		assertEquals(new ArrayList<>(database.keySet()), shadowIds);
+		assertEquals(16, status.getTotalPartitions());
+		assertEquals(16, status.getCompletedPartitions());
+		assertEquals(database.size(), status.getIndexedCount());
+		// The shadow core lives in the live core's sibling directory
+		assertTrue(calls.contains("create " + SHADOW + " /var/solr/" + SHADOW));
+		assertNull(checkpoints.get(REPOSITORY_ID));
+	}
+
+	@Test
+	public void testResumeContinuesFromCheckpoint() throws Exception {
+		cores.add(SHADOW);
+		ReindexCheckpoint checkpoint = new ReindexCheckpoint();
+		checkpoint.setRunId("run-1");
+		checkpoint.setShadowCore(SHADOW);
+		checkpoint.setPhase(BlueGreenReindexer.PHASE_BUILD);
+		checkpoint.setChangeToken("10");
+		checkpoint.setIndexedCount(6);
+		// Only the "a" partition is left, and it stopped at a5
+		checkpoint.getPartitions().put("a", "a5");
+		checkpoints.put(REPOSITORY_ID, checkpoint);
+
+		BlueGreenReindexer reindexer = reindexer(2, 10);
+		assertTrue(BlueGreenReindexer.hasCheckpoints(contentDaoService, Arrays.asList(REPOSITORY_ID)));
+		reindexer.run(true);
+
+		assertTrue(status.isResumed());
+		assertEquals(Arrays.asList("a5", "a9"), indexed.get(SHADOW));
+		assertEquals(8, status.getIndexedCount());
+		assertEquals(16, status.getCompletedPartitions());
+		assertFalse(calls.contains("create " + SHADOW + " /var/solr/" + SHADOW));
+		assertTrue(calls.contains("swap"));
+	}
+
+	@Test
+	public void testReplayReadsChangedObjectsInBulk() throws Exception {
+		database.put("new", content("new"));
+		feeds.put("10", new ChangeFeed(Arrays.asList(
+				change("new", ChangeType.CREATED),
+				change("0a", ChangeType.UPDATED),
+				change("0a", ChangeType.SECURITY),
+				change("gone", ChangeType.UPDATED),
+				change("0b", ChangeType.DELETED)), "15", false));
+
+		reindexer(1, 100).run(false);
+
+		verify(contentDaoService).getContents(REPOSITORY_ID, new HashSet<>(Arrays.asList("new", "0a", "gone")));
+		verify(contentDaoService, never()).getContentFresh(anyString(), anyString());
+		assertTrue(calls.contains("index " + SHADOW + " [new, 0a]"));
+		// Deleted objects and objects that no longer exist are removed from the index
+		assertTrue(calls.contains("delete " + SHADOW + " [0b, gone]"));
+		assertEquals(5, status.getReplayedCount());
+	}
+
+	@Test
+	public void testSwapHappensAfterShadowReplay() throws Exception {
+		feeds.put("10", new ChangeFeed(Arrays.asList(change("1a", ChangeType.UPDATED)), "11", false));
+		// Arrives between the replay into the shadow core and the swap
+		feeds.put("11", new ChangeFeed(Arrays.asList(change("3c", ChangeType.UPDATED)), "12", false));
+
+		reindexer(1, 100).run(false);
+
+		int shadowReplay = calls.indexOf("index " + SHADOW + " [1a]");
+		int shadowCommit = calls.indexOf("commit " + SHADOW);
+		int swap = calls.indexOf("swap");
+		int liveReplay = calls.indexOf("index " + LIVE + " [3c]");
+		int liveCommit = calls.indexOf("commit " + LIVE);
+		assertTrue(shadowReplay >= 0 && shadowReplay < shadowCommit);
+		assertTrue(shadowCommit < swap);
+		assertTrue(swap < liveReplay && liveReplay < liveCommit);
+		// The previous index, now in the shadow core, is unloaded
+		assertTrue(liveCommit < calls.indexOf("unload " + SHADOW));
+		assertNull(checkpoints.get(REPOSITORY_ID));
+	}
+
+	@Test
+	public void testResumeAfterSwapOnlyReplaysIntoLiveCore() throws Exception {
+		ReindexCheckpoint checkpoint = new ReindexCheckpoint();
+		checkpoint.setRunId("run-1");
+		checkpoint.setShadowCore(SHADOW);
+		checkpoint.setPhase(BlueGreenReindexer.PHASE_SWAPPED);
+		checkpoint.setChangeToken("11");
+		checkpoints.put(REPOSITORY_ID, checkpoint);
+		feeds.put("11", new ChangeFeed(Arrays.asList(change("3c", ChangeType.UPDATED)), "12", false));
+
+		reindexer(1, 100).run(true);
+
+		assertNull(indexed.get(SHADOW));
+		assertEquals(Arrays.asList("3c"), indexed.get(LIVE));
+		assertFalse(calls.contains("swap"));
+		assertNull(checkpoints.get(REPOSITORY_ID));
+	}
+
+	@Test
+	public void testFailedBatchIsRetried() throws Exception {
+		failures.put("a5", 1);
+
+		BlueGreenReindexer reindexer = reindexer(1, 2);
+		reindexer.run(false);
+
+		assertTrue(indexed.get(SHADOW).contains("a5"));
+		assertEquals(0, reindexer.getErrorCount());
+		assertTrue(calls.contains("swap"));
+	}
+
+	@Test
+	public void testFailedBatchKeepsLiveCoreAndCheckpoint() throws Exception {
+		failures.put("a5", 3);
+
+		try {
+			reindexer(1, 2).run(false);
+			fail("A batch that keeps failing must stop the run");
+		} catch (RuntimeException e) {
+			// expected
+		}
+
+		assertFalse(calls.contains("swap"));
+		assertEquals(2, status.getErrorCount());
+		// The partition stopped before the failed batch, which a resumed run indexes again
+		ReindexCheckpoint checkpoint = checkpoints.get(REPOSITORY_ID);
+		assertEquals("", checkpoint.getPartitions().get("a"));
+
+		reindexer(1, 2).run(true);
+		assertTrue(indexed.get(SHADOW).containsAll(Arrays.asList("a5", "a9")));
+		assertTrue(calls.contains("swap"));
+		assertNull(checkpoints.get(REPOSITORY_ID));
+	}
+
+	private BlueGreenReindexer reindexer(int workers, int pageSize) {
+		return new BlueGreenReindexer(contentDaoService, solrUtil, Arrays.asList(REPOSITORY_ID), SHADOW,
+				workers, pageSize, false, status, () -> false);
+	}
+
+	private SolrClient solrClient(String core) throws Exception {
+		SolrClient client = mock(SolrClient.class);
+		doAnswer(invocation -> {
+			calls.add("commit " + core);
+			return null;
+		}).when(client).commit();
+		doAnswer(invocation -> {
+			calls.add("delete " + core + " " + invocation.getArgument(0));
+			return null;
+		}).when(client).deleteById(any(List.class), anyInt());
+		return client;
+	}
+
+	/**
+	 * Answers core admin requests from the cores set, with every instance directory under /var/solr
+	 */
+	private SolrClient adminClient() throws Exception {
+		SolrClient admin = mock(SolrClient.class);
+		when(admin.request(any(SolrRequest.class), any())).thenAnswer(invocation -> {
+			SolrRequest<?> request = invocation.getArgument(0);
+			SolrParams params = request.getParams();
+			String action = params.get("action");
+			NamedList<Object> response = new NamedList<>();
+			switch (action) {
+			case "STATUS":
+				String core = params.get("core");
+				NamedList<Object> coreStatus = new NamedList<>();
+				if (cores.contains(core)) {
+					coreStatus.add("instanceDir", "/var/solr/" + core + "/");
+				}
+				NamedList<Object> statuses = new NamedList<>();
+				statuses.add(core, coreStatus);
+				response.add("status", statuses);
+				break;
+			case "CREATE":
+				cores.add(params.get("name"));
+				calls.add("create " + params.get("name") + " " + params.get("instanceDir"));
+				break;
+			case "UNLOAD":
+				cores.remove(params.get("core"));
+				calls.add("unload " + params.get("core"));
+				break;
+			case "SWAP":
+				calls.add("swap");
+				break;
+			default:
+				throw new IllegalArgumentException(action);
+			}
+			return response;
+		});
+		return admin;
+	}
+
+	private void record(String core, List<Content> contents) {
+		List<String> ids = new ArrayList<>();
+		for (Content content : contents) {
+			ids.add(content.getId());
+		}
+		calls.add("index " + core + " " + ids);
+	}
+
+	private static String core(String coreName) {
+		return coreName == null ? LIVE : coreName;
+	}
+
+	private static Content content(String id) {
+		Content content = new Content();
+		content.setId(id);
+		return content;
+	}
+
+	private static Change change(String objectId, ChangeType changeType) {
+		Change change = new Change();
+		change.setObjectId(objectId);
+		change.setChangeType(changeType);
+		return change;
+	}
+}
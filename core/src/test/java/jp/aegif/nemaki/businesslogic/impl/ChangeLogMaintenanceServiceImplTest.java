@@ -0,0 +1,139 @@
+package jp.aegif.nemaki.businesslogic.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.chemistry.opencmis.commons.enums.ChangeType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jp.aegif.nemaki.businesslogic.ChangeLogMaintenanceService.CompactionResult;
+import jp.aegif.nemaki.dao.ContentDaoService;
+import jp.aegif.nemaki.model.Change;
+import jp.aegif.nemaki.model.ChangeFeed;
+import jp.aegif.nemaki.util.PropertyManager;
+import jp.aegif.nemaki.util.constant.PropertyKey;
+
+public class ChangeLogMaintenanceServiceImplTest {
+
+	private static final String REPOSITORY_ID = "bedroom";
+	private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+	private ContentDaoService contentDaoService;
+	private PropertyManager propertyManager;
+	private ChangeLogMaintenanceServiceImpl service;
+	private final List<String> pruned = Collections.synchronizedList(new ArrayList<String>());
+
+	@Before
+	public void setUp() {
+		contentDaoService = mock(ContentDaoService.class);
+		propertyManager = mock(PropertyManager.class);
+		when(propertyManager.readValue(PropertyKey.CHANGELOG_COMPACTION_ARCHIVE)).thenReturn("false");
+		when(contentDaoService.pruneChangeEvents(eq(REPOSITORY_ID), any(), anyBoolean())).thenAnswer(invocation -> {
+			List<Change> changes = invocation.getArgument(1);
+			for (Change change : changes) {
+				pruned.add(change.getId());
+			}
+			return changes.size();
+		});
+
+		service = new ChangeLogMaintenanceServiceImpl();
+		service.setContentDaoService(contentDaoService);
+		service.setPropertyManager(propertyManager);
+	}
+
+	@After
+	public void tearDown() {
+		service.destroy();
+	}
+
+	@Test
+	public void testExpiredAndSupersededEventsArePruned() {
+		when(propertyManager.readValue(PropertyKey.CHANGELOG_RETENTION_DAYS)).thenReturn("30");
+		when(contentDaoService.getChangeFeed(eq(REPOSITORY_ID), isNull(), anyInt(), anyLong())).thenReturn(new ChangeFeed(
+				Arrays.asList(
+						event("a-created", "a", ChangeType.CREATED, 100),
+						event("a-updated-1", "a", ChangeType.UPDATED, 2),
+						event("b-updated", "b", ChangeType.UPDATED, 2),
+						event("a-updated-2", "a", ChangeType.UPDATED, 1),
+						event("b-deleted", "b", ChangeType.DELETED, 1)),
+				"5-e", false));
+
+		CompactionResult result = service.compact(REPOSITORY_ID);
+
+		assertEquals("completed", result.getStatus());
+		assertEquals(5, result.getScannedCount());
+		assertEquals(1, result.getExpiredCount());
+		assertEquals(2, result.getCollapsedCount());
+		assertEquals(3, result.getDeletedCount());
+		assertEquals(Arrays.asList("a-created", "a-updated-1", "b-updated"), pruned);
+	}
+
+	@Test
+	public void testEventsBeyondTheCapPerObjectAreTrimmed() {
+		when(propertyManager.readValue(PropertyKey.CHANGELOG_COMPACTION_COLLAPSE_UPDATES)).thenReturn("false");
+		when(propertyManager.readValue(PropertyKey.CHANGELOG_RETENTION_MAX_EVENTS_PER_OBJECT)).thenReturn("2");
+		when(contentDaoService.getChangeFeed(eq(REPOSITORY_ID), isNull(), anyInt(), anyLong())).thenReturn(new ChangeFeed(
+				Arrays.asList(
+						event("a-1", "a", ChangeType.CREATED, 3),
+						event("a-2", "a", ChangeType.UPDATED, 2),
+						event("a-3", "a", ChangeType.SECURITY, 1)),
+				"3-c", false));
+
+		CompactionResult result = service.compact(REPOSITORY_ID);
+
+		assertEquals(1, result.getTrimmedCount());
+		assertEquals(Arrays.asList("a-1"), pruned);
+	}
+
+	@Test
+	public void testStartCompactionRunsInTheBackground() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		when(contentDaoService.getChangeFeed(eq(REPOSITORY_ID), isNull(), anyInt(), anyLong())).thenAnswer(invocation -> {
+			assertTrue(release.await(10, TimeUnit.SECONDS));
+			return new ChangeFeed(Collections.<Change> emptyList(), "0", false);
+		});
+
+		CompactionResult started = service.startCompaction(REPOSITORY_ID);
+		assertEquals("running", started.getStatus());
+		// A second request while running reports the same run
+		assertSame(started, service.startCompaction(REPOSITORY_ID));
+		assertSame(started, service.getMetrics(REPOSITORY_ID).getLastCompaction());
+
+		release.countDown();
+		long deadline = System.currentTimeMillis() + 10000;
+		while ("running".equals(started.getStatus()) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals("completed", started.getStatus());
+	}
+
+	private static Change event(String id, String objectId, ChangeType changeType, int daysAgo) {
+		Change change = new Change();
+		change.setId(id);
+		change.setObjectId(objectId);
+		change.setChangeType(changeType);
+		GregorianCalendar time = new GregorianCalendar();
+		time.setTimeInMillis(System.currentTimeMillis() - daysAgo * DAY_MILLIS);
+		change.setTime(time);
+		return change;
+	}
+}
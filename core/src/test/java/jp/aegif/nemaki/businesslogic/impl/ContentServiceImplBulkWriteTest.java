@@ -0,0 +1,101 @@
+package jp.aegif.nemaki.businesslogic.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.chemistry.opencmis.commons.enums.ChangeType;
+import org.apache.chemistry.opencmis.commons.server.CallContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import jp.aegif.nemaki.dao.ContentDaoService;
+import jp.aegif.nemaki.model.BulkWriteResult;
+import jp.aegif.nemaki.model.Change;
+import jp.aegif.nemaki.model.Document;
+import jp.aegif.nemaki.model.NodeBase;
+
+public class ContentServiceImplBulkWriteTest {
+
+	private static final String REPOSITORY_ID = "bedroom";
+
+	private CallContext callContext;
+	private ContentServiceImpl service;
+
+	/** Error of each document name the write fails for */
+	private final Map<String, String> errors = new HashMap<String, String>();
+	/** Object IDs of the change events written */
+	private final List<String> changed = new ArrayList<String>();
+
+	@Before
+	public void setUp() {
+		ContentDaoService contentDaoService = mock(ContentDaoService.class);
+		when(contentDaoService.bulkWrite(eq(REPOSITORY_ID), any())).thenAnswer(invocation -> {
+			List<BulkWriteResult> results = new ArrayList<BulkWriteResult>();
+			for (NodeBase node : invocation.<List<NodeBase>> getArgument(1)) {
+				if (node instanceof Change) {
+					changed.add(((Change) node).getObjectId());
+					results.add(new BulkWriteResult(node, node.getId(), "1-change", null, null));
+				} else {
+					String error = errors.get(((Document) node).getName());
+					results.add(new BulkWriteResult(node, node.getId(), error == null ? "1-doc" : null, error, error));
+				}
+			}
+			return results;
+		});
+		callContext = mock(CallContext.class);
+		when(callContext.getUsername()).thenReturn("admin");
+
+		service = new ContentServiceImpl();
+		service.setContentDaoService(contentDaoService);
+	}
+
+	@Test
+	public void testOnlySavedContentsGetChangeEvents() {
+		errors.put("forbidden", "forbidden");
+		errors.put("conflicted", BulkWriteResult.ERROR_CONFLICT);
+		Document saved = document("saved", null);
+		Document updated = document("updated", "1-abc");
+		List<Document> documents = Arrays.asList(saved, document("forbidden", null), updated,
+				document("conflicted", "1-abc"));
+
+		List<BulkWriteResult> results = service.bulkWrite(callContext, REPOSITORY_ID, documents, ChangeType.CREATED);
+
+		assertEquals(4, results.size());
+		assertTrue(results.get(0).isOk());
+		assertEquals("forbidden", results.get(1).getError());
+		assertTrue(results.get(3).isConflict());
+		// New documents got their ids before the write
+		assertNotNull(documents.get(1).getId());
+		assertEquals(Arrays.asList(saved.getId(), updated.getId()), changed);
+	}
+
+	@Test
+	public void testNoChangeEventsWithoutChangeType() {
+		List<BulkWriteResult> results = service.bulkWrite(callContext, REPOSITORY_ID,
+				Arrays.asList(document("saved", null)), null);
+
+		assertTrue(results.get(0).isOk());
+		assertTrue(changed.isEmpty());
+	}
+
+	private static Document document(String name, String revision) {
+		Document document = new Document();
+		document.setName(name);
+		document.setRevision(revision);
+		if (revision != null) {
+			document.setId(name);
+		}
+		return document;
+	}
+}
@@ -0,0 +1,316 @@
+package jp.aegif.nemaki.businesslogic.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.chemistry.opencmis.commons.server.CallContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import jp.aegif.nemaki.businesslogic.ContentService;
+import jp.aegif.nemaki.cmis.aspect.query.solr.SolrUtil;
+import jp.aegif.nemaki.dao.ContentDaoService;
+import jp.aegif.nemaki.model.Archive;
+import jp.aegif.nemaki.model.BulkWriteResult;
+import jp.aegif.nemaki.model.Change;
+import jp.aegif.nemaki.model.Content;
+import jp.aegif.nemaki.model.Document;
+import jp.aegif.nemaki.model.Folder;
+import jp.aegif.nemaki.model.NodeBase;
+import jp.aegif.nemaki.model.Relationship;
+import jp.aegif.nemaki.util.PropertyManager;
+import jp.aegif.nemaki.util.cache.NemakiCachePool;
+import jp.aegif.nemaki.util.constant.PropertyKey;
+
+/**
+ * deleteTree on the tree root/{d1, f1/{d2}}, one object per batch.
+ */
+public class ContentServiceImplDeleteTreeTest {
+
+	private static final String REPOSITORY_ID = "bedroom";
+
+	private ContentDaoService contentDaoService;
+	private PropertyManager propertyManager;
+	private CallContext callContext;
+	private ContentServiceImpl service;
+
+	/** IDs passed to each deleteNodesBulk call, in call order */
+	private final List<List<String>> deletions = Collections.synchronizedList(new ArrayList<List<String>>());
+	/** IDs deleteNodesBulk reports as not deleted */
+	private final Set<String> failingNodes = new HashSet<String>();
+	/** IDs whose deleteNodesBulk call throws */
+	private final Set<String> throwingNodes = new HashSet<String>();
+	/** IDs whose archive is not written */
+	private final Set<String> failingArchives = new HashSet<String>();
+	/** Original IDs of the archives written */
+	private final List<String> archived = Collections.synchronizedList(new ArrayList<String>());
+	/** Original IDs of the archives deleted again */
+	private final List<String> unarchived = Collections.synchronizedList(new ArrayList<String>());
+	/** Object IDs of the change events written */
+	private final List<String> changed = Collections.synchronizedList(new ArrayList<String>());
+	/** Relationships by the object they point at */
+	private final Map<String, Relationship> relationships = new HashMap<String, Relationship>();
+
+	@Before
+	public void setUp() {
+		contentDaoService = mock(ContentDaoService.class);
+		Folder root = folder("root", null);
+		Folder f1 = folder("f1", "root");
+		when(contentDaoService.getFolder(REPOSITORY_ID, "root")).thenReturn(root);
+		Map<String, List<Content>> children = new LinkedHashMap<String, List<Content>>();
+		children.put("root", Arrays.<Content> asList(document("d1", "root"), f1));
+		children.put("f1", Arrays.<Content> asList(document("d2", "f1")));
+		when(contentDaoService.getChildrenOfParents(eq(REPOSITORY_ID), anyCollection())).thenAnswer(invocation -> {
+			Map<String, List<Content>> result = new LinkedHashMap<String, List<Content>>();
+			for (String parentId : invocation.<Collection<String>> getArgument(1)) {
+				if (children.containsKey(parentId)) {
+					result.put(parentId, children.get(parentId));
+				}
+			}
+			return result;
+		});
+		when(contentDaoService.getRelationshipIds(eq(REPOSITORY_ID), anyCollection())).thenAnswer(invocation -> {
+			Set<String> ids = new HashSet<String>();
+			for (String id : invocation.<Collection<String>> getArgument(1)) {
+				if (relationships.containsKey(id)) {
+					ids.add(relationships.get(id).getId());
+				}
+			}
+			return ids;
+		});
+		when(contentDaoService.getContents(eq(REPOSITORY_ID), anyCollection())).thenAnswer(invocation -> {
+			List<Content> result = new ArrayList<Content>();
+			for (Relationship relationship : relationships.values()) {
+				if (invocation.<Collection<String>> getArgument(1).contains(relationship.getId())) {
+					result.add(relationship);
+				}
+			}
+			return result;
+		});
+		when(contentDaoService.bulkWrite(eq(REPOSITORY_ID), any())).thenAnswer(invocation -> {
+			for (NodeBase node : invocation.<List<NodeBase>> getArgument(1)) {
+				changed.add(((Change) node).getObjectId());
+			}
+			return Collections.<BulkWriteResult> emptyList();
+		});
+		when(contentDaoService.deleteArchivesBulk(eq(REPOSITORY_ID), any())).thenAnswer(invocation -> {
+			for (Archive archive : invocation.<List<Archive>> getArgument(1)) {
+				unarchived.add(archive.getOriginalId());
+			}
+			return invocation.<List<Archive>> getArgument(1).size();
+		});
+		when(contentDaoService.deleteNodesBulk(eq(REPOSITORY_ID), anyCollection())).thenAnswer(invocation -> {
+			List<String> ids = new ArrayList<String>(invocation.<Collection<String>> getArgument(1));
+			for (String id : ids) {
+				if (throwingNodes.contains(id)) {
+					throw new IllegalStateException("unreachable");
+				}
+			}
+			deletions.add(ids);
+			List<String> failed = new ArrayList<String>(ids);
+			failed.retainAll(failingNodes);
+			return failed;
+		});
+		when(contentDaoService.createArchivesBulk(eq(REPOSITORY_ID), any())).thenAnswer(invocation -> {
+			List<String> failed = new ArrayList<String>();
+			for (Archive archive : invocation.<List<Archive>> getArgument(1)) {
+				if (failingArchives.contains(archive.getOriginalId())) {
+					failed.add(archive.getOriginalId());
+				} else {
+					archive.setId("archive-" + archive.getOriginalId());
+					archived.add(archive.getOriginalId());
+				}
+			}
+			return failed;
+		});
+
+		propertyManager = mock(PropertyManager.class);
+		when(propertyManager.readValue(PropertyKey.DELETION_TREE_BATCH_SIZE)).thenReturn("1");
+		when(propertyManager.readValue(PropertyKey.DELETION_TREE_PARALLELISM)).thenReturn("1");
+		callContext = mock(CallContext.class);
+		when(callContext.getUsername()).thenReturn("admin");
+
+		service = new ContentServiceImpl();
+		service.setContentDaoService(contentDaoService);
+		service.setPropertyManager(propertyManager);
+		service.setSolrUtil(mock(SolrUtil.class));
+		service.setNemakiCachePool(mock(NemakiCachePool.class, RETURNS_DEEP_STUBS));
+	}
+
+	@Test
+	public void testLeavesAreDeletedBeforeTheirFolders() {
+		assertTrue(deleteTree(true, null).isEmpty());
+
+		List<String> order = deleted();
+		assertEquals(4, order.size());
+		assertEquals(new HashSet<String>(Arrays.asList("d1", "d2")), new HashSet<String>(order.subList(0, 2)));
+		assertEquals(Arrays.asList("f1", "root"), order.subList(2, 4));
+	}
+
+	@Test
+	public void testAncestorsOfAFailedObjectAreKept() {
+		failingNodes.add("d2");
+
+		assertEquals(Arrays.asList("d2", "f1", "root"), deleteTree(true, null));
+
+		// Neither folder is even tried
+		assertEquals(Arrays.asList("d1", "d2"), sorted(deleted()));
+	}
+
+	@Test
+	public void testFailureAbortsWithoutContinueOnFailure() {
+		failingNodes.add("d1");
+
+		List<String> failed = deleteTree(false, null);
+
+		// f1 holds nothing that failed, but is not deleted after the abort either
+		assertTrue(failed.containsAll(Arrays.asList("d1", "f1", "root")));
+		assertFalse(deleted().contains("f1"));
+		assertFalse(deleted().contains("root"));
+	}
+
+	@Test
+	public void testObjectWithoutArchiveIsNotDeleted() {
+		when(propertyManager.readBoolean(PropertyKey.ARCHIVE_CREATE_ENABLED)).thenReturn(true);
+		failingArchives.add("d1");
+
+		assertEquals(Arrays.asList("d1", "root"), deleteTree(true, null));
+
+		assertEquals(Arrays.asList("d2", "f1"), sorted(deleted()));
+	}
+
+	@Test
+	public void testOnlyDeletedObjectsKeepArchivesAndChangeEvents() {
+		when(propertyManager.readBoolean(PropertyKey.ARCHIVE_CREATE_ENABLED)).thenReturn(true);
+		failingNodes.add("d2");
+
+		assertEquals(Arrays.asList("d2", "f1", "root"), deleteTree(true, null));
+
+		assertEquals(Arrays.asList("d1", "d2"), sorted(archived));
+		assertEquals(Arrays.asList("d2"), unarchived);
+		assertEquals(Arrays.asList("d1"), changed);
+	}
+
+	@Test
+	public void testRelationshipsAreArchivedAndLogged() {
+		when(propertyManager.readBoolean(PropertyKey.ARCHIVE_CREATE_ENABLED)).thenReturn(true);
+		relationships.put("d1", relationship("r1", "d1"));
+		relationships.put("d2", relationship("r2", "d2"));
+		failingArchives.add("r2");
+
+		assertTrue(deleteTree(true, null).isEmpty());
+
+		// Deleted in the batch of the object they point at
+		assertTrue(deletions.contains(Arrays.asList("d1", "r1")));
+		assertTrue(deletions.contains(Arrays.asList("d2")));
+		assertTrue(archived.contains("r1"));
+		assertTrue(changed.contains("r1"));
+		// Without its archive a relationship is left in place
+		assertFalse(changed.contains("r2"));
+	}
+
+	@Test
+	public void testErrorFailsOnlyItsOwnBatch() {
+		throwingNodes.add("d2");
+
+		assertEquals(Arrays.asList("d2", "f1", "root"), deleteTree(true, null));
+
+		// d1 was in the same level, but in another batch
+		assertEquals(Arrays.asList("d1"), deleted());
+	}
+
+	@Test
+	public void testCancelledDeletionKeepsTheFolders() {
+		AtomicInteger total = new AtomicInteger();
+		AtomicBoolean cancelled = new AtomicBoolean();
+		ContentService.DeleteTreeProgress progress = new ContentService.DeleteTreeProgress() {
+			@Override
+			public void started(int count) {
+				total.set(count);
+			}
+
+			@Override
+			public void deleted(int count) {
+				cancelled.set(true);
+			}
+
+			@Override
+			public boolean isCancelled() {
+				return cancelled.get();
+			}
+		};
+
+		// Cancelled objects are left for a later run, not reported as failed
+		assertTrue(deleteTree(true, progress).isEmpty());
+
+		assertEquals(4, total.get());
+		assertEquals(1, deleted().size());
+		assertFalse(deleted().contains("f1"));
+		assertFalse(deleted().contains("root"));
+	}
+
+	private List<String> deleteTree(boolean continueOnFailure, ContentService.DeleteTreeProgress progress) {
+		return service.deleteTree(callContext, REPOSITORY_ID, "root", true, continueOnFailure, false, null,
+				progress);
+	}
+
+	private List<String> deleted() {
+		List<String> ids = new ArrayList<String>();
+		synchronized (deletions) {
+			for (List<String> batch : deletions) {
+				ids.addAll(batch);
+			}
+		}
+		return ids;
+	}
+
+	private static List<String> sorted(List<String> ids) {
+		List<String> sorted = new ArrayList<String>(ids);
+		Collections.sort(sorted);
+		return sorted;
+	}
+
+	private static Folder folder(String id, String parentId) {
+		Folder folder = new Folder();
+		folder.setId(id);
+		folder.setName(id);
+		folder.setParentId(parentId);
+		return folder;
+	}
+
+	private static Relationship relationship(String id, String sourceId) {
+		Relationship relationship = new Relationship();
+		relationship.setId(id);
+		relationship.setSourceId(sourceId);
+		relationship.setTargetId("outside");
+		return relationship;
+	}
+
+	private static Document document(String id, String parentId) {
+		Document document = new Document();
+		document.setId(id);
+		document.setName(id);
+		document.setParentId(parentId);
+		return document;
+	}
+}
@@ -0,0 +1,309 @@
+package jp.aegif.nemaki.businesslogic.impl;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jp.aegif.nemaki.businesslogic.job.JobContext;
+import jp.aegif.nemaki.businesslogic.job.JobHandler;
+import jp.aegif.nemaki.cmis.factory.info.RepositoryInfoMap;
+import jp.aegif.nemaki.dao.ContentDaoService;
+import jp.aegif.nemaki.model.Job;
+import jp.aegif.nemaki.util.PropertyManager;
+import jp.aegif.nemaki.util.constant.PropertyKey;
+
+public class JobServiceImplTest {
+
+	private static final String REPO = "bedroom";
+
+	private Map<String, Job> store;
+	private ContentDaoService dao;
+	private JobServiceImpl jobService;
+	private TestHandler handler;
+
+	/**
+	 * Processes "items" items, checkpointing after each; fails once at "failAt"
+	 */
+	private static class TestHandler implements JobHandler {
+		private final CountDownLatch started = new CountDownLatch(1);
+		private final CountDownLatch proceed = new CountDownLatch(1);
+		private volatile boolean block;
+		private volatile int failAt = -1;
+
+		@Override
+		public String getType() {
+			return "test";
+		}
+
+		@Override
+		public void run(JobContext context) throws Exception {
+			started.countDown();
+			if (block) {
+				proceed.await(10, TimeUnit.SECONDS);
+			}
+			int items = Integer.parseInt(context.getParameter("items"));
+			context.setTotal(items);
+			int from = context.getCheckpoint() == null ? 0 : Integer.parseInt(context.getCheckpoint());
+			for (int i = from; i < items; i++) {
+				if (context.isCancelled()) {
+					return;
+				}
+				if (i == failAt) {
+					failAt = -1;
+					throw new IllegalStateException("boom at " + i);
+				}
+				context.addProcessed(1);
+				context.setCheckpoint(String.valueOf(i + 1));
+			}
+		}
+	}
+
+	@Before
+	public void setUp() {
+		store = new ConcurrentHashMap<String, Job>();
+		dao = dao();
+		handler = new TestHandler();
+		jobService = newJobService(handler);
+	}
+
+	@After
+	public void tearDown() {
+		jobService.destroy();
+	}
+
+	@Test
+	public void testRunsToCompletion() throws Exception {
+		Job job = jobService.submit(REPO, "test", "alice", Collections.singletonMap("items", "5"));
+		assertEquals(Job.STATUS_QUEUED, job.getStatus());
+
+		Job done = awaitFinished(job.getId());
+		assertEquals(Job.STATUS_COMPLETED, done.getStatus());
+		assertEquals(5, done.getTotal());
+		assertEquals(5, done.getProcessed());
+		assertEquals("5", done.getCheckpoint());
+		assertEquals("alice", done.getCreator());
+		assertTrue(done.getFinished() >= done.getStarted());
+	}
+
+	@Test
+	public void testCancelRunningJob() throws Exception {
+		handler.block = true;
+		Job job = jobService.submit(REPO, "test", "alice", Collections.singletonMap("items", "5"));
+		assertTrue(handler.started.await(10, TimeUnit.SECONDS));
+
+		jobService.cancel(REPO, job.getId());
+		handler.proceed.countDown();
+
+		Job done = awaitFinished(job.getId());
+		assertEquals(Job.STATUS_CANCELLED, done.getStatus());
+		assertEquals(0, done.getProcessed());
+		assertTrue(done.isCancelRequested());
+	}
+
+	@Test
+	public void testCancelFromAnotherNode() throws Exception {
+		handler.block = true;
+		Job job = jobService.submit(REPO, "test", "alice", Collections.singletonMap("items", "5"));
+		assertTrue(handler.started.await(10, TimeUnit.SECONDS));
+
+		// Another node only writes the job document
+		JobServiceImpl other = newJobService("other-node", new TestHandler());
+		other.cancel(REPO, job.getId());
+		handler.proceed.countDown();
+
+		Job done = awaitFinished(job.getId());
+		assertEquals(Job.STATUS_CANCELLED, done.getStatus());
+		assertTrue(done.getProcessed() < 5);
+		other.destroy();
+	}
+
+	@Test
+	public void testResumeFromCheckpoint() throws Exception {
+		handler.failAt = 3;
+		Job job = jobService.submit(REPO, "test", "alice", Collections.singletonMap("items", "5"));
+
+		Job failed = awaitFinished(job.getId());
+		assertEquals(Job.STATUS_FAILED, failed.getStatus());
+		assertEquals("boom at 3", failed.getMessage());
+		assertEquals("3", failed.getCheckpoint());
+
+		jobService.resume(REPO, job.getId());
+		Job done = awaitFinished(job.getId());
+		assertEquals(Job.STATUS_COMPLETED, done.getStatus());
+		assertEquals(5, done.getProcessed());
+		assertNull(done.getMessage());
+
+		try {
+			jobService.resume(REPO, job.getId());
+			fail("A completed job cannot be resumed");
+		} catch (IllegalStateException expected) {
+		}
+	}
+
+	@Test
+	public void testInterruptedJobIsResumedOnStartup() throws Exception {
+		Job job = new Job();
+		job.setRepositoryId(REPO);
+		job.setType("test");
+		job.setStatus(Job.STATUS_RUNNING);
+		job.setNode("test-node");
+		job.setCheckpoint("2");
+		job.setProcessed(2);
+		job.getParameters().put("items", "4");
+		dao.saveJob(REPO, job);
+
+		JobServiceImpl restarted = newJobService("test-node", new TestHandler(), true);
+		Job done = awaitFinished(job.getId());
+		assertEquals(Job.STATUS_COMPLETED, done.getStatus());
+		assertEquals(4, done.getProcessed());
+		restarted.destroy();
+	}
+
+	@Test
+	public void testInterruptedJobWaitsByDefault() throws Exception {
+		Job job = new Job();
+		job.setRepositoryId(REPO);
+		job.setType("test");
+		job.setStatus(Job.STATUS_RUNNING);
+		job.setNode("test-node");
+		job.getParameters().put("items", "4");
+		dao.saveJob(REPO, job);
+
+		JobServiceImpl restarted = newJobService(new TestHandler());
+		assertEquals(Job.STATUS_INTERRUPTED, dao.getJob(REPO, job.getId()).getStatus());
+
+		restarted.resume(REPO, job.getId());
+		assertEquals(Job.STATUS_COMPLETED, awaitFinished(job.getId()).getStatus());
+		restarted.destroy();
+	}
+
+	@Test
+	public void testListNewestFirst() throws Exception {
+		Job first = jobService.submit(REPO, "test", "alice", Collections.singletonMap("items", "1"));
+		awaitFinished(first.getId());
+		Thread.sleep(5);
+		Job second = jobService.submit(REPO, "test", "bob", Collections.singletonMap("items", "1"));
+		awaitFinished(second.getId());
+
+		List<Job> jobs = jobService.getJobs(REPO);
+		assertEquals(Arrays.asList(second.getId(), first.getId()),
+				Arrays.asList(jobs.get(0).getId(), jobs.get(1).getId()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownType() {
+		jobService.submit(REPO, "unknown", "alice", null);
+	}
+
+	private Job awaitFinished(String jobId) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (System.currentTimeMillis() < deadline) {
+			Job job = dao.getJob(REPO, jobId);
+			if (job.isFinished() && !Job.STATUS_INTERRUPTED.equals(job.getStatus())) {
+				return job;
+			}
+			Thread.sleep(10);
+		}
+		fail("Job " + jobId + " did not finish");
+		return null;
+	}
+
+	private JobServiceImpl newJobService(JobHandler handler) {
+		return newJobService("test-node", handler);
+	}
+
+	private JobServiceImpl newJobService(String node, JobHandler handler) {
+		return newJobService(node, handler, false);
+	}
+
+	private JobServiceImpl newJobService(String node, JobHandler handler, boolean resumeOnStartup) {
+		PropertyManager propertyManager = mock(PropertyManager.class);
+		when(propertyManager.readValue(PropertyKey.JOB_NODE_NAME)).thenReturn(node);
+		when(propertyManager.readValue(PropertyKey.JOB_RESUME_ON_STARTUP)).thenReturn(String.valueOf(resumeOnStartup));
+		RepositoryInfoMap repositoryInfoMap = mock(RepositoryInfoMap.class);
+		when(repositoryInfoMap.keys()).thenReturn(Collections.singleton(REPO));
+
+		JobServiceImpl service = new JobServiceImpl();
+		service.setContentDaoService(dao);
+		service.setPropertyManager(propertyManager);
+		service.setRepositoryInfoMap(repositoryInfoMap);
+		service.setHandlers(Collections.singletonList(handler));
+		service.init();
+		return service;
+	}
+
+	/**
+	 * Job documents kept in memory, with revision checks like CouchDB
+	 */
+	private ContentDaoService dao() {
+		ContentDaoService dao = mock(ContentDaoService.class);
+		when(dao.getJob(eq(REPO), anyString())).thenAnswer(invocation -> {
+			Job stored = store.get(invocation.<String> getArgument(1));
+			return stored == null ? null : copy(stored);
+		});
+		when(dao.getJobs(eq(REPO), anyInt())).thenAnswer(invocation -> {
+			List<Job> jobs = new ArrayList<Job>();
+			for (Job job : store.values()) {
+				jobs.add(copy(job));
+			}
+			return jobs;
+		});
+		when(dao.saveJob(eq(REPO), any(Job.class))).thenAnswer(invocation -> save(invocation.getArgument(1)));
+		return dao;
+	}
+
+	private synchronized boolean save(Job job) {
+		String id = job.getId() != null ? job.getId() : "job:" + UUID.randomUUID();
+		Job current = store.get(id);
+		String currentRevision = current == null ? null : current.getRevision();
+		if (currentRevision != null && !currentRevision.equals(job.getRevision())) {
+			return false;
+		}
+		job.setId(id);
+		job.setRevision(UUID.randomUUID().toString());
+		store.put(id, copy(job));
+		return true;
+	}
+
+	private static Job copy(Job job) {
+		Job copy = new Job();
+		copy.setId(job.getId());
+		copy.setRevision(job.getRevision());
+		copy.setRepositoryId(job.getRepositoryId());
+		copy.setType(job.getType());
+		copy.setStatus(job.getStatus());
+		copy.setCreator(job.getCreator());
+		copy.setNode(job.getNode());
+		copy.setParameters(new HashMap<String, String>(job.getParameters()));
+		copy.setCheckpoint(job.getCheckpoint());
+		copy.setTotal(job.getTotal());
+		copy.setProcessed(job.getProcessed());
+		copy.setFailed(job.getFailed());
+		copy.setErrors(new ArrayList<String>(job.getErrors()));
+		copy.setMessage(job.getMessage());
+		copy.setCancelRequested(job.isCancelRequested());
+		copy.setCreated(job.getCreated());
+		copy.setStarted(job.getStarted());
+		copy.setFinished(job.getFinished());
+		return copy;
+	}
+}
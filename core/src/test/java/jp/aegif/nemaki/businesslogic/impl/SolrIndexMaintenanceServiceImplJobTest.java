@@ -0,0 +1,181 @@
+package jp.aegif.nemaki.businesslogic.impl;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import jp.aegif.nemaki.businesslogic.ContentService;
+import jp.aegif.nemaki.businesslogic.JobService;
+import jp.aegif.nemaki.businesslogic.SolrIndexMaintenanceService.ReindexStatus;
+import jp.aegif.nemaki.businesslogic.job.JobContext;
+import jp.aegif.nemaki.businesslogic.job.JobHandler;
+import jp.aegif.nemaki.cmis.aspect.query.solr.SolrUtil;
+import jp.aegif.nemaki.cmis.factory.info.RepositoryInfo;
+import jp.aegif.nemaki.cmis.factory.info.RepositoryInfoMap;
+import jp.aegif.nemaki.dao.ContentDaoService;
+import jp.aegif.nemaki.model.Content;
+import jp.aegif.nemaki.model.Document;
+import jp.aegif.nemaki.model.Folder;
+import jp.aegif.nemaki.model.Job;
+
+/**
+ * Reindexes run as jobs when there is a job service: status and cancellation
+ * come from the job documents.
+ */
+public class SolrIndexMaintenanceServiceImplJobTest {
+
+    private static final String REPO = "bedroom";
+    private static final String OTHER_REPO = "canopy";
+
+    private JobService jobService;
+    private ContentService contentService;
+    private SolrIndexMaintenanceServiceImpl service;
+    private JobHandler handler;
+
+    /** Jobs by repository, newest first */
+    private final Map<String, List<Job>> jobs = new HashMap<>();
+
+    @Before
+    public void setUp() {
+        jobService = mock(JobService.class);
+        when(jobService.getJobs(anyString())).thenAnswer(invocation ->
+                jobs.getOrDefault(invocation.getArgument(0), Collections.emptyList()));
+        when(jobService.submit(anyString(), eq(SolrIndexMaintenanceServiceImpl.REINDEX_JOB_TYPE), eq("system"), any()))
+                .thenAnswer(invocation -> addJob(invocation.getArgument(0), Job.STATUS_QUEUED,
+                        invocation.getArgument(3)));
+
+        RepositoryInfoMap repositoryInfoMap = mock(RepositoryInfoMap.class);
+        when(repositoryInfoMap.keys()).thenReturn(new LinkedHashSet<>(Arrays.asList(REPO, OTHER_REPO)));
+        RepositoryInfo repositoryInfo = mock(RepositoryInfo.class);
+        when(repositoryInfo.getRootFolderId()).thenReturn("root");
+        when(repositoryInfoMap.get(REPO)).thenReturn(repositoryInfo);
+        contentService = mock(ContentService.class);
+
+        service = new SolrIndexMaintenanceServiceImpl();
+        service.setJobService(jobService);
+        service.setRepositoryInfoMap(repositoryInfoMap);
+        service.setContentService(contentService);
+        service.setSolrUtil(mock(SolrUtil.class));
+        service.setContentDaoService(mock(ContentDaoService.class));
+        service.init();
+
+        ArgumentCaptor<JobHandler> captor = ArgumentCaptor.forClass(JobHandler.class);
+        verify(jobService).registerHandler(captor.capture());
+        handler = captor.getValue();
+    }
+
+    @Test
+    public void testStartQueuesAJob() {
+        assertTrue(service.startFolderReindex(REPO, "folder", true));
+
+        Job job = jobs.get(REPO).get(0);
+        assertEquals("folder", job.getParameters().get(SolrIndexMaintenanceServiceImpl.PARAM_FOLDER_ID));
+        assertEquals("running", service.getReindexStatus(REPO).getStatus());
+        assertEquals("idle", service.getReindexStatus(OTHER_REPO).getStatus());
+    }
+
+    @Test
+    public void testActiveJobBlocksAnotherReindex() {
+        assertTrue(service.startFullReindex(REPO));
+
+        assertFalse(service.startFullReindex(REPO));
+        // A blue/green rebuild covers every repository
+        assertFalse(service.startBlueGreenReindex(OTHER_REPO));
+        assertTrue(service.startFullReindex(OTHER_REPO));
+    }
+
+    @Test
+    public void testBlueGreenJobBlocksEveryRepository() {
+        addJob(OTHER_REPO, Job.STATUS_RUNNING, Collections.singletonMap(SolrIndexMaintenanceServiceImpl.PARAM_MODE,
+                SolrIndexMaintenanceServiceImpl.MODE_BLUEGREEN));
+
+        assertFalse(service.startFullReindex(REPO));
+        assertEquals("bluegreen", service.getReindexStatus(REPO).getMode());
+        verify(jobService, never()).submit(any(), any(), any(), any());
+    }
+
+    @Test
+    public void testStatusFollowsTheJob() {
+        Job job = addJob(REPO, Job.STATUS_FAILED, Collections.singletonMap(SolrIndexMaintenanceServiceImpl.PARAM_MODE,
+                SolrIndexMaintenanceServiceImpl.MODE_INPLACE));
+        job.setTotal(10);
+        job.setProcessed(7);
+        job.setFailed(1);
+        job.setMessage("Root folder not found");
+
+        ReindexStatus status = service.getReindexStatus(REPO);
+
+        assertEquals("error", status.getStatus());
+        assertEquals("Root folder not found", status.getErrorMessage());
+        assertEquals(10, status.getTotalDocuments());
+        assertEquals(7, status.getIndexedCount());
+        assertEquals(1, status.getErrorCount());
+        // A finished job does not block a new one
+        assertTrue(service.startFullReindex(REPO));
+    }
+
+    @Test
+    public void testCancelReachesTheJob() {
+        assertFalse(service.cancelReindex(REPO));
+        assertTrue(service.startFullReindex(REPO));
+        Job job = jobs.get(REPO).get(0);
+        when(jobService.cancel(REPO, job.getId())).thenReturn(job);
+
+        assertTrue(service.cancelReindex(REPO));
+        verify(jobService).cancel(REPO, job.getId());
+    }
+
+    @Test
+    public void testHandlerReportsProgressToTheJob() throws Exception {
+        Folder root = new Folder();
+        root.setId("root");
+        root.setName("root");
+        Document document = new Document();
+        document.setId("d1");
+        when(contentService.getFolder(REPO, "root")).thenReturn(root);
+        when(contentService.getChildren(REPO, "root")).thenReturn(new ArrayList<Content>(Arrays.asList(document)));
+        JobContext context = mock(JobContext.class);
+        when(context.getRepositoryId()).thenReturn(REPO);
+        when(context.getParameter(SolrIndexMaintenanceServiceImpl.PARAM_MODE))
+                .thenReturn(SolrIndexMaintenanceServiceImpl.MODE_INPLACE);
+
+        handler.run(context);
+
+        verify(context).setTotal(1);
+        verify(context).setMessage("root");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testHandlerFailsWithoutRootFolder() throws Exception {
+        JobContext context = mock(JobContext.class);
+        when(context.getRepositoryId()).thenReturn(REPO);
+        when(context.getParameter(SolrIndexMaintenanceServiceImpl.PARAM_MODE))
+                .thenReturn(SolrIndexMaintenanceServiceImpl.MODE_INPLACE);
+
+        handler.run(context);
+    }
+
+    private Job addJob(String repositoryId, String status, Map<String, String> parameters) {
+        Job job = new Job();
+        job.setId("job" + (jobs.values().stream().mapToInt(List::size).sum() + 1));
+        job.setRepositoryId(repositoryId);
+        job.setType(SolrIndexMaintenanceServiceImpl.REINDEX_JOB_TYPE);
+        job.setStatus(status);
+        job.setParameters(new HashMap<>(parameters));
+        job.setCreated(System.nanoTime());
+        jobs.computeIfAbsent(repositoryId, id -> new ArrayList<>()).add(0, job);
+        return job;
+    }
+}
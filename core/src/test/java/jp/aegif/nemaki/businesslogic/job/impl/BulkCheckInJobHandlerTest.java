@@ -0,0 +1,122 @@
+package jp.aegif.nemaki.businesslogic.job.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.chemistry.opencmis.commons.spi.Holder;
+import org.junit.Before;
+import org.junit.Test;
+
+import jp.aegif.nemaki.businesslogic.ContentService;
+import jp.aegif.nemaki.businesslogic.job.JobContext;
+import jp.aegif.nemaki.cmis.aspect.type.TypeManager;
+import jp.aegif.nemaki.cmis.service.VersioningService;
+import jp.aegif.nemaki.model.Document;
+import jp.aegif.nemaki.model.VersionSeries;
+
+public class BulkCheckInJobHandlerTest {
+
+	private static final String REPOSITORY_ID = "bedroom";
+
+	private ContentService contentService;
+	private VersioningService versioningService;
+	private JobContext context;
+	private BulkCheckInJobHandler handler;
+
+	/** IDs of the private working copies checked in, in call order */
+	private final List<String> checkedIn = new ArrayList<String>();
+
+	@Before
+	public void setUp() {
+		contentService = mock(ContentService.class);
+		for (String id : Arrays.asList("d1", "d2", "d3")) {
+			document(id, true);
+		}
+		versioningService = mock(VersioningService.class);
+		doAnswer(invocation -> {
+			Holder<String> objectId = invocation.getArgument(2);
+			if ("pwc-d2".equals(objectId.getValue())) {
+				throw new IllegalStateException("locked");
+			}
+			checkedIn.add(objectId.getValue());
+			return null;
+		}).when(versioningService).checkIn(any(), eq(REPOSITORY_ID), any(), any(), any(), any(), eq("bulk"), any(),
+				any(), any(), any());
+
+		context = mock(JobContext.class);
+		when(context.getRepositoryId()).thenReturn(REPOSITORY_ID);
+		when(context.getCreator()).thenReturn("alice");
+		when(context.getParameter(BulkCheckInJobHandler.PARAM_OBJECT_IDS))
+				.thenReturn(BulkCheckInJobHandler.toParameter(Arrays.asList("d1", "d2", "d3")));
+		when(context.getParameter(BulkCheckInJobHandler.PARAM_PROPERTY_IDS))
+				.thenReturn(BulkCheckInJobHandler.toParameter(Collections.<String> emptyList()));
+		when(context.getParameter(BulkCheckInJobHandler.PARAM_PROPERTY_VALUES))
+				.thenReturn(BulkCheckInJobHandler.toParameter(Collections.<String> emptyList()));
+		when(context.getParameter(BulkCheckInJobHandler.PARAM_COMMENT)).thenReturn("bulk");
+
+		handler = new BulkCheckInJobHandler();
+		handler.setContentService(contentService);
+		handler.setVersioningService(versioningService);
+		handler.setTypeManager(mock(TypeManager.class));
+	}
+
+	@Test
+	public void testFailureIsRecordedAndTheRestCheckedIn() throws Exception {
+		handler.run(context);
+
+		assertEquals(Arrays.asList("pwc-d1", "pwc-d3"), checkedIn);
+		verify(context).setTotal(3);
+		verify(context).addFailed("d2", "locked");
+		verify(context, times(2)).addProcessed(1);
+		verify(context).setCheckpoint("3");
+	}
+
+	@Test
+	public void testResumedRunSkipsWhatWasCheckedIn() throws Exception {
+		// d1 was done before the checkpoint; d2 was checked in after it was saved
+		when(context.getCheckpoint()).thenReturn("1");
+		document("d2", false);
+
+		handler.run(context);
+
+		assertEquals(Arrays.asList("pwc-d3"), checkedIn);
+		verify(context, never()).addFailed(any(String.class), any(String.class));
+		verify(context, times(2)).addProcessed(1);
+	}
+
+	@Test
+	public void testCancelledRunStops() throws Exception {
+		when(context.isCancelled()).thenReturn(true);
+
+		handler.run(context);
+
+		assertEquals(Collections.<String> emptyList(), checkedIn);
+		verify(context, never()).setCheckpoint(any());
+	}
+
+	private void document(String id, boolean latest) {
+		Document document = new Document();
+		document.setId(id);
+		document.setObjectType("cmis:document");
+		document.setVersionSeriesId("vs-" + id);
+		document.setLatestVersion(latest);
+		document.setPrivateWorkingCopy(false);
+		VersionSeries versionSeries = new VersionSeries();
+		versionSeries.setVersionSeriesCheckedOut(true);
+		versionSeries.setVersionSeriesCheckedOutId("pwc-" + id);
+		when(contentService.getDocument(REPOSITORY_ID, id)).thenReturn(document);
+		when(contentService.getVersionSeries(REPOSITORY_ID, document)).thenReturn(versionSeries);
+	}
+}
@@ -0,0 +1,107 @@
+package jp.aegif.nemaki.businesslogic.job.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.chemistry.opencmis.commons.enums.UnfileObject;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.FailedToDeleteDataImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import jp.aegif.nemaki.businesslogic.ContentService;
+import jp.aegif.nemaki.businesslogic.job.JobContext;
+import jp.aegif.nemaki.cmis.service.ObjectService;
+import jp.aegif.nemaki.model.Folder;
+
+public class DeleteTreeJobHandlerTest {
+
+	private static final String REPOSITORY_ID = "bedroom";
+	private static final String FOLDER_ID = "folder";
+
+	private ObjectService objectService;
+	private JobContext context;
+	private DeleteTreeJobHandler handler;
+
+	@Before
+	public void setUp() {
+		ContentService contentService = mock(ContentService.class);
+		when(contentService.getFolder(REPOSITORY_ID, FOLDER_ID)).thenReturn(new Folder());
+		objectService = mock(ObjectService.class);
+		context = mock(JobContext.class);
+		when(context.getRepositoryId()).thenReturn(REPOSITORY_ID);
+		when(context.getCreator()).thenReturn("alice");
+		when(context.getParameter(DeleteTreeJobHandler.PARAM_FOLDER_ID)).thenReturn(FOLDER_ID);
+
+		handler = new DeleteTreeJobHandler();
+		handler.setContentService(contentService);
+		handler.setObjectService(objectService);
+	}
+
+	@Test
+	public void testProgressIsReportedBetweenBatches() throws Exception {
+		// Resumed after an earlier run deleted 10 objects
+		when(context.getProcessed()).thenReturn(10L);
+		when(objectService.deleteTree(any(), eq(REPOSITORY_ID), eq(FOLDER_ID), eq(true), eq(UnfileObject.DELETE),
+				eq(false), any(ContentService.DeleteTreeProgress.class), any())).thenAnswer(invocation -> {
+					ContentService.DeleteTreeProgress progress = invocation.getArgument(6);
+					progress.started(5);
+					assertFalse(progress.isCancelled());
+					progress.deleted(3);
+					progress.deleted(1);
+					FailedToDeleteDataImpl failed = new FailedToDeleteDataImpl();
+					failed.setIds(Arrays.asList("document", FOLDER_ID));
+					return failed;
+				});
+
+		handler.run(context);
+
+		InOrder order = inOrder(context);
+		order.verify(context).setTotal(15);
+		order.verify(context).addProcessed(3);
+		order.verify(context).addProcessed(1);
+		verify(context).addFailed("document", "Not deleted");
+		verify(context).addFailed(FOLDER_ID, "Not deleted");
+		verify(context).setMessage("Folder tree " + FOLDER_ID + " deleted partially");
+	}
+
+	@Test
+	public void testCancellationReachesTheDeletion() throws Exception {
+		when(context.isCancelled()).thenReturn(true);
+		when(objectService.deleteTree(any(), eq(REPOSITORY_ID), eq(FOLDER_ID), eq(true), eq(UnfileObject.DELETE),
+				eq(false), any(ContentService.DeleteTreeProgress.class), any())).thenAnswer(invocation -> {
+					ContentService.DeleteTreeProgress progress = invocation.getArgument(6);
+					progress.started(5);
+					assertTrue(progress.isCancelled());
+					FailedToDeleteDataImpl failed = new FailedToDeleteDataImpl();
+					failed.setIds(Collections.<String> emptyList());
+					return failed;
+				});
+
+		handler.run(context);
+
+		verify(context, never()).addProcessed(any(Long.class));
+		verify(context).setMessage("Deletion of folder tree " + FOLDER_ID + " cancelled");
+	}
+
+	@Test
+	public void testMissingFolderIsNotDeleted() throws Exception {
+		when(context.getParameter(DeleteTreeJobHandler.PARAM_FOLDER_ID)).thenReturn("gone");
+
+		handler.run(context);
+
+		verify(objectService, never()).deleteTree(any(), any(), any(), any(), any(), any(),
+				any(ContentService.DeleteTreeProgress.class), any());
+		verify(context).setMessage("Folder gone does not exist anymore");
+	}
+}
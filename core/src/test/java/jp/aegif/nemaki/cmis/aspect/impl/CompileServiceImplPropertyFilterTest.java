@@ -0,0 +1,224 @@
+package jp.aegif.nemaki.cmis.aspect.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.data.Properties;
+import org.apache.chemistry.opencmis.commons.data.PropertyData;
+import org.apache.chemistry.opencmis.commons.definitions.MutableDocumentTypeDefinition;
+import org.apache.chemistry.opencmis.commons.definitions.MutableFolderTypeDefinition;
+import org.apache.chemistry.opencmis.commons.definitions.MutableSecondaryTypeDefinition;
+import org.apache.chemistry.opencmis.commons.definitions.MutableTypeDefinition;
+import org.apache.chemistry.opencmis.commons.definitions.PropertyDefinition;
+import org.apache.chemistry.opencmis.commons.enums.Cardinality;
+import org.apache.chemistry.opencmis.commons.enums.CmisVersion;
+import org.apache.chemistry.opencmis.commons.enums.ContentStreamAllowed;
+import org.apache.chemistry.opencmis.commons.enums.PropertyType;
+import org.apache.chemistry.opencmis.commons.enums.Updatability;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyStringDefinitionImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.TypeDefinitionContainerImpl;
+import org.apache.chemistry.opencmis.commons.server.CallContext;
+import org.apache.chemistry.opencmis.server.support.TypeDefinitionFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import jp.aegif.nemaki.businesslogic.ContentService;
+import jp.aegif.nemaki.cmis.aspect.type.TypeManager;
+import jp.aegif.nemaki.model.Aspect;
+import jp.aegif.nemaki.model.AttachmentNode;
+import jp.aegif.nemaki.model.Content;
+import jp.aegif.nemaki.model.Document;
+import jp.aegif.nemaki.model.Folder;
+import jp.aegif.nemaki.model.Property;
+
+/**
+ * Compiling with a filter must give what a full compile gives once filterProperties has run,
+ * which is what filterObjectData does to both.
+ */
+public class CompileServiceImplPropertyFilterTest {
+
+	private static final String REPOSITORY_ID = "bedroom";
+	private static final String DOCUMENT_TYPE = "my:document";
+	private static final String ASPECT = "my:aspect";
+
+	private ContentService contentService;
+	private CallContext callContext;
+	private CompileServiceImpl service;
+
+	@Before
+	public void setUp() {
+		TypeDefinitionFactory factory = TypeDefinitionFactory.newInstance();
+		MutableDocumentTypeDefinition documentType = factory.createDocumentTypeDefinition(CmisVersion.CMIS_1_1,
+				"cmis:document");
+		documentType.setId(DOCUMENT_TYPE);
+		documentType.setIsVersionable(true);
+		documentType.setContentStreamAllowed(ContentStreamAllowed.ALLOWED);
+		PropertyDefinition<?> title = stringProperty("my:title");
+		documentType.addPropertyDefinition(title);
+		MutableFolderTypeDefinition folderType = factory.createBaseFolderTypeDefinition(CmisVersion.CMIS_1_1);
+		MutableSecondaryTypeDefinition aspectType = factory.createSecondaryTypeDefinition(CmisVersion.CMIS_1_1,
+				"cmis:secondary");
+		aspectType.setId(ASPECT);
+		PropertyDefinition<?> tag = stringProperty("my:tag");
+		aspectType.addPropertyDefinition(tag);
+
+		TypeManager typeManager = mock(TypeManager.class);
+		for (MutableTypeDefinition type : Arrays.<MutableTypeDefinition> asList(documentType, folderType,
+				aspectType)) {
+			when(typeManager.getTypeById(REPOSITORY_ID, type.getId())).thenReturn(new TypeDefinitionContainerImpl(type));
+			when(typeManager.getTypeDefinition(REPOSITORY_ID, type.getId())).thenReturn(type);
+		}
+		when(typeManager.getSpecificPropertyDefinitions(DOCUMENT_TYPE))
+				.thenReturn(Collections.<PropertyDefinition<?>> singletonList(title));
+		when(typeManager.getSpecificPropertyDefinitions(ASPECT))
+				.thenReturn(Collections.<PropertyDefinition<?>> singletonList(tag));
+
+		contentService = mock(ContentService.class);
+		AttachmentNode attachment = new AttachmentNode();
+		attachment.setId("attachment");
+		attachment.setName("report.txt");
+		attachment.setMimeType("text/plain");
+		attachment.setLength(42L);
+		when(contentService.getAttachmentRef(REPOSITORY_ID, "attachment")).thenReturn(attachment);
+		when(contentService.calculatePath(eq(REPOSITORY_ID), any(Folder.class))).thenReturn("/folder");
+		callContext = mock(CallContext.class);
+
+		service = new CompileServiceImpl();
+		service.setTypeManager(typeManager);
+		service.setContentService(contentService);
+	}
+
+	@Test
+	public void testDocument() {
+		Document document = document("attachment");
+		for (String filter : Arrays.asList("cmis:name", "cmis:name,my:title", "my:tag",
+				"cmis:contentStreamLength,cmis:versionLabel", "cmis:secondaryObjectTypeIds,cmis:createdBy",
+				"cmis:lastModificationDate,unknown:property")) {
+			assertEquivalent(filter, document);
+		}
+
+		Map<String, PropertyData<?>> selected = assertEquivalent("my:tag", document);
+		assertEquals("red", selected.get("my:tag").getFirstValue());
+		assertFalse(selected.containsKey("my:title"));
+		assertFalse(selected.containsKey(PropertyIds.NAME));
+		// Content stream properties are always kept
+		assertEquals(42L, ((Number) selected.get(PropertyIds.CONTENT_STREAM_LENGTH).getFirstValue()).longValue());
+	}
+
+	@Test
+	public void testDocumentWithoutContent() {
+		Document document = document(null);
+		for (String filter : Arrays.asList("cmis:name", "cmis:contentStreamLength,cmis:contentStreamMimeType",
+				"cmis:versionSeriesCheckedOutId")) {
+			assertEquivalent(filter, document);
+		}
+
+		// No stream: -1 for the length, still there without being asked for
+		Map<String, PropertyData<?>> selected = assertEquivalent("cmis:name", document);
+		assertEquals(-1L, ((Number) selected.get(PropertyIds.CONTENT_STREAM_LENGTH).getFirstValue()).longValue());
+		assertFalse(selected.containsKey(PropertyIds.CONTENT_STREAM_MIME_TYPE));
+	}
+
+	@Test
+	public void testFolder() {
+		Folder folder = new Folder();
+		folder.setId("folder");
+		folder.setObjectType("cmis:folder");
+		folder.setName("folder");
+		folder.setParentId("root");
+
+		// The path is only calculated when it is asked for
+		assertFalse(service.compileProperties(callContext, REPOSITORY_ID, folder, service.splitFilter("cmis:name"))
+				.getProperties().containsKey(PropertyIds.PATH));
+		verify(contentService, never()).calculatePath(eq(REPOSITORY_ID), any(Folder.class));
+
+		for (String filter : Arrays.asList("cmis:path", "cmis:name,cmis:parentId",
+				"cmis:allowedChildObjectTypeIds")) {
+			assertEquivalent(filter, folder);
+		}
+		assertEquals("/folder", assertEquivalent("cmis:path", folder).get(PropertyIds.PATH).getFirstValue());
+	}
+
+	/**
+	 * Compares the filtered compile with the full compile, both passed through filterProperties.
+	 */
+	private Map<String, PropertyData<?>> assertEquivalent(String filter, Content content) {
+		Set<String> requested = service.splitFilter(filter);
+		assertNotNull(requested);
+		Properties full = service.filterProperties(service.compileProperties(callContext, REPOSITORY_ID, content),
+				requested, null);
+		Properties filtered = service.filterProperties(
+				service.compileProperties(callContext, REPOSITORY_ID, content, requested), requested, null);
+
+		Map<String, PropertyData<?>> expected = byId(full);
+		Map<String, PropertyData<?>> actual = byId(filtered);
+		assertEquals(filter, new ArrayList<String>(expected.keySet()), new ArrayList<String>(actual.keySet()));
+		for (Map.Entry<String, PropertyData<?>> entry : expected.entrySet()) {
+			PropertyData<?> property = actual.get(entry.getKey());
+			assertEquals(filter + " " + entry.getKey(), entry.getValue().getValues(), property.getValues());
+			assertEquals(filter + " " + entry.getKey(), entry.getValue().getQueryName(), property.getQueryName());
+		}
+		return actual;
+	}
+
+	private static Map<String, PropertyData<?>> byId(Properties properties) {
+		Map<String, PropertyData<?>> result = new LinkedHashMap<String, PropertyData<?>>();
+		for (PropertyData<?> property : properties.getPropertyList()) {
+			result.put(property.getId(), property);
+		}
+		return result;
+	}
+
+	private static Document document(String attachmentNodeId) {
+		Document document = new Document();
+		document.setId("document");
+		document.setObjectType(DOCUMENT_TYPE);
+		document.setName("report");
+		document.setCreator("alice");
+		document.setCreated(new GregorianCalendar());
+		document.setModified(new GregorianCalendar());
+		document.setAttachmentNodeId(attachmentNodeId);
+		document.setVersionSeriesId("series");
+		document.setVersionLabel("1.0");
+		document.setLatestVersion(true);
+		document.setMajorVersion(true);
+		document.setSubTypeProperties(new ArrayList<Property>(Arrays.asList(new Property("my:title", "Report"))));
+		document.setSecondaryIds(new ArrayList<String>(Arrays.asList(ASPECT)));
+		List<Property> aspectProperties = new ArrayList<Property>(Arrays.asList(new Property("my:tag", "red")));
+		document.setAspects(new ArrayList<Aspect>(Arrays.asList(new Aspect(ASPECT, aspectProperties))));
+		return document;
+	}
+
+	private static PropertyDefinition<?> stringProperty(String id) {
+		PropertyStringDefinitionImpl definition = new PropertyStringDefinitionImpl();
+		definition.setId(id);
+		definition.setLocalName(id);
+		definition.setQueryName(id);
+		definition.setDisplayName(id);
+		definition.setPropertyType(PropertyType.STRING);
+		definition.setCardinality(Cardinality.SINGLE);
+		definition.setUpdatability(Updatability.READWRITE);
+		definition.setIsInherited(false);
+		definition.setIsQueryable(true);
+		definition.setIsOrderable(true);
+		definition.setIsRequired(false);
+		return definition;
+	}
+}
@@ -0,0 +1,219 @@
+package jp.aegif.nemaki.cmis.aspect.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.chemistry.opencmis.commons.data.PermissionMapping;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.AclCapabilitiesDataImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PermissionMappingDataImpl;
+import org.apache.chemistry.opencmis.commons.server.CallContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import jp.aegif.nemaki.businesslogic.ContentService;
+import jp.aegif.nemaki.cmis.factory.info.RepositoryInfo;
+import jp.aegif.nemaki.cmis.factory.info.RepositoryInfoMap;
+import jp.aegif.nemaki.model.Ace;
+import jp.aegif.nemaki.model.Acl;
+import jp.aegif.nemaki.model.Content;
+import jp.aegif.nemaki.model.Document;
+import jp.aegif.nemaki.model.Folder;
+import jp.aegif.nemaki.model.Relationship;
+import jp.aegif.nemaki.model.UserItem;
+import jp.aegif.nemaki.model.VersionSeries;
+import jp.aegif.nemaki.util.constant.CmisPermission;
+
+/**
+ * getPermittedKeys must permit exactly the keys checkPermission passes, key by key.
+ */
+public class PermissionServiceImplTest {
+
+	private static final String REPOSITORY_ID = "bedroom";
+	private static final String ANYONE = "anyone";
+	private static final String USER = "alice";
+	private static final Set<String> GROUPS = Collections.singleton("staff");
+	private static final List<String> KEYS = mappingKeys();
+
+	private ContentService contentService;
+	private CallContext callContext;
+	private PermissionServiceImpl service;
+
+	@Before
+	public void setUp() {
+		// Read keys need cmis:read, everything else cmis:write
+		Map<String, PermissionMapping> mappings = new LinkedHashMap<String, PermissionMapping>();
+		for (String key : KEYS) {
+			PermissionMappingDataImpl mapping = new PermissionMappingDataImpl();
+			mapping.setKey(key);
+			boolean read = key.startsWith("canGet") || key.equals(PermissionMapping.CAN_VIEW_CONTENT_OBJECT);
+			mapping.setPermissions(Collections.singletonList(read ? CmisPermission.READ : CmisPermission.WRITE));
+			mappings.put(key, mapping);
+		}
+		AclCapabilitiesDataImpl capabilities = new AclCapabilitiesDataImpl();
+		capabilities.setPermissionMappingData(mappings);
+		RepositoryInfo info = mock(RepositoryInfo.class);
+		when(info.getAclCapabilities()).thenReturn(capabilities);
+		when(info.getPrincipalIdAnyone()).thenReturn(ANYONE);
+		RepositoryInfoMap repositoryInfoMap = mock(RepositoryInfoMap.class);
+		when(repositoryInfoMap.get(REPOSITORY_ID)).thenReturn(info);
+
+		contentService = mock(ContentService.class);
+		when(contentService.getGroupIdsContainingUser(REPOSITORY_ID, USER)).thenReturn(GROUPS);
+		callContext = mock(CallContext.class);
+		when(callContext.getUsername()).thenReturn(USER);
+
+		service = new PermissionServiceImpl();
+		service.setContentService(contentService);
+		service.setRepositoryInfoMap(repositoryInfoMap);
+		service.init();
+	}
+
+	@Test
+	public void testAdmin() {
+		UserItem admin = new UserItem();
+		admin.setAdmin(true);
+		when(contentService.getUserItemById(REPOSITORY_ID, USER)).thenReturn(admin);
+
+		Set<String> document = assertEquivalent(null, new Document());
+		assertTrue(document.contains(PermissionMapping.CAN_DELETE_CONTENT_DOCUMENT));
+		assertFalse(document.contains(PermissionMapping.CAN_GET_CHILDREN_FOLDER));
+		assertEquivalent(null, new Folder());
+	}
+
+	@Test
+	public void testRootFolder() {
+		Folder root = new Folder();
+		when(contentService.isRoot(REPOSITORY_ID, root)).thenReturn(true);
+
+		Set<String> keys = assertEquivalent(acl(ace(USER, CmisPermission.ALL)), root);
+		assertTrue(keys.contains(PermissionMapping.CAN_GET_CHILDREN_FOLDER));
+		assertFalse(keys.contains(PermissionMapping.CAN_DELETE_OBJECT));
+		assertFalse(keys.contains(PermissionMapping.CAN_GET_FOLDER_PARENT_OBJECT));
+	}
+
+	@Test
+	public void testPrivateWorkingCopy() {
+		Document pwc = new Document();
+		pwc.setPrivateWorkingCopy(true);
+		VersionSeries vs = new VersionSeries();
+		vs.setVersionSeriesCheckedOutBy("bob");
+		when(contentService.getVersionSeries(REPOSITORY_ID, pwc)).thenReturn(vs);
+		Acl acl = acl(ace(USER, CmisPermission.ALL));
+
+		// A non-owner gets nothing
+		assertTrue(assertEquivalent(acl, pwc).isEmpty());
+
+		// The owner gets what the ACL grants
+		vs.setVersionSeriesCheckedOutBy(USER);
+		assertTrue(assertEquivalent(acl, pwc).contains(PermissionMapping.CAN_CHECKIN_DOCUMENT));
+	}
+
+	@Test
+	public void testAnyoneUserAndGroupPrincipals() {
+		Set<String> anyone = assertEquivalent(acl(ace(ANYONE, CmisPermission.READ)), new Document());
+		assertTrue(anyone.contains(PermissionMapping.CAN_GET_PROPERTIES_OBJECT));
+		assertFalse(anyone.contains(PermissionMapping.CAN_UPDATE_PROPERTIES_OBJECT));
+
+		Set<String> user = assertEquivalent(acl(ace(USER, CmisPermission.WRITE)), new Document());
+		assertTrue(user.contains(PermissionMapping.CAN_UPDATE_PROPERTIES_OBJECT));
+		assertFalse(user.contains(PermissionMapping.CAN_GET_PROPERTIES_OBJECT));
+
+		Set<String> group = assertEquivalent(acl(ace("staff", CmisPermission.ALL)), new Folder());
+		assertTrue(group.contains(PermissionMapping.CAN_CREATE_DOCUMENT_FOLDER));
+
+		Set<String> combined = assertEquivalent(
+				acl(ace(ANYONE, CmisPermission.READ), ace("staff", CmisPermission.WRITE)), new Document());
+		assertTrue(combined.contains(PermissionMapping.CAN_GET_PROPERTIES_OBJECT));
+		assertTrue(combined.contains(PermissionMapping.CAN_SET_CONTENT_DOCUMENT));
+
+		// Someone else's ACE and an ACE without permissions grant nothing
+		Ace empty = new Ace();
+		empty.setPrincipalId(USER);
+		assertTrue(assertEquivalent(acl(ace("bob", CmisPermission.ALL), empty), new Document()).isEmpty());
+		assertTrue(assertEquivalent(null, new Document()).isEmpty());
+	}
+
+	@Test
+	public void testRelationship() {
+		Document source = new Document();
+		source.setId("source");
+		Document target = new Document();
+		target.setId("target");
+		Relationship relationship = new Relationship();
+		relationship.setSourceId("source");
+		relationship.setTargetId("target");
+		when(contentService.getContent(REPOSITORY_ID, "source")).thenReturn(source);
+		when(contentService.getContent(REPOSITORY_ID, "target")).thenReturn(target);
+		Acl readable = acl(ace(USER, CmisPermission.READ));
+		when(contentService.calculateAcl(REPOSITORY_ID, source)).thenReturn(readable);
+		when(contentService.calculateAcl(REPOSITORY_ID, target)).thenReturn(acl());
+
+		Set<String> keys = assertEquivalent(null, relationship);
+		assertEquals(new HashSet<String>(Arrays.asList(PermissionMapping.CAN_GET_PROPERTIES_OBJECT,
+				PermissionMapping.CAN_UPDATE_PROPERTIES_OBJECT, PermissionMapping.CAN_DELETE_OBJECT)), keys);
+
+		// Neither end readable
+		when(contentService.calculateAcl(REPOSITORY_ID, source)).thenReturn(acl());
+		assertTrue(assertEquivalent(null, relationship).isEmpty());
+
+		// A missing end
+		when(contentService.getContent(REPOSITORY_ID, "target")).thenReturn(null);
+		when(contentService.calculateAcl(eq(REPOSITORY_ID), any(Content.class))).thenReturn(readable);
+		assertTrue(assertEquivalent(null, relationship).isEmpty());
+	}
+
+	/**
+	 * Compares getPermittedKeys with checkPermission and checkPermissionWithGivenList for every mapping key.
+	 */
+	private Set<String> assertEquivalent(Acl acl, Content content) {
+		String baseType = content.getType();
+		Set<String> permitted = service.getPermittedKeys(callContext, REPOSITORY_ID, acl, baseType, content, USER, GROUPS);
+		for (String key : KEYS) {
+			boolean expected = permitted.contains(key);
+			assertEquals(key, expected, service.checkPermission(callContext, REPOSITORY_ID, key, acl, baseType, content));
+			assertEquals(key, expected, service.checkPermissionWithGivenList(callContext, REPOSITORY_ID, key, acl,
+					baseType, content, USER, GROUPS));
+		}
+		return permitted;
+	}
+
+	private static Acl acl(Ace... aces) {
+		Acl acl = new Acl();
+		acl.setLocalAces(new ArrayList<Ace>(Arrays.asList(aces)));
+		return acl;
+	}
+
+	private static Ace ace(String principalId, String permission) {
+		return new Ace(principalId, Collections.singletonList(permission), true);
+	}
+
+	private static List<String> mappingKeys() {
+		List<String> keys = new ArrayList<String>();
+		for (Field field : PermissionMapping.class.getFields()) {
+			if (Modifier.isStatic(field.getModifiers()) && field.getName().startsWith("CAN_")) {
+				try {
+					keys.add((String) field.get(null));
+				} catch (IllegalAccessException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}
+		return keys;
+	}
+}
@@ -0,0 +1,60 @@
+package jp.aegif.nemaki.cmis.aspect.query.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.enums.PropertyType;
+import org.junit.Before;
+import org.junit.Test;
+
+import jp.aegif.nemaki.businesslogic.TypeService;
+import jp.aegif.nemaki.model.NemakiPropertyDefinitionCore;
+
+public class SolrUtilSortFieldTest {
+
+	private static final String REPO = "bedroom";
+
+	private SolrUtil solrUtil;
+	private TypeService typeService;
+
+	@Before
+	public void setUp() {
+		typeService = mock(TypeService.class);
+		solrUtil = new SolrUtil();
+		solrUtil.setTypeService(typeService);
+	}
+
+	@Test
+	public void testFixedFieldsSortDirectly() {
+		assertEquals("name", solrUtil.getSortFieldInSolr(REPO, PropertyIds.NAME, true));
+		assertEquals("creation_date", solrUtil.getSortFieldInSolr(REPO, PropertyIds.CREATION_DATE, false));
+	}
+
+	@Test
+	public void testMultiValuedFixedFieldsAreNotSortable() {
+		assertNull(solrUtil.getSortFieldInSolr(REPO, PropertyIds.SECONDARY_OBJECT_TYPE_IDS, true));
+	}
+
+	@Test
+	public void testDynamicFieldsSortOnMinOrMax() {
+		when(typeService.getPropertyDefinitionCoreByPropertyId(REPO, "my:title")).thenReturn(core(PropertyType.STRING));
+		when(typeService.getPropertyDefinitionCoreByPropertyId(REPO, "my:due")).thenReturn(core(PropertyType.DATETIME));
+
+		assertEquals("field(\"dynamic.property.my:title\",min)", solrUtil.getSortFieldInSolr(REPO, "my:title", true));
+		assertEquals("field(\"dynamicDate.property.my:due\",max)", solrUtil.getSortFieldInSolr(REPO, "my:due", false));
+	}
+
+	@Test
+	public void testUnknownPropertyIsNotSortable() {
+		assertNull(solrUtil.getSortFieldInSolr(REPO, "my:unknown", true));
+	}
+
+	private NemakiPropertyDefinitionCore core(PropertyType type) {
+		NemakiPropertyDefinitionCore core = new NemakiPropertyDefinitionCore();
+		core.setPropertyType(type);
+		return core;
+	}
+}
@@ -0,0 +1,102 @@
+package jp.aegif.nemaki.cmis.aspect.type.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.chemistry.opencmis.commons.definitions.PropertyDefinition;
+import org.apache.chemistry.opencmis.commons.definitions.TypeDefinitionContainer;
+import org.apache.chemistry.opencmis.commons.enums.BaseTypeId;
+import org.apache.chemistry.opencmis.commons.enums.Cardinality;
+import org.apache.chemistry.opencmis.commons.enums.PropertyType;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.DocumentTypeDefinitionImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyStringDefinitionImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.TypeDefinitionContainerImpl;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TypeSnapshotStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path dir;
+	private TypeSnapshotStore store;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = folder.newFolder("type-snapshots").toPath();
+		store = new TypeSnapshotStore(dir);
+	}
+
+	@Test
+	public void testLoadSavedRevision() {
+		store.save("bedroom", "rev-1", snapshot());
+
+		TypeSnapshotStore.TypeSnapshot loaded = store.load("bedroom", "rev-1");
+		assertNotNull(loaded);
+		TypeDefinitionContainer document = loaded.types.get("cmis:document");
+		assertEquals("cmis:document", document.getTypeDefinition().getId());
+		assertEquals(1, document.getChildren().size());
+		// The child is the same instance as the type registered under its own ID
+		assertSame(loaded.types.get("nemaki:doc"), document.getChildren().get(0));
+		assertEquals(PropertyType.STRING, loaded.propertyDefinitionCoresByPropertyId.get("nemaki:title").getPropertyType());
+	}
+
+	@Test
+	public void testOtherRevisionIsNotLoaded() {
+		store.save("bedroom", "rev-1", snapshot());
+		assertNull(store.load("bedroom", "rev-2"));
+		assertNull(store.load("canopy", "rev-1"));
+	}
+
+	@Test
+	public void testUnreadableSnapshotIsIgnored() throws Exception {
+		Files.write(dir.resolve("bedroom.types"), new byte[] { 1, 2, 3 });
+		assertNull(store.load("bedroom", "rev-1"));
+
+		store.save("bedroom", "rev-1", snapshot());
+		assertNotNull(store.load("bedroom", "rev-1"));
+	}
+
+	private static TypeSnapshotStore.TypeSnapshot snapshot() {
+		PropertyStringDefinitionImpl title = new PropertyStringDefinitionImpl();
+		title.setId("nemaki:title");
+		title.setQueryName("nemaki:title");
+		title.setPropertyType(PropertyType.STRING);
+		title.setCardinality(Cardinality.SINGLE);
+
+		DocumentTypeDefinitionImpl base = new DocumentTypeDefinitionImpl();
+		base.setId("cmis:document");
+		base.setBaseTypeId(BaseTypeId.CMIS_DOCUMENT);
+		DocumentTypeDefinitionImpl sub = new DocumentTypeDefinitionImpl();
+		sub.setId("nemaki:doc");
+		sub.setParentTypeId("cmis:document");
+		sub.setBaseTypeId(BaseTypeId.CMIS_DOCUMENT);
+		sub.addPropertyDefinition(title);
+
+		TypeDefinitionContainerImpl baseContainer = new TypeDefinitionContainerImpl(base);
+		TypeDefinitionContainerImpl subContainer = new TypeDefinitionContainerImpl(sub);
+		baseContainer.setChildren(Collections.<TypeDefinitionContainer>singletonList(subContainer));
+
+		Map<String, TypeDefinitionContainer> types = new HashMap<>();
+		types.put("cmis:document", baseContainer);
+		types.put("nemaki:doc", subContainer);
+		Map<String, List<PropertyDefinition<?>>> subTypeProperties = new HashMap<>();
+		subTypeProperties.put("nemaki:doc", Collections.<PropertyDefinition<?>>singletonList(title));
+
+		return new TypeSnapshotStore.TypeSnapshot(types, Collections.singletonMap("cmis:document", baseContainer),
+				subTypeProperties, Collections.<String, PropertyDefinition<?>>singletonMap("nemaki:title", title),
+				Collections.<String, PropertyDefinition<?>>singletonMap("nemaki:title", title));
+	}
+}
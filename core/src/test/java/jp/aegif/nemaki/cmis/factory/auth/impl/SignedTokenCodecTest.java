@@ -0,0 +1,74 @@
+package jp.aegif.nemaki.cmis.factory.auth.impl;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import jp.aegif.nemaki.model.TokenRevocationList;
+
+public class SignedTokenCodecTest {
+
+	private final SignedTokenCodec codec = new SignedTokenCodec("shared-secret".getBytes(StandardCharsets.UTF_8));
+
+	@Test
+	public void testRoundTripOnAnotherNode() {
+		String token = codec.encode(new SignedTokenCodec.Claims("alice", "bedroom", "ui", 1000L, 2000L));
+
+		// Another node only shares the secret
+		SignedTokenCodec other = new SignedTokenCodec("shared-secret".getBytes(StandardCharsets.UTF_8));
+		SignedTokenCodec.Claims claims = other.decode(token);
+		assertNotNull(claims);
+		assertEquals("alice", claims.getUserName());
+		assertEquals("bedroom", claims.getRepositoryId());
+		assertEquals("ui", claims.getApp());
+		assertEquals(1000L, claims.getIssuedAt());
+		assertEquals(2000L, claims.getExpiration());
+	}
+
+	@Test
+	public void testRejectsOtherSecret() {
+		String token = codec.encode(new SignedTokenCodec.Claims("alice", "bedroom", "", 1000L, 2000L));
+		assertNull(new SignedTokenCodec("other".getBytes(StandardCharsets.UTF_8)).decode(token));
+	}
+
+	@Test
+	public void testRejectsTamperedClaims() {
+		String token = codec.encode(new SignedTokenCodec.Claims("alice", "bedroom", "", 1000L, 2000L));
+		String forged = codec.encode(new SignedTokenCodec.Claims("admin", "bedroom", "", 1000L, 2000L));
+
+		// Claims of one token with the signature of another
+		String[] parts = token.split("\\.");
+		String[] forgedParts = forged.split("\\.");
+		assertNull(codec.decode(parts[0] + "." + forgedParts[1] + "." + parts[2]));
+	}
+
+	@Test
+	public void testRejectsMalformed() {
+		assertNull(codec.decode(null));
+		assertNull(codec.decode(""));
+		assertNull(codec.decode("6f1c3a2e-4b1d-4f0e-9a55-0d4c2f7e9b11"));
+		assertNull(codec.decode("nemaki1."));
+		assertNull(codec.decode("nemaki1.!!!.???"));
+	}
+
+	@Test
+	public void testRevocationList() {
+		TokenRevocationList list = new TokenRevocationList();
+		list.revoke("", "alice", 5000L);
+		assertTrue(list.isRevoked("", "alice", 4000L));
+		// A token issued in the millisecond of the logout is a new login
+		assertFalse(list.isRevoked("", "alice", 5000L));
+		assertFalse(list.isRevoked("", "alice", 5001L));
+		assertFalse(list.isRevoked("ui", "alice", 4000L));
+		assertFalse(list.isRevoked("", "bob", 4000L));
+
+		// An older logout does not move the boundary back
+		list.revoke("", "alice", 3000L);
+		assertTrue(list.isRevoked("", "alice", 4000L));
+
+		list.prune(6000L);
+		assertTrue(list.getRevokedBefore().isEmpty());
+	}
+}
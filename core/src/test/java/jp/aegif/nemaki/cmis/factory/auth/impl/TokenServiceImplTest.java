@@ -0,0 +1,182 @@
+package jp.aegif.nemaki.cmis.factory.auth.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import jp.aegif.nemaki.businesslogic.PrincipalService;
+import jp.aegif.nemaki.cmis.factory.info.RepositoryInfoMap;
+import jp.aegif.nemaki.dao.ContentDaoService;
+import jp.aegif.nemaki.model.TokenRevocationList;
+import jp.aegif.nemaki.model.User;
+import jp.aegif.nemaki.util.PropertyManager;
+import jp.aegif.nemaki.util.constant.PropertyKey;
+
+public class TokenServiceImplTest {
+
+	private static final String REPOSITORY_ID = "bedroom";
+	private static final String APP = "ui";
+
+	private ContentDaoService contentDaoService;
+	/** The revocation list as stored in the database */
+	private final AtomicReference<TokenRevocationList> stored = new AtomicReference<TokenRevocationList>();
+
+	@Before
+	public void setUp() {
+		contentDaoService = mock(ContentDaoService.class);
+		when(contentDaoService.getTokenRevocationList(REPOSITORY_ID)).thenAnswer(invocation -> copy(stored.get()));
+		when(contentDaoService.saveTokenRevocationList(eq(REPOSITORY_ID), any())).thenAnswer(invocation -> {
+			stored.set(copy(invocation.getArgument(1)));
+			return true;
+		});
+	}
+
+	@Test
+	public void testLogoutRevokesIssuedTokens() throws Exception {
+		TokenServiceImpl service = node("60");
+		String token = service.setToken(APP, REPOSITORY_ID, "alice").getToken();
+		String other = service.setToken(APP, REPOSITORY_ID, "bob").getToken();
+		assertEquals("alice", service.validateToken(APP, REPOSITORY_ID, token));
+
+		// Revocation is by issue time, strictly before the logout
+		Thread.sleep(2);
+		service.removeToken(APP, REPOSITORY_ID, "alice");
+
+		assertNull(service.validateToken(APP, REPOSITORY_ID, token));
+		assertNull(service.getToken(APP, REPOSITORY_ID, "alice"));
+		assertEquals("bob", service.validateToken(APP, REPOSITORY_ID, other));
+		assertEquals(Collections.singleton("alice"), stored.get().getRevokedBefore().get(APP).keySet());
+
+		// Logging in again issues a token that is not revoked
+		String again = service.setToken(APP, REPOSITORY_ID, "alice").getToken();
+		assertEquals("alice", service.validateToken(APP, REPOSITORY_ID, again));
+	}
+
+	@Test
+	public void testLogoutIsReloadedByOtherNodes() throws Exception {
+		TokenServiceImpl issuing = node("60");
+		// Reloads on every validation
+		TokenServiceImpl other = node("0");
+		String token = issuing.setToken(APP, REPOSITORY_ID, "alice").getToken();
+		assertEquals("alice", other.validateToken(APP, REPOSITORY_ID, token));
+
+		Thread.sleep(2);
+		issuing.removeToken(APP, REPOSITORY_ID, "alice");
+
+		assertNull(other.validateToken(APP, REPOSITORY_ID, token));
+	}
+
+	@Test
+	public void testRevocationsAreCachedUntilTheRefreshInterval() {
+		TokenServiceImpl service = node("60");
+		String token = service.setToken(APP, REPOSITORY_ID, "alice").getToken();
+
+		assertEquals("alice", service.validateToken(APP, REPOSITORY_ID, token));
+		assertEquals("alice", service.validateToken(APP, REPOSITORY_ID, token));
+
+		verify(contentDaoService, times(1)).getTokenRevocationList(REPOSITORY_ID);
+	}
+
+	@Test
+	public void testFailedReloadKeepsPreviousList() throws Exception {
+		TokenServiceImpl issuing = node("60");
+		TokenServiceImpl other = node("0");
+		String token = issuing.setToken(APP, REPOSITORY_ID, "alice").getToken();
+		String bobs = issuing.setToken(APP, REPOSITORY_ID, "bob").getToken();
+		Thread.sleep(2);
+		issuing.removeToken(APP, REPOSITORY_ID, "alice");
+		assertNull(other.validateToken(APP, REPOSITORY_ID, token));
+
+		when(contentDaoService.getTokenRevocationList(REPOSITORY_ID)).thenThrow(new RuntimeException("unreachable"));
+
+		// Still revoked, not read as an empty list
+		assertNull(other.validateToken(APP, REPOSITORY_ID, token));
+		assertEquals("bob", other.validateToken(APP, REPOSITORY_ID, bobs));
+	}
+
+	@Test
+	public void testTokensAreRejectedWhileRevocationsCannotBeRead() {
+		TokenServiceImpl issuing = node("60");
+		String token = issuing.setToken(APP, REPOSITORY_ID, "alice").getToken();
+		when(contentDaoService.getTokenRevocationList(REPOSITORY_ID)).thenThrow(new RuntimeException("unreachable"));
+
+		assertNull(node("60").validateToken(APP, REPOSITORY_ID, token));
+	}
+
+	@Test
+	public void testLogoutRetriesWhenTheListCannotBeRead() throws Exception {
+		TokenServiceImpl service = node("60");
+		String token = service.setToken(APP, REPOSITORY_ID, "alice").getToken();
+		when(contentDaoService.getTokenRevocationList(REPOSITORY_ID))
+				.thenThrow(new RuntimeException("unreachable"))
+				.thenAnswer(invocation -> copy(stored.get()));
+
+		Thread.sleep(2);
+		service.removeToken(APP, REPOSITORY_ID, "alice");
+
+		assertNull(service.validateToken(APP, REPOSITORY_ID, token));
+		assertEquals(Collections.singleton("alice"), stored.get().getRevokedBefore().get(APP).keySet());
+	}
+
+	@Test
+	public void testInvalidRefreshFallsBackToTheDefault() {
+		// Not a number: still starts, and caches for the default interval
+		TokenServiceImpl service = node("30s");
+		String token = service.setToken(APP, REPOSITORY_ID, "alice").getToken();
+
+		assertEquals("alice", service.validateToken(APP, REPOSITORY_ID, token));
+		assertEquals("alice", service.validateToken(APP, REPOSITORY_ID, token));
+
+		verify(contentDaoService, times(1)).getTokenRevocationList(REPOSITORY_ID);
+	}
+
+	/**
+	 * A cluster node sharing the secret and the database of the others
+	 */
+	private TokenServiceImpl node(String refreshSeconds) {
+		PropertyManager propertyManager = mock(PropertyManager.class);
+		when(propertyManager.readValue(PropertyKey.AUTH_TOKEN_TYPE)).thenReturn("signed");
+		when(propertyManager.readValue(PropertyKey.AUTH_TOKEN_SECRET)).thenReturn("shared-secret");
+		when(propertyManager.readValue(PropertyKey.AUTH_TOKEN_REVOCATION_REFRESH)).thenReturn(refreshSeconds);
+		when(propertyManager.readValue(PropertyKey.AUTH_TOKEN_EXPIRATION)).thenReturn("3600000");
+		RepositoryInfoMap repositoryInfoMap = mock(RepositoryInfoMap.class);
+		when(repositoryInfoMap.keys()).thenReturn(Collections.singleton(REPOSITORY_ID));
+		PrincipalService principalService = mock(PrincipalService.class);
+		when(principalService.getAdmins(REPOSITORY_ID)).thenReturn(Collections.<User> emptyList());
+
+		TokenServiceImpl service = new TokenServiceImpl();
+		service.setPropertyManager(propertyManager);
+		service.setContentDaoService(contentDaoService);
+		service.setPrincipalService(principalService);
+		service.setRepositoryInfoMap(repositoryInfoMap);
+		service.init();
+		return service;
+	}
+
+	private static TokenRevocationList copy(TokenRevocationList list) {
+		if (list == null) {
+			return null;
+		}
+		TokenRevocationList copy = new TokenRevocationList();
+		copy.setId(list.getId());
+		copy.setRevision(list.getRevision());
+		for (Map.Entry<String, Map<String, Long>> app : list.getRevokedBefore().entrySet()) {
+			for (Map.Entry<String, Long> user : app.getValue().entrySet()) {
+				copy.revoke(app.getKey(), user.getKey(), user.getValue());
+			}
+		}
+		return copy;
+	}
+}
@@ -0,0 +1,67 @@
+package jp.aegif.nemaki.cmis.factory.auth.impl;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class VerifiedCredentialCacheTest {
+
+	private static final String REPO = "bedroom";
+
+	@Test
+	public void testHitAfterPut() {
+		VerifiedCredentialCache cache = new VerifiedCredentialCache(60000, 100);
+		assertFalse(cache.isVerified(REPO, "alice", "secret", "hash1"));
+		cache.put(REPO, "alice", "secret", "hash1");
+		assertTrue(cache.isVerified(REPO, "alice", "secret", "hash1"));
+	}
+
+	@Test
+	public void testChangedPasswordIsRejectedImmediately() {
+		VerifiedCredentialCache cache = new VerifiedCredentialCache(60000, 100);
+		cache.put(REPO, "alice", "old", "hash1");
+
+		// The password was changed: the stored hash is no longer the one verified against
+		assertFalse(cache.isVerified(REPO, "alice", "old", "hash2"));
+		// ...and the entry does not come back if the hash were compared again
+		assertFalse(cache.isVerified(REPO, "alice", "old", "hash1"));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testOtherPasswordUserOrRepositoryMisses() {
+		VerifiedCredentialCache cache = new VerifiedCredentialCache(60000, 100);
+		cache.put(REPO, "alice", "secret", "hash1");
+		assertFalse(cache.isVerified(REPO, "alice", "wrong", "hash1"));
+		assertFalse(cache.isVerified(REPO, "bob", "secret", "hash1"));
+		assertFalse(cache.isVerified("canopy", "alice", "secret", "hash1"));
+		assertFalse(cache.isVerified(REPO, "alice", "secret", null));
+	}
+
+	@Test
+	public void testExpiry() throws Exception {
+		VerifiedCredentialCache cache = new VerifiedCredentialCache(1, 100);
+		cache.put(REPO, "alice", "secret", "hash1");
+		Thread.sleep(10);
+		assertFalse(cache.isVerified(REPO, "alice", "secret", "hash1"));
+	}
+
+	@Test
+	public void testDisabled() {
+		VerifiedCredentialCache cache = new VerifiedCredentialCache(0, 100);
+		assertFalse(cache.isEnabled());
+		cache.put(REPO, "alice", "secret", "hash1");
+		assertFalse(cache.isVerified(REPO, "alice", "secret", "hash1"));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testStartsOverWhenFull() {
+		VerifiedCredentialCache cache = new VerifiedCredentialCache(60000, 2);
+		cache.put(REPO, "a", "p", "h");
+		cache.put(REPO, "b", "p", "h");
+		cache.put(REPO, "c", "p", "h");
+		assertEquals(1, cache.size());
+		assertTrue(cache.isVerified(REPO, "c", "p", "h"));
+	}
+}
@@ -0,0 +1,354 @@
+package jp.aegif.nemaki.cmis.servlet;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.apache.chemistry.opencmis.commons.data.ObjectData;
+import org.apache.chemistry.opencmis.commons.data.ObjectInFolderData;
+import org.apache.chemistry.opencmis.commons.enums.DateTimeFormat;
+import org.apache.chemistry.opencmis.commons.impl.JSONConverter;
+import org.apache.chemistry.opencmis.commons.impl.JSONConverter.PropertyMode;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.ObjectDataImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.ObjectInFolderDataImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.ObjectInFolderListImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.ObjectListImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertiesImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyIdImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyStringImpl;
+import org.junit.Test;
+
+/**
+ * The streamed output must be byte-for-byte identical to JSONConverter's.
+ */
+public class BrowserBindingJsonWriterTest {
+
+	@Test
+	public void testObjectInFolderListMatchesJsonConverter() throws Exception {
+		List<ObjectInFolderData> objects = new ArrayList<ObjectInFolderData>();
+		for (int i = 0; i < 3; i++) {
+			ObjectInFolderDataImpl objectInFolder = new ObjectInFolderDataImpl(buildObject("id-" + i, "name \"" + i + "\""));
+			objectInFolder.setPathSegment("name-" + i);
+			objects.add(objectInFolder);
+		}
+		ObjectInFolderListImpl list = new ObjectInFolderListImpl();
+		list.setObjects(objects);
+		list.setHasMoreItems(Boolean.TRUE);
+		list.setNumItems(BigInteger.valueOf(10));
+
+		StringWriter writer = new StringWriter();
+		new BrowserBindingJsonWriter(writer, false, DateTimeFormat.SIMPLE).write(list);
+
+		String expected = JSONConverter.convert(list, null, false, DateTimeFormat.SIMPLE).toJSONString();
+		assertEquals(expected, writer.toString());
+	}
+
+	@Test
+	public void testObjectListMatchesJsonConverter() throws Exception {
+		List<ObjectData> objects = new ArrayList<ObjectData>();
+		objects.add(buildObject("id-1", "a"));
+		objects.add(buildObject("id-2", "b"));
+		ObjectListImpl list = new ObjectListImpl();
+		list.setObjects(objects);
+		list.setHasMoreItems(Boolean.FALSE);
+		list.setNumItems(BigInteger.valueOf(2));
+
+		for (PropertyMode mode : new PropertyMode[] { PropertyMode.OBJECT, PropertyMode.QUERY }) {
+			StringWriter writer = new StringWriter();
+			new BrowserBindingJsonWriter(writer, false, DateTimeFormat.SIMPLE).write(list, mode);
+
+			String expected = JSONConverter.convert(list, null, mode, false, DateTimeFormat.SIMPLE).toJSONString();
+			assertEquals(expected, writer.toString());
+		}
+	}
+
+	@Test
+	public void testEmptyListMatchesJsonConverter() throws Exception {
+		ObjectListImpl list = new ObjectListImpl();
+		list.setObjects(Collections.<ObjectData> emptyList());
+		list.setHasMoreItems(Boolean.FALSE);
+		list.setNumItems(BigInteger.ZERO);
+
+		StringWriter writer = new StringWriter();
+		BrowserBindingJsonWriter jsonWriter = new BrowserBindingJsonWriter(writer, false, DateTimeFormat.SIMPLE);
+		jsonWriter.write(list);
+
+		String expected = JSONConverter.convert(list, null, PropertyMode.OBJECT, false, DateTimeFormat.SIMPLE).toJSONString();
+		assertEquals(expected, writer.toString());
+		assertEquals(-1, jsonWriter.getFirstFlushNanos());
+	}
+
+	@Test
+	public void testStreamGzip() throws Exception {
+		ObjectListImpl list = buildList(2);
+		CapturingOutputStream out = new CapturingOutputStream();
+		HttpServletResponse response = mockResponse(out);
+
+		BrowserBindingJsonWriter.stream(response, list, true);
+
+		verify(response).setHeader("Content-Encoding", "gzip");
+		assertTrue(out.closed);
+		String expected = JSONConverter.convert(list, null, PropertyMode.OBJECT, false, DateTimeFormat.SIMPLE).toJSONString();
+		GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.bytes.toByteArray()));
+		assertEquals(expected, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testStreamFailureBeforeCommitResetsResponse() throws Exception {
+		// Fails on the first entry, before anything is flushed
+		ObjectListImpl list = new ObjectListImpl();
+		list.setObjects(failingList(buildList(2).getObjects(), 0));
+		CapturingOutputStream out = new CapturingOutputStream();
+		HttpServletResponse response = mockResponse(out);
+
+		try {
+			BrowserBindingJsonWriter.stream(response, list, false);
+			fail("Failure must be rethrown");
+		} catch (IllegalStateException e) {
+			// expected: the caller can still send an error status
+		}
+		verify(response).reset();
+		assertFalse(out.closed);
+	}
+
+	@Test
+	public void testStreamFailureAfterCommitLeavesBodyUnfinished() throws Exception {
+		// The first entry is flushed, the second one fails
+		ObjectListImpl list = new ObjectListImpl();
+		list.setObjects(failingList(buildList(3).getObjects(), 1));
+		CapturingOutputStream out = new CapturingOutputStream();
+		HttpServletResponse response = mockResponse(out);
+
+		try {
+			BrowserBindingJsonWriter.stream(response, list, false);
+			fail("Failure must be rethrown");
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		verify(response, never()).reset();
+		assertFalse(out.closed);
+		String body = out.bytes.toString(StandardCharsets.UTF_8.name());
+		// Only the first entry was sent; the list and the envelope are never closed
+		assertTrue(body.startsWith("{\"objects\":[{"));
+		assertTrue(body.contains("id-0"));
+		assertFalse(body.contains("id-1"));
+		assertFalse(body.contains("numItems"));
+	}
+
+	/**
+	 * Against the non-streaming path (convert the whole list, then write its string),
+	 * through a buffer like the servlet's: the first byte reaches the client after one
+	 * entry instead of all of them, and the largest string built is one entry instead
+	 * of the whole body, which bounds the heap a response needs.
+	 */
+	@Test
+	public void testStreamingComparedWithConvertingTheWholeList() throws Exception {
+		int size = 1000;
+		int[] read = new int[1];
+		ObjectListImpl list = new ObjectListImpl();
+		list.setObjects(countingList(buildList(size).getObjects(), read));
+		list.setHasMoreItems(Boolean.FALSE);
+		list.setNumItems(BigInteger.valueOf(size));
+
+		// The second run of each path is the one measured, with both paths warm
+		Measurement converted = null;
+		Measurement streamed = null;
+		for (int run = 0; run < 2; run++) {
+			read[0] = 0;
+			converted = new Measurement(read);
+			converted.write(JSONConverter.convert(list, null, PropertyMode.OBJECT, false, DateTimeFormat.SIMPLE)
+					.toJSONString());
+			converted.close();
+
+			read[0] = 0;
+			streamed = new Measurement(read);
+			new BrowserBindingJsonWriter(streamed, false, DateTimeFormat.SIMPLE).write(list);
+			streamed.close();
+		}
+
+		assertEquals(converted.length, streamed.length);
+		// Time to first byte
+		assertTrue(converted.readAtFirstByte >= size);
+		assertEquals(1, streamed.readAtFirstByte);
+		assertTrue(streamed.firstByteNanos < converted.firstByteNanos);
+		// Largest string held at once
+		assertEquals(converted.length, converted.largestWrite);
+		assertTrue(streamed.largestWrite * 100 < converted.largestWrite);
+	}
+
+	private ObjectListImpl buildList(int size) {
+		List<ObjectData> objects = new ArrayList<ObjectData>();
+		for (int i = 0; i < size; i++) {
+			objects.add(buildObject("id-" + i, "name-" + i));
+		}
+		ObjectListImpl list = new ObjectListImpl();
+		list.setObjects(objects);
+		list.setHasMoreItems(Boolean.FALSE);
+		list.setNumItems(BigInteger.valueOf(size));
+		return list;
+	}
+
+	private static List<ObjectData> failingList(final List<ObjectData> objects, final int failAt) {
+		return new AbstractList<ObjectData>() {
+			@Override
+			public ObjectData get(int index) {
+				if (index == failAt) {
+					throw new IllegalStateException("entry " + index + " failed");
+				}
+				return objects.get(index);
+			}
+
+			@Override
+			public int size() {
+				return objects.size();
+			}
+		};
+	}
+
+	private static List<ObjectData> countingList(final List<ObjectData> objects, final int[] read) {
+		return new AbstractList<ObjectData>() {
+			@Override
+			public ObjectData get(int index) {
+				read[0]++;
+				return objects.get(index);
+			}
+
+			@Override
+			public int size() {
+				return objects.size();
+			}
+		};
+	}
+
+	/**
+	 * Records the largest single write, and when the first characters got through
+	 * an 8 KB buffer to the client and how many entries had been read by then
+	 */
+	private static class Measurement extends Writer {
+		private final int[] read;
+		private final long start = System.nanoTime();
+		long firstByteNanos = -1;
+		int readAtFirstByte = -1;
+		int largestWrite;
+		int length;
+
+		private final Writer buffer = new BufferedWriter(new Writer() {
+			@Override
+			public void write(char[] cbuf, int off, int len) {
+				if (firstByteNanos < 0 && len > 0) {
+					firstByteNanos = System.nanoTime() - start;
+					readAtFirstByte = read[0];
+				}
+				length += len;
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		}, 8192);
+
+		Measurement(int[] read) {
+			this.read = read;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			largestWrite = Math.max(largestWrite, len);
+			buffer.write(cbuf, off, len);
+		}
+
+		@Override
+		public void write(String str, int off, int len) throws IOException {
+			largestWrite = Math.max(largestWrite, len);
+			buffer.write(str, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			buffer.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			buffer.close();
+		}
+	}
+
+	private static HttpServletResponse mockResponse(final CapturingOutputStream out) throws IOException {
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		when(response.getOutputStream()).thenReturn(out);
+		when(response.isCommitted()).thenAnswer(invocation -> out.committed);
+		return response;
+	}
+
+	/**
+	 * Commits on the first flush, like a servlet container's output stream
+	 */
+	private static class CapturingOutputStream extends ServletOutputStream {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		boolean committed;
+		boolean closed;
+
+		@Override
+		public void write(int b) {
+			bytes.write(b);
+		}
+
+		@Override
+		public void flush() {
+			committed = true;
+		}
+
+		@Override
+		public void close() {
+			committed = true;
+			closed = true;
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+		}
+	}
+
+	private ObjectData buildObject(String id, String name) {
+		PropertiesImpl properties = new PropertiesImpl();
+		PropertyIdImpl objectId = new PropertyIdImpl("cmis:objectId", id);
+		objectId.setQueryName("cmis:objectId");
+		properties.addProperty(objectId);
+		PropertyStringImpl objectName = new PropertyStringImpl("cmis:name", name);
+		objectName.setQueryName("cmis:name");
+		properties.addProperty(objectName);
+		ObjectDataImpl object = new ObjectDataImpl();
+		object.setProperties(properties);
+		return object;
+	}
+}
@@ -0,0 +1,177 @@
+package jp.aegif.nemaki.dao.impl.couch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.chemistry.opencmis.commons.enums.ChangeType;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.ibm.cloud.cloudant.v1.model.ChangesResult;
+import com.ibm.cloud.cloudant.v1.model.ChangesResultItem;
+import com.ibm.cloud.cloudant.v1.model.Document;
+import com.ibm.cloud.cloudant.v1.model.DocumentResult;
+
+import jp.aegif.nemaki.dao.impl.couch.connector.CloudantClientPool;
+import jp.aegif.nemaki.dao.impl.couch.connector.CloudantClientWrapper;
+import jp.aegif.nemaki.model.Change;
+import jp.aegif.nemaki.model.ChangeFeed;
+
+public class ContentDaoServiceImplChangeLogTest {
+
+	private static final String REPOSITORY_ID = "bedroom";
+
+	private CloudantClientPool pool;
+	private CloudantClientWrapper client;
+	private ContentDaoServiceImpl dao;
+
+	@Before
+	public void setUp() {
+		client = mock(CloudantClientWrapper.class);
+		pool = mock(CloudantClientPool.class);
+		when(pool.getClient(REPOSITORY_ID)).thenReturn(client);
+
+		dao = new ContentDaoServiceImpl();
+		dao.setConnectorPool(pool);
+	}
+
+	@Test
+	public void testChangeFeedReadsOneExtraEventToDetectMore() {
+		ChangesResult result = changes("9-x", 40L, event("1-a", "c1"), event("2-b", "c2"), event("3-c", "c3"));
+		when(client.getChanges(any(), eq("0"), eq(3L), anyLong())).thenReturn(result);
+
+		ChangeFeed feed = dao.getChangeFeed(REPOSITORY_ID, null, 2, 0);
+
+		assertEquals(2, feed.getChanges().size());
+		assertEquals("c2", feed.getChanges().get(1).getObjectId());
+		assertTrue(feed.isHasMoreItems());
+		// The next page starts right after the last returned event
+		assertEquals("2-b", feed.getLatestToken());
+	}
+
+	@Test
+	public void testPendingNonChangeDocumentsDoNotMeanMoreItems() {
+		// pending counts every document of the database, not only change events
+		ChangesResult result = changes("9-x", 40L, event("1-a", "c1"), event("2-b", "c2"));
+		when(client.getChanges(any(), eq("1-z"), eq(3L), anyLong())).thenReturn(result);
+
+		ChangeFeed feed = dao.getChangeFeed(REPOSITORY_ID, "1-z", 2, 0);
+
+		assertEquals(2, feed.getChanges().size());
+		assertFalse(feed.isHasMoreItems());
+		assertEquals("9-x", feed.getLatestToken());
+	}
+
+	@Test
+	public void testUnlimitedFeedHasNoMoreItems() {
+		ChangesResult result = changes("9-x", 0L, event("1-a", "c1"));
+		when(client.getChanges(any(), eq("0"), eq(0L), anyLong())).thenReturn(result);
+
+		ChangeFeed feed = dao.getChangeFeed(REPOSITORY_ID, "", 0, 0);
+
+		assertEquals(1, feed.getChanges().size());
+		assertFalse(feed.isHasMoreItems());
+		assertEquals("9-x", feed.getLatestToken());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testPruneDeletesAtTheRevisionsRead() {
+		List<DocumentResult> results = Arrays.asList(result("e1", null), result("e2", "conflict"));
+		when(client.deleteRevisions(any())).thenReturn(results);
+
+		int deleted = dao.pruneChangeEvents(REPOSITORY_ID, Arrays.asList(change("e1", "1-a"), change("e2", "3-c")), false);
+
+		assertEquals(1, deleted);
+		ArgumentCaptor<Map<String, String>> revisions = ArgumentCaptor.forClass(Map.class);
+		verify(client).deleteRevisions(revisions.capture());
+		assertEquals("1-a", revisions.getValue().get("e1"));
+		assertEquals("3-c", revisions.getValue().get("e2"));
+		// No document is read again before deleting
+		verify(client, never()).deleteDocumentsBatch(any());
+		verify(client, never()).getDocuments(any());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testPruneDeletesOnlyArchivedEvents() {
+		CloudantClientWrapper archiveClient = mock(CloudantClientWrapper.class);
+		when(pool.getOrCreate(REPOSITORY_ID + "_changelog")).thenReturn(archiveClient);
+		// An event archived by an earlier run conflicts, which still counts as archived
+		List<DocumentResult> archived = Arrays.asList(result("e1", null), result("e2", "conflict"), result("e3", "forbidden"));
+		when(archiveClient.bulkWrite(any())).thenReturn(archived);
+		List<DocumentResult> results = Arrays.asList(result("e1", null), result("e2", null));
+		when(client.deleteRevisions(any())).thenReturn(results);
+
+		int deleted = dao.pruneChangeEvents(REPOSITORY_ID,
+				Arrays.asList(change("e1", "1-a"), change("e2", "2-b"), change("e3", "3-c")), true);
+
+		assertEquals(2, deleted);
+		ArgumentCaptor<Map<String, String>> revisions = ArgumentCaptor.forClass(Map.class);
+		verify(client).deleteRevisions(revisions.capture());
+		assertEquals(Arrays.asList("e1", "e2"), new ArrayList<String>(revisions.getValue().keySet()));
+	}
+
+	private static Change change(String id, String revision) {
+		Change change = new Change();
+		change.setId(id);
+		change.setRevision(revision);
+		change.setObjectId("object-" + id);
+		change.setBaseType("cmis:document");
+		change.setObjectType("cmis:document");
+		change.setToken("1");
+		change.setChangeType(ChangeType.UPDATED);
+		return change;
+	}
+
+	private static DocumentResult result(String id, String error) {
+		DocumentResult result = mock(DocumentResult.class);
+		when(result.getId()).thenReturn(id);
+		when(result.getError()).thenReturn(error);
+		return result;
+	}
+
+	private static ChangesResult changes(String lastSeq, Long pending, ChangesResultItem... items) {
+		List<ChangesResultItem> results = new ArrayList<ChangesResultItem>();
+		for (ChangesResultItem item : items) {
+			results.add(item);
+		}
+		ChangesResult result = mock(ChangesResult.class);
+		when(result.getResults()).thenReturn(results);
+		when(result.getLastSeq()).thenReturn(lastSeq);
+		when(result.getPending()).thenReturn(pending);
+		return result;
+	}
+
+	private static ChangesResultItem event(String seq, String objectId) {
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("type", "change");
+		properties.put("objectId", objectId);
+		properties.put("changeType", "CREATED");
+		Document doc = mock(Document.class);
+		when(doc.getId()).thenReturn("change-" + objectId);
+		when(doc.getRev()).thenReturn("1-r");
+		when(doc.getProperties()).thenReturn(properties);
+
+		ChangesResultItem item = mock(ChangesResultItem.class);
+		when(item.getSeq()).thenReturn(seq);
+		when(item.getId()).thenReturn("change-" + objectId);
+		when(item.getDoc()).thenReturn(doc);
+		return item;
+	}
+}
@@ -0,0 +1,202 @@
+package jp.aegif.nemaki.dao.impl.couch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.ibm.cloud.cloudant.v1.model.Document;
+import com.ibm.cloud.cloudant.v1.model.DocumentResult;
+
+import jp.aegif.nemaki.dao.impl.couch.connector.CloudantClientPool;
+import jp.aegif.nemaki.dao.impl.couch.connector.CloudantClientWrapper;
+import jp.aegif.nemaki.model.DirectorySyncState;
+
+public class ContentDaoServiceImplDirectorySyncStateTest {
+
+	private static final String REPOSITORY_ID = "bedroom";
+
+	private CloudantClientWrapper client;
+	private ContentDaoServiceImpl dao;
+	/** Documents passed to each bulk write */
+	private final List<List<Map<String, Object>>> bulkWrites = new ArrayList<>();
+	/** IDs whose bulk write fails */
+	private final List<String> failing = new ArrayList<>();
+
+	@Before
+	public void setUp() {
+		client = mock(CloudantClientWrapper.class);
+		CloudantClientPool pool = mock(CloudantClientPool.class);
+		when(pool.getClient(REPOSITORY_ID)).thenReturn(client);
+		dao = new ContentDaoServiceImpl();
+		dao.setConnectorPool(pool);
+
+		DocumentResult stateResult = result("directorySyncState", "1-s", null);
+		when(client.create(eq("directorySyncState"), anyMap())).thenReturn(stateResult);
+		when(client.bulkWrite(any())).thenAnswer(invocation -> {
+			List<Map<String, Object>> docs = invocation.getArgument(0);
+			bulkWrites.add(docs);
+			List<DocumentResult> results = new ArrayList<>();
+			for (Map<String, Object> doc : docs) {
+				String id = (String) doc.get("_id");
+				results.add(failing.contains(id) ? result(id, null, "conflict") : result(id, "2-" + id, null));
+			}
+			return results;
+		});
+	}
+
+	@Test
+	public void testHashesAreSplitIntoChunks() {
+		DirectorySyncState state = new DirectorySyncState();
+		state.setUserMarker("20261019000000Z");
+		state.setUserHashes(hashes("user", 2500));
+		state.getGroupHashes().put("group-1", "h");
+
+		assertTrue(dao.saveDirectorySyncState(REPOSITORY_ID, state));
+
+		// 2500 users need 4 chunks of at most about 1000
+		List<Map<String, Object>> docs = bulkWrites.get(0);
+		assertEquals(5, docs.size());
+		int users = 0;
+		for (Map<String, Object> doc : docs) {
+			assertEquals("directorySyncStateChunk", doc.get("type"));
+			if (((String) doc.get("_id")).startsWith("directorySyncState.user.")) {
+				users += ((Map<?, ?>) doc.get("hashes")).size();
+			}
+		}
+		assertEquals(2500, users);
+		Map<String, Object> stateDoc = savedStateDocument();
+		assertEquals(4, stateDoc.get("userChunks"));
+		assertEquals(1, stateDoc.get("groupChunks"));
+		assertFalse(stateDoc.containsKey("userHashes"));
+		assertEquals("2-directorySyncState.user.0", state.getChunkRevisions().get("directorySyncState.user.0"));
+	}
+
+	@Test
+	public void testOnlyChangedChunksAreWritten() {
+		DirectorySyncState state = new DirectorySyncState();
+		state.setUserHashes(hashes("user", 2500));
+		assertTrue(dao.saveDirectorySyncState(REPOSITORY_ID, state));
+
+		Map<String, String> next = new HashMap<>(state.getUserHashes());
+		next.put("user-7", "changed");
+		state.setUserHashes(next);
+		assertTrue(dao.saveDirectorySyncState(REPOSITORY_ID, state));
+
+		List<Map<String, Object>> docs = bulkWrites.get(1);
+		assertEquals(1, docs.size());
+		assertEquals("changed", ((Map<?, ?>) docs.get(0).get("hashes")).get("user-7"));
+		// Written over the revision of the first save
+		assertEquals("2-" + docs.get(0).get("_id"), docs.get(0).get("_rev"));
+
+		// Nothing changed: only the state document is written
+		assertTrue(dao.saveDirectorySyncState(REPOSITORY_ID, state));
+		assertEquals(2, bulkWrites.size());
+	}
+
+	@Test
+	public void testLeftoverChunksAreDeleted() {
+		DirectorySyncState state = new DirectorySyncState();
+		state.setUserHashes(hashes("user", 2500));
+		assertTrue(dao.saveDirectorySyncState(REPOSITORY_ID, state));
+
+		state.setUserHashes(hashes("user", 10));
+		assertTrue(dao.saveDirectorySyncState(REPOSITORY_ID, state));
+
+		List<String> deleted = new ArrayList<>();
+		for (Map<String, Object> doc : bulkWrites.get(1)) {
+			if (Boolean.TRUE.equals(doc.get("_deleted"))) {
+				deleted.add((String) doc.get("_id"));
+			}
+		}
+		Collections.sort(deleted);
+		assertEquals(Arrays.asList("directorySyncState.user.1", "directorySyncState.user.2", "directorySyncState.user.3"), deleted);
+		assertEquals(Collections.singleton("directorySyncState.user.0"), state.getChunkRevisions().keySet());
+	}
+
+	@Test
+	public void testFailedChunkKeepsMarkersUnsaved() {
+		failing.add("directorySyncState.user.0");
+		DirectorySyncState state = new DirectorySyncState();
+		state.setUserHashes(hashes("user", 10));
+
+		assertFalse(dao.saveDirectorySyncState(REPOSITORY_ID, state));
+		verify(client, never()).create(eq("directorySyncState"), anyMap());
+	}
+
+	@Test
+	public void testLoadMergesChunks() {
+		Document stateDoc = document("directorySyncState", "3-s");
+		when(stateDoc.get("userMarker")).thenReturn("20261019000000Z");
+		when(stateDoc.get("userChunks")).thenReturn(2);
+		when(stateDoc.get("groupChunks")).thenReturn(1);
+		when(client.get("directorySyncState")).thenReturn(stateDoc);
+
+		Document user0 = document("directorySyncState.user.0", "5-a");
+		when(user0.get("hashes")).thenReturn(Collections.singletonMap("alice", "h1"));
+		Document group0 = document("directorySyncState.group.0", "6-b");
+		when(group0.get("hashes")).thenReturn(Collections.singletonMap("staff", "h3"));
+		Map<String, Document> chunks = new LinkedHashMap<>();
+		// directorySyncState.user.1 is missing and reads as empty
+		chunks.put("directorySyncState.user.0", user0);
+		chunks.put("directorySyncState.group.0", group0);
+		when(client.getDocuments(Arrays.asList("directorySyncState.user.0", "directorySyncState.user.1",
+				"directorySyncState.group.0"))).thenReturn(chunks);
+
+		DirectorySyncState state = dao.getDirectorySyncState(REPOSITORY_ID);
+
+		assertEquals("20261019000000Z", state.getUserMarker());
+		assertEquals(Collections.singletonMap("alice", "h1"), state.getUserHashes());
+		assertEquals(Collections.singletonMap("staff", "h3"), state.getGroupHashes());
+		assertEquals("5-a", state.getChunkRevisions().get("directorySyncState.user.0"));
+		assertTrue(state.getStoredChunks().get("directorySyncState.user.1").isEmpty());
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> savedStateDocument() {
+		ArgumentCaptor<Map<String, Object>> captor = ArgumentCaptor.forClass(Map.class);
+		verify(client).create(eq("directorySyncState"), captor.capture());
+		return captor.getValue();
+	}
+
+	private static Map<String, String> hashes(String prefix, int count) {
+		Map<String, String> hashes = new HashMap<>();
+		for (int i = 0; i < count; i++) {
+			hashes.put(prefix + "-" + i, "hash-" + i);
+		}
+		return hashes;
+	}
+
+	private static Document document(String id, String revision) {
+		Document doc = mock(Document.class);
+		when(doc.getId()).thenReturn(id);
+		when(doc.getRev()).thenReturn(revision);
+		return doc;
+	}
+
+	private static DocumentResult result(String id, String revision, String error) {
+		DocumentResult result = mock(DocumentResult.class);
+		when(result.getId()).thenReturn(id);
+		when(result.getRev()).thenReturn(revision);
+		when(result.getError()).thenReturn(error);
+		return result;
+	}
+}
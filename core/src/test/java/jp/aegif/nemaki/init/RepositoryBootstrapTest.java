@@ -0,0 +1,72 @@
+package jp.aegif.nemaki.init;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RepositoryBootstrapTest {
+
+	@Before
+	public void setUp() {
+		RepositoryBootstrap.reset();
+	}
+
+	@After
+	public void tearDown() {
+		RepositoryBootstrap.reset();
+	}
+
+	@Test
+	public void testRepositoriesRunInParallel() {
+		// Each task waits for the other, so this only finishes when both run at the same time
+		CountDownLatch latch = new CountDownLatch(2);
+		Set<String> done = ConcurrentHashMap.newKeySet();
+		RepositoryBootstrap.forEach("check", Arrays.asList("bedroom", "canopy"), 2, repositoryId -> {
+			latch.countDown();
+			try {
+				assertTrue(latch.await(10, TimeUnit.SECONDS));
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			done.add(repositoryId);
+		});
+		assertEquals(2, done.size());
+	}
+
+	@Test
+	public void testFailureDoesNotStopOtherRepositories() {
+		Set<String> done = ConcurrentHashMap.newKeySet();
+		boolean all = RepositoryBootstrap.allMatch("check", Arrays.asList("bedroom", "canopy", "other"), 1, repositoryId -> {
+			if ("canopy".equals(repositoryId)) {
+				throw new IllegalStateException("boom");
+			}
+			done.add(repositoryId);
+			return true;
+		});
+		assertFalse(all);
+		assertEquals(2, done.size());
+		assertTrue(RepositoryBootstrap.allMatch("check", Arrays.asList("bedroom"), 1, repositoryId -> true));
+	}
+
+	@Test
+	public void testReport() {
+		RepositoryBootstrap.record("types", "bedroom", 120);
+		RepositoryBootstrap.record("types", "canopy", 30);
+		RepositoryBootstrap.record("types", "*", 150);
+		RepositoryBootstrap.record("patches", "*", 40);
+
+		assertEquals("Startup timing report"
+				+ "\n  types: 150ms (bedroom=120ms, canopy=30ms)"
+				+ "\n  patches: 40ms", RepositoryBootstrap.report());
+	}
+}
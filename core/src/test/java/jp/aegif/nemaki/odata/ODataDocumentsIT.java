@@ -1,11 +1,18 @@
 package jp.aegif.nemaki.odata;
 
 import io.restassured.response.Response;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import static io.restassured.RestAssured.given;
 import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertTrue;
 
 /**
  * OData 4.0 E2E/integration tests for Documents entity set.
@@ -14,7 +21,9 @@ import static org.hamcrest.Matchers.*;
  * - GET collection (list documents)
  * - GET with $filter query option
  * - GET with $top and $skip pagination
+ * - Server-driven paging via @odata.nextLink / $skiptoken
  * - GET with $count
+ * - GET with $apply (groupby / aggregate)
  * - GET single entity by ID
  * - POST create document (if supported)
  * - PATCH update document (if supported)
@@ -25,6 +34,8 @@ import static org.hamcrest.Matchers.*;
  */
 @Ignore("Requires running NemakiWare instance - remove @Ignore to run integration tests")
 public class ODataDocumentsIT extends ODataTestBase {
+
+    private static final Log log = LogFactory.getLog(ODataDocumentsIT.class);
     
     /**
      * Test GET /odata/{repositoryId}/Documents - List all documents.
@@ -93,6 +104,79 @@ public class ODataDocumentsIT extends ODataTestBase {
             .body("value.size()", lessThanOrEqualTo(10));
     }
     
+    /**
+     * Test server-driven paging: follow @odata.nextLink until the last page
+     * and check that no document is returned twice.
+     */
+    @Test
+    public void testGetDocumentsWithNextLink() {
+        Set<String> seen = new HashSet<>();
+        String next = null;
+        int pages = 0;
+        do {
+            Response response = (next == null
+                    ? given().spec(requestSpec).header("Prefer", "odata.maxpagesize=5").when().get(documentsPath())
+                    : given().spec(requestSpec).urlEncodingEnabled(false).header("Prefer", "odata.maxpagesize=5").when().get(next))
+                .then()
+                    .statusCode(200)
+                    .body("value.size()", lessThanOrEqualTo(5))
+                    .extract().response();
+            List<String> ids = response.path("value.objectId");
+            for (String id : ids) {
+                assertTrue("Duplicate across pages: " + id, seen.add(id));
+            }
+            next = response.path("'@odata.nextLink'");
+            pages++;
+        } while (next != null && pages < 1000);
+    }
+
+    /**
+     * Test that a tampered $skiptoken is rejected.
+     */
+    @Test
+    public void testGetDocumentsWithInvalidSkipToken() {
+        given()
+            .spec(requestSpec)
+            .queryParam("$skiptoken", "bm90LWEtdG9rZW4")
+        .when()
+            .get(documentsPath())
+        .then()
+            .statusCode(400);
+    }
+
+    /**
+     * Compare the latency of a deep page reached by $skip with the same page
+     * reached by following nextLinks (Solr cursorMark). Logs the timings;
+     * meaningful only against a repository with many thousands of documents.
+     */
+    @Test
+    public void testDeepPagingLatency() {
+        int pageSize = 100;
+        int depth = 50;
+
+        long start = System.currentTimeMillis();
+        given().spec(requestSpec).queryParam("$top", pageSize).queryParam("$skip", pageSize * depth)
+            .when().get(documentsPath())
+            .then().statusCode(200);
+        long skipMillis = System.currentTimeMillis() - start;
+
+        String next = null;
+        long lastPageMillis = 0;
+        for (int i = 0; i <= depth; i++) {
+            start = System.currentTimeMillis();
+            Response response = (next == null
+                    ? given().spec(requestSpec).header("Prefer", "odata.maxpagesize=" + pageSize).when().get(documentsPath())
+                    : given().spec(requestSpec).urlEncodingEnabled(false).when().get(next))
+                .then().statusCode(200).extract().response();
+            lastPageMillis = System.currentTimeMillis() - start;
+            next = response.path("'@odata.nextLink'");
+            if (next == null) {
+                break;
+            }
+        }
+        log.info("Page " + depth + " via $skip: " + skipMillis + "ms, via $skiptoken: " + lastPageMillis + "ms");
+    }
+
     /**
      * Test GET /odata/{repositoryId}/Documents with $count=true.
      */
@@ -727,4 +811,53 @@ public class ODataDocumentsIT extends ODataTestBase {
         .then()
             .statusCode(anyOf(equalTo(200), equalTo(400))); // 400 if invalid search term
     }
+    
+    /**
+     * Test $apply groupby with a count per group.
+     */
+    @Test
+    public void testGetDocumentsWithApplyGroupBy() {
+        given()
+            .spec(requestSpec)
+            .queryParam("$apply", "groupby((createdBy),aggregate($count as total))")
+        .when()
+            .get(documentsPath())
+        .then()
+            .statusCode(200)
+            .contentType(containsString("application/json"))
+            .body("value", instanceOf(java.util.List.class))
+            .body("value.total", everyItem(greaterThan(0)));
+    }
+    
+    /**
+     * Test $apply with a filter, a month bucket and several aggregates.
+     */
+    @Test
+    public void testGetDocumentsWithApplyByMonth() {
+        given()
+            .spec(requestSpec)
+            .queryParam("$apply", "filter(contentStreamLength gt 0)"
+                    + "/compute(year(creationDate) as year,month(creationDate) as month)"
+                    + "/groupby((year,month),aggregate($count as total,contentStreamLength with sum as size,"
+                    + "contentStreamLength with max as largest))")
+        .when()
+            .get(documentsPath())
+        .then()
+            .statusCode(200)
+            .body("value", instanceOf(java.util.List.class));
+    }
+    
+    /**
+     * Test $apply on an entity set it is not supported on.
+     */
+    @Test
+    public void testGetRelationshipsWithApply() {
+        given()
+            .spec(requestSpec)
+            .queryParam("$apply", "aggregate($count as total)")
+        .when()
+            .get(relationshipsPath())
+        .then()
+            .statusCode(501);
+    }
 }
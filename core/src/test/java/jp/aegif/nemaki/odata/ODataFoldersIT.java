@@ -736,4 +736,24 @@ public class ODataFoldersIT extends ODataTestBase {
             .statusCode(200)
             .contentType(containsString("application/json"));
     }
+    
+    /**
+     * Test GET /odata/{repositoryId}/Folders with $expand=children.
+     * Children of the whole page are resolved together; each folder inlines at most
+     * odata.expand.max.children of them.
+     */
+    @Test
+    public void testGetFoldersWithExpandChildren() {
+        given()
+            .spec(requestSpec)
+            .queryParam("$expand", "children,parent")
+            .queryParam("$top", 50)
+        .when()
+            .get(foldersPath())
+        .then()
+            .statusCode(200)
+            .contentType(containsString("application/json"))
+            .body("value", notNullValue())
+            .body("value.findAll { it.children != null }.children.flatten().size()", lessThanOrEqualTo(1000));
+    }
 }
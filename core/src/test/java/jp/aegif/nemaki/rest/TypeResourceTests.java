@@ -258,6 +258,11 @@ public class TypeResourceTests {
                 return new ArrayList<>();
             }
 
+            @Override
+            public String getTypeSystemRevision(String repositoryId) {
+                return "0";
+            }
+
             @Override
             public NemakiTypeDefinition createTypeDefinition(String repositoryId, NemakiTypeDefinition typeDefinition) {
                 return typeDefinition;
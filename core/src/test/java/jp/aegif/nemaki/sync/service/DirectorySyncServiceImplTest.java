@@ -0,0 +1,267 @@
+/*******************************************************************************
+ * Copyright (c) 2013 aegif.
+ *
+ * This file is part of NemakiWare.
+ *
+ * NemakiWare is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * NemakiWare is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with NemakiWare.
+ * If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors:
+ *     aegif - Directory Sync feature implementation
+ ******************************************************************************/
+package jp.aegif.nemaki.sync.service;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.chemistry.opencmis.commons.enums.ChangeType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+
+import jp.aegif.nemaki.businesslogic.ContentService;
+import jp.aegif.nemaki.dao.ContentDaoService;
+import jp.aegif.nemaki.model.BulkWriteResult;
+import jp.aegif.nemaki.model.Content;
+import jp.aegif.nemaki.model.DirectorySyncState;
+import jp.aegif.nemaki.model.Folder;
+import jp.aegif.nemaki.model.UserItem;
+import jp.aegif.nemaki.sync.connector.LdapDirectoryConnector;
+import jp.aegif.nemaki.sync.model.DirectorySyncConfig;
+import jp.aegif.nemaki.sync.model.DirectorySyncResult;
+import jp.aegif.nemaki.sync.model.LdapUser;
+
+/**
+ * Incremental directory sync against an in-memory LDAP server.
+ */
+public class DirectorySyncServiceImplTest {
+
+    private static final String REPO_ID = "bedroom";
+    private static final String BASE_DN = "dc=example,dc=com";
+    private static final String BIND_DN = "cn=admin,dc=example,dc=com";
+    private static final String BIND_PASSWORD = "secret";
+
+    private InMemoryDirectoryServer server;
+    private DirectorySyncConfig config;
+    private ContentService contentService;
+    private ContentDaoService contentDaoService;
+    private DirectorySyncServiceImpl service;
+    private final AtomicReference<DirectorySyncState> savedState = new AtomicReference<>();
+
+    @Before
+    public void setUp() throws Exception {
+        InMemoryDirectoryServerConfig serverConfig = new InMemoryDirectoryServerConfig(BASE_DN);
+        serverConfig.addAdditionalBindCredentials(BIND_DN, BIND_PASSWORD);
+        serverConfig.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("default", 0));
+        server = new InMemoryDirectoryServer(serverConfig);
+        server.add("dn: " + BASE_DN, "objectClass: domain", "dc: example");
+        server.add("dn: ou=users," + BASE_DN, "objectClass: organizationalUnit", "ou: users");
+        server.add("dn: ou=groups," + BASE_DN, "objectClass: organizationalUnit", "ou: groups");
+        addUser("alice", "Alice");
+        addUser("bob", "Bob");
+        server.add("dn: cn=devs,ou=groups," + BASE_DN, "objectClass: groupOfNames", "cn: devs",
+                "member: uid=alice,ou=users," + BASE_DN);
+        server.startListening();
+
+        config = new DirectorySyncConfig();
+        config.setEnabled(true);
+        config.setLdapUrl("ldap://localhost:" + server.getListenPort());
+        config.setLdapBaseDn(BASE_DN);
+        config.setLdapBindDn(BIND_DN);
+        config.setLdapBindPassword(BIND_PASSWORD);
+        config.setUserSearchBase("ou=users");
+        config.setUserSearchFilter(DirectorySyncConfig.DEFAULT_USER_SEARCH_FILTER);
+        config.setUserIdAttribute(DirectorySyncConfig.DEFAULT_USER_ID_ATTRIBUTE);
+        config.setGroupSearchBase("ou=groups");
+        config.setGroupSearchFilter(DirectorySyncConfig.DEFAULT_GROUP_SEARCH_FILTER);
+        config.setGroupIdAttribute(DirectorySyncConfig.DEFAULT_GROUP_ID_ATTRIBUTE);
+        config.setGroupNameAttribute(DirectorySyncConfig.DEFAULT_GROUP_NAME_ATTRIBUTE);
+        config.setGroupMemberAttribute(DirectorySyncConfig.DEFAULT_GROUP_MEMBER_ATTRIBUTE);
+        config.setGroupPrefix(DirectorySyncConfig.DEFAULT_GROUP_PREFIX);
+        config.setUserPrefix(DirectorySyncConfig.DEFAULT_USER_PREFIX);
+        config.setCreateMissingUsers(true);
+        config.setUpdateExistingUsers(true);
+        config.setInitialPassword("changeit");
+        config.setIncrementalSync(true);
+
+        contentService = mock(ContentService.class);
+        contentDaoService = mock(ContentDaoService.class);
+        mockSystemFolders();
+        when(contentService.getUserItems(REPO_ID)).thenReturn(new ArrayList<UserItem>());
+        when(contentService.getGroupItems(REPO_ID)).thenReturn(new ArrayList<>());
+        when(contentService.bulkWrite(any(), eq(REPO_ID), anyList(), any())).thenAnswer(invocation -> {
+            List<BulkWriteResult> results = new ArrayList<>();
+            for (Object content : (List<?>) invocation.getArgument(2)) {
+                results.add(new BulkWriteResult((Content) content, ((Content) content).getId(), "1-a", null, null));
+            }
+            return results;
+        });
+        when(contentDaoService.getDirectorySyncState(REPO_ID)).thenAnswer(invocation -> savedState.get());
+        when(contentDaoService.saveDirectorySyncState(eq(REPO_ID), any(DirectorySyncState.class))).thenAnswer(invocation -> {
+            savedState.set(invocation.getArgument(1));
+            return true;
+        });
+
+        service = new DirectorySyncServiceImpl() {
+            @Override
+            public DirectorySyncConfig getConfig(String repositoryId) {
+                return config;
+            }
+        };
+        service.setContentService(contentService);
+        service.setContentDaoService(contentDaoService);
+    }
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.shutDown(true);
+        }
+    }
+
+    @Test
+    public void testSearchUsersChangedSinceReturnsOnlyModifiedEntries() throws Exception {
+        LdapDirectoryConnector connector = new LdapDirectoryConnector(config);
+        connector.connect();
+        try {
+            List<LdapUser> all = connector.searchUsers();
+            assertEquals(2, all.size());
+            for (LdapUser user : all) {
+                assertNotNull("Change marker should be read", user.getChangeMarker());
+            }
+
+            waitForNextTimestamp();
+            SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHHmmss'Z'");
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            String since = format.format(new Date());
+            renameUser("bob", "Robert");
+
+            List<LdapUser> changed = connector.searchUsers(since);
+            assertEquals(1, changed.size());
+            assertEquals("bob", changed.get(0).getUserId());
+            assertEquals("Robert", changed.get(0).getUserName());
+        } finally {
+            connector.disconnect();
+        }
+    }
+
+    @Test
+    public void testLaterMarker() {
+        assertEquals("10", LdapDirectoryConnector.laterMarker("9", "10"));
+        assertEquals("20240102000000Z", LdapDirectoryConnector.laterMarker("20240102000000Z", "20240101000000Z"));
+        assertEquals("5", LdapDirectoryConnector.laterMarker(null, "5"));
+        assertEquals("5", LdapDirectoryConnector.laterMarker("5", null));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testIncrementalSyncWritesOnlyChangedUsers() throws Exception {
+        DirectorySyncResult first = service.syncGroups(REPO_ID, false);
+        assertEquals(DirectorySyncResult.SyncStatus.SUCCESS, first.getStatus());
+        assertEquals(DirectorySyncResult.SyncMode.FULL, first.getMode());
+        assertEquals(2, first.getUsersAdded());
+        assertEquals(1, first.getGroupsCreated());
+        assertNotNull(savedState.get());
+        assertNotNull(savedState.get().getUserMarker());
+        assertEquals(2, savedState.get().getUserHashes().size());
+
+        UserItem bob = new UserItem("bob-id", "nemaki:user", "bob", "Bob", "hash", false, "users-folder");
+        bob.setRevision("1-a");
+
+        waitForNextTimestamp();
+        renameUser("bob", "Robert");
+        reset(contentService);
+        mockSystemFolders();
+        when(contentService.getUserItemById(REPO_ID, "bob")).thenReturn(bob);
+        when(contentService.bulkWrite(any(), eq(REPO_ID), anyList(), any())).thenAnswer(invocation -> {
+            List<BulkWriteResult> results = new ArrayList<>();
+            for (Object content : (List<?>) invocation.getArgument(2)) {
+                results.add(new BulkWriteResult((Content) content, ((Content) content).getId(), "2-b", null, null));
+            }
+            return results;
+        });
+
+        DirectorySyncResult second = service.syncGroups(REPO_ID, false);
+        assertEquals(DirectorySyncResult.SyncStatus.SUCCESS, second.getStatus());
+        assertEquals(DirectorySyncResult.SyncMode.INCREMENTAL, second.getMode());
+        assertEquals(1, second.getUsersUpdated());
+        assertEquals(0, second.getUsersAdded());
+        assertEquals(0, second.getGroupsUpdated());
+
+        // No full listing and exactly one write holding bob
+        verify(contentService, never()).getUserItems(REPO_ID);
+        verify(contentService, never()).getGroupItems(REPO_ID);
+        ArgumentCaptor<List<Content>> captor = ArgumentCaptor.forClass((Class<List<Content>>) (Class<?>) List.class);
+        verify(contentService, times(1)).bulkWrite(any(), eq(REPO_ID), captor.capture(), eq(ChangeType.UPDATED));
+        verify(contentService, never()).bulkWrite(any(), eq(REPO_ID), anyList(), eq(ChangeType.CREATED));
+        assertEquals(1, captor.getValue().size());
+        assertEquals("Robert", captor.getValue().get(0).getName());
+        verify(contentService, never()).getUserItemById(REPO_ID, "alice");
+    }
+
+    @Test
+    public void testFullReconcileRequestedIgnoresState() throws Exception {
+        service.syncGroups(REPO_ID, false);
+
+        DirectorySyncResult result = service.syncGroups(REPO_ID, true, true);
+        assertEquals(DirectorySyncResult.SyncMode.FULL, result.getMode());
+        assertEquals(2, result.getUsersAdded());
+    }
+
+    private void mockSystemFolders() {
+        Folder systemFolder = new Folder();
+        systemFolder.setId("system-folder");
+        systemFolder.setName(".system");
+        Folder usersFolder = new Folder();
+        usersFolder.setId("users-folder");
+        usersFolder.setName("users");
+        Folder groupsFolder = new Folder();
+        groupsFolder.setId("groups-folder");
+        groupsFolder.setName("groups");
+        when(contentService.getSystemFolder(REPO_ID)).thenReturn(systemFolder);
+        when(contentService.getChildren(REPO_ID, "system-folder"))
+                .thenReturn(new ArrayList<Content>(Arrays.asList(usersFolder, groupsFolder)));
+    }
+
+    private void addUser(String uid, String cn) throws Exception {
+        server.add("dn: uid=" + uid + ",ou=users," + BASE_DN, "objectClass: inetOrgPerson",
+                "uid: " + uid, "cn: " + cn, "sn: " + cn);
+    }
+
+    private void renameUser(String uid, String cn) throws Exception {
+        server.modify("uid=" + uid + ",ou=users," + BASE_DN,
+                Collections.singletonList(new Modification(ModificationType.REPLACE, "cn", cn)));
+    }
+
+    // modifyTimestamp has a resolution of one second on some servers
+    private void waitForNextTimestamp() throws InterruptedException {
+        Thread.sleep(1100);
+    }
+}
@@ -0,0 +1,116 @@
+package jp.aegif.nemaki.util.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class RequestLookupCacheTest {
+
+	private static final String REPOSITORY_ID = "bedroom";
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	@After
+	public void tearDown() {
+		// Every scope a test opens is closed again
+		assertFalse(RequestLookupCache.isOpen());
+	}
+
+	@Test
+	public void testLoadsEveryTimeWhenNotOpen() {
+		assertEquals("v1", RequestLookupCache.get(RequestLookupCache.USER, REPOSITORY_ID, "alice", loader()));
+		assertEquals("v2", RequestLookupCache.get(RequestLookupCache.USER, REPOSITORY_ID, "alice", loader()));
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void testMemoisesWithinScope() {
+		try (RequestLookupCache cache = RequestLookupCache.open()) {
+			assertEquals("v1", RequestLookupCache.get(RequestLookupCache.USER, REPOSITORY_ID, "alice", loader()));
+			assertEquals("v1", RequestLookupCache.get(RequestLookupCache.USER, REPOSITORY_ID, "alice", loader()));
+			// Kind, repository and key all make up the cache key
+			assertEquals("v2", RequestLookupCache.get(RequestLookupCache.GROUPS, REPOSITORY_ID, "alice", loader()));
+			assertEquals("v3", RequestLookupCache.get(RequestLookupCache.USER, "canopy", "alice", loader()));
+			assertEquals("v4", RequestLookupCache.get(RequestLookupCache.USER, REPOSITORY_ID, "bob", loader()));
+		}
+		assertEquals(4, loads.get());
+	}
+
+	@Test
+	public void testNestedScopesShareTheOutermostCache() {
+		try (RequestLookupCache outer = RequestLookupCache.open()) {
+			assertEquals("v1", RequestLookupCache.get(RequestLookupCache.TYPE, REPOSITORY_ID, "cmis:document", loader()));
+			try (RequestLookupCache inner = RequestLookupCache.open()) {
+				assertSame(outer, inner);
+				assertEquals("v1", RequestLookupCache.get(RequestLookupCache.TYPE, REPOSITORY_ID, "cmis:document", loader()));
+				assertEquals("v2", RequestLookupCache.get(RequestLookupCache.TYPE, REPOSITORY_ID, "cmis:folder", loader()));
+			}
+			// Closing the inner scope keeps what it loaded
+			assertTrue(RequestLookupCache.isOpen());
+			assertEquals("v2", RequestLookupCache.get(RequestLookupCache.TYPE, REPOSITORY_ID, "cmis:folder", loader()));
+		}
+		assertFalse(RequestLookupCache.isOpen());
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void testNullValuesAreNotMemoised() {
+		AtomicInteger nullLoads = new AtomicInteger();
+		Supplier<String> missing = () -> {
+			nullLoads.incrementAndGet();
+			return null;
+		};
+		try (RequestLookupCache cache = RequestLookupCache.open()) {
+			assertNull(RequestLookupCache.get(RequestLookupCache.ACL, REPOSITORY_ID, "object", missing));
+			assertNull(RequestLookupCache.get(RequestLookupCache.ACL, REPOSITORY_ID, "object", missing));
+			assertEquals(2, nullLoads.get());
+
+			// A null key bypasses the cache
+			assertEquals("v1", RequestLookupCache.get(RequestLookupCache.ACL, REPOSITORY_ID, null, loader()));
+			assertEquals("v2", RequestLookupCache.get(RequestLookupCache.ACL, REPOSITORY_ID, null, loader()));
+		}
+	}
+
+	@Test
+	public void testCloseClearsTheCache() {
+		try (RequestLookupCache cache = RequestLookupCache.open()) {
+			assertEquals("v1", RequestLookupCache.get(RequestLookupCache.VERSION_SERIES, REPOSITORY_ID, "vs", loader()));
+		}
+		assertFalse(RequestLookupCache.isOpen());
+
+		try (RequestLookupCache cache = RequestLookupCache.open()) {
+			assertEquals("v2", RequestLookupCache.get(RequestLookupCache.VERSION_SERIES, REPOSITORY_ID, "vs", loader()));
+		}
+	}
+
+	@Test
+	public void testMetricsCountClosedRequests() {
+		long requests = RequestLookupCache.getMetrics().get("request.lookups.requests");
+		long loaded = RequestLookupCache.getMetrics().get("request.lookups.loaded");
+		long saved = RequestLookupCache.getMetrics().get("request.lookups.saved");
+
+		try (RequestLookupCache outer = RequestLookupCache.open()) {
+			try (RequestLookupCache inner = RequestLookupCache.open()) {
+				RequestLookupCache.get(RequestLookupCache.USER, REPOSITORY_ID, "alice", loader());
+			}
+			RequestLookupCache.get(RequestLookupCache.USER, REPOSITORY_ID, "alice", loader());
+			RequestLookupCache.get(RequestLookupCache.USER, REPOSITORY_ID, "alice", loader());
+		}
+
+		assertEquals(requests + 1, (long) RequestLookupCache.getMetrics().get("request.lookups.requests"));
+		assertEquals(loaded + 1, (long) RequestLookupCache.getMetrics().get("request.lookups.loaded"));
+		assertEquals(saved + 2, (long) RequestLookupCache.getMetrics().get("request.lookups.saved"));
+	}
+
+	private Supplier<String> loader() {
+		return () -> "v" + loads.incrementAndGet();
+	}
+}
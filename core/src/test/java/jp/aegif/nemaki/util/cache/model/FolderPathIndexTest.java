@@ -0,0 +1,195 @@
+package jp.aegif.nemaki.util.cache.model;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import jp.aegif.nemaki.model.Folder;
+
+public class FolderPathIndexTest {
+
+	private FolderPathIndex index;
+	private Map<String, Folder> store;
+	private Function<String, Folder> loader;
+
+	@Before
+	public void setUp() {
+		index = new FolderPathIndex(1000);
+		store = new HashMap<String, Folder>();
+		loader = id -> store.get(id);
+		List<Folder> folders = new ArrayList<Folder>();
+		folders.add(folder("root", null, "/"));
+		folders.add(folder("a", "root", "a"));
+		folders.add(folder("b", "a", "b"));
+		folders.add(folder("c", "b", "c"));
+		for (Folder folder : folders) {
+			store.put(folder.getId(), folder);
+		}
+		assertEquals(4, index.load(() -> folders));
+	}
+
+	@Test
+	public void testResolvesBothDirections() {
+		assertEquals("/", index.getPath("root", loader));
+		assertEquals("/a", index.getPath("a", loader));
+		assertEquals("/a/b/c", index.getPath("c", loader));
+		assertEquals("b", index.getChildId("a", "b"));
+		assertNull(index.getChildId("a", "c"));
+		assertNull(index.getPath("missing", loader));
+	}
+
+	@Test
+	public void testRenameAndMoveOfAncestor() {
+		index.put(folder("a", "root", "renamed"));
+		assertEquals("/renamed/b/c", index.getPath("c", loader));
+		assertEquals("a", index.getChildId("root", "renamed"));
+		assertNull(index.getChildId("root", "a"));
+
+		index.put(folder("x", "root", "x"));
+		index.put(folder("b", "x", "b"));
+		assertEquals("/x/b/c", index.getPath("c", loader));
+		assertNull(index.getChildId("a", "b"));
+		assertEquals("b", index.getChildId("x", "b"));
+	}
+
+	@Test
+	public void testFillsMissingFoldersFromLoader() {
+		index.clear();
+		assertEquals("/a/b/c", index.getPath("c", loader));
+		assertEquals(4, index.size());
+		assertEquals("c", index.getChildId("b", "c"));
+	}
+
+	@Test
+	public void testOrphanKeepsPathBelowTopmostAncestor() {
+		index.remove("a");
+		store.remove("a");
+		assertEquals("/c", index.getPath("c", loader));
+	}
+
+	@Test
+	public void testRemove() {
+		index.remove("c");
+		assertNull(index.getChildId("b", "c"));
+		store.remove("c");
+		assertNull(index.getPath("c", loader));
+	}
+
+	@Test
+	public void testRemoveTree() {
+		index.put(folder("d", "a", "d"));
+		index.removeTree("b");
+		assertNull(index.getChildId("a", "b"));
+		assertNull(index.getChildId("b", "c"));
+		assertEquals("d", index.getChildId("a", "d"));
+		assertEquals(3, index.size());
+
+		// Paths below are read again, with what changed meanwhile
+		store.put("b", folder("b", "a", "renamed"));
+		assertEquals("/a/renamed/c", index.getPath("c", loader));
+	}
+
+	@Test
+	public void testLoadKeepsWhatWasWrittenWhileReading() {
+		FolderPathIndex fresh = new FolderPathIndex(1000);
+		assertFalse(fresh.isLoadStarted());
+		int loaded = fresh.load(() -> {
+			// The reader does not hold the index
+			fresh.put(folder("a", "root", "renamed"));
+			fresh.remove("b");
+			return new ArrayList<Folder>(store.values());
+		});
+
+		assertEquals(2, loaded);
+		assertEquals("a", fresh.getChildId("root", "renamed"));
+		assertNull(fresh.getChildId("a", "b"));
+		assertEquals("c", fresh.getChildId("b", "c"));
+
+		// Only the first load reads
+		assertTrue(fresh.isLoadStarted());
+		assertEquals(-1, fresh.load(() -> {
+			throw new AssertionError("read twice");
+		}));
+	}
+
+	@Test
+	public void testStartsOverWhenFull() {
+		FolderPathIndex small = new FolderPathIndex(2);
+		small.put(folder("root", null, "/"));
+		small.put(folder("a", "root", "a"));
+		small.put(folder("b", "a", "b"));
+		assertEquals(1, small.size());
+		assertEquals("/a/b", small.getPath("b", loader));
+	}
+
+	@Test
+	public void testConcurrentRenamesOfAncestors() throws Exception {
+		final int renames = 2000;
+		final CountDownLatch writersDone = new CountDownLatch(2);
+		final ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<String>();
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(6);
+
+		// Writers rename both ancestors back and forth
+		for (final String id : new String[] { "a", "b" }) {
+			final String parentId = "a".equals(id) ? "root" : "a";
+			executor.submit(() -> {
+				start.await();
+				for (int i = 0; i < renames; i++) {
+					index.put(folder(id, parentId, id + (i % 2)));
+				}
+				index.put(folder(id, parentId, id));
+				writersDone.countDown();
+				return null;
+			});
+		}
+		// Readers must always see one consistent name per ancestor
+		for (int r = 0; r < 4; r++) {
+			executor.submit(() -> {
+				start.await();
+				while (writersDone.getCount() > 0) {
+					String path = index.getPath("c", loader);
+					if (!path.matches("/a[01]?/b[01]?/c")) {
+						errors.add(path);
+					}
+					String a = index.getChildId("root", "a");
+					if (a != null && !"a".equals(a)) {
+						errors.add("root/a -> " + a);
+					}
+				}
+				return null;
+			});
+		}
+
+		start.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+		assertTrue(errors.toString(), errors.isEmpty());
+		assertEquals("/a/b/c", index.getPath("c", loader));
+		assertEquals("a", index.getChildId("root", "a"));
+		assertEquals("b", index.getChildId("a", "b"));
+		assertNull(index.getChildId("root", "a0"));
+		assertNull(index.getChildId("root", "a1"));
+	}
+
+	private static Folder folder(String id, String parentId, String name) {
+		Folder folder = new Folder();
+		folder.setId(id);
+		folder.setParentId(parentId);
+		folder.setName(name);
+		return folder;
+	}
+}
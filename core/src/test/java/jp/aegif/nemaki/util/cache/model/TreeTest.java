@@ -0,0 +1,209 @@
+package jp.aegif.nemaki.util.cache.model;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+
+import jp.aegif.nemaki.model.Content;
+import jp.aegif.nemaki.model.Folder;
+
+public class TreeTest {
+
+	private static final Log log = LogFactory.getLog(TreeTest.class);
+
+	@Test
+	public void testChildrenAreOrderedByName() {
+		Tree tree = new Tree("parent");
+		tree.add("3", "c");
+		tree.add("1", "a");
+		tree.add("2", "b");
+		tree.add("1", "a");
+		assertEquals(Arrays.asList("1", "2", "3"), tree.getChildren());
+
+		tree.add("1", "d");
+		assertEquals(Arrays.asList("2", "3", "1"), tree.getChildren());
+
+		tree.rename("3", "0");
+		tree.rename("unknown", "z");
+		assertEquals(Arrays.asList("3", "2", "1"), tree.getChildren());
+
+		tree.remove("2");
+		tree.remove("unknown");
+		assertEquals(Arrays.asList("3", "1"), tree.getChildren());
+		tree.remove("3");
+		tree.remove("1");
+		assertEquals(0, tree.size());
+	}
+
+	@Test
+	public void testSetChildren() {
+		List<Content> children = new ArrayList<Content>();
+		children.add(folder("b", "beta"));
+		children.add(folder("a", "alpha"));
+		children.add(folder("n", null));
+		Tree tree = new Tree("parent");
+		tree.setChildren(children);
+		assertEquals(Arrays.asList("a", "b", "n"), tree.getChildren());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testChildrenAreUnmodifiable() {
+		Tree tree = new Tree("parent");
+		tree.add("1", "a");
+		tree.getChildren().set(0, "2");
+	}
+
+	@Test
+	public void testSnapshotIsStableWhileWriting() {
+		Tree tree = new Tree("parent");
+		for (int i = 0; i < 10; i++) {
+			tree.add("id" + i, "name" + i);
+		}
+		int count = 0;
+		for (String id : tree.getChildren()) {
+			tree.remove(id);
+			tree.add(id + "-new", "x" + id);
+			count++;
+		}
+		assertEquals(10, count);
+		assertEquals(10, tree.size());
+	}
+
+	@Test
+	public void testConcurrentAddRemoveLosesNoUpdates() throws Exception {
+		final Tree tree = new Tree("parent");
+		final int writers = 4;
+		final int perWriter = 500;
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch writersDone = new CountDownLatch(writers);
+		final ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<Throwable>();
+		ExecutorService executor = Executors.newFixedThreadPool(writers + 2);
+
+		for (int w = 0; w < writers; w++) {
+			final int writer = w;
+			executor.submit(() -> {
+				start.await();
+				for (int i = 0; i < perWriter; i++) {
+					tree.add(writer + "-" + i, "name-" + i);
+					// Every second child is removed again
+					if (i % 2 == 1) {
+						tree.remove(writer + "-" + i);
+					}
+				}
+				writersDone.countDown();
+				return null;
+			});
+		}
+		for (int r = 0; r < 2; r++) {
+			executor.submit(() -> {
+				start.await();
+				while (writersDone.getCount() > 0) {
+					try {
+						for (String id : tree.getChildren()) {
+							assertNotNull(id);
+						}
+					} catch (Throwable t) {
+						errors.add(t);
+					}
+				}
+				return null;
+			});
+		}
+
+		start.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+		assertTrue(errors.toString(), errors.isEmpty());
+
+		Set<String> expected = new HashSet<String>();
+		for (int w = 0; w < writers; w++) {
+			for (int i = 0; i < perWriter; i += 2) {
+				expected.add(w + "-" + i);
+			}
+		}
+		assertEquals(expected, new HashSet<String>(tree.getChildren()));
+		assertEquals(expected.size(), tree.size());
+	}
+
+	/**
+	 * Heap used by the tree cache structures of a 1M-folder repository, compared
+	 * with the former HashSet layout. IDs and names are shared by both, as they
+	 * are with the cached contents. Run with -Dnemaki.benchmark=true.
+	 */
+	@Test
+	public void benchmarkFootprintOfOneMillionFolders() {
+		assumeTrue(Boolean.getBoolean("nemaki.benchmark"));
+		final int folders = 1000000;
+		final int childrenPerFolder = 3;
+
+		String[] parentIds = new String[folders];
+		String[][] childIds = new String[folders][];
+		String[] names = new String[childrenPerFolder];
+		for (int c = 0; c < childrenPerFolder; c++) {
+			names[c] = "child" + c;
+		}
+		for (int i = 0; i < folders; i++) {
+			parentIds[i] = id(i);
+			// Most folders of a large repository are leaves
+			childIds[i] = new String[i % 4 == 0 ? childrenPerFolder : 0];
+			for (int c = 0; c < childIds[i].length; c++) {
+				childIds[i][c] = id(i) + c;
+			}
+		}
+
+		long before = usedMemory();
+		Tree[] trees = new Tree[folders];
+		for (int i = 0; i < folders; i++) {
+			trees[i] = new Tree(parentIds[i]);
+			for (int c = 0; c < childIds[i].length; c++) {
+				trees[i].add(childIds[i][c], names[c]);
+			}
+		}
+		long treeBytes = usedMemory() - before;
+
+		before = usedMemory();
+		List<Set<String>> sets = new ArrayList<Set<String>>(folders);
+		for (int i = 0; i < folders; i++) {
+			sets.add(new HashSet<String>(Arrays.asList(childIds[i])));
+		}
+		long setBytes = usedMemory() - before;
+
+		log.info("Tree cache structures for " + folders + " folders: " + (treeBytes >> 20)
+				+ " MB, HashSet layout: " + (setBytes >> 20) + " MB");
+		assertEquals(trees.length, sets.size());
+		assertTrue("Tree cache structures should be smaller than the HashSet layout", treeBytes < setBytes);
+	}
+
+	private static String id(int i) {
+		return String.format("%032x", i);
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static Folder folder(String id, String name) {
+		Folder folder = new Folder();
+		folder.setId(id);
+		folder.setName(name);
+		return folder;
+	}
+}
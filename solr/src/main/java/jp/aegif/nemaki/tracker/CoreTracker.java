@@ -29,6 +29,7 @@ import jp.aegif.nemaki.util.yaml.RepositorySettings;
 import org.apache.chemistry.opencmis.client.api.ChangeEvent;
 import org.apache.chemistry.opencmis.client.api.ChangeEvents;
 import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisInvalidArgumentException;
 import org.apache.chemistry.opencmis.commons.exceptions.CmisRuntimeException;
 import org.apache.chemistry.opencmis.commons.spi.CmisBinding;
 import org.apache.commons.lang3.StringUtils;
@@ -72,8 +73,6 @@ public class CoreTracker /* implements CloseHook */ {
 	NemakiTokenManager nemakiTokenManager;
 	PropertyManagerImpl propertyManager;
 	
-	Set<String> latestIndexedChangeLogIds = new HashSet<String>();
-	
 
 	public CoreTracker(NemakiCoreAdminHandler adminHandler, SolrCore core, SolrClient indexServer,
 			SolrClient tokenServer) {
@@ -156,6 +155,7 @@ public class CoreTracker /* implements CloseHook */ {
 
 	public void index(String trackingType, String repositoryId) {
 		synchronized (LOCK) {
+			boolean hasMoreItems;
 			do {
 
 				ChangeEvents changeEvents = getCmisChangeLog(trackingType, repositoryId);
@@ -168,25 +168,13 @@ logger.info("size of change events: " + changeEvents.getTotalNumItems());
 logger.info("Start indexing of events : Repo={} Count={}", repositoryId,
 						changeEvents.getTotalNumItems());
 				List<ChangeEvent> events = changeEvents.getChangeEvents();
-				Calendar currentTime = GregorianCalendar.getInstance();
-
-				ChangeEvent latestEvent = events.isEmpty() ? null : events.get(events.size() - 1);
-				int eventSize = events.size();
-				int oldEventSize = this.latestIndexedChangeLogIds.size();
 
-				// remove processed changeEvent
-				Set<String> eventIds = new HashSet<String>();
-				events.forEach(ev -> eventIds.add(createChangeLogId(ev)));
-				events.removeIf(ev -> latestIndexedChangeLogIds.contains(createChangeLogId(ev)));
-				this.latestIndexedChangeLogIds = eventIds;
-				
-logger.info("actual num of events: " + events.size());
+				// Change log tokens are CouchDB update sequences: reading after the stored
+				// token returns exactly the events not indexed yet, without overlap.
+				hasMoreItems = changeEvents.getHasMoreItems();
 
 				if (events.isEmpty()) {
-					if (eventSize == oldEventSize) {
-						// Update the latest token 
-						storeLatestChangeToken(changeEvents.getLatestChangeLogToken(), repositoryId);
-					}
+					storeLatestChangeToken(changeEvents.getLatestChangeLogToken(), repositoryId);
 					logger.info("actual change event is empty. Tracker job finished.");
 					return;
 				}
@@ -249,32 +237,11 @@ logger.info("extraction start");
 
 				// Save the latest token
 				storeLatestChangeToken(changeEvents.getLatestChangeLogToken(), repositoryId);
-				Calendar latestCheckTime;
-				// If the latest event is older than the specified second, it is processed continuously
-				if (latestEvent == null){
-					latestCheckTime = Calendar.getInstance();
-					latestCheckTime.set(1900,1,1);
-				}else {
-					latestCheckTime = latestEvent.getChangeTime();
-				}
-				int delta = Integer.parseInt(propertyManager.readValue(PropertyKey.SOLR_TRACKING_LATEST_CHECK_DELTA));
-				latestCheckTime.add(Calendar.SECOND, delta);
-				if (currentTime.compareTo(latestCheckTime) > 0) {
-					// Update the latest token 
-					storeLatestChangeToken(changeEvents.getLatestChangeLogToken(), repositoryId);
-				}
-				
-			} while (Constant.MODE_FULL.equals(trackingType));// In case of FUll mode, repeat until indexing all change logs
-		}
-	}
 
-	/**
-	 * Create the change log's Id
-	 *
-	 * @return
-	 */
-	private String createChangeLogId(ChangeEvent event) {
-		return event.getObjectId() + "_" + String.valueOf(event.getChangeTime().getTimeInMillis());		
+				// In case of FULL mode, repeat until indexing all change logs.
+				// In DELTA mode, keep reading pages while the repository reports pending events
+			} while (Constant.MODE_FULL.equals(trackingType) || hasMoreItems);
+		}
 	}
 
 	/**
@@ -287,16 +254,6 @@ logger.info("extraction start");
 		return readLatestChangeTokens(repositoryId)[0];
 	}
 
-	/**
-	 * Get the second last change token stored in Solr
-	 *
-	 * @return
-	 */	
-	private String readSecondLatestChangeToken(String repositoryId) {
-		logger.info("Start readSecondLatest : {}", repositoryId);
-		return readLatestChangeTokens(repositoryId)[1];
-	}
-	
 	/**
 	 * Get the last and 2nd change token stored in Solr
 	 *
@@ -381,7 +338,7 @@ logger.info("extraction start");
 	private ChangeEvents getCmisChangeLog(String trackingType, String repositoryId) {
 		PropertyManager propMgr = new PropertyManagerImpl(StringPool.PROPERTIES_NAME);
 		logger.info("Start getCmisChangeLog : Repo={} Type={}", repositoryId, trackingType);
-		String _latestToken = readSecondLatestChangeToken(repositoryId);
+		String _latestToken = readLatestChangeToken(repositoryId);
 		String latestToken = (StringUtils.isEmpty(_latestToken)) ? null : _latestToken;
 
 		long _numItems = 0;
@@ -405,6 +362,11 @@ logger.info("Session aquired");
 			// No need for Sorting
 			// (Specification requires they are returned by ASCENDING)
 			return cmisSession.getContentChanges(latestToken, false, numItems);
+		} catch (CmisInvalidArgumentException ex) {
+			// A token stored by an older version (timestamp based) is not an update sequence.
+			// Indexing is idempotent, so track again from the beginning.
+			logger.warn("Stored change token {} is not valid any more, tracking from the beginning : Repo={}", latestToken, repositoryId);
+			return cmisSession.getContentChanges(null, false, numItems);
 		} catch (CmisRuntimeException ex) {
 			// On error reset session.
 			CmisSessionFactory.clearSession(repositoryId);
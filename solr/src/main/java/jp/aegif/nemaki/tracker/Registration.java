@@ -45,6 +45,8 @@ public class Registration implements Runnable {
 	List<String> allowedMimeTypeFilter;
 	boolean fulltextEnabled;
 	NemakiCacheManager cache;
+	// Parents whose tree cache is cleared in one request after the batch
+	Set<String> treeCacheIds = new LinkedHashSet<String>();
 
 	private static final Logger logger = LoggerFactory.getLogger(Registration.class);
 
@@ -64,13 +66,21 @@ public class Registration implements Runnable {
 	public void run() {
 		logger.info("Start registration {} change event(s)", list.size());
 
+		// cache clean, before the objects are read back from the core
+		Map<String, GregorianCalendar> changed = new LinkedHashMap<String, GregorianCalendar>();
+		for (ChangeEvent ce : list) {
+			changed.put(ce.getObjectId(), ce.getChangeTime());
+		}
+		try {
+			cache.invalidate(changed, null);
+		} catch (Exception e) {
+			logger.error("Failed to delete cache of {} object(s).", changed.size());
+		}
+
 		// Read MIME-Type filtering
 		for (ChangeEvent ce : list) {
 			logger.info("Run Registration : Type={}, Id={}" ,ce.getChangeType(), ce.getObjectId());
 
-			// cache clean
-			cache.delete(ce.getObjectId(), ce.getChangeTime());
-
 			switch (ce.getChangeType()) {
 			case CREATED:
 				registerSolrDocument(ce, fulltextEnabled, mimeTypeFilterEnabled, allowedMimeTypeFilter);
@@ -89,6 +99,12 @@ public class Registration implements Runnable {
 				break;
 			}
 		}
+
+		try {
+			cache.invalidate(null, treeCacheIds);
+		} catch (Exception e) {
+			logger.error("Failed to delete tree cache of {} folder(s).", treeCacheIds.size());
+		}
 	}
 
 	/**
@@ -495,11 +511,13 @@ public class Registration implements Runnable {
 	}
 	
 	/**
-	 * Clear target tree cache
+	 * Clear target tree cache at the end of the batch
 	 * @param objectId
 	 */
 	private void clearTreeCache(String objectId) {
-		cache.deleteTree(objectId);
+		if (objectId != null) {
+			treeCacheIds.add(objectId);
+		}
 	}
 
 	/**
@@ -1,15 +1,24 @@
 package jp.aegif.nemaki.util;
 
+import java.nio.charset.StandardCharsets;
 import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.GregorianCalendar;
+import java.util.Map;
 
 // import jakarta.ws.rs.core.MediaType; // Removed due to Jersey 1.x compatibility
 
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.collections4.MapUtils;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.sun.jersey.api.client.Client;
-import com.sun.jersey.api.client.filter.HTTPBasicAuthFilter;
+import com.sun.jersey.api.client.UniformInterfaceException;
+import com.sun.jersey.api.client.WebResource;
 
 import jp.aegif.nemaki.util.yaml.RepositorySetting;
 
@@ -19,6 +28,12 @@ public class NemakiCacheManager {
 	public static final String DATETIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
 	private static DateTimeFormatter dtf = DateTimeFormatter.ofPattern(DATETIME_FORMAT);
 
+	// Jersey clients are thread-safe and costly to create; sharing one keeps
+	// the underlying HTTP connections alive between requests
+	private static final Client client = createClient();
+	// Authenticating with a token spares the core a password check per request
+	private static final NemakiTokenManager tokenManager = new NemakiTokenManager();
+
 	String userName = "";
 	String password = "";
 	String restEndPoint = "";
@@ -32,56 +47,132 @@ public class NemakiCacheManager {
 		 this.repositoryId = repositoryId;
 	}
 
+	private static Client createClient() {
+		Client c = Client.create();
+		c.setConnectTimeout(3 * 1000);
+		c.setReadTimeout(5 * 1000);
+		c.setFollowRedirects(Boolean.TRUE);
+		return c;
+	}
+
 	public void delete(String objectId, GregorianCalendar date){
-		String apiResult = null;
 		String restUri = getRestUri(repositoryId);
 
 		try {
-			Client c = Client.create();
-			c.setConnectTimeout(3 * 1000);
-			c.setReadTimeout(5 * 1000);
-			c.setFollowRedirects(Boolean.TRUE);
-			c.addFilter(new HTTPBasicAuthFilter(userName, password));
-
-			apiResult = c.resource(restUri)
+			WebResource resource = client.resource(restUri)
 							.path(objectId)
-							.queryParam("date", dtf.format(date.toZonedDateTime()))
-							.accept("application/json")
-							.delete(String.class);
-
-
+							.queryParam("date", dtf.format(date.toZonedDateTime()));
+			execute(resource, r -> r.delete(String.class));
 		} catch (Exception e) {
 			logger.error("Cannot connect to Core REST API : {}", restUri, e);
 			throw e;
 		}
-
-
 	}
 
 
 	public void deleteTree(String objectId){
-		String apiResult = null;
 		String restUri = getRestUri(repositoryId) + "tree/";
 
 		try {
-			Client c = Client.create();
-			c.setConnectTimeout(3 * 1000);
-			c.setReadTimeout(5 * 1000);
-			c.setFollowRedirects(Boolean.TRUE);
-			c.addFilter(new HTTPBasicAuthFilter(userName, password));
+			WebResource resource = client.resource(restUri).path(objectId);
+			execute(resource, r -> r.delete(String.class));
+		} catch (Exception e) {
+			logger.error("Cannot connect to Core REST API : {}", restUri, e);
+			throw e;
+		}
+	}
 
-			apiResult = c.resource(restUri)
-							.path(objectId)
-							.accept("application/json")
-							.delete(String.class);
+	/**
+	 * Invalidate the core caches of many objects with one request
+	 *
+	 * @param objects
+	 *            object IDs with their change time; a cache is removed only
+	 *            if it was modified before that time
+	 * @param treeIds
+	 *            folder IDs whose children cache is removed
+	 */
+	public void invalidate(Map<String, GregorianCalendar> objects, Collection<String> treeIds){
+		if (MapUtils.isEmpty(objects) && CollectionUtils.isEmpty(treeIds)) {
+			return;
+		}
 
+		JSONArray objectList = new JSONArray();
+		if (objects != null) {
+			for (Map.Entry<String, GregorianCalendar> entry : objects.entrySet()) {
+				JSONObject object = new JSONObject();
+				object.put("id", entry.getKey());
+				if (entry.getValue() != null) {
+					object.put("date", dtf.format(entry.getValue().toZonedDateTime()));
+				}
+				objectList.add(object);
+			}
+		}
+		JSONArray treeList = new JSONArray();
+		if (treeIds != null) {
+			treeList.addAll(treeIds);
+		}
+		JSONObject body = new JSONObject();
+		body.put("objects", objectList);
+		body.put("trees", treeList);
 
+		String restUri = getRestUri(repositoryId) + "invalidate";
+		try {
+			WebResource resource = client.resource(restUri);
+			String json = body.toJSONString();
+			execute(resource, r -> r.type("application/json").post(String.class, json));
 		} catch (Exception e) {
 			logger.error("Cannot connect to Core REST API : {}", restUri, e);
 			throw e;
 		}
 	}
 
+	private interface Call {
+		String apply(WebResource.Builder builder);
+	}
+
+	/**
+	 * Send a request with the tracker's auth token, registering a new token
+	 * once if the core rejects the current one. Basic auth is used when no
+	 * token can be obtained.
+	 */
+	private String execute(WebResource resource, Call call) {
+		String token = getToken();
+		try {
+			return call.apply(authorize(resource, token));
+		} catch (UniformInterfaceException e) {
+			if (token == null || e.getResponse().getStatus() != 401) {
+				throw e;
+			}
+			logger.info("{}: Auth token rejected by Core REST API, registering a new one", repositoryId);
+			synchronized (tokenManager) {
+				tokenManager.remove(repositoryId);
+			}
+			return call.apply(authorize(resource, getToken()));
+		}
+	}
+
+	private String getToken() {
+		try {
+			synchronized (tokenManager) {
+				return tokenManager.getOrRegister(repositoryId, userName, password);
+			}
+		} catch (Exception e) {
+			logger.warn("{}: Cannot get auth token, falling back to basic auth", repositoryId);
+			return null;
+		}
+	}
+
+	private WebResource.Builder authorize(WebResource resource, String token) {
+		WebResource.Builder builder = resource.accept("application/json");
+		if (token != null) {
+			return builder.header(Constant.AUTH_TOKEN, token)
+					.header(Constant.AUTH_TOKEN_APP, "solr");
+		}
+		String credentials = userName + ":" + password;
+		return builder.header("Authorization",
+				"Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+	}
+
 	private  String getRestUri(String repositoryId){
 		return restEndPoint + "/repo/" + repositoryId + "/cache/";
 	}
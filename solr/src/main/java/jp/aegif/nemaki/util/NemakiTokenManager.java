@@ -84,6 +84,13 @@ public class NemakiTokenManager {
 		}
 	}
 
+	/**
+	 * Forget the stored token, e.g. after the core rejected it
+	 */
+	public void remove(String repositoryId) {
+		tokenMap.remove(repositoryId);
+	}
+
 	private String getRestUri(String repositoryId){
 		return restEndpoint + "/repo/" + repositoryId + "/authtoken/";
 	}